@@ -249,8 +249,9 @@ ALTER TABLE A_OFRECEN
 ENABLE;
 
 -- Creaci�n de la tabla cliente y especificaci�n de sus restricciones.
+-- Para cambiar a NUMBER los identificadores de clientes de una base de datos creada con ellos como VARCHAR2, ejecute MigracionClientes.sql
 CREATE TABLE A_CLIENTE
-   (ID VARCHAR2(255 BYTE),
+   (ID NUMBER,
 	
 	NOMBRE VARCHAR2(255 BYTE) NOT NULL,
 	
@@ -268,9 +269,17 @@ ENABLE;
 CREATE TABLE A_FACTURA
    (NUMERO NUMBER,
 	FECHA DATE NOT NULL,
-	IDCLIENTE VARCHAR2(255 BYTE) NOT NULL,
+	IDCLIENTE NUMBER NOT NULL,
 	SUCURSAL NUMBER NOT NULL, 
-	CONSTRAINT A_FACTURA_PK PRIMARY KEY (NUMERO));
+	CONSTRAINT A_FACTURA_PK PRIMARY KEY (NUMERO))
+-- Una particin por mes, que Oracle crea al llegar la primera factura del mes. Las consultas por rango de fechas slo leen
+-- las particiones del rango, y un mes antiguo se desprende con ALTER TABLE A_FACTURA DROP PARTITION FOR (fecha del mes)
+-- La particin inicial no se puede eliminar: la aplicacin desprende los meses anteriores a 2018 eliminando sus tuplas.
+-- Para particionar una base de datos creada sin particiones, ejecute MigracionParticiones.sql
+PARTITION BY RANGE (FECHA) INTERVAL (NUMTOYMINTERVAL (1, 'MONTH'))
+   (PARTITION A_FACTURA_INICIAL VALUES LESS THAN (DATE '2018-01-01'));
+
+CREATE INDEX A_FACTURA_FECHA_IDX ON A_FACTURA (FECHA, SUCURSAL) LOCAL;
 
 ALTER TABLE A_FACTURA
 ADD CONSTRAINT fk_factura_cliente
@@ -319,7 +328,14 @@ CREATE TABLE A_TRANSACCION
 	NUMEROFACTURA NUMBER NOT NULL,
 	COSTO NUMBER NOT NULL,
 	PROMOCION NUMBER,
-	CONSTRAINT A_TRANSACCION_PK PRIMARY KEY (IDPRODUCTO, CANTIDAD, NUMEROFACTURA));
+	CONSTRAINT A_TRANSACCION_PK PRIMARY KEY (IDPRODUCTO, CANTIDAD, NUMEROFACTURA),
+	CONSTRAINT fk_tr_numfactura FOREIGN KEY (numerofactura) REFERENCES a_factura(numero))
+-- Las transacciones quedan en la particin del mes de su factura, y se desprenden con ella
+PARTITION BY REFERENCE (fk_tr_numfactura);
+
+-- La paginacin de transacciones recorre las tuplas en orden de factura, producto y cantidad, que no es el de la llave primaria.
+-- El ndice sirve tambin a la llave fornea hacia A_FACTURA
+CREATE INDEX A_TRANSACCION_FACTURA_IDX ON A_TRANSACCION (NUMEROFACTURA, IDPRODUCTO, CANTIDAD) LOCAL;
 
 ALTER TABLE A_TRANSACCION
 ADD CONSTRAINT fk_t_producto
@@ -327,12 +343,6 @@ ADD CONSTRAINT fk_t_producto
 	REFERENCES a_producto(id)
 ENABLE;
 
-ALTER TABLE A_TRANSACCION
-ADD CONSTRAINT fk_tr_numfactura
-	FOREIGN KEY (numerofactura)
-	REFERENCES a_factura(numero)
-ENABLE;
-
 ALTER TABLE A_TRANSACCION
 	ADD CONSTRAINT CK_TR_CANTIDAD
 	CHECK (cantidad> 0)
@@ -349,6 +359,26 @@ ADD CONSTRAINT fk_tr_factura
 	REFERENCES a_promocion(id)
 ENABLE;
 
+-- Creacin de la tabla del acumulado de ventas diarias por sucursal y especificacin de sus restricciones.
+CREATE TABLE A_VENTASDIARIAS
+   (SUCURSAL NUMBER NOT NULL,
+	DIA DATE NOT NULL,
+	VENTAS NUMBER NOT NULL,
+	TRANSACCIONES NUMBER NOT NULL,
+	CONSTRAINT A_VENTASDIARIAS_PK PRIMARY KEY (SUCURSAL, DIA));
+
+ALTER TABLE A_VENTASDIARIAS
+ADD CONSTRAINT fk_vd_sucursal
+	FOREIGN KEY (sucursal)
+	REFERENCES a_sucursal(id)
+ENABLE;
+
+-- Creacin de la tabla de control, con los valores que la aplicacin conserva entre ejecuciones.
+CREATE TABLE A_CONTROL
+   (CLAVE VARCHAR2(255 BYTE) NOT NULL,
+	VALOR NUMBER NOT NULL,
+	CONSTRAINT A_CONTROL_PK PRIMARY KEY (CLAVE));
+
 COMMIT;
   	
 	
@@ -18,12 +18,15 @@ DROP TABLE "A_OFRECEN" CASCADE CONSTRAINTS;
 DROP TABLE "A_FACTURA" CASCADE CONSTRAINTS;
 DROP TABLE "A_PROMOCION" CASCADE CONSTRAINTS;
 DROP TABLE "A_TRANSACCION" CASCADE CONSTRAINTS;
+DROP TABLE "A_VENTASDIARIAS" CASCADE CONSTRAINTS;
+DROP TABLE "A_CONTROL" CASCADE CONSTRAINTS;
 
 COMMIT;
 
 -- Eliminar el contenido de todas las tablas de la base de datos
 -- El orden es importante.
 
+delete from a_ventasdiarias;
 delete from a_subpedido;
 delete from a_transaccion;
 delete from a_promocion;
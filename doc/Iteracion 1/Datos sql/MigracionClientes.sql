@@ -0,0 +1,39 @@
+--- Sentencias SQL para cambiar a NUMBER el identificador de los clientes, A_CLIENTE.ID y A_FACTURA.IDCLIENTE, en una base de datos
+--- de SuperAndes creada con una versin anterior de EsquemaSuperAndes.sql, en la que son VARCHAR2. Las bases de datos nuevas ya los
+--- tienen como NUMBER, el tipo con el que la aplicacin los lee, los compara y los ordena
+
+-- USO
+-- Detenga la aplicacin: las facturas registradas mientras se copian los identificadores no quedaran con cliente
+-- Verifique que todos los identificadores son nmeros: la siguiente consulta no debe retornar tuplas
+--     SELECT id FROM A_CLIENTE WHERE NOT REGEXP_LIKE (id, '^[0-9]+$');
+-- Los NIT de las empresas se registran sin el dgito de verificacin, como en RF3ok.sql
+-- Copie el contenido de este archivo en una pestaa SQL de SQL Developer
+-- Ejectelo como un script - Utilice el botn correspondiente de la pestaa utilizada
+-- Mientras no se ejecute, la aplicacin compara los identificadores como cadenas: la paginacin de clientes salta tuplas y la
+-- lectura de facturas por pginas o por rango de fechas falla
+
+-- Se quita la llave fornea de A_FACTURA a A_CLIENTE, que se vuelve a crear cuando las dos columnas ya son NUMBER
+ALTER TABLE A_FACTURA DROP CONSTRAINT fk_factura_cliente;
+
+-- Oracle no cambia el tipo de una columna con datos: cada identificador se copia en una columna NUMBER nueva, que luego
+-- reemplaza a la original
+ALTER TABLE A_CLIENTE ADD (ID_NUMERO NUMBER);
+UPDATE A_CLIENTE SET ID_NUMERO = TO_NUMBER (ID);
+ALTER TABLE A_CLIENTE DROP CONSTRAINT A_CLIENTE_PK;
+ALTER TABLE A_CLIENTE DROP COLUMN ID;
+ALTER TABLE A_CLIENTE RENAME COLUMN ID_NUMERO TO ID;
+ALTER TABLE A_CLIENTE ADD CONSTRAINT A_CLIENTE_PK PRIMARY KEY (ID);
+
+ALTER TABLE A_FACTURA ADD (IDCLIENTE_NUMERO NUMBER);
+UPDATE A_FACTURA SET IDCLIENTE_NUMERO = TO_NUMBER (IDCLIENTE);
+ALTER TABLE A_FACTURA DROP COLUMN IDCLIENTE;
+ALTER TABLE A_FACTURA RENAME COLUMN IDCLIENTE_NUMERO TO IDCLIENTE;
+ALTER TABLE A_FACTURA MODIFY (IDCLIENTE NOT NULL);
+
+ALTER TABLE A_FACTURA
+ADD CONSTRAINT fk_factura_cliente
+	FOREIGN KEY (idcliente)
+	REFERENCES a_cliente(id)
+ENABLE;
+
+COMMIT;
@@ -0,0 +1,17 @@
+--- Sentencias SQL para crear la tabla de control en una base de datos de SuperAndes creada con una versin anterior de EsquemaSuperAndes.sql
+--- Las bases de datos nuevas ya la tienen
+
+-- USO
+-- Copie el contenido de este archivo en una pestaa SQL de SQL Developer
+-- Ejcutelo como un script - Utilice el botn correspondiente de la pestaa utilizada
+-- La primera vez que la aplicacin reserva identificadores para una tabla registra en A_CONTROL el tamao de bloque configurado
+-- en bloquesIdentificadores de TablasBD_A.json: antes de ejecutarla, verifique que la configuracin tiene los mismos tamaos
+-- con los que se numeraron las tablas hasta ahora
+
+-- Creacin de la tabla de control, con los valores que la aplicacin conserva entre ejecuciones.
+CREATE TABLE A_CONTROL
+   (CLAVE VARCHAR2(255 BYTE) NOT NULL,
+	VALOR NUMBER NOT NULL,
+	CONSTRAINT A_CONTROL_PK PRIMARY KEY (CLAVE));
+
+COMMIT;
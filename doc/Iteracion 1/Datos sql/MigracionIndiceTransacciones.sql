@@ -0,0 +1,15 @@
+--- Sentencias SQL para crear el ndice de la paginacin de transacciones en una base de datos de SuperAndes creada con una versin
+--- anterior de EsquemaSuperAndes.sql o particionada con una versin anterior de MigracionParticiones.sql. Las bases de datos nuevas
+--- ya lo tienen
+
+-- USO
+-- Si A_TRANSACCION todava no est particionada, ejecute en su lugar MigracionParticiones.sql, que ya crea el ndice
+-- Copie el contenido de este archivo en una pestaa SQL de SQL Developer
+-- Ejectelo como un script - Utilice el botn correspondiente de la pestaa utilizada
+-- Mientras no se ejecute, cada pgina de transacciones recorre la tabla completa: la llave primaria empieza por IDPRODUCTO y la
+-- paginacin las ordena por NUMEROFACTURA
+
+-- Un ndice local, con una particin por cada particin de A_TRANSACCION. ONLINE permite seguir insertando mientras se construye
+CREATE INDEX A_TRANSACCION_FACTURA_IDX ON A_TRANSACCION (NUMEROFACTURA, IDPRODUCTO, CANTIDAD) LOCAL ONLINE;
+
+COMMIT;
@@ -0,0 +1,70 @@
+--- Sentencias SQL para particionar por mes las tablas A_FACTURA y A_TRANSACCION de una base de datos de SuperAndes creada con una
+--- versin anterior de EsquemaSuperAndes.sql, en la que no estn particionadas. Las bases de datos nuevas ya lo estn
+--- Requiere Oracle 12.2 o posterior, para convertir A_FACTURA en una tabla particionada con ALTER TABLE ... MODIFY
+
+-- USO
+-- Detenga la aplicacin: A_TRANSACCION se copia en una tabla nueva y no debe recibir inserciones mientras tanto
+-- Copie el contenido de este archivo en una pestaa SQL de SQL Developer
+-- Ejectelo como un script - Utilice el botn correspondiente de la pestaa utilizada
+-- Mientras no se ejecute, la aplicacin detecta que A_FACTURA no est particionada y desprende los meses eliminando sus tuplas
+
+-- Una particin por mes de A_FACTURA, la misma definicin de EsquemaSuperAndes.sql. Las facturas anteriores a 2018 quedan en la
+-- particin inicial, que no se puede eliminar: la aplicacin desprende esos meses eliminando sus tuplas
+ALTER TABLE A_FACTURA MODIFY
+PARTITION BY RANGE (FECHA) INTERVAL (NUMTOYMINTERVAL (1, 'MONTH'))
+   (PARTITION A_FACTURA_INICIAL VALUES LESS THAN (DATE '2018-01-01'))
+ONLINE;
+
+CREATE INDEX A_FACTURA_FECHA_IDX ON A_FACTURA (FECHA, SUCURSAL) LOCAL;
+
+-- Oracle no convierte una tabla existente en particionada por referencia: se copian las transacciones en una tabla nueva,
+-- particionada por referencia a A_FACTURA, que luego reemplaza a la original
+CREATE TABLE A_TRANSACCION_PART
+   (IDPRODUCTO NUMBER NOT NULL,
+	CANTIDAD NUMBER NOT NULL,
+	NUMEROFACTURA NUMBER NOT NULL,
+	COSTO NUMBER NOT NULL,
+	PROMOCION NUMBER,
+	CONSTRAINT A_TRANSACCION_PART_PK PRIMARY KEY (IDPRODUCTO, CANTIDAD, NUMEROFACTURA),
+	CONSTRAINT fk_trp_numfactura FOREIGN KEY (numerofactura) REFERENCES a_factura(numero))
+PARTITION BY REFERENCE (fk_trp_numfactura);
+
+INSERT /*+ APPEND */ INTO A_TRANSACCION_PART (IDPRODUCTO, CANTIDAD, NUMEROFACTURA, COSTO, PROMOCION)
+	SELECT IDPRODUCTO, CANTIDAD, NUMEROFACTURA, COSTO, PROMOCION FROM A_TRANSACCION;
+
+COMMIT;
+
+DROP TABLE A_TRANSACCION CASCADE CONSTRAINTS;
+
+ALTER TABLE A_TRANSACCION_PART RENAME TO A_TRANSACCION;
+ALTER TABLE A_TRANSACCION RENAME CONSTRAINT A_TRANSACCION_PART_PK TO A_TRANSACCION_PK;
+ALTER INDEX A_TRANSACCION_PART_PK RENAME TO A_TRANSACCION_PK;
+ALTER TABLE A_TRANSACCION RENAME CONSTRAINT fk_trp_numfactura TO fk_tr_numfactura;
+
+-- El ndice de la paginacin de transacciones, como en EsquemaSuperAndes.sql
+CREATE INDEX A_TRANSACCION_FACTURA_IDX ON A_TRANSACCION (NUMEROFACTURA, IDPRODUCTO, CANTIDAD) LOCAL;
+
+-- Las dems restricciones de A_TRANSACCION, como en EsquemaSuperAndes.sql
+ALTER TABLE A_TRANSACCION
+ADD CONSTRAINT fk_t_producto
+	FOREIGN KEY (idproducto)
+	REFERENCES a_producto(id)
+ENABLE;
+
+ALTER TABLE A_TRANSACCION
+	ADD CONSTRAINT CK_TR_CANTIDAD
+	CHECK (cantidad> 0)
+ENABLE;
+
+ALTER TABLE A_TRANSACCION
+	ADD CONSTRAINT CK_TR_COSTO
+	CHECK (costo> 0)
+ENABLE;
+
+ALTER TABLE A_TRANSACCION
+ADD CONSTRAINT fk_tr_factura
+	FOREIGN KEY (promocion)
+	REFERENCES a_promocion(id)
+ENABLE;
+
+COMMIT;
@@ -0,0 +1,31 @@
+--- Sentencias SQL para crear el acumulado de ventas diarias en una base de datos de SuperAndes creada con una versin anterior
+--- de EsquemaSuperAndes.sql. Las bases de datos nuevas ya lo tienen
+
+-- USO
+-- Detenga la aplicacin: las ventas registradas mientras se calcula el acumulado no quedaran en l
+-- Copie el contenido de este archivo en una pestaa SQL de SQL Developer
+-- Ejectelo como un script - Utilice el botn correspondiente de la pestaa utilizada
+-- Si la configuracin de la aplicacin no tiene la entrada de A_VENTASDIARIAS en "tablas", se usa este mismo nombre
+
+-- Creacin de la tabla del acumulado de ventas diarias por sucursal y especificacin de sus restricciones.
+CREATE TABLE A_VENTASDIARIAS
+   (SUCURSAL NUMBER NOT NULL,
+	DIA DATE NOT NULL,
+	VENTAS NUMBER NOT NULL,
+	TRANSACCIONES NUMBER NOT NULL,
+	CONSTRAINT A_VENTASDIARIAS_PK PRIMARY KEY (SUCURSAL, DIA));
+
+ALTER TABLE A_VENTASDIARIAS
+ADD CONSTRAINT fk_vd_sucursal
+	FOREIGN KEY (sucursal)
+	REFERENCES a_sucursal(id)
+ENABLE;
+
+-- Clculo del acumulado de las ventas ya registradas, con la misma consulta de reconstruirVentasDiarias
+INSERT INTO A_VENTASDIARIAS (sucursal, dia, ventas, transacciones)
+	SELECT f.sucursal, TRUNC(f.fecha), SUM(t.costo), COUNT(*)
+	FROM A_TRANSACCION t, A_FACTURA f
+	WHERE t.numerofactura = f.numero
+	GROUP BY f.sucursal, TRUNC(f.fecha);
+
+COMMIT;
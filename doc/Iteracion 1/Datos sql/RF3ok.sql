@@ -2,8 +2,8 @@ INSERT INTO A_CLIENTE (id, nombre, correo, direccion, tipo) VALUES ('1020340527'
 INSERT INTO a_cliente (id, nombre, correo, direccion, tipo) VALUES ('1020556824', 'Nicols Cobos', 'n.cobos@uniandes.edu.co', 'Calle 150 # 35-90', 'persona');
 INSERT INTO a_cliente (id, nombre, correo, direccion, tipo) VALUES ('1020806824', 'Juan Felipe Torres', 'jf.torresp@uniandes.edu.co', 'Calle 110 # 15-90', 'persona');
 INSERT INTO a_cliente (id, nombre, correo, direccion, tipo) VALUES ('1020551224', 'Juan Ortega', 'j.ortega@uniandes.edu.co', 'Calle 20 # 65-90', 'persona');
-INSERT INTO a_cliente (id, nombre, correo, direccion, tipo) VALUES ('860034313-7', 'Davivienda', 'servicios@davivienda.com', 'Calle 120 # 15-90', 'empresa');
-INSERT INTO a_cliente (id, nombre, correo, direccion, tipo) VALUES ('890903938 - 8', 'Bancolombia', 'serviciocliente@bancolombia.com', 'Calle 40 # 85-90', 'empresa');
+INSERT INTO a_cliente (id, nombre, correo, direccion, tipo) VALUES ('860034313', 'Davivienda', 'servicios@davivienda.com', 'Calle 120 # 15-90', 'empresa');
+INSERT INTO a_cliente (id, nombre, correo, direccion, tipo) VALUES ('890903938', 'Bancolombia', 'serviciocliente@bancolombia.com', 'Calle 40 # 85-90', 'empresa');
 INSERT INTO a_cliente (id, nombre, correo, direccion, tipo) VALUES ('900780755', 'Ford Colombia', 'serviciocliente@fordlatam.com', 'Calle 56 # 15-20', 'empresa');
 
 SELECT * FROM a_cliente;
\ No newline at end of file
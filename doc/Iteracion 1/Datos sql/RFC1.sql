@@ -5,6 +5,6 @@ SELECT
      a_transaccion t,
      a_factura f
  WHERE
-     t.numerofactura = f.numero   AND f.fecha BETWEEN '12/10/2000' AND '30/12/2030'
+     t.numerofactura = f.numero   AND f.fecha >= DATE '2000-10-12' AND f.fecha < DATE '2030-12-31'
  GROUP BY
      sucursal
\ No newline at end of file
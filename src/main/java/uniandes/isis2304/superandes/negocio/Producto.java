@@ -28,6 +28,11 @@ public class Producto implements VOProducto{
 	 */
 	private String presentacion;
 	
+	/**
+	 *  El cdigo de barras del producto
+	 */
+	private String codigoBarras;
+	
 	/**
 	 *  LA unidad de medida del producto
 	 */
@@ -55,6 +60,7 @@ public class Producto implements VOProducto{
 		this.nombre = "";
 		this.marca = "";
 		this.presentacion = "";
+		this.codigoBarras = "";
 		this.unidadMedida = "";
 		this.categoria = "";
 		this.tipo = "";
@@ -67,16 +73,18 @@ public class Producto implements VOProducto{
 	 * @param nombre
 	 * @param marca
 	 * @param presentacion
+	 * @param codigoBarras
 	 * @param unidadMedida
 	 * @param categoria
 	 * @param tipo
 	 */
-	public Producto(long id, String nombre, String marca, String presentacion, String unidadMedida, String categoria,
+	public Producto(long id, String nombre, String marca, String presentacion, String codigoBarras, String unidadMedida, String categoria,
 			String tipo) {
 		this.id = id;
 		this.nombre = nombre;
 		this.marca = marca;
 		this.presentacion = presentacion;
+		this.codigoBarras = codigoBarras;
 		this.unidadMedida = unidadMedida;
 		this.categoria = categoria;
 		this.tipo = tipo;
@@ -123,6 +131,16 @@ public class Producto implements VOProducto{
 	}
 
 
+	public String getCodigoBarras() {
+		return codigoBarras;
+	}
+
+
+	public void setCodigoBarras(String codigoBarras) {
+		this.codigoBarras = codigoBarras;
+	}
+
+
 	public String getUnidadMedida() {
 		return unidadMedida;
 	}
@@ -153,7 +171,7 @@ public class Producto implements VOProducto{
 	@Override
 	public String toString() {
 		return "Producto [id=" + id + ", nombre=" + nombre + ", marca=" + marca + ", presentacion=" + presentacion
-				+ ", unidadMedida=" + unidadMedida + ", categoria=" + categoria + ", tipo=" + tipo + "]";
+				+ ", codigoBarras=" + codigoBarras + ", unidadMedida=" + unidadMedida + ", categoria=" + categoria + ", tipo=" + tipo + "]";
 	}
 	
 	
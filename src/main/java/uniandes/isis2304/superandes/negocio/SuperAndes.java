@@ -1,8 +1,12 @@
 package uniandes.isis2304.superandes.negocio;
 
 import java.sql.Timestamp;
+import java.util.Collection;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
 
 import org.apache.log4j.Logger;
 
@@ -342,6 +346,32 @@ public class SuperAndes {
         return voProductos;
 	}
 	
+	/**
+	 * Encuentra una página de los productos en SuperAndes, en orden de su llave
+	 * Adiciona entradas al log de la aplicación
+	 * @param despuesDeId - El identificador del último producto de la página anterior. 0 para la primera página
+	 * @param limite - El número máximo de productos de la página
+	 * @return Una lista de objetos Producto con a lo sumo limite elementos
+	 */
+	public List<Producto> darProductosPagina (long despuesDeId, int limite)
+	{
+		log.info ("Consultando página de productos después de " + despuesDeId);
+        List<Producto> productos = pp.darProductosPagina (despuesDeId, limite);
+        log.info ("Consultando página de productos: " + productos.size() + " encontrados");
+        return productos;
+	}
+	
+	/**
+	 * Recorre todos los productos en SuperAndes como VOProducto, sin cargarlos todos en memoria
+	 * El Stream consulta la base de datos por páginas a medida que se consume
+	 * @return Un Stream secuencial de objetos VOProducto
+	 */
+	public Stream<VOProducto> recorrerVOProductos ()
+	{
+		log.info ("Recorriendo los VO de productos");
+		return pp.recorrerProductos ().map (producto -> producto);
+	}
+	
 	/* ****************************************************************
 	 * 			Métodos para manejar las BODEGAS
 	 *****************************************************************/
@@ -557,6 +587,227 @@ public class SuperAndes {
 		return aumento;
 	}
 	
+	/* ****************************************************************
+	 * 			Métodos para manejar el INVENTARIO
+	 *****************************************************************/
+	
+	/**
+	 * Encuentra las existencias de un producto en las bodegas y en los estantes de una sucursal
+	 * Adiciona entradas al log de la aplicación
+	 * @param sucursal - El identificador de la sucursal
+	 * @param producto - El identificador del producto
+	 * @return Las existencias en bodegas y en estantes, en ese orden. null si ocurre alguna Excepción
+	 */
+	public long [] darExistencias (long sucursal, long producto)
+	{
+		log.info ("Consultando existencias del producto " + producto + " en la sucursal " + sucursal);
+		long [] existencias = pp.darExistencias (sucursal, producto);
+		log.info ("Consultando existencias: " + (existencias == null ? "error" : existencias [0] + " en bodegas, " + existencias [1] + " en estantes"));
+		return existencias;
+	}
+	
+	/**
+	 * Descarga en la base de datos los cambios de existencias pendientes del inventario en memoria
+	 * Adiciona entradas al log de la aplicación
+	 * @return El número de cambios descargados. 0 si no hay inventario en memoria. -1 si falla la descarga
+	 */
+	public int descargarInventario ()
+	{
+		log.info ("Descargando el inventario");
+		int resp = pp.descargarInventario ();
+		log.info ("Descargando el inventario: " + resp + " cambios descargados");
+		return resp;
+	}
+	
+	/* ****************************************************************
+	 * 			Métodos para manejar el REORDEN
+	 *****************************************************************/
+	
+	/**
+	 * Genera los pedidos a proveedores de los productos que bajaron de su nivel de reorden, un pedido por sucursal y proveedor
+	 * Adiciona entradas al log de la aplicación
+	 * @return Los pedidos generados. Vacío si no hay motor de reorden o no hay productos por pedir
+	 */
+	public List<Pedido> generarPedidosReorden ()
+	{
+		log.info ("Generando pedidos de reorden");
+		List<Pedido> pedidos = pp.generarPedidosReorden ();
+		log.info ("Generando pedidos de reorden: " + pedidos.size () + " pedidos generados");
+		return pedidos;
+	}
+	
+	/* ****************************************************************
+	 * 			Métodos para manejar la OCUPACIÓN de bodegas y estantes
+	 *****************************************************************/
+	
+	/**
+	 * Encuentra la ocupación de cada bodega y cada estante de una sucursal (RFC3)
+	 * Adiciona entradas al log de la aplicación
+	 * @param sucursal - El identificador de la sucursal
+	 * @return Parejas {Bodega o Estante, existencias / capacidadVolumen}. null si ocurre alguna Excepción
+	 */
+	public List<Object []> darOcupacion (long sucursal)
+	{
+		log.info ("Consultando ocupación de la sucursal " + sucursal);
+		List<Object []> resp = pp.darOcupacion (sucursal);
+		log.info ("Consultando ocupación: " + (resp == null ? "error" : resp.size () + " bodegas y estantes"));
+		return resp;
+	}
+	
+	/**
+	 * Encuentra las bodegas y los estantes de una sucursal con ocupación menor a un umbral, por ejemplo los estantes por reabastecer
+	 * Adiciona entradas al log de la aplicación
+	 * @param sucursal - El identificador de la sucursal
+	 * @param umbral - La ocupación mínima esperada, por ejemplo 0.2 para menos del 20% de la capacidad
+	 * @return Parejas {Bodega o Estante, existencias / capacidadVolumen}. null si ocurre alguna Excepción
+	 */
+	public List<Object []> darAlertasOcupacion (long sucursal, double umbral)
+	{
+		log.info ("Consultando alertas de ocupación de la sucursal " + sucursal + " con umbral " + umbral);
+		List<Object []> resp = pp.darAlertasOcupacion (sucursal, umbral);
+		log.info ("Consultando alertas de ocupación: " + (resp == null ? "error" : resp.size () + " alertas"));
+		return resp;
+	}
+	
+	/* ****************************************************************
+	 * 			Métodos para manejar la BÚSQUEDA de productos
+	 *****************************************************************/
+	
+	/**
+	 * Busca los productos cuyo nombre, marca, presentación, categoría o tipo coinciden con un texto, por ejemplo el que lleva escrito
+	 * el cajero. Tolera palabras incompletas y errores de escritura
+	 * Adiciona entradas al log de la aplicación
+	 * @param texto - El texto buscado
+	 * @param n - El número máximo de resultados
+	 * @return Los productos que mejor coinciden, del mejor al peor. null si ocurre alguna Excepción
+	 */
+	public List<Producto> buscarProductos (String texto, int n)
+	{
+		log.info ("Buscando productos: " + texto);
+		List<Producto> resp = pp.buscarProductos (texto, n);
+		log.info ("Buscando productos: " + (resp == null ? "error" : resp.size () + " productos"));
+		return resp;
+	}
+	
+	/* ****************************************************************
+	 * 			Métodos para manejar la LECTURA de códigos de barras en caja
+	 *****************************************************************/
+	
+	/**
+	 * Resuelve un código de barras leído en la caja de una sucursal, sin ir a la base de datos
+	 * @param codigoBarras - El código de barras leído
+	 * @param sucursal - El identificador de la sucursal de la caja
+	 * @return {Producto, precio unitario, precio por unidad de medida} del producto en la sucursal, con los precios en null si la sucursal
+	 * no vende el producto. null si ningún producto tiene el código de barras o si ocurre alguna Excepción
+	 */
+	public Object [] darProductoPorCodigoBarras (String codigoBarras, long sucursal)
+	{
+		log.trace ("Leyendo código de barras " + codigoBarras + " en la sucursal " + sucursal);
+		return pp.darProductoPorCodigoBarras (codigoBarras, sucursal);
+	}
+	
+	/* ****************************************************************
+	 * 			Métodos para manejar los PRECIOS por sucursal
+	 *****************************************************************/
+	
+	/**
+	 * Consulta el precio unitario de un producto en una sucursal, sin ir a la base de datos
+	 * @param sucursal - El identificador de la sucursal
+	 * @param producto - El identificador del producto
+	 * @return El precio unitario. -1 si la sucursal no vende el producto
+	 */
+	public double darPrecioUnitario (long sucursal, long producto)
+	{
+		return pp.darPrecioUnitario (sucursal, producto);
+	}
+	
+	/**
+	 * Cotiza una canasta con los precios unitarios de una sucursal, sin ir a la base de datos
+	 * @param sucursal - El identificador de la sucursal
+	 * @param productos - Los identificadores de los productos de la canasta
+	 * @param cantidades - La cantidad de cada producto, en el mismo orden
+	 * @param costos - Arreglo del mismo tamaño donde queda el costo de cada línea. Puede ser null
+	 * @return El costo total de la canasta. -1 si la sucursal no vende alguno de los productos
+	 */
+	public double cotizarCanasta (long sucursal, long [] productos, int [] cantidades, double [] costos)
+	{
+		log.trace ("Cotizando canasta de " + productos.length + " productos en la sucursal " + sucursal);
+		return pp.cotizarCanasta (sucursal, productos, cantidades, costos);
+	}
+	
+	/**
+	 * Vuelve a leer de la base de datos todos los precios de los productos en las sucursales
+	 * Adiciona entradas al log de la aplicación
+	 * @return true si se pudieron leer
+	 */
+	public boolean recargarPrecios ()
+	{
+		log.info ("Recargando precios");
+		boolean resp = pp.recargarPrecios ();
+		log.info ("Recargando precios: " + (resp ? "listo" : "error"));
+		return resp;
+	}
+	
+	/* ****************************************************************
+	 * 			Métodos para manejar el SURTIDO por sucursal y ciudad
+	 *****************************************************************/
+	
+	/**
+	 * Encuentra los productos que vende una sucursal (RFC4)
+	 * Adiciona entradas al log de la aplicación
+	 * @param sucursal - El identificador de la sucursal
+	 * @return Los identificadores de los productos. null si ocurre alguna Excepción
+	 */
+	public List<Long> darProductosPorSucursal (long sucursal)
+	{
+		log.info ("Consultando productos de la sucursal " + sucursal);
+		List<Long> resp = pp.darProductosPorSucursal (sucursal);
+		log.info ("Consultando productos de la sucursal: " + (resp == null ? "error" : resp.size () + " productos"));
+		return resp;
+	}
+	
+	/**
+	 * Encuentra los productos que vende alguna sucursal de una ciudad (RFC4)
+	 * Adiciona entradas al log de la aplicación
+	 * @param ciudad - La ciudad
+	 * @return Los identificadores de los productos. null si ocurre alguna Excepción
+	 */
+	public List<Long> darProductosPorCiudad (String ciudad)
+	{
+		log.info ("Consultando productos de la ciudad " + ciudad);
+		List<Long> resp = pp.darProductosPorCiudad (ciudad);
+		log.info ("Consultando productos de la ciudad: " + (resp == null ? "error" : resp.size () + " productos"));
+		return resp;
+	}
+	
+	/**
+	 * Encuentra los productos que se venden en todas las ciudades dadas, por ejemplo en Bogotá y en Medellín
+	 * Adiciona entradas al log de la aplicación
+	 * @param ciudades - Las ciudades
+	 * @return Los identificadores de los productos. null si ocurre alguna Excepción
+	 */
+	public List<Long> darProductosEnTodasLasCiudades (Collection<String> ciudades)
+	{
+		log.info ("Consultando productos vendidos en " + ciudades);
+		List<Long> resp = pp.darProductosEnTodasLasCiudades (ciudades);
+		log.info ("Consultando productos vendidos en varias ciudades: " + (resp == null ? "error" : resp.size () + " productos"));
+		return resp;
+	}
+	
+	/**
+	 * Encuentra los productos que venden todas las sucursales dadas
+	 * Adiciona entradas al log de la aplicación
+	 * @param sucursales - Los identificadores de las sucursales
+	 * @return Los identificadores de los productos. null si ocurre alguna Excepción
+	 */
+	public List<Long> darProductosEnTodasLasSucursales (Collection<Long> sucursales)
+	{
+		log.info ("Consultando productos vendidos en las sucursales " + sucursales);
+		List<Long> resp = pp.darProductosEnTodasLasSucursales (sucursales);
+		log.info ("Consultando productos vendidos en varias sucursales: " + (resp == null ? "error" : resp.size () + " productos"));
+		return resp;
+	}
+	
 	/* ****************************************************************
 	 * 			Métodos para manejar la relación VENDE
 	 *****************************************************************/
@@ -676,6 +927,36 @@ public class SuperAndes {
         return pedido;
 	}
 	
+	/**
+	 * Recibe un pedido pendiente: lo marca como entregado con su calificación y suma sus unidades a las bodegas de la sucursal
+	 * Adiciona entradas al log de la aplicación
+	 * @param idPedido - El identificador del pedido
+	 * @param calificacion - La calificación del servicio del proveedor
+	 * @return El número de pedidos recibidos. 0 si el pedido no existe o ya se había entregado. -1 si ocurre alguna Excepción
+	 */
+	public long recibirPedido (long idPedido, int calificacion)
+	{
+		log.info ("Recibiendo pedido: " + idPedido);
+		long resp = pp.recibirPedido (idPedido, calificacion);
+		log.info ("Recibiendo pedido: " + resp + " pedidos recibidos");
+		return resp;
+	}
+	
+	/**
+	 * Recibe, en una sola operación, varios pedidos pendientes, por ejemplo los que llegan en un mismo camión
+	 * Adiciona entradas al log de la aplicación
+	 * @param idsPedidos - Los identificadores de los pedidos
+	 * @param calificacion - La calificación del servicio del proveedor
+	 * @return El número de pedidos recibidos. -1 si ocurre alguna Excepción, en cuyo caso no se recibe ninguno
+	 */
+	public long recibirPedidos (List<Long> idsPedidos, int calificacion)
+	{
+		log.info ("Recibiendo " + idsPedidos.size () + " pedidos");
+		long resp = pp.recibirPedidos (idsPedidos, calificacion);
+		log.info ("Recibiendo pedidos: " + resp + " pedidos recibidos");
+		return resp;
+	}
+	
 	/**
 	 * Elimina un pedido por su identificador
 	 * Adiciona entradas al log de la aplicación
@@ -850,6 +1131,32 @@ public class SuperAndes {
         return voPedidos;
 	}
 	
+	/**
+	 * Encuentra una página de los pedidos en SuperAndes, en orden de su llave
+	 * Adiciona entradas al log de la aplicación
+	 * @param despuesDeId - El identificador del último pedido de la página anterior. 0 para la primera página
+	 * @param limite - El número máximo de pedidos de la página
+	 * @return Una lista de objetos Pedido con a lo sumo limite elementos
+	 */
+	public List<Pedido> darPedidosPagina (long despuesDeId, int limite)
+	{
+		log.info ("Consultando página de pedidos después de " + despuesDeId);
+        List<Pedido> pedidos = pp.darPedidosPagina (despuesDeId, limite);
+        log.info ("Consultando página de pedidos: " + pedidos.size() + " encontrados");
+        return pedidos;
+	}
+	
+	/**
+	 * Recorre todos los pedidos en SuperAndes como VOPedido, sin cargarlos todos en memoria
+	 * El Stream consulta la base de datos por páginas a medida que se consume
+	 * @return Un Stream secuencial de objetos VOPedido
+	 */
+	public Stream<VOPedido> recorrerVOPedidos ()
+	{
+		log.info ("Recorriendo los VO de pedidos");
+		return pp.recorrerPedidos ().map (pedido -> pedido);
+	}
+	
 	/* ****************************************************************
 	 * 			M�todos para manejar los SUBPEDIDOS
 	 *****************************************************************/
@@ -1142,6 +1449,32 @@ public class SuperAndes {
         return voClientes;
 	}
 	
+	/**
+	 * Encuentra una página de los clientes en SuperAndes, en orden de su llave
+	 * Adiciona entradas al log de la aplicación
+	 * @param despuesDeId - El identificador del último cliente de la página anterior. 0 para la primera página
+	 * @param limite - El número máximo de clientes de la página
+	 * @return Una lista de objetos Cliente con a lo sumo limite elementos
+	 */
+	public List<Cliente> darClientesPagina (long despuesDeId, int limite)
+	{
+		log.info ("Consultando página de clientes después de " + despuesDeId);
+        List<Cliente> clientes = pp.darClientesPagina (despuesDeId, limite);
+        log.info ("Consultando página de clientes: " + clientes.size() + " encontrados");
+        return clientes;
+	}
+	
+	/**
+	 * Recorre todos los clientes en SuperAndes como VOCliente, sin cargarlos todos en memoria
+	 * El Stream consulta la base de datos por páginas a medida que se consume
+	 * @return Un Stream secuencial de objetos VOCliente
+	 */
+	public Stream<VOCliente> recorrerVOClientes ()
+	{
+		log.info ("Recorriendo los VO de clientes");
+		return pp.recorrerClientes ().map (cliente -> cliente);
+	}
+	
 	/* ****************************************************************
 	 * 			M�todos para manejar las FACTURAS
 	 *****************************************************************/
@@ -1163,6 +1496,52 @@ public class SuperAndes {
         return factura;
 	}
 	
+	/**
+	 * Registra de manera persistente y en una única transacción una venta: su factura, sus transacciones y el descuento
+	 * de las existencias vendidas en los estantes de la sucursal
+	 * Adiciona entradas al log de la aplicación 
+	 * @param idCliente - El identificador del cliente que compra
+	 * @param idSucursal - El identificador de la sucursal donde se vende
+	 * @param lineas - Las líneas de la venta, con producto, cantidad, costo y promoción
+	 * @return El objeto Factura adicionado. null si ocurre alguna Excepción, por ejemplo si no hay existencias suficientes
+	 */
+	public Factura registrarVenta (long idCliente, long idSucursal, List<Transaccion> lineas)
+	{
+        log.info ("Registrando venta: cliente " + idCliente + ", sucursal " + idSucursal + ", " + lineas.size () + " líneas");
+        Factura factura = pp.registrarVenta (idCliente, idSucursal, lineas);
+        log.info ("Registrando venta: " + factura);
+        return factura;
+	}
+
+	/**
+	 * Registra una venta en el diario de ventas, sin esperar a la base de datos. La venta se aplica después en la base de datos
+	 * Adiciona entradas al log de la aplicación 
+	 * @param idCliente - El identificador del cliente que compra
+	 * @param idSucursal - El identificador de la sucursal donde se vende
+	 * @param lineas - Las líneas de la venta, con producto, cantidad, costo y promoción
+	 * @return El objeto Factura registrado. null si ocurre alguna Excepción
+	 */
+	public Factura registrarVentaDiferida (long idCliente, long idSucursal, List<Transaccion> lineas)
+	{
+        log.trace ("Registrando venta diferida: cliente " + idCliente + ", sucursal " + idSucursal + ", " + lineas.size () + " líneas");
+        Factura factura = pp.registrarVentaDiferida (idCliente, idSucursal, lineas);
+        log.trace ("Registrando venta diferida: " + factura);
+        return factura;
+	}
+
+	/**
+	 * Aplica en la base de datos las ventas pendientes del diario de ventas
+	 * Adiciona entradas al log de la aplicación 
+	 * @return El número de ventas leídas del diario. -1 si falla la aplicación
+	 */
+	public int aplicarDiarioVentas ()
+	{
+        log.info ("Aplicando el diario de ventas");
+        int resp = pp.aplicarDiarioVentas ();
+        log.info ("Aplicando el diario de ventas: " + resp + " ventas");
+        return resp;
+	}
+	
 	/**
 	 * Encuentra una factura y su información básica, según su identificador
 	 * @param idFactura - El identificador de la factura buscada
@@ -1278,6 +1657,32 @@ public class SuperAndes {
         return voFacturas;
 	}
 	
+	/**
+	 * Encuentra una página de las facturas en SuperAndes, en orden de su llave
+	 * Adiciona entradas al log de la aplicación
+	 * @param despuesDeNumero - El número de la última factura de la página anterior. 0 para la primera página
+	 * @param limite - El número máximo de facturas de la página
+	 * @return Una lista de objetos Factura con a lo sumo limite elementos
+	 */
+	public List<Factura> darFacturasPagina (long despuesDeNumero, int limite)
+	{
+		log.info ("Consultando página de facturas después de " + despuesDeNumero);
+        List<Factura> facturas = pp.darFacturasPagina (despuesDeNumero, limite);
+        log.info ("Consultando página de facturas: " + facturas.size() + " encontradas");
+        return facturas;
+	}
+	
+	/**
+	 * Recorre todas las facturas en SuperAndes como VOFactura, sin cargarlas todas en memoria
+	 * El Stream consulta la base de datos por páginas a medida que se consume
+	 * @return Un Stream secuencial de objetos VOFactura
+	 */
+	public Stream<VOFactura> recorrerVOFacturas ()
+	{
+		log.info ("Recorriendo los VO de facturas");
+		return pp.recorrerFacturas ().map (factura -> factura);
+	}
+	
 	/* ****************************************************************
 	 * 			M�todos para manejar las PROMOCIONES
 	 *****************************************************************/
@@ -1307,9 +1712,197 @@ public class SuperAndes {
         return promocion;
 	}
 	
+	/**
+	 * Elimina una promoción por su identificador
+	 * Adiciona entradas al log de la aplicación
+	 * @param idPromocion - El identificador de la promoción
+	 * @return El número de tuplas eliminadas. -1 si ocurre alguna Excepción
+	 */
+	public long eliminarPromocionPorId (long idPromocion)
+	{
+		log.info ("Eliminando promocion por id: " + idPromocion);
+		long resp = pp.eliminarPromocionPorId (idPromocion);
+		log.info ("Eliminando promocion por id: " + resp + " tuplas eliminadas");
+		return resp;
+	}
+	
+	/**
+	 * Encuentra las promociones de un producto vigentes en un instante
+	 * @param idProducto - El identificador del producto
+	 * @param instante - El instante
+	 * @return Las promociones vigentes, de la que empezó más recientemente a la más antigua. null si ocurre alguna Excepción
+	 */
+	public List<Promocion> darPromocionesVigentes (long idProducto, Timestamp instante)
+	{
+		return pp.darPromocionesVigentes (idProducto, instante);
+	}
+	
+	/**
+	 * Encuentra las promociones vigentes en un instante de los productos de una canasta
+	 * @param productos - Los identificadores de los productos
+	 * @param instante - El instante
+	 * @return Las promociones vigentes de cada producto que tiene alguna. null si ocurre alguna Excepción
+	 */
+	public Map<Long, List<Promocion>> darPromocionesVigentes (Collection<Long> productos, Timestamp instante)
+	{
+		return pp.darPromocionesVigentes (productos, instante);
+	}
+
+	/**
+	 * Encuentra las promociones más populares (RFC2): las que más unidades vendieron por día de duración
+	 * Adiciona entradas al log de la aplicación
+	 * @param n - El número de promociones deseado, normalmente 20
+	 * @return Una lista de arreglos {idPromocion, unidades vendidas, unidades por día}, de la mejor a la peor. null si ocurre alguna Excepción
+	 */
+	public List<Object []> darPromocionesPopulares (int n)
+	{
+		log.info ("Consultando las " + n + " promociones más populares");
+		List<Object []> resp = pp.darPromocionesPopulares (n);
+		log.info ("Consultando las promociones más populares: " + (resp == null ? "error" : resp.size () + " promociones"));
+		return resp;
+	}
+	
 	/* ****************************************************************
 	 * 			M�todos para manejar las TRANSACCIONES
 	 *****************************************************************/
 	
+	/**
+	 * Encola la inserción de transacciones de facturas existentes, que se insertan junto con las de otras cajas en una sola transacción
+	 * @param transacciones - Las transacciones a insertar
+	 * @return Un futuro que se completa con el número de tuplas insertadas cuando quedan confirmadas, o con una excepción si la
+	 * inserción se rechaza o falla
+	 */
+	public CompletableFuture<Integer> encolarTransacciones (List<Transaccion> transacciones)
+	{
+		log.trace ("Encolando " + transacciones.size () + " transacciones");
+		return pp.encolarTransacciones (transacciones);
+	}
+
+	/**
+	 * Encuentra una página de las transacciones en SuperAndes, en orden de número de factura, producto y cantidad
+	 * Adiciona entradas al log de la aplicación
+	 * @param despuesDeFactura - El número de factura de la última transacción de la página anterior. 0 para la primera página
+	 * @param despuesDeProducto - El producto de la última transacción de la página anterior. 0 para la primera página
+	 * @param despuesDeCantidad - La cantidad de la última transacción de la página anterior. 0 para la primera página
+	 * @param limite - El número máximo de transacciones de la página
+	 * @return Una lista de objetos Transaccion con a lo sumo limite elementos
+	 */
+	public List<Transaccion> darTransaccionesPagina (long despuesDeFactura, long despuesDeProducto, int despuesDeCantidad, int limite)
+	{
+		log.info ("Consultando página de transacciones después de " + despuesDeFactura + ", " + despuesDeProducto + ", " + despuesDeCantidad);
+        List<Transaccion> transacciones = pp.darTransaccionesPagina (despuesDeFactura, despuesDeProducto, despuesDeCantidad, limite);
+        log.info ("Consultando página de transacciones: " + transacciones.size() + " encontradas");
+        return transacciones;
+	}
+	
+	/**
+	 * Recorre todas las transacciones en SuperAndes como VOTransaccion, sin cargarlas todas en memoria
+	 * El Stream consulta la base de datos por páginas a medida que se consume
+	 * @return Un Stream secuencial de objetos VOTransaccion
+	 */
+	public Stream<VOTransaccion> recorrerVOTransacciones ()
+	{
+		log.info ("Recorriendo los VO de transacciones");
+		return pp.recorrerTransacciones ().map (transaccion -> transaccion);
+	}
+
+	/* ****************************************************************
+	 * 			Métodos para manejar las FACTURAS por mes
+	 *****************************************************************/
+
+	/**
+	 * Encuentra las facturas de un rango de fechas, leyendo sólo las particiones mensuales del rango
+	 * Adiciona entradas al log de la aplicación
+	 * @param desde - La fecha inicial, incluida
+	 * @param hasta - La fecha final, excluida
+	 * @return La lista de objetos Factura del rango, en orden de fecha. null si ocurre alguna Excepción
+	 */
+	public List<Factura> darFacturasPorRangoFechas (Timestamp desde, Timestamp hasta)
+	{
+		log.info ("Consultando facturas de " + desde + " a " + hasta);
+		List<Factura> facturas = pp.darFacturasPorRangoFechas (desde, hasta);
+		log.info ("Consultando facturas: " + (facturas == null ? "error" : facturas.size () + " facturas"));
+		return facturas;
+	}
+
+	/**
+	 * Encuentra las transacciones de las facturas de un rango de fechas, leyendo sólo las particiones mensuales del rango
+	 * Adiciona entradas al log de la aplicación
+	 * @param desde - La fecha inicial de las facturas, incluida
+	 * @param hasta - La fecha final de las facturas, excluida
+	 * @return La lista de objetos Transaccion del rango. null si ocurre alguna Excepción
+	 */
+	public List<Transaccion> darTransaccionesPorRangoFechas (Timestamp desde, Timestamp hasta)
+	{
+		log.info ("Consultando transacciones de " + desde + " a " + hasta);
+		List<Transaccion> transacciones = pp.darTransaccionesPorRangoFechas (desde, hasta);
+		log.info ("Consultando transacciones: " + (transacciones == null ? "error" : transacciones.size () + " transacciones"));
+		return transacciones;
+	}
+
+	/**
+	 * Elimina las facturas de un mes, con sus transacciones. En Oracle elimina las particiones del mes
+	 * Adiciona entradas al log de la aplicación
+	 * @param mes - Un instante del mes
+	 * @return El número de facturas eliminadas. -1 si ocurre alguna Excepción
+	 */
+	public long desprenderMesFacturas (Timestamp mes)
+	{
+		log.info ("Desprendiendo el mes de facturas de " + mes);
+		long resp = pp.desprenderMesFacturas (mes);
+		log.info ("Desprendiendo el mes de facturas: " + resp + " facturas eliminadas");
+		return resp;
+	}
+
+	/* ****************************************************************
+	 * 			Métodos para manejar las VENTAS DIARIAS
+	 *****************************************************************/
+	
+	/**
+	 * Encuentra las ventas de cada sucursal en un rango de días (RFC1), a partir del acumulado de ventas diarias
+	 * Adiciona entradas al log de la aplicación
+	 * @param desde - El primer día del rango
+	 * @param hasta - El último día del rango, incluido
+	 * @return Una lista de parejas {idSucursal, ventas}. null si ocurre alguna Excepción
+	 */
+	public List<Object []> darVentasPorSucursal (Timestamp desde, Timestamp hasta)
+	{
+		log.info ("Consultando ventas por sucursal de " + desde + " a " + hasta);
+		List<Object []> ventas = pp.darVentasPorSucursal (desde, hasta);
+		log.info ("Consultando ventas por sucursal: " + (ventas == null ? "error" : ventas.size () + " sucursales"));
+		return ventas;
+	}
+	
+	/**
+	 * Vuelve a calcular el acumulado de ventas diarias de un rango de días a partir de las transacciones y las facturas,
+	 * por ejemplo para cargar el histórico
+	 * Adiciona entradas al log de la aplicación
+	 * @param desde - El primer día del rango
+	 * @param hasta - El último día del rango, incluido
+	 * @return El número de días de sucursales calculados. -1 si ocurre alguna Excepción
+	 */
+	public long reconstruirVentasDiarias (Timestamp desde, Timestamp hasta)
+	{
+		log.info ("Reconstruyendo ventas diarias de " + desde + " a " + hasta);
+		long resp = pp.reconstruirVentasDiarias (desde, hasta);
+		log.info ("Reconstruyendo ventas diarias: " + resp + " días de sucursales calculados");
+		return resp;
+	}
+
+	/* ****************************************************************
+	 * 			Métodos para administración
+	 *****************************************************************/
 	
+	/**
+	 * Elimina todas las tuplas de todas las tablas de la base de datos de SuperAndes
+	 * @return Un arreglo con el número de tuplas eliminadas en cada tabla, en el orden de PersistenciaSuperAndes.limpiarSuperAndes.
+	 * null si ocurre alguna Excepción
+	 */
+	public long [] limpiarSuperAndes ()
+	{
+        log.info ("Limpiando la BD de SuperAndes");
+        long [] borrados = pp.limpiarSuperAndes();	
+        log.info ("Limpiando la BD de SuperAndes: Listo!");
+        return borrados;
+	}
 }
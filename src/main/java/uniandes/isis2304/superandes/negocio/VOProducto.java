@@ -34,6 +34,11 @@ public interface VOProducto {
 	 */
 	public String getPresentacion();
 	
+	/**
+	 * @return El cdigo de barras del producto
+	 */
+	public String getCodigoBarras();
+	
 	/**
 	 * @return LA unidad de medida del producto
 	 */
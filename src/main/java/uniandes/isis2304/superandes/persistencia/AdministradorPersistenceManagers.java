@@ -0,0 +1,471 @@
+package uniandes.isis2304.superandes.persistencia;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.jdo.JDODataStoreException;
+import javax.jdo.PersistenceManager;
+import javax.jdo.PersistenceManagerFactory;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Clase que entrega los PersistenceManager de SuperAndes y lleva la cuenta de los que están abiertos.
+ * El número de PersistenceManager abiertos al tiempo está acotado por el tamaño del pool de conexiones, de manera que
+ * quien pide uno espera aquí (y se mide esa espera) en vez de agotar el pool.
+ * Los PersistenceManager entregados son AutoCloseable: al cerrarlos se libera su cupo. Los que permanecen abiertos
+ * más tiempo del umbral se reportan en el log como posibles fugas, junto con el punto del código donde se abrieron.
+ * Si se le da un registro de métricas, mide cada préstamo como una operación (desde que se pide hasta que se cierra)
+ * y cada sentencia SQL ejecutada con él.
+ *
+ * @author n.cobos, jf.torresp
+ */
+public class AdministradorPersistenceManagers
+{
+	/* ****************************************************************
+	 * 			Constantes
+	 *****************************************************************/
+	/**
+	 * Logger para escribir la traza de la ejecución
+	 */
+	private static Logger log = Logger.getLogger(AdministradorPersistenceManagers.class.getName());
+
+	/**
+	 * Número máximo de PersistenceManager abiertos al tiempo, por defecto
+	 */
+	public final static int MAX_ACTIVOS_DEFECTO = 20;
+
+	/**
+	 * Tiempo máximo de espera por un PersistenceManager, por defecto (en milisegundos)
+	 */
+	public final static long ESPERA_MAXIMA_DEFECTO = 5000;
+
+	/**
+	 * Tiempo que puede estar abierto un PersistenceManager antes de reportarlo como posible fuga, por defecto (en milisegundos)
+	 */
+	public final static long UMBRAL_FUGA_DEFECTO = 30000;
+
+	/* ****************************************************************
+	 * 			Atributos
+	 *****************************************************************/
+	/**
+	 * Fábrica de manejadores de persistencia
+	 */
+	private PersistenceManagerFactory pmf;
+
+	/**
+	 * Cupos disponibles para abrir PersistenceManager
+	 */
+	private Semaphore cupos;
+
+	/**
+	 * Número máximo de PersistenceManager abiertos al tiempo
+	 */
+	private int maxActivos;
+
+	/**
+	 * Tiempo máximo de espera por un cupo, en milisegundos
+	 */
+	private long esperaMaxima;
+
+	/**
+	 * Tiempo que puede estar abierto un PersistenceManager antes de reportarlo como posible fuga, en milisegundos
+	 */
+	private long umbralFuga;
+
+	/**
+	 * Indica si se guarda la pila de llamados de quien abre cada PersistenceManager
+	 */
+	private boolean rastrearOrigen;
+
+	/**
+	 * Los préstamos abiertos, por número de préstamo
+	 */
+	private ConcurrentHashMap<Long, Prestamo> abiertos;
+
+	/**
+	 * Generador de números de préstamo
+	 */
+	private AtomicLong numeroPrestamos;
+
+	/**
+	 * Suma de los tiempos de espera por un cupo, en nanosegundos
+	 */
+	private AtomicLong esperaTotal;
+
+	/**
+	 * Máximo tiempo de espera por un cupo observado, en nanosegundos
+	 */
+	private AtomicLong esperaMaximaObservada;
+
+	/**
+	 * Número de solicitudes que no obtuvieron cupo a tiempo
+	 */
+	private AtomicLong solicitudesVencidas;
+
+	/**
+	 * Número de posibles fugas reportadas
+	 */
+	private AtomicLong fugasReportadas;
+
+	/**
+	 * Hilo que revisa periódicamente los préstamos abiertos
+	 */
+	private ScheduledExecutorService vigilante;
+
+	/**
+	 * El registro de métricas de las operaciones y sentencias. null si no se mide
+	 */
+	private MetricasSuperAndes metricas;
+
+	/**
+	 * El registro de las sentencias SQL lentas. null si no se registran
+	 */
+	private RegistroConsultasLentas consultasLentas;
+
+	/**
+	 * Un PersistenceManager entregado. Intercepta close para devolver el cupo
+	 */
+	private class Prestamo implements InvocationHandler
+	{
+		/**
+		 * El número del préstamo
+		 */
+		private final long numero;
+
+		/**
+		 * El PersistenceManager real
+		 */
+		private final PersistenceManager pm;
+
+		/**
+		 * Momento de apertura, en milisegundos
+		 */
+		private final long apertura;
+
+		/**
+		 * La pila de llamados de quien lo abrió. null si no se rastrea el origen
+		 */
+		private final Throwable origen;
+
+		/**
+		 * Indica si ya fue cerrado
+		 */
+		private final AtomicBoolean cerrado;
+
+		/**
+		 * Indica si ya fue reportado como posible fuga
+		 */
+		private volatile boolean reportado;
+
+		/**
+		 * El nombre de la operación que usa el PersistenceManager. null si no se mide como operación
+		 */
+		private final String operacion;
+
+		/**
+		 * Momento en que se pidió el PersistenceManager, según System.nanoTime
+		 */
+		private final long inicio;
+
+		/**
+		 * Mide las sentencias ejecutadas con el PersistenceManager. null si no se mide
+		 */
+		private final MedidorSentencias medidor;
+
+		/**
+		 * Constructor
+		 * @param numero - El número del préstamo
+		 * @param pm - El PersistenceManager real
+		 * @param origen - La pila de llamados de quien lo abrió. Puede ser null
+		 * @param operacion - El nombre de la operación que lo usa. Puede ser null
+		 * @param inicio - Momento en que se pidió, según System.nanoTime
+		 */
+		public Prestamo (long numero, PersistenceManager pm, Throwable origen, String operacion, long inicio)
+		{
+			this.numero = numero;
+			this.pm = pm;
+			this.apertura = System.currentTimeMillis ();
+			this.origen = origen;
+			this.cerrado = new AtomicBoolean (false);
+			this.reportado = false;
+			this.operacion = operacion;
+			this.inicio = inicio;
+			this.medidor = metricas == null ? null : new MedidorSentencias (metricas, consultasLentas);
+		}
+
+		@Override
+		public Object invoke (Object proxy, Method method, Object [] args) throws Throwable
+		{
+			if (method.getName ().equals ("close") && method.getParameterCount () == 0)
+			{
+				if (cerrado.compareAndSet (false, true))
+				{
+					try
+					{
+						pm.close ();
+					}
+					finally
+					{
+						devolver (this);
+						if (medidor != null && operacion != null)
+						{
+							metricas.darOperacion (operacion).registrar (System.nanoTime () - inicio, medidor.darFilas (), medidor.huboError ());
+						}
+					}
+				}
+				return null;
+			}
+			try
+			{
+				Object resp = method.invoke (pm, args);
+				return medidor == null ? resp : medidor.envolver (method, args, resp);
+			}
+			catch (InvocationTargetException e)
+			{
+				throw e.getCause ();
+			}
+		}
+	}
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	/**
+	 * Constructor
+	 * @param pmf - La fábrica de manejadores de persistencia
+	 * @param maxActivos - Número máximo de PersistenceManager abiertos al tiempo
+	 * @param esperaMaxima - Tiempo máximo de espera por un PersistenceManager, en milisegundos
+	 * @param umbralFuga - Tiempo que puede estar abierto un PersistenceManager antes de reportarlo como posible fuga, en milisegundos
+	 * @param rastrearOrigen - true para guardar la pila de llamados de quien abre cada PersistenceManager
+	 * @param metricas - El registro donde se miden las operaciones y sentencias. null para no medir
+	 * @param consultasLentas - El registro de las sentencias lentas. null para no registrarlas. Sólo se usa si se miden las sentencias
+	 */
+	public AdministradorPersistenceManagers (PersistenceManagerFactory pmf, int maxActivos, long esperaMaxima, long umbralFuga, boolean rastrearOrigen,
+			MetricasSuperAndes metricas, RegistroConsultasLentas consultasLentas)
+	{
+		if (maxActivos < 1)
+		{
+			throw new IllegalArgumentException ("El número máximo de PersistenceManager debe ser positivo: " + maxActivos);
+		}
+		this.pmf = pmf;
+		this.maxActivos = maxActivos;
+		this.cupos = new Semaphore (maxActivos, true);
+		this.esperaMaxima = esperaMaxima;
+		this.umbralFuga = umbralFuga;
+		this.rastrearOrigen = rastrearOrigen;
+		this.abiertos = new ConcurrentHashMap<Long, Prestamo> ();
+		this.numeroPrestamos = new AtomicLong ();
+		this.esperaTotal = new AtomicLong ();
+		this.esperaMaximaObservada = new AtomicLong ();
+		this.solicitudesVencidas = new AtomicLong ();
+		this.fugasReportadas = new AtomicLong ();
+		this.metricas = metricas;
+		this.consultasLentas = consultasLentas;
+
+		long periodo = Math.max (1000, umbralFuga / 2);
+		vigilante = Executors.newSingleThreadScheduledExecutor (r -> {
+			Thread t = new Thread (r, "superandes-vigilante-pm");
+			t.setDaemon (true);
+			return t;
+		});
+		vigilante.scheduleAtFixedRate (this::reportarFugas, periodo, periodo, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Abre un PersistenceManager. Debe cerrarse siempre, idealmente con try-with-resources
+	 * @return El PersistenceManager abierto
+	 * @throws JDODataStoreException - Si no hay cupo disponible dentro del tiempo máximo de espera
+	 */
+	public PersistenceManager abrir ()
+	{
+		return abrir (null);
+	}
+
+	/**
+	 * Abre un PersistenceManager para una operación. Debe cerrarse siempre, idealmente con try-with-resources.
+	 * Si hay registro de métricas, al cerrarlo se registra la operación con su duración, sus tuplas y si falló
+	 * @param operacion - El nombre de la operación que lo usa. null si no se mide como operación
+	 * @return El PersistenceManager abierto
+	 * @throws JDODataStoreException - Si no hay cupo disponible dentro del tiempo máximo de espera
+	 */
+	public PersistenceManager abrir (String operacion)
+	{
+		long inicio = System.nanoTime ();
+		boolean conCupo;
+		try
+		{
+			conCupo = cupos.tryAcquire (esperaMaxima, TimeUnit.MILLISECONDS);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread ().interrupt ();
+			throw new JDODataStoreException ("Interrumpido esperando un PersistenceManager", e);
+		}
+		long espera = System.nanoTime () - inicio;
+		esperaTotal.addAndGet (espera);
+		esperaMaximaObservada.accumulateAndGet (espera, Math::max);
+		if (!conCupo)
+		{
+			solicitudesVencidas.incrementAndGet ();
+			if (metricas != null && operacion != null)
+			{
+				metricas.darOperacion (operacion).registrar (espera, 0, true);
+			}
+			throw new JDODataStoreException ("No hay conexiones disponibles después de " + esperaMaxima + " ms: " + abiertos.size () + " PersistenceManager abiertos");
+		}
+
+		PersistenceManager pm;
+		try
+		{
+			pm = pmf.getPersistenceManager ();
+		}
+		catch (RuntimeException e)
+		{
+			cupos.release ();
+			throw e;
+		}
+		long numero = numeroPrestamos.incrementAndGet ();
+		Prestamo prestamo = new Prestamo (numero, pm, rastrearOrigen ? new Throwable ("PersistenceManager #" + numero + " abierto aquí") : null, operacion, inicio);
+		abiertos.put (numero, prestamo);
+		return (PersistenceManager) Proxy.newProxyInstance (PersistenceManager.class.getClassLoader (), new Class<?> [] {PersistenceManager.class}, prestamo);
+	}
+
+	/**
+	 * Libera el cupo de un préstamo cerrado
+	 * @param prestamo - El préstamo cerrado
+	 */
+	private void devolver (Prestamo prestamo)
+	{
+		if (abiertos.remove (prestamo.numero) != null)
+		{
+			cupos.release ();
+		}
+	}
+
+	/**
+	 * Reporta en el log los PersistenceManager abiertos por más tiempo que el umbral de fuga
+	 */
+	private void reportarFugas ()
+	{
+		for (String fuga : darPosiblesFugas ())
+		{
+			log.warn (fuga);
+		}
+	}
+
+	/**
+	 * Encuentra los PersistenceManager abiertos por más tiempo que el umbral de fuga que no se habían reportado antes
+	 * @return Una descripción de cada posible fuga, con el punto del código donde se abrió si se rastrea el origen
+	 */
+	public List<String> darPosiblesFugas ()
+	{
+		List<String> resp = new LinkedList<String> ();
+		long ahora = System.currentTimeMillis ();
+		for (Prestamo prestamo : abiertos.values ())
+		{
+			long tiempo = ahora - prestamo.apertura;
+			if (!prestamo.reportado && tiempo > umbralFuga)
+			{
+				prestamo.reportado = true;
+				fugasReportadas.incrementAndGet ();
+				String fuga = "Posible fuga: PersistenceManager #" + prestamo.numero + " abierto hace " + tiempo + " ms";
+				if (prestamo.origen != null)
+				{
+					StringBuilder pila = new StringBuilder (fuga);
+					for (StackTraceElement elemento : prestamo.origen.getStackTrace ())
+					{
+						pila.append ("\n\tat ").append (elemento);
+					}
+					fuga = pila.toString ();
+				}
+				resp.add (fuga);
+			}
+		}
+		return resp;
+	}
+
+	/**
+	 * @return El número de PersistenceManager abiertos en este momento
+	 */
+	public int darActivos ()
+	{
+		return abiertos.size ();
+	}
+
+	/**
+	 * @return El número máximo de PersistenceManager abiertos al tiempo
+	 */
+	public int darMaxActivos ()
+	{
+		return maxActivos;
+	}
+
+	/**
+	 * @return El número de PersistenceManager entregados desde que se creó el administrador
+	 */
+	public long darTotalEntregados ()
+	{
+		return numeroPrestamos.get ();
+	}
+
+	/**
+	 * @return El tiempo promedio de espera por un PersistenceManager, en milisegundos
+	 */
+	public double darEsperaPromedio ()
+	{
+		long solicitudes = numeroPrestamos.get () + solicitudesVencidas.get ();
+		return solicitudes == 0 ? 0 : esperaTotal.get () / 1e6 / solicitudes;
+	}
+
+	/**
+	 * @return El máximo tiempo de espera por un PersistenceManager observado, en milisegundos
+	 */
+	public double darEsperaMaxima ()
+	{
+		return esperaMaximaObservada.get () / 1e6;
+	}
+
+	/**
+	 * @return El número de solicitudes que no obtuvieron un PersistenceManager a tiempo
+	 */
+	public long darSolicitudesVencidas ()
+	{
+		return solicitudesVencidas.get ();
+	}
+
+	/**
+	 * @return El número de posibles fugas reportadas
+	 */
+	public long darFugasReportadas ()
+	{
+		return fugasReportadas.get ();
+	}
+
+	/**
+	 * Detiene la revisión periódica de fugas
+	 */
+	public void cerrar ()
+	{
+		vigilante.shutdownNow ();
+	}
+
+	@Override
+	public String toString ()
+	{
+		return "AdministradorPersistenceManagers [activos=" + darActivos () + "/" + maxActivos + ", entregados=" + darTotalEntregados ()
+				+ ", esperaPromedio=" + darEsperaPromedio () + " ms, esperaMaxima=" + darEsperaMaxima () + " ms, vencidas=" + darSolicitudesVencidas ()
+				+ ", fugas=" + darFugasReportadas () + "]";
+	}
+}
@@ -0,0 +1,260 @@
+package uniandes.isis2304.superandes.persistencia;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.jdo.PersistenceManager;
+import javax.jdo.PersistenceManagerFactory;
+import javax.jdo.Transaction;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Clase que reparte los identificadores de SuperAndes por bloques (esquema hi/lo).
+ * Cada vez que se agota el bloque de una tabla se pide un único valor "hi" a superandes_sequence y se reservan
+ * los identificadores [hi * tamañoBloque, (hi + 1) * tamañoBloque), que luego se entregan en memoria sin ir a la base de datos.
+ * Con un tamaño de bloque de 1 el comportamiento es idéntico al de pedir nextval por cada inserción.
+ * Como el rango depende del tamaño del bloque, cambiarlo entre ejecuciones haría que los rangos nuevos se traslaparan con los
+ * ya entregados: el tamaño de cada tabla queda registrado en la tabla de CONTROL la primera vez que se usa, y un tamaño
+ * configurado distinto del registrado se rechaza.
+ * Nótese que es una clase que es sólo conocida en el paquete de persistencia
+ *
+ * @author n.cobos, jf.torresp
+ */
+class AsignadorIdentificadores
+{
+	/* ****************************************************************
+	 * 			Constantes
+	 *****************************************************************/
+	/**
+	 * Logger para escribir la traza de la ejecución
+	 */
+	private static Logger log = Logger.getLogger(AsignadorIdentificadores.class.getName());
+
+	/**
+	 * Prefijo de las claves de CONTROL con el tamaño del bloque de cada tabla
+	 */
+	private final static String CLAVE_BLOQUE = "bloque.";
+
+	/**
+	 * Tamaño del bloque que se usa para las tablas que no tienen uno configurado
+	 */
+	public final static int TAMANO_BLOQUE_DEFECTO = 20;
+
+	/* ****************************************************************
+	 * 			Atributos
+	 *****************************************************************/
+	/**
+	 * Fábrica de manejadores de persistencia, para pedir los valores del secuenciador
+	 */
+	private PersistenceManagerFactory pmf;
+
+	/**
+	 * Atributo para el acceso a la sentencia nextval del secuenciador
+	 */
+	private SQLUtil sqlUtil;
+
+	/**
+	 * Atributo para el acceso a la tabla de CONTROL, donde se registra el tamaño del bloque de cada tabla
+	 */
+	private SQLControl sqlControl;
+
+	/**
+	 * Tamaño del bloque de identificadores por tabla
+	 */
+	private Map<String, Integer> tamanosBloque;
+
+	/**
+	 * Tamaño del bloque para las tablas que no aparecen en tamanosBloque
+	 */
+	private int tamanoBloqueDefecto;
+
+	/**
+	 * Bloque vigente por tabla
+	 */
+	private ConcurrentHashMap<String, Bloque> bloques;
+
+	/**
+	 * Tablas cuyo tamaño de bloque ya se comparó con el registrado en la tabla de CONTROL
+	 */
+	private Set<String> tamanosVerificados;
+
+	/**
+	 * Rango de identificadores reservado para una tabla
+	 */
+	private static class Bloque
+	{
+		/**
+		 * El siguiente identificador a entregar
+		 */
+		private final AtomicLong siguiente;
+
+		/**
+		 * El primer identificador que ya no pertenece al bloque
+		 */
+		private final long limite;
+
+		/**
+		 * Constructor
+		 * @param inicio - El primer identificador del bloque
+		 * @param limite - El primer identificador que ya no pertenece al bloque
+		 */
+		public Bloque (long inicio, long limite)
+		{
+			this.siguiente = new AtomicLong (inicio);
+			this.limite = limite;
+		}
+	}
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	/**
+	 * Constructor
+	 * @param pmf - La fábrica de manejadores de persistencia
+	 * @param sqlUtil - Las sentencias SQL de apoyo, para obtener el siguiente valor del secuenciador
+	 * @param sqlControl - Las sentencias SQL de la tabla de CONTROL, para registrar el tamaño del bloque de cada tabla
+	 * @param tamanosBloque - El tamaño del bloque de identificadores para cada tabla. Puede ser vacío
+	 * @param tamanoBloqueDefecto - El tamaño del bloque para las demás tablas
+	 */
+	public AsignadorIdentificadores (PersistenceManagerFactory pmf, SQLUtil sqlUtil, SQLControl sqlControl, Map<String, Integer> tamanosBloque, int tamanoBloqueDefecto)
+	{
+		if (tamanoBloqueDefecto < 1)
+		{
+			throw new IllegalArgumentException ("El tamaño del bloque de identificadores debe ser positivo: " + tamanoBloqueDefecto);
+		}
+		for (Map.Entry<String, Integer> tamano : tamanosBloque.entrySet ())
+		{
+			if (tamano.getValue () < 1)
+			{
+				throw new IllegalArgumentException ("El tamaño del bloque de identificadores de " + tamano.getKey () + " debe ser positivo: " + tamano.getValue ());
+			}
+		}
+		this.pmf = pmf;
+		this.sqlUtil = sqlUtil;
+		this.sqlControl = sqlControl;
+		this.tamanosBloque = new HashMap<String, Integer> (tamanosBloque);
+		this.tamanoBloqueDefecto = tamanoBloqueDefecto;
+		this.bloques = new ConcurrentHashMap<String, Bloque> ();
+		this.tamanosVerificados = new HashSet<String> ();
+	}
+
+	/**
+	 * Entrega el siguiente identificador para una tabla. Sólo va a la base de datos cuando el bloque de la tabla se agota
+	 * @param tabla - El nombre de la tabla para la que se genera el identificador
+	 * @return Un identificador que no ha sido entregado antes
+	 * @throws IllegalStateException - Si el tamaño de bloque configurado para la tabla es distinto del registrado en la tabla de CONTROL
+	 */
+	public long siguiente (String tabla)
+	{
+		Bloque bloque = bloques.get (tabla);
+		while (true)
+		{
+			if (bloque != null)
+			{
+				long id = bloque.siguiente.getAndIncrement ();
+				if (id < bloque.limite)
+				{
+					return id;
+				}
+			}
+			bloque = reservarBloque (tabla, bloque);
+		}
+	}
+
+	/**
+	 * @param tabla - El nombre de la tabla
+	 * @return El tamaño del bloque de identificadores de la tabla
+	 */
+	public int darTamanoBloque (String tabla)
+	{
+		Integer tamano = tamanosBloque.get (tabla);
+		return tamano != null ? tamano : tamanoBloqueDefecto;
+	}
+
+	/**
+	 * Reserva un nuevo bloque para la tabla, a menos que otro hilo ya lo haya hecho
+	 * @param tabla - El nombre de la tabla
+	 * @param agotado - El bloque que se encontró agotado. null si la tabla aún no tenía bloque
+	 * @return El bloque vigente de la tabla
+	 */
+	private synchronized Bloque reservarBloque (String tabla, Bloque agotado)
+	{
+		Bloque actual = bloques.get (tabla);
+		if (actual != agotado)
+		{
+			return actual;
+		}
+
+		int tamano = darTamanoBloque (tabla);
+		long hi;
+		PersistenceManager pm = pmf.getPersistenceManager ();
+		try
+		{
+			if (!tamanosVerificados.contains (tabla))
+			{
+				verificarTamano (pm, tabla, tamano);
+				tamanosVerificados.add (tabla);
+			}
+			hi = sqlUtil.nextval (pm);
+		}
+		finally
+		{
+			pm.close ();
+		}
+		Bloque nuevo = new Bloque (hi * tamano, (hi + 1) * tamano);
+		bloques.put (tabla, nuevo);
+		log.trace ("Bloque de identificadores para " + tabla + ": [" + hi * tamano + ", " + (hi + 1) * tamano + ")");
+		return nuevo;
+	}
+
+	/**
+	 * Compara el tamaño del bloque de una tabla con el registrado en la tabla de CONTROL, y lo registra si la tabla aún no tiene uno
+	 * @param pm - El manejador de persistencia
+	 * @param tabla - El nombre de la tabla
+	 * @param tamano - El tamaño del bloque configurado para la tabla
+	 * @throws IllegalStateException - Si el tamaño registrado es distinto del configurado
+	 */
+	private void verificarTamano (PersistenceManager pm, String tabla, int tamano)
+	{
+		String clave = CLAVE_BLOQUE + tabla;
+		Long registrado = sqlControl.darValor (pm, clave);
+		if (registrado == null)
+		{
+			Transaction tx = pm.currentTransaction ();
+			try
+			{
+				tx.begin ();
+				sqlControl.adicionarValor (pm, clave, tamano);
+				tx.commit ();
+				log.info ("Tamaño del bloque de identificadores de " + tabla + " registrado: " + tamano);
+				return;
+			}
+			catch (Exception e)
+			{
+				// Otra instancia de la aplicación pudo registrarlo al mismo tiempo
+				registrado = sqlControl.darValor (pm, clave);
+				if (registrado == null)
+				{
+					throw e;
+				}
+			}
+			finally
+			{
+				if (tx.isActive ())
+				{
+					tx.rollback ();
+				}
+			}
+		}
+		if (registrado != tamano)
+		{
+			throw new IllegalStateException ("El tamaño del bloque de identificadores de " + tabla + " es " + tamano + " pero la base de datos"
+					+ " se numeró con bloques de " + registrado + ": los rangos se traslaparían. Configure bloquesIdentificadores con " + registrado);
+		}
+	}
+}
@@ -0,0 +1,768 @@
+package uniandes.isis2304.superandes.persistencia;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+import org.apache.log4j.Logger;
+
+import uniandes.isis2304.superandes.negocio.Producto;
+
+/**
+ * Índice de búsqueda en memoria de los productos por nombre, marca, presentación, categoría y tipo, para buscar mientras se escribe.
+ * Los textos se normalizan (minúsculas, sin tildes) y se parten en términos. Cada término tiene su lista de productos, con los campos
+ * en que aparece; el diccionario de términos está ordenado, de manera que los términos que empiezan por un prefijo son un rango de él,
+ * y cada término se indexa además por sus trigramas, para encontrar los términos a distancia de edición 1 o 2 de una palabra mal escrita
+ * sin recorrer todo el diccionario.
+ * Cada palabra de la búsqueda puede coincidir exacta, como prefijo o aproximada con algún término; los productos se ordenan primero por
+ * cuántas palabras de la búsqueda coinciden y luego por un puntaje que pondera el tipo de coincidencia y el campo (el nombre pesa más
+ * que la marca, y ésta más que la categoría, el tipo y la presentación).
+ * Los productos se leen de la base de datos en la primera búsqueda; después, el manejador de persistencia aplica cada producto adicionado
+ * o eliminado. Un producto eliminado sólo se marca; cuando los marcados son la mitad del índice, éste se vuelve a armar en memoria
+ *
+ * @author n.cobos, jf.torresp
+ */
+public class BuscadorProductos
+{
+	/* ****************************************************************
+	 * 			Constantes
+	 *****************************************************************/
+	/**
+	 * Logger para escribir la traza de la ejecución
+	 */
+	private static Logger log = Logger.getLogger(BuscadorProductos.class.getName());
+
+	/**
+	 * Número de resultados por defecto
+	 */
+	public final static int RESULTADOS_DEFECTO = 20;
+
+	/**
+	 * Separadores de términos en los textos normalizados
+	 */
+	private final static Pattern SEPARADORES = Pattern.compile ("[^a-z0-9]+");
+
+	/**
+	 * Marcas diacríticas, que se quitan al normalizar
+	 */
+	private final static Pattern DIACRITICOS = Pattern.compile ("\\p{M}+");
+
+	/**
+	 * El peso de cada campo, en el orden de los bits de los campos: nombre, marca, categoría, tipo y presentación
+	 */
+	private final static float [] PESOS_CAMPOS = {1.0f, 0.8f, 0.6f, 0.5f, 0.4f};
+
+	/**
+	 * Peso de una coincidencia exacta de una palabra con un término
+	 */
+	private final static float PESO_EXACTA = 1.0f;
+
+	/**
+	 * Peso de una palabra que es prefijo de un término
+	 */
+	private final static float PESO_PREFIJO = 0.7f;
+
+	/**
+	 * Peso de una palabra a distancia de edición 1 o 2 de un término, según la distancia
+	 */
+	private final static float [] PESOS_APROXIMADA = {0f, 0.5f, 0.3f};
+
+	/**
+	 * Número máximo de palabras de una búsqueda que se tienen en cuenta
+	 */
+	private final static int MAX_PALABRAS = 32;
+
+	/* ****************************************************************
+	 * 			Atributos
+	 *****************************************************************/
+	/**
+	 * El manejador de persistencia
+	 */
+	private final PersistenciaSuperAndes pp;
+
+	/**
+	 * Candado de lectura para las búsquedas y de escritura para los cambios
+	 */
+	private final ReentrantReadWriteLock candado;
+
+	/**
+	 * Los productos, por ordinal. null si el producto se eliminó
+	 */
+	private Producto [] productos;
+
+	/**
+	 * Los ordinales de los productos eliminados, como bits. Más compacto que productos, para descartarlos al recorrer los términos
+	 */
+	private long [] borrados;
+
+	/**
+	 * Número de ordinales asignados
+	 */
+	private int numProductos;
+
+	/**
+	 * Número de ordinales de productos eliminados
+	 */
+	private int eliminados;
+
+	/**
+	 * El ordinal de cada producto vigente, por identificador
+	 */
+	private final Map<Long, Integer> ordinales;
+
+	/**
+	 * El diccionario de términos, ordenado
+	 */
+	private final TreeMap<String, Termino> diccionario;
+
+	/**
+	 * Los términos, por número
+	 */
+	private final List<Termino> terminos;
+
+	/**
+	 * Los números de los términos que contienen cada trigrama
+	 */
+	private final Map<String, ListaEnteros> trigramas;
+
+	/**
+	 * Indica si los productos ya se leyeron de la base de datos
+	 */
+	private volatile boolean cargado;
+
+	/**
+	 * Los acumuladores de puntajes de cada hilo, que se reutilizan entre búsquedas para no reservar arreglos del tamaño del índice en cada una
+	 */
+	private final ThreadLocal<Acumuladores> acumuladores;
+
+	/**
+	 * Los puntajes de una búsqueda, por ordinal de producto. Todos en cero entre búsquedas
+	 */
+	private static class Acumuladores
+	{
+		/**
+		 * Para el ordinal o, en 2o el puntaje acumulado del producto y en 2o + 1 su mejor puntaje con la palabra que se está procesando.
+		 * Juntos quedan en la misma línea de caché, que es lo que cuesta al recorrer términos con muchos productos.
+		 * El puntaje acumulado es MAX_PALABRAS por el número de palabras que coinciden más la suma de sus puntajes, cada uno a lo sumo 1,
+		 * de manera que compararlo es comparar primero las palabras que coinciden y luego los puntajes
+		 */
+		private float [] valores = new float [0];
+
+		/**
+		 * @param tamano - El número de ordinales que deben caber
+		 */
+		public void asegurar (int tamano)
+		{
+			if (valores.length < 2 * tamano)
+			{
+				valores = new float [2 * tamano];
+			}
+		}
+	}
+
+	/**
+	 * Una lista creciente de enteros
+	 */
+	private static class ListaEnteros
+	{
+		/**
+		 * Los enteros
+		 */
+		private int [] valores = new int [2];
+
+		/**
+		 * Número de enteros
+		 */
+		private int tamano;
+
+		/**
+		 * @param valor - El entero a agregar al final
+		 */
+		public void agregar (int valor)
+		{
+			if (tamano == valores.length)
+			{
+				valores = Arrays.copyOf (valores, tamano * 2);
+			}
+			valores [tamano++] = valor;
+		}
+	}
+
+	/**
+	 * Un término con los productos en que aparece
+	 */
+	private static class Termino
+	{
+		/**
+		 * El texto del término
+		 */
+		private final String texto;
+
+		/**
+		 * Los ordinales de los productos en que aparece
+		 */
+		private final ListaEnteros productos = new ListaEnteros ();
+
+		/**
+		 * Los campos en que aparece en cada producto, como bits en el orden de PESOS_CAMPOS
+		 */
+		private byte [] campos = new byte [2];
+
+		/**
+		 * Constructor
+		 * @param texto - El texto del término
+		 */
+		public Termino (String texto)
+		{
+			this.texto = texto;
+		}
+
+		/**
+		 * @param ordinal - El ordinal de un producto
+		 * @param camposProducto - Los campos del producto en que aparece el término
+		 */
+		public void agregar (int ordinal, byte camposProducto)
+		{
+			if (productos.tamano == campos.length)
+			{
+				campos = Arrays.copyOf (campos, campos.length * 2);
+			}
+			campos [productos.tamano] = camposProducto;
+			productos.agregar (ordinal);
+		}
+	}
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	/**
+	 * Constructor
+	 * @param pp - El manejador de persistencia
+	 */
+	BuscadorProductos (PersistenciaSuperAndes pp)
+	{
+		this.pp = pp;
+		this.candado = new ReentrantReadWriteLock ();
+		this.productos = new Producto [64];
+		this.borrados = new long [1];
+		this.acumuladores = ThreadLocal.withInitial (Acumuladores::new);
+		this.ordinales = new HashMap<Long, Integer> ();
+		this.diccionario = new TreeMap<String, Termino> ();
+		this.terminos = new ArrayList<Termino> ();
+		this.trigramas = new HashMap<String, ListaEnteros> ();
+	}
+
+	/**
+	 * @param texto - Un texto. Puede ser null
+	 * @return Los términos del texto: en minúsculas, sin tildes y partido en letras y dígitos
+	 */
+	static List<String> darTerminos (String texto)
+	{
+		List<String> resp = new ArrayList<String> ();
+		if (texto == null)
+		{
+			return resp;
+		}
+		String normalizado = DIACRITICOS.matcher (Normalizer.normalize (texto, Normalizer.Form.NFD)).replaceAll ("").toLowerCase (Locale.ROOT);
+		for (String termino : SEPARADORES.split (normalizado))
+		{
+			if (!termino.isEmpty ())
+			{
+				resp.add (termino);
+			}
+		}
+		return resp;
+	}
+
+	/**
+	 * @param termino - Un término
+	 * @return Los trigramas del término, con marcas de inicio y de fin
+	 */
+	private static List<String> darTrigramas (String termino)
+	{
+		String marcado = "^" + termino + "$";
+		List<String> resp = new ArrayList<String> ();
+		for (int i = 0; i + 3 <= marcado.length (); i++)
+		{
+			resp.add (marcado.substring (i, i + 3));
+		}
+		return resp;
+	}
+
+	/**
+	 * Lee los productos de la base de datos si no se han leído
+	 */
+	private void cargar ()
+	{
+		candado.writeLock ().lock ();
+		try
+		{
+			if (cargado)
+			{
+				return;
+			}
+			long inicio = System.currentTimeMillis ();
+			vaciar ();
+			pp.recorrerProductos ().forEach (this::agregarSinCandado);
+			cargado = true;
+			log.info ("Índice de búsqueda de productos cargado: " + ordinales.size () + " productos, " + terminos.size () + " términos, en "
+					+ (System.currentTimeMillis () - inicio) + " ms");
+		}
+		finally
+		{
+			candado.writeLock ().unlock ();
+		}
+	}
+
+	/**
+	 * Olvida todos los productos. Se debe tener el candado de escritura
+	 */
+	private void vaciar ()
+	{
+		productos = new Producto [64];
+		borrados = new long [1];
+		numProductos = 0;
+		eliminados = 0;
+		ordinales.clear ();
+		diccionario.clear ();
+		terminos.clear ();
+		trigramas.clear ();
+	}
+
+	/**
+	 * Agrega un producto al índice, o lo reemplaza si ya está. Se debe tener el candado de escritura
+	 * @param producto - El producto
+	 */
+	private void agregarSinCandado (Producto producto)
+	{
+		eliminarSinCandado (producto.getId ());
+		int ordinal = numProductos++;
+		if (ordinal == productos.length)
+		{
+			productos = Arrays.copyOf (productos, productos.length * 2);
+			borrados = Arrays.copyOf (borrados, productos.length / 64);
+		}
+		productos [ordinal] = producto;
+		ordinales.put (producto.getId (), ordinal);
+		Map<String, Integer> campos = new HashMap<String, Integer> ();
+		String [] textos = {producto.getNombre (), producto.getMarca (), producto.getCategoria (), producto.getTipo (), producto.getPresentacion ()};
+		for (int c = 0; c < textos.length; c++)
+		{
+			for (String texto : darTerminos (textos [c]))
+			{
+				campos.merge (texto, 1 << c, (a, b) -> a | b);
+			}
+		}
+		for (Map.Entry<String, Integer> campo : campos.entrySet ())
+		{
+			darTermino (campo.getKey ()).agregar (ordinal, (byte) (int) campo.getValue ());
+		}
+	}
+
+	/**
+	 * @param texto - El texto de un término
+	 * @return El término, que se crea e indexa por sus trigramas si no existe. Se debe tener el candado de escritura
+	 */
+	private Termino darTermino (String texto)
+	{
+		Termino resp = diccionario.get (texto);
+		if (resp == null)
+		{
+			resp = new Termino (texto);
+			diccionario.put (texto, resp);
+			int numero = terminos.size ();
+			terminos.add (resp);
+			for (String trigrama : darTrigramas (texto))
+			{
+				trigramas.computeIfAbsent (trigrama, k -> new ListaEnteros ()).agregar (numero);
+			}
+		}
+		return resp;
+	}
+
+	/**
+	 * Marca un producto como eliminado. Se debe tener el candado de escritura
+	 * @param id - El identificador del producto
+	 */
+	private void eliminarSinCandado (long id)
+	{
+		Integer ordinal = ordinales.remove (id);
+		if (ordinal != null)
+		{
+			productos [ordinal] = null;
+			borrados [ordinal >>> 6] |= 1L << ordinal;
+			eliminados++;
+		}
+	}
+
+	/**
+	 * Vuelve a armar el índice con los productos vigentes si la mitad de los ordinales son de productos eliminados.
+	 * Se debe tener el candado de escritura
+	 */
+	private void compactarSiHaceFalta ()
+	{
+		if (eliminados > 1024 && eliminados * 2 > numProductos)
+		{
+			Producto [] vigentes = Arrays.stream (productos, 0, numProductos).filter (p -> p != null).toArray (Producto []::new);
+			vaciar ();
+			for (Producto producto : vigentes)
+			{
+				agregarSinCandado (producto);
+			}
+		}
+	}
+
+	/**
+	 * Agrega productos ya confirmados en la base de datos, o los reemplaza si ya están
+	 * @param nuevos - Los productos
+	 */
+	public void agregar (List<Producto> nuevos)
+	{
+		candado.writeLock ().lock ();
+		try
+		{
+			if (cargado)
+			{
+				for (Producto producto : nuevos)
+				{
+					agregarSinCandado (producto);
+				}
+			}
+		}
+		finally
+		{
+			candado.writeLock ().unlock ();
+		}
+	}
+
+	/**
+	 * Olvida un producto ya eliminado de la base de datos
+	 * @param id - El identificador del producto
+	 */
+	public void eliminar (long id)
+	{
+		candado.writeLock ().lock ();
+		try
+		{
+			eliminarSinCandado (id);
+			compactarSiHaceFalta ();
+		}
+		finally
+		{
+			candado.writeLock ().unlock ();
+		}
+	}
+
+	/**
+	 * Hace que los productos se vuelvan a leer de la base de datos en la siguiente búsqueda
+	 */
+	public void invalidar ()
+	{
+		candado.writeLock ().lock ();
+		try
+		{
+			cargado = false;
+			vaciar ();
+		}
+		finally
+		{
+			candado.writeLock ().unlock ();
+		}
+	}
+
+	/**
+	 * @param texto - El texto buscado, por ejemplo lo que lleva escrito el cajero. La última palabra puede estar incompleta
+	 * @param n - El número máximo de resultados
+	 * @return Los productos que mejor coinciden con el texto, del mejor al peor. Vacío si el texto no tiene palabras
+	 */
+	public List<Producto> buscar (String texto, int n)
+	{
+		List<String> palabras = darTerminos (texto);
+		if (palabras.isEmpty () || n <= 0)
+		{
+			return new ArrayList<Producto> ();
+		}
+		candado.readLock ().lock ();
+		while (!cargado)
+		{
+			candado.readLock ().unlock ();
+			cargar ();
+			candado.readLock ().lock ();
+		}
+		try
+		{
+			Acumuladores acumulador = acumuladores.get ();
+			acumulador.asegurar (numProductos);
+			float [] valores = acumulador.valores;
+			ListaEnteros tocados = new ListaEnteros ();
+			ListaEnteros tocadosPalabra = new ListaEnteros ();
+			try
+			{
+				for (String palabra : palabras.subList (0, Math.min (palabras.size (), MAX_PALABRAS - 1)))
+				{
+					// El mejor puntaje de la palabra en cada producto, sin importar con cuántos términos del producto coincida
+					tocadosPalabra.tamano = 0;
+					for (Map.Entry<Termino, Float> coincidencia : darCoincidencias (palabra).entrySet ())
+					{
+						Termino termino = coincidencia.getKey ();
+						float peso = coincidencia.getValue ();
+						for (int i = 0; i < termino.productos.tamano; i++)
+						{
+							int ordinal = termino.productos.valores [i];
+							if ((borrados [ordinal >>> 6] & (1L << ordinal)) != 0)
+							{
+								continue;
+							}
+							float puntaje = peso * darPesoCampos (termino.campos [i]);
+							float mejor = valores [2 * ordinal + 1];
+							if (mejor == 0)
+							{
+								tocadosPalabra.agregar (ordinal);
+							}
+							if (puntaje > mejor)
+							{
+								valores [2 * ordinal + 1] = puntaje;
+							}
+						}
+					}
+					for (int i = 0; i < tocadosPalabra.tamano; i++)
+					{
+						int ordinal = tocadosPalabra.valores [i];
+						if (valores [2 * ordinal] == 0)
+						{
+							tocados.agregar (ordinal);
+						}
+						valores [2 * ordinal] += MAX_PALABRAS + valores [2 * ordinal + 1];
+						valores [2 * ordinal + 1] = 0;
+					}
+				}
+				return seleccionar (tocados, n, valores);
+			}
+			finally
+			{
+				for (int i = 0; i < tocados.tamano; i++)
+				{
+					valores [2 * tocados.valores [i]] = 0;
+				}
+				for (int i = 0; i < tocadosPalabra.tamano; i++)
+				{
+					valores [2 * tocadosPalabra.valores [i] + 1] = 0;
+				}
+			}
+		}
+		finally
+		{
+			candado.readLock ().unlock ();
+		}
+	}
+
+	/**
+	 * @param tocados - Los ordinales de los productos encontrados
+	 * @param n - El número máximo de resultados
+	 * @param valores - Los puntajes acumulados de los productos
+	 * @return Los n mejores productos, del mejor al peor
+	 */
+	private List<Producto> seleccionar (ListaEnteros tocados, int n, float [] valores)
+	{
+		// Un montículo de ordinales con el peor en la raíz
+		int [] seleccion = new int [Math.min (n, tocados.tamano)];
+		int tamano = 0;
+		for (int i = 0; i < tocados.tamano; i++)
+		{
+			int ordinal = tocados.valores [i];
+			if (tamano < seleccion.length)
+			{
+				seleccion [tamano++] = ordinal;
+				subir (seleccion, tamano - 1, valores);
+			}
+			else if (comparar (ordinal, seleccion [0], valores) > 0)
+			{
+				seleccion [0] = ordinal;
+				bajar (seleccion, tamano, valores);
+			}
+		}
+		Producto [] resp = new Producto [tamano];
+		while (tamano > 0)
+		{
+			resp [--tamano] = productos [seleccion [0]];
+			seleccion [0] = seleccion [tamano];
+			bajar (seleccion, tamano, valores);
+		}
+		return new ArrayList<Producto> (Arrays.asList (resp));
+	}
+
+	/**
+	 * @param a - El ordinal de un producto encontrado
+	 * @param b - El ordinal de otro producto encontrado
+	 * @param valores - Los puntajes acumulados de los productos
+	 * @return Un número positivo si a es mejor que b: más palabras coincidentes, mayor puntaje o, en empate, menor identificador
+	 */
+	private int comparar (int a, int b, float [] valores)
+	{
+		if (valores [2 * a] != valores [2 * b])
+		{
+			return Float.compare (valores [2 * a], valores [2 * b]);
+		}
+		return Long.compare (productos [b].getId (), productos [a].getId ());
+	}
+
+	/**
+	 * Sube un elemento del montículo de los mejores hasta su lugar
+	 * @param monticulo - Los ordinales, con el peor en la raíz
+	 * @param i - La posición del elemento
+	 * @param valores - Los puntajes acumulados de los productos
+	 */
+	private void subir (int [] monticulo, int i, float [] valores)
+	{
+		while (i > 0 && comparar (monticulo [i], monticulo [(i - 1) / 2], valores) < 0)
+		{
+			int padre = (i - 1) / 2;
+			int cambio = monticulo [i];
+			monticulo [i] = monticulo [padre];
+			monticulo [padre] = cambio;
+			i = padre;
+		}
+	}
+
+	/**
+	 * Baja la raíz del montículo de los mejores hasta su lugar
+	 * @param monticulo - Los ordinales, con el peor en la raíz
+	 * @param tamano - El número de elementos del montículo
+	 * @param valores - Los puntajes acumulados de los productos
+	 */
+	private void bajar (int [] monticulo, int tamano, float [] valores)
+	{
+		int i = 0;
+		while (2 * i + 1 < tamano)
+		{
+			int hijo = 2 * i + 1;
+			if (hijo + 1 < tamano && comparar (monticulo [hijo + 1], monticulo [hijo], valores) < 0)
+			{
+				hijo++;
+			}
+			if (comparar (monticulo [hijo], monticulo [i], valores) >= 0)
+			{
+				return;
+			}
+			int cambio = monticulo [i];
+			monticulo [i] = monticulo [hijo];
+			monticulo [hijo] = cambio;
+			i = hijo;
+		}
+	}
+
+	/**
+	 * @param campos - Los bits de los campos en que aparece un término en un producto
+	 * @return El peso del campo más importante
+	 */
+	private static float darPesoCampos (byte campos)
+	{
+		return PESOS_CAMPOS [Integer.numberOfTrailingZeros (campos)];
+	}
+
+	/**
+	 * @param palabra - Una palabra de la búsqueda, normalizada
+	 * @return Los términos que coinciden con la palabra, exacta, como prefijo o aproximadamente, con el peso de la mejor coincidencia.
+	 * Se debe tener el candado de lectura
+	 */
+	private Map<Termino, Float> darCoincidencias (String palabra)
+	{
+		Map<Termino, Float> resp = new HashMap<Termino, Float> ();
+		for (Termino termino : diccionario.subMap (palabra, true, palabra + Character.MAX_VALUE, false).values ())
+		{
+			resp.put (termino, termino.texto.length () == palabra.length () ? PESO_EXACTA : PESO_PREFIJO);
+		}
+		int maxDistancia = palabra.length () >= 8 ? 2 : palabra.length () >= 4 ? 1 : 0;
+		if (maxDistancia == 0)
+		{
+			return resp;
+		}
+		// Un término a distancia d comparte al menos (trigramas de la palabra - 3d) trigramas con ella
+		List<String> trigramasPalabra = darTrigramas (palabra);
+		int minimoComunes = trigramasPalabra.size () - 3 * maxDistancia;
+		int [] comunes = new int [terminos.size ()];
+		ListaEnteros candidatos = new ListaEnteros ();
+		for (String trigrama : trigramasPalabra)
+		{
+			ListaEnteros conTrigrama = trigramas.get (trigrama);
+			for (int i = 0; conTrigrama != null && i < conTrigrama.tamano; i++)
+			{
+				if (comunes [conTrigrama.valores [i]]++ == 0)
+				{
+					candidatos.agregar (conTrigrama.valores [i]);
+				}
+			}
+		}
+		for (int i = 0; i < candidatos.tamano; i++)
+		{
+			Termino termino = terminos.get (candidatos.valores [i]);
+			if (comunes [candidatos.valores [i]] < Math.max (1, minimoComunes) || resp.containsKey (termino)
+					|| Math.abs (termino.texto.length () - palabra.length ()) > maxDistancia)
+			{
+				continue;
+			}
+			int distancia = darDistancia (palabra, termino.texto, maxDistancia);
+			if (distancia <= maxDistancia)
+			{
+				resp.put (termino, PESOS_APROXIMADA [distancia]);
+			}
+		}
+		return resp;
+	}
+
+	/**
+	 * @param a - Un texto
+	 * @param b - Otro texto
+	 * @param maximo - La distancia máxima que interesa
+	 * @return La distancia de edición (Levenshtein) entre los textos, o maximo + 1 si es mayor que maximo
+	 */
+	static int darDistancia (String a, String b, int maximo)
+	{
+		int [] anterior = new int [b.length () + 1];
+		int [] actual = new int [b.length () + 1];
+		for (int j = 0; j <= b.length (); j++)
+		{
+			anterior [j] = j;
+		}
+		for (int i = 1; i <= a.length (); i++)
+		{
+			actual [0] = i;
+			int minimoFila = i;
+			for (int j = 1; j <= b.length (); j++)
+			{
+				int costo = a.charAt (i - 1) == b.charAt (j - 1) ? 0 : 1;
+				actual [j] = Math.min (Math.min (actual [j - 1] + 1, anterior [j] + 1), anterior [j - 1] + costo);
+				minimoFila = Math.min (minimoFila, actual [j]);
+			}
+			if (minimoFila > maximo)
+			{
+				return maximo + 1;
+			}
+			int [] cambio = anterior;
+			anterior = actual;
+			actual = cambio;
+		}
+		return Math.min (anterior [b.length ()], maximo + 1);
+	}
+
+	@Override
+	public String toString ()
+	{
+		candado.readLock ().lock ();
+		try
+		{
+			return "BuscadorProductos [cargado=" + cargado + ", productos=" + ordinales.size () + ", eliminados=" + eliminados + ", terminos=" + terminos.size () + "]";
+		}
+		finally
+		{
+			candado.readLock ().unlock ();
+		}
+	}
+}
@@ -0,0 +1,417 @@
+package uniandes.isis2304.superandes.persistencia;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Caché de lectura para los datos del catálogo de SuperAndes, que cambian poco y se consultan mucho.
+ * Tiene un número máximo de entradas y cada entrada vence después de un tiempo de vida.
+ * Cuando está llena, una entrada nueva sólo desplaza a la menos recientemente usada si se ha pedido con más frecuencia
+ * que ella (política de admisión TinyLFU). La frecuencia se estima con un count-min sketch de contadores de 4 bits,
+ * que se reducen a la mitad periódicamente para que la historia antigua pierda peso.
+ *
+ * @param <K> - El tipo de las llaves
+ * @param <V> - El tipo de los valores
+ * @author n.cobos, jf.torresp
+ */
+public class CacheCatalogo<K, V>
+{
+	/* ****************************************************************
+	 * 			Constantes
+	 *****************************************************************/
+	/**
+	 * Número de entradas por defecto
+	 */
+	public final static int CAPACIDAD_DEFECTO = 1000;
+
+	/**
+	 * Tiempo de vida de las entradas por defecto, en segundos
+	 */
+	public final static long TTL_DEFECTO = 300;
+
+	/* ****************************************************************
+	 * 			Atributos
+	 *****************************************************************/
+	/**
+	 * El nombre del caché, para los reportes
+	 */
+	private final String nombre;
+
+	/**
+	 * Número máximo de entradas
+	 */
+	private final int capacidad;
+
+	/**
+	 * Tiempo de vida de cada entrada, en nanosegundos
+	 */
+	private final long ttl;
+
+	/**
+	 * Las entradas, en orden de uso: la primera es la menos recientemente usada
+	 */
+	private final LinkedHashMap<K, Entrada<V>> entradas;
+
+	/**
+	 * El estimador de frecuencia de las llaves pedidas
+	 */
+	private final Sketch sketch;
+
+	/**
+	 * Cambia cada vez que se invalida el caché, para descartar valores cargados antes de la invalidación
+	 */
+	private long generacion;
+
+	/**
+	 * Número de consultas resueltas por el caché
+	 */
+	private long aciertos;
+
+	/**
+	 * Número de consultas que tuvieron que ir a la base de datos
+	 */
+	private long fallos;
+
+	/**
+	 * Número de entradas desplazadas por otras más frecuentes
+	 */
+	private long desalojos;
+
+	/**
+	 * Número de valores que no se admitieron por ser menos frecuentes que la entrada a desplazar
+	 */
+	private long rechazos;
+
+	/**
+	 * Número de entradas descartadas por vencimiento
+	 */
+	private long vencimientos;
+
+	/**
+	 * Un valor del caché con su momento de vencimiento
+	 */
+	private static class Entrada<V>
+	{
+		/**
+		 * El valor
+		 */
+		private final V valor;
+
+		/**
+		 * Momento de vencimiento, según System.nanoTime
+		 */
+		private final long vence;
+
+		/**
+		 * Constructor
+		 * @param valor - El valor
+		 * @param vence - Momento de vencimiento, según System.nanoTime
+		 */
+		public Entrada (V valor, long vence)
+		{
+			this.valor = valor;
+			this.vence = vence;
+		}
+	}
+
+	/**
+	 * Count-min sketch de cuatro filas con contadores de 4 bits empacados en arreglos de long
+	 */
+	private static class Sketch
+	{
+		/**
+		 * Semillas para las cuatro funciones de hash
+		 */
+		private static final long [] SEMILLAS = {0x9E3779B97F4A7C15L, 0xC2B2AE3D27D4EB4FL, 0x165667B19E3779F9L, 0xD6E8FEB86659FD93L};
+
+		/**
+		 * Los contadores de cada fila, 16 por long
+		 */
+		private final long [][] filas;
+
+		/**
+		 * Máscara para obtener la posición de un contador en una fila
+		 */
+		private final int mascara;
+
+		/**
+		 * Número de incrementos después del cual se reducen a la mitad todos los contadores
+		 */
+		private final int periodo;
+
+		/**
+		 * Incrementos desde la última reducción
+		 */
+		private int incrementos;
+
+		/**
+		 * Constructor
+		 * @param capacidad - El número de entradas del caché
+		 */
+		public Sketch (int capacidad)
+		{
+			int ancho = Integer.highestOneBit (Math.max (16, capacidad) - 1) << 1;
+			filas = new long [SEMILLAS.length][ancho / 16];
+			mascara = ancho - 1;
+			periodo = 10 * Math.max (16, capacidad);
+		}
+
+		/**
+		 * @param llave - Una llave
+		 * @param fila - El número de la fila
+		 * @return La posición del contador de la llave en la fila
+		 */
+		private int posicion (Object llave, int fila)
+		{
+			long h = (llave.hashCode () + SEMILLAS [fila]) * SEMILLAS [fila];
+			h ^= h >>> 32;
+			return (int) h & mascara;
+		}
+
+		/**
+		 * @param llave - Una llave
+		 * @return La frecuencia estimada de la llave, entre 0 y 15
+		 */
+		public int frecuencia (Object llave)
+		{
+			int resp = 15;
+			for (int i = 0; i < filas.length; i++)
+			{
+				int pos = posicion (llave, i);
+				resp = Math.min (resp, (int) (filas [i][pos >>> 4] >>> ((pos & 15) << 2)) & 15);
+			}
+			return resp;
+		}
+
+		/**
+		 * Registra un pedido de la llave
+		 * @param llave - Una llave
+		 */
+		public void incrementar (Object llave)
+		{
+			for (int i = 0; i < filas.length; i++)
+			{
+				int pos = posicion (llave, i);
+				int corrimiento = (pos & 15) << 2;
+				if (((filas [i][pos >>> 4] >>> corrimiento) & 15) < 15)
+				{
+					filas [i][pos >>> 4] += 1L << corrimiento;
+				}
+			}
+			if (++incrementos >= periodo)
+			{
+				reducir ();
+			}
+		}
+
+		/**
+		 * Reduce todos los contadores a la mitad
+		 */
+		private void reducir ()
+		{
+			for (long [] fila : filas)
+			{
+				for (int j = 0; j < fila.length; j++)
+				{
+					fila [j] = (fila [j] >>> 1) & 0x7777777777777777L;
+				}
+			}
+			incrementos /= 2;
+		}
+	}
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	/**
+	 * Constructor
+	 * @param nombre - El nombre del caché, para los reportes
+	 * @param capacidad - El número máximo de entradas
+	 * @param ttlSegundos - El tiempo de vida de cada entrada, en segundos
+	 */
+	public CacheCatalogo (String nombre, int capacidad, long ttlSegundos)
+	{
+		if (capacidad < 1 || ttlSegundos < 1)
+		{
+			throw new IllegalArgumentException ("La capacidad y el tiempo de vida del caché " + nombre + " deben ser positivos");
+		}
+		this.nombre = nombre;
+		this.capacidad = capacidad;
+		this.ttl = ttlSegundos * 1000000000L;
+		this.entradas = new LinkedHashMap<K, Entrada<V>> (16, 0.75f, true);
+		this.sketch = new Sketch (capacidad);
+	}
+
+	/**
+	 * Retorna el valor de la llave. Si no está en el caché, lo obtiene con el cargador y lo guarda.
+	 * Los valores null no se guardan
+	 * @param llave - La llave
+	 * @param cargador - La consulta a la base de datos para la llave
+	 * @return El valor de la llave
+	 */
+	public V dar (K llave, Function<K, V> cargador)
+	{
+		long generacionCarga;
+		synchronized (this)
+		{
+			V valor = buscar (llave);
+			if (valor != null)
+			{
+				return valor;
+			}
+			generacionCarga = generacion;
+		}
+
+		V valor = cargador.apply (llave);
+		if (valor != null)
+		{
+			synchronized (this)
+			{
+				if (generacion == generacionCarga)
+				{
+					admitir (llave, valor);
+				}
+			}
+		}
+		return valor;
+	}
+
+	/**
+	 * Busca la llave y actualiza las estadísticas
+	 * @param llave - La llave
+	 * @return El valor vigente de la llave. null si no está o ya venció
+	 */
+	private V buscar (K llave)
+	{
+		sketch.incrementar (llave);
+		Entrada<V> entrada = entradas.get (llave);
+		if (entrada != null && entrada.vence - System.nanoTime () <= 0)
+		{
+			entradas.remove (llave);
+			vencimientos++;
+			entrada = null;
+		}
+		if (entrada == null)
+		{
+			fallos++;
+			return null;
+		}
+		aciertos++;
+		return entrada.valor;
+	}
+
+	/**
+	 * Guarda el valor si hay espacio o si la llave es más frecuente que la entrada menos recientemente usada
+	 * @param llave - La llave
+	 * @param valor - El valor
+	 */
+	private void admitir (K llave, V valor)
+	{
+		long ahora = System.nanoTime ();
+		if (!entradas.containsKey (llave) && entradas.size () >= capacidad)
+		{
+			Iterator<Map.Entry<K, Entrada<V>>> it = entradas.entrySet ().iterator ();
+			Map.Entry<K, Entrada<V>> victima = it.next ();
+			if (victima.getValue ().vence - ahora <= 0)
+			{
+				vencimientos++;
+			}
+			else if (sketch.frecuencia (llave) > sketch.frecuencia (victima.getKey ()))
+			{
+				desalojos++;
+			}
+			else
+			{
+				rechazos++;
+				return;
+			}
+			it.remove ();
+		}
+		entradas.put (llave, new Entrada<V> (valor, ahora + ttl));
+	}
+
+	/**
+	 * Elimina la llave del caché
+	 * @param llave - La llave
+	 */
+	public synchronized void invalidar (K llave)
+	{
+		generacion++;
+		entradas.remove (llave);
+	}
+
+	/**
+	 * Elimina todas las entradas del caché. Las estadísticas se conservan
+	 */
+	public synchronized void invalidarTodo ()
+	{
+		generacion++;
+		entradas.clear ();
+	}
+
+	/**
+	 * @return El número de entradas en el caché
+	 */
+	public synchronized int darTamano ()
+	{
+		return entradas.size ();
+	}
+
+	/**
+	 * @return El número de consultas resueltas por el caché
+	 */
+	public synchronized long darAciertos ()
+	{
+		return aciertos;
+	}
+
+	/**
+	 * @return El número de consultas que tuvieron que ir a la base de datos
+	 */
+	public synchronized long darFallos ()
+	{
+		return fallos;
+	}
+
+	/**
+	 * @return La fracción de consultas resueltas por el caché, entre 0 y 1
+	 */
+	public synchronized double darTasaAciertos ()
+	{
+		long total = aciertos + fallos;
+		return total == 0 ? 0 : (double) aciertos / total;
+	}
+
+	/**
+	 * @return El número de entradas desplazadas por otras más frecuentes
+	 */
+	public synchronized long darDesalojos ()
+	{
+		return desalojos;
+	}
+
+	/**
+	 * @return El número de valores que no se admitieron por ser poco frecuentes
+	 */
+	public synchronized long darRechazos ()
+	{
+		return rechazos;
+	}
+
+	/**
+	 * @return El número de entradas descartadas por vencimiento
+	 */
+	public synchronized long darVencimientos ()
+	{
+		return vencimientos;
+	}
+
+	@Override
+	public synchronized String toString ()
+	{
+		return "CacheCatalogo " + nombre + " [entradas=" + entradas.size () + "/" + capacidad + ", aciertos=" + aciertos + ", fallos=" + fallos
+				+ ", desalojos=" + desalojos + ", rechazos=" + rechazos + ", vencimientos=" + vencimientos + "]";
+	}
+}
@@ -0,0 +1,394 @@
+package uniandes.isis2304.superandes.persistencia;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.jdo.JDODataStoreException;
+
+import org.apache.log4j.Logger;
+
+import uniandes.isis2304.superandes.negocio.Transaccion;
+
+/**
+ * Cola de escritura diferida de las tuplas de TRANSACCION: las inserciones de muchas cajas concurrentes se acumulan en una cola acotada
+ * y un hilo escritor las inserta por grupos, cada grupo en una sola transacción con lotes de JDBC, de manera que el costo de confirmar
+ * se reparte entre todas las inserciones del grupo.
+ * Un grupo se cierra cuando reúne tamanoGrupo transacciones o cuando pasan esperaGrupoMs desde su primera inserción. Mientras se
+ * confirma un grupo, las inserciones que llegan se acumulan para el siguiente.
+ * Cada inserción recibe un CompletableFuture que se completa cuando su grupo queda confirmado, para quien necesite esperar a que
+ * sea durable. Si la base de datos se atrasa y la cola se llena, quien encola espera a lo sumo esperaMaximaMs y después la
+ * inserción se rechaza
+ *
+ * @author n.cobos, jf.torresp
+ */
+public class ColaTransacciones
+{
+	/* ****************************************************************
+	 * 			Constantes
+	 *****************************************************************/
+	/**
+	 * Logger para escribir la traza de la ejecución
+	 */
+	private static Logger log = Logger.getLogger(ColaTransacciones.class.getName());
+
+	/**
+	 * Número máximo por defecto de inserciones pendientes en la cola
+	 */
+	public final static int CAPACIDAD_DEFECTO = 10000;
+
+	/**
+	 * Número máximo por defecto de transacciones de cada grupo
+	 */
+	public final static int TAMANO_GRUPO_DEFECTO = 500;
+
+	/**
+	 * Tiempo máximo por defecto que se espera a completar un grupo, en milisegundos
+	 */
+	public final static long ESPERA_GRUPO_DEFECTO = 5;
+
+	/**
+	 * Tiempo máximo por defecto que se espera por un cupo en la cola, en milisegundos
+	 */
+	public final static long ESPERA_MAXIMA_DEFECTO = 1000;
+
+	/**
+	 * Tiempo máximo que el hilo escritor espera por una inserción antes de revisar si la cola se cerró, en milisegundos
+	 */
+	private final static long ESPERA_CIERRE = 100;
+
+	/* ****************************************************************
+	 * 			Clases
+	 *****************************************************************/
+	/**
+	 * Una inserción pendiente: las transacciones de una caja y el futuro que se completa cuando se confirman
+	 */
+	private static class Insercion
+	{
+		/**
+		 * Las transacciones a insertar
+		 */
+		final List<Transaccion> transacciones;
+
+		/**
+		 * El futuro de la inserción
+		 */
+		final CompletableFuture<Integer> futuro;
+
+		/**
+		 * Constructor
+		 * @param transacciones - Las transacciones a insertar
+		 */
+		Insercion (List<Transaccion> transacciones)
+		{
+			this.transacciones = transacciones;
+			this.futuro = new CompletableFuture<Integer> ();
+		}
+	}
+
+	/* ****************************************************************
+	 * 			Atributos
+	 *****************************************************************/
+	/**
+	 * El manejador de persistencia, para insertar los grupos
+	 */
+	private final PersistenciaSuperAndes pp;
+
+	/**
+	 * Las inserciones pendientes
+	 */
+	private final BlockingQueue<Insercion> cola;
+
+	/**
+	 * Número máximo de transacciones de cada grupo
+	 */
+	private final int tamanoGrupo;
+
+	/**
+	 * Tiempo máximo que se espera a completar un grupo, en nanosegundos
+	 */
+	private final long esperaGrupo;
+
+	/**
+	 * Tiempo máximo que se espera por un cupo en la cola, en milisegundos
+	 */
+	private final long esperaMaxima;
+
+	/**
+	 * Indica si la cola ya no recibe inserciones
+	 */
+	private volatile boolean cerrada;
+
+	/**
+	 * Hilo que inserta los grupos
+	 */
+	private final Thread escritor;
+
+	/**
+	 * Número de grupos confirmados en la base de datos
+	 */
+	private final AtomicLong grupos;
+
+	/**
+	 * Número de transacciones confirmadas en la base de datos
+	 */
+	private final AtomicLong transacciones;
+
+	/**
+	 * Número de inserciones rechazadas por tener la cola llena o cerrada
+	 */
+	private final AtomicLong rechazadas;
+
+	/**
+	 * Número de inserciones que fallaron en la base de datos
+	 */
+	private final AtomicLong fallidas;
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	/**
+	 * Constructor. Inicia el hilo escritor
+	 * @param pp - El manejador de persistencia
+	 * @param capacidad - El número máximo de inserciones pendientes en la cola
+	 * @param tamanoGrupo - El número máximo de transacciones de cada grupo
+	 * @param esperaGrupoMs - El tiempo máximo que se espera a completar un grupo, en milisegundos. 0 para agrupar sólo lo que
+	 * llegó mientras se confirmaba el grupo anterior
+	 * @param esperaMaximaMs - El tiempo máximo que se espera por un cupo en la cola, en milisegundos
+	 */
+	ColaTransacciones (PersistenciaSuperAndes pp, int capacidad, int tamanoGrupo, long esperaGrupoMs, long esperaMaximaMs)
+	{
+		if (capacidad < 1 || tamanoGrupo < 1 || esperaGrupoMs < 0 || esperaMaximaMs < 0)
+		{
+			throw new IllegalArgumentException ("Configuración inválida de la cola de transacciones: capacidad " + capacidad + ", grupos de "
+					+ tamanoGrupo + ", espera del grupo " + esperaGrupoMs + " ms, espera máxima " + esperaMaximaMs + " ms");
+		}
+		this.pp = pp;
+		this.cola = new ArrayBlockingQueue<Insercion> (capacidad);
+		this.tamanoGrupo = tamanoGrupo;
+		this.esperaGrupo = TimeUnit.MILLISECONDS.toNanos (esperaGrupoMs);
+		this.esperaMaxima = esperaMaximaMs;
+		this.grupos = new AtomicLong ();
+		this.transacciones = new AtomicLong ();
+		this.rechazadas = new AtomicLong ();
+		this.fallidas = new AtomicLong ();
+
+		escritor = new Thread (this::escribir, "superandes-cola-transacciones");
+		escritor.setDaemon (true);
+		escritor.start ();
+	}
+
+	/**
+	 * Encola la inserción de unas transacciones, cuyas facturas deben existir. Espera a lo sumo esperaMaximaMs por un cupo en la cola
+	 * @param nuevas - Las transacciones a insertar
+	 * @return Un futuro que se completa con el número de tuplas insertadas cuando las transacciones quedan confirmadas, o con
+	 * una excepción si la inserción se rechaza o falla
+	 */
+	public CompletableFuture<Integer> encolar (List<Transaccion> nuevas)
+	{
+		Insercion insercion = new Insercion (nuevas);
+		boolean encolada = false;
+		try
+		{
+			encolada = !cerrada && cola.offer (insercion, esperaMaxima, TimeUnit.MILLISECONDS);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread ().interrupt ();
+		}
+		if (!encolada)
+		{
+			rechazadas.incrementAndGet ();
+			insercion.futuro.completeExceptionally (new RejectedExecutionException (cerrada ? "La cola de transacciones está cerrada"
+					: "La cola de transacciones está llena después de " + esperaMaxima + " ms: " + cola.size () + " inserciones pendientes"));
+		}
+		return insercion.futuro;
+	}
+
+	/**
+	 * Ciclo del hilo escritor: arma los grupos con las inserciones de la cola y los inserta, hasta que la cola se cierra y queda vacía
+	 */
+	private void escribir ()
+	{
+		List<Insercion> grupo = new ArrayList<Insercion> ();
+		try
+		{
+			while (!cerrada || !cola.isEmpty ())
+			{
+				Insercion primera = cola.poll (ESPERA_CIERRE, TimeUnit.MILLISECONDS);
+				if (primera == null)
+				{
+					continue;
+				}
+				grupo.add (primera);
+				int tamano = primera.transacciones.size ();
+				long limite = System.nanoTime () + esperaGrupo;
+				while (tamano < tamanoGrupo)
+				{
+					Insercion siguiente = cola.poll ();
+					if (siguiente == null)
+					{
+						long resta = limite - System.nanoTime ();
+						if (resta <= 0 || cerrada)
+						{
+							break;
+						}
+						// Espera por tramos, para que el cierre no tenga que esperar a que se complete el grupo
+						siguiente = cola.poll (Math.min (resta, TimeUnit.MILLISECONDS.toNanos (ESPERA_CIERRE)), TimeUnit.NANOSECONDS);
+						if (siguiente == null)
+						{
+							continue;
+						}
+					}
+					grupo.add (siguiente);
+					tamano += siguiente.transacciones.size ();
+				}
+				insertar (grupo);
+				grupo.clear ();
+			}
+		}
+		catch (InterruptedException e)
+		{
+			insertar (grupo);
+		}
+	}
+
+	/**
+	 * Inserta un grupo en una sola transacción y completa sus futuros. Si el grupo falla, inserta cada inserción por separado,
+	 * de manera que una inserción inválida sólo hace fallar su propio futuro. Si el manejador de persistencia lanza una excepción,
+	 * el grupo completo falla con ella, sin detener el hilo escritor
+	 * @param grupo - Las inserciones del grupo
+	 */
+	private void insertar (List<Insercion> grupo)
+	{
+		if (grupo.isEmpty ())
+		{
+			return;
+		}
+		List<Transaccion> todas = new ArrayList<Transaccion> ();
+		for (Insercion insercion : grupo)
+		{
+			todas.addAll (insercion.transacciones);
+		}
+		long [] resp;
+		try
+		{
+			resp = pp.adicionarTransaccion (todas);
+		}
+		catch (RuntimeException e)
+		{
+			log.error ("Falló un grupo de " + grupo.size () + " inserciones de la cola de transacciones: " + e.getMessage ());
+			fallidas.addAndGet (grupo.size ());
+			for (Insercion insercion : grupo)
+			{
+				insercion.futuro.completeExceptionally (e);
+			}
+			return;
+		}
+		if (resp != null)
+		{
+			grupos.incrementAndGet ();
+			transacciones.addAndGet (todas.size ());
+			int i = 0;
+			for (Insercion insercion : grupo)
+			{
+				int insertadas = 0;
+				for (int j = 0; j < insercion.transacciones.size (); j++)
+				{
+					insertadas += resp [i++];
+				}
+				insercion.futuro.complete (insertadas);
+			}
+			log.trace ("Grupo de la cola de transacciones: " + grupo.size () + " inserciones, " + todas.size () + " transacciones");
+		}
+		else if (grupo.size () > 1)
+		{
+			log.warn ("Falló un grupo de " + grupo.size () + " inserciones de la cola de transacciones, se insertan por separado");
+			for (Insercion insercion : grupo)
+			{
+				List<Insercion> sola = new ArrayList<Insercion> ();
+				sola.add (insercion);
+				insertar (sola);
+			}
+		}
+		else
+		{
+			fallidas.incrementAndGet ();
+			grupo.get (0).futuro.completeExceptionally (new JDODataStoreException ("No se pudieron insertar "
+					+ todas.size () + " transacciones de la cola de transacciones"));
+		}
+	}
+
+	/**
+	 * @return El número de inserciones pendientes en la cola
+	 */
+	public int darPendientes ()
+	{
+		return cola.size ();
+	}
+
+	/**
+	 * @return El número de grupos confirmados en la base de datos
+	 */
+	public long darGrupos ()
+	{
+		return grupos.get ();
+	}
+
+	/**
+	 * @return El número de transacciones confirmadas en la base de datos
+	 */
+	public long darTransacciones ()
+	{
+		return transacciones.get ();
+	}
+
+	/**
+	 * @return El número de inserciones rechazadas por tener la cola llena o cerrada
+	 */
+	public long darRechazadas ()
+	{
+		return rechazadas.get ();
+	}
+
+	/**
+	 * @return El número de inserciones que fallaron en la base de datos
+	 */
+	public long darFallidas ()
+	{
+		return fallidas.get ();
+	}
+
+	/**
+	 * Deja de recibir inserciones, inserta las pendientes y detiene el hilo escritor
+	 */
+	public void cerrar ()
+	{
+		cerrada = true;
+		try
+		{
+			escritor.join ();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread ().interrupt ();
+		}
+		// Una inserción encolada justo al cerrar pudo quedar después de que el escritor terminó
+		List<Insercion> restantes = new ArrayList<Insercion> ();
+		cola.drainTo (restantes);
+		insertar (restantes);
+	}
+
+	@Override
+	public String toString ()
+	{
+		return "ColaTransacciones [grupos=" + darGrupos () + ", transacciones=" + darTransacciones () + ", promedioGrupo="
+				+ (grupos.get () == 0 ? 0 : transacciones.get () / grupos.get ()) + ", rechazadas=" + darRechazadas () + ", fallidas=" + darFallidas ()
+				+ ", pendientes=" + darPendientes () + "]";
+	}
+}
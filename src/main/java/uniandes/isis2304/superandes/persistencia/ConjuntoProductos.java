@@ -0,0 +1,446 @@
+package uniandes.isis2304.superandes.persistencia;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Conjunto comprimido de ordinales de productos (enteros no negativos y densos), al estilo de los mapas de bits Roaring.
+ * Los ordinales se parten en bloques de 2^16 según sus 16 bits altos, y cada bloque se guarda como un arreglo ordenado de sus 16 bits
+ * bajos mientras tiene a lo sumo 4096 elementos (8 KB como máximo), o como un mapa de bits de 2^16 posiciones (8 KB) cuando tiene más.
+ * Así, una sucursal con pocos productos ocupa poco, y las intersecciones y las uniones trabajan bloque por bloque, palabra por palabra
+ * en los mapas de bits.
+ * No es seguro para varios hilos: IndiceSurtido protege sus conjuntos con su propio candado
+ * Nótese que es una clase que es sólo conocida en el paquete de persistencia
+ *
+ * @author n.cobos, jf.torresp
+ */
+class ConjuntoProductos
+{
+	/* ****************************************************************
+	 * 			Constantes
+	 *****************************************************************/
+	/**
+	 * Número máximo de elementos de un bloque guardado como arreglo
+	 */
+	private final static int MAX_ARREGLO = 4096;
+
+	/**
+	 * Número de palabras de 64 bits del mapa de bits de un bloque
+	 */
+	private final static int PALABRAS = 1 << 10;
+
+	/* ****************************************************************
+	 * 			Atributos
+	 *****************************************************************/
+	/**
+	 * Los bloques, por sus 16 bits altos. null si el bloque está vacío
+	 */
+	private Bloque [] bloques;
+
+	/**
+	 * Los elementos de un bloque: un arreglo ordenado o un mapa de bits
+	 */
+	private static class Bloque
+	{
+		/**
+		 * Los 16 bits bajos de los elementos, ordenados. null si el bloque es un mapa de bits
+		 */
+		private char [] arreglo;
+
+		/**
+		 * El mapa de bits de los 16 bits bajos de los elementos. null si el bloque es un arreglo
+		 */
+		private long [] bits;
+
+		/**
+		 * Número de elementos del bloque
+		 */
+		private int tamano;
+
+		/**
+		 * @param bajo - Los 16 bits bajos de un elemento
+		 * @return true si el elemento está en el bloque
+		 */
+		public boolean contiene (char bajo)
+		{
+			if (bits != null)
+			{
+				return (bits [bajo >>> 6] & (1L << bajo)) != 0;
+			}
+			return Arrays.binarySearch (arreglo, 0, tamano, bajo) >= 0;
+		}
+
+		/**
+		 * @param bajo - Los 16 bits bajos de un elemento
+		 * @return true si el elemento no estaba en el bloque
+		 */
+		public boolean agregar (char bajo)
+		{
+			if (bits != null)
+			{
+				long antes = bits [bajo >>> 6];
+				bits [bajo >>> 6] = antes | (1L << bajo);
+				if (antes == bits [bajo >>> 6])
+				{
+					return false;
+				}
+				tamano++;
+				return true;
+			}
+			int i = Arrays.binarySearch (arreglo, 0, tamano, bajo);
+			if (i >= 0)
+			{
+				return false;
+			}
+			if (tamano == MAX_ARREGLO)
+			{
+				convertirEnBits ();
+				return agregar (bajo);
+			}
+			i = -i - 1;
+			if (tamano == arreglo.length)
+			{
+				arreglo = Arrays.copyOf (arreglo, Math.min (MAX_ARREGLO, Math.max (4, tamano * 2)));
+			}
+			System.arraycopy (arreglo, i, arreglo, i + 1, tamano - i);
+			arreglo [i] = bajo;
+			tamano++;
+			return true;
+		}
+
+		/**
+		 * @param bajo - Los 16 bits bajos de un elemento
+		 * @return true si el elemento estaba en el bloque
+		 */
+		public boolean quitar (char bajo)
+		{
+			if (bits != null)
+			{
+				long antes = bits [bajo >>> 6];
+				bits [bajo >>> 6] = antes & ~(1L << bajo);
+				if (antes == bits [bajo >>> 6])
+				{
+					return false;
+				}
+				tamano--;
+				if (tamano <= MAX_ARREGLO)
+				{
+					convertirEnArreglo ();
+				}
+				return true;
+			}
+			int i = Arrays.binarySearch (arreglo, 0, tamano, bajo);
+			if (i < 0)
+			{
+				return false;
+			}
+			System.arraycopy (arreglo, i + 1, arreglo, i, tamano - i - 1);
+			tamano--;
+			return true;
+		}
+
+		/**
+		 * Cambia el arreglo por un mapa de bits
+		 */
+		private void convertirEnBits ()
+		{
+			bits = new long [PALABRAS];
+			for (int i = 0; i < tamano; i++)
+			{
+				bits [arreglo [i] >>> 6] |= 1L << arreglo [i];
+			}
+			arreglo = null;
+		}
+
+		/**
+		 * Cambia el mapa de bits por un arreglo. El bloque debe tener a lo sumo MAX_ARREGLO elementos
+		 */
+		private void convertirEnArreglo ()
+		{
+			char [] nuevo = new char [Math.max (4, tamano)];
+			int n = 0;
+			for (int w = 0; w < PALABRAS; w++)
+			{
+				for (long palabra = bits [w]; palabra != 0; palabra &= palabra - 1)
+				{
+					nuevo [n++] = (char) ((w << 6) + Long.numberOfTrailingZeros (palabra));
+				}
+			}
+			arreglo = nuevo;
+			bits = null;
+		}
+
+		/**
+		 * @param bits - Un mapa de bits
+		 * @param tamano - Su número de elementos
+		 * @return Un bloque con los elementos del mapa, como arreglo si son pocos. null si no tiene elementos
+		 */
+		private static Bloque deBits (long [] bits, int tamano)
+		{
+			if (tamano == 0)
+			{
+				return null;
+			}
+			Bloque resp = new Bloque ();
+			resp.bits = bits;
+			resp.tamano = tamano;
+			if (tamano <= MAX_ARREGLO)
+			{
+				resp.convertirEnArreglo ();
+			}
+			return resp;
+		}
+
+		/**
+		 * @param otro - Otro bloque
+		 * @return Los elementos que están en los dos bloques. null si no hay ninguno
+		 */
+		public Bloque interseccion (Bloque otro)
+		{
+			if (bits != null && otro.bits != null)
+			{
+				long [] nuevos = new long [PALABRAS];
+				int n = 0;
+				for (int w = 0; w < PALABRAS; w++)
+				{
+					nuevos [w] = bits [w] & otro.bits [w];
+					n += Long.bitCount (nuevos [w]);
+				}
+				return deBits (nuevos, n);
+			}
+			if (bits != null)
+			{
+				return otro.interseccion (this);
+			}
+			char [] nuevo = new char [Math.min (tamano, otro.tamano)];
+			int n = 0;
+			if (otro.bits != null)
+			{
+				for (int i = 0; i < tamano; i++)
+				{
+					if (otro.contiene (arreglo [i]))
+					{
+						nuevo [n++] = arreglo [i];
+					}
+				}
+			}
+			else
+			{
+				for (int i = 0, j = 0; i < tamano && j < otro.tamano; )
+				{
+					if (arreglo [i] < otro.arreglo [j])
+					{
+						i++;
+					}
+					else if (arreglo [i] > otro.arreglo [j])
+					{
+						j++;
+					}
+					else
+					{
+						nuevo [n++] = arreglo [i];
+						i++;
+						j++;
+					}
+				}
+			}
+			if (n == 0)
+			{
+				return null;
+			}
+			Bloque resp = new Bloque ();
+			resp.arreglo = nuevo;
+			resp.tamano = n;
+			return resp;
+		}
+
+		/**
+		 * @param otro - Otro bloque
+		 * @return Los elementos que están en alguno de los dos bloques
+		 */
+		public Bloque union (Bloque otro)
+		{
+			long [] nuevos = new long [PALABRAS];
+			for (Bloque b : new Bloque [] {this, otro})
+			{
+				if (b.bits != null)
+				{
+					for (int w = 0; w < PALABRAS; w++)
+					{
+						nuevos [w] |= b.bits [w];
+					}
+				}
+				else
+				{
+					for (int i = 0; i < b.tamano; i++)
+					{
+						nuevos [b.arreglo [i] >>> 6] |= 1L << b.arreglo [i];
+					}
+				}
+			}
+			int n = 0;
+			for (int w = 0; w < PALABRAS; w++)
+			{
+				n += Long.bitCount (nuevos [w]);
+			}
+			return deBits (nuevos, n);
+		}
+
+		/**
+		 * @return Una copia del bloque
+		 */
+		public Bloque copiar ()
+		{
+			Bloque resp = new Bloque ();
+			resp.arreglo = arreglo != null ? Arrays.copyOf (arreglo, arreglo.length) : null;
+			resp.bits = bits != null ? Arrays.copyOf (bits, PALABRAS) : null;
+			resp.tamano = tamano;
+			return resp;
+		}
+
+		/**
+		 * @param alto - Los 16 bits altos de los elementos del bloque, ya corridos
+		 * @param accion - La acción a ejecutar con cada elemento, en orden ascendente
+		 */
+		public void recorrer (int alto, IntConsumer accion)
+		{
+			if (bits != null)
+			{
+				for (int w = 0; w < PALABRAS; w++)
+				{
+					for (long palabra = bits [w]; palabra != 0; palabra &= palabra - 1)
+					{
+						accion.accept (alto | (w << 6) + Long.numberOfTrailingZeros (palabra));
+					}
+				}
+			}
+			else
+			{
+				for (int i = 0; i < tamano; i++)
+				{
+					accion.accept (alto | arreglo [i]);
+				}
+			}
+		}
+	}
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	/**
+	 * Constructor de un conjunto vacío
+	 */
+	public ConjuntoProductos ()
+	{
+		this.bloques = new Bloque [1];
+	}
+
+	/**
+	 * @param ordinal - Un ordinal, no negativo
+	 * @return true si el ordinal está en el conjunto
+	 */
+	public boolean contiene (int ordinal)
+	{
+		int alto = ordinal >>> 16;
+		return alto < bloques.length && bloques [alto] != null && bloques [alto].contiene ((char) ordinal);
+	}
+
+	/**
+	 * @param ordinal - Un ordinal, no negativo
+	 * @return true si el ordinal no estaba en el conjunto
+	 */
+	public boolean agregar (int ordinal)
+	{
+		int alto = ordinal >>> 16;
+		if (alto >= bloques.length)
+		{
+			bloques = Arrays.copyOf (bloques, alto + 1);
+		}
+		if (bloques [alto] == null)
+		{
+			bloques [alto] = new Bloque ();
+			bloques [alto].arreglo = new char [4];
+		}
+		return bloques [alto].agregar ((char) ordinal);
+	}
+
+	/**
+	 * @param ordinal - Un ordinal, no negativo
+	 * @return true si el ordinal estaba en el conjunto
+	 */
+	public boolean quitar (int ordinal)
+	{
+		int alto = ordinal >>> 16;
+		if (alto >= bloques.length || bloques [alto] == null || !bloques [alto].quitar ((char) ordinal))
+		{
+			return false;
+		}
+		if (bloques [alto].tamano == 0)
+		{
+			bloques [alto] = null;
+		}
+		return true;
+	}
+
+	/**
+	 * @return El número de ordinales del conjunto
+	 */
+	public int darTamano ()
+	{
+		int resp = 0;
+		for (Bloque bloque : bloques)
+		{
+			resp += bloque != null ? bloque.tamano : 0;
+		}
+		return resp;
+	}
+
+	/**
+	 * @param otro - Otro conjunto
+	 * @return Un conjunto nuevo con los ordinales que están en los dos conjuntos
+	 */
+	public ConjuntoProductos interseccion (ConjuntoProductos otro)
+	{
+		ConjuntoProductos resp = new ConjuntoProductos ();
+		resp.bloques = new Bloque [Math.max (1, Math.min (bloques.length, otro.bloques.length))];
+		for (int i = 0; i < bloques.length && i < otro.bloques.length; i++)
+		{
+			if (bloques [i] != null && otro.bloques [i] != null)
+			{
+				resp.bloques [i] = bloques [i].interseccion (otro.bloques [i]);
+			}
+		}
+		return resp;
+	}
+
+	/**
+	 * @param otro - Otro conjunto
+	 * @return Un conjunto nuevo con los ordinales que están en alguno de los dos conjuntos
+	 */
+	public ConjuntoProductos union (ConjuntoProductos otro)
+	{
+		ConjuntoProductos resp = new ConjuntoProductos ();
+		resp.bloques = new Bloque [Math.max (bloques.length, otro.bloques.length)];
+		for (int i = 0; i < resp.bloques.length; i++)
+		{
+			Bloque a = i < bloques.length ? bloques [i] : null;
+			Bloque b = i < otro.bloques.length ? otro.bloques [i] : null;
+			resp.bloques [i] = a == null ? (b == null ? null : b.copiar ()) : (b == null ? a.copiar () : a.union (b));
+		}
+		return resp;
+	}
+
+	/**
+	 * @param accion - La acción a ejecutar con cada ordinal del conjunto, en orden ascendente
+	 */
+	public void recorrer (IntConsumer accion)
+	{
+		for (int i = 0; i < bloques.length; i++)
+		{
+			if (bloques [i] != null)
+			{
+				bloques [i].recorrer (i << 16, accion);
+			}
+		}
+	}
+}
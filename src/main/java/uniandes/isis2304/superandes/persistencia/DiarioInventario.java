@@ -0,0 +1,311 @@
+package uniandes.isis2304.superandes.persistencia;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Diario de los cambios de existencias del inventario en memoria que todavía no se han descargado en la base de datos.
+ * Cada cambio se escribe en el diario antes de aplicarse en memoria; si la aplicación se cae, al reiniciar se leen los
+ * cambios del diario y se vuelven a cargar como pendientes.
+ * El diario se divide en segmentos numerados (inventario-N.diario). Cada descarga cierra el segmento actual y abre el siguiente,
+ * y los segmentos se borran cuando sus cambios quedan confirmados en la base de datos. Como el borrado es posterior a la confirmación,
+ * la base de datos registra en la misma transacción el último segmento descargado, y al abrir el diario se borran sin leerlos
+ * los segmentos hasta ese número. La numeración continúa después de él aunque ya no queden segmentos en el directorio.
+ * Cada registro lleva un CRC32, de manera que un registro escrito a medias por una caída se detecta y se descarta
+ * Nótese que es una clase que es sólo conocida en el paquete de persistencia
+ *
+ * @author n.cobos, jf.torresp
+ */
+class DiarioInventario
+{
+	/* ****************************************************************
+	 * 			Constantes
+	 *****************************************************************/
+	/**
+	 * Logger para escribir la traza de la ejecución
+	 */
+	private static Logger log = Logger.getLogger(DiarioInventario.class.getName());
+
+	/**
+	 * Tipo de registro de un cambio en las existencias de las bodegas
+	 */
+	public final static byte BODEGAS = 'B';
+
+	/**
+	 * Tipo de registro de un cambio en las existencias de los estantes
+	 */
+	public final static byte ESTANTES = 'E';
+
+	/**
+	 * Tamaño de cada registro, en bytes: tipo, sucursal, producto, cambio y CRC32
+	 */
+	public final static int TAMANO_REGISTRO = 1 + 8 + 8 + 8 + 4;
+
+	/**
+	 * Prefijo de los archivos de los segmentos
+	 */
+	private final static String PREFIJO = "inventario-";
+
+	/**
+	 * Extensión de los archivos de los segmentos
+	 */
+	private final static String EXTENSION = ".diario";
+
+	/* ****************************************************************
+	 * 			Atributos
+	 *****************************************************************/
+	/**
+	 * El directorio de los segmentos
+	 */
+	private final File directorio;
+
+	/**
+	 * Indica si cada escritura se fuerza al disco. Si no, sobrevive a una caída de la aplicación pero no a una del sistema operativo
+	 */
+	private final boolean sincronizar;
+
+	/**
+	 * El número del segmento en que se escribe
+	 */
+	private long segmento;
+
+	/**
+	 * El canal del segmento en que se escribe
+	 */
+	private FileChannel canal;
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	/**
+	 * Constructor. Borra los segmentos ya descargados y abre un segmento nuevo, posterior a los que ya existan en el directorio
+	 * y al último descargado
+	 * @param directorio - El directorio de los segmentos. Se crea si no existe
+	 * @param descargado - El número del último segmento cuyos cambios están confirmados en la base de datos. 0 si ninguno
+	 * @param sincronizar - Indica si cada escritura se fuerza al disco
+	 * @throws IOException - Si no se puede crear el directorio o el segmento
+	 */
+	public DiarioInventario (File directorio, long descargado, boolean sincronizar) throws IOException
+	{
+		if (!directorio.isDirectory () && !directorio.mkdirs ())
+		{
+			throw new IOException ("No se pudo crear el directorio del diario del inventario: " + directorio.getAbsolutePath ());
+		}
+		this.directorio = directorio;
+		this.sincronizar = sincronizar;
+		long [] existentes = darSegmentos ();
+		if (existentes.length > 0 && existentes [0] <= descargado)
+		{
+			log.info ("Se descartan los segmentos del diario del inventario ya descargados, hasta el " + descargado);
+			descartarHasta (descargado);
+		}
+		this.segmento = Math.max (existentes.length == 0 ? 0 : existentes [existentes.length - 1], descargado) + 1;
+		this.canal = abrir (segmento);
+	}
+
+	/**
+	 * Crea un buffer para escribir varios registros de una vez
+	 * @param registros - El número de registros
+	 * @return El buffer, vacío
+	 */
+	public static ByteBuffer crearRegistros (int registros)
+	{
+		return ByteBuffer.allocate (registros * TAMANO_REGISTRO);
+	}
+
+	/**
+	 * Agrega un registro a un buffer
+	 * @param buffer - El buffer, creado con crearRegistros
+	 * @param tipo - BODEGAS o ESTANTES
+	 * @param sucursal - El identificador de la sucursal
+	 * @param producto - El identificador del producto
+	 * @param cambio - El cambio en las existencias
+	 */
+	public static void agregarRegistro (ByteBuffer buffer, byte tipo, long sucursal, long producto, long cambio)
+	{
+		int inicio = buffer.position ();
+		buffer.put (tipo).putLong (sucursal).putLong (producto).putLong (cambio);
+		CRC32 crc = new CRC32 ();
+		crc.update (buffer.array (), inicio, TAMANO_REGISTRO - 4);
+		buffer.putInt ((int) crc.getValue ());
+	}
+
+	/**
+	 * Escribe en el segmento actual todos los registros de un buffer, con una sola escritura
+	 * @param buffer - El buffer, creado con crearRegistros
+	 * @throws IOException - Si no se puede escribir
+	 */
+	public synchronized void escribir (ByteBuffer buffer) throws IOException
+	{
+		buffer.flip ();
+		while (buffer.hasRemaining ())
+		{
+			canal.write (buffer);
+		}
+		if (sincronizar)
+		{
+			canal.force (false);
+		}
+	}
+
+	/**
+	 * Cierra el segmento actual y abre el siguiente
+	 * @return El número del segmento cerrado
+	 * @throws IOException - Si no se puede abrir el siguiente segmento. En ese caso se sigue escribiendo en el actual
+	 */
+	public synchronized long rotar () throws IOException
+	{
+		FileChannel siguiente = abrir (segmento + 1);
+		canal.force (false);
+		canal.close ();
+		canal = siguiente;
+		return segmento++;
+	}
+
+	/**
+	 * Borra los segmentos cerrados hasta uno dado, cuyos cambios ya están confirmados en la base de datos
+	 * @param ultimo - El número del último segmento que se borra
+	 */
+	public void descartarHasta (long ultimo)
+	{
+		for (long numero : darSegmentos ())
+		{
+			if (numero <= ultimo && !darArchivo (numero).delete ())
+			{
+				log.warn ("No se pudo borrar el segmento del diario del inventario " + darArchivo (numero).getAbsolutePath ());
+			}
+		}
+	}
+
+	/**
+	 * Lee los registros de los segmentos anteriores al actual, que son los que quedaron de una ejecución anterior.
+	 * La lectura de cada segmento se detiene en el primer registro incompleto o con CRC inválido
+	 * @return Los registros, en el orden en que se escribieron. Cada uno es {tipo, sucursal, producto, cambio}
+	 * @throws IOException - Si no se puede leer algún segmento
+	 */
+	public List<long []> leerAnteriores () throws IOException
+	{
+		List<long []> resp = new ArrayList<long []> ();
+		for (long numero : darSegmentos ())
+		{
+			if (numero < segmento)
+			{
+				leer (numero, resp);
+			}
+		}
+		return resp;
+	}
+
+	/**
+	 * Lee los registros de un segmento
+	 * @param numero - El número del segmento
+	 * @param registros - La lista a la que se agregan los registros
+	 * @throws IOException - Si no se puede leer el segmento
+	 */
+	private void leer (long numero, List<long []> registros) throws IOException
+	{
+		try (FileChannel lectura = FileChannel.open (darArchivo (numero).toPath (), StandardOpenOption.READ))
+		{
+			ByteBuffer buffer = ByteBuffer.allocate (TAMANO_REGISTRO);
+			CRC32 crc = new CRC32 ();
+			while (true)
+			{
+				buffer.clear ();
+				try
+				{
+					while (buffer.hasRemaining ())
+					{
+						if (lectura.read (buffer) < 0)
+						{
+							throw new EOFException ();
+						}
+					}
+				}
+				catch (EOFException e)
+				{
+					if (buffer.position () > 0)
+					{
+						log.warn ("Registro incompleto al final del segmento " + numero + " del diario del inventario");
+					}
+					return;
+				}
+				crc.reset ();
+				crc.update (buffer.array (), 0, TAMANO_REGISTRO - 4);
+				buffer.flip ();
+				long [] registro = {buffer.get (), buffer.getLong (), buffer.getLong (), buffer.getLong ()};
+				if (buffer.getInt () != (int) crc.getValue ())
+				{
+					log.warn ("Registro corrupto en el segmento " + numero + " del diario del inventario, se descarta el resto del segmento");
+					return;
+				}
+				registros.add (registro);
+			}
+		}
+	}
+
+	/**
+	 * @return Los números de los segmentos que hay en el directorio, en orden ascendente
+	 */
+	private long [] darSegmentos ()
+	{
+		String [] nombres = directorio.list ((dir, nombre) -> nombre.startsWith (PREFIJO) && nombre.endsWith (EXTENSION));
+		if (nombres == null)
+		{
+			return new long [0];
+		}
+		long [] resp = new long [nombres.length];
+		for (int i = 0; i < nombres.length; i++)
+		{
+			resp [i] = Long.parseLong (nombres [i].substring (PREFIJO.length (), nombres [i].length () - EXTENSION.length ()));
+		}
+		Arrays.sort (resp);
+		return resp;
+	}
+
+	/**
+	 * @param numero - El número de un segmento
+	 * @return El archivo del segmento
+	 */
+	private File darArchivo (long numero)
+	{
+		return new File (directorio, PREFIJO + numero + EXTENSION);
+	}
+
+	/**
+	 * @param numero - El número de un segmento
+	 * @return El canal para escribir al final del segmento
+	 * @throws IOException - Si no se puede abrir
+	 */
+	private FileChannel abrir (long numero) throws IOException
+	{
+		return FileChannel.open (darArchivo (numero).toPath (), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+	}
+
+	/**
+	 * @return El número del segmento en que se escribe
+	 */
+	public synchronized long darSegmento ()
+	{
+		return segmento;
+	}
+
+	/**
+	 * Cierra el segmento actual
+	 * @throws IOException - Si no se puede cerrar
+	 */
+	public synchronized void cerrar () throws IOException
+	{
+		canal.force (false);
+		canal.close ();
+	}
+}
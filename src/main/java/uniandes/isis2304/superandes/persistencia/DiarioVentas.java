@@ -0,0 +1,833 @@
+package uniandes.isis2304.superandes.persistencia;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+import org.apache.log4j.Logger;
+
+import uniandes.isis2304.superandes.negocio.Factura;
+import uniandes.isis2304.superandes.negocio.Transaccion;
+
+/**
+ * Diario de las ventas de las cajas que todavía no se han aplicado en la base de datos. Cada venta (la factura con sus líneas) se
+ * escribe como un registro binario al final de un archivo proyectado en memoria, de manera que la caja confirma la venta a la
+ * velocidad del disco local, sin esperar a la base de datos; un hilo aplicador lee los registros en orden y los aplica en la base
+ * de datos por grupos, cada grupo en una transacción.
+ * El diario se divide en segmentos de tamaño fijo (ventas-N.diario). Cada segmento comienza con un encabezado que guarda hasta
+ * dónde se aplicó (el punto de control), que se actualiza después de confirmar cada grupo; al reiniciar, la aplicación sigue desde
+ * el punto de control de los segmentos que quedaron. Una caída entre la confirmación de un grupo y el punto de control hace que el
+ * grupo se vuelva a leer, pero la aplicación es idempotente: las facturas que ya están en la base de datos no se vuelven a insertar.
+ * Cada registro lleva su longitud y un CRC32, de manera que un registro escrito a medias por una caída se detecta y se descarta.
+ * Si la base de datos rechaza un grupo por una restricción de integridad, sus ventas se aplican una por una y las que se rechazan
+ * solas se apartan en el archivo de ventas rechazadas (ventas.rechazadas, con el mismo formato de registro), para que una venta
+ * inválida no detenga las siguientes. Las fallas transitorias, en cambio, detienen la aplicación hasta el siguiente intento.
+ * Los segmentos se borran cuando todas sus ventas quedan aplicadas o apartadas
+ *
+ * @author n.cobos, jf.torresp
+ */
+public class DiarioVentas
+{
+	/* ****************************************************************
+	 * 			Constantes
+	 *****************************************************************/
+	/**
+	 * Logger para escribir la traza de la ejecución
+	 */
+	private static Logger log = Logger.getLogger(DiarioVentas.class.getName());
+
+	/**
+	 * Tamaño por defecto de cada segmento, en bytes
+	 */
+	public final static int TAMANO_SEGMENTO_DEFECTO = 64 * 1024 * 1024;
+
+	/**
+	 * Intervalo por defecto entre aplicaciones en la base de datos, en milisegundos
+	 */
+	public final static long APLICACION_DEFECTO = 200;
+
+	/**
+	 * Número máximo por defecto de ventas aplicadas en cada transacción
+	 */
+	public final static int VENTAS_POR_GRUPO_DEFECTO = 200;
+
+	/**
+	 * Resultado de aplicar un grupo de ventas que la base de datos rechazó por una restricción de integridad
+	 */
+	final static long GRUPO_RECHAZADO = -2;
+
+	/**
+	 * Número que identifica los archivos de segmento del diario de ventas
+	 */
+	private final static int MAGIA = 0x53414456;
+
+	/**
+	 * Posición en el encabezado del punto de control: la posición del primer registro sin aplicar
+	 */
+	private final static int POSICION_APLICADO = 8;
+
+	/**
+	 * Posición del primer registro de un segmento, después del encabezado: número mágico, tamaño y punto de control
+	 */
+	private final static int INICIO_REGISTROS = 16;
+
+	/**
+	 * Tamaño del encabezado de cada registro, en bytes: longitud de los datos y CRC32
+	 */
+	private final static int ENCABEZADO_REGISTRO = 4 + 4;
+
+	/**
+	 * Tamaño de los datos de la factura de un registro, en bytes: número, sucursal, cliente, fecha y número de líneas
+	 */
+	private final static int TAMANO_FACTURA = 8 + 8 + 8 + 8 + 4;
+
+	/**
+	 * Tamaño de los datos de cada línea de un registro, en bytes: producto, cantidad, costo y promoción
+	 */
+	private final static int TAMANO_LINEA = 8 + 4 + 8 + 8;
+
+	/**
+	 * Prefijo de los archivos de los segmentos
+	 */
+	private final static String PREFIJO = "ventas-";
+
+	/**
+	 * Extensión de los archivos de los segmentos
+	 */
+	private final static String EXTENSION = ".diario";
+
+	/**
+	 * Nombre del archivo de las ventas rechazadas por la base de datos
+	 */
+	private final static String RECHAZADAS = "ventas.rechazadas";
+
+	/* ****************************************************************
+	 * 			Clases
+	 *****************************************************************/
+	/**
+	 * Una venta leída del diario
+	 */
+	static class Venta
+	{
+		/**
+		 * La factura de la venta, con el número asignado al escribirla
+		 */
+		final Factura factura;
+
+		/**
+		 * Las líneas de la venta, con el número de la factura
+		 */
+		final List<Transaccion> lineas;
+
+		/**
+		 * Constructor
+		 * @param factura - La factura
+		 * @param lineas - Las líneas
+		 */
+		Venta (Factura factura, List<Transaccion> lineas)
+		{
+			this.factura = factura;
+			this.lineas = lineas;
+		}
+	}
+
+	/**
+	 * Un segmento del diario, proyectado en memoria
+	 */
+	private static class Segmento
+	{
+		/**
+		 * El número del segmento
+		 */
+		final long numero;
+
+		/**
+		 * El contenido del segmento
+		 */
+		final MappedByteBuffer buffer;
+
+		/**
+		 * La posición hasta la que hay registros completos. En los segmentos de una ejecución anterior es el tamaño del segmento,
+		 * y el final de los registros se reconoce por la longitud o el CRC
+		 */
+		volatile int escrito;
+
+		/**
+		 * Constructor
+		 * @param numero - El número del segmento
+		 * @param buffer - El contenido del segmento
+		 * @param escrito - La posición hasta la que hay registros completos
+		 */
+		Segmento (long numero, MappedByteBuffer buffer, int escrito)
+		{
+			this.numero = numero;
+			this.buffer = buffer;
+			this.escrito = escrito;
+		}
+	}
+
+	/* ****************************************************************
+	 * 			Atributos
+	 *****************************************************************/
+	/**
+	 * El manejador de persistencia, para aplicar las ventas
+	 */
+	private final PersistenciaSuperAndes pp;
+
+	/**
+	 * El directorio de los segmentos
+	 */
+	private final File directorio;
+
+	/**
+	 * El tamaño de cada segmento, en bytes
+	 */
+	private final int tamanoSegmento;
+
+	/**
+	 * Número máximo de ventas aplicadas en cada transacción
+	 */
+	private final int ventasPorGrupo;
+
+	/**
+	 * Indica si cada escritura se fuerza al disco. Si no, sobrevive a una caída de la aplicación pero no a una del sistema operativo
+	 */
+	private final boolean sincronizar;
+
+	/**
+	 * El segmento en que se escribe. Protegido por el candado del diario
+	 */
+	private Segmento actual;
+
+	/**
+	 * Buffer en que se arma cada registro antes de copiarlo al segmento. Protegido por el candado del diario
+	 */
+	private ByteBuffer registro;
+
+	/**
+	 * Candado que evita que dos aplicaciones se ejecuten al tiempo. Protege el segmento y la posición de lectura
+	 */
+	private final Object aplicacion;
+
+	/**
+	 * El segmento del que se aplican las ventas
+	 */
+	private Segmento lectura;
+
+	/**
+	 * La posición, en el segmento de lectura, del primer registro sin aplicar
+	 */
+	private int posicionLectura;
+
+	/**
+	 * Hilo que aplica periódicamente las ventas. null si sólo se aplican explícitamente
+	 */
+	private final ScheduledExecutorService aplicador;
+
+	/**
+	 * Número de ventas escritas en el diario
+	 */
+	private final AtomicLong escritas;
+
+	/**
+	 * Número de ventas aplicadas en la base de datos, sin contar las que ya estaban
+	 */
+	private final AtomicLong aplicadas;
+
+	/**
+	 * Número de ventas leídas del diario que ya estaban en la base de datos
+	 */
+	private final AtomicLong repetidas;
+
+	/**
+	 * Número de ventas rechazadas por la base de datos y apartadas en el archivo de ventas rechazadas
+	 */
+	private final AtomicLong rechazadas;
+
+	/**
+	 * Número de aplicaciones que fallaron. Sus ventas se vuelven a intentar en la siguiente
+	 */
+	private final AtomicLong fallos;
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	/**
+	 * Constructor. Abre un segmento nuevo, posterior a los que ya existan en el directorio, y deja las ventas de los segmentos
+	 * anteriores pendientes de aplicar desde su punto de control. Si se pide, inicia la aplicación periódica
+	 * @param pp - El manejador de persistencia
+	 * @param directorio - El directorio de los segmentos. Se crea si no existe
+	 * @param tamanoSegmento - El tamaño de cada segmento, en bytes
+	 * @param ventasPorGrupo - El número máximo de ventas aplicadas en cada transacción
+	 * @param aplicacionMs - El intervalo entre aplicaciones, en milisegundos. 0 para aplicar sólo explícitamente
+	 * @param sincronizar - Indica si cada escritura se fuerza al disco
+	 * @throws IOException - Si no se puede crear el directorio, abrir los segmentos anteriores o crear el segmento nuevo
+	 */
+	DiarioVentas (PersistenciaSuperAndes pp, File directorio, int tamanoSegmento, int ventasPorGrupo, long aplicacionMs, boolean sincronizar) throws IOException
+	{
+		if (tamanoSegmento < 4096 || ventasPorGrupo < 1 || aplicacionMs < 0)
+		{
+			throw new IllegalArgumentException ("Configuración inválida del diario de ventas: segmentos de " + tamanoSegmento + " bytes, "
+					+ ventasPorGrupo + " ventas por grupo, aplicación cada " + aplicacionMs + " ms");
+		}
+		if (!directorio.isDirectory () && !directorio.mkdirs ())
+		{
+			throw new IOException ("No se pudo crear el directorio del diario de ventas: " + directorio.getAbsolutePath ());
+		}
+		this.pp = pp;
+		this.directorio = directorio;
+		this.tamanoSegmento = tamanoSegmento;
+		this.ventasPorGrupo = ventasPorGrupo;
+		this.sincronizar = sincronizar;
+		this.registro = ByteBuffer.allocate (1024);
+		this.aplicacion = new Object ();
+		this.escritas = new AtomicLong ();
+		this.aplicadas = new AtomicLong ();
+		this.repetidas = new AtomicLong ();
+		this.rechazadas = new AtomicLong ();
+		this.fallos = new AtomicLong ();
+
+		long [] existentes = darSegmentos ();
+		this.actual = crear (existentes.length == 0 ? 1 : existentes [existentes.length - 1] + 1);
+		this.lectura = existentes.length == 0 ? actual : abrir (existentes [0]);
+		this.posicionLectura = (int) lectura.buffer.getLong (POSICION_APLICADO);
+		if (existentes.length > 0)
+		{
+			log.info ("Diario de ventas: " + existentes.length + " segmentos de una ejecución anterior pendientes de aplicar");
+		}
+
+		if (aplicacionMs > 0)
+		{
+			aplicador = Executors.newSingleThreadScheduledExecutor (r -> {
+				Thread t = new Thread (r, "superandes-diario-ventas");
+				t.setDaemon (true);
+				return t;
+			});
+			aplicador.scheduleWithFixedDelay (this::aplicar, aplicacionMs, aplicacionMs, TimeUnit.MILLISECONDS);
+		}
+		else
+		{
+			aplicador = null;
+		}
+	}
+
+	/**
+	 * Escribe una venta al final del diario. Cuando retorna, la venta sobrevive a una caída de la aplicación (y a una del sistema
+	 * operativo, si el diario se sincroniza) y se aplicará en la base de datos
+	 * @param factura - La factura de la venta, con su número ya asignado
+	 * @param lineas - Las líneas de la venta
+	 * @throws IOException - Si no se puede crear un segmento nuevo cuando el actual se llena
+	 */
+	public synchronized void escribir (Factura factura, List<Transaccion> lineas) throws IOException
+	{
+		int longitud = TAMANO_FACTURA + lineas.size () * TAMANO_LINEA;
+		int total = ENCABEZADO_REGISTRO + longitud;
+		if (INICIO_REGISTROS + total > tamanoSegmento)
+		{
+			throw new IllegalArgumentException ("La venta de " + lineas.size () + " líneas no cabe en un segmento del diario de ventas");
+		}
+		if (registro.capacity () < longitud)
+		{
+			registro = ByteBuffer.allocate (Integer.highestOneBit (longitud) << 1);
+		}
+		registro.clear ();
+		codificar (registro, factura, lineas);
+		CRC32 crc = new CRC32 ();
+		crc.update (registro.array (), 0, longitud);
+		registro.flip ();
+
+		if (actual.escrito + total > tamanoSegmento)
+		{
+			actual = crear (actual.numero + 1);
+		}
+		int posicion = actual.escrito;
+		ByteBuffer destino = actual.buffer.duplicate ();
+		destino.position (posicion + ENCABEZADO_REGISTRO);
+		destino.put (registro);
+		// La longitud se escribe al final: un registro sin longitud termina los registros del segmento
+		actual.buffer.putInt (posicion + 4, (int) crc.getValue ());
+		actual.buffer.putInt (posicion, longitud);
+		if (sincronizar)
+		{
+			actual.buffer.force ();
+		}
+		actual.escrito = posicion + total;
+		escritas.incrementAndGet ();
+	}
+
+	/**
+	 * Escribe los datos de una venta en un buffer
+	 * @param destino - El buffer, con espacio para los datos
+	 * @param factura - La factura de la venta
+	 * @param lineas - Las líneas de la venta
+	 */
+	private static void codificar (ByteBuffer destino, Factura factura, List<Transaccion> lineas)
+	{
+		destino.putLong (factura.getNumero ()).putLong (factura.getSucursal ()).putLong (factura.getCliente ())
+			.putLong (factura.getFecha ().getTime ()).putInt (lineas.size ());
+		for (Transaccion linea : lineas)
+		{
+			destino.putLong (linea.getProducto ()).putInt (linea.getCantidad ()).putDouble (linea.getCosto ()).putLong (linea.getPromocion ());
+		}
+	}
+
+	/**
+	 * Aplica en la base de datos las ventas pendientes del diario, por grupos de a lo sumo ventasPorGrupo ventas, cada grupo en una
+	 * transacción, y avanza el punto de control después de cada grupo confirmado o apartado. Se detiene en el primer grupo que falla
+	 * por una causa transitoria: las ventas se aplican en el orden en que se escribieron, y ése y los siguientes se intentan de nuevo
+	 * en la siguiente aplicación. Una excepción inesperada cuenta como un grupo fallido, para no cancelar la aplicación periódica
+	 * @return El número de ventas leídas del diario y aplicadas, incluidas las que ya estaban en la base de datos. -1 si falla algún grupo
+	 */
+	public int aplicar ()
+	{
+		synchronized (aplicacion)
+		{
+			try
+			{
+				return aplicarPendientes ();
+			}
+			catch (RuntimeException e)
+			{
+				log.error ("Falló la aplicación del diario de ventas en el segmento " + lectura.numero + ": " + e);
+				fallos.incrementAndGet ();
+				return -1;
+			}
+		}
+	}
+
+	/**
+	 * Aplica las ventas pendientes del diario, grupo por grupo, hasta el final del último segmento o hasta el primer grupo que falla.
+	 * Se llama con el candado de la aplicación
+	 * @return El número de ventas leídas del diario y aplicadas, incluidas las que ya estaban en la base de datos. -1 si falla algún grupo
+	 */
+	private int aplicarPendientes ()
+	{
+		int resp = 0;
+		while (true)
+		{
+			List<Venta> ventas = new ArrayList<Venta> ();
+			int fin = leer (ventas);
+			if (ventas.isEmpty ())
+			{
+				if (!avanzarSegmento ())
+				{
+					return resp;
+				}
+				continue;
+			}
+			long nuevas = pp.aplicarVentasDiario (ventas);
+			if (nuevas == GRUPO_RECHAZADO)
+			{
+				nuevas = aplicarPorSeparado (ventas);
+			}
+			if (nuevas < 0)
+			{
+				fallos.incrementAndGet ();
+				return -1;
+			}
+			posicionLectura = fin;
+			lectura.buffer.putLong (POSICION_APLICADO, fin);
+			if (sincronizar)
+			{
+				lectura.buffer.force ();
+			}
+			aplicadas.addAndGet (nuevas);
+			repetidas.addAndGet (ventas.size () - nuevas);
+			resp += ventas.size ();
+			log.trace ("Aplicación del diario de ventas: " + nuevas + " de " + ventas.size () + " ventas aplicadas en el segmento " + lectura.numero);
+		}
+	}
+
+	/**
+	 * Aplica una por una las ventas de un grupo que la base de datos rechazó, y aparta en el archivo de ventas rechazadas las que
+	 * se rechazan solas. Volver a aplicar las que ya quedaron aplicadas no tiene efecto
+	 * @param ventas - Las ventas del grupo
+	 * @return El número de ventas aplicadas, sin contar las que ya estaban ni las apartadas. -1 si alguna falla por una causa
+	 * transitoria o no se puede apartar
+	 */
+	private long aplicarPorSeparado (List<Venta> ventas)
+	{
+		long resp = 0;
+		for (Venta venta : ventas)
+		{
+			long nuevas = pp.aplicarVentasDiario (Collections.singletonList (venta));
+			if (nuevas == GRUPO_RECHAZADO)
+			{
+				try
+				{
+					apartar (venta);
+				}
+				catch (IOException e)
+				{
+					log.error ("No se pudo apartar la venta rechazada de la factura " + venta.factura.getNumero () + ": " + e.getMessage ());
+					return -1;
+				}
+				continue;
+			}
+			if (nuevas < 0)
+			{
+				return -1;
+			}
+			resp += nuevas;
+		}
+		return resp;
+	}
+
+	/**
+	 * Escribe una venta rechazada por la base de datos al final del archivo de ventas rechazadas, forzándola al disco
+	 * @param venta - La venta
+	 * @throws IOException - Si no se puede escribir
+	 */
+	private void apartar (Venta venta) throws IOException
+	{
+		int longitud = TAMANO_FACTURA + venta.lineas.size () * TAMANO_LINEA;
+		ByteBuffer buffer = ByteBuffer.allocate (ENCABEZADO_REGISTRO + longitud);
+		buffer.position (ENCABEZADO_REGISTRO);
+		codificar (buffer, venta.factura, venta.lineas);
+		CRC32 crc = new CRC32 ();
+		crc.update (buffer.array (), ENCABEZADO_REGISTRO, longitud);
+		buffer.putInt (0, longitud);
+		buffer.putInt (4, (int) crc.getValue ());
+		buffer.flip ();
+		try (FileChannel canal = FileChannel.open (new File (directorio, RECHAZADAS).toPath (), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.APPEND))
+		{
+			while (buffer.hasRemaining ())
+			{
+				canal.write (buffer);
+			}
+			canal.force (false);
+		}
+		rechazadas.incrementAndGet ();
+		log.error ("Venta rechazada por la base de datos, apartada en " + RECHAZADAS + ": factura " + venta.factura.getNumero () + ", cliente "
+				+ venta.factura.getCliente () + ", sucursal " + venta.factura.getSucursal () + ", " + venta.lineas.size () + " líneas");
+	}
+
+	/**
+	 * Lee las ventas apartadas en el archivo de ventas rechazadas, para revisarlas y registrarlas de nuevo
+	 * @return Las ventas rechazadas, en el orden en que se apartaron. Vacío si no hay
+	 * @throws IOException - Si no se puede leer el archivo
+	 */
+	List<Venta> leerRechazadas () throws IOException
+	{
+		List<Venta> resp = new ArrayList<Venta> ();
+		File archivo = new File (directorio, RECHAZADAS);
+		if (!archivo.exists ())
+		{
+			return resp;
+		}
+		ByteBuffer buffer = ByteBuffer.wrap (Files.readAllBytes (archivo.toPath ()));
+		CRC32 crc = new CRC32 ();
+		while (buffer.remaining () >= ENCABEZADO_REGISTRO)
+		{
+			int longitud = buffer.getInt ();
+			int esperado = buffer.getInt ();
+			if (longitud < TAMANO_FACTURA || longitud > buffer.remaining ())
+			{
+				break;
+			}
+			crc.reset ();
+			crc.update (buffer.array (), buffer.position (), longitud);
+			if ((int) crc.getValue () != esperado)
+			{
+				break;
+			}
+			ByteBuffer datos = ByteBuffer.wrap (buffer.array (), buffer.position (), longitud).slice ();
+			resp.add (decodificar (datos));
+			buffer.position (buffer.position () + longitud);
+		}
+		return resp;
+	}
+
+	/**
+	 * Lee, desde la posición de lectura, a lo sumo ventasPorGrupo ventas del segmento de lectura.
+	 * La lectura se detiene en el primer registro incompleto o con CRC inválido
+	 * @param ventas - La lista a la que se agregan las ventas
+	 * @return La posición siguiente a la última venta leída
+	 */
+	private int leer (List<Venta> ventas)
+	{
+		ByteBuffer buffer = lectura.buffer.duplicate ();
+		int limite = lectura.escrito;
+		int posicion = posicionLectura;
+		CRC32 crc = new CRC32 ();
+		while (ventas.size () < ventasPorGrupo && posicion + ENCABEZADO_REGISTRO <= limite)
+		{
+			int longitud = buffer.getInt (posicion);
+			if (longitud < TAMANO_FACTURA || posicion + ENCABEZADO_REGISTRO + longitud > limite)
+			{
+				if (longitud != 0)
+				{
+					log.warn ("Registro incompleto en el segmento " + lectura.numero + " del diario de ventas, se descarta el resto del segmento");
+				}
+				break;
+			}
+			byte [] datos = new byte [longitud];
+			buffer.position (posicion + ENCABEZADO_REGISTRO);
+			buffer.get (datos);
+			crc.reset ();
+			crc.update (datos, 0, longitud);
+			if (buffer.getInt (posicion + 4) != (int) crc.getValue ())
+			{
+				log.warn ("Registro corrupto en el segmento " + lectura.numero + " del diario de ventas, se descarta el resto del segmento");
+				break;
+			}
+			ventas.add (decodificar (ByteBuffer.wrap (datos)));
+			posicion += ENCABEZADO_REGISTRO + longitud;
+		}
+		return posicion;
+	}
+
+	/**
+	 * @param datos - Los datos de un registro
+	 * @return La venta del registro
+	 */
+	private static Venta decodificar (ByteBuffer datos)
+	{
+		long numero = datos.getLong ();
+		long sucursal = datos.getLong ();
+		long cliente = datos.getLong ();
+		Timestamp fecha = new Timestamp (datos.getLong ());
+		int numeroLineas = datos.getInt ();
+		List<Transaccion> lineas = new ArrayList<Transaccion> (numeroLineas);
+		for (int i = 0; i < numeroLineas; i++)
+		{
+			long producto = datos.getLong ();
+			int cantidad = datos.getInt ();
+			double costo = datos.getDouble ();
+			lineas.add (new Transaccion (numero, cantidad, costo, producto, datos.getLong ()));
+		}
+		return new Venta (new Factura (numero, sucursal, fecha, cliente), lineas);
+	}
+
+	/**
+	 * Cuando el segmento de lectura ya no es el segmento en que se escribe, lo borra (todas sus ventas quedaron aplicadas) y pasa al siguiente
+	 * @return true si se pasó a otro segmento, false si el segmento de lectura es el segmento en que se escribe
+	 */
+	private boolean avanzarSegmento ()
+	{
+		Segmento siguiente;
+		synchronized (this)
+		{
+			if (lectura == actual)
+			{
+				return false;
+			}
+			siguiente = null;
+			for (long numero : darSegmentos ())
+			{
+				if (numero > lectura.numero)
+				{
+					siguiente = numero == actual.numero ? actual : null;
+					if (siguiente == null)
+					{
+						try
+						{
+							siguiente = abrir (numero);
+						}
+						catch (IOException e)
+						{
+							log.error ("No se pudo abrir el segmento " + numero + " del diario de ventas: " + e.getMessage ());
+							return false;
+						}
+					}
+					break;
+				}
+			}
+			if (siguiente == null)
+			{
+				siguiente = actual;
+			}
+		}
+		borrar (lectura.numero);
+		lectura = siguiente;
+		posicionLectura = (int) lectura.buffer.getLong (POSICION_APLICADO);
+		return true;
+	}
+
+	/**
+	 * Descarta las ventas pendientes de aplicar, que ya no se pueden aplicar porque se borró la base de datos
+	 */
+	public void descartarPendientes ()
+	{
+		synchronized (aplicacion)
+		{
+			synchronized (this)
+			{
+				for (long numero : darSegmentos ())
+				{
+					if (numero < actual.numero)
+					{
+						borrar (numero);
+					}
+				}
+				lectura = actual;
+				posicionLectura = actual.escrito;
+				actual.buffer.putLong (POSICION_APLICADO, posicionLectura);
+			}
+		}
+	}
+
+	/**
+	 * @return Los números de los segmentos que hay en el directorio, en orden ascendente
+	 */
+	private long [] darSegmentos ()
+	{
+		String [] nombres = directorio.list ((dir, nombre) -> nombre.startsWith (PREFIJO) && nombre.endsWith (EXTENSION));
+		if (nombres == null)
+		{
+			return new long [0];
+		}
+		long [] resp = new long [nombres.length];
+		for (int i = 0; i < nombres.length; i++)
+		{
+			resp [i] = Long.parseLong (nombres [i].substring (PREFIJO.length (), nombres [i].length () - EXTENSION.length ()));
+		}
+		Arrays.sort (resp);
+		return resp;
+	}
+
+	/**
+	 * @param numero - El número de un segmento
+	 * @return El archivo del segmento
+	 */
+	private File darArchivo (long numero)
+	{
+		return new File (directorio, PREFIJO + numero + EXTENSION);
+	}
+
+	/**
+	 * Crea un segmento vacío, con el punto de control al inicio de los registros
+	 * @param numero - El número del segmento
+	 * @return El segmento, proyectado en memoria
+	 * @throws IOException - Si no se puede crear
+	 */
+	private Segmento crear (long numero) throws IOException
+	{
+		MappedByteBuffer buffer;
+		try (FileChannel canal = FileChannel.open (darArchivo (numero).toPath (), StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE))
+		{
+			// La proyección sigue siendo válida después de cerrar el canal
+			buffer = canal.map (FileChannel.MapMode.READ_WRITE, 0, tamanoSegmento);
+		}
+		buffer.putInt (0, MAGIA);
+		buffer.putInt (4, tamanoSegmento);
+		buffer.putLong (POSICION_APLICADO, INICIO_REGISTROS);
+		buffer.force ();
+		return new Segmento (numero, buffer, INICIO_REGISTROS);
+	}
+
+	/**
+	 * Abre un segmento de una ejecución anterior
+	 * @param numero - El número del segmento
+	 * @return El segmento, proyectado en memoria
+	 * @throws IOException - Si no se puede abrir o no es un segmento del diario de ventas
+	 */
+	private Segmento abrir (long numero) throws IOException
+	{
+		MappedByteBuffer buffer;
+		try (FileChannel canal = FileChannel.open (darArchivo (numero).toPath (), StandardOpenOption.READ, StandardOpenOption.WRITE))
+		{
+			if (canal.size () < INICIO_REGISTROS || canal.size () > Integer.MAX_VALUE)
+			{
+				throw new IOException ("El archivo " + darArchivo (numero).getAbsolutePath () + " no es un segmento del diario de ventas");
+			}
+			buffer = canal.map (FileChannel.MapMode.READ_WRITE, 0, canal.size ());
+		}
+		long aplicado = buffer.getLong (POSICION_APLICADO);
+		if (buffer.getInt (0) != MAGIA || aplicado < INICIO_REGISTROS || aplicado > buffer.capacity ())
+		{
+			throw new IOException ("El archivo " + darArchivo (numero).getAbsolutePath () + " no es un segmento del diario de ventas");
+		}
+		return new Segmento (numero, buffer, buffer.capacity ());
+	}
+
+	/**
+	 * Borra un segmento cuyas ventas ya están aplicadas
+	 * @param numero - El número del segmento
+	 */
+	private void borrar (long numero)
+	{
+		if (!darArchivo (numero).delete ())
+		{
+			log.warn ("No se pudo borrar el segmento del diario de ventas " + darArchivo (numero).getAbsolutePath ());
+		}
+	}
+
+	/**
+	 * @return El número de ventas escritas en el diario desde que se abrió
+	 */
+	public long darEscritas ()
+	{
+		return escritas.get ();
+	}
+
+	/**
+	 * @return El número de ventas aplicadas en la base de datos desde que se abrió el diario
+	 */
+	public long darAplicadas ()
+	{
+		return aplicadas.get ();
+	}
+
+	/**
+	 * @return El número de ventas rechazadas por la base de datos y apartadas
+	 */
+	public long darRechazadas ()
+	{
+		return rechazadas.get ();
+	}
+
+	/**
+	 * @return El número de aplicaciones que fallaron
+	 */
+	public long darFallos ()
+	{
+		return fallos.get ();
+	}
+
+	/**
+	 * Detiene la aplicación periódica, aplica las ventas pendientes y fuerza al disco el segmento actual
+	 */
+	public void cerrar ()
+	{
+		if (aplicador != null)
+		{
+			aplicador.shutdown ();
+			try
+			{
+				aplicador.awaitTermination (10, TimeUnit.SECONDS);
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread ().interrupt ();
+			}
+		}
+		aplicar ();
+		synchronized (this)
+		{
+			actual.buffer.force ();
+		}
+	}
+
+	@Override
+	public String toString ()
+	{
+		return "DiarioVentas [escritas=" + escritas.get () + ", aplicadas=" + aplicadas.get () + ", repetidas=" + repetidas.get ()
+				+ ", rechazadas=" + rechazadas.get () + ", fallos=" + fallos.get () + ", segmento=" + actual.numero + "]";
+	}
+}
@@ -0,0 +1,202 @@
+package uniandes.isis2304.superandes.persistencia;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histograma de latencias con cubetas log-lineales, al estilo de HdrHistogram: cada potencia de dos se divide en 64 cubetas
+ * iguales, de manera que el error relativo de cualquier percentil es menor al 1.6% sin importar la magnitud del valor.
+ * Registra latencias en nanosegundos de hasta VALOR_MAXIMO; las mayores se registran como VALOR_MAXIMO.
+ * El registro no usa bloqueos y puede hacerse desde varios hilos al tiempo; las consultas concurrentes con el registro
+ * pueden ver un valor aproximado
+ *
+ * @author n.cobos, jf.torresp
+ */
+public class HistogramaLatencia
+{
+	/* ****************************************************************
+	 * 			Constantes
+	 *****************************************************************/
+	/**
+	 * Número de bits de la subcubeta: las primeras 2^BITS_SUBCUBETA cubetas son exactas
+	 */
+	private static final int BITS_SUBCUBETA = 7;
+
+	/**
+	 * Número de cubetas exactas del inicio del histograma
+	 */
+	private static final int SUBCUBETAS = 1 << BITS_SUBCUBETA;
+
+	/**
+	 * Número de cubetas en que se divide cada potencia de dos a partir de SUBCUBETAS
+	 */
+	private static final int MITAD = SUBCUBETAS / 2;
+
+	/**
+	 * Número de bits del mayor valor registrable
+	 */
+	private static final int BITS_MAXIMO = 36;
+
+	/**
+	 * Mayor valor registrable, en nanosegundos (unos 68 segundos)
+	 */
+	public static final long VALOR_MAXIMO = (1L << BITS_MAXIMO) - 1;
+
+	/**
+	 * Número total de cubetas
+	 */
+	private static final int NUM_CUBETAS = SUBCUBETAS + (BITS_MAXIMO - BITS_SUBCUBETA) * MITAD;
+
+	/* ****************************************************************
+	 * 			Atributos
+	 *****************************************************************/
+	/**
+	 * Número de valores registrados en cada cubeta
+	 */
+	private final AtomicLongArray conteos;
+
+	/**
+	 * Número de valores registrados
+	 */
+	private final AtomicLong total;
+
+	/**
+	 * Suma de los valores registrados
+	 */
+	private final AtomicLong suma;
+
+	/**
+	 * Mayor valor registrado
+	 */
+	private final AtomicLong maximo;
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	/**
+	 * Constructor
+	 */
+	public HistogramaLatencia ()
+	{
+		conteos = new AtomicLongArray (NUM_CUBETAS);
+		total = new AtomicLong ();
+		suma = new AtomicLong ();
+		maximo = new AtomicLong ();
+	}
+
+	/**
+	 * Registra un valor
+	 * @param nanos - La latencia, en nanosegundos. Los valores negativos se registran como 0
+	 */
+	public void registrar (long nanos)
+	{
+		long valor = Math.min (Math.max (nanos, 0), VALOR_MAXIMO);
+		conteos.incrementAndGet (indice (valor));
+		total.incrementAndGet ();
+		suma.addAndGet (valor);
+		if (valor > maximo.get ())
+		{
+			maximo.accumulateAndGet (valor, Math::max);
+		}
+	}
+
+	/**
+	 * @param valor - Un valor entre 0 y VALOR_MAXIMO
+	 * @return La cubeta del valor
+	 */
+	static int indice (long valor)
+	{
+		if (valor < SUBCUBETAS)
+		{
+			return (int) valor;
+		}
+		int corrimiento = 63 - Long.numberOfLeadingZeros (valor) - (BITS_SUBCUBETA - 1);
+		return SUBCUBETAS + (corrimiento - 1) * MITAD + (int) (valor >>> corrimiento) - MITAD;
+	}
+
+	/**
+	 * @param indice - Una cubeta
+	 * @return El mayor valor que se registra en la cubeta
+	 */
+	static long valorMaximoCubeta (int indice)
+	{
+		if (indice < SUBCUBETAS)
+		{
+			return indice;
+		}
+		int k = indice - SUBCUBETAS;
+		int corrimiento = k / MITAD + 1;
+		return ((long) (k % MITAD + MITAD) << corrimiento) + (1L << corrimiento) - 1;
+	}
+
+	/**
+	 * @param percentil - El percentil, entre 0 y 100
+	 * @return El valor del percentil dado, en nanosegundos. 0 si no hay valores registrados
+	 */
+	public long darPercentil (double percentil)
+	{
+		long n = total.get ();
+		if (n == 0)
+		{
+			return 0;
+		}
+		long objetivo = Math.max (1, (long) Math.ceil (percentil / 100 * n));
+		long acumulado = 0;
+		for (int i = 0; i < NUM_CUBETAS; i++)
+		{
+			acumulado += conteos.get (i);
+			if (acumulado >= objetivo)
+			{
+				return Math.min (valorMaximoCubeta (i), maximo.get ());
+			}
+		}
+		return maximo.get ();
+	}
+
+	/**
+	 * @return El número de valores registrados
+	 */
+	public long darTotal ()
+	{
+		return total.get ();
+	}
+
+	/**
+	 * @return La suma de los valores registrados, en nanosegundos
+	 */
+	public long darSuma ()
+	{
+		return suma.get ();
+	}
+
+	/**
+	 * @return El promedio de los valores registrados, en nanosegundos. 0 si no hay valores registrados
+	 */
+	public double darPromedio ()
+	{
+		long n = total.get ();
+		return n == 0 ? 0 : (double) suma.get () / n;
+	}
+
+	/**
+	 * @return El mayor valor registrado, en nanosegundos
+	 */
+	public long darMaximo ()
+	{
+		return maximo.get ();
+	}
+
+	/**
+	 * Borra todos los valores registrados
+	 */
+	public void reiniciar ()
+	{
+		for (int i = 0; i < NUM_CUBETAS; i++)
+		{
+			conteos.set (i, 0);
+		}
+		total.set (0);
+		suma.set (0);
+		maximo.set (0);
+	}
+}
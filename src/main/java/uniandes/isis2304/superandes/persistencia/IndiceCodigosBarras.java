@@ -0,0 +1,224 @@
+package uniandes.isis2304.superandes.persistencia;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.log4j.Logger;
+
+import uniandes.isis2304.superandes.negocio.Producto;
+
+/**
+ * Índice en memoria de los productos por código de barras, que con la tabla de precios resuelve la lectura del código de barras en la
+ * caja sin ir a la base de datos.
+ * Los productos y los precios se leen de la base de datos en la primera consulta, o al crear el manejador de persistencia si así se
+ * configura; después, el manejador de persistencia aplica cada producto confirmado, y cada tupla VENDE confirmada a la tabla de precios.
+ * Los cambios esperan a que termine una lectura en curso, pero las consultas no toman candados: son lecturas de un mapa concurrente.
+ * Si dos productos tienen el mismo código de barras, la caja lee el que entró primero al índice y el otro se reporta en el log
+ *
+ * @author n.cobos, jf.torresp
+ */
+public class IndiceCodigosBarras
+{
+	/* ****************************************************************
+	 * 			Constantes
+	 *****************************************************************/
+	/**
+	 * Logger para escribir la traza de la ejecución
+	 */
+	private static Logger log = Logger.getLogger(IndiceCodigosBarras.class.getName());
+
+	/* ****************************************************************
+	 * 			Atributos
+	 *****************************************************************/
+	/**
+	 * El manejador de persistencia
+	 */
+	private final PersistenciaSuperAndes pp;
+
+	/**
+	 * Los productos, por código de barras
+	 */
+	private final ConcurrentHashMap<String, Producto> productos;
+
+	/**
+	 * La tabla de precios de cada producto en cada sucursal
+	 */
+	private final TablaPrecios precios;
+
+	/**
+	 * Indica si los productos y los precios ya se leyeron de la base de datos
+	 */
+	private volatile boolean cargado;
+
+	/**
+	 * Número de consultas resueltas
+	 */
+	private final LongAdder consultas;
+
+	/**
+	 * Número de productos que no entraron al índice porque otro producto ya tenía su código de barras
+	 */
+	private long duplicados;
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	/**
+	 * Constructor. Los productos y los precios se leen con cargar
+	 * @param pp - El manejador de persistencia
+	 * @param precios - La tabla de precios
+	 */
+	IndiceCodigosBarras (PersistenciaSuperAndes pp, TablaPrecios precios)
+	{
+		this.pp = pp;
+		this.productos = new ConcurrentHashMap<String, Producto> ();
+		this.precios = precios;
+		this.consultas = new LongAdder ();
+	}
+
+	/**
+	 * @param codigoBarras - Un código de barras, como lo entrega el lector
+	 * @return El código sin espacios al inicio ni al final
+	 */
+	private static String normalizar (String codigoBarras)
+	{
+		return codigoBarras.trim ();
+	}
+
+	/**
+	 * Lee de la base de datos todos los productos y, en la tabla de precios, los precios de VENDE
+	 * @return true si se pudieron leer
+	 */
+	public synchronized boolean cargar ()
+	{
+		long inicio = System.currentTimeMillis ();
+		if (!precios.cargar (pp::leerPreciosVende))
+		{
+			return false;
+		}
+		try
+		{
+			productos.clear ();
+			duplicados = 0;
+			pp.recorrerProductos ().forEach (this::agregarProductoSinVerificar);
+		}
+		catch (Exception e)
+		{
+			log.error ("No se pudieron leer los productos del índice de códigos de barras: " + e.getMessage ());
+			return false;
+		}
+		cargado = true;
+		log.info ("Índice de códigos de barras cargado: " + productos.size () + " productos, " + precios.darTamano () + " precios, "
+				+ duplicados + " códigos repetidos, en " + (System.currentTimeMillis () - inicio) + " ms");
+		return true;
+	}
+
+	/**
+	 * Agrega un producto, salvo que otro producto ya tenga su código de barras
+	 * @param producto - Un producto
+	 */
+	private void agregarProductoSinVerificar (Producto producto)
+	{
+		if (producto.getCodigoBarras () == null)
+		{
+			return;
+		}
+		String codigoBarras = normalizar (producto.getCodigoBarras ());
+		Producto anterior = productos.get (codigoBarras);
+		if (anterior == null || anterior.getId () == producto.getId ())
+		{
+			productos.put (codigoBarras, producto);
+		}
+		else
+		{
+			duplicados++;
+			log.warn ("El código de barras " + codigoBarras + " del producto " + producto.getId () + " ya es del producto " + anterior.getId ()
+					+ ": la caja seguirá leyendo el producto " + anterior.getId ());
+		}
+	}
+
+	/**
+	 * Registra productos ya confirmados en la base de datos
+	 * @param nuevos - Los productos
+	 */
+	public synchronized void agregarProductos (List<Producto> nuevos)
+	{
+		if (cargado)
+		{
+			for (Producto producto : nuevos)
+			{
+				agregarProductoSinVerificar (producto);
+			}
+		}
+	}
+
+	/**
+	 * Olvida productos ya eliminados de la base de datos, por su código de barras. Un código que el índice da a otro producto,
+	 * por estar repetido, se conserva
+	 * @param eliminados - Los productos, como estaban antes de eliminarlos
+	 */
+	public synchronized void eliminarProductos (List<Producto> eliminados)
+	{
+		for (Producto eliminado : eliminados)
+		{
+			if (eliminado.getCodigoBarras () != null)
+			{
+				productos.computeIfPresent (normalizar (eliminado.getCodigoBarras ()),
+						(codigoBarras, producto) -> producto.getId () == eliminado.getId () ? null : producto);
+			}
+		}
+	}
+
+	/**
+	 * @param codigoBarras - El código de barras leído
+	 * @return El producto con el código de barras. null si no existe
+	 */
+	public Producto darProducto (String codigoBarras)
+	{
+		if (!cargado && !cargar ())
+		{
+			throw new IllegalStateException ("No se pudieron leer los productos y los precios de la base de datos");
+		}
+		consultas.increment ();
+		return productos.get (normalizar (codigoBarras));
+	}
+
+	/**
+	 * @param codigoBarras - El código de barras leído en la caja
+	 * @param sucursal - El identificador de la sucursal de la caja
+	 * @return {Producto, precio unitario, precio por unidad de medida} del producto en la sucursal. Los precios son null si la sucursal
+	 * no vende el producto. null si ningún producto tiene el código de barras
+	 */
+	public Object [] darProductoYPrecio (String codigoBarras, long sucursal)
+	{
+		Producto producto = darProducto (codigoBarras);
+		if (producto == null)
+		{
+			return null;
+		}
+		double precioUnitario = precios.darPrecioUnitario (sucursal, producto.getId ());
+		if (precioUnitario == TablaPrecios.SIN_PRECIO)
+		{
+			return new Object [] {producto, null, null};
+		}
+		return new Object [] {producto, precioUnitario, precios.darPrecioUnidadMedida (sucursal, producto.getId ())};
+	}
+
+	/**
+	 * Olvida todos los productos, que ya no están en la base de datos. La tabla de precios se limpia aparte
+	 */
+	public synchronized void limpiar ()
+	{
+		productos.clear ();
+		duplicados = 0;
+		cargado = true;
+	}
+
+	@Override
+	public synchronized String toString ()
+	{
+		return "IndiceCodigosBarras [cargado=" + cargado + ", productos=" + productos.size () + ", duplicados=" + duplicados + ", consultas="
+				+ consultas.sum () + "]";
+	}
+}
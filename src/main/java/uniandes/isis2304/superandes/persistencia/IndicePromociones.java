@@ -0,0 +1,314 @@
+package uniandes.isis2304.superandes.persistencia;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import uniandes.isis2304.superandes.negocio.Promocion;
+
+/**
+ * Índice en memoria de las promociones de cada producto por su intervalo de vigencia [fechaInicio, fechaFin].
+ * Las promociones de un producto se guardan en un arreglo ordenado por fecha de inicio, sobre el que se arma un árbol con la mayor
+ * fecha de fin de cada rango (un árbol de intervalos implícito). Para saber qué promociones están vigentes en un instante se busca por
+ * bisección la última que empieza antes de él y se recorre el árbol hasta esa posición, descartando los rangos cuya mayor fecha de fin
+ * es anterior al instante, con costo O(log n + k) para k promociones vigentes.
+ * Las promociones de un producto se leen de la base de datos la primera vez que se consultan; después, las que se adicionan o eliminan
+ * se aplican al índice sin volver a leerlas. Cada cambio reemplaza los arreglos del producto por una copia nueva, de manera que las
+ * consultas no necesitan candados
+ *
+ * @author n.cobos, jf.torresp
+ */
+public class IndicePromociones
+{
+	/* ****************************************************************
+	 * 			Atributos
+	 *****************************************************************/
+	/**
+	 * El manejador de persistencia
+	 */
+	private final PersistenciaSuperAndes pp;
+
+	/**
+	 * Las promociones de los productos ya leídos
+	 */
+	private final ConcurrentHashMap<Long, Intervalos> productos;
+
+	/**
+	 * Cambia con cada adición o eliminación, para descartar promociones leídas antes del cambio
+	 */
+	private final AtomicLong version;
+
+	/**
+	 * Número de consultas resueltas por el índice
+	 */
+	private final AtomicLong aciertos;
+
+	/**
+	 * Número de productos leídos de la base de datos
+	 */
+	private final AtomicLong cargas;
+
+	/**
+	 * Las promociones de un producto, ordenadas por fecha de inicio. Inmutable
+	 */
+	private static class Intervalos
+	{
+		/**
+		 * Sin promociones
+		 */
+		private final static Intervalos VACIO = new Intervalos (new Promocion [0]);
+
+		/**
+		 * Las promociones, ordenadas por fecha de inicio
+		 */
+		private final Promocion [] promociones;
+
+		/**
+		 * Las fechas de inicio, en milisegundos
+		 */
+		private final long [] inicios;
+
+		/**
+		 * Número de hojas del árbol, potencia de dos
+		 */
+		private final int hojas;
+
+		/**
+		 * El árbol de las mayores fechas de fin, en milisegundos. El nodo 1 es la raíz, los hijos del nodo i son 2i y 2i + 1,
+		 * y la hoja de la promoción en la posición j es el nodo hojas + j
+		 */
+		private final long [] maximosFin;
+
+		/**
+		 * Constructor
+		 * @param promociones - Las promociones, en cualquier orden. El arreglo pasa a ser del objeto
+		 */
+		public Intervalos (Promocion [] promociones)
+		{
+			Arrays.sort (promociones, Comparator.comparing (Promocion::getFechaInicio).thenComparingLong (Promocion::getId));
+			this.promociones = promociones;
+			this.inicios = new long [promociones.length];
+			this.hojas = Integer.highestOneBit (Math.max (1, promociones.length) * 2 - 1);
+			this.maximosFin = new long [2 * hojas];
+			Arrays.fill (maximosFin, Long.MIN_VALUE);
+			for (int i = 0; i < promociones.length; i++)
+			{
+				inicios [i] = promociones [i].getFechaInicio ().getTime ();
+				maximosFin [hojas + i] = promociones [i].getFechaFin ().getTime ();
+			}
+			for (int i = hojas - 1; i > 0; i--)
+			{
+				maximosFin [i] = Math.max (maximosFin [2 * i], maximosFin [2 * i + 1]);
+			}
+		}
+
+		/**
+		 * @param instante - Un instante, en milisegundos
+		 * @param resp - La lista a la que se agregan las promociones vigentes en el instante, en orden de fecha de inicio descendente
+		 */
+		public void buscar (long instante, List<Promocion> resp)
+		{
+			// Última posición cuya fecha de inicio no es posterior al instante
+			int bajo = 0;
+			int alto = inicios.length - 1;
+			while (bajo <= alto)
+			{
+				int medio = (bajo + alto) >>> 1;
+				if (inicios [medio] <= instante)
+				{
+					bajo = medio + 1;
+				}
+				else
+				{
+					alto = medio - 1;
+				}
+			}
+			if (alto >= 0)
+			{
+				buscar (1, 0, hojas - 1, alto, instante, resp);
+			}
+		}
+
+		/**
+		 * Agrega las promociones vigentes de un nodo del árbol, de la posición mayor a la menor
+		 * @param nodo - El nodo
+		 * @param desde - La primera posición que cubre el nodo
+		 * @param hasta - La última posición que cubre el nodo
+		 * @param ultima - La última posición que puede estar vigente
+		 * @param instante - El instante, en milisegundos
+		 * @param resp - La lista a la que se agregan las promociones vigentes
+		 */
+		private void buscar (int nodo, int desde, int hasta, int ultima, long instante, List<Promocion> resp)
+		{
+			if (desde > ultima || maximosFin [nodo] < instante)
+			{
+				return;
+			}
+			if (nodo >= hojas)
+			{
+				resp.add (promociones [desde]);
+				return;
+			}
+			int medio = (desde + hasta) >>> 1;
+			buscar (2 * nodo + 1, medio + 1, hasta, ultima, instante, resp);
+			buscar (2 * nodo, desde, medio, ultima, instante, resp);
+		}
+
+		/**
+		 * @param promocion - Una promoción
+		 * @return Una copia con la promoción agregada. El mismo objeto si ya está, porque se leyó de la base de datos después de confirmarse
+		 */
+		public Intervalos agregar (Promocion promocion)
+		{
+			for (Promocion p : promociones)
+			{
+				if (p.getId () == promocion.getId ())
+				{
+					return this;
+				}
+			}
+			Promocion [] nuevas = Arrays.copyOf (promociones, promociones.length + 1);
+			nuevas [promociones.length] = promocion;
+			return new Intervalos (nuevas);
+		}
+
+		/**
+		 * @param idPromocion - El identificador de una promoción
+		 * @return Una copia sin la promoción. El mismo objeto si no está
+		 */
+		public Intervalos eliminar (long idPromocion)
+		{
+			Promocion [] nuevas = Arrays.stream (promociones).filter (p -> p.getId () != idPromocion).toArray (Promocion []::new);
+			return nuevas.length == promociones.length ? this : new Intervalos (nuevas);
+		}
+	}
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	/**
+	 * Constructor
+	 * @param pp - El manejador de persistencia
+	 */
+	IndicePromociones (PersistenciaSuperAndes pp)
+	{
+		this.pp = pp;
+		this.productos = new ConcurrentHashMap<Long, Intervalos> ();
+		this.version = new AtomicLong ();
+		this.aciertos = new AtomicLong ();
+		this.cargas = new AtomicLong ();
+	}
+
+	/**
+	 * @param producto - El identificador de un producto
+	 * @param instante - Un instante, en milisegundos
+	 * @return Las promociones del producto vigentes en el instante, de la que empezó más recientemente a la más antigua
+	 */
+	public List<Promocion> darPromocionesVigentes (long producto, long instante)
+	{
+		List<Promocion> resp = new ArrayList<Promocion> ();
+		darIntervalos (producto).buscar (instante, resp);
+		return resp;
+	}
+
+	/**
+	 * @param productos - Los identificadores de los productos, por ejemplo los de una canasta
+	 * @param instante - Un instante, en milisegundos
+	 * @return Las promociones vigentes en el instante de cada producto que tiene alguna
+	 */
+	public Map<Long, List<Promocion>> darPromocionesVigentes (Collection<Long> productos, long instante)
+	{
+		Map<Long, List<Promocion>> resp = new HashMap<Long, List<Promocion>> ();
+		for (Long producto : productos)
+		{
+			List<Promocion> vigentes = darPromocionesVigentes (producto, instante);
+			if (!vigentes.isEmpty ())
+			{
+				resp.put (producto, vigentes);
+			}
+		}
+		return resp;
+	}
+
+	/**
+	 * @param producto - El identificador de un producto
+	 * @return Las promociones del producto. Se leen de la base de datos si el producto no se ha consultado antes
+	 */
+	private Intervalos darIntervalos (long producto)
+	{
+		Intervalos resp = productos.get (producto);
+		if (resp != null)
+		{
+			aciertos.incrementAndGet ();
+			return resp;
+		}
+		long versionLectura = version.get ();
+		List<Promocion> leidas = pp.leerPromocionesPorProducto (producto);
+		if (leidas == null)
+		{
+			throw new IllegalStateException ("No se pudieron leer las promociones del producto " + producto);
+		}
+		cargas.incrementAndGet ();
+		resp = leidas.isEmpty () ? Intervalos.VACIO : new Intervalos (leidas.toArray (new Promocion [leidas.size ()]));
+		// Sólo se guarda si ninguna promoción cambió mientras se leían, pues el cambio podría no estar en lo leído
+		synchronized (this)
+		{
+			if (version.get () == versionLectura)
+			{
+				Intervalos anterior = productos.putIfAbsent (producto, resp);
+				return anterior != null ? anterior : resp;
+			}
+		}
+		return resp;
+	}
+
+	/**
+	 * Agrega al índice una promoción ya confirmada en la base de datos
+	 * @param promocion - La promoción
+	 */
+	public synchronized void agregar (Promocion promocion)
+	{
+		version.incrementAndGet ();
+		productos.computeIfPresent (promocion.getProducto (), (k, intervalos) -> intervalos.agregar (promocion));
+	}
+
+	/**
+	 * Elimina del índice una promoción ya eliminada de la base de datos
+	 * @param producto - El identificador del producto de la promoción
+	 * @param idPromocion - El identificador de la promoción
+	 */
+	public synchronized void eliminar (long producto, long idPromocion)
+	{
+		version.incrementAndGet ();
+		productos.computeIfPresent (producto, (k, intervalos) -> intervalos.eliminar (idPromocion));
+	}
+
+	/**
+	 * Olvida todas las promociones leídas
+	 */
+	public synchronized void limpiar ()
+	{
+		version.incrementAndGet ();
+		productos.clear ();
+	}
+
+	/**
+	 * @return El número de productos en el índice
+	 */
+	public int darTamano ()
+	{
+		return productos.size ();
+	}
+
+	@Override
+	public String toString ()
+	{
+		return "IndicePromociones [productos=" + darTamano () + ", aciertos=" + aciertos.get () + ", cargas=" + cargas.get () + "]";
+	}
+}
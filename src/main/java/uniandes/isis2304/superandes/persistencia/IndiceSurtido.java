@@ -0,0 +1,470 @@
+package uniandes.isis2304.superandes.persistencia;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Índice invertido en memoria del surtido (RFC4): de cada sucursal y de cada ciudad al conjunto de productos que vende, según VENDE.
+ * Cada producto recibe un ordinal denso la primera vez que aparece, y los conjuntos se guardan como mapas de bits comprimidos sobre esos
+ * ordinales (ConjuntoProductos), de manera que las consultas por ciudad y las intersecciones entre ciudades o sucursales se resuelven
+ * en memoria, palabra por palabra.
+ * VENDE y SUCURSAL se leen completas la primera vez que se consulta el índice; después, el manejador de persistencia aplica cada cambio
+ * confirmado. Los cambios esperan a que termine una lectura en curso, y aplicar dos veces un cambio no tiene efecto, por lo que el
+ * índice no puede quedar desactualizado por un cambio que se confirme durante la lectura.
+ * Las ciudades se comparan sin distinguir mayúsculas ni espacios al principio o al final
+ *
+ * @author n.cobos, jf.torresp
+ */
+public class IndiceSurtido
+{
+	/* ****************************************************************
+	 * 			Atributos
+	 *****************************************************************/
+	/**
+	 * El manejador de persistencia
+	 */
+	private final PersistenciaSuperAndes pp;
+
+	/**
+	 * Candado de lectura para las consultas y de escritura para los cambios
+	 */
+	private final ReentrantReadWriteLock candado;
+
+	/**
+	 * El ordinal de cada producto, por identificador
+	 */
+	private final Map<Long, Integer> ordinales;
+
+	/**
+	 * El identificador del producto de cada ordinal
+	 */
+	private long [] productos;
+
+	/**
+	 * Los productos que vende cada sucursal
+	 */
+	private final Map<Long, ConjuntoProductos> porSucursal;
+
+	/**
+	 * La ciudad, normalizada, de cada sucursal
+	 */
+	private final Map<Long, String> ciudades;
+
+	/**
+	 * Las sucursales de cada ciudad, normalizada
+	 */
+	private final Map<String, Set<Long>> sucursalesPorCiudad;
+
+	/**
+	 * Los productos que vende alguna sucursal de cada ciudad, normalizada
+	 */
+	private final Map<String, ConjuntoProductos> porCiudad;
+
+	/**
+	 * Indica si VENDE y SUCURSAL ya se leyeron de la base de datos
+	 */
+	private volatile boolean cargado;
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	/**
+	 * Constructor
+	 * @param pp - El manejador de persistencia
+	 */
+	IndiceSurtido (PersistenciaSuperAndes pp)
+	{
+		this.pp = pp;
+		this.candado = new ReentrantReadWriteLock ();
+		this.ordinales = new HashMap<Long, Integer> ();
+		this.productos = new long [64];
+		this.porSucursal = new HashMap<Long, ConjuntoProductos> ();
+		this.ciudades = new HashMap<Long, String> ();
+		this.sucursalesPorCiudad = new HashMap<String, Set<Long>> ();
+		this.porCiudad = new HashMap<String, ConjuntoProductos> ();
+	}
+
+	/**
+	 * @param ciudad - El nombre de una ciudad
+	 * @return El nombre normalizado
+	 */
+	private static String normalizar (String ciudad)
+	{
+		return ciudad.trim ().toLowerCase (Locale.ROOT);
+	}
+
+	/**
+	 * Lee VENDE y SUCURSAL de la base de datos si no se han leído. Debe llamarse sin tener el candado de lectura
+	 */
+	private void cargar ()
+	{
+		candado.writeLock ().lock ();
+		try
+		{
+			if (cargado)
+			{
+				return;
+			}
+			List<Object []> sucursales = pp.leerCiudadesSucursales ();
+			List<long []> vendes = pp.leerProductosSucursales ();
+			if (sucursales == null || vendes == null)
+			{
+				throw new IllegalStateException ("No se pudieron leer las sucursales y los productos que venden");
+			}
+			vaciar ();
+			for (Object [] sucursal : sucursales)
+			{
+				agregarSucursalSinCandado ((Long) sucursal [0], (String) sucursal [1]);
+			}
+			for (long [] vende : vendes)
+			{
+				agregarVendeSinCandado (vende [0], vende [1]);
+			}
+			cargado = true;
+		}
+		finally
+		{
+			candado.writeLock ().unlock ();
+		}
+	}
+
+	/**
+	 * Toma el candado de lectura, después de leer el índice si hace falta
+	 */
+	private void bloquearLectura ()
+	{
+		candado.readLock ().lock ();
+		while (!cargado)
+		{
+			candado.readLock ().unlock ();
+			cargar ();
+			candado.readLock ().lock ();
+		}
+	}
+
+	/**
+	 * Olvida todas las sucursales y todos los productos. Se debe tener el candado de escritura
+	 */
+	private void vaciar ()
+	{
+		ordinales.clear ();
+		porSucursal.clear ();
+		ciudades.clear ();
+		sucursalesPorCiudad.clear ();
+		porCiudad.clear ();
+	}
+
+	/**
+	 * @param producto - El identificador de un producto
+	 * @return El ordinal del producto, que se le asigna si no tiene. Se debe tener el candado de escritura
+	 */
+	private int darOrdinal (long producto)
+	{
+		Integer resp = ordinales.get (producto);
+		if (resp == null)
+		{
+			resp = ordinales.size ();
+			ordinales.put (producto, resp);
+			if (resp == productos.length)
+			{
+				productos = Arrays.copyOf (productos, productos.length * 2);
+			}
+			productos [resp] = producto;
+		}
+		return resp;
+	}
+
+	/**
+	 * Registra una sucursal. Se debe tener el candado de escritura
+	 * @param sucursal - El identificador de la sucursal
+	 * @param ciudad - Su ciudad
+	 */
+	private void agregarSucursalSinCandado (long sucursal, String ciudad)
+	{
+		String normalizada = normalizar (ciudad);
+		ciudades.put (sucursal, normalizada);
+		sucursalesPorCiudad.computeIfAbsent (normalizada, k -> new HashSet<Long> ()).add (sucursal);
+		if (porSucursal.containsKey (sucursal))
+		{
+			recalcularCiudad (normalizada);
+		}
+	}
+
+	/**
+	 * Registra que una sucursal vende un producto. Se debe tener el candado de escritura
+	 * @param sucursal - El identificador de la sucursal
+	 * @param producto - El identificador del producto
+	 */
+	private void agregarVendeSinCandado (long sucursal, long producto)
+	{
+		int ordinal = darOrdinal (producto);
+		porSucursal.computeIfAbsent (sucursal, k -> new ConjuntoProductos ()).agregar (ordinal);
+		String ciudad = ciudades.get (sucursal);
+		if (ciudad != null)
+		{
+			porCiudad.computeIfAbsent (ciudad, k -> new ConjuntoProductos ()).agregar (ordinal);
+		}
+	}
+
+	/**
+	 * Vuelve a calcular los productos de una ciudad a partir de los de sus sucursales. Se debe tener el candado de escritura
+	 * @param ciudad - La ciudad, normalizada
+	 */
+	private void recalcularCiudad (String ciudad)
+	{
+		ConjuntoProductos resp = new ConjuntoProductos ();
+		for (Long sucursal : sucursalesPorCiudad.getOrDefault (ciudad, new HashSet<Long> ()))
+		{
+			ConjuntoProductos vendidos = porSucursal.get (sucursal);
+			if (vendidos != null)
+			{
+				resp = resp.union (vendidos);
+			}
+		}
+		porCiudad.put (ciudad, resp);
+	}
+
+	/**
+	 * Registra una sucursal ya confirmada en la base de datos
+	 * @param sucursal - El identificador de la sucursal
+	 * @param ciudad - Su ciudad
+	 */
+	public void agregarSucursal (long sucursal, String ciudad)
+	{
+		candado.writeLock ().lock ();
+		try
+		{
+			if (cargado)
+			{
+				agregarSucursalSinCandado (sucursal, ciudad);
+			}
+		}
+		finally
+		{
+			candado.writeLock ().unlock ();
+		}
+	}
+
+	/**
+	 * Olvida una sucursal ya eliminada de la base de datos, con sus productos
+	 * @param sucursal - El identificador de la sucursal
+	 */
+	public void eliminarSucursal (long sucursal)
+	{
+		candado.writeLock ().lock ();
+		try
+		{
+			if (!cargado)
+			{
+				return;
+			}
+			porSucursal.remove (sucursal);
+			String ciudad = ciudades.remove (sucursal);
+			if (ciudad != null)
+			{
+				sucursalesPorCiudad.get (ciudad).remove (sucursal);
+				recalcularCiudad (ciudad);
+			}
+		}
+		finally
+		{
+			candado.writeLock ().unlock ();
+		}
+	}
+
+	/**
+	 * Registra tuplas de VENDE ya confirmadas en la base de datos
+	 * @param vendes - Las parejas {sucursal, producto}
+	 */
+	public void agregarVendes (Collection<long []> vendes)
+	{
+		candado.writeLock ().lock ();
+		try
+		{
+			if (cargado)
+			{
+				for (long [] vende : vendes)
+				{
+					agregarVendeSinCandado (vende [0], vende [1]);
+				}
+			}
+		}
+		finally
+		{
+			candado.writeLock ().unlock ();
+		}
+	}
+
+	/**
+	 * Olvida una tupla de VENDE ya eliminada de la base de datos
+	 * @param sucursal - El identificador de la sucursal
+	 * @param producto - El identificador del producto
+	 */
+	public void eliminarVende (long sucursal, long producto)
+	{
+		candado.writeLock ().lock ();
+		try
+		{
+			Integer ordinal = ordinales.get (producto);
+			ConjuntoProductos vendidos = porSucursal.get (sucursal);
+			if (cargado && ordinal != null && vendidos != null && vendidos.quitar (ordinal) && ciudades.containsKey (sucursal))
+			{
+				recalcularCiudad (ciudades.get (sucursal));
+			}
+		}
+		finally
+		{
+			candado.writeLock ().unlock ();
+		}
+	}
+
+	/**
+	 * Hace que el índice se vuelva a leer de la base de datos en la siguiente consulta, por ejemplo después de un cambio
+	 * del que no se conocen las sucursales o los productos afectados
+	 */
+	public void invalidar ()
+	{
+		candado.writeLock ().lock ();
+		try
+		{
+			cargado = false;
+			vaciar ();
+		}
+		finally
+		{
+			candado.writeLock ().unlock ();
+		}
+	}
+
+	/**
+	 * @param conjunto - Un conjunto de ordinales. Se debe tener el candado
+	 * @return Los identificadores de los productos del conjunto, en orden de ordinal
+	 */
+	private List<Long> darProductos (ConjuntoProductos conjunto)
+	{
+		List<Long> resp = new ArrayList<Long> (conjunto.darTamano ());
+		conjunto.recorrer (ordinal -> resp.add (productos [ordinal]));
+		return resp;
+	}
+
+	/**
+	 * @param sucursal - El identificador de una sucursal
+	 * @return Los identificadores de los productos que vende la sucursal
+	 */
+	public List<Long> darProductosPorSucursal (long sucursal)
+	{
+		bloquearLectura ();
+		try
+		{
+			ConjuntoProductos vendidos = porSucursal.get (sucursal);
+			return vendidos != null ? darProductos (vendidos) : new ArrayList<Long> ();
+		}
+		finally
+		{
+			candado.readLock ().unlock ();
+		}
+	}
+
+	/**
+	 * @param ciudad - El nombre de una ciudad
+	 * @return Los identificadores de los productos que vende alguna sucursal de la ciudad
+	 */
+	public List<Long> darProductosPorCiudad (String ciudad)
+	{
+		bloquearLectura ();
+		try
+		{
+			ConjuntoProductos vendidos = porCiudad.get (normalizar (ciudad));
+			return vendidos != null ? darProductos (vendidos) : new ArrayList<Long> ();
+		}
+		finally
+		{
+			candado.readLock ().unlock ();
+		}
+	}
+
+	/**
+	 * @param ciudadesBuscadas - Los nombres de una o más ciudades
+	 * @return Los identificadores de los productos que se venden en todas las ciudades, por ejemplo en Bogotá y en Medellín
+	 */
+	public List<Long> darProductosEnTodasLasCiudades (Collection<String> ciudadesBuscadas)
+	{
+		bloquearLectura ();
+		try
+		{
+			List<ConjuntoProductos> conjuntos = new ArrayList<ConjuntoProductos> ();
+			for (String ciudad : ciudadesBuscadas)
+			{
+				conjuntos.add (porCiudad.getOrDefault (normalizar (ciudad), new ConjuntoProductos ()));
+			}
+			return darProductos (intersectar (conjuntos));
+		}
+		finally
+		{
+			candado.readLock ().unlock ();
+		}
+	}
+
+	/**
+	 * @param sucursales - Los identificadores de una o más sucursales
+	 * @return Los identificadores de los productos que venden todas las sucursales
+	 */
+	public List<Long> darProductosEnTodasLasSucursales (Collection<Long> sucursales)
+	{
+		bloquearLectura ();
+		try
+		{
+			List<ConjuntoProductos> conjuntos = new ArrayList<ConjuntoProductos> ();
+			for (Long sucursal : sucursales)
+			{
+				conjuntos.add (porSucursal.getOrDefault (sucursal, new ConjuntoProductos ()));
+			}
+			return darProductos (intersectar (conjuntos));
+		}
+		finally
+		{
+			candado.readLock ().unlock ();
+		}
+	}
+
+	/**
+	 * @param conjuntos - Uno o más conjuntos
+	 * @return La intersección de los conjuntos, empezando por el más pequeño. Vacío si no hay conjuntos
+	 */
+	private static ConjuntoProductos intersectar (List<ConjuntoProductos> conjuntos)
+	{
+		if (conjuntos.isEmpty ())
+		{
+			return new ConjuntoProductos ();
+		}
+		conjuntos.sort ((a, b) -> Integer.compare (a.darTamano (), b.darTamano ()));
+		ConjuntoProductos resp = conjuntos.get (0);
+		for (int i = 1; i < conjuntos.size () && resp.darTamano () > 0; i++)
+		{
+			resp = resp.interseccion (conjuntos.get (i));
+		}
+		return resp;
+	}
+
+	@Override
+	public String toString ()
+	{
+		candado.readLock ().lock ();
+		try
+		{
+			return "IndiceSurtido [cargado=" + cargado + ", productos=" + ordinales.size () + ", sucursales=" + porSucursal.size () + ", ciudades=" + porCiudad.size () + "]";
+		}
+		finally
+		{
+			candado.readLock ().unlock ();
+		}
+	}
+}
@@ -0,0 +1,139 @@
+package uniandes.isis2304.superandes.persistencia;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedList;
+import java.util.List;
+
+import javax.jdo.JDODataStoreException;
+import javax.jdo.PersistenceManager;
+import javax.jdo.PersistenceManagerFactory;
+import javax.jdo.Transaction;
+import javax.jdo.datastore.JDOConnection;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Clase que crea el esquema de SuperAndes en una base de datos embebida, a partir de un script SQL.
+ * Se usa con las unidades de persistencia locales (H2 en modo Oracle), que arrancan vacías
+ * Nótese que es una clase que es sólo conocida en el paquete de persistencia
+ *
+ * @author n.cobos, jf.torresp
+ */
+class InicializadorEsquema
+{
+	/* ****************************************************************
+	 * 			Constantes
+	 *****************************************************************/
+	/**
+	 * Logger para escribir la traza de la ejecución
+	 */
+	private static Logger log = Logger.getLogger(InicializadorEsquema.class.getName());
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	/**
+	 * Ejecuta, en una transacción, todas las sentencias de un script SQL
+	 * @param pmf - La fábrica de manejadores de persistencia de la base de datos
+	 * @param script - La ruta del script, en el classpath o en el sistema de archivos
+	 * @return El número de sentencias ejecutadas
+	 * @throws JDODataStoreException - Si no se puede leer el script o falla alguna sentencia
+	 */
+	public static int ejecutarScript (PersistenceManagerFactory pmf, String script)
+	{
+		List<String> sentencias;
+		try
+		{
+			sentencias = leerSentencias (script);
+		}
+		catch (IOException e)
+		{
+			throw new JDODataStoreException ("No se pudo leer el script " + script, e);
+		}
+
+		PersistenceManager pm = pmf.getPersistenceManager ();
+		Transaction tx = pm.currentTransaction ();
+		try
+		{
+			tx.begin ();
+			JDOConnection jdoConn = pm.getDataStoreConnection ();
+			try (Statement st = ((Connection) jdoConn.getNativeConnection ()).createStatement ())
+			{
+				for (String sentencia : sentencias)
+				{
+					st.execute (sentencia);
+				}
+			}
+			finally
+			{
+				jdoConn.close ();
+			}
+			tx.commit ();
+			log.info ("Esquema creado con " + script + ": " + sentencias.size () + " sentencias");
+			return sentencias.size ();
+		}
+		catch (SQLException e)
+		{
+			throw new JDODataStoreException ("Falló el script " + script + ": " + e.getMessage (), e);
+		}
+		finally
+		{
+			if (tx.isActive ())
+			{
+				tx.rollback ();
+			}
+			pm.close ();
+		}
+	}
+
+	/**
+	 * Lee las sentencias de un script SQL. Las líneas que empiezan por -- son comentarios, las sentencias terminan en ;
+	 * y las sentencias COMMIT se omiten, pues el script se ejecuta en una sola transacción
+	 * @param script - La ruta del script, en el classpath o en el sistema de archivos
+	 * @return Las sentencias del script, sin el ; final
+	 * @throws IOException - Si no se puede leer el script
+	 */
+	private static List<String> leerSentencias (String script) throws IOException
+	{
+		InputStream in = InicializadorEsquema.class.getClassLoader ().getResourceAsStream (script);
+		if (in == null)
+		{
+			in = new FileInputStream (script);
+		}
+
+		List<String> resp = new LinkedList<String> ();
+		try (BufferedReader br = new BufferedReader (new InputStreamReader (in, StandardCharsets.UTF_8)))
+		{
+			StringBuilder actual = new StringBuilder ();
+			String linea;
+			while ((linea = br.readLine ()) != null)
+			{
+				String limpia = linea.trim ();
+				if (limpia.isEmpty () || limpia.startsWith ("--"))
+				{
+					continue;
+				}
+				actual.append (linea).append ('\n');
+				if (limpia.endsWith (";"))
+				{
+					String sentencia = actual.toString ().trim ();
+					sentencia = sentencia.substring (0, sentencia.length () - 1);
+					if (!sentencia.equalsIgnoreCase ("COMMIT"))
+					{
+						resp.add (sentencia);
+					}
+					actual.setLength (0);
+				}
+			}
+		}
+		return resp;
+	}
+}
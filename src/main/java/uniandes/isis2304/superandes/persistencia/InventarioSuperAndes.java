@@ -0,0 +1,713 @@
+package uniandes.isis2304.superandes.persistencia;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Inventario en memoria de SuperAndes: las existencias en bodegas y en estantes de cada producto en cada sucursal.
+ * Las consultas y los cambios de existencias se resuelven en memoria, sin bloquear tuplas de BODEGA ni de ESTANTE, y los cambios
+ * se acumulan por (sucursal, producto) y se descargan periódicamente en la base de datos en una sola transacción con lotes de JDBC.
+ * Las existencias se guardan en mapas de tipos primitivos repartidos en franjas, cada una con su candado, de manera que
+ * operaciones sobre productos distintos casi nunca compiten entre sí.
+ * Cada cambio se escribe en un diario en disco antes de aplicarse en memoria; si la aplicación se cae, los cambios que no se
+ * alcanzaron a descargar se recuperan del diario al reiniciar.
+ * Las existencias de una llave se leen de la base de datos la primera vez que se piden. Mientras tanto, las tablas BODEGA y ESTANTE
+ * van atrasadas respecto al inventario a lo sumo un intervalo de descarga
+ *
+ * @author n.cobos, jf.torresp
+ */
+public class InventarioSuperAndes
+{
+	/* ****************************************************************
+	 * 			Constantes
+	 *****************************************************************/
+	/**
+	 * Logger para escribir la traza de la ejecución
+	 */
+	private static Logger log = Logger.getLogger(InventarioSuperAndes.class.getName());
+
+	/**
+	 * Número de franjas por defecto
+	 */
+	public final static int FRANJAS_DEFECTO = 64;
+
+	/**
+	 * Intervalo por defecto entre descargas en la base de datos, en milisegundos
+	 */
+	public final static long DESCARGA_DEFECTO = 1000;
+
+	/* ****************************************************************
+	 * 			Atributos
+	 *****************************************************************/
+	/**
+	 * El manejador de persistencia, para leer y descargar las existencias
+	 */
+	private final PersistenciaSuperAndes pp;
+
+	/**
+	 * Las franjas del inventario
+	 */
+	private final MapaExistencias [] mapas;
+
+	/**
+	 * El candado de cada franja
+	 */
+	private final ReentrantLock [] candados;
+
+	/**
+	 * El diario de los cambios pendientes de descargar
+	 */
+	private final DiarioInventario diario;
+
+	/**
+	 * Candado que evita que dos descargas se ejecuten al tiempo
+	 */
+	private final Object descarga;
+
+	/**
+	 * Hilo que descarga periódicamente los cambios. null si sólo se descarga explícitamente
+	 */
+	private final ScheduledExecutorService descargador;
+
+	/**
+	 * Número de descargas confirmadas en la base de datos
+	 */
+	private final AtomicLong descargas;
+
+	/**
+	 * Número de descargas que fallaron. Sus cambios quedan pendientes para la siguiente
+	 */
+	private final AtomicLong fallosDescarga;
+
+	/**
+	 * Número de cambios de existencias, agrupados por llave, confirmados en la base de datos
+	 */
+	private final AtomicLong cambiosDescargados;
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	/**
+	 * Constructor. Recupera los cambios que quedaron en el diario de una ejecución anterior y, si se pide, inicia la descarga periódica
+	 * @param pp - El manejador de persistencia
+	 * @param directorioDiario - El directorio del diario
+	 * @param franjas - El número de franjas, potencia de dos
+	 * @param descargaMs - El intervalo entre descargas, en milisegundos. 0 para descargar sólo explícitamente
+	 * @param sincronizar - Indica si cada escritura del diario se fuerza al disco
+	 * @throws IOException - Si no se puede abrir o leer el diario
+	 */
+	InventarioSuperAndes (PersistenciaSuperAndes pp, File directorioDiario, int franjas, long descargaMs, boolean sincronizar) throws IOException
+	{
+		if (franjas < 1 || Integer.bitCount (franjas) != 1 || descargaMs < 0)
+		{
+			throw new IllegalArgumentException ("Configuración inválida del inventario: " + franjas + " franjas, descarga cada " + descargaMs + " ms");
+		}
+		this.pp = pp;
+		this.mapas = new MapaExistencias [franjas];
+		this.candados = new ReentrantLock [franjas];
+		for (int i = 0; i < franjas; i++)
+		{
+			mapas [i] = new MapaExistencias ();
+			candados [i] = new ReentrantLock ();
+		}
+		long descargado = pp.darSegmentoDescargadoInventario ();
+		if (descargado < 0)
+		{
+			throw new IllegalStateException ("No se pudo leer el último segmento descargado del diario del inventario");
+		}
+		this.diario = new DiarioInventario (directorioDiario, descargado, sincronizar);
+		this.descarga = new Object ();
+		this.descargas = new AtomicLong ();
+		this.fallosDescarga = new AtomicLong ();
+		this.cambiosDescargados = new AtomicLong ();
+		recuperar ();
+
+		if (descargaMs > 0)
+		{
+			descargador = Executors.newSingleThreadScheduledExecutor (r -> {
+				Thread t = new Thread (r, "superandes-inventario");
+				t.setDaemon (true);
+				return t;
+			});
+			descargador.scheduleWithFixedDelay (this::descargar, descargaMs, descargaMs, TimeUnit.MILLISECONDS);
+		}
+		else
+		{
+			descargador = null;
+		}
+	}
+
+	/**
+	 * Carga como pendientes los cambios que quedaron en el diario de una ejecución anterior sin confirmarse en la base de datos.
+	 * Sus segmentos se borran con la siguiente descarga confirmada
+	 * @throws IOException - Si no se puede leer el diario
+	 */
+	private void recuperar () throws IOException
+	{
+		Map<List<Long>, long []> cambios = new HashMap<List<Long>, long []> ();
+		for (long [] registro : diario.leerAnteriores ())
+		{
+			long [] cambio = cambios.computeIfAbsent (Arrays.asList (registro [1], registro [2]), k -> new long [2]);
+			cambio [registro [0] == DiarioInventario.BODEGAS ? 0 : 1] += registro [3];
+		}
+		for (Map.Entry<List<Long>, long []> cambio : cambios.entrySet ())
+		{
+			long sucursal = cambio.getKey ().get (0);
+			long producto = cambio.getKey ().get (1);
+			MapaExistencias mapa = mapas [darFranja (sucursal, producto)];
+			int i = mapa.buscar (sucursal, producto);
+			if (i < 0)
+			{
+				long [] existencias = leerExistencias (sucursal, producto);
+				i = mapa.insertar (sucursal, producto, existencias [0], existencias [1]);
+			}
+			mapa.sumarExistencias (i, cambio.getValue () [0], cambio.getValue () [1]);
+		}
+		if (!cambios.isEmpty ())
+		{
+			log.info ("Recuperados del diario los cambios pendientes de " + cambios.size () + " productos en sucursales");
+		}
+	}
+
+	/**
+	 * @param sucursal - El identificador de la sucursal
+	 * @param producto - El identificador del producto
+	 * @return La franja de la llave
+	 */
+	private int darFranja (long sucursal, long producto)
+	{
+		return (MapaExistencias.dispersar (sucursal, producto) >>> 16) & (mapas.length - 1);
+	}
+
+	/**
+	 * @param sucursal - El identificador de la sucursal
+	 * @param producto - El identificador del producto
+	 * @return Las existencias en bodegas y en estantes en la base de datos, en ese orden
+	 */
+	private long [] leerExistencias (long sucursal, long producto)
+	{
+		long [] resp = pp.leerExistencias (sucursal, producto);
+		if (resp == null)
+		{
+			throw new IllegalStateException ("No se pudieron leer las existencias del producto " + producto + " en la sucursal " + sucursal);
+		}
+		return resp;
+	}
+
+	/**
+	 * Busca una llave en su franja y, si no está, lee sus existencias de la base de datos y la inserta.
+	 * La lectura se hace sin el candado de la franja; si mientras tanto se registra un cambio hecho directamente en la base de datos,
+	 * se vuelve a leer
+	 * @param franja - La franja de la llave
+	 * @param sucursal - El identificador de la sucursal
+	 * @param producto - El identificador del producto
+	 */
+	private void cargar (int franja, long sucursal, long producto)
+	{
+		MapaExistencias mapa = mapas [franja];
+		ReentrantLock candado = candados [franja];
+		while (true)
+		{
+			long version;
+			candado.lock ();
+			try
+			{
+				if (mapa.buscar (sucursal, producto) >= 0)
+				{
+					return;
+				}
+				version = mapa.darVersion ();
+			}
+			finally
+			{
+				candado.unlock ();
+			}
+
+			long [] existencias = leerExistencias (sucursal, producto);
+
+			candado.lock ();
+			try
+			{
+				if (mapa.buscar (sucursal, producto) >= 0)
+				{
+					return;
+				}
+				if (mapa.darVersion () == version)
+				{
+					mapa.insertar (sucursal, producto, existencias [0], existencias [1]);
+					return;
+				}
+			}
+			finally
+			{
+				candado.unlock ();
+			}
+		}
+	}
+
+	/**
+	 * @param sucursal - El identificador de la sucursal
+	 * @param producto - El identificador del producto
+	 * @return Las existencias del producto en las bodegas de la sucursal
+	 */
+	public long darExistenciasBodegas (long sucursal, long producto)
+	{
+		return darExistencias (sucursal, producto) [0];
+	}
+
+	/**
+	 * @param sucursal - El identificador de la sucursal
+	 * @param producto - El identificador del producto
+	 * @return Las existencias del producto en los estantes de la sucursal
+	 */
+	public long darExistenciasEstantes (long sucursal, long producto)
+	{
+		return darExistencias (sucursal, producto) [1];
+	}
+
+	/**
+	 * @param sucursal - El identificador de la sucursal
+	 * @param producto - El identificador del producto
+	 * @return Las existencias del producto en las bodegas y en los estantes de la sucursal, en ese orden
+	 */
+	public long [] darExistencias (long sucursal, long producto)
+	{
+		int franja = darFranja (sucursal, producto);
+		cargar (franja, sucursal, producto);
+		candados [franja].lock ();
+		try
+		{
+			int i = mapas [franja].buscar (sucursal, producto);
+			return new long [] {mapas [franja].darBodegas (i), mapas [franja].darEstantes (i)};
+		}
+		finally
+		{
+			candados [franja].unlock ();
+		}
+	}
+
+	/**
+	 * Descuenta de los estantes de una sucursal las cantidades de varios productos, como en una venta.
+	 * Se descuentan todas o ninguna
+	 * @param sucursal - El identificador de la sucursal
+	 * @param cantidades - La cantidad a descontar de cada producto, por identificador del producto
+	 * @return true si había existencias suficientes de todos los productos. false si no se descontó nada
+	 */
+	public boolean disminuirExistenciasEstantes (long sucursal, Map<Long, Integer> cantidades)
+	{
+		return aplicar (sucursal, cantidades, 0, -1);
+	}
+
+	/**
+	 * Suma a los estantes de una sucursal las cantidades de varios productos, por ejemplo para deshacer una venta
+	 * @param sucursal - El identificador de la sucursal
+	 * @param cantidades - La cantidad a sumar de cada producto, por identificador del producto
+	 */
+	public void aumentarExistenciasEstantes (long sucursal, Map<Long, Integer> cantidades)
+	{
+		aplicar (sucursal, cantidades, 0, 1);
+	}
+
+	/**
+	 * Suma a las bodegas de una sucursal las cantidades de varios productos, por ejemplo al recibir un pedido
+	 * @param sucursal - El identificador de la sucursal
+	 * @param cantidades - La cantidad a sumar de cada producto, por identificador del producto
+	 */
+	public void aumentarExistenciasBodegas (long sucursal, Map<Long, Integer> cantidades)
+	{
+		aplicar (sucursal, cantidades, 1, 0);
+	}
+
+	/**
+	 * Pasa unidades de un producto de las bodegas a los estantes de una sucursal
+	 * @param sucursal - El identificador de la sucursal
+	 * @param producto - El identificador del producto
+	 * @param cantidad - El número de unidades
+	 * @return true si había existencias suficientes en las bodegas. false si no se pasó nada
+	 */
+	public boolean trasladarAEstantes (long sucursal, long producto, int cantidad)
+	{
+		Map<Long, Integer> cantidades = new HashMap<Long, Integer> ();
+		cantidades.put (producto, cantidad);
+		return aplicar (sucursal, cantidades, -1, 1);
+	}
+
+	/**
+	 * Aplica un cambio de existencias a varios productos de una sucursal, de manera atómica: bloquea las franjas de todos los productos
+	 * en orden, verifica que ninguna existencia quede negativa, escribe el cambio en el diario y lo aplica en memoria
+	 * @param sucursal - El identificador de la sucursal
+	 * @param cantidades - La cantidad de cada producto, por identificador del producto
+	 * @param signoBodegas - El signo con que la cantidad cambia las existencias en bodegas: -1, 0 o 1
+	 * @param signoEstantes - El signo con que la cantidad cambia las existencias en estantes: -1, 0 o 1
+	 * @return true si se aplicó el cambio. false si alguna existencia quedaba negativa y no se aplicó nada
+	 */
+	private boolean aplicar (long sucursal, Map<Long, Integer> cantidades, int signoBodegas, int signoEstantes)
+	{
+		int n = cantidades.size ();
+		long [] productos = new long [n];
+		long [] cambios = new long [n];
+		int [] franjas = new int [n];
+		boolean [] bloqueadas = new boolean [mapas.length];
+		int k = 0;
+		for (Map.Entry<Long, Integer> cantidad : cantidades.entrySet ())
+		{
+			if (cantidad.getValue () < 0)
+			{
+				throw new IllegalArgumentException ("Cantidad negativa del producto " + cantidad.getKey () + ": " + cantidad.getValue ());
+			}
+			productos [k] = cantidad.getKey ();
+			cambios [k] = cantidad.getValue ();
+			franjas [k] = darFranja (sucursal, productos [k]);
+			bloqueadas [franjas [k]] = true;
+			cargar (franjas [k], sucursal, productos [k]);
+			k++;
+		}
+
+		for (int f = 0; f < mapas.length; f++)
+		{
+			if (bloqueadas [f])
+			{
+				candados [f].lock ();
+			}
+		}
+		try
+		{
+			int [] posiciones = new int [n];
+			for (int j = 0; j < n; j++)
+			{
+				MapaExistencias mapa = mapas [franjas [j]];
+				posiciones [j] = mapa.buscar (sucursal, productos [j]);
+				if (posiciones [j] < 0)
+				{
+					// Se limpió el inventario después de cargar la llave
+					posiciones [j] = mapa.insertar (sucursal, productos [j], 0, 0);
+				}
+				if (mapa.darBodegas (posiciones [j]) + signoBodegas * cambios [j] < 0 || mapa.darEstantes (posiciones [j]) + signoEstantes * cambios [j] < 0)
+				{
+					return false;
+				}
+			}
+
+			ByteBuffer registros = DiarioInventario.crearRegistros (n * ((signoBodegas != 0 ? 1 : 0) + (signoEstantes != 0 ? 1 : 0)));
+			for (int j = 0; j < n; j++)
+			{
+				if (signoBodegas != 0)
+				{
+					DiarioInventario.agregarRegistro (registros, DiarioInventario.BODEGAS, sucursal, productos [j], signoBodegas * cambios [j]);
+				}
+				if (signoEstantes != 0)
+				{
+					DiarioInventario.agregarRegistro (registros, DiarioInventario.ESTANTES, sucursal, productos [j], signoEstantes * cambios [j]);
+				}
+			}
+			try
+			{
+				diario.escribir (registros);
+			}
+			catch (IOException e)
+			{
+				throw new IllegalStateException ("No se pudo escribir el diario del inventario", e);
+			}
+
+			for (int j = 0; j < n; j++)
+			{
+				mapas [franjas [j]].sumarExistencias (posiciones [j], signoBodegas * cambios [j], signoEstantes * cambios [j]);
+			}
+			return true;
+		}
+		finally
+		{
+			for (int f = mapas.length - 1; f >= 0; f--)
+			{
+				if (bloqueadas [f])
+				{
+					candados [f].unlock ();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Registra un cambio de existencias que ya se hizo directamente en la base de datos, como la inserción de una bodega,
+	 * para que el inventario en memoria no quede desactualizado. Si la llave no está cargada, sólo invalida las lecturas en curso
+	 * @param sucursal - El identificador de la sucursal
+	 * @param producto - El identificador del producto
+	 * @param cambioBodegas - El cambio en las existencias en bodegas
+	 * @param cambioEstantes - El cambio en las existencias en estantes
+	 */
+	void registrarCambioConfirmado (long sucursal, long producto, long cambioBodegas, long cambioEstantes)
+	{
+		int franja = darFranja (sucursal, producto);
+		candados [franja].lock ();
+		try
+		{
+			MapaExistencias mapa = mapas [franja];
+			mapa.incrementarVersion ();
+			int i = mapa.buscar (sucursal, producto);
+			if (i >= 0)
+			{
+				mapa.sumarConfirmadas (i, cambioBodegas, cambioEstantes);
+			}
+		}
+		finally
+		{
+			candados [franja].unlock ();
+		}
+	}
+
+	/**
+	 * Descarga en la base de datos, en una sola transacción, los cambios pendientes agrupados por (sucursal, producto).
+	 * Mientras se sacan los cambios se bloquean todas las franjas y se rota el diario, de manera que los cambios descargados son
+	 * exactamente los de los segmentos cerrados, que se borran si la transacción se confirma.
+	 * Si falla, aun por una excepción inesperada, los cambios vuelven a quedar pendientes para la siguiente descarga.
+	 * La transacción registra también el número del último segmento cerrado, de manera que si la aplicación se cae entre la
+	 * confirmación y el borrado de los segmentos, al reiniciar esos segmentos se descartan en lugar de aplicarse otra vez
+	 * @return El número de cambios descargados, agrupados por llave. -1 si falla la descarga
+	 */
+	public int descargar ()
+	{
+		synchronized (descarga)
+		{
+			List<long []> cambiosBodegas = new ArrayList<long []> ();
+			List<long []> cambiosEstantes = new ArrayList<long []> ();
+			long segmento;
+			bloquearTodas ();
+			try
+			{
+				boolean pendientes = false;
+				for (MapaExistencias mapa : mapas)
+				{
+					pendientes |= mapa.tienePendientes ();
+				}
+				if (!pendientes)
+				{
+					return 0;
+				}
+				segmento = diario.rotar ();
+				for (MapaExistencias mapa : mapas)
+				{
+					mapa.extraerPendientes (cambiosBodegas, cambiosEstantes);
+				}
+			}
+			catch (IOException e)
+			{
+				log.error ("No se pudo rotar el diario del inventario: " + e.getMessage ());
+				fallosDescarga.incrementAndGet ();
+				return -1;
+			}
+			finally
+			{
+				desbloquearTodas ();
+			}
+
+			int resp = cambiosBodegas.size () + cambiosEstantes.size ();
+			boolean ajustadas;
+			try
+			{
+				ajustadas = resp == 0 || pp.ajustarExistencias (cambiosBodegas, cambiosEstantes, segmento);
+			}
+			catch (RuntimeException e)
+			{
+				// Los cambios ya se extrajeron de los mapas: si no se devuelven se pierden, y la excepción cancelaría la descarga periódica
+				log.error ("Falló la descarga del inventario: " + e);
+				ajustadas = false;
+			}
+			if (!ajustadas)
+			{
+				devolver (cambiosBodegas, 1, 0);
+				devolver (cambiosEstantes, 0, 1);
+				fallosDescarga.incrementAndGet ();
+				return -1;
+			}
+			diario.descartarHasta (segmento);
+			descargas.incrementAndGet ();
+			cambiosDescargados.addAndGet (resp);
+			log.trace ("Descarga del inventario: " + cambiosBodegas.size () + " cambios de bodegas y " + cambiosEstantes.size () + " de estantes");
+			return resp;
+		}
+	}
+
+	/**
+	 * Vuelve a dejar pendientes unos cambios que no se pudieron descargar
+	 * @param cambios - Los cambios, como {sucursal, producto, cambio}
+	 * @param bodegas - 1 si son cambios de las bodegas, 0 si no
+	 * @param estantes - 1 si son cambios de los estantes, 0 si no
+	 */
+	private void devolver (List<long []> cambios, int bodegas, int estantes)
+	{
+		for (long [] cambio : cambios)
+		{
+			int franja = darFranja (cambio [0], cambio [1]);
+			candados [franja].lock ();
+			try
+			{
+				int i = mapas [franja].buscar (cambio [0], cambio [1]);
+				if (i >= 0)
+				{
+					mapas [franja].sumarPendientes (i, bodegas * cambio [2], estantes * cambio [2]);
+				}
+			}
+			finally
+			{
+				candados [franja].unlock ();
+			}
+		}
+	}
+
+	/**
+	 * Bloquea todas las franjas, en orden
+	 */
+	private void bloquearTodas ()
+	{
+		for (ReentrantLock candado : candados)
+		{
+			candado.lock ();
+		}
+	}
+
+	/**
+	 * Desbloquea todas las franjas
+	 */
+	private void desbloquearTodas ()
+	{
+		for (int f = candados.length - 1; f >= 0; f--)
+		{
+			candados [f].unlock ();
+		}
+	}
+
+	/**
+	 * Borra todo el inventario en memoria y los cambios pendientes, sin descargarlos. Se usa cuando se borra la base de datos
+	 */
+	public void limpiar ()
+	{
+		synchronized (descarga)
+		{
+			bloquearTodas ();
+			try
+			{
+				for (MapaExistencias mapa : mapas)
+				{
+					mapa.limpiar ();
+				}
+				diario.descartarHasta (diario.rotar ());
+			}
+			catch (IOException e)
+			{
+				log.error ("No se pudo rotar el diario del inventario: " + e.getMessage ());
+			}
+			finally
+			{
+				desbloquearTodas ();
+			}
+		}
+	}
+
+	/**
+	 * @return El número de productos en sucursales cargados en memoria
+	 */
+	public int darTamano ()
+	{
+		int resp = 0;
+		for (int f = 0; f < mapas.length; f++)
+		{
+			candados [f].lock ();
+			try
+			{
+				resp += mapas [f].darTamano ();
+			}
+			finally
+			{
+				candados [f].unlock ();
+			}
+		}
+		return resp;
+	}
+
+	/**
+	 * @return El número de unidades en cambios pendientes de descargar, sumando los valores absolutos
+	 */
+	public long darUnidadesPendientes ()
+	{
+		long resp = 0;
+		for (int f = 0; f < mapas.length; f++)
+		{
+			candados [f].lock ();
+			try
+			{
+				resp += mapas [f].darUnidadesPendientes ();
+			}
+			finally
+			{
+				candados [f].unlock ();
+			}
+		}
+		return resp;
+	}
+
+	/**
+	 * @return El número de descargas confirmadas en la base de datos
+	 */
+	public long darDescargas ()
+	{
+		return descargas.get ();
+	}
+
+	/**
+	 * @return El número de descargas que fallaron
+	 */
+	public long darFallosDescarga ()
+	{
+		return fallosDescarga.get ();
+	}
+
+	/**
+	 * Detiene la descarga periódica, descarga los cambios pendientes y cierra el diario.
+	 * Si la última descarga falla, los cambios quedan en el diario para la siguiente ejecución
+	 */
+	public void cerrar ()
+	{
+		if (descargador != null)
+		{
+			descargador.shutdown ();
+			try
+			{
+				descargador.awaitTermination (30, TimeUnit.SECONDS);
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread ().interrupt ();
+			}
+		}
+		descargar ();
+		try
+		{
+			diario.cerrar ();
+		}
+		catch (IOException e)
+		{
+			log.error ("No se pudo cerrar el diario del inventario: " + e.getMessage ());
+		}
+	}
+
+	@Override
+	public String toString ()
+	{
+		return "InventarioSuperAndes [franjas=" + mapas.length + ", productos=" + darTamano () + ", unidadesPendientes=" + darUnidadesPendientes ()
+				+ ", descargas=" + darDescargas () + ", cambiosDescargados=" + cambiosDescargados.get () + ", fallos=" + darFallosDescarga ()
+				+ ", segmento=" + diario.darSegmento () + "]";
+	}
+}
@@ -0,0 +1,108 @@
+package uniandes.isis2304.superandes.persistencia;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Iterador que recorre una tabla completa por páginas consultadas con paginación por llave (keyset).
+ * Sólo tiene en memoria una página a la vez y no mantiene una conexión abierta entre páginas,
+ * de manera que el consumo de memoria no depende del tamaño de la tabla.
+ * Nótese que es una clase que es sólo conocida en el paquete de persistencia
+ *
+ * @param <T> - El tipo de las tuplas
+ * @author n.cobos, jf.torresp
+ */
+class IteradorPaginas<T> implements Iterator<T>
+{
+	/* ****************************************************************
+	 * 			Atributos
+	 *****************************************************************/
+	/**
+	 * Consulta la página que sigue a la tupla dada. Recibe null para la primera página
+	 */
+	private final Function<T, List<T>> siguientePagina;
+
+	/**
+	 * El número de tuplas que pide cada página
+	 */
+	private final int tamanoPagina;
+
+	/**
+	 * La página actual
+	 */
+	private List<T> pagina;
+
+	/**
+	 * La posición de la siguiente tupla en la página actual
+	 */
+	private int posicion;
+
+	/**
+	 * Indica si la página actual es la última
+	 */
+	private boolean ultima;
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	/**
+	 * Constructor
+	 * @param siguientePagina - Consulta la página que sigue a la tupla dada, en el orden de la llave. Recibe null para la primera página
+	 * @param tamanoPagina - El número de tuplas que pide cada página
+	 */
+	public IteradorPaginas (Function<T, List<T>> siguientePagina, int tamanoPagina)
+	{
+		if (tamanoPagina < 1)
+		{
+			throw new IllegalArgumentException ("El tamaño de la página debe ser positivo: " + tamanoPagina);
+		}
+		this.siguientePagina = siguientePagina;
+		this.tamanoPagina = tamanoPagina;
+		this.pagina = Collections.emptyList ();
+		this.posicion = 0;
+		this.ultima = false;
+	}
+
+	@Override
+	public boolean hasNext ()
+	{
+		if (posicion < pagina.size ())
+		{
+			return true;
+		}
+		if (ultima)
+		{
+			return false;
+		}
+		T anterior = pagina.isEmpty () ? null : pagina.get (pagina.size () - 1);
+		pagina = siguientePagina.apply (anterior);
+		posicion = 0;
+		ultima = pagina.size () < tamanoPagina;
+		return !pagina.isEmpty ();
+	}
+
+	@Override
+	public T next ()
+	{
+		if (!hasNext ())
+		{
+			throw new NoSuchElementException ();
+		}
+		return pagina.get (posicion++);
+	}
+
+	/**
+	 * @return Un Stream secuencial sobre las tuplas de este iterador
+	 */
+	public Stream<T> comoStream ()
+	{
+		return StreamSupport.stream (Spliterators.spliteratorUnknownSize (this, Spliterator.ORDERED | Spliterator.NONNULL), false);
+	}
+}
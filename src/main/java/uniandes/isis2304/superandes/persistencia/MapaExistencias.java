@@ -0,0 +1,361 @@
+package uniandes.isis2304.superandes.persistencia;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Mapa de direccionamiento abierto, con arreglos de tipos primitivos, de (sucursal, producto) a las existencias en bodegas y en estantes
+ * y a los cambios de esas existencias pendientes de descargar en la base de datos. No guarda objetos por entrada, de manera que
+ * cientos de miles de entradas no agregan trabajo al recolector de basura.
+ * Las entradas sucias (con cambios pendientes) se llevan en una lista aparte para no recorrer todo el mapa en cada descarga.
+ * No es seguro para varios hilos: InventarioSuperAndes protege cada mapa con su propio candado
+ * Nótese que es una clase que es sólo conocida en el paquete de persistencia
+ *
+ * @author n.cobos, jf.torresp
+ */
+class MapaExistencias
+{
+	/* ****************************************************************
+	 * 			Constantes
+	 *****************************************************************/
+	/**
+	 * Capacidad inicial, potencia de dos
+	 */
+	private final static int CAPACIDAD_INICIAL = 64;
+
+	/* ****************************************************************
+	 * 			Atributos
+	 *****************************************************************/
+	/**
+	 * Las sucursales de las llaves
+	 */
+	private long [] sucursales;
+
+	/**
+	 * Los productos de las llaves
+	 */
+	private long [] productos;
+
+	/**
+	 * Indica qué posiciones están ocupadas
+	 */
+	private boolean [] ocupadas;
+
+	/**
+	 * Las existencias en bodegas, incluidos los cambios pendientes
+	 */
+	private long [] bodegas;
+
+	/**
+	 * Las existencias en estantes, incluidos los cambios pendientes
+	 */
+	private long [] estantes;
+
+	/**
+	 * Los cambios pendientes de las existencias en bodegas
+	 */
+	private long [] pendientesBodegas;
+
+	/**
+	 * Los cambios pendientes de las existencias en estantes
+	 */
+	private long [] pendientesEstantes;
+
+	/**
+	 * Indica qué posiciones están en la lista de sucias
+	 */
+	private boolean [] marcadas;
+
+	/**
+	 * Las posiciones con cambios pendientes
+	 */
+	private int [] sucias;
+
+	/**
+	 * Número de posiciones en la lista de sucias
+	 */
+	private int numSucias;
+
+	/**
+	 * Número de entradas
+	 */
+	private int tamano;
+
+	/**
+	 * Cambia cada vez que se registra un cambio hecho directamente en la base de datos,
+	 * para descartar existencias leídas antes de ese cambio
+	 */
+	private long version;
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	/**
+	 * Constructor
+	 */
+	public MapaExistencias ()
+	{
+		crearArreglos (CAPACIDAD_INICIAL);
+	}
+
+	/**
+	 * Crea los arreglos vacíos
+	 * @param capacidad - La capacidad, potencia de dos
+	 */
+	private void crearArreglos (int capacidad)
+	{
+		sucursales = new long [capacidad];
+		productos = new long [capacidad];
+		ocupadas = new boolean [capacidad];
+		bodegas = new long [capacidad];
+		estantes = new long [capacidad];
+		pendientesBodegas = new long [capacidad];
+		pendientesEstantes = new long [capacidad];
+		marcadas = new boolean [capacidad];
+		sucias = new int [capacidad];
+		numSucias = 0;
+		tamano = 0;
+	}
+
+	/**
+	 * @param sucursal - El identificador de la sucursal
+	 * @param producto - El identificador del producto
+	 * @return Una dispersión de la llave, con todos los bits mezclados
+	 */
+	public static int dispersar (long sucursal, long producto)
+	{
+		long h = sucursal * 0x9E3779B97F4A7C15L + producto;
+		h = (h ^ (h >>> 33)) * 0xFF51AFD7ED558CCDL;
+		h = (h ^ (h >>> 33)) * 0xC4CEB9FE1A85EC53L;
+		return (int) (h ^ (h >>> 33));
+	}
+
+	/**
+	 * @param sucursal - El identificador de la sucursal
+	 * @param producto - El identificador del producto
+	 * @return La posición de la llave. -1 si no está
+	 */
+	public int buscar (long sucursal, long producto)
+	{
+		int mascara = ocupadas.length - 1;
+		for (int i = dispersar (sucursal, producto) & mascara; ocupadas [i]; i = (i + 1) & mascara)
+		{
+			if (sucursales [i] == sucursal && productos [i] == producto)
+			{
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Inserta una llave que no está en el mapa, sin cambios pendientes
+	 * @param sucursal - El identificador de la sucursal
+	 * @param producto - El identificador del producto
+	 * @param existenciasBodegas - Las existencias en bodegas
+	 * @param existenciasEstantes - Las existencias en estantes
+	 * @return La posición de la llave
+	 */
+	public int insertar (long sucursal, long producto, long existenciasBodegas, long existenciasEstantes)
+	{
+		if ((tamano + 1) * 4 > ocupadas.length * 3)
+		{
+			crecer ();
+		}
+		int mascara = ocupadas.length - 1;
+		int i = dispersar (sucursal, producto) & mascara;
+		while (ocupadas [i])
+		{
+			i = (i + 1) & mascara;
+		}
+		ocupadas [i] = true;
+		sucursales [i] = sucursal;
+		productos [i] = producto;
+		bodegas [i] = existenciasBodegas;
+		estantes [i] = existenciasEstantes;
+		tamano++;
+		return i;
+	}
+
+	/**
+	 * Duplica la capacidad y reubica todas las entradas, con sus cambios pendientes
+	 */
+	private void crecer ()
+	{
+		long [] viejasSucursales = sucursales;
+		long [] viejosProductos = productos;
+		boolean [] viejasOcupadas = ocupadas;
+		long [] viejasBodegas = bodegas;
+		long [] viejosEstantes = estantes;
+		long [] viejosPendientesBodegas = pendientesBodegas;
+		long [] viejosPendientesEstantes = pendientesEstantes;
+		boolean [] viejasMarcadas = marcadas;
+		crearArreglos (viejasOcupadas.length * 2);
+		for (int j = 0; j < viejasOcupadas.length; j++)
+		{
+			if (viejasOcupadas [j])
+			{
+				int i = insertar (viejasSucursales [j], viejosProductos [j], viejasBodegas [j], viejosEstantes [j]);
+				pendientesBodegas [i] = viejosPendientesBodegas [j];
+				pendientesEstantes [i] = viejosPendientesEstantes [j];
+				if (viejasMarcadas [j])
+				{
+					marcar (i);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param i - Una posición ocupada
+	 * @return Las existencias en bodegas
+	 */
+	public long darBodegas (int i)
+	{
+		return bodegas [i];
+	}
+
+	/**
+	 * @param i - Una posición ocupada
+	 * @return Las existencias en estantes
+	 */
+	public long darEstantes (int i)
+	{
+		return estantes [i];
+	}
+
+	/**
+	 * Aplica un cambio en las existencias y lo deja pendiente de descargar
+	 * @param i - Una posición ocupada
+	 * @param cambioBodegas - El cambio en las existencias en bodegas
+	 * @param cambioEstantes - El cambio en las existencias en estantes
+	 */
+	public void sumarExistencias (int i, long cambioBodegas, long cambioEstantes)
+	{
+		bodegas [i] += cambioBodegas;
+		estantes [i] += cambioEstantes;
+		sumarPendientes (i, cambioBodegas, cambioEstantes);
+	}
+
+	/**
+	 * Deja pendiente de descargar un cambio que ya está aplicado en las existencias
+	 * @param i - Una posición ocupada
+	 * @param cambioBodegas - El cambio en las existencias en bodegas
+	 * @param cambioEstantes - El cambio en las existencias en estantes
+	 */
+	public void sumarPendientes (int i, long cambioBodegas, long cambioEstantes)
+	{
+		pendientesBodegas [i] += cambioBodegas;
+		pendientesEstantes [i] += cambioEstantes;
+		marcar (i);
+	}
+
+	/**
+	 * Aplica un cambio en las existencias que ya está en la base de datos, sin dejarlo pendiente
+	 * @param i - Una posición ocupada
+	 * @param cambioBodegas - El cambio en las existencias en bodegas
+	 * @param cambioEstantes - El cambio en las existencias en estantes
+	 */
+	public void sumarConfirmadas (int i, long cambioBodegas, long cambioEstantes)
+	{
+		bodegas [i] += cambioBodegas;
+		estantes [i] += cambioEstantes;
+	}
+
+	/**
+	 * Agrega una posición a la lista de sucias, si no está
+	 * @param i - Una posición ocupada
+	 */
+	private void marcar (int i)
+	{
+		if (!marcadas [i])
+		{
+			marcadas [i] = true;
+			sucias [numSucias++] = i;
+		}
+	}
+
+	/**
+	 * @return true si hay entradas con cambios pendientes
+	 */
+	public boolean tienePendientes ()
+	{
+		return numSucias > 0;
+	}
+
+	/**
+	 * Saca los cambios pendientes, ya agrupados por llave, y deja el mapa sin cambios pendientes
+	 * @param cambiosBodegas - La lista a la que se agregan los cambios de las bodegas distintos de cero, como {sucursal, producto, cambio}
+	 * @param cambiosEstantes - La lista a la que se agregan los cambios de los estantes distintos de cero, como {sucursal, producto, cambio}
+	 */
+	public void extraerPendientes (List<long []> cambiosBodegas, List<long []> cambiosEstantes)
+	{
+		for (int k = 0; k < numSucias; k++)
+		{
+			int i = sucias [k];
+			if (pendientesBodegas [i] != 0)
+			{
+				cambiosBodegas.add (new long [] {sucursales [i], productos [i], pendientesBodegas [i]});
+			}
+			if (pendientesEstantes [i] != 0)
+			{
+				cambiosEstantes.add (new long [] {sucursales [i], productos [i], pendientesEstantes [i]});
+			}
+			pendientesBodegas [i] = 0;
+			pendientesEstantes [i] = 0;
+			marcadas [i] = false;
+		}
+		numSucias = 0;
+	}
+
+	/**
+	 * @return La suma de los valores absolutos de los cambios pendientes
+	 */
+	public long darUnidadesPendientes ()
+	{
+		long resp = 0;
+		for (int k = 0; k < numSucias; k++)
+		{
+			resp += Math.abs (pendientesBodegas [sucias [k]]) + Math.abs (pendientesEstantes [sucias [k]]);
+		}
+		return resp;
+	}
+
+	/**
+	 * @return El número de entradas
+	 */
+	public int darTamano ()
+	{
+		return tamano;
+	}
+
+	/**
+	 * @return La versión de las existencias leídas de la base de datos
+	 */
+	public long darVersion ()
+	{
+		return version;
+	}
+
+	/**
+	 * Registra que las existencias de la base de datos cambiaron sin pasar por el mapa
+	 */
+	public void incrementarVersion ()
+	{
+		version++;
+	}
+
+	/**
+	 * Borra todas las entradas, incluidos sus cambios pendientes
+	 */
+	public void limpiar ()
+	{
+		Arrays.fill (ocupadas, false);
+		Arrays.fill (marcadas, false);
+		Arrays.fill (pendientesBodegas, 0);
+		Arrays.fill (pendientesEstantes, 0);
+		numSucias = 0;
+		tamano = 0;
+		version++;
+	}
+}
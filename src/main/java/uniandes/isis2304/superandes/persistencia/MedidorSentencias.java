@@ -0,0 +1,459 @@
+package uniandes.isis2304.superandes.persistencia;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import javax.jdo.Query;
+import javax.jdo.Transaction;
+import javax.jdo.datastore.JDOConnection;
+
+/**
+ * Mide las sentencias SQL que se ejecutan con un PersistenceManager entregado por AdministradorPersistenceManagers:
+ * las consultas de JDO (Query) y las sentencias preparadas de JDBC de los lotes. Cada ejecución se registra en la métrica
+ * de su sentencia, y se acumulan las tuplas y los errores para la métrica de la operación que usa el PersistenceManager.
+ * Si hay registro de consultas lentas, también se capturan los parámetros de cada ejecución y se le pasa la ejecución, con los valores
+ * de los parámetros sólo si el registro los escribe y, si no, sólo con cuántos son.
+ * Los objetos se envuelven con proxies dinámicos, como el PersistenceManager mismo, por lo que las clases SQL no cambian.
+ * Como un PersistenceManager se usa desde un solo hilo, los acumulados no se sincronizan.
+ * Nótese que es una clase que es sólo conocida en el paquete de persistencia
+ *
+ * @author n.cobos, jf.torresp
+ */
+class MedidorSentencias
+{
+	/* ****************************************************************
+	 * 			Atributos
+	 *****************************************************************/
+	/**
+	 * El registro de métricas
+	 */
+	private final MetricasSuperAndes metricas;
+
+	/**
+	 * El registro de consultas lentas. null si no se registran
+	 */
+	private final RegistroConsultasLentas consultasLentas;
+
+	/**
+	 * Número de tuplas afectadas o retornadas por las sentencias medidas
+	 */
+	private long filas;
+
+	/**
+	 * Indica si alguna sentencia falló o si se deshizo una transacción activa
+	 */
+	private boolean error;
+
+	/**
+	 * Envuelve un objeto y mide sus métodos de ejecución. Los métodos que retornan el mismo objeto (como los setters
+	 * encadenables de Query) retornan el proxy, para que las ejecuciones siguientes también se midan
+	 */
+	private abstract class Envoltura implements InvocationHandler
+	{
+		/**
+		 * El objeto real
+		 */
+		protected final Object objeto;
+
+		/**
+		 * Constructor
+		 * @param objeto - El objeto real
+		 */
+		public Envoltura (Object objeto)
+		{
+			this.objeto = objeto;
+		}
+
+		@Override
+		public Object invoke (Object proxy, Method method, Object [] args) throws Throwable
+		{
+			try
+			{
+				Object resp = invocar (method, args);
+				return resp == objeto ? proxy : resp;
+			}
+			catch (InvocationTargetException e)
+			{
+				throw e.getCause ();
+			}
+		}
+
+		/**
+		 * Invoca el método en el objeto real, midiéndolo si corresponde
+		 * @param method - El método
+		 * @param args - Los argumentos
+		 * @return El resultado del método
+		 * @throws Exception - La excepción del método, envuelta en InvocationTargetException
+		 */
+		protected abstract Object invocar (Method method, Object [] args) throws Exception;
+
+		/**
+		 * Invoca el método en el objeto real y registra su duración en la métrica de la sentencia
+		 * @param sentencia - El texto de la sentencia SQL
+		 * @param method - El método de ejecución
+		 * @param args - Los argumentos
+		 * @param parametros - Los parámetros de la sentencia, para el registro de consultas lentas. Puede ser null
+		 * @return El resultado del método
+		 * @throws Exception - La excepción del método, envuelta en InvocationTargetException
+		 */
+		protected Object medir (String sentencia, Method method, Object [] args, Object [] parametros) throws Exception
+		{
+			long inicio = System.nanoTime ();
+			Object resp = null;
+			boolean falla = true;
+			try
+			{
+				resp = method.invoke (objeto, args);
+				falla = false;
+				return resp;
+			}
+			finally
+			{
+				registrar (sentencia, System.nanoTime () - inicio, falla ? 0 : contarFilas (resp), falla, parametros);
+			}
+		}
+	}
+
+	/**
+	 * Mide las ejecuciones de una consulta de JDO
+	 */
+	private class ConsultaMedida extends Envoltura
+	{
+		/**
+		 * El texto de la sentencia SQL de la consulta
+		 */
+		private final String sentencia;
+
+		/**
+		 * Los parámetros dados con setParameters. null si no se han dado o no se registran consultas lentas
+		 */
+		private Object [] parametros;
+
+		/**
+		 * Constructor
+		 * @param consulta - La consulta real
+		 * @param sentencia - El texto de la sentencia SQL
+		 */
+		public ConsultaMedida (Query<?> consulta, String sentencia)
+		{
+			super (consulta);
+			this.sentencia = sentencia;
+		}
+
+		@Override
+		protected Object invocar (Method method, Object [] args) throws Exception
+		{
+			if (method.getName ().startsWith ("execute"))
+			{
+				return medir (sentencia, method, args, darParametros (args != null && args.length > 0 ? args : parametros));
+			}
+			if (consultasLentas != null && method.getName ().equals ("setParameters"))
+			{
+				parametros = (Object []) args [0];
+			}
+			return method.invoke (objeto, args);
+		}
+	}
+
+	/**
+	 * Envuelve las sentencias preparadas de una conexión de JDBC
+	 */
+	private class ConexionMedida extends Envoltura
+	{
+		/**
+		 * Constructor
+		 * @param conexion - La conexión real
+		 */
+		public ConexionMedida (Connection conexion)
+		{
+			super (conexion);
+		}
+
+		@Override
+		protected Object invocar (Method method, Object [] args) throws Exception
+		{
+			Object resp = method.invoke (objeto, args);
+			if (method.getName ().equals ("prepareStatement"))
+			{
+				return Proxy.newProxyInstance (PreparedStatement.class.getClassLoader (), new Class<?> [] {PreparedStatement.class},
+						new SentenciaMedida ((PreparedStatement) resp, (String) args [0]));
+			}
+			return resp;
+		}
+	}
+
+	/**
+	 * Mide las ejecuciones de una sentencia preparada de JDBC
+	 */
+	private class SentenciaMedida extends Envoltura
+	{
+		/**
+		 * El texto de la sentencia SQL
+		 */
+		private final String sentencia;
+
+		/**
+		 * Los parámetros de la fila actual, por posición. Sólo se capturan si se registran consultas lentas
+		 */
+		private final List<Object> fila;
+
+		/**
+		 * Los parámetros de la primera fila del lote actual. null si el lote está vacío
+		 */
+		private Object [] primeraFila;
+
+		/**
+		 * Número de filas del lote actual
+		 */
+		private int filasLote;
+
+		/**
+		 * Constructor
+		 * @param preparada - La sentencia preparada real
+		 * @param sentencia - El texto de la sentencia SQL
+		 */
+		public SentenciaMedida (PreparedStatement preparada, String sentencia)
+		{
+			super (preparada);
+			this.sentencia = sentencia;
+			this.fila = new ArrayList<Object> ();
+		}
+
+		@Override
+		protected Object invocar (Method method, Object [] args) throws Exception
+		{
+			String nombre = method.getName ();
+			if (nombre.startsWith ("execute") && (args == null || args.length == 0))
+			{
+				Object [] parametros = consultasLentas == null ? null
+						: nombre.equals ("executeBatch") ? new Object [] {"lote de " + filasLote + " filas", darParametros (primeraFila)}
+						: darParametros (fila.toArray ());
+				if (nombre.equals ("executeBatch"))
+				{
+					primeraFila = null;
+					filasLote = 0;
+				}
+				return medir (sentencia, method, args, parametros);
+			}
+			if (consultasLentas != null)
+			{
+				capturar (nombre, args);
+			}
+			return method.invoke (objeto, args);
+		}
+
+		/**
+		 * Captura los parámetros dados con los métodos set de la sentencia, y las filas agregadas al lote
+		 * @param nombre - El nombre del método
+		 * @param args - Los argumentos del método
+		 */
+		private void capturar (String nombre, Object [] args)
+		{
+			if (nombre.startsWith ("set") && args != null && args.length >= 2 && args [0] instanceof Integer)
+			{
+				int posicion = (Integer) args [0];
+				while (fila.size () < posicion)
+				{
+					fila.add (null);
+				}
+				fila.set (posicion - 1, nombre.equals ("setNull") ? null : args [1]);
+			}
+			else if (nombre.equals ("addBatch"))
+			{
+				if (filasLote++ == 0)
+				{
+					primeraFila = fila.toArray ();
+				}
+			}
+			else if (nombre.equals ("clearBatch"))
+			{
+				primeraFila = null;
+				filasLote = 0;
+			}
+		}
+	}
+
+	/**
+	 * Detecta cuando se deshace una transacción activa, lo que indica que la operación falló
+	 */
+	private class TransaccionMedida extends Envoltura
+	{
+		/**
+		 * Constructor
+		 * @param tx - La transacción real
+		 */
+		public TransaccionMedida (Transaction tx)
+		{
+			super (tx);
+		}
+
+		@Override
+		protected Object invocar (Method method, Object [] args) throws Exception
+		{
+			if (method.getName ().equals ("rollback") && ((Transaction) objeto).isActive ())
+			{
+				error = true;
+			}
+			return method.invoke (objeto, args);
+		}
+	}
+
+	/**
+	 * Envuelve la conexión de JDO al almacén de datos para medir las sentencias de JDBC preparadas sobre ella
+	 */
+	private class ConexionJdoMedida extends Envoltura
+	{
+		/**
+		 * Constructor
+		 * @param jdoConn - La conexión real
+		 */
+		public ConexionJdoMedida (JDOConnection jdoConn)
+		{
+			super (jdoConn);
+		}
+
+		@Override
+		protected Object invocar (Method method, Object [] args) throws Exception
+		{
+			Object resp = method.invoke (objeto, args);
+			if (method.getName ().equals ("getNativeConnection") && resp instanceof Connection)
+			{
+				return Proxy.newProxyInstance (Connection.class.getClassLoader (), new Class<?> [] {Connection.class}, new ConexionMedida ((Connection) resp));
+			}
+			return resp;
+		}
+	}
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	/**
+	 * Constructor
+	 * @param metricas - El registro de métricas
+	 * @param consultasLentas - El registro de consultas lentas. null para no registrarlas
+	 */
+	public MedidorSentencias (MetricasSuperAndes metricas, RegistroConsultasLentas consultasLentas)
+	{
+		this.metricas = metricas;
+		this.consultasLentas = consultasLentas;
+		this.filas = 0;
+		this.error = false;
+	}
+
+	/**
+	 * Envuelve un objeto retornado por el PersistenceManager, si es una consulta SQL, una transacción o una conexión al almacén de datos
+	 * @param method - El método del PersistenceManager
+	 * @param args - Los argumentos del método
+	 * @param resp - El objeto retornado
+	 * @return El objeto envuelto, o el mismo objeto si no se mide
+	 */
+	public Object envolver (Method method, Object [] args, Object resp)
+	{
+		if (resp instanceof Query && args != null && args.length == 2 && args [1] instanceof String)
+		{
+			return Proxy.newProxyInstance (Query.class.getClassLoader (), new Class<?> [] {Query.class}, new ConsultaMedida ((Query<?>) resp, (String) args [1]));
+		}
+		if (resp instanceof Transaction)
+		{
+			return Proxy.newProxyInstance (Transaction.class.getClassLoader (), new Class<?> [] {Transaction.class}, new TransaccionMedida ((Transaction) resp));
+		}
+		if (resp instanceof JDOConnection && method.getName ().equals ("getDataStoreConnection"))
+		{
+			return Proxy.newProxyInstance (JDOConnection.class.getClassLoader (), new Class<?> [] {JDOConnection.class}, new ConexionJdoMedida ((JDOConnection) resp));
+		}
+		return resp;
+	}
+
+	/**
+	 * @param valores - Los valores de los parámetros de una ejecución. Puede ser null
+	 * @return Los valores, si el registro de consultas lentas los escribe. Si no, sólo cuántos son
+	 */
+	private Object [] darParametros (Object [] valores)
+	{
+		if (valores == null || consultasLentas == null || consultasLentas.registraParametros ())
+		{
+			return valores;
+		}
+		return new Object [] {valores.length + " parámetros"};
+	}
+
+	/**
+	 * Registra una ejecución de una sentencia
+	 * @param sentencia - El texto de la sentencia SQL
+	 * @param nanos - La duración de la ejecución, en nanosegundos
+	 * @param filasSentencia - El número de tuplas afectadas o retornadas
+	 * @param falla - true si la ejecución lanzó una excepción
+	 * @param parametros - Los parámetros de la ejecución. Puede ser null
+	 */
+	private void registrar (String sentencia, long nanos, long filasSentencia, boolean falla, Object [] parametros)
+	{
+		MetricaOperacion metrica = metricas.darSentencia (sentencia);
+		metrica.registrar (nanos, filasSentencia, falla);
+		if (consultasLentas != null)
+		{
+			consultasLentas.registrar (metrica.darNombre (), sentencia, parametros, nanos, filasSentencia, falla);
+		}
+		filas += filasSentencia;
+		error |= falla;
+	}
+
+	/**
+	 * @param resultado - El resultado de una ejecución
+	 * @return El número de tuplas afectadas o retornadas: el conteo de las sentencias de modificación, el tamaño de las listas,
+	 * la suma de los conteos de los lotes y 1 por cada objeto único. Las consultas de JDBC, que retornan un ResultSet, cuentan 0
+	 */
+	private static long contarFilas (Object resultado)
+	{
+		if (resultado instanceof Number)
+		{
+			return ((Number) resultado).longValue ();
+		}
+		if (resultado instanceof Collection)
+		{
+			return ((Collection<?>) resultado).size ();
+		}
+		if (resultado instanceof int [])
+		{
+			long resp = 0;
+			for (int conteo : (int []) resultado)
+			{
+				resp += Math.max (conteo, 0);
+			}
+			return resp;
+		}
+		if (resultado instanceof long [])
+		{
+			long resp = 0;
+			for (long conteo : (long []) resultado)
+			{
+				resp += Math.max (conteo, 0);
+			}
+			return resp;
+		}
+		return resultado == null || resultado instanceof ResultSet ? 0 : 1;
+	}
+
+	/**
+	 * @return El número de tuplas afectadas o retornadas por las sentencias medidas
+	 */
+	public long darFilas ()
+	{
+		return filas;
+	}
+
+	/**
+	 * @return true si alguna sentencia falló o si se deshizo una transacción activa
+	 */
+	public boolean huboError ()
+	{
+		return error;
+	}
+}
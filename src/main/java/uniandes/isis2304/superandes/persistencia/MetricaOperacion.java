@@ -0,0 +1,167 @@
+package uniandes.isis2304.superandes.persistencia;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Las métricas de una operación de persistencia o de una sentencia SQL: latencias, número de llamados,
+ * número de errores y número de tuplas afectadas o retornadas
+ *
+ * @author n.cobos, jf.torresp
+ */
+public class MetricaOperacion
+{
+	/* ****************************************************************
+	 * 			Atributos
+	 *****************************************************************/
+	/**
+	 * El nombre de la operación
+	 */
+	private final String nombre;
+
+	/**
+	 * La sentencia SQL. null si es una operación de PersistenciaSuperAndes
+	 */
+	private final String sentencia;
+
+	/**
+	 * Las latencias de los llamados
+	 */
+	private final HistogramaLatencia latencias;
+
+	/**
+	 * Número de llamados que terminaron en error
+	 */
+	private final LongAdder errores;
+
+	/**
+	 * Número de tuplas afectadas o retornadas
+	 */
+	private final LongAdder filas;
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	/**
+	 * Constructor
+	 * @param nombre - El nombre de la operación
+	 * @param sentencia - La sentencia SQL. null si es una operación de PersistenciaSuperAndes
+	 */
+	public MetricaOperacion (String nombre, String sentencia)
+	{
+		this.nombre = nombre;
+		this.sentencia = sentencia;
+		this.latencias = new HistogramaLatencia ();
+		this.errores = new LongAdder ();
+		this.filas = new LongAdder ();
+	}
+
+	/**
+	 * Registra un llamado
+	 * @param nanos - La duración del llamado, en nanosegundos
+	 * @param filas - El número de tuplas afectadas o retornadas
+	 * @param error - true si el llamado terminó en error
+	 */
+	public void registrar (long nanos, long filas, boolean error)
+	{
+		latencias.registrar (nanos);
+		if (filas > 0)
+		{
+			this.filas.add (filas);
+		}
+		if (error)
+		{
+			errores.increment ();
+		}
+	}
+
+	/**
+	 * @return El nombre de la operación
+	 */
+	public String darNombre ()
+	{
+		return nombre;
+	}
+
+	/**
+	 * @return La sentencia SQL. null si es una operación de PersistenciaSuperAndes
+	 */
+	public String darSentencia ()
+	{
+		return sentencia;
+	}
+
+	/**
+	 * @return El número de llamados
+	 */
+	public long darLlamados ()
+	{
+		return latencias.darTotal ();
+	}
+
+	/**
+	 * @return El número de llamados que terminaron en error
+	 */
+	public long darErrores ()
+	{
+		return errores.sum ();
+	}
+
+	/**
+	 * @return El número de tuplas afectadas o retornadas en todos los llamados
+	 */
+	public long darFilas ()
+	{
+		return filas.sum ();
+	}
+
+	/**
+	 * @return El tiempo total de todos los llamados, en milisegundos
+	 */
+	public double darTiempoTotal ()
+	{
+		return latencias.darSuma () / 1e6;
+	}
+
+	/**
+	 * @return La latencia promedio, en milisegundos
+	 */
+	public double darPromedio ()
+	{
+		return latencias.darPromedio () / 1e6;
+	}
+
+	/**
+	 * @param percentil - El percentil, entre 0 y 100
+	 * @return La latencia del percentil dado, en milisegundos
+	 */
+	public double darPercentil (double percentil)
+	{
+		return latencias.darPercentil (percentil) / 1e6;
+	}
+
+	/**
+	 * @return La mayor latencia, en milisegundos
+	 */
+	public double darMaximo ()
+	{
+		return latencias.darMaximo () / 1e6;
+	}
+
+	/**
+	 * Borra todas las mediciones
+	 */
+	public void reiniciar ()
+	{
+		latencias.reiniciar ();
+		errores.reset ();
+		filas.reset ();
+	}
+
+	@Override
+	public String toString ()
+	{
+		return String.format ("%s [llamados=%d, errores=%d, filas=%d, total=%.1f ms, promedio=%.3f ms, p50=%.3f ms, p90=%.3f ms, p99=%.3f ms, p99.9=%.3f ms, max=%.3f ms]",
+				nombre, darLlamados (), darErrores (), darFilas (), darTiempoTotal (), darPromedio (), darPercentil (50), darPercentil (90),
+				darPercentil (99), darPercentil (99.9), darMaximo ());
+	}
+}
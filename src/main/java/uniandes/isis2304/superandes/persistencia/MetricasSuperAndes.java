@@ -0,0 +1,202 @@
+package uniandes.isis2304.superandes.persistencia;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Registro de las métricas de SuperAndes: una por cada operación pública de PersistenciaSuperAndes y una por cada
+ * sentencia SQL ejecutada. Las métricas se consultan en cualquier momento y, si se configura un intervalo,
+ * se escriben periódicamente en el log, ordenadas por tiempo total para ver primero los cuellos de botella.
+ * Las operaciones cuyo resultado está en el caché del catálogo no llegan a la base de datos y no se registran aquí;
+ * sus aciertos aparecen en las estadísticas de CacheCatalogo
+ *
+ * @author n.cobos, jf.torresp
+ */
+public class MetricasSuperAndes
+{
+	/* ****************************************************************
+	 * 			Constantes
+	 *****************************************************************/
+	/**
+	 * Logger para escribir la traza de la ejecución
+	 */
+	private static Logger log = Logger.getLogger(MetricasSuperAndes.class.getName());
+
+	/**
+	 * Intervalo por defecto entre reportes en el log, en segundos. 0 para no reportar
+	 */
+	public final static int REPORTE_DEFECTO = 0;
+
+	/* ****************************************************************
+	 * 			Atributos
+	 *****************************************************************/
+	/**
+	 * Las métricas de las operaciones de PersistenciaSuperAndes, por nombre de la operación
+	 */
+	private final ConcurrentHashMap<String, MetricaOperacion> operaciones;
+
+	/**
+	 * Las métricas de las sentencias SQL, por texto de la sentencia
+	 */
+	private final ConcurrentHashMap<String, MetricaOperacion> sentencias;
+
+	/**
+	 * Hilo que escribe periódicamente las métricas en el log. null si no se reporta
+	 */
+	private final ScheduledExecutorService reportero;
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	/**
+	 * Constructor
+	 * @param segundosReporte - Intervalo entre reportes en el log, en segundos. 0 para no reportar
+	 */
+	public MetricasSuperAndes (int segundosReporte)
+	{
+		operaciones = new ConcurrentHashMap<String, MetricaOperacion> ();
+		sentencias = new ConcurrentHashMap<String, MetricaOperacion> ();
+		if (segundosReporte > 0)
+		{
+			reportero = Executors.newSingleThreadScheduledExecutor (r -> {
+				Thread t = new Thread (r, "superandes-metricas");
+				t.setDaemon (true);
+				return t;
+			});
+			reportero.scheduleAtFixedRate (() -> log.info (darReporte ()), segundosReporte, segundosReporte, TimeUnit.SECONDS);
+		}
+		else
+		{
+			reportero = null;
+		}
+	}
+
+	/**
+	 * @param nombre - El nombre de una operación de PersistenciaSuperAndes
+	 * @return La métrica de la operación. Se crea si no existe
+	 */
+	public MetricaOperacion darOperacion (String nombre)
+	{
+		return operaciones.computeIfAbsent (nombre, n -> new MetricaOperacion (n, null));
+	}
+
+	/**
+	 * Retorna la métrica de una sentencia SQL. La primera vez que se ve la sentencia se nombra con la clase SQL y el método
+	 * que la ejecutan, buscándolos en la pila de llamados; las siguientes veces sólo se consulta el mapa
+	 * @param sentencia - El texto de la sentencia SQL
+	 * @return La métrica de la sentencia. Se crea si no existe
+	 */
+	public MetricaOperacion darSentencia (String sentencia)
+	{
+		MetricaOperacion resp = sentencias.get (sentencia);
+		if (resp == null)
+		{
+			resp = sentencias.computeIfAbsent (sentencia, s -> new MetricaOperacion (nombrarSentencia (), s));
+		}
+		return resp;
+	}
+
+	/**
+	 * @return El nombre de la clase SQL y el método que están ejecutando una sentencia en este hilo, como SQLCliente.darClientePorId
+	 */
+	private static String nombrarSentencia ()
+	{
+		String paquete = MetricasSuperAndes.class.getPackage ().getName () + ".SQL";
+		for (StackTraceElement elemento : new Throwable ().getStackTrace ())
+		{
+			if (elemento.getClassName ().startsWith (paquete) && !elemento.getMethodName ().equals ("ejecutarLote"))
+			{
+				return elemento.getClassName ().substring (paquete.length () - 3) + "." + elemento.getMethodName ();
+			}
+		}
+		return "SQL";
+	}
+
+	/**
+	 * @return Las métricas de las operaciones de PersistenciaSuperAndes, de mayor a menor tiempo total
+	 */
+	public List<MetricaOperacion> darOperaciones ()
+	{
+		return ordenar (operaciones.values ());
+	}
+
+	/**
+	 * @return Las métricas de las sentencias SQL, de mayor a menor tiempo total
+	 */
+	public List<MetricaOperacion> darSentencias ()
+	{
+		return ordenar (sentencias.values ());
+	}
+
+	/**
+	 * @param metricas - Unas métricas
+	 * @return Las métricas, de mayor a menor tiempo total
+	 */
+	private static List<MetricaOperacion> ordenar (Iterable<MetricaOperacion> metricas)
+	{
+		List<MetricaOperacion> resp = new ArrayList<MetricaOperacion> ();
+		for (MetricaOperacion metrica : metricas)
+		{
+			resp.add (metrica);
+		}
+		resp.sort (Comparator.comparingDouble (MetricaOperacion::darTiempoTotal).reversed ());
+		return resp;
+	}
+
+	/**
+	 * Borra las mediciones de todas las operaciones y sentencias
+	 */
+	public void reiniciar ()
+	{
+		for (MetricaOperacion metrica : operaciones.values ())
+		{
+			metrica.reiniciar ();
+		}
+		for (MetricaOperacion metrica : sentencias.values ())
+		{
+			metrica.reiniciar ();
+		}
+	}
+
+	/**
+	 * @return Un reporte con las métricas de todas las operaciones y sentencias que se han llamado, de mayor a menor tiempo total
+	 */
+	public String darReporte ()
+	{
+		StringBuilder resp = new StringBuilder ("Métricas de SuperAndes\nOperaciones:");
+		for (MetricaOperacion metrica : darOperaciones ())
+		{
+			if (metrica.darLlamados () > 0)
+			{
+				resp.append ("\n\t").append (metrica);
+			}
+		}
+		resp.append ("\nSentencias:");
+		for (MetricaOperacion metrica : darSentencias ())
+		{
+			if (metrica.darLlamados () > 0)
+			{
+				resp.append ("\n\t").append (metrica).append ("\n\t\t").append (metrica.darSentencia ());
+			}
+		}
+		return resp.toString ();
+	}
+
+	/**
+	 * Detiene el reporte periódico
+	 */
+	public void cerrar ()
+	{
+		if (reportero != null)
+		{
+			reportero.shutdownNow ();
+		}
+	}
+}
@@ -0,0 +1,250 @@
+package uniandes.isis2304.superandes.persistencia;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import uniandes.isis2304.superandes.negocio.Bodega;
+import uniandes.isis2304.superandes.negocio.Estante;
+
+/**
+ * Monitor en memoria de la ocupación de las bodegas y los estantes de cada sucursal (RFC3): existencias / capacidadVolumen de cada uno.
+ * Las bodegas y los estantes de una sucursal se leen de la base de datos la primera vez que se consulta su ocupación. Después, el manejador
+ * de persistencia informa cada cambio de existencias confirmado, por sucursal y producto, y el monitor sólo vuelve a leer las bodegas y los
+ * estantes de los productos que cambiaron, en la siguiente consulta. Así, registrar un cambio cuesta O(1) y un reporte recorre una vez
+ * las bodegas y los estantes de la sucursal, sin cruzar las tablas BODEGA y ESTANTE.
+ * Con el inventario en memoria, las existencias de la base de datos, y por tanto las del monitor, se actualizan en cada descarga
+ *
+ * @author n.cobos, jf.torresp
+ */
+public class MonitorOcupacion
+{
+	/* ****************************************************************
+	 * 			Constantes
+	 *****************************************************************/
+	/**
+	 * Número de productos cambiados a partir del cual se vuelve a leer toda la sucursal, en lugar de producto por producto
+	 */
+	private final static int MAX_PRODUCTOS_POR_REFRESCO = 32;
+
+	/* ****************************************************************
+	 * 			Atributos
+	 *****************************************************************/
+	/**
+	 * El manejador de persistencia
+	 */
+	private final PersistenciaSuperAndes pp;
+
+	/**
+	 * La ocupación de las sucursales ya leídas
+	 */
+	private final ConcurrentHashMap<Long, OcupacionSucursal> sucursales;
+
+	/**
+	 * Número de reportes resueltos por el monitor
+	 */
+	private final AtomicLong reportes;
+
+	/**
+	 * Número de productos vueltos a leer de la base de datos
+	 */
+	private final AtomicLong refrescos;
+
+	/**
+	 * Las bodegas y los estantes de una sucursal, agrupados por producto
+	 */
+	private static class OcupacionSucursal
+	{
+		/**
+		 * Los productos cuyas existencias cambiaron desde la última lectura
+		 */
+		private final Set<Long> cambiados = ConcurrentHashMap.newKeySet ();
+
+		/**
+		 * Las bodegas de cada producto
+		 */
+		private final Map<Long, List<Bodega>> bodegas = new HashMap<Long, List<Bodega>> ();
+
+		/**
+		 * Los estantes de cada producto
+		 */
+		private final Map<Long, List<Estante>> estantes = new HashMap<Long, List<Estante>> ();
+
+		/**
+		 * Indica si ya se leyeron todas las bodegas y todos los estantes de la sucursal
+		 */
+		private boolean cargada;
+	}
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	/**
+	 * Constructor
+	 * @param pp - El manejador de persistencia
+	 */
+	MonitorOcupacion (PersistenciaSuperAndes pp)
+	{
+		this.pp = pp;
+		this.sucursales = new ConcurrentHashMap<Long, OcupacionSucursal> ();
+		this.reportes = new AtomicLong ();
+		this.refrescos = new AtomicLong ();
+	}
+
+	/**
+	 * Registra que cambiaron, en la base de datos, las existencias o las bodegas y los estantes de un producto en una sucursal
+	 * @param sucursal - El identificador de la sucursal
+	 * @param producto - El identificador del producto
+	 */
+	public void notificarCambio (long sucursal, long producto)
+	{
+		// Una sucursal que no se ha leído no tiene nada que refrescar: su primera lectura ya incluye el cambio
+		OcupacionSucursal ocupacion = sucursales.get (sucursal);
+		if (ocupacion != null)
+		{
+			ocupacion.cambiados.add (producto);
+		}
+	}
+
+	/**
+	 * @param sucursal - El identificador de una sucursal
+	 * @return La ocupación de cada bodega y cada estante de la sucursal, como parejas {Bodega o Estante, ocupación}, con la ocupación
+	 * como existencias / capacidadVolumen. Los objetos Bodega y Estante son los del monitor y no deben modificarse
+	 */
+	public List<Object []> darOcupacion (long sucursal)
+	{
+		return darOcupacion (sucursal, Double.POSITIVE_INFINITY);
+	}
+
+	/**
+	 * @param sucursal - El identificador de una sucursal
+	 * @param umbral - La ocupación mínima esperada, por ejemplo 0.2 para alertar de los estantes con menos del 20% de su capacidad
+	 * @return La ocupación de las bodegas y los estantes de la sucursal con ocupación menor al umbral, como parejas {Bodega o Estante, ocupación}
+	 */
+	public List<Object []> darAlertas (long sucursal, double umbral)
+	{
+		return darOcupacion (sucursal, umbral);
+	}
+
+	/**
+	 * @param sucursal - El identificador de una sucursal
+	 * @param umbral - El límite superior, excluido, de la ocupación de las bodegas y los estantes que se reportan
+	 * @return La ocupación de las bodegas y los estantes de la sucursal con ocupación menor al umbral, primero las bodegas y luego los estantes
+	 */
+	private List<Object []> darOcupacion (long sucursal, double umbral)
+	{
+		OcupacionSucursal ocupacion = sucursales.computeIfAbsent (sucursal, k -> new OcupacionSucursal ());
+		List<Object []> resp = new ArrayList<Object []> ();
+		synchronized (ocupacion)
+		{
+			refrescar (sucursal, ocupacion);
+			for (List<Bodega> bodegas : ocupacion.bodegas.values ())
+			{
+				for (Bodega bodega : bodegas)
+				{
+					double valor = bodega.getExistencias () / bodega.getCapacidadVolumen ();
+					if (valor < umbral)
+					{
+						resp.add (new Object [] {bodega, valor});
+					}
+				}
+			}
+			for (List<Estante> estantes : ocupacion.estantes.values ())
+			{
+				for (Estante estante : estantes)
+				{
+					double valor = estante.getExistencias () / estante.getCapacidadVolumen ();
+					if (valor < umbral)
+					{
+						resp.add (new Object [] {estante, valor});
+					}
+				}
+			}
+		}
+		reportes.incrementAndGet ();
+		return resp;
+	}
+
+	/**
+	 * Lee de la base de datos las bodegas y los estantes de la sucursal si no se han leído, o los de los productos que cambiaron
+	 * @param sucursal - El identificador de la sucursal
+	 * @param ocupacion - La ocupación de la sucursal, cuyo candado ya se tiene
+	 */
+	private void refrescar (long sucursal, OcupacionSucursal ocupacion)
+	{
+		if (!ocupacion.cargada || ocupacion.cambiados.size () > MAX_PRODUCTOS_POR_REFRESCO)
+		{
+			// Los cambios que se registren desde aquí pueden no estar en lo leído y se quedan para el siguiente refresco
+			ocupacion.cambiados.clear ();
+			List<Bodega> bodegas = pp.leerBodegasOcupacion (sucursal, null);
+			List<Estante> estantes = pp.leerEstantesOcupacion (sucursal, null);
+			if (bodegas == null || estantes == null)
+			{
+				ocupacion.cargada = false;
+				throw new IllegalStateException ("No se pudieron leer las bodegas y los estantes de la sucursal " + sucursal);
+			}
+			ocupacion.bodegas.clear ();
+			ocupacion.estantes.clear ();
+			for (Bodega bodega : bodegas)
+			{
+				ocupacion.bodegas.computeIfAbsent (bodega.getProducto (), k -> new ArrayList<Bodega> ()).add (bodega);
+			}
+			for (Estante estante : estantes)
+			{
+				ocupacion.estantes.computeIfAbsent (estante.getProducto (), k -> new ArrayList<Estante> ()).add (estante);
+			}
+			ocupacion.cargada = true;
+			refrescos.addAndGet (ocupacion.bodegas.size () + ocupacion.estantes.size ());
+			return;
+		}
+		for (Long producto : new ArrayList<Long> (ocupacion.cambiados))
+		{
+			ocupacion.cambiados.remove (producto);
+			List<Bodega> bodegas = pp.leerBodegasOcupacion (sucursal, producto);
+			List<Estante> estantes = pp.leerEstantesOcupacion (sucursal, producto);
+			if (bodegas == null || estantes == null)
+			{
+				ocupacion.cambiados.add (producto);
+				throw new IllegalStateException ("No se pudieron leer las bodegas y los estantes del producto " + producto + " en la sucursal " + sucursal);
+			}
+			reemplazar (ocupacion.bodegas, producto, bodegas);
+			reemplazar (ocupacion.estantes, producto, estantes);
+			refrescos.incrementAndGet ();
+		}
+	}
+
+	/**
+	 * @param porProducto - Las bodegas o los estantes de una sucursal, por producto
+	 * @param producto - El identificador de un producto
+	 * @param nuevos - Las bodegas o los estantes del producto recién leídos
+	 */
+	private static <T> void reemplazar (Map<Long, List<T>> porProducto, Long producto, List<T> nuevos)
+	{
+		if (nuevos.isEmpty ())
+		{
+			porProducto.remove (producto);
+		}
+		else
+		{
+			porProducto.put (producto, nuevos);
+		}
+	}
+
+	/**
+	 * Olvida todas las sucursales leídas
+	 */
+	public void limpiar ()
+	{
+		sucursales.clear ();
+	}
+
+	@Override
+	public String toString ()
+	{
+		return "MonitorOcupacion [sucursales=" + sucursales.size () + ", reportes=" + reportes.get () + ", refrescos=" + refrescos.get () + "]";
+	}
+}
@@ -0,0 +1,413 @@
+package uniandes.isis2304.superandes.persistencia;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+import uniandes.isis2304.superandes.negocio.Ofrecen;
+import uniandes.isis2304.superandes.negocio.Pedido;
+import uniandes.isis2304.superandes.negocio.Subpedido;
+
+/**
+ * Motor de reorden de SuperAndes: genera los pedidos a proveedores cuando las existencias de un producto en una sucursal
+ * (bodegas más estantes) bajan del nivel de reorden de VENDE.
+ * La evaluación es incremental: cada venta sólo marca sus productos para revisión, sin acceder a la base de datos, y en cada ronda
+ * se revisan únicamente los productos marcados. Los que están por debajo del nivel se agrupan por sucursal y por el proveedor
+ * más barato de OFRECEN, y cada grupo se convierte en un PEDIDO con un SUBPEDIDO por producto. Todos los pedidos de una ronda
+ * se insertan en una sola transacción.
+ * Un producto con un pedido pendiente en su sucursal no se vuelve a pedir hasta que ese pedido se reciba.
+ * Los niveles de reorden y los proveedores se leen una vez por llave y se guardan hasta que cambien VENDE u OFRECEN
+ *
+ * @author n.cobos, jf.torresp
+ */
+public class MotorReorden
+{
+	/* ****************************************************************
+	 * 			Constantes
+	 *****************************************************************/
+	/**
+	 * Logger para escribir la traza de la ejecución
+	 */
+	private static Logger log = Logger.getLogger(MotorReorden.class.getName());
+
+	/**
+	 * Factor por defecto del nivel de reorden hasta el que se piden existencias
+	 */
+	public final static double FACTOR_PEDIDO_DEFECTO = 2;
+
+	/**
+	 * Días por defecto entre la generación de un pedido y su fecha de entrega
+	 */
+	public final static int DIAS_ENTREGA_DEFECTO = 3;
+
+	/**
+	 * Intervalo por defecto entre rondas, en milisegundos
+	 */
+	public final static long INTERVALO_DEFECTO = 5000;
+
+	/**
+	 * Estado de un pedido generado por el motor
+	 */
+	private final static String PENDIENTE = "pendiente";
+
+	/**
+	 * Marca de los productos que ningún proveedor ofrece
+	 */
+	private final static Ofrecen SIN_PROVEEDOR = new Ofrecen (0, 0, 0);
+
+	/* ****************************************************************
+	 * 			Atributos
+	 *****************************************************************/
+	/**
+	 * El manejador de persistencia
+	 */
+	private final PersistenciaSuperAndes pp;
+
+	/**
+	 * Se piden existencias hasta factorPedido veces el nivel de reorden
+	 */
+	private final double factorPedido;
+
+	/**
+	 * Días entre la generación de un pedido y su fecha de entrega
+	 */
+	private final int diasEntrega;
+
+	/**
+	 * Los productos en sucursales que cambiaron desde la última ronda
+	 */
+	private final Set<Llave> porRevisar;
+
+	/**
+	 * Los productos en sucursales con un pedido pendiente
+	 */
+	private final Set<Llave> enPedido;
+
+	/**
+	 * Los niveles de reorden ya leídos de VENDE. 0 si la sucursal no vende el producto
+	 */
+	private final ConcurrentHashMap<Llave, Integer> niveles;
+
+	/**
+	 * El proveedor más barato de cada producto, ya leído de OFRECEN. SIN_PROVEEDOR si ninguno lo ofrece
+	 */
+	private final ConcurrentHashMap<Long, Ofrecen> proveedores;
+
+	/**
+	 * Hilo que ejecuta las rondas periódicamente. null si sólo se ejecutan explícitamente
+	 */
+	private final ScheduledExecutorService programador;
+
+	/**
+	 * Número de pedidos generados
+	 */
+	private final AtomicLong pedidosGenerados;
+
+	/**
+	 * Número de productos revisados
+	 */
+	private final AtomicLong revisados;
+
+	/**
+	 * Un producto en una sucursal
+	 */
+	private static class Llave
+	{
+		/**
+		 * El identificador de la sucursal
+		 */
+		private final long sucursal;
+
+		/**
+		 * El identificador del producto
+		 */
+		private final long producto;
+
+		/**
+		 * Constructor
+		 * @param sucursal - El identificador de la sucursal
+		 * @param producto - El identificador del producto
+		 */
+		public Llave (long sucursal, long producto)
+		{
+			this.sucursal = sucursal;
+			this.producto = producto;
+		}
+
+		@Override
+		public boolean equals (Object o)
+		{
+			return o instanceof Llave && ((Llave) o).sucursal == sucursal && ((Llave) o).producto == producto;
+		}
+
+		@Override
+		public int hashCode ()
+		{
+			return MapaExistencias.dispersar (sucursal, producto);
+		}
+	}
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	/**
+	 * Constructor. Carga los productos que ya tienen pedidos pendientes y, si se pide, inicia las rondas periódicas
+	 * @param pp - El manejador de persistencia
+	 * @param factorPedido - Se piden existencias hasta este factor por el nivel de reorden. Mayor o igual a 1
+	 * @param diasEntrega - Días entre la generación de un pedido y su fecha de entrega
+	 * @param intervaloMs - El intervalo entre rondas, en milisegundos. 0 para ejecutarlas sólo explícitamente
+	 */
+	MotorReorden (PersistenciaSuperAndes pp, double factorPedido, int diasEntrega, long intervaloMs)
+	{
+		if (factorPedido < 1 || diasEntrega < 0 || intervaloMs < 0)
+		{
+			throw new IllegalArgumentException ("Configuración inválida del motor de reorden: factor " + factorPedido + ", "
+					+ diasEntrega + " días de entrega, ronda cada " + intervaloMs + " ms");
+		}
+		this.pp = pp;
+		this.factorPedido = factorPedido;
+		this.diasEntrega = diasEntrega;
+		this.porRevisar = ConcurrentHashMap.newKeySet ();
+		this.enPedido = ConcurrentHashMap.newKeySet ();
+		this.niveles = new ConcurrentHashMap<Llave, Integer> ();
+		this.proveedores = new ConcurrentHashMap<Long, Ofrecen> ();
+		this.pedidosGenerados = new AtomicLong ();
+		this.revisados = new AtomicLong ();
+
+		List<Object []> pendientes = pp.darProductosEnPedidosPendientes ();
+		if (pendientes != null)
+		{
+			for (Object [] pendiente : pendientes)
+			{
+				enPedido.add (new Llave (((Number) pendiente [0]).longValue (), ((Number) pendiente [1]).longValue ()));
+			}
+		}
+
+		if (intervaloMs > 0)
+		{
+			programador = Executors.newSingleThreadScheduledExecutor (r -> {
+				Thread t = new Thread (r, "superandes-reorden");
+				t.setDaemon (true);
+				return t;
+			});
+			programador.scheduleWithFixedDelay (this::generarPedidos, intervaloMs, intervaloMs, TimeUnit.MILLISECONDS);
+		}
+		else
+		{
+			programador = null;
+		}
+	}
+
+	/**
+	 * Marca para revisión productos de una sucursal cuyas existencias disminuyeron. No accede a la base de datos
+	 * @param sucursal - El identificador de la sucursal
+	 * @param productos - Los identificadores de los productos
+	 */
+	public void notificarCambio (long sucursal, Collection<Long> productos)
+	{
+		for (Long producto : productos)
+		{
+			Llave llave = new Llave (sucursal, producto);
+			if (!enPedido.contains (llave))
+			{
+				porRevisar.add (llave);
+			}
+		}
+	}
+
+	/**
+	 * Registra que se recibieron los pedidos de unos productos en una sucursal, de manera que se pueden volver a pedir,
+	 * y los marca para revisión por si lo recibido no alcanza el nivel de reorden
+	 * @param sucursal - El identificador de la sucursal
+	 * @param productos - Los identificadores de los productos
+	 */
+	public void notificarRecepcion (long sucursal, Collection<Long> productos)
+	{
+		for (Long producto : productos)
+		{
+			Llave llave = new Llave (sucursal, producto);
+			enPedido.remove (llave);
+			porRevisar.add (llave);
+		}
+	}
+
+	/**
+	 * Olvida los niveles de reorden y los proveedores leídos, para volverlos a leer cuando cambian VENDE u OFRECEN
+	 */
+	public void invalidarCatalogo ()
+	{
+		niveles.clear ();
+		proveedores.clear ();
+	}
+
+	/**
+	 * Ejecuta una ronda: revisa los productos marcados y, para los que están por debajo de su nivel de reorden, genera e inserta
+	 * en una sola transacción un pedido por sucursal y proveedor. Si la inserción falla, los productos quedan marcados para la siguiente
+	 * @return Los pedidos generados. Vacío si no hay productos por pedir o si falla la inserción
+	 */
+	public synchronized List<Pedido> generarPedidos ()
+	{
+		List<Llave> revisar = new ArrayList<Llave> ();
+		for (Iterator<Llave> it = porRevisar.iterator (); it.hasNext (); )
+		{
+			revisar.add (it.next ());
+			it.remove ();
+		}
+
+		// Se agrupan los productos por pedir por sucursal y proveedor, que identifican un pedido
+		Map<List<Long>, Pedido> pedidos = new LinkedHashMap<List<Long>, Pedido> ();
+		Map<Pedido, List<Subpedido>> lineas = new LinkedHashMap<Pedido, List<Subpedido>> ();
+		List<Llave> pedidas = new ArrayList<Llave> ();
+		Timestamp fechaEntrega = new Timestamp (System.currentTimeMillis () + TimeUnit.DAYS.toMillis (diasEntrega));
+		try
+		{
+			for (Llave llave : revisar)
+			{
+				revisados.incrementAndGet ();
+				int cantidad = darCantidadPorPedir (llave);
+				if (cantidad == 0 || enPedido.contains (llave))
+				{
+					continue;
+				}
+				Ofrecen oferta = darProveedor (llave.producto);
+				if (oferta == SIN_PROVEEDOR)
+				{
+					log.warn ("El producto " + llave.producto + " está por debajo del nivel de reorden en la sucursal " + llave.sucursal
+							+ " pero ningún proveedor lo ofrece");
+					continue;
+				}
+				Pedido pedido = pedidos.computeIfAbsent (Arrays.asList (llave.sucursal, oferta.getProveedor ()),
+						k -> new Pedido (0, oferta.getProveedor (), llave.sucursal, fechaEntrega, PENDIENTE, 0, 0, 0));
+				double costo = cantidad * oferta.getCosto ();
+				pedido.setCantidad (pedido.getCantidad () + cantidad);
+				pedido.setCostoTotal (pedido.getCostoTotal () + costo);
+				lineas.computeIfAbsent (pedido, k -> new ArrayList<Subpedido> ()).add (new Subpedido (llave.producto, 0, cantidad, costo));
+				pedidas.add (llave);
+			}
+		}
+		catch (RuntimeException e)
+		{
+			log.error ("Falló la revisión de existencias del motor de reorden: " + e.getMessage ());
+			porRevisar.addAll (revisar);
+			return new ArrayList<Pedido> ();
+		}
+
+		if (lineas.isEmpty ())
+		{
+			return new ArrayList<Pedido> ();
+		}
+		List<Pedido> resp;
+		try
+		{
+			resp = pp.registrarPedidos (lineas);
+		}
+		catch (RuntimeException e)
+		{
+			// Los productos ya salieron de porRevisar: sin devolverlos no se volverían a pedir hasta su siguiente venta
+			log.error ("Falló el registro de los pedidos del motor de reorden: " + e.getMessage ());
+			resp = null;
+		}
+		if (resp == null)
+		{
+			porRevisar.addAll (pedidas);
+			return new ArrayList<Pedido> ();
+		}
+		enPedido.addAll (pedidas);
+		pedidosGenerados.addAndGet (resp.size ());
+		log.info ("Motor de reorden: " + resp.size () + " pedidos generados con " + pedidas.size () + " productos");
+		return resp;
+	}
+
+	/**
+	 * @param llave - Un producto en una sucursal
+	 * @return El número de unidades que hay que pedir para llevar las existencias a factorPedido veces el nivel de reorden.
+	 * 0 si las existencias no están por debajo del nivel de reorden
+	 */
+	private int darCantidadPorPedir (Llave llave)
+	{
+		Integer nivel = niveles.get (llave);
+		if (nivel == null)
+		{
+			nivel = pp.darNivelReorden (llave.sucursal, llave.producto);
+			if (nivel < 0)
+			{
+				throw new IllegalStateException ("No se pudo leer el nivel de reorden del producto " + llave.producto + " en la sucursal " + llave.sucursal);
+			}
+			niveles.put (llave, nivel);
+		}
+		if (nivel == 0)
+		{
+			return 0;
+		}
+		long [] existencias = pp.darExistencias (llave.sucursal, llave.producto);
+		if (existencias == null)
+		{
+			throw new IllegalStateException ("No se pudieron leer las existencias del producto " + llave.producto + " en la sucursal " + llave.sucursal);
+		}
+		long total = existencias [0] + existencias [1];
+		return total >= nivel ? 0 : (int) (Math.ceil (factorPedido * nivel) - total);
+	}
+
+	/**
+	 * @param producto - El identificador de un producto
+	 * @return El proveedor que ofrece el producto al menor costo. SIN_PROVEEDOR si ninguno lo ofrece
+	 */
+	private Ofrecen darProveedor (long producto)
+	{
+		Ofrecen resp = proveedores.get (producto);
+		if (resp == null)
+		{
+			resp = pp.darOfertaMasBarata (producto);
+			proveedores.put (producto, resp == null ? SIN_PROVEEDOR : resp);
+			resp = proveedores.get (producto);
+		}
+		return resp;
+	}
+
+	/**
+	 * @return El número de pedidos generados
+	 */
+	public long darPedidosGenerados ()
+	{
+		return pedidosGenerados.get ();
+	}
+
+	/**
+	 * @return El número de productos en sucursales con un pedido pendiente
+	 */
+	public int darProductosEnPedido ()
+	{
+		return enPedido.size ();
+	}
+
+	/**
+	 * Detiene las rondas periódicas
+	 */
+	public void cerrar ()
+	{
+		if (programador != null)
+		{
+			programador.shutdownNow ();
+		}
+	}
+
+	@Override
+	public String toString ()
+	{
+		return "MotorReorden [factorPedido=" + factorPedido + ", diasEntrega=" + diasEntrega + ", porRevisar=" + porRevisar.size ()
+				+ ", enPedido=" + darProductosEnPedido () + ", revisados=" + revisados.get () + ", pedidosGenerados=" + darPedidosGenerados () + "]";
+	}
+}
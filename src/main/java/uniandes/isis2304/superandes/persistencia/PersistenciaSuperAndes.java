@@ -1,10 +1,26 @@
 package uniandes.isis2304.superandes.persistencia;
 
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
 import java.sql.Timestamp;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
 
 import javax.jdo.JDODataStoreException;
+import javax.jdo.JDOException;
 import javax.jdo.JDOHelper;
 import javax.jdo.PersistenceManager;
 import javax.jdo.PersistenceManagerFactory;
@@ -28,6 +44,8 @@ import uniandes.isis2304.superandes.negocio.Proveedor;
 import uniandes.isis2304.superandes.negocio.Subpedido;
 import uniandes.isis2304.superandes.negocio.Sucursal;
 import uniandes.isis2304.superandes.negocio.Supermercado;
+import uniandes.isis2304.superandes.negocio.Transaccion;
+import uniandes.isis2304.superandes.negocio.Vende;
 
 public class PersistenciaSuperAndes {
 	
@@ -43,6 +61,21 @@ public class PersistenciaSuperAndes {
 	 * Cadena para indicar el tipo de sentencias que se va a utilizar en una consulta
 	 */
 	public final static String SQL = "javax.jdo.query.SQL";
+
+	/**
+	 * Nombre de la tabla del acumulado de ventas diarias cuando la configuración no lo define
+	 */
+	public final static String TABLA_VENTAS_DIARIAS_DEFECTO = "A_VENTASDIARIAS";
+
+	/**
+	 * Nombre de la tabla de control cuando la configuración no lo define
+	 */
+	public final static String TABLA_CONTROL_DEFECTO = "A_CONTROL";
+
+	/**
+	 * Clave de CONTROL con el número del último segmento del diario del inventario cuyos cambios están confirmados en BODEGA y ESTANTE
+	 */
+	private final static String CLAVE_SEGMENTO_INVENTARIO = "inventario.segmento";
 	
 	/* ****************************************************************
 	 * 			Atributos
@@ -60,7 +93,7 @@ public class PersistenciaSuperAndes {
 	/**
 	 * Arreglo de cadenas con los nombres de las tablas de la base de datos, en su orden:
 	 * Secuenciador, supermercado, sucursal, producto, bodega, estante, vende, proveedor, pedido, subpedido,
-	 * ofrecen, cliente, factura, promocion, transaccion.
+	 * ofrecen, cliente, factura, promocion, transaccion, ventasdiarias, control.
 	 */
 	private List <String> tablas;
 	
@@ -68,7 +101,123 @@ public class PersistenciaSuperAndes {
 	 * Atributo para el acceso a las sentencias SQL propias a PersistenciaSuperAndes
 	 */
 	private SQLUtil sqlUtil;
-	
+
+	/**
+	 * Generador de identificadores por bloques sobre el secuenciador de SuperAndes
+	 */
+	private AsignadorIdentificadores asignadorIds;
+
+	/**
+	 * Número máximo de sentencias que se envían en cada lote de JDBC en las inserciones masivas
+	 */
+	private int tamanoLote;
+
+	/**
+	 * Número de tuplas por página al recorrer una tabla completa, y tamaño de fetch de JDBC de esas consultas
+	 */
+	private int tamanoFetch;
+
+	/**
+	 * Entrega los PersistenceManager de las operaciones, acotados por el tamaño del pool de conexiones
+	 */
+	private AdministradorPersistenceManagers administradorPm;
+
+	/**
+	 * Las métricas de las operaciones y de las sentencias SQL
+	 */
+	private MetricasSuperAndes metricas;
+
+	/**
+	 * El registro de las sentencias SQL lentas. null si no se registran
+	 */
+	private RegistroConsultasLentas consultasLentas;
+
+	/**
+	 * El inventario en memoria, que descarga periódicamente los cambios de existencias en BODEGA y ESTANTE. null si no se usa
+	 */
+	private InventarioSuperAndes inventario;
+
+	/**
+	 * El motor de reorden, que genera los pedidos a proveedores de los productos por debajo de su nivel de reorden. null si no se usa
+	 */
+	private MotorReorden reorden;
+
+	/**
+	 * El diario de las ventas de las cajas pendientes de aplicar en la base de datos. null si no se usa
+	 */
+	private DiarioVentas diarioVentas;
+
+	/**
+	 * La cola de escritura diferida de las tuplas de TRANSACCION. null si no se usa
+	 */
+	private ColaTransacciones colaTransacciones;
+
+	/**
+	 * Los identificadores que ya se verificó que existen, por tabla, para validar las ventas diferidas sin consultar cada vez la base de datos
+	 */
+	private Map<String, Set<Long>> referenciasVerificadas;
+
+	/**
+	 * El índice en memoria de las promociones de cada producto por su intervalo de vigencia
+	 */
+	private IndicePromociones indicePromociones;
+
+	/**
+	 * La clasificación en memoria de las promociones más populares (RFC2)
+	 */
+	private RankingPromociones rankingPromociones;
+
+	/**
+	 * El monitor en memoria de la ocupación de las bodegas y los estantes de cada sucursal
+	 */
+	private MonitorOcupacion monitorOcupacion;
+
+	/**
+	 * El índice invertido en memoria de los productos que vende cada sucursal y cada ciudad
+	 */
+	private IndiceSurtido indiceSurtido;
+
+	/**
+	 * El índice de búsqueda en memoria de los productos por nombre, marca, presentación, categoría y tipo
+	 */
+	private BuscadorProductos buscadorProductos;
+
+	/**
+	 * El índice en memoria de los productos por código de barras, con sus precios en cada sucursal
+	 */
+	private IndiceCodigosBarras indiceCodigosBarras;
+
+	/**
+	 * La tabla en memoria del precio de cada producto en cada sucursal
+	 */
+	private TablaPrecios tablaPrecios;
+
+	/**
+	 * Indica si FACTURA y TRANSACCION están particionadas por mes en la base de datos (Oracle). En la base de datos embebida las
+	 * particiones se emulan con el índice sobre la fecha de FACTURA
+	 */
+	private boolean particionesNativas;
+
+	/**
+	 * Caché de lectura de las consultas sobre la tabla SUPERMERCADO
+	 */
+	private CacheCatalogo<String, List<Supermercado>> cacheSupermercados;
+
+	/**
+	 * Caché de lectura de las consultas sobre la tabla SUCURSAL
+	 */
+	private CacheCatalogo<String, List<Sucursal>> cacheSucursales;
+
+	/**
+	 * Caché de lectura de las consultas sobre la tabla PRODUCTO
+	 */
+	private CacheCatalogo<String, List<Producto>> cacheProductos;
+
+	/**
+	 * Caché de lectura de las consultas sobre la tabla PROVEEDOR
+	 */
+	private CacheCatalogo<String, List<Proveedor>> cacheProveedores;
+
 	/**
 	 * Atributo para el acceso a la tabla SUPERMERCADO de la base de datos
 	 */
@@ -138,6 +287,16 @@ public class PersistenciaSuperAndes {
 	 * Atributo para el acceso a la tabla TRANSACCION de la base de datos
 	 */
 	private SQLTransaccion sqlTransaccion;
+
+	/**
+	 * Atributo para el acceso al acumulado de VENTASDIARIAS de la base de datos
+	 */
+	private SQLVentasDiarias sqlVentasDiarias;
+
+	/**
+	 * Atributo para el acceso a la tabla CONTROL de la base de datos
+	 */
+	private SQLControl sqlControl;
 	
 	/* ****************************************************************
 	 * 			Métodos del MANEJADOR DE PERSISTENCIA
@@ -149,10 +308,9 @@ public class PersistenciaSuperAndes {
 	private PersistenciaSuperAndes ()
 	{
 		pmf = JDOHelper.getPersistenceManagerFactory("SuperAndes");		
-		crearClasesSQL ();
 		
 		// Define los nombres por defecto de las tablas de la base de datos
-		tablas = new LinkedList<String> ();
+		tablas = new ArrayList<String> ();
 		tablas.add ("superandes_sequence");
 		tablas.add ("SUPERMERCADO");
 		tablas.add ("SUCURSAL");
@@ -168,6 +326,26 @@ public class PersistenciaSuperAndes {
 		tablas.add ("FACTURA");
 		tablas.add ("PROMOCION");
 		tablas.add ("TRANSACCION");
+		tablas.add ("VENTASDIARIAS");
+		tablas.add ("CONTROL");
+		crearClasesSQL ();
+
+		asignadorIds = new AsignadorIdentificadores (pmf, sqlUtil, sqlControl, new HashMap<String, Integer> (), AsignadorIdentificadores.TAMANO_BLOQUE_DEFECTO);
+		tamanoLote = SQLUtil.TAMANO_LOTE_DEFECTO;
+		tamanoFetch = SQLUtil.TAMANO_FETCH_DEFECTO;
+		metricas = new MetricasSuperAndes (MetricasSuperAndes.REPORTE_DEFECTO);
+		administradorPm = new AdministradorPersistenceManagers (pmf, AdministradorPersistenceManagers.MAX_ACTIVOS_DEFECTO,
+				AdministradorPersistenceManagers.ESPERA_MAXIMA_DEFECTO, AdministradorPersistenceManagers.UMBRAL_FUGA_DEFECTO, false, metricas, null);
+		crearCachesCatalogo (new JsonObject ());
+		indicePromociones = new IndicePromociones (this);
+		rankingPromociones = crearRankingPromociones (new JsonObject ());
+		monitorOcupacion = new MonitorOcupacion (this);
+		indiceSurtido = new IndiceSurtido (this);
+		buscadorProductos = new BuscadorProductos (this);
+		tablaPrecios = new TablaPrecios (TablaPrecios.CAPACIDAD_DEFECTO);
+		indiceCodigosBarras = crearIndiceCodigosBarras (new JsonObject ());
+		referenciasVerificadas = new ConcurrentHashMap<String, Set<Long>> ();
+		particionesNativas = true;
 }
 	/**
 	 * Constructor privado, que recibe los nombres de las tablas en un objeto Json - Patrón SINGLETON
@@ -175,12 +353,42 @@ public class PersistenciaSuperAndes {
 	 */
 	private PersistenciaSuperAndes (JsonObject tableConfig)
 	{
-		crearClasesSQL ();
 		tablas = leerNombresTablas (tableConfig);
+		crearClasesSQL ();
 		
 		String unidadPersistencia = tableConfig.get ("unidadPersistencia").getAsString ();
 		log.trace ("Accediendo unidad de persistencia: " + unidadPersistencia);
-		pmf = JDOHelper.getPersistenceManagerFactory (unidadPersistencia);
+		JsonObject pool = tableConfig.has ("poolConexiones") ? tableConfig.getAsJsonObject ("poolConexiones") : new JsonObject ();
+		String esquemaEmbebido = darEsquemaEmbebido (tableConfig, unidadPersistencia);
+		pmf = JDOHelper.getPersistenceManagerFactory (darPropiedadesPool (pool, esquemaEmbebido == null), unidadPersistencia);
+		if (esquemaEmbebido != null)
+		{
+			InicializadorEsquema.ejecutarScript (pmf, esquemaEmbebido);
+		}
+		particionesNativas = esquemaEmbebido == null;
+		asignadorIds = crearAsignadorIdentificadores (tableConfig);
+		tamanoLote = tableConfig.has ("tamanoLote") ? tableConfig.get ("tamanoLote").getAsInt () : SQLUtil.TAMANO_LOTE_DEFECTO;
+		tamanoFetch = darEntero (tableConfig, "tamanoFetch", SQLUtil.TAMANO_FETCH_DEFECTO);
+		JsonObject configMetricas = tableConfig.has ("metricas") ? tableConfig.getAsJsonObject ("metricas") : new JsonObject ();
+		metricas = new MetricasSuperAndes (darEntero (configMetricas, "reporteSegundos", MetricasSuperAndes.REPORTE_DEFECTO));
+		consultasLentas = estaActivo (tableConfig, "consultasLentas") ? crearRegistroConsultasLentas (tableConfig.getAsJsonObject ("consultasLentas")) : null;
+		administradorPm = new AdministradorPersistenceManagers (pmf, darEntero (pool, "maxActivos", AdministradorPersistenceManagers.MAX_ACTIVOS_DEFECTO),
+				darEntero (pool, "esperaMaximaMs", (int) AdministradorPersistenceManagers.ESPERA_MAXIMA_DEFECTO),
+				darEntero (pool, "umbralFugaMs", (int) AdministradorPersistenceManagers.UMBRAL_FUGA_DEFECTO),
+				pool.has ("rastrearOrigen") && pool.get ("rastrearOrigen").getAsBoolean (), metricas, consultasLentas);
+		crearCachesCatalogo (tableConfig.has ("cacheCatalogo") ? tableConfig.getAsJsonObject ("cacheCatalogo") : new JsonObject ());
+		indicePromociones = new IndicePromociones (this);
+		rankingPromociones = crearRankingPromociones (tableConfig.has ("rankingPromociones") ? tableConfig.getAsJsonObject ("rankingPromociones") : new JsonObject ());
+		monitorOcupacion = new MonitorOcupacion (this);
+		indiceSurtido = new IndiceSurtido (this);
+		buscadorProductos = new BuscadorProductos (this);
+		tablaPrecios = new TablaPrecios (TablaPrecios.CAPACIDAD_DEFECTO);
+		indiceCodigosBarras = crearIndiceCodigosBarras (tableConfig.has ("indiceCodigosBarras") ? tableConfig.getAsJsonObject ("indiceCodigosBarras") : new JsonObject ());
+		referenciasVerificadas = new ConcurrentHashMap<String, Set<Long>> ();
+		inventario = estaActivo (tableConfig, "inventario") ? crearInventario (tableConfig.getAsJsonObject ("inventario")) : null;
+		reorden = estaActivo (tableConfig, "reorden") ? crearMotorReorden (tableConfig.getAsJsonObject ("reorden")) : null;
+		diarioVentas = estaActivo (tableConfig, "diarioVentas") ? crearDiarioVentas (tableConfig.getAsJsonObject ("diarioVentas")) : null;
+		colaTransacciones = estaActivo (tableConfig, "colaTransacciones") ? crearColaTransacciones (tableConfig.getAsJsonObject ("colaTransacciones")) : null;
 	}
 
 	/**
@@ -214,6 +422,46 @@ public class PersistenciaSuperAndes {
 	 */
 	public void cerrarUnidadPersistencia ()
 	{
+		if (diarioVentas != null)
+		{
+			diarioVentas.cerrar ();
+			log.info (diarioVentas);
+		}
+		if (colaTransacciones != null)
+		{
+			colaTransacciones.cerrar ();
+			log.info (colaTransacciones);
+		}
+		if (reorden != null)
+		{
+			reorden.cerrar ();
+			log.info (reorden);
+		}
+		if (inventario != null)
+		{
+			inventario.cerrar ();
+			log.info (inventario);
+		}
+		log.info ("Cerrando unidad de persistencia: " + administradorPm);
+		for (CacheCatalogo<String, ?> cache : darCachesCatalogo ())
+		{
+			log.info (cache);
+		}
+		log.info (indicePromociones);
+		log.info (rankingPromociones);
+		log.info (monitorOcupacion);
+		log.info (indiceSurtido);
+		log.info (buscadorProductos);
+		log.info (indiceCodigosBarras);
+		log.info (tablaPrecios);
+		log.info (metricas.darReporte ());
+		metricas.cerrar ();
+		if (consultasLentas != null)
+		{
+			log.info (consultasLentas);
+			consultasLentas.cerrar ();
+		}
+		administradorPm.cerrar ();
 		pmf.close ();
 		instance = null;
 	}
@@ -221,13 +469,13 @@ public class PersistenciaSuperAndes {
 	/**
 	 * Genera una lista con los nombres de las tablas de la base de datos
 	 * @param tableConfig - El objeto Json con los nombres de las tablas
-	 * @return La lista con los nombres del secuenciador y de las tablas
+	 * @return La lista con los nombres del secuenciador y de las tablas, con acceso directo por posición
 	 */
 	private List <String> leerNombresTablas (JsonObject tableConfig)
 	{
 		JsonArray nombres = tableConfig.getAsJsonArray("tablas") ;
 
-		List <String> resp = new LinkedList <String> ();
+		List <String> resp = new ArrayList <String> ();
 		for (JsonElement nom : nombres)
 		{
 			resp.add (nom.getAsString ());
@@ -235,9 +483,314 @@ public class PersistenciaSuperAndes {
 		
 		return resp;
 	}
-	
+
+	/**
+	 * Crea el generador de identificadores con los tamaños de bloque del objeto tableConfig.
+	 * El atributo opcional "bloquesIdentificadores" asocia nombres de tabla con el número de identificadores que se reservan
+	 * en cada visita al secuenciador; la entrada "defecto" aplica para las tablas no listadas
+	 * @param tableConfig - El objeto Json con la configuración de la persistencia
+	 * @return El generador de identificadores
+	 */
+	private AsignadorIdentificadores crearAsignadorIdentificadores (JsonObject tableConfig)
+	{
+		Map<String, Integer> tamanos = new HashMap<String, Integer> ();
+		int tamanoDefecto = AsignadorIdentificadores.TAMANO_BLOQUE_DEFECTO;
+		if (tableConfig.has ("bloquesIdentificadores"))
+		{
+			for (Map.Entry<String, JsonElement> bloque : tableConfig.getAsJsonObject ("bloquesIdentificadores").entrySet ())
+			{
+				if (bloque.getKey ().equals ("defecto"))
+				{
+					tamanoDefecto = bloque.getValue ().getAsInt ();
+				}
+				else
+				{
+					tamanos.put (bloque.getKey (), bloque.getValue ().getAsInt ());
+				}
+			}
+		}
+		return new AsignadorIdentificadores (pmf, sqlUtil, sqlControl, tamanos, tamanoDefecto);
+	}
+
+	/**
+	 * Traduce la configuración "poolConexiones" a las propiedades del pool de conexiones de DataNucleus,
+	 * que reemplazan las de persistence.xml. El pool tiene una conexión más que el número máximo de PersistenceManager
+	 * para que el generador de identificadores nunca tenga que esperar
+	 * Con sentenciasEnCache mayor que cero se activa el caché implícito de sentencias preparadas de Oracle en cada conexión,
+	 * de manera que las sentencias repetidas no se vuelven a analizar en la base de datos
+	 * @param pool - El objeto Json con maxActivos, minInactivos, esperaMaximaMs y sentenciasEnCache. Puede ser vacío
+	 * @param oracle - Indica si la unidad de persistencia es de Oracle. Si no, se ignora sentenciasEnCache
+	 * @return Las propiedades para la fábrica de manejadores de persistencia
+	 */
+	private Map<String, Object> darPropiedadesPool (JsonObject pool, boolean oracle)
+	{
+		int maxActivos = darEntero (pool, "maxActivos", AdministradorPersistenceManagers.MAX_ACTIVOS_DEFECTO);
+		int minInactivos = darEntero (pool, "minInactivos", 2);
+		Map<String, Object> resp = new HashMap<String, Object> ();
+		resp.put ("datanucleus.connectionPoolingType", "dbcp2-builtin");
+		resp.put ("datanucleus.connectionPool.maxActive", String.valueOf (maxActivos + 1));
+		resp.put ("datanucleus.connectionPool.maxIdle", String.valueOf (maxActivos + 1));
+		resp.put ("datanucleus.connectionPool.minIdle", String.valueOf (minInactivos));
+		resp.put ("datanucleus.connectionPool.maxWait", String.valueOf (darEntero (pool, "esperaMaximaMs", (int) AdministradorPersistenceManagers.ESPERA_MAXIMA_DEFECTO)));
+		int sentenciasEnCache = oracle ? darEntero (pool, "sentenciasEnCache", 0) : 0;
+		if (sentenciasEnCache > 0)
+		{
+			resp.put ("datanucleus.connectionPool.driverProps", "oracle.jdbc.implicitStatementCacheSize=" + sentenciasEnCache);
+		}
+		return resp;
+	}
+
+	/**
+	 * Busca si la unidad de persistencia es una base de datos embebida, que arranca vacía.
+	 * El atributo opcional "unidadesEmbebidas" asocia los nombres de esas unidades con el script que crea su esquema
+	 * @param tableConfig - El objeto Json con la configuración de la persistencia
+	 * @param unidadPersistencia - El nombre de la unidad de persistencia
+	 * @return La ruta del script que crea el esquema de la unidad. null si no es una unidad embebida
+	 */
+	private static String darEsquemaEmbebido (JsonObject tableConfig, String unidadPersistencia)
+	{
+		if (tableConfig.has ("unidadesEmbebidas") && tableConfig.getAsJsonObject ("unidadesEmbebidas").has (unidadPersistencia))
+		{
+			return tableConfig.getAsJsonObject ("unidadesEmbebidas").get (unidadPersistencia).getAsString ();
+		}
+		return null;
+	}
+
+	/**
+	 * Crea el registro de sentencias lentas con la configuración "consultasLentas"
+	 * @param config - El objeto Json con el umbral por defecto (umbralMs), los umbrales por nombre de sentencia o de clase SQL (umbrales),
+	 * la fracción de sentencias rápidas que se registran como muestra (muestreo), la capacidad de la cola de escritura (capacidadCola) y
+	 * si se escriben los valores de los parámetros (registrarParametros), que por defecto no se escriben
+	 * @return El registro de sentencias lentas
+	 */
+	private static RegistroConsultasLentas crearRegistroConsultasLentas (JsonObject config)
+	{
+		Map<String, Long> umbrales = new HashMap<String, Long> ();
+		if (config.has ("umbrales"))
+		{
+			for (Map.Entry<String, JsonElement> umbral : config.getAsJsonObject ("umbrales").entrySet ())
+			{
+				umbrales.put (umbral.getKey (), umbral.getValue ().getAsLong ());
+			}
+		}
+		return new RegistroConsultasLentas (darEntero (config, "umbralMs", (int) RegistroConsultasLentas.UMBRAL_DEFECTO), umbrales,
+				config.has ("muestreo") ? config.get ("muestreo").getAsDouble () : 0, darEntero (config, "capacidadCola", RegistroConsultasLentas.CAPACIDAD_DEFECTO),
+				config.has ("registrarParametros") && config.get ("registrarParametros").getAsBoolean ());
+	}
+
+	/**
+	 * Crea el inventario en memoria con la configuración "inventario" y recupera los cambios que hayan quedado en su diario
+	 * @param config - El objeto Json con el directorio del diario (diario), el número de franjas (franjas), el intervalo entre descargas
+	 * en milisegundos (descargaMs) y si cada escritura del diario se fuerza al disco (sincronizar)
+	 * @return El inventario en memoria
+	 */
+	private InventarioSuperAndes crearInventario (JsonObject config)
+	{
+		File directorio = new File (config.has ("diario") ? config.get ("diario").getAsString () : "inventario");
+		try
+		{
+			return new InventarioSuperAndes (this, directorio, darEntero (config, "franjas", InventarioSuperAndes.FRANJAS_DEFECTO),
+					darEntero (config, "descargaMs", (int) InventarioSuperAndes.DESCARGA_DEFECTO),
+					config.has ("sincronizar") && config.get ("sincronizar").getAsBoolean ());
+		}
+		catch (IOException e)
+		{
+			// Sin el diario no se puede saber si quedaron cambios sin descargar, así que no se sigue sin inventario
+			throw new IllegalStateException ("No se pudo abrir el diario del inventario en " + directorio.getAbsolutePath (), e);
+		}
+	}
+
+	/**
+	 * Crea el motor de reorden con la configuración "reorden"
+	 * @param config - El objeto Json con el factor del nivel de reorden hasta el que se pide (factorPedido), los días de entrega
+	 * de los pedidos (diasEntrega) y el intervalo entre rondas en milisegundos (intervaloMs, 0 para ejecutarlas sólo explícitamente)
+	 * @return El motor de reorden
+	 */
+	private MotorReorden crearMotorReorden (JsonObject config)
+	{
+		return new MotorReorden (this, config.has ("factorPedido") ? config.get ("factorPedido").getAsDouble () : MotorReorden.FACTOR_PEDIDO_DEFECTO,
+				darEntero (config, "diasEntrega", MotorReorden.DIAS_ENTREGA_DEFECTO), darEntero (config, "intervaloMs", (int) MotorReorden.INTERVALO_DEFECTO));
+	}
+
+	/**
+	 * Crea el diario de ventas con la configuración "diarioVentas". Las ventas que hayan quedado sin aplicar en él se aplican en la
+	 * primera aplicación
+	 * @param config - El objeto Json con el directorio de los segmentos (directorio), su tamaño en megabytes (tamanoSegmentoMb), el número
+	 * máximo de ventas por transacción (ventasPorGrupo), el intervalo entre aplicaciones en milisegundos (aplicacionMs) y si cada escritura
+	 * se fuerza al disco (sincronizar)
+	 * @return El diario de ventas
+	 */
+	private DiarioVentas crearDiarioVentas (JsonObject config)
+	{
+		File directorio = new File (config.has ("directorio") ? config.get ("directorio").getAsString () : "ventas");
+		try
+		{
+			return new DiarioVentas (this, directorio, darEntero (config, "tamanoSegmentoMb", DiarioVentas.TAMANO_SEGMENTO_DEFECTO >> 20) << 20,
+					darEntero (config, "ventasPorGrupo", DiarioVentas.VENTAS_POR_GRUPO_DEFECTO),
+					darEntero (config, "aplicacionMs", (int) DiarioVentas.APLICACION_DEFECTO),
+					config.has ("sincronizar") && config.get ("sincronizar").getAsBoolean ());
+		}
+		catch (IOException e)
+		{
+			// Sin el diario se perderían las ventas que quedaron sin aplicar, así que no se sigue sin él
+			throw new IllegalStateException ("No se pudo abrir el diario de ventas en " + directorio.getAbsolutePath (), e);
+		}
+	}
+
+	/**
+	 * Crea la cola de escritura diferida de TRANSACCION con la configuración "colaTransacciones"
+	 * @param config - El objeto Json con el número máximo de inserciones pendientes (capacidad), el número máximo de transacciones por
+	 * grupo (tamanoGrupo), la espera máxima para completar un grupo en milisegundos (esperaGrupoMs) y la espera máxima por un cupo en la
+	 * cola en milisegundos (esperaMaximaMs)
+	 * @return La cola de transacciones
+	 */
+	private ColaTransacciones crearColaTransacciones (JsonObject config)
+	{
+		return new ColaTransacciones (this, darEntero (config, "capacidad", ColaTransacciones.CAPACIDAD_DEFECTO),
+				darEntero (config, "tamanoGrupo", ColaTransacciones.TAMANO_GRUPO_DEFECTO),
+				darEntero (config, "esperaGrupoMs", (int) ColaTransacciones.ESPERA_GRUPO_DEFECTO),
+				darEntero (config, "esperaMaximaMs", (int) ColaTransacciones.ESPERA_MAXIMA_DEFECTO));
+	}
+
+	/**
+	 * Crea la clasificación de las promociones más populares. Sus contadores se leen de la base de datos en la primera consulta
+	 * @param config - El objeto Json con el número de promociones que se mantienen clasificadas (tamano). Puede ser vacío
+	 * @return La clasificación de promociones
+	 */
+	private RankingPromociones crearRankingPromociones (JsonObject config)
+	{
+		return new RankingPromociones (this, darEntero (config, "tamano", RankingPromociones.TAMANO_DEFECTO));
+	}
+
+	/**
+	 * Crea el índice de códigos de barras. Los productos y, en la tabla de precios, los precios se leen de la base de datos en la
+	 * primera consulta, o de una vez con "precargar": true, para que la primera lectura en caja no tenga que esperarlos
+	 * @param config - El objeto Json con la opción precargar. Puede ser vacío
+	 * @return El índice de códigos de barras
+	 */
+	private IndiceCodigosBarras crearIndiceCodigosBarras (JsonObject config)
+	{
+		IndiceCodigosBarras resp = new IndiceCodigosBarras (this, tablaPrecios);
+		if (config.has ("precargar") && config.get ("precargar").getAsBoolean () && !resp.cargar ())
+		{
+			log.warn ("No se pudo cargar el índice de códigos de barras; se intentará de nuevo en la primera consulta");
+		}
+		return resp;
+	}
+
+	/**
+	 * @param config - Un objeto Json
+	 * @param nombre - El nombre del atributo
+	 * @param defecto - El valor si el atributo no existe
+	 * @return El valor entero del atributo nombre en config
+	 */
+	private static int darEntero (JsonObject config, String nombre, int defecto)
+	{
+		return config.has (nombre) ? config.get (nombre).getAsInt () : defecto;
+	}
+
+	/**
+	 * Indica si se usa un componente opcional, como el inventario en memoria o el diario de ventas. Un componente se usa si su
+	 * sección aparece en la configuración y no tiene "activo": false, de manera que se puede dejar configurado sin usarlo
+	 * @param tableConfig - El objeto Json con la configuración de la persistencia
+	 * @param seccion - El nombre de la sección del componente
+	 * @return true si el componente se usa
+	 */
+	private static boolean estaActivo (JsonObject tableConfig, String seccion)
+	{
+		if (!tableConfig.has (seccion))
+		{
+			return false;
+		}
+		JsonObject config = tableConfig.getAsJsonObject (seccion);
+		return !config.has ("activo") || config.get ("activo").getAsBoolean ();
+	}
+
+	/**
+	 * Crea los cachés de lectura de supermercados, sucursales, productos y proveedores
+	 * @param config - El objeto Json con la capacidad y el tiempo de vida en segundos (ttlSegundos) de las entradas. Puede ser vacío
+	 */
+	private void crearCachesCatalogo (JsonObject config)
+	{
+		int capacidad = darEntero (config, "capacidad", CacheCatalogo.CAPACIDAD_DEFECTO);
+		int ttl = darEntero (config, "ttlSegundos", (int) CacheCatalogo.TTL_DEFECTO);
+		cacheSupermercados = new CacheCatalogo<String, List<Supermercado>> ("supermercados", capacidad, ttl);
+		cacheSucursales = new CacheCatalogo<String, List<Sucursal>> ("sucursales", capacidad, ttl);
+		cacheProductos = new CacheCatalogo<String, List<Producto>> ("productos", capacidad, ttl);
+		cacheProveedores = new CacheCatalogo<String, List<Proveedor>> ("proveedores", capacidad, ttl);
+	}
+
+	/**
+	 * @return Los cachés de lectura del catálogo, con sus estadísticas de aciertos y fallos
+	 */
+	public List<CacheCatalogo<String, ?>> darCachesCatalogo ()
+	{
+		List<CacheCatalogo<String, ?>> resp = new ArrayList<CacheCatalogo<String, ?>> ();
+		resp.add (cacheSupermercados);
+		resp.add (cacheSucursales);
+		resp.add (cacheProductos);
+		resp.add (cacheProveedores);
+		return resp;
+	}
+
+	/**
+	 * @param elemento - Un elemento. Puede ser null
+	 * @return Una lista inmutable con el elemento. null si el elemento es null
+	 */
+	private static <T> List<T> unico (T elemento)
+	{
+		return elemento == null ? null : Collections.singletonList (elemento);
+	}
+
+	/**
+	 * @param lista - Una lista. Puede ser null
+	 * @return El primer elemento de la lista. null si la lista es null o vacía
+	 */
+	private static <T> T primero (List<T> lista)
+	{
+		return lista == null || lista.isEmpty () ? null : lista.get (0);
+	}
+
+	/**
+	 * Abre un PersistenceManager por medio del administrador. Se debe cerrar siempre, idealmente con try-with-resources.
+	 * Las consultas copian sus resultados antes de cerrarlo, pues las listas de DataNucleus se cargan perezosamente.
+	 * Se debe pedir dentro del try del método, para que un pool agotado termine en el catch y el método retorne null o -1
+	 * @param operacion - El nombre de la operación, con el que se registran sus métricas
+	 * @return Un PersistenceManager abierto
+	 * @throws JDODataStoreException - Si no hay cupo disponible dentro del tiempo máximo de espera
+	 */
+	private PersistenceManager abrirPersistenceManager (String operacion)
+	{
+		return administradorPm.abrir (operacion);
+	}
+
+	/**
+	 * @return El registro de métricas de latencia, llamados, errores y tuplas de cada operación y de cada sentencia SQL
+	 */
+	public MetricasSuperAndes darMetricas ()
+	{
+		return metricas;
+	}
+
+	/**
+	 * @return El registro de las sentencias SQL lentas, con sus contadores. null si no está configurado
+	 */
+	public RegistroConsultasLentas darRegistroConsultasLentas ()
+	{
+		return consultasLentas;
+	}
+
+	/**
+	 * @return El administrador de PersistenceManager, con las métricas de espera, conexiones activas y posibles fugas
+	 */
+	public AdministradorPersistenceManagers darAdministradorPersistenceManagers ()
+	{
+		return administradorPm;
+	}
+
 	/**
-	 * Crea los atributos de clases de apoyo SQL
+	 * Crea los atributos de clases de apoyo SQL. Cada una construye sus sentencias una sola vez, por lo que
+	 * los nombres de las tablas ya deben estar definidos
 	 */
 	private void crearClasesSQL ()
 	{
@@ -255,6 +808,8 @@ public class PersistenciaSuperAndes {
 		sqlFactura = new SQLFactura(this);
 		sqlPromocion = new SQLPromocion(this);
 		sqlTransaccion = new SQLTransaccion(this);
+		sqlVentasDiarias = new SQLVentasDiarias(this);
+		sqlControl = new SQLControl(this);
 		sqlUtil = new SQLUtil(this);
 	}
 	
@@ -379,13 +934,31 @@ public class PersistenciaSuperAndes {
 	}
 	
 	/**
-	 * Transacción para el generador de secuencia de SuperAndes
+	 * @return La cadena de caracteres con el nombre de la tabla del acumulado de ventas diarias de superandes. Es opcional en la
+	 * configuración, para las configuraciones anteriores a la tabla
+	 */
+	public String darTablaVentasDiarias()
+	{
+		return tablas.size () > 15 ? tablas.get (15) : TABLA_VENTAS_DIARIAS_DEFECTO;
+	}
+
+	/**
+	 * @return La cadena de caracteres con el nombre de la tabla de control de superandes. Es opcional en la configuración
+	 */
+	public String darTablaControl()
+	{
+		return tablas.size () > 16 ? tablas.get (16) : TABLA_CONTROL_DEFECTO;
+	}
+	
+	/**
+	 * Generador de identificadores de SuperAndes. Los números se reservan por bloques del secuenciador
 	 * Adiciona entradas al log de la aplicación
-	 * @return El siguiente número del secuenciador de SuperAndes
+	 * @param tabla - La tabla para la que se genera el identificador
+	 * @return El siguiente identificador para la tabla dada
 	 */
-	private long nextval()
+	private long nextval (String tabla)
 	{
-        long resp = sqlUtil.nextval (pmf.getPersistenceManager());
+        long resp = asignadorIds.siguiente (tabla);
         log.trace ("Generando secuencia: " + resp);
         return resp;
     }
@@ -397,9 +970,12 @@ public class PersistenciaSuperAndes {
 	 */
 	private String nextval2()
 	{
-        String resp = sqlUtil.nextval2 (pmf.getPersistenceManager());
-        log.trace ("Generando secuencia: " + resp);
-        return resp;
+		try (PersistenceManager pm = abrirPersistenceManager ("nextval2"))
+		{
+	        String resp = sqlUtil.nextval2 (pm);
+	        log.trace ("Generando secuencia: " + resp);
+	        return resp;
+		}
     }
 	
 	/**
@@ -413,30 +989,106 @@ public class PersistenciaSuperAndes {
 		if (e.getClass().getName().equals("javax.jdo.JDODataStoreException"))
 		{
 			JDODataStoreException je = (javax.jdo.JDODataStoreException) e;
-			return je.getNestedExceptions() [0].getMessage();
+			// El administrador de PersistenceManager lanza la excepción sin causas anidadas cuando el pool está agotado
+			Throwable [] anidadas = je.getNestedExceptions();
+			return anidadas == null || anidadas.length == 0 ? resp : anidadas [0].getMessage();
 		}
 		return resp;
 	}
 
-	/* ****************************************************************
-	 * 			Métodos para manejar los SUPERMERCADOS
-	 *****************************************************************/
-
 	/**
-	 * Método que inserta, de manera transaccional, una tupla en la tabla SUPERMERCADO
-	 * Adiciona entradas al log de la aplicación
-	 * @param nombre - El nombre del supermercado
-	 * @return El objeto Supermercado adicionado. null si ocurre alguna Excepci�n
+	 * Indica si una excepción se debe a una restricción de integridad de la base de datos (llave primaria, foránea o CHECK), es decir,
+	 * a datos que nunca se van a poder insertar, y no a una falla transitoria de la conexión
+	 * @param e - La excepción
+	 * @return true si alguna de sus causas es una SQLException de la clase 23 de SQLSTATE
 	 */
-	public Supermercado adicionarSupermercado(String nombre)
+	private static boolean esViolacionIntegridad (Throwable e)
 	{
-		PersistenceManager pm = pmf.getPersistenceManager();
-        Transaction tx=pm.currentTransaction();
-        try
+		for (Throwable causa = e; causa != null; causa = causa.getCause ())
+		{
+			if (causa instanceof JDOException && ((JDOException) causa).getNestedExceptions () != null)
+			{
+				for (Throwable anidada : ((JDOException) causa).getNestedExceptions ())
+				{
+					if (anidada != causa && esViolacionIntegridad (anidada))
+					{
+						return true;
+					}
+				}
+			}
+			if (causa instanceof SQLException)
+			{
+				for (SQLException siguiente = (SQLException) causa; siguiente != null; siguiente = siguiente.getNextException ())
+				{
+					if (siguiente.getSQLState () != null && siguiente.getSQLState ().startsWith ("23"))
+					{
+						return true;
+					}
+				}
+			}
+			if (causa.getCause () == causa)
+			{
+				break;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Verifica que exista una tupla referenciada por una venta diferida. Los identificadores que existen se recuerdan, así que sólo
+	 * la primera venta de cada cliente, sucursal, producto o promoción consulta la base de datos
+	 * @param tabla - El nombre de la tabla, que debe tener la columna id
+	 * @param id - El identificador
+	 * @throws IllegalArgumentException - Si no existe
+	 */
+	private void verificarReferencia (String tabla, long id)
+	{
+		Set<Long> verificados = referenciasVerificadas.computeIfAbsent (tabla, t -> ConcurrentHashMap.newKeySet ());
+		if (verificados.contains (id))
+		{
+			return;
+		}
+		try (PersistenceManager pm = abrirPersistenceManager ("verificarReferencia"))
+		{
+			if (!sqlUtil.existe (pm, tabla, id))
+			{
+				throw new IllegalArgumentException ("No existe la tupla con identificador " + id + " en la tabla " + tabla);
+			}
+		}
+		verificados.add (id);
+	}
+
+	/**
+	 * Olvida los identificadores verificados de una tabla, después de eliminar tuplas de ella
+	 * @param tabla - El nombre de la tabla
+	 */
+	private void olvidarReferencias (String tabla)
+	{
+		referenciasVerificadas.remove (tabla);
+	}
+
+	/* ****************************************************************
+	 * 			Métodos para manejar los SUPERMERCADOS
+	 *****************************************************************/
+
+	/**
+	 * Método que inserta, de manera transaccional, una tupla en la tabla SUPERMERCADO
+	 * Adiciona entradas al log de la aplicación
+	 * @param nombre - El nombre del supermercado
+	 * @return El objeto Supermercado adicionado. null si ocurre alguna Excepci�n
+	 */
+	public Supermercado adicionarSupermercado(String nombre)
+	{
+		PersistenceManager pm = null;
+        Transaction tx = null;
+        try
         {
+        	pm = abrirPersistenceManager ("adicionarSupermercado");
+        	tx = pm.currentTransaction();
             tx.begin();
             long tuplasInsertadas = sqlSupermercado.adicionarSupermercado(pm, nombre);
             tx.commit();
+            cacheSupermercados.invalidarTodo ();
             
             log.trace ("Inserción de producto: " + nombre + ": " + tuplasInsertadas + " tuplas insertadas");
             
@@ -450,11 +1102,14 @@ public class PersistenciaSuperAndes {
         }
         finally
         {
-            if (tx.isActive())
+            if (tx != null && tx.isActive())
             {
                 tx.rollback();
             }
-            pm.close();
+            if (pm != null)
+            {
+            	pm.close();
+            }
         }
 	}
 	
@@ -466,13 +1121,16 @@ public class PersistenciaSuperAndes {
 	 */
 	public long eliminarSupermercadoPorNombre (String nombre) 
 	{
-		PersistenceManager pm = pmf.getPersistenceManager();
-        Transaction tx=pm.currentTransaction();
+		PersistenceManager pm = null;
+        Transaction tx = null;
         try
         {
+        	pm = abrirPersistenceManager ("eliminarSupermercadoPorNombre");
+        	tx = pm.currentTransaction();
             tx.begin();
             long resp = sqlSupermercado.eliminarSupermercadoPorNombre(pm, nombre);
             tx.commit();
+            cacheSupermercados.invalidarTodo ();
             return resp;
         }
         catch (Exception e)
@@ -483,11 +1141,14 @@ public class PersistenciaSuperAndes {
         }
         finally
         {
-            if (tx.isActive())
+            if (tx != null && tx.isActive())
             {
                 tx.rollback();
             }
-            pm.close();
+            if (pm != null)
+            {
+            	pm.close();
+            }
         }
 	}
 	
@@ -498,7 +1159,12 @@ public class PersistenciaSuperAndes {
 	 */
 	public Supermercado darSupermercadoPorNombre (String nombre)
 	{
-		return sqlSupermercado.darSupermercadoPorNombre(pmf.getPersistenceManager(), nombre);
+		return primero (cacheSupermercados.dar ("nombre:" + nombre, llave -> {
+			try (PersistenceManager pm = abrirPersistenceManager ("darSupermercadoPorNombre"))
+			{
+				return unico (sqlSupermercado.darSupermercadoPorNombre(pm, nombre));
+			}
+		}));
 	}
 	
 	/**
@@ -507,7 +1173,54 @@ public class PersistenciaSuperAndes {
 	 */
 	public List<Supermercado> darSupermercados()
 	{
-		return sqlSupermercado.darSupermercados(pmf.getPersistenceManager());
+		return cacheSupermercados.dar ("*", llave -> {
+			try (PersistenceManager pm = abrirPersistenceManager ("darSupermercados"))
+			{
+				return Collections.unmodifiableList (new ArrayList<Supermercado> (sqlSupermercado.darSupermercados(pm)));
+			}
+		});
+	}
+	
+	/**
+	 * Método que inserta, de manera transaccional y en lotes de JDBC, varias tuplas en la tabla SUPERMERCADO
+	 * Adiciona entradas al log de la aplicación
+	 * @param supermercados - Los objetos Supermercado a insertar
+	 * @return El número de tuplas insertadas por cada elemento, en el mismo orden de la lista. null si ocurre alguna Excepción
+	 */
+	public long [] adicionarSupermercado (List<Supermercado> supermercados)
+	{
+		PersistenceManager pm = null;
+        Transaction tx = null;
+        try
+        {
+        	pm = abrirPersistenceManager ("adicionarSupermercadoLote");
+        	tx = pm.currentTransaction();
+            tx.begin();
+            long [] resp = sqlSupermercado.adicionarSupermercado (pm, supermercados, tamanoLote);
+            tx.commit();
+            cacheSupermercados.invalidarTodo ();
+            
+            log.trace ("Inserción en lote de supermercados: " + supermercados.size () + " tuplas insertadas");
+            
+            return resp;
+        }
+        catch (Exception e)
+        {
+//        	e.printStackTrace();
+        	log.error ("Exception : " + e.getMessage() + "\n" + darDetalleException(e));
+        	return null;
+        }
+        finally
+        {
+            if (tx != null && tx.isActive())
+            {
+                tx.rollback();
+            }
+            if (pm != null)
+            {
+            	pm.close();
+            }
+        }
 	}
 	
 	/* ****************************************************************
@@ -526,14 +1239,18 @@ public class PersistenciaSuperAndes {
 	 */
 	public Sucursal adicionarSucursal(String nombre, String ciudad, String direccion, String segmentomercado, int tamano, String supermercado)
 	{
-		PersistenceManager pm = pmf.getPersistenceManager();
-        Transaction tx=pm.currentTransaction();
+		PersistenceManager pm = null;
+        Transaction tx = null;
         try
         {
+        	pm = abrirPersistenceManager ("adicionarSucursal");
+        	tx = pm.currentTransaction();
             tx.begin();
-            long idSucursal = nextval();
+            long idSucursal = nextval (darTablaSucursal ());
             long tuplasInsertadas = sqlSucursal.adicionarSucursal(pm, idSucursal, nombre, ciudad, direccion, segmentomercado, tamano, supermercado);
             tx.commit();
+            cacheSucursales.invalidarTodo ();
+            indiceSurtido.agregarSucursal (idSucursal, ciudad);
             
             log.trace ("Inserción de sucursal: " + nombre + ": " + tuplasInsertadas + " tuplas insertadas");
             
@@ -547,11 +1264,14 @@ public class PersistenciaSuperAndes {
         }
         finally
         {
-            if (tx.isActive())
+            if (tx != null && tx.isActive())
             {
                 tx.rollback();
             }
-            pm.close();
+            if (pm != null)
+            {
+            	pm.close();
+            }
         }
 	}
 	
@@ -563,13 +1283,18 @@ public class PersistenciaSuperAndes {
 	 */
 	public long eliminarSucursalPorId (long idSucursal) 
 	{
-		PersistenceManager pm = pmf.getPersistenceManager();
-        Transaction tx=pm.currentTransaction();
+		PersistenceManager pm = null;
+        Transaction tx = null;
         try
         {
+        	pm = abrirPersistenceManager ("eliminarSucursalPorId");
+        	tx = pm.currentTransaction();
             tx.begin();
             long resp = sqlSucursal.eliminarSucursalPorId(pm, idSucursal);
             tx.commit();
+            olvidarReferencias (darTablaSucursal ());
+            cacheSucursales.invalidarTodo ();
+            indiceSurtido.eliminarSucursal (idSucursal);
             return resp;
         }
         catch (Exception e)
@@ -580,11 +1305,14 @@ public class PersistenciaSuperAndes {
         }
         finally
         {
-            if (tx.isActive())
+            if (tx != null && tx.isActive())
             {
                 tx.rollback();
             }
-            pm.close();
+            if (pm != null)
+            {
+            	pm.close();
+            }
         }
 	}
 	
@@ -596,13 +1324,22 @@ public class PersistenciaSuperAndes {
 	 */
 	public long eliminarSucursalPorNombre (String nombre) 
 	{
-		PersistenceManager pm = pmf.getPersistenceManager();
-        Transaction tx=pm.currentTransaction();
+		PersistenceManager pm = null;
+        Transaction tx = null;
         try
         {
+        	pm = abrirPersistenceManager ("eliminarSucursalPorNombre");
+        	tx = pm.currentTransaction();
             tx.begin();
             long resp = sqlSucursal.eliminarSucursalesPorNombre(pm, nombre);
             tx.commit();
+            olvidarReferencias (darTablaSucursal ());
+            cacheSucursales.invalidarTodo ();
+            if (resp > 0)
+            {
+            	// No se sabe qué sucursales tenían el nombre
+            	indiceSurtido.invalidar ();
+            }
             return resp;
         }
         catch (Exception e)
@@ -613,11 +1350,14 @@ public class PersistenciaSuperAndes {
         }
         finally
         {
-            if (tx.isActive())
+            if (tx != null && tx.isActive())
             {
                 tx.rollback();
             }
-            pm.close();
+            if (pm != null)
+            {
+            	pm.close();
+            }
         }
 	}
 	
@@ -628,7 +1368,12 @@ public class PersistenciaSuperAndes {
 	 */
 	public Sucursal darSucursalPorId(long idSucursal)
 	{
-		return sqlSucursal.darSucursalPorId(pmf.getPersistenceManager(), idSucursal);
+		return primero (cacheSucursales.dar ("id:" + idSucursal, llave -> {
+			try (PersistenceManager pm = abrirPersistenceManager ("darSucursalPorId"))
+			{
+				return unico (sqlSucursal.darSucursalPorId(pm, idSucursal));
+			}
+		}));
 	}
 	
 	/**
@@ -638,7 +1383,12 @@ public class PersistenciaSuperAndes {
 	 */
 	public List<Sucursal> darSucursalesPorSupermercado(String supermercado)
 	{
-		return sqlSucursal.darSucursalesPorSupermercado(pmf.getPersistenceManager(), supermercado);
+		return cacheSucursales.dar ("supermercado:" + supermercado, llave -> {
+			try (PersistenceManager pm = abrirPersistenceManager ("darSucursalesPorSupermercado"))
+			{
+				return Collections.unmodifiableList (new ArrayList<Sucursal> (sqlSucursal.darSucursalesPorSupermercado(pm, supermercado)));
+			}
+		});
 	}
 	
 	/**
@@ -647,7 +1397,63 @@ public class PersistenciaSuperAndes {
 	 */
 	public List<Sucursal> darSucursales()
 	{
-		return sqlSucursal.darSucursales(pmf.getPersistenceManager());
+		return cacheSucursales.dar ("*", llave -> {
+			try (PersistenceManager pm = abrirPersistenceManager ("darSucursales"))
+			{
+				return Collections.unmodifiableList (new ArrayList<Sucursal> (sqlSucursal.darSucursales(pm)));
+			}
+		});
+	}
+	
+	/**
+	 * Método que inserta, de manera transaccional y en lotes de JDBC, varias tuplas en la tabla SUCURSAL
+	 * A cada elemento se le asigna un nuevo identificador antes de insertarlo
+	 * Adiciona entradas al log de la aplicación
+	 * @param sucursales - Los objetos Sucursal a insertar
+	 * @return El número de tuplas insertadas por cada elemento, en el mismo orden de la lista. null si ocurre alguna Excepción
+	 */
+	public long [] adicionarSucursal (List<Sucursal> sucursales)
+	{
+		PersistenceManager pm = null;
+        Transaction tx = null;
+        try
+        {
+        	pm = abrirPersistenceManager ("adicionarSucursalLote");
+        	tx = pm.currentTransaction();
+            tx.begin();
+            for (Sucursal sucursal : sucursales)
+            {
+            	sucursal.setId (nextval (darTablaSucursal ()));
+            }
+            long [] resp = sqlSucursal.adicionarSucursal (pm, sucursales, tamanoLote);
+            tx.commit();
+            cacheSucursales.invalidarTodo ();
+            for (Sucursal sucursal : sucursales)
+            {
+            	indiceSurtido.agregarSucursal (sucursal.getId (), sucursal.getCiudad ());
+            }
+            
+            log.trace ("Inserción en lote de sucursales: " + sucursales.size () + " tuplas insertadas");
+            
+            return resp;
+        }
+        catch (Exception e)
+        {
+//        	e.printStackTrace();
+        	log.error ("Exception : " + e.getMessage() + "\n" + darDetalleException(e));
+        	return null;
+        }
+        finally
+        {
+            if (tx != null && tx.isActive())
+            {
+                tx.rollback();
+            }
+            if (pm != null)
+            {
+            	pm.close();
+            }
+        }
 	}
 	
 	/* ****************************************************************
@@ -668,18 +1474,24 @@ public class PersistenciaSuperAndes {
 	 */
 	public Producto adicionarProducto(String nombre, String marca, String presentacion, String codigobarras, String unidadmedida, String categoria, String tipo)
 	{
-		PersistenceManager pm = pmf.getPersistenceManager();
-        Transaction tx=pm.currentTransaction();
+		PersistenceManager pm = null;
+        Transaction tx = null;
         try
         {
+        	pm = abrirPersistenceManager ("adicionarProducto");
+        	tx = pm.currentTransaction();
             tx.begin();
-            long idProducto = nextval ();
+            long idProducto = nextval (darTablaProducto ());
             long tuplasInsertadas = sqlProducto.adicionarProducto(pm, idProducto, nombre, marca, presentacion, codigobarras, unidadmedida, categoria, tipo);
             tx.commit();
+            cacheProductos.invalidarTodo ();
+            Producto producto = new Producto(idProducto, nombre, marca, presentacion, codigobarras, unidadmedida, categoria, tipo);
+            buscadorProductos.agregar (Collections.singletonList (producto));
+            indiceCodigosBarras.agregarProductos (Collections.singletonList (producto));
             
             log.trace ("Inserci�n de producto: " + nombre + ": " + tuplasInsertadas + " tuplas insertadas");
             
-            return new Producto(idProducto, nombre, marca, presentacion, unidadmedida, categoria, tipo);
+            return producto;
         }
         catch (Exception e)
         {
@@ -689,11 +1501,14 @@ public class PersistenciaSuperAndes {
         }
         finally
         {
-            if (tx.isActive())
+            if (tx != null && tx.isActive())
             {
                 tx.rollback();
             }
-            pm.close();
+            if (pm != null)
+            {
+            	pm.close();
+            }
         }
 	}
 	
@@ -705,13 +1520,23 @@ public class PersistenciaSuperAndes {
 	 */
 	public long eliminarProductoPorNombre (String nombre) 
 	{
-		PersistenceManager pm = pmf.getPersistenceManager();
-        Transaction tx=pm.currentTransaction();
+		PersistenceManager pm = null;
+        Transaction tx = null;
         try
         {
+        	pm = abrirPersistenceManager ("eliminarProductoPorNombre");
+        	tx = pm.currentTransaction();
             tx.begin();
+            List<Producto> eliminados = sqlProducto.darProductosPorNombre (pm, nombre);
             long resp = sqlProducto.eliminarProductoPorNombre(pm, nombre);
             tx.commit();
+            olvidarReferencias (darTablaProducto ());
+            cacheProductos.invalidarTodo ();
+            if (resp > 0)
+            {
+            	buscadorProductos.invalidar ();
+            	indiceCodigosBarras.eliminarProductos (eliminados);
+            }
             return resp;
         }
         catch (Exception e)
@@ -722,11 +1547,14 @@ public class PersistenciaSuperAndes {
         }
         finally
         {
-            if (tx.isActive())
+            if (tx != null && tx.isActive())
             {
                 tx.rollback();
             }
-            pm.close();
+            if (pm != null)
+            {
+            	pm.close();
+            }
         }
 	}
 	
@@ -738,13 +1566,23 @@ public class PersistenciaSuperAndes {
 	 */
 	public long eliminarProductoPorId (long idProducto) 
 	{
-		PersistenceManager pm = pmf.getPersistenceManager();
-        Transaction tx=pm.currentTransaction();
+		PersistenceManager pm = null;
+        Transaction tx = null;
         try
         {
+        	pm = abrirPersistenceManager ("eliminarProductoPorId");
+        	tx = pm.currentTransaction();
             tx.begin();
+            Producto eliminado = sqlProducto.darProductoPorId (pm, idProducto);
             long resp = sqlProducto.eliminarProductoPorId(pm, idProducto);
             tx.commit();
+            olvidarReferencias (darTablaProducto ());
+            cacheProductos.invalidarTodo ();
+            buscadorProductos.eliminar (idProducto);
+            if (eliminado != null)
+            {
+            	indiceCodigosBarras.eliminarProductos (Collections.singletonList (eliminado));
+            }
             return resp;
         }
         catch (Exception e)
@@ -755,11 +1593,14 @@ public class PersistenciaSuperAndes {
         }
         finally
         {
-            if (tx.isActive())
+            if (tx != null && tx.isActive())
             {
                 tx.rollback();
             }
-            pm.close();
+            if (pm != null)
+            {
+            	pm.close();
+            }
         }
 	}
 	
@@ -770,7 +1611,12 @@ public class PersistenciaSuperAndes {
 	 */
 	public List<Producto> darProductosPorNombre(String nombre)
 	{
-		return sqlProducto.darProductosPorNombre(pmf.getPersistenceManager(), nombre);
+		return cacheProductos.dar ("nombre:" + nombre, llave -> {
+			try (PersistenceManager pm = abrirPersistenceManager ("darProductosPorNombre"))
+			{
+				return Collections.unmodifiableList (new ArrayList<Producto> (sqlProducto.darProductosPorNombre(pm, nombre)));
+			}
+		});
 	}
 	
 	/**
@@ -779,7 +1625,85 @@ public class PersistenciaSuperAndes {
 	 */
 	public List<Producto> darProductos()
 	{
-		return sqlProducto.darProductos(pmf.getPersistenceManager());
+		return cacheProductos.dar ("*", llave -> {
+			try (PersistenceManager pm = abrirPersistenceManager ("darProductos"))
+			{
+				return Collections.unmodifiableList (new ArrayList<Producto> (sqlProducto.darProductos(pm)));
+			}
+		});
+	}
+	
+	/**
+	 * Método que consulta una página de las tuplas en la tabla PRODUCTO, en orden de identificador
+	 * @param despuesDeId - El identificador del último producto de la página anterior. 0 para la primera página
+	 * @param limite - El número máximo de tuplas de la página
+	 * @return La lista de objetos Producto de la página, con a lo sumo limite elementos
+	 */
+	public List<Producto> darProductosPagina (long despuesDeId, int limite)
+	{
+		try (PersistenceManager pm = abrirPersistenceManager ("darProductosPagina"))
+		{
+			return new ArrayList<Producto> (sqlProducto.darProductosPagina (pm, despuesDeId, limite));
+		}
+	}
+	
+	/**
+	 * Método que recorre todas las tuplas en la tabla PRODUCTO, en orden de identificador, por páginas de tamanoFetch tuplas.
+	 * Sólo mantiene una página en memoria, sin importar el tamaño de la tabla
+	 * @return Un Stream secuencial de objetos Producto
+	 */
+	public Stream<Producto> recorrerProductos ()
+	{
+		return new IteradorPaginas<Producto> (ultimo -> darProductosPagina (ultimo == null ? 0 : ultimo.getId (), tamanoFetch), tamanoFetch).comoStream ();
+	}
+	
+	/**
+	 * Método que inserta, de manera transaccional y en lotes de JDBC, varias tuplas en la tabla PRODUCTO
+	 * A cada elemento se le asigna un nuevo identificador antes de insertarlo
+	 * Adiciona entradas al log de la aplicación
+	 * @param productos - Los objetos Producto a insertar
+	 * @return El número de tuplas insertadas por cada elemento, en el mismo orden de la lista. null si ocurre alguna Excepción
+	 */
+	public long [] adicionarProducto (List<Producto> productos)
+	{
+		PersistenceManager pm = null;
+        Transaction tx = null;
+        try
+        {
+        	pm = abrirPersistenceManager ("adicionarProductoLote");
+        	tx = pm.currentTransaction();
+            tx.begin();
+            for (Producto producto : productos)
+            {
+            	producto.setId (nextval (darTablaProducto ()));
+            }
+            long [] resp = sqlProducto.adicionarProducto (pm, productos, tamanoLote);
+            tx.commit();
+            cacheProductos.invalidarTodo ();
+            buscadorProductos.agregar (productos);
+            indiceCodigosBarras.agregarProductos (productos);
+            
+            log.trace ("Inserción en lote de productos: " + productos.size () + " tuplas insertadas");
+            
+            return resp;
+        }
+        catch (Exception e)
+        {
+//        	e.printStackTrace();
+        	log.error ("Exception : " + e.getMessage() + "\n" + darDetalleException(e));
+        	return null;
+        }
+        finally
+        {
+            if (tx != null && tx.isActive())
+            {
+                tx.rollback();
+            }
+            if (pm != null)
+            {
+            	pm.close();
+            }
+        }
 	}
 	
 	/* ****************************************************************
@@ -798,14 +1722,17 @@ public class PersistenciaSuperAndes {
 	 */
 	public Bodega adicionarBodega(double capacidadVolumen, double capacidadPeso, long producto, long sucursal, int existencias)
 	{
-		PersistenceManager pm = pmf.getPersistenceManager();
-        Transaction tx=pm.currentTransaction();
+		PersistenceManager pm = null;
+        Transaction tx = null;
         try
         {
+        	pm = abrirPersistenceManager ("adicionarBodega");
+        	tx = pm.currentTransaction();
             tx.begin();
-            long idBodega = nextval ();
+            long idBodega = nextval (darTablaBodega ());
             long tuplasInsertadas = sqlBodega.adicionarBodega(pm, idBodega, capacidadVolumen, capacidadPeso, producto, sucursal, existencias);
             tx.commit();
+            registrarCambioInventario (sucursal, producto, existencias, 0);
             
             log.trace ("Inserción de la bodega: " + idBodega + ": " + tuplasInsertadas + " tuplas insertadas");
             
@@ -819,11 +1746,14 @@ public class PersistenciaSuperAndes {
         }
         finally
         {
-            if (tx.isActive())
+            if (tx != null && tx.isActive())
             {
                 tx.rollback();
             }
-            pm.close();
+            if (pm != null)
+            {
+            	pm.close();
+            }
         }
 	}
 	
@@ -835,13 +1765,20 @@ public class PersistenciaSuperAndes {
 	 */
 	public long eliminarBodegaPorId (long idBodega) 
 	{
-		PersistenceManager pm = pmf.getPersistenceManager();
-        Transaction tx=pm.currentTransaction();
+		PersistenceManager pm = null;
+        Transaction tx = null;
         try
         {
+        	pm = abrirPersistenceManager ("eliminarBodegaPorId");
+        	tx = pm.currentTransaction();
             tx.begin();
+            Bodega bodega = sqlBodega.darBodegaPorId (pm, idBodega);
             long resp = sqlBodega.eliminarBodegaPorId(pm, idBodega);
             tx.commit();
+            if (bodega != null)
+            {
+            	registrarCambioInventario (bodega.getSucursal (), bodega.getProducto (), -bodega.getExistencias (), 0);
+            }
             return resp;
         }
         catch (Exception e)
@@ -852,11 +1789,14 @@ public class PersistenciaSuperAndes {
         }
         finally
         {
-            if (tx.isActive())
+            if (tx != null && tx.isActive())
             {
                 tx.rollback();
             }
-            pm.close();
+            if (pm != null)
+            {
+            	pm.close();
+            }
         }
 	}
 	
@@ -867,7 +1807,10 @@ public class PersistenciaSuperAndes {
 	 */
 	public Bodega darBodegaPorId(long idBodega)
 	{
-		return sqlBodega.darBodegaPorId(pmf.getPersistenceManager(), idBodega);
+		try (PersistenceManager pm = abrirPersistenceManager ("darBodegaPorId"))
+		{
+			return sqlBodega.darBodegaPorId(pm, idBodega);
+		}
 	}
 	
 	/**
@@ -877,7 +1820,10 @@ public class PersistenciaSuperAndes {
 	 */
 	public List<Bodega> darBodegasPorSucursal(long sucursal)
 	{
-		return sqlBodega.darBodegasPorSucursal(pmf.getPersistenceManager(), sucursal);
+		try (PersistenceManager pm = abrirPersistenceManager ("darBodegasPorSucursal"))
+		{
+			return new ArrayList<Bodega> (sqlBodega.darBodegasPorSucursal(pm, sucursal));
+		}
 	}
 	
 	/**
@@ -886,7 +1832,10 @@ public class PersistenciaSuperAndes {
 	 */
 	public List<Bodega> darBodegas()
 	{
-		return sqlBodega.darBodegas(pmf.getPersistenceManager());
+		try (PersistenceManager pm = abrirPersistenceManager ("darBodegas"))
+		{
+			return new ArrayList<Bodega> (sqlBodega.darBodegas(pm));
+		}
 	}
 	
 	/**
@@ -895,7 +1844,66 @@ public class PersistenciaSuperAndes {
 	 */
 	public long aumentarExistenciasBodegaEnDiez(long idBodega)
 	{
-		return sqlBodega.aumentarExistenciasBodegasEnDiez(pmf.getPersistenceManager(), idBodega);
+		try (PersistenceManager pm = abrirPersistenceManager ("aumentarExistenciasBodegaEnDiez"))
+		{
+			long resp = sqlBodega.aumentarExistenciasBodegasEnDiez(pm, idBodega);
+			if (resp > 0)
+			{
+				Bodega bodega = sqlBodega.darBodegaPorId (pm, idBodega);
+				registrarCambioInventario (bodega.getSucursal (), bodega.getProducto (), 10, 0);
+			}
+			return resp;
+		}
+	}
+	
+	/**
+	 * Método que inserta, de manera transaccional y en lotes de JDBC, varias tuplas en la tabla BODEGA
+	 * A cada elemento se le asigna un nuevo identificador antes de insertarlo
+	 * Adiciona entradas al log de la aplicación
+	 * @param bodegas - Los objetos Bodega a insertar
+	 * @return El número de tuplas insertadas por cada elemento, en el mismo orden de la lista. null si ocurre alguna Excepción
+	 */
+	public long [] adicionarBodega (List<Bodega> bodegas)
+	{
+		PersistenceManager pm = null;
+        Transaction tx = null;
+        try
+        {
+        	pm = abrirPersistenceManager ("adicionarBodegaLote");
+        	tx = pm.currentTransaction();
+            tx.begin();
+            for (Bodega bodega : bodegas)
+            {
+            	bodega.setId (nextval (darTablaBodega ()));
+            }
+            long [] resp = sqlBodega.adicionarBodega (pm, bodegas, tamanoLote);
+            tx.commit();
+            for (Bodega bodega : bodegas)
+            {
+            	registrarCambioInventario (bodega.getSucursal (), bodega.getProducto (), bodega.getExistencias (), 0);
+            }
+            
+            log.trace ("Inserción en lote de bodegas: " + bodegas.size () + " tuplas insertadas");
+            
+            return resp;
+        }
+        catch (Exception e)
+        {
+//        	e.printStackTrace();
+        	log.error ("Exception : " + e.getMessage() + "\n" + darDetalleException(e));
+        	return null;
+        }
+        finally
+        {
+            if (tx != null && tx.isActive())
+            {
+                tx.rollback();
+            }
+            if (pm != null)
+            {
+            	pm.close();
+            }
+        }
 	}
 	
 	/* ****************************************************************
@@ -915,14 +1923,17 @@ public class PersistenciaSuperAndes {
 	 */
 	public Estante adicionarEstante(double capacidadVolumen, double capacidadPeso, long producto, long sucursal, int nivelabastecimientobodega, int existencias)
 	{
-		PersistenceManager pm = pmf.getPersistenceManager();
-        Transaction tx=pm.currentTransaction();
+		PersistenceManager pm = null;
+        Transaction tx = null;
         try
         {
+        	pm = abrirPersistenceManager ("adicionarEstante");
+        	tx = pm.currentTransaction();
             tx.begin();
-            long idEstante = nextval ();
+            long idEstante = nextval (darTablaEstante ());
             long tuplasInsertadas = sqlEstante.adicionarEstante(pm, idEstante, capacidadVolumen, capacidadPeso, producto, sucursal, nivelabastecimientobodega, existencias);
             tx.commit();
+            registrarCambioInventario (sucursal, producto, 0, existencias);
             
             log.trace ("Inserción del estante: " + idEstante + ": " + tuplasInsertadas + " tuplas insertadas");
             
@@ -936,11 +1947,14 @@ public class PersistenciaSuperAndes {
         }
         finally
         {
-            if (tx.isActive())
+            if (tx != null && tx.isActive())
             {
                 tx.rollback();
             }
-            pm.close();
+            if (pm != null)
+            {
+            	pm.close();
+            }
         }
 	}
 	
@@ -952,13 +1966,20 @@ public class PersistenciaSuperAndes {
 	 */
 	public long eliminarEstantePorId (long idEstante) 
 	{
-		PersistenceManager pm = pmf.getPersistenceManager();
-        Transaction tx=pm.currentTransaction();
+		PersistenceManager pm = null;
+        Transaction tx = null;
         try
         {
+        	pm = abrirPersistenceManager ("eliminarEstantePorId");
+        	tx = pm.currentTransaction();
             tx.begin();
+            Estante estante = sqlEstante.darEstantePorId (pm, idEstante);
             long resp = sqlEstante.eliminarEstantePorId(pm, idEstante);
             tx.commit();
+            if (estante != null)
+            {
+            	registrarCambioInventario (estante.getSucursal (), estante.getProducto (), 0, -estante.getExistencias ());
+            }
             return resp;
         }
         catch (Exception e)
@@ -969,11 +1990,14 @@ public class PersistenciaSuperAndes {
         }
         finally
         {
-            if (tx.isActive())
+            if (tx != null && tx.isActive())
             {
                 tx.rollback();
             }
-            pm.close();
+            if (pm != null)
+            {
+            	pm.close();
+            }
         }
 	}
 	
@@ -984,7 +2008,10 @@ public class PersistenciaSuperAndes {
 	 */
 	public Estante darEstantePorId(long idEstante)
 	{
-		return sqlEstante.darEstantePorId(pmf.getPersistenceManager(), idEstante);
+		try (PersistenceManager pm = abrirPersistenceManager ("darEstantePorId"))
+		{
+			return sqlEstante.darEstantePorId(pm, idEstante);
+		}
 	}
 	
 	/**
@@ -994,7 +2021,10 @@ public class PersistenciaSuperAndes {
 	 */
 	public List<Estante> darEstantesPorSucursal(long sucursal)
 	{
-		return sqlEstante.darEstantesPorSucursal(pmf.getPersistenceManager(), sucursal);
+		try (PersistenceManager pm = abrirPersistenceManager ("darEstantesPorSucursal"))
+		{
+			return new ArrayList<Estante> (sqlEstante.darEstantesPorSucursal(pm, sucursal));
+		}
 	}
 	
 	/**
@@ -1003,7 +2033,10 @@ public class PersistenciaSuperAndes {
 	 */
 	public List<Estante> darEstantes()
 	{
-		return sqlEstante.darEstantes(pmf.getPersistenceManager());
+		try (PersistenceManager pm = abrirPersistenceManager ("darEstantes"))
+		{
+			return new ArrayList<Estante> (sqlEstante.darEstantes(pm));
+		}
 	}
 	
 	/**
@@ -1012,38 +2045,48 @@ public class PersistenciaSuperAndes {
 	 */
 	public long aumentarExistenciasEstanteEnDiez(long idEstante)
 	{
-		return sqlEstante.aumentarExistenciasEstantesEnDiez(pmf.getPersistenceManager(), idEstante);
+		try (PersistenceManager pm = abrirPersistenceManager ("aumentarExistenciasEstanteEnDiez"))
+		{
+			long resp = sqlEstante.aumentarExistenciasEstantesEnDiez(pm, idEstante);
+			if (resp > 0)
+			{
+				Estante estante = sqlEstante.darEstantePorId (pm, idEstante);
+				registrarCambioInventario (estante.getSucursal (), estante.getProducto (), 0, 10);
+			}
+			return resp;
+		}
 	}
 	
-	/* ****************************************************************
-	 * 			Métodos para manejar la relación VENDE
-	 *****************************************************************/
-	
-	/* ****************************************************************
-	 * 			Métodos para manejar los PROVEEDORES
-	 *****************************************************************/
-	
 	/**
-	 * Método que inserta, de manera transaccional, una tupla en la tabla PROVEEDOR
+	 * Método que inserta, de manera transaccional y en lotes de JDBC, varias tuplas en la tabla ESTANTE
+	 * A cada elemento se le asigna un nuevo identificador antes de insertarlo
 	 * Adiciona entradas al log de la aplicación
-	 * @param nombre - El nombre del proveedor
-	 * @param calificacion - La calificacion que tiene el proveedor
-	 * @return El objeto Proveedor adicionado. null si ocurre alguna Excepción
+	 * @param estantes - Los objetos Estante a insertar
+	 * @return El número de tuplas insertadas por cada elemento, en el mismo orden de la lista. null si ocurre alguna Excepción
 	 */
-	public Proveedor adicionarProveedor(String nombre, int calificacion)
+	public long [] adicionarEstante (List<Estante> estantes)
 	{
-		PersistenceManager pm = pmf.getPersistenceManager();
-        Transaction tx=pm.currentTransaction();
+		PersistenceManager pm = null;
+        Transaction tx = null;
         try
         {
+        	pm = abrirPersistenceManager ("adicionarEstanteLote");
+        	tx = pm.currentTransaction();
             tx.begin();
-            long idProveedor = nextval ();
-            long tuplasInsertadas = sqlProveedor.adicionarProveedor(pm, idProveedor, nombre, calificacion);
+            for (Estante estante : estantes)
+            {
+            	estante.setId (nextval (darTablaEstante ()));
+            }
+            long [] resp = sqlEstante.adicionarEstante (pm, estantes, tamanoLote);
             tx.commit();
+            for (Estante estante : estantes)
+            {
+            	registrarCambioInventario (estante.getSucursal (), estante.getProducto (), 0, estante.getExistencias ());
+            }
             
-            log.trace ("Inserción del proveedor: " + idProveedor + ": " + tuplasInsertadas + " tuplas insertadas");
+            log.trace ("Inserción en lote de estantes: " + estantes.size () + " tuplas insertadas");
             
-            return new Proveedor(idProveedor, nombre, calificacion);
+            return resp;
         }
         catch (Exception e)
         {
@@ -1053,167 +2096,2318 @@ public class PersistenciaSuperAndes {
         }
         finally
         {
-            if (tx.isActive())
+            if (tx != null && tx.isActive())
             {
                 tx.rollback();
             }
-            pm.close();
+            if (pm != null)
+            {
+            	pm.close();
+            }
         }
 	}
 	
+	/* ****************************************************************
+	 * 			Métodos para manejar el INVENTARIO
+	 *****************************************************************/
+
 	/**
-	 * Método que elimina, de manera transaccional, una tupla en la tabla Proveedor, dado el nombre del proveedor
-	 * Adiciona entradas al log de la aplicación
-	 * @param nombre - El nombre del proveedor
-	 * @return El número de tuplas eliminadas. -1 si ocurre alguna Excepción
+	 * @return El inventario en memoria de las existencias en bodegas y estantes. null si no está configurado,
+	 * en cuyo caso las existencias se consultan y modifican directamente en las tablas BODEGA y ESTANTE
 	 */
-	public long eliminarProoveedorPorNombre (String nombre) 
+	public InventarioSuperAndes darInventario ()
 	{
-		PersistenceManager pm = pmf.getPersistenceManager();
-        Transaction tx=pm.currentTransaction();
-        try
-        {
-            tx.begin();
-            long resp = sqlProveedor.eliminarProveedorPorNombre(pm, nombre);
-            tx.commit();
-            return resp;
-        }
-        catch (Exception e)
-        {
-//        	e.printStackTrace();
+		return inventario;
+	}
+
+	/**
+	 * Método que consulta las existencias de un producto en las bodegas y en los estantes de una sucursal.
+	 * Con el inventario en memoria se responde desde él, incluidos los cambios que aún no se han descargado
+	 * @param sucursal - El identificador de la sucursal
+	 * @param producto - El identificador del producto
+	 * @return Las existencias en bodegas y en estantes, en ese orden. null si ocurre alguna Excepción
+	 */
+	public long [] darExistencias (long sucursal, long producto)
+	{
+		if (inventario == null)
+		{
+			return leerExistencias (sucursal, producto);
+		}
+		try
+		{
+			return inventario.darExistencias (sucursal, producto);
+		}
+		catch (Exception e)
+		{
+        	log.error ("Exception : " + e.getMessage() + "\n" + darDetalleException(e));
+			return null;
+		}
+	}
+
+	/**
+	 * Método que consulta las existencias de un producto en las bodegas y en los estantes de una sucursal, en la base de datos
+	 * @param sucursal - El identificador de la sucursal
+	 * @param producto - El identificador del producto
+	 * @return Las existencias en bodegas y en estantes, en ese orden. null si ocurre alguna Excepción
+	 */
+	long [] leerExistencias (long sucursal, long producto)
+	{
+		try (PersistenceManager pm = abrirPersistenceManager ("leerExistencias"))
+		{
+			return new long [] {sqlBodega.darExistencias (pm, sucursal, producto), sqlEstante.darExistencias (pm, sucursal, producto)};
+		}
+		catch (Exception e)
+		{
+        	log.error ("Exception : " + e.getMessage() + "\n" + darDetalleException(e));
+			return null;
+		}
+	}
+
+	/**
+	 * Método que consulta el último segmento del diario del inventario cuyos cambios quedaron confirmados en la base de datos
+	 * @return El número del segmento. 0 si nunca se ha descargado el inventario. -1 si ocurre alguna Excepción
+	 */
+	long darSegmentoDescargadoInventario ()
+	{
+		try (PersistenceManager pm = abrirPersistenceManager ("darSegmentoDescargadoInventario"))
+		{
+			Long resp = sqlControl.darValor (pm, CLAVE_SEGMENTO_INVENTARIO);
+			return resp != null ? resp : 0;
+		}
+		catch (Exception e)
+		{
+        	log.error ("Exception : " + e.getMessage() + "\n" + darDetalleException(e));
+			return -1;
+		}
+	}
+
+	/**
+	 * Método que descarga en las tablas BODEGA y ESTANTE los cambios de existencias pendientes del inventario en memoria
+	 * @return El número de cambios descargados, agrupados por sucursal y producto. 0 si no hay inventario en memoria. -1 si falla la descarga
+	 */
+	public int descargarInventario ()
+	{
+		return inventario != null ? inventario.descargar () : 0;
+	}
+
+	/**
+	 * Método que aplica, de manera transaccional y en lotes de JDBC, cambios de existencias ya agrupados por sucursal y producto
+	 * a las tablas BODEGA y ESTANTE. Cada cambio se aplica a la primera tupla que lo puede recibir completo; si ninguna puede,
+	 * una disminución se reparte entre las tuplas de la sucursal y el producto.
+	 * En la misma transacción se registra el último segmento del diario del inventario que contiene los cambios, para que una
+	 * recuperación no los vuelva a aplicar aunque sus segmentos no se hayan alcanzado a borrar
+	 * Adiciona entradas al log de la aplicación
+	 * @param cambiosBodegas - Los cambios de las bodegas, como {sucursal, producto, cambio}
+	 * @param cambiosEstantes - Los cambios de los estantes, como {sucursal, producto, cambio}
+	 * @param segmento - El número del último segmento del diario del inventario con los cambios
+	 * @return true si se confirmaron todos los cambios. false si ocurre alguna Excepción, en cuyo caso no se aplicó ninguno
+	 */
+	boolean ajustarExistencias (List<long []> cambiosBodegas, List<long []> cambiosEstantes, long segmento)
+	{
+		PersistenceManager pm = null;
+        Transaction tx = null;
+        try
+        {
+        	pm = abrirPersistenceManager ("ajustarExistencias");
+        	tx = pm.currentTransaction();
+            tx.begin();
+            long [] bodegas = sqlBodega.ajustarExistencias (pm, cambiosBodegas, tamanoLote);
+            for (int i = 0; i < bodegas.length; i++)
+            {
+            	if (bodegas [i] == 0)
+            	{
+            		long [] cambio = cambiosBodegas.get (i);
+            		reportarDescuadre ("bodegas", cambio, sqlBodega.repartirExistencias (pm, cambio [0], cambio [1], cambio [2]));
+            	}
+            }
+            long [] estantes = sqlEstante.ajustarExistencias (pm, cambiosEstantes, tamanoLote);
+            for (int i = 0; i < estantes.length; i++)
+            {
+            	if (estantes [i] == 0)
+            	{
+            		long [] cambio = cambiosEstantes.get (i);
+            		reportarDescuadre ("estantes", cambio, sqlEstante.repartirExistencias (pm, cambio [0], cambio [1], cambio [2]));
+            	}
+            }
+            sqlControl.cambiarValor (pm, CLAVE_SEGMENTO_INVENTARIO, segmento);
+            tx.commit();
+            for (long [] cambio : cambiosBodegas)
+            {
+            	monitorOcupacion.notificarCambio (cambio [0], cambio [1]);
+            }
+            for (long [] cambio : cambiosEstantes)
+            {
+            	monitorOcupacion.notificarCambio (cambio [0], cambio [1]);
+            }
+            return true;
+        }
+        catch (Exception e)
+        {
+//        	e.printStackTrace();
+        	log.error ("Exception : " + e.getMessage() + "\n" + darDetalleException(e));
+        	return false;
+        }
+        finally
+        {
+            if (tx != null && tx.isActive())
+            {
+                tx.rollback();
+            }
+            if (pm != null)
+            {
+            	pm.close();
+            }
+        }
+	}
+
+	/**
+	 * Reporta en el log la parte de un cambio de existencias que no se pudo aplicar en la base de datos, porque las tablas
+	 * cambiaron sin pasar por el inventario o porque la sucursal no tiene bodegas o estantes del producto
+	 * @param lugar - "bodegas" o "estantes"
+	 * @param cambio - El cambio, como {sucursal, producto, cambio}
+	 * @param faltante - La parte del cambio que no se aplicó
+	 */
+	private void reportarDescuadre (String lugar, long [] cambio, long faltante)
+	{
+		if (faltante != 0)
+		{
+			log.error ("Descuadre de inventario en " + lugar + ": no se pudieron aplicar " + faltante + " de " + cambio [2]
+					+ " unidades del producto " + cambio [1] + " en la sucursal " + cambio [0]);
+		}
+	}
+
+	/**
+	 * Informa al inventario en memoria y al monitor de ocupación de un cambio de existencias que ya se confirmó directamente en la base de datos
+	 * @param sucursal - El identificador de la sucursal
+	 * @param producto - El identificador del producto
+	 * @param cambioBodegas - El cambio en las existencias en bodegas
+	 * @param cambioEstantes - El cambio en las existencias en estantes
+	 */
+	private void registrarCambioInventario (long sucursal, long producto, long cambioBodegas, long cambioEstantes)
+	{
+		if (inventario != null)
+		{
+			inventario.registrarCambioConfirmado (sucursal, producto, cambioBodegas, cambioEstantes);
+		}
+		monitorOcupacion.notificarCambio (sucursal, producto);
+	}
+
+	/* ****************************************************************
+	 * 			Métodos para manejar el REORDEN
+	 *****************************************************************/
+
+	/**
+	 * @return El motor de reorden. null si no está configurado
+	 */
+	public MotorReorden darMotorReorden ()
+	{
+		return reorden;
+	}
+
+	/**
+	 * Método que genera e inserta los pedidos de los productos que bajaron de su nivel de reorden desde la última ronda del motor de reorden
+	 * @return Los pedidos generados. Vacío si no hay motor de reorden o no hay productos por pedir
+	 */
+	public List<Pedido> generarPedidosReorden ()
+	{
+		return reorden != null ? reorden.generarPedidos () : new ArrayList<Pedido> ();
+	}
+
+	/**
+	 * Informa al motor de reorden que cambiaron VENDE u OFRECEN
+	 */
+	private void invalidarCatalogoReorden ()
+	{
+		if (reorden != null)
+		{
+			reorden.invalidarCatalogo ();
+		}
+	}
+
+	/* ****************************************************************
+	 * 			Métodos para manejar la OCUPACIÓN de bodegas y estantes
+	 *****************************************************************/
+
+	/**
+	 * @return El monitor de ocupación de las bodegas y los estantes
+	 */
+	public MonitorOcupacion darMonitorOcupacion ()
+	{
+		return monitorOcupacion;
+	}
+
+	/**
+	 * Método que encuentra la ocupación de cada bodega y cada estante de una sucursal (RFC3), con el monitor de ocupación
+	 * @param sucursal - El identificador de la sucursal
+	 * @return Parejas {Bodega o Estante, existencias / capacidadVolumen}. null si ocurre alguna Excepción
+	 */
+	public List<Object []> darOcupacion (long sucursal)
+	{
+		try
+		{
+			return monitorOcupacion.darOcupacion (sucursal);
+		}
+		catch (Exception e)
+		{
+        	log.error ("Exception : " + e.getMessage() + "\n" + darDetalleException(e));
+			return null;
+		}
+	}
+
+	/**
+	 * Método que encuentra las bodegas y los estantes de una sucursal con ocupación menor a un umbral, con el monitor de ocupación
+	 * @param sucursal - El identificador de la sucursal
+	 * @param umbral - La ocupación mínima esperada, por ejemplo 0.2
+	 * @return Parejas {Bodega o Estante, existencias / capacidadVolumen}. null si ocurre alguna Excepción
+	 */
+	public List<Object []> darAlertasOcupacion (long sucursal, double umbral)
+	{
+		try
+		{
+			return monitorOcupacion.darAlertas (sucursal, umbral);
+		}
+		catch (Exception e)
+		{
+        	log.error ("Exception : " + e.getMessage() + "\n" + darDetalleException(e));
+			return null;
+		}
+	}
+
+	/**
+	 * Método que lee de la base de datos las bodegas de una sucursal, para el monitor de ocupación
+	 * @param sucursal - El identificador de la sucursal
+	 * @param producto - El identificador del producto. null para todas las bodegas de la sucursal
+	 * @return Las bodegas. null si ocurre alguna Excepción
+	 */
+	List<Bodega> leerBodegasOcupacion (long sucursal, Long producto)
+	{
+		try (PersistenceManager pm = abrirPersistenceManager ("leerBodegasOcupacion"))
+		{
+			return new ArrayList<Bodega> (producto == null ? sqlBodega.darBodegasPorSucursal (pm, sucursal)
+					: sqlBodega.darBodegasPorSucursalYProducto (pm, sucursal, producto));
+		}
+		catch (Exception e)
+		{
+        	log.error ("Exception : " + e.getMessage() + "\n" + darDetalleException(e));
+			return null;
+		}
+	}
+
+	/**
+	 * Método que lee de la base de datos los estantes de una sucursal, para el monitor de ocupación
+	 * @param sucursal - El identificador de la sucursal
+	 * @param producto - El identificador del producto. null para todos los estantes de la sucursal
+	 * @return Los estantes. null si ocurre alguna Excepción
+	 */
+	List<Estante> leerEstantesOcupacion (long sucursal, Long producto)
+	{
+		try (PersistenceManager pm = abrirPersistenceManager ("leerEstantesOcupacion"))
+		{
+			return new ArrayList<Estante> (producto == null ? sqlEstante.darEstantesPorSucursal (pm, sucursal)
+					: sqlEstante.darEstantesPorSucursalYProducto (pm, sucursal, producto));
+		}
+		catch (Exception e)
+		{
+        	log.error ("Exception : " + e.getMessage() + "\n" + darDetalleException(e));
+			return null;
+		}
+	}
+
+	/* ****************************************************************
+	 * 			Métodos para manejar la BÚSQUEDA de productos
+	 *****************************************************************/
+
+	/**
+	 * @return El índice de búsqueda de los productos
+	 */
+	public BuscadorProductos darBuscadorProductos ()
+	{
+		return buscadorProductos;
+	}
+
+	/**
+	 * Método que busca los productos cuyo nombre, marca, presentación, categoría o tipo coinciden con un texto, con el índice de búsqueda.
+	 * Cada palabra del texto puede coincidir exacta, como prefijo o con uno o dos errores de escritura
+	 * @param texto - El texto buscado
+	 * @param n - El número máximo de resultados
+	 * @return Los productos que mejor coinciden, del mejor al peor. null si ocurre alguna Excepción
+	 */
+	public List<Producto> buscarProductos (String texto, int n)
+	{
+		try
+		{
+			return buscadorProductos.buscar (texto, n);
+		}
+		catch (Exception e)
+		{
+        	log.error ("Exception : " + e.getMessage() + "\n" + darDetalleException(e));
+			return null;
+		}
+	}
+
+	/* ****************************************************************
+	 * 			Métodos para manejar el SURTIDO por sucursal y ciudad
+	 *****************************************************************/
+
+	/**
+	 * @return El índice invertido de los productos que vende cada sucursal y cada ciudad
+	 */
+	public IndiceSurtido darIndiceSurtido ()
+	{
+		return indiceSurtido;
+	}
+
+	/**
+	 * Método que encuentra los productos que vende una sucursal (RFC4), con el índice de surtido
+	 * @param sucursal - El identificador de la sucursal
+	 * @return Los identificadores de los productos. null si ocurre alguna Excepción
+	 */
+	public List<Long> darProductosPorSucursal (long sucursal)
+	{
+		try
+		{
+			return indiceSurtido.darProductosPorSucursal (sucursal);
+		}
+		catch (Exception e)
+		{
+        	log.error ("Exception : " + e.getMessage() + "\n" + darDetalleException(e));
+			return null;
+		}
+	}
+
+	/**
+	 * Método que encuentra los productos que vende alguna sucursal de una ciudad (RFC4), con el índice de surtido
+	 * @param ciudad - La ciudad
+	 * @return Los identificadores de los productos. null si ocurre alguna Excepción
+	 */
+	public List<Long> darProductosPorCiudad (String ciudad)
+	{
+		try
+		{
+			return indiceSurtido.darProductosPorCiudad (ciudad);
+		}
+		catch (Exception e)
+		{
+        	log.error ("Exception : " + e.getMessage() + "\n" + darDetalleException(e));
+			return null;
+		}
+	}
+
+	/**
+	 * Método que encuentra los productos que se venden en todas las ciudades dadas, con el índice de surtido
+	 * @param ciudades - Las ciudades, por ejemplo Bogotá y Medellín
+	 * @return Los identificadores de los productos. null si ocurre alguna Excepción
+	 */
+	public List<Long> darProductosEnTodasLasCiudades (Collection<String> ciudades)
+	{
+		try
+		{
+			return indiceSurtido.darProductosEnTodasLasCiudades (ciudades);
+		}
+		catch (Exception e)
+		{
+        	log.error ("Exception : " + e.getMessage() + "\n" + darDetalleException(e));
+			return null;
+		}
+	}
+
+	/**
+	 * Método que encuentra los productos que venden todas las sucursales dadas, con el índice de surtido
+	 * @param sucursales - Los identificadores de las sucursales
+	 * @return Los identificadores de los productos. null si ocurre alguna Excepción
+	 */
+	public List<Long> darProductosEnTodasLasSucursales (Collection<Long> sucursales)
+	{
+		try
+		{
+			return indiceSurtido.darProductosEnTodasLasSucursales (sucursales);
+		}
+		catch (Exception e)
+		{
+        	log.error ("Exception : " + e.getMessage() + "\n" + darDetalleException(e));
+			return null;
+		}
+	}
+
+	/**
+	 * Método que lee de la base de datos la ciudad de cada sucursal, para el índice de surtido
+	 * @return Parejas {identificador de la sucursal, ciudad}. null si ocurre alguna Excepción
+	 */
+	List<Object []> leerCiudadesSucursales ()
+	{
+		try (PersistenceManager pm = abrirPersistenceManager ("leerCiudadesSucursales"))
+		{
+			return sqlSucursal.darCiudadesSucursales (pm);
+		}
+		catch (Exception e)
+		{
+        	log.error ("Exception : " + e.getMessage() + "\n" + darDetalleException(e));
+			return null;
+		}
+	}
+
+	/**
+	 * Método que lee de la base de datos qué productos vende cada sucursal, para el índice de surtido
+	 * @return Parejas {identificador de la sucursal, identificador del producto}. null si ocurre alguna Excepción
+	 */
+	List<long []> leerProductosSucursales ()
+	{
+		try (PersistenceManager pm = abrirPersistenceManager ("leerProductosSucursales"))
+		{
+			return sqlVende.darProductosSucursales (pm);
+		}
+		catch (Exception e)
+		{
+        	log.error ("Exception : " + e.getMessage() + "\n" + darDetalleException(e));
+			return null;
+		}
+	}
+
+	/* ****************************************************************
+	 * 			Métodos para manejar la LECTURA de códigos de barras en caja
+	 *****************************************************************/
+
+	/**
+	 * @return El índice de los productos por código de barras
+	 */
+	public IndiceCodigosBarras darIndiceCodigosBarras ()
+	{
+		return indiceCodigosBarras;
+	}
+
+	/**
+	 * Método que resuelve un código de barras leído en la caja de una sucursal, con el índice de códigos de barras y sin ir a la base de datos
+	 * @param codigoBarras - El código de barras leído
+	 * @param sucursal - El identificador de la sucursal de la caja
+	 * @return {Producto, precio unitario, precio por unidad de medida} del producto en la sucursal, con los precios en null si la sucursal
+	 * no vende el producto. null si ningún producto tiene el código de barras o si ocurre alguna Excepción
+	 */
+	public Object [] darProductoPorCodigoBarras (String codigoBarras, long sucursal)
+	{
+		try
+		{
+			return indiceCodigosBarras.darProductoYPrecio (codigoBarras, sucursal);
+		}
+		catch (Exception e)
+		{
+        	log.error ("Exception : " + e.getMessage() + "\n" + darDetalleException(e));
+			return null;
+		}
+	}
+
+	/* ****************************************************************
+	 * 			Métodos para manejar los PRECIOS por sucursal
+	 *****************************************************************/
+
+	/**
+	 * @return La tabla del precio de cada producto en cada sucursal
+	 */
+	public TablaPrecios darTablaPrecios ()
+	{
+		return tablaPrecios;
+	}
+
+	/**
+	 * Método que consulta el precio unitario de un producto en una sucursal, con la tabla de precios
+	 * @param sucursal - El identificador de la sucursal
+	 * @param producto - El identificador del producto
+	 * @return El precio unitario. -1 si la sucursal no vende el producto
+	 */
+	public double darPrecioUnitario (long sucursal, long producto)
+	{
+		return tablaPrecios.darPrecioUnitario (sucursal, producto);
+	}
+
+	/**
+	 * Método que cotiza una canasta con los precios unitarios de una sucursal, con la tabla de precios y sin crear objetos por línea
+	 * @param sucursal - El identificador de la sucursal
+	 * @param productos - Los identificadores de los productos de la canasta
+	 * @param cantidades - La cantidad de cada producto, en el mismo orden
+	 * @param costos - Arreglo del mismo tamaño donde queda el costo de cada línea. Puede ser null
+	 * @return El costo total de la canasta. -1 si la sucursal no vende alguno de los productos
+	 */
+	public double cotizarCanasta (long sucursal, long [] productos, int [] cantidades, double [] costos)
+	{
+		return tablaPrecios.cotizar (sucursal, productos, cantidades, costos);
+	}
+
+	/**
+	 * Método que vuelve a leer de la base de datos todos los precios de la tabla de precios, por ejemplo después de cambiarlos por fuera
+	 * de la aplicación
+	 * @return true si se pudieron leer
+	 */
+	public boolean recargarPrecios ()
+	{
+		return tablaPrecios.cargar (this::leerPreciosVende);
+	}
+
+	/**
+	 * Método que lee de la base de datos el precio de cada producto en cada sucursal, para la tabla de precios
+	 * @return Los objetos Vende, uno por pareja {sucursal, producto}. null si ocurre alguna Excepción
+	 */
+	List<Vende> leerPreciosVende ()
+	{
+		try (PersistenceManager pm = abrirPersistenceManager ("leerPreciosVende"))
+		{
+			return sqlVende.darPrecios (pm);
+		}
+		catch (Exception e)
+		{
+        	log.error ("Exception : " + e.getMessage() + "\n" + darDetalleException(e));
+			return null;
+		}
+	}
+
+	/* ****************************************************************
+	 * 			Métodos para manejar la relación VENDE
+	 *****************************************************************/
+	
+	/**
+	 * Método que inserta, de manera transaccional y en lotes de JDBC, varias tuplas en la tabla VENDE
+	 * Adiciona entradas al log de la aplicación
+	 * @param vendes - Los objetos Vende a insertar
+	 * @return El número de tuplas insertadas por cada elemento, en el mismo orden de la lista. null si ocurre alguna Excepción
+	 */
+	public long [] adicionarVende (List<Vende> vendes)
+	{
+		PersistenceManager pm = null;
+        Transaction tx = null;
+        try
+        {
+        	pm = abrirPersistenceManager ("adicionarVendeLote");
+        	tx = pm.currentTransaction();
+            tx.begin();
+            long [] resp = sqlVende.adicionarVende (pm, vendes, tamanoLote);
+            tx.commit();
+            invalidarCatalogoReorden ();
+            List<long []> parejas = new ArrayList<long []> (vendes.size ());
+            for (Vende vende : vendes)
+            {
+            	parejas.add (new long [] {vende.getSucursal (), vende.getProducto ()});
+            }
+            indiceSurtido.agregarVendes (parejas);
+            tablaPrecios.agregar (vendes);
+            
+            log.trace ("Inserción en lote de tuplas vende: " + vendes.size () + " tuplas insertadas");
+            
+            return resp;
+        }
+        catch (Exception e)
+        {
+//        	e.printStackTrace();
+        	log.error ("Exception : " + e.getMessage() + "\n" + darDetalleException(e));
+        	return null;
+        }
+        finally
+        {
+            if (tx != null && tx.isActive())
+            {
+                tx.rollback();
+            }
+            if (pm != null)
+            {
+            	pm.close();
+            }
+        }
+	}
+
+	/**
+	 * Método que consulta el nivel de reorden de un producto en una sucursal
+	 * @param sucursal - El identificador de la sucursal
+	 * @param producto - El identificador del producto
+	 * @return El nivel de reorden. 0 si la sucursal no vende el producto. -1 si ocurre alguna Excepción
+	 */
+	int darNivelReorden (long sucursal, long producto)
+	{
+		try (PersistenceManager pm = abrirPersistenceManager ("darNivelReorden"))
+		{
+			return sqlVende.darNivelReorden (pm, sucursal, producto);
+		}
+		catch (Exception e)
+		{
+        	log.error ("Exception : " + e.getMessage() + "\n" + darDetalleException(e));
+			return -1;
+		}
+	}
+	
+	/* ****************************************************************
+	 * 			Métodos para manejar los PROVEEDORES
+	 *****************************************************************/
+	
+	/**
+	 * Método que inserta, de manera transaccional, una tupla en la tabla PROVEEDOR
+	 * Adiciona entradas al log de la aplicación
+	 * @param nombre - El nombre del proveedor
+	 * @param calificacion - La calificacion que tiene el proveedor
+	 * @return El objeto Proveedor adicionado. null si ocurre alguna Excepción
+	 */
+	public Proveedor adicionarProveedor(String nombre, int calificacion)
+	{
+		PersistenceManager pm = null;
+        Transaction tx = null;
+        try
+        {
+        	pm = abrirPersistenceManager ("adicionarProveedor");
+        	tx = pm.currentTransaction();
+            tx.begin();
+            long idProveedor = nextval (darTablaProveedor ());
+            long tuplasInsertadas = sqlProveedor.adicionarProveedor(pm, idProveedor, nombre, calificacion);
+            tx.commit();
+            cacheProveedores.invalidarTodo ();
+            
+            log.trace ("Inserción del proveedor: " + idProveedor + ": " + tuplasInsertadas + " tuplas insertadas");
+            
+            return new Proveedor(idProveedor, nombre, calificacion);
+        }
+        catch (Exception e)
+        {
+//        	e.printStackTrace();
+        	log.error ("Exception : " + e.getMessage() + "\n" + darDetalleException(e));
+        	return null;
+        }
+        finally
+        {
+            if (tx != null && tx.isActive())
+            {
+                tx.rollback();
+            }
+            if (pm != null)
+            {
+            	pm.close();
+            }
+        }
+	}
+	
+	/**
+	 * Método que elimina, de manera transaccional, una tupla en la tabla Proveedor, dado el nombre del proveedor
+	 * Adiciona entradas al log de la aplicación
+	 * @param nombre - El nombre del proveedor
+	 * @return El número de tuplas eliminadas. -1 si ocurre alguna Excepción
+	 */
+	public long eliminarProoveedorPorNombre (String nombre) 
+	{
+		PersistenceManager pm = null;
+        Transaction tx = null;
+        try
+        {
+        	pm = abrirPersistenceManager ("eliminarProoveedorPorNombre");
+        	tx = pm.currentTransaction();
+            tx.begin();
+            long resp = sqlProveedor.eliminarProveedorPorNombre(pm, nombre);
+            tx.commit();
+            cacheProveedores.invalidarTodo ();
+            return resp;
+        }
+        catch (Exception e)
+        {
+//        	e.printStackTrace();
+        	log.error ("Exception : " + e.getMessage() + "\n" + darDetalleException(e));
+            return -1;
+        }
+        finally
+        {
+            if (tx != null && tx.isActive())
+            {
+                tx.rollback();
+            }
+            if (pm != null)
+            {
+            	pm.close();
+            }
+        }
+	}
+	
+	/**
+	 * Método que elimina, de manera transaccional, una tupla en la tabla Proveedor, dado el identificador del proveedor
+	 * Adiciona entradas al log de la aplicación
+	 * @param idProveedor - El identificador del proveedor
+	 * @return El número de tuplas eliminadas. -1 si ocurre alguna Excepción
+	 */
+	public long eliminarProveedorPorId (long idProveedor) 
+	{
+		PersistenceManager pm = null;
+        Transaction tx = null;
+        try
+        {
+        	pm = abrirPersistenceManager ("eliminarProveedorPorId");
+        	tx = pm.currentTransaction();
+            tx.begin();
+            long resp = sqlProveedor.eliminarProveedorPorId(pm, idProveedor);
+            tx.commit();
+            cacheProveedores.invalidarTodo ();
+            return resp;
+        }
+        catch (Exception e)
+        {
+//        	e.printStackTrace();
+        	log.error ("Exception : " + e.getMessage() + "\n" + darDetalleException(e));
+            return -1;
+        }
+        finally
+        {
+            if (tx != null && tx.isActive())
+            {
+                tx.rollback();
+            }
+            if (pm != null)
+            {
+            	pm.close();
+            }
+        }
+	}
+	
+	/**
+	 * Método que consulta todas las tuplas en la tabla Proveedor que tienen un nombre dado
+	 * @param nombre - El nombre del proveedor
+	 * @return La lista de objetos Proveedor, construidos con base en las tuplas de la tabla PROVEEDOR
+	 */
+	public List<Proveedor> darProveedoresPorNombre(String nombre)
+	{
+		return cacheProveedores.dar ("nombre:" + nombre, llave -> {
+			try (PersistenceManager pm = abrirPersistenceManager ("darProveedoresPorNombre"))
+			{
+				return Collections.unmodifiableList (new ArrayList<Proveedor> (sqlProveedor.darProveedorPorNombre(pm, nombre)));
+			}
+		});
+	}
+	
+	/**
+	 * Método que consulta todas las tuplas en la tabla Proveedor
+	 * @return La lista de objetos Proveedor, construidos con base en las tuplas de la tabla PROVEEDOR
+	 */
+	public List<Proveedor> darProveedores()
+	{
+		return cacheProveedores.dar ("*", llave -> {
+			try (PersistenceManager pm = abrirPersistenceManager ("darProveedores"))
+			{
+				return Collections.unmodifiableList (new ArrayList<Proveedor> (sqlProveedor.darProveedores(pm)));
+			}
+		});
+	}	
+	
+	/**
+	 * Método que inserta, de manera transaccional y en lotes de JDBC, varias tuplas en la tabla PROVEEDOR
+	 * A cada elemento se le asigna un nuevo identificador antes de insertarlo
+	 * Adiciona entradas al log de la aplicación
+	 * @param proveedores - Los objetos Proveedor a insertar
+	 * @return El número de tuplas insertadas por cada elemento, en el mismo orden de la lista. null si ocurre alguna Excepción
+	 */
+	public long [] adicionarProveedor (List<Proveedor> proveedores)
+	{
+		PersistenceManager pm = null;
+        Transaction tx = null;
+        try
+        {
+        	pm = abrirPersistenceManager ("adicionarProveedorLote");
+        	tx = pm.currentTransaction();
+            tx.begin();
+            for (Proveedor proveedor : proveedores)
+            {
+            	proveedor.setNit (nextval (darTablaProveedor ()));
+            }
+            long [] resp = sqlProveedor.adicionarProveedor (pm, proveedores, tamanoLote);
+            tx.commit();
+            cacheProveedores.invalidarTodo ();
+            
+            log.trace ("Inserción en lote de proveedores: " + proveedores.size () + " tuplas insertadas");
+            
+            return resp;
+        }
+        catch (Exception e)
+        {
+//        	e.printStackTrace();
+        	log.error ("Exception : " + e.getMessage() + "\n" + darDetalleException(e));
+        	return null;
+        }
+        finally
+        {
+            if (tx != null && tx.isActive())
+            {
+                tx.rollback();
+            }
+            if (pm != null)
+            {
+            	pm.close();
+            }
+        }
+	}
+	
+	/* ****************************************************************
+	 * 			Métodos para manejar los PEDIDOS
+	 *****************************************************************/
+	
+	/**
+	 * Método que inserta, de manera transaccional, una tupla en la tabla PEDIDO
+	 * Adiciona entradas al log de la aplicación
+	 * @param proveedor - El proveedor del pedido
+	 * @param sucursal - La sucursal que hace el pedido
+	 * @param fechaEntrega - La fecha de entrega del pedido
+	 * @param estadoOrden - El estado de orden del pedido
+	 * @param cantidad - El numero de unidades solicitadas
+	 * @param calificacion - La calificacion del pedido
+	 * @param costoTotal - El costo total del pedido
+	 * @return El objeto Pedido adicionado. null si ocurre alguna Excepción
+	 */
+	public Pedido adicionarPedido(long proveedor, long sucursal, Timestamp fechaEntrega, String estadoOrden, int cantidad, int calificacion, double costoTotal, long producto, int cantidadSub, double costo)
+	{
+		PersistenceManager pm = null;
+        Transaction tx = null;
+        try
+        {
+        	pm = abrirPersistenceManager ("adicionarPedido");
+        	tx = pm.currentTransaction();
+            //adicionar subpedido
+        	tx.begin();
+            long idPedido = nextval (darTablaPedido ());
+            long tuplasInsertadas = sqlSubPedido.adicionarSubPedido(pm, idPedido, producto, cantidadSub, costo);
+            tx.commit();
+            
+            log.trace ("Inserción del subpedido: " + idPedido + ": " + tuplasInsertadas + " tuplas insertadas");
+        	
+        	tx.begin();
+            long tuplasInsertadas2 = sqlPedido.adicionarPedido(pm, idPedido, proveedor, sucursal, fechaEntrega, estadoOrden, cantidad, calificacion, costoTotal);
+            tx.commit();
+            
+            log.trace ("Inserción del pedido: " + idPedido + ": " + tuplasInsertadas2 + " tuplas insertadas");
+            
+            return new Pedido(idPedido, proveedor, sucursal, fechaEntrega, estadoOrden, cantidad, calificacion, costoTotal);
+        }
+        catch (Exception e)
+        {
+//        	e.printStackTrace();
+        	log.error ("Exception : " + e.getMessage() + "\n" + darDetalleException(e));
+        	return null;
+        }
+        finally
+        {
+            if (tx != null && tx.isActive())
+            {
+                tx.rollback();
+            }
+            if (pm != null)
+            {
+            	pm.close();
+            }
+        }
+	}
+	
+	/**
+	 * Método que elimina, de manera transaccional, una tupla en la tabla Pedido, dado el identificador del pedido
+	 * Adiciona entradas al log de la aplicación
+	 * @param idPedido - El identificador del pedido
+	 * @return El número de tuplas eliminadas. -1 si ocurre alguna Excepción
+	 */
+	public long eliminarPedidoPorId (long idPedido) 
+	{
+		PersistenceManager pm = null;
+        Transaction tx = null;
+        try
+        {
+        	pm = abrirPersistenceManager ("eliminarPedidoPorId");
+        	tx = pm.currentTransaction();
+            tx.begin();
+            long resp = sqlPedido.eliminarPedidoPorId(pm, idPedido);
+            tx.commit();
+            return resp;
+        }
+        catch (Exception e)
+        {
+//        	e.printStackTrace();
+        	log.error ("Exception : " + e.getMessage() + "\n" + darDetalleException(e));
+            return -1;
+        }
+        finally
+        {
+            if (tx != null && tx.isActive())
+            {
+                tx.rollback();
+            }
+            if (pm != null)
+            {
+            	pm.close();
+            }
+        }
+	}
+	
+	/**
+	 * Método que consulta todas las tuplas en la tabla Pedido con un identificador dado
+	 * @param idPedido - El identificador del Pedido
+	 * @return El objeto Pedido, construido con base en las tuplas de la tabla PEDIDO con el identificador dado
+	 */
+	public Pedido darPedidoPorId(long idPedido)
+	{
+		try (PersistenceManager pm = abrirPersistenceManager ("darPedidoPorId"))
+		{
+			return sqlPedido.darPedidoPorId(pm, idPedido);
+		}
+	}
+	
+	/**
+	 * Método que consulta todas las tuplas en la tabla Pedido que tienen un identificador dado
+	 * @param idPedido - El identificador del pedido
+	 * @return La lista de objetos Pedido, construidos con base en las tuplas de la tabla PEDIDO
+	 */
+	public List<Pedido> darPedidosPorId(long idPedido)
+	{
+		try (PersistenceManager pm = abrirPersistenceManager ("darPedidosPorId"))
+		{
+			return new ArrayList<Pedido> (sqlPedido.darPedidosPorId(pm, idPedido));
+		}
+	}
+	
+	/**
+	 * Método que consulta todas las tuplas en la tabla Pedido que tienen una sucursal dada
+	 * @param idSucursal - El identificador de la sucursal que hace el pedido
+	 * @return La lista de objetos Pedido, construidos con base en las tuplas de la tabla PEDIDO
+	 */
+	public List<Pedido> darPedidosPorSucursal(long idSucursal)
+	{
+		try (PersistenceManager pm = abrirPersistenceManager ("darPedidosPorSucursal"))
+		{
+			return new ArrayList<Pedido> (sqlPedido.darPedidosPorSucursal(pm, idSucursal));
+		}
+	}
+	
+	/**
+	 * Método que consulta todas las tuplas en la tabla Pedido que tienen un proveedor dado
+	 * @param idProveedor - El identificador del proveedor que hace el pedido
+	 * @return La lista de objetos Pedido, construidos con base en las tuplas de la tabla PEDIDO
+	 */
+	public List<Pedido> darPedidosPorProveedor(long idProveedor)
+	{
+		try (PersistenceManager pm = abrirPersistenceManager ("darPedidosPorProveedor"))
+		{
+			return new ArrayList<Pedido> (sqlPedido.darPedidosPorProveedor(pm, idProveedor));
+		}
+	}
+	
+	/**
+	 * Método que consulta todas las tuplas en la tabla Pedido que tienen una sucursal dada y un proveedor dado
+	 * @param idSucursal - El identificador de la sucursal que hace el pedido
+	 * @param idProveedor - El identificador del proveedor que hace el pedido
+	 * @return La lista de objetos Pedido, construidos con base en las tuplas de la tabla PEDIDO
+	 */
+	public List<Pedido> darPedidosPorProveedorYSucursal(long idProveedor, long idSucursal)
+	{
+		try (PersistenceManager pm = abrirPersistenceManager ("darPedidosPorProveedorYSucursal"))
+		{
+			return new ArrayList<Pedido> (sqlPedido.darPedidosPorProveedorYSucursal(pm, idProveedor, idSucursal));
+		}
+	}
+	
+	/**
+	 * Método que cambia el estado de orden de un pedido (entregado o pendiente) dependiendo de si el pedido se emitió o si ya fue entregado.
+	 * @param idPedido - el identificador del pedido
+	 * @param estadoOrden - El estado de orden del pedido (pendiente, entregado)
+	 * @return El número de tuplas modificadas
+	 */
+	public long cambiarEstadoOrdenPedido(long idPedido, String estadoOrden)
+	{
+		try (PersistenceManager pm = abrirPersistenceManager ("cambiarEstadoOrdenPedido"))
+		{
+			return sqlPedido.cambiarEstadoOrdenPedido(pm, idPedido, estadoOrden);
+		}
+	}
+	
+	/**
+	 * Método que consulta todas las tuplas en la tabla Pedido que tienen una calificacion dada
+	 * @param calificacion - La calificacion del pedido
+	 * @return La lista de objetos Pedido, construidos con base en las tuplas de la tabla PEDIDO
+	 */
+	public List<Pedido> darPedidosPorCalificacion(int calificacion)
+	{
+		try (PersistenceManager pm = abrirPersistenceManager ("darPedidosPorCalificacion"))
+		{
+			return new ArrayList<Pedido> (sqlPedido.darPedidosPorCalificacion(pm, calificacion));
+		}
+	}
+	
+	/**
+	 * Método que cambia la calificacion de un pedido dado
+	 * @param idPedido - El estado de orden del pedido (pendiente, entregado)
+	 * @param calificacion - La calificacion a cambiar del pedido
+	 * @return El número de tuplas modificadas
+	 */
+	public long cambiarCalificacionPedido(long idPedido, int calificacion)
+	{
+		try (PersistenceManager pm = abrirPersistenceManager ("cambiarCalificacionPedido"))
+		{
+			return sqlPedido.cambiarCalificacionPedido(pm, idPedido, calificacion);
+		}
+	}
+	
+	/**
+	 * Método que consulta todas las tuplas en la tabla Pedido que tienen una fecha de entrega dada dada
+	 * @param fechaEntrega- La fecha de entrega del pedido
+	 * @return La lista de objetos Pedido, construidos con base en las tuplas de la tabla PEDIDO
+	 */
+	public List<Pedido> darPedidosPorFechaEntrega(Timestamp fechaEntrega)
+	{
+		try (PersistenceManager pm = abrirPersistenceManager ("darPedidosPorFechaEntrega"))
+		{
+			return new ArrayList<Pedido> (sqlPedido.darPedidosPorFechaEntrega(pm, fechaEntrega));
+		}
+	}
+	
+	/**
+	 * Método que elimina, de manera transaccional, una tupla en la tabla Pedido, la cual su estado de orden es 'Entregado'
+	 * Adiciona entradas al log de la aplicación
+	 * @param estadoOrden - El estado de orden del pedido
+	 * @return El número de tuplas eliminadas. -1 si ocurre alguna Excepción
+	 */
+	public long eliminarPedidosTerminados (String estadoOrden) 
+	{
+		PersistenceManager pm = null;
+        Transaction tx = null;
+        try
+        {
+        	pm = abrirPersistenceManager ("eliminarPedidosTerminados");
+        	tx = pm.currentTransaction();
+            estadoOrden = "Entregado";
+        	tx.begin();
+            long resp = sqlPedido.eliminarPedidosTerminados(pm, estadoOrden);
+            tx.commit();
+            return resp;
+        }
+        catch (Exception e)
+        {
+//        	e.printStackTrace();
+        	log.error ("Exception : " + e.getMessage() + "\n" + darDetalleException(e));
+            return -1;
+        }
+        finally
+        {
+            if (tx != null && tx.isActive())
+            {
+                tx.rollback();
+            }
+            if (pm != null)
+            {
+            	pm.close();
+            }
+        }
+	}
+	
+	/**
+	 * Método que consulta todas las tuplas en la tabla Pedido
+	 * @return La lista de objetos Pedido, construidos con base en las tuplas de la tabla PEDIDO
+	 */
+	public List<Pedido> darPedidos()
+	{
+		try (PersistenceManager pm = abrirPersistenceManager ("darPedidos"))
+		{
+			return new ArrayList<Pedido> (sqlPedido.darPedidos(pm));
+		}
+	}
+	
+	/**
+	 * Método que consulta una página de las tuplas en la tabla PEDIDO, en orden de identificador
+	 * @param despuesDeId - El identificador del último pedido de la página anterior. 0 para la primera página
+	 * @param limite - El número máximo de tuplas de la página
+	 * @return La lista de objetos Pedido de la página, con a lo sumo limite elementos
+	 */
+	public List<Pedido> darPedidosPagina (long despuesDeId, int limite)
+	{
+		try (PersistenceManager pm = abrirPersistenceManager ("darPedidosPagina"))
+		{
+			return new ArrayList<Pedido> (sqlPedido.darPedidosPagina (pm, despuesDeId, limite));
+		}
+	}
+	
+	/**
+	 * Método que recorre todas las tuplas en la tabla PEDIDO, en orden de identificador, por páginas de tamanoFetch tuplas.
+	 * Sólo mantiene una página en memoria, sin importar el tamaño de la tabla
+	 * @return Un Stream secuencial de objetos Pedido
+	 */
+	public Stream<Pedido> recorrerPedidos ()
+	{
+		return new IteradorPaginas<Pedido> (ultimo -> darPedidosPagina (ultimo == null ? 0 : ultimo.getId (), tamanoFetch), tamanoFetch).comoStream ();
+	}
+	
+	/**
+	 * Método que inserta, de manera transaccional y en lotes de JDBC, varias tuplas en la tabla PEDIDO
+	 * A cada elemento se le asigna un nuevo identificador antes de insertarlo
+	 * Los subpedidos de cada pedido se insertan aparte, con el identificador asignado
+	 * Adiciona entradas al log de la aplicación
+	 * @param pedidos - Los objetos Pedido a insertar
+	 * @return El número de tuplas insertadas por cada elemento, en el mismo orden de la lista. null si ocurre alguna Excepción
+	 */
+	public long [] adicionarPedido (List<Pedido> pedidos)
+	{
+		PersistenceManager pm = null;
+        Transaction tx = null;
+        try
+        {
+        	pm = abrirPersistenceManager ("adicionarPedidoLote");
+        	tx = pm.currentTransaction();
+            tx.begin();
+            for (Pedido pedido : pedidos)
+            {
+            	pedido.setId (nextval (darTablaPedido ()));
+            }
+            long [] resp = sqlPedido.adicionarPedido (pm, pedidos, tamanoLote);
+            tx.commit();
+            
+            log.trace ("Inserción en lote de pedidos: " + pedidos.size () + " tuplas insertadas");
+            
+            return resp;
+        }
+        catch (Exception e)
+        {
+//        	e.printStackTrace();
+        	log.error ("Exception : " + e.getMessage() + "\n" + darDetalleException(e));
+        	return null;
+        }
+        finally
+        {
+            if (tx != null && tx.isActive())
+            {
+                tx.rollback();
+            }
+            if (pm != null)
+            {
+            	pm.close();
+            }
+        }
+	}
+
+	/**
+	 * Método que inserta, en una sola transacción y en lotes de JDBC, varios pedidos con sus subpedidos
+	 * A cada pedido se le asigna un nuevo identificador, que se asigna también a sus subpedidos
+	 * Adiciona entradas al log de la aplicación
+	 * @param pedidos - Los objetos Pedido a insertar, cada uno con sus subpedidos
+	 * @return Los pedidos insertados, en el orden del mapa. null si ocurre alguna Excepción, en cuyo caso no se inserta ninguno
+	 */
+	public List<Pedido> registrarPedidos (Map<Pedido, List<Subpedido>> pedidos)
+	{
+		PersistenceManager pm = null;
+        Transaction tx = null;
+        try
+        {
+        	pm = abrirPersistenceManager ("registrarPedidos");
+        	tx = pm.currentTransaction();
+            tx.begin();
+            List<Pedido> resp = new ArrayList<Pedido> (pedidos.keySet ());
+            List<Subpedido> subpedidos = new ArrayList<Subpedido> ();
+            for (Pedido pedido : resp)
+            {
+            	pedido.setId (nextval (darTablaPedido ()));
+            	for (Subpedido subpedido : pedidos.get (pedido))
+            	{
+            		subpedido.setPedido (pedido.getId ());
+            		subpedidos.add (subpedido);
+            	}
+            }
+            sqlPedido.adicionarPedido (pm, resp, tamanoLote);
+            sqlSubPedido.adicionarSubPedido (pm, subpedidos, tamanoLote);
+            tx.commit();
+            
+            log.trace ("Registro de pedidos: " + resp.size () + " pedidos, " + subpedidos.size () + " subpedidos");
+            
+            return resp;
+        }
+        catch (Exception e)
+        {
+//        	e.printStackTrace();
+        	log.error ("Exception : " + e.getMessage() + "\n" + darDetalleException(e));
+        	return null;
+        }
+        finally
+        {
+            if (tx != null && tx.isActive())
+            {
+                tx.rollback();
+            }
+            if (pm != null)
+            {
+            	pm.close();
+            }
+        }
+	}
+
+	/**
+	 * Método que recibe, de manera transaccional, un pedido pendiente: lo marca como entregado con su calificación y suma
+	 * a las bodegas de la sucursal las unidades de sus subpedidos
+	 * Adiciona entradas al log de la aplicación
+	 * @param idPedido - El identificador del pedido
+	 * @param calificacion - La calificación del servicio del proveedor
+	 * @return El número de pedidos recibidos. 0 si el pedido no existe o ya se había entregado. -1 si ocurre alguna Excepción
+	 */
+	public long recibirPedido (long idPedido, int calificacion)
+	{
+		return recibirPedidos (Collections.singletonList (idPedido), calificacion);
+	}
+
+	/**
+	 * Método que recibe, en una sola transacción, varios pedidos pendientes, por ejemplo los que llegan en un mismo camión.
+	 * Los estados se cambian en un lote de JDBC, los subpedidos de todos los pedidos se leen una vez ya sumados por sucursal y producto,
+	 * y cada suma se aplica a la primera bodega de la sucursal y el producto en otro lote de JDBC
+	 * Si alguna sucursal no tiene bodegas de alguno de los productos, no se recibe ningún pedido
+	 * Adiciona entradas al log de la aplicación
+	 * @param idsPedidos - Los identificadores de los pedidos
+	 * @param calificacion - La calificación del servicio del proveedor
+	 * @return El número de pedidos recibidos, sin contar los que no existen o ya se habían entregado. -1 si ocurre alguna Excepción
+	 */
+	public long recibirPedidos (List<Long> idsPedidos, int calificacion)
+	{
+		PersistenceManager pm = null;
+        Transaction tx = null;
+        try
+        {
+        	pm = abrirPersistenceManager ("recibirPedidos");
+        	tx = pm.currentTransaction();
+            tx.begin();
+            long [] actualizados = sqlPedido.recibirPedidos (pm, idsPedidos, calificacion, tamanoLote);
+            List<Long> recibidos = new ArrayList<Long> ();
+            for (int i = 0; i < actualizados.length; i++)
+            {
+            	if (actualizados [i] > 0)
+            	{
+            		recibidos.add (idsPedidos.get (i));
+            	}
+            }
+            List<long []> cantidades = recibidos.isEmpty () ? new ArrayList<long []> () : sqlSubPedido.darCantidadesPedidas (pm, recibidos);
+            long [] bodegas = sqlBodega.ajustarExistencias (pm, cantidades, tamanoLote);
+            for (int i = 0; i < bodegas.length; i++)
+            {
+            	if (bodegas [i] == 0)
+            	{
+            		throw new IllegalStateException ("La sucursal " + cantidades.get (i) [0] + " no tiene bodegas del producto " + cantidades.get (i) [1]
+            				+ " para recibir los pedidos");
+            	}
+            }
+            tx.commit();
+
+            Map<Long, List<Long>> productosPorSucursal = new HashMap<Long, List<Long>> ();
+            for (long [] cantidad : cantidades)
+            {
+            	registrarCambioInventario (cantidad [0], cantidad [1], cantidad [2], 0);
+            	productosPorSucursal.computeIfAbsent (cantidad [0], k -> new ArrayList<Long> ()).add (cantidad [1]);
+            }
+            if (reorden != null)
+            {
+            	productosPorSucursal.forEach (reorden::notificarRecepcion);
+            }
+            
+            log.trace ("Recepción de pedidos: " + recibidos.size () + " de " + idsPedidos.size () + " pedidos recibidos, "
+            		+ cantidades.size () + " bodegas actualizadas");
+            
+            return recibidos.size ();
+        }
+        catch (Exception e)
+        {
+//        	e.printStackTrace();
+        	log.error ("Exception : " + e.getMessage() + "\n" + darDetalleException(e));
+        	return -1;
+        }
+        finally
+        {
+            if (tx != null && tx.isActive())
+            {
+                tx.rollback();
+            }
+            if (pm != null)
+            {
+            	pm.close();
+            }
+        }
+	}
+
+	/**
+	 * Método que consulta los productos que tienen pedidos pendientes en cada sucursal
+	 * @return Una lista de parejas {idSucursal, idProducto}. null si ocurre alguna Excepción
+	 */
+	List<Object []> darProductosEnPedidosPendientes ()
+	{
+		try (PersistenceManager pm = abrirPersistenceManager ("darProductosEnPedidosPendientes"))
+		{
+			return sqlPedido.darProductosEnPedidosPendientes (pm);
+		}
+		catch (Exception e)
+		{
+        	log.error ("Exception : " + e.getMessage() + "\n" + darDetalleException(e));
+			return null;
+		}
+	}
+	
+	/* ****************************************************************
+	 * 			Métodos para manejar los SUBPEDIDOS
+	 *****************************************************************/
+	
+	/**
+	 * Método que inserta, de manera transaccional, una tupla en la tabla SUBPEDIDO
+	 * Adiciona entradas al log de la aplicación
+	 * @param producto - El producto del subpedido
+	 * @param cantidad - La cantidad de unidades pedidas por producto
+	 * @param costo - El costo del subpedido
+	 * @return El objeto Subpedido adicionado. null si ocurre alguna Excepción
+	 */
+	public Subpedido adicionarSubPedido(long producto, int cantidad, double costo)
+	{
+		PersistenceManager pm = null;
+        Transaction tx = null;
+        try
+        {
+        	pm = abrirPersistenceManager ("adicionarSubPedido");
+        	tx = pm.currentTransaction();
+            //adicionar subpedido
+        	
+        	tx.begin();
+            long idPedido = nextval (darTablaPedido ());
+            long tuplasInsertadas = sqlSubPedido.adicionarSubPedido(pm, idPedido, producto, cantidad, costo);
+            tx.commit();
+            
+            log.trace ("Inserción del pedido: " + idPedido + ": " + tuplasInsertadas + " tuplas insertadas");
+            
+            return new Subpedido(producto, idPedido, cantidad, costo);
+        }
+        catch (Exception e)
+        {
+//        	e.printStackTrace();
+        	log.error ("Exception : " + e.getMessage() + "\n" + darDetalleException(e));
+        	return null;
+        }
+        finally
+        {
+            if (tx != null && tx.isActive())
+            {
+                tx.rollback();
+            }
+            if (pm != null)
+            {
+            	pm.close();
+            }
+        }
+	}
+	
+	/**
+	 * Método que elimina, de manera transaccional, una tupla en la tabla Subpedido, dado el identificador del pedido
+	 * Adiciona entradas al log de la aplicación
+	 * @param idPedido - El identificador del pedido
+	 * @return El número de tuplas eliminadas. -1 si ocurre alguna Excepción
+	 */
+	public long eliminarSubPedidoPorId (long idPedido) 
+	{
+		PersistenceManager pm = null;
+        Transaction tx = null;
+        try
+        {
+        	pm = abrirPersistenceManager ("eliminarSubPedidoPorId");
+        	tx = pm.currentTransaction();
+            tx.begin();
+            long resp = sqlSubPedido.eliminarSubPedidoPorId(pm, idPedido);
+            tx.commit();
+            return resp;
+        }
+        catch (Exception e)
+        {
+//        	e.printStackTrace();
+        	log.error ("Exception : " + e.getMessage() + "\n" + darDetalleException(e));
+            return -1;
+        }
+        finally
+        {
+            if (tx != null && tx.isActive())
+            {
+                tx.rollback();
+            }
+            if (pm != null)
+            {
+            	pm.close();
+            }
+        }
+	}
+	
+	/**
+	 * Método que consulta todas las tuplas en la tabla Subpedido con un identificador dado
+	 * @param idPedido - El identificador del Pedido
+	 * @return El objeto Subpedido, construido con base en las tuplas de la tabla SUBPEDIDO con el identificador dado
+	 */
+	public Subpedido darSubPedidoPorId(long idPedido)
+	{
+		try (PersistenceManager pm = abrirPersistenceManager ("darSubPedidoPorId"))
+		{
+			return sqlSubPedido.darSubPedidoPorId(pm, idPedido);
+		}
+	}
+	
+	/**
+	 * Método que consulta todas las tuplas en la tabla Subpedido que tienen un producto dado
+	 * @param producto - El identificador del producto pedido
+	 * @return La lista de objetos Subpedido, construidos con base en las tuplas de la tabla SUBPEDIDO
+	 */
+	public List<Subpedido> darSubPedidosPorProducto(long producto)
+	{
+		try (PersistenceManager pm = abrirPersistenceManager ("darSubPedidosPorProducto"))
+		{
+			return new ArrayList<Subpedido> (sqlSubPedido.darSubPedidosPorProducto(pm, producto));
+		}
+	}
+	
+	/**
+	 * Método que consulta todas las tuplas en la tabla Subpedido
+	 * @return La lista de objetos Subpedido, construidos con base en las tuplas de la tabla `SUBPEDIDO
+	 */
+	public List<Subpedido> darSubPedidos()
+	{
+		try (PersistenceManager pm = abrirPersistenceManager ("darSubPedidos"))
+		{
+			return new ArrayList<Subpedido> (sqlSubPedido.darSubPedidos(pm));
+		}
+	}
+	
+	/**
+	 * Método que inserta, de manera transaccional y en lotes de JDBC, varias tuplas en la tabla SUBPEDIDO
+	 * Los pedidos a los que pertenecen los subpedidos deben existir
+	 * Adiciona entradas al log de la aplicación
+	 * @param subpedidos - Los objetos Subpedido a insertar
+	 * @return El número de tuplas insertadas por cada elemento, en el mismo orden de la lista. null si ocurre alguna Excepción
+	 */
+	public long [] adicionarSubPedido (List<Subpedido> subpedidos)
+	{
+		PersistenceManager pm = null;
+        Transaction tx = null;
+        try
+        {
+        	pm = abrirPersistenceManager ("adicionarSubPedidoLote");
+        	tx = pm.currentTransaction();
+            tx.begin();
+            long [] resp = sqlSubPedido.adicionarSubPedido (pm, subpedidos, tamanoLote);
+            tx.commit();
+            
+            log.trace ("Inserción en lote de subpedidos: " + subpedidos.size () + " tuplas insertadas");
+            
+            return resp;
+        }
+        catch (Exception e)
+        {
+//        	e.printStackTrace();
+        	log.error ("Exception : " + e.getMessage() + "\n" + darDetalleException(e));
+        	return null;
+        }
+        finally
+        {
+            if (tx != null && tx.isActive())
+            {
+                tx.rollback();
+            }
+            if (pm != null)
+            {
+            	pm.close();
+            }
+        }
+	}
+	
+	/* ****************************************************************
+	 * 			Métodos para manejar la relación OFRECEN
+	 *****************************************************************/
+	
+	/**
+	 * Método que inserta, de manera transaccional, una tupla en la tabla OFRECEN
+	 * Adiciona entradas al log de la aplicación
+	 * @param idProducto - El identificador del producto
+	 * @param idProveedor - El identificador del proveedor
+	 * @param costo - el costo del producto según el proveedor
+	 * @return El objeto Ofrecen adicionado. null si ocurre alguna Excepción
+	 */
+	public Ofrecen adicionarOfrecen(long idProducto, long idProveedor, double costo)
+	{
+		PersistenceManager pm = null;
+        Transaction tx = null;
+        try
+        {
+        	pm = abrirPersistenceManager ("adicionarOfrecen");
+        	tx = pm.currentTransaction();
+        	tx.begin();
+            long tuplasInsertadas = sqlOfrecen.adicionarOfrecen(pm, idProducto, idProveedor, costo);
+            tx.commit();
+            invalidarCatalogoReorden ();
+            
+            log.trace ("Inserción de ofrecen: [" + idProducto + ", " + idProveedor + "]. " + tuplasInsertadas + " tuplas insertadas");
+            
+            return new Ofrecen(idProducto, idProveedor, costo);
+        }
+        catch (Exception e)
+        {
+//        	e.printStackTrace();
+        	log.error ("Exception : " + e.getMessage() + "\n" + darDetalleException(e));
+        	return null;
+        }
+        finally
+        {
+            if (tx != null && tx.isActive())
+            {
+                tx.rollback();
+            }
+            if (pm != null)
+            {
+            	pm.close();
+            }
+        }
+	}
+	
+	/**
+	 * Método que elimina, de manera transaccional, una tupla en la tabla Ofrecen, dado el identificador del producto y del proveedor
+	 * Adiciona entradas al log de la aplicación
+	 * @param idProducto - El identificador del producto
+	 * @param idProveedor - El identificador del proveedor
+	 * @return El número de tuplas eliminadas. -1 si ocurre alguna Excepción
+	 */
+	public long eliminarOfrecen(long idProducto, long idProveedor) 
+	{
+		PersistenceManager pm = null;
+        Transaction tx = null;
+        try
+        {
+        	pm = abrirPersistenceManager ("eliminarOfrecen");
+        	tx = pm.currentTransaction();
+            tx.begin();
+            long resp = sqlOfrecen.eliminarOfrecen(pm, idProducto, idProveedor);
+            tx.commit();
+            invalidarCatalogoReorden ();
+            return resp;
+        }
+        catch (Exception e)
+        {
+//        	e.printStackTrace();
+        	log.error ("Exception : " + e.getMessage() + "\n" + darDetalleException(e));
+            return -1;
+        }
+        finally
+        {
+            if (tx != null && tx.isActive())
+            {
+                tx.rollback();
+            }
+            if (pm != null)
+            {
+            	pm.close();
+            }
+        }
+	}
+	
+	/**
+	 * Método que consulta todas las tuplas en la tabla Ofrecen
+	 * @return La lista de objetos Ofrecen, construidos con base en las tuplas de la tabla OFRECEN
+	 */
+	public List<Ofrecen> darOfrecen()
+	{
+		try (PersistenceManager pm = abrirPersistenceManager ("darOfrecen"))
+		{
+			return new ArrayList<Ofrecen> (sqlOfrecen.darOfrecen(pm));
+		}
+	}
+	
+	/**
+	 * Método que encuentra el identificador y el número de productos que ofrecen los proveedores
+	 * @return Una lista de parejas de objetos, el primer elemento de cada pareja representa el identificador de un proveedor,
+	 * 	el segundo elemento representa el productos que ofrece.
+	 */
+	public List<Object []> darProveedorYCantidadProductosOfrecen()
+	{
+		try (PersistenceManager pm = abrirPersistenceManager ("darProveedorYCantidadProductosOfrecen"))
+		{
+			return new ArrayList<Object []> (sqlOfrecen.darProveedorYCantidadProductosOfrecen(pm));
+		}
+	}
+	
+	/**
+	 * Método que inserta, de manera transaccional y en lotes de JDBC, varias tuplas en la tabla OFRECEN
+	 * Adiciona entradas al log de la aplicación
+	 * @param ofrecen - Los objetos Ofrecen a insertar
+	 * @return El número de tuplas insertadas por cada elemento, en el mismo orden de la lista. null si ocurre alguna Excepción
+	 */
+	public long [] adicionarOfrecen (List<Ofrecen> ofrecen)
+	{
+		PersistenceManager pm = null;
+        Transaction tx = null;
+        try
+        {
+        	pm = abrirPersistenceManager ("adicionarOfrecenLote");
+        	tx = pm.currentTransaction();
+            tx.begin();
+            long [] resp = sqlOfrecen.adicionarOfrecen (pm, ofrecen, tamanoLote);
+            tx.commit();
+            invalidarCatalogoReorden ();
+            
+            log.trace ("Inserción en lote de tuplas ofrecen: " + ofrecen.size () + " tuplas insertadas");
+            
+            return resp;
+        }
+        catch (Exception e)
+        {
+//        	e.printStackTrace();
+        	log.error ("Exception : " + e.getMessage() + "\n" + darDetalleException(e));
+        	return null;
+        }
+        finally
+        {
+            if (tx != null && tx.isActive())
+            {
+                tx.rollback();
+            }
+            if (pm != null)
+            {
+            	pm.close();
+            }
+        }
+	}
+
+	/**
+	 * Método que encuentra el proveedor que ofrece un producto al menor costo
+	 * @param idProducto - El identificador del producto
+	 * @return El objeto Ofrecen del proveedor más barato. null si ningún proveedor ofrece el producto
+	 */
+	Ofrecen darOfertaMasBarata (long idProducto)
+	{
+		try (PersistenceManager pm = abrirPersistenceManager ("darOfertaMasBarata"))
+		{
+			return sqlOfrecen.darOfertaMasBarata (pm, idProducto);
+		}
+	}
+	
+	/* ****************************************************************
+	 * 			Métodos para manejar los CLIENTES
+	 *****************************************************************/
+	
+	/**
+	 * Método que inserta, de manera transaccional, una tupla en la tabla CLIENTE
+	 * Adiciona entradas al log de la aplicación
+	 * @param nombre - El nombre del cliente
+	 * @param correo - El correo del cliente
+	 * @param tipo - El tipo de cliente(PERSONA, EMPRESA)
+	 * @param direccion - La direccion del cliente
+	 * @return El objeto Cliente adicionado. null si ocurre alguna Excepción
+	 */
+	public Cliente adicionarCliente(String nombre, String correo, String tipo, String direccion)
+	{
+		PersistenceManager pm = null;
+        Transaction tx = null;
+        try
+        {
+        	pm = abrirPersistenceManager ("adicionarCliente");
+        	tx = pm.currentTransaction();
+        	
+        	tx.begin();
+        	long idCliente = nextval (darTablaCliente ());
+            long tuplasInsertadas = sqlCliente.adicionarCliente(pm, idCliente, nombre, correo, tipo, direccion);
+            tx.commit();
+            
+            log.trace ("Inserción del cliente: " + idCliente + ": " + tuplasInsertadas + " tuplas insertadas");
+            
+            return new Cliente(idCliente, nombre, direccion, correo, tipo);
+        }
+        catch (Exception e)
+        {
+//        	e.printStackTrace();
+        	log.error ("Exception : " + e.getMessage() + "\n" + darDetalleException(e));
+        	return null;
+        }
+        finally
+        {
+            if (tx != null && tx.isActive())
+            {
+                tx.rollback();
+            }
+            if (pm != null)
+            {
+            	pm.close();
+            }
+        }
+	}
+	
+	/**
+	 * Método que elimina, de manera transaccional, una tupla en la tabla Cliente, dado el identificador del cliente
+	 * Adiciona entradas al log de la aplicación
+	 * @param idCliente - El identificador del cliente
+	 * @return El número de tuplas eliminadas. -1 si ocurre alguna Excepción
+	 */
+	public long eliminarClientePorId (long idCliente) 
+	{
+		PersistenceManager pm = null;
+        Transaction tx = null;
+        try
+        {
+        	pm = abrirPersistenceManager ("eliminarClientePorId");
+        	tx = pm.currentTransaction();
+            tx.begin();
+            long resp = sqlCliente.eliminarClientePorId(pm, idCliente);
+            tx.commit();
+            olvidarReferencias (darTablaCliente ());
+            return resp;
+        }
+        catch (Exception e)
+        {
+//        	e.printStackTrace();
+        	log.error ("Exception : " + e.getMessage() + "\n" + darDetalleException(e));
+            return -1;
+        }
+        finally
+        {
+            if (tx != null && tx.isActive())
+            {
+                tx.rollback();
+            }
+            if (pm != null)
+            {
+            	pm.close();
+            }
+        }
+	}
+	
+	/**
+	 * Método que elimina, de manera transaccional, una tupla en la tabla Cliente, dado el nombre del cliente
+	 * Adiciona entradas al log de la aplicación
+	 * @param nombre - El nombre del cliente
+	 * @return El número de tuplas eliminadas. -1 si ocurre alguna Excepción
+	 */
+	public long eliminarClientePorNombre(String nombre) 
+	{
+		PersistenceManager pm = null;
+        Transaction tx = null;
+        try
+        {
+        	pm = abrirPersistenceManager ("eliminarClientePorNombre");
+        	tx = pm.currentTransaction();
+            tx.begin();
+            long resp = sqlCliente.eliminarClientePorNombre(pm, nombre);
+            tx.commit();
+            olvidarReferencias (darTablaCliente ());
+            return resp;
+        }
+        catch (Exception e)
+        {
+//        	e.printStackTrace();
+        	log.error ("Exception : " + e.getMessage() + "\n" + darDetalleException(e));
+            return -1;
+        }
+        finally
+        {
+            if (tx != null && tx.isActive())
+            {
+                tx.rollback();
+            }
+            if (pm != null)
+            {
+            	pm.close();
+            }
+        }
+	}
+	
+	/**
+	 * Método que consulta todas las tuplas en la tabla Cliente con un identificador dado
+	 * @param idCliente - El identificador del Cliente
+	 * @return El objeto Cliente, construido con base en las tuplas de la tabla CLIENTE con el identificador dado
+	 */
+	public Cliente darClientePorId(long idCliente)
+	{
+		try (PersistenceManager pm = abrirPersistenceManager ("darClientePorId"))
+		{
+			return sqlCliente.darClientePorId(pm, idCliente);
+		}
+	}
+	
+	/**
+	 * Método que consulta todas las tuplas en la tabla Cliente que tienen un nombre dado
+	 * @param nombre - El nombre del cliente
+	 * @return La lista de objetos Cliente, construidos con base en las tuplas de la tabla CLIENTE
+	 */
+	public List<Cliente> darClientesPorNombre(String nombre)
+	{
+		try (PersistenceManager pm = abrirPersistenceManager ("darClientesPorNombre"))
+		{
+			return new ArrayList<Cliente> (sqlCliente.darClientesPorNombre(pm, nombre));
+		}
+	}
+	
+	/**
+	 * Método que consulta todas las tuplas en la tabla Cliente que tienen un tipo dado (PERSONA, EMPRESA)
+	 * @param tipo - El tipo del cliente (PERSONA, EMPRESA)
+	 * @return La lista de objetos Cliente, construidos con base en las tuplas de la tabla CLIENTE
+	 */
+	public List<Cliente> darClientesPorTipo(String tipo)
+	{
+		try (PersistenceManager pm = abrirPersistenceManager ("darClientesPorTipo"))
+		{
+			return new ArrayList<Cliente> (sqlCliente.darClientesPorTipo(pm, tipo));
+		}
+	}
+	
+	/**
+	 * Método que consulta todas las tuplas en la tabla Cliente
+	 * @return La lista de objetos Cliente, construidos con base en las tuplas de la tabla CLIENTE
+	 */
+	public List<Cliente> darClientes()
+	{
+		try (PersistenceManager pm = abrirPersistenceManager ("darClientes"))
+		{
+			return new ArrayList<Cliente> (sqlCliente.darClientes(pm));
+		}
+	}
+	
+	/**
+	 * Método que consulta una página de las tuplas en la tabla CLIENTE, en orden de identificador
+	 * @param despuesDeId - El identificador del último cliente de la página anterior. 0 para la primera página
+	 * @param limite - El número máximo de tuplas de la página
+	 * @return La lista de objetos Cliente de la página, con a lo sumo limite elementos
+	 */
+	public List<Cliente> darClientesPagina (long despuesDeId, int limite)
+	{
+		try (PersistenceManager pm = abrirPersistenceManager ("darClientesPagina"))
+		{
+			return new ArrayList<Cliente> (sqlCliente.darClientesPagina (pm, despuesDeId, limite));
+		}
+	}
+	
+	/**
+	 * Método que recorre todas las tuplas en la tabla CLIENTE, en orden de identificador, por páginas de tamanoFetch tuplas.
+	 * Sólo mantiene una página en memoria, sin importar el tamaño de la tabla
+	 * @return Un Stream secuencial de objetos Cliente
+	 */
+	public Stream<Cliente> recorrerClientes ()
+	{
+		return new IteradorPaginas<Cliente> (ultimo -> darClientesPagina (ultimo == null ? 0 : ultimo.getId (), tamanoFetch), tamanoFetch).comoStream ();
+	}
+	
+	/**
+	 * Método que inserta, de manera transaccional y en lotes de JDBC, varias tuplas en la tabla CLIENTE
+	 * A cada elemento se le asigna un nuevo identificador antes de insertarlo
+	 * Adiciona entradas al log de la aplicación
+	 * @param clientes - Los objetos Cliente a insertar
+	 * @return El número de tuplas insertadas por cada elemento, en el mismo orden de la lista. null si ocurre alguna Excepción
+	 */
+	public long [] adicionarCliente (List<Cliente> clientes)
+	{
+		PersistenceManager pm = null;
+        Transaction tx = null;
+        try
+        {
+        	pm = abrirPersistenceManager ("adicionarClienteLote");
+        	tx = pm.currentTransaction();
+            tx.begin();
+            for (Cliente cliente : clientes)
+            {
+            	cliente.setId (nextval (darTablaCliente ()));
+            }
+            long [] resp = sqlCliente.adicionarCliente (pm, clientes, tamanoLote);
+            tx.commit();
+            
+            log.trace ("Inserción en lote de clientes: " + clientes.size () + " tuplas insertadas");
+            
+            return resp;
+        }
+        catch (Exception e)
+        {
+//        	e.printStackTrace();
         	log.error ("Exception : " + e.getMessage() + "\n" + darDetalleException(e));
-            return -1;
+        	return null;
         }
         finally
         {
-            if (tx.isActive())
+            if (tx != null && tx.isActive())
             {
                 tx.rollback();
             }
-            pm.close();
+            if (pm != null)
+            {
+            	pm.close();
+            }
         }
 	}
 	
+	/* ****************************************************************
+	 * 			Métodos para manejar las FACTURAS
+	 *****************************************************************/
+	
 	/**
-	 * Método que elimina, de manera transaccional, una tupla en la tabla Proveedor, dado el identificador del proveedor
+	 * Método que inserta, de manera transaccional, una tupla en la tabla FACTURA
 	 * Adiciona entradas al log de la aplicación
-	 * @param idProveedor - El identificador del proveedor
-	 * @return El número de tuplas eliminadas. -1 si ocurre alguna Excepción
+	 * @param fecha - Fecha de la factura
+	 * @param idCliente - El identificador del cliente de la factura
+	 * @param idSucursal - El identificador de la sucursal donde se generó la factura
+	 * @return El objeto Factura adicionado. null si ocurre alguna Excepción
 	 */
-	public long eliminarProveedorPorId (long idProveedor) 
+	public Factura adicionarFactura(Timestamp fecha, long idCliente, long idSucursal)
 	{
-		PersistenceManager pm = pmf.getPersistenceManager();
-        Transaction tx=pm.currentTransaction();
+		PersistenceManager pm = null;
+        Transaction tx = null;
         try
         {
-            tx.begin();
-            long resp = sqlProveedor.eliminarProveedorPorId(pm, idProveedor);
+        	pm = abrirPersistenceManager ("adicionarFactura");
+        	tx = pm.currentTransaction();
+        	
+        	tx.begin();
+        	long idFactura = nextval (darTablaFactura ());
+            long tuplasInsertadas = sqlFactura.adicionarFactura(pm, idFactura, fecha, idCliente, idSucursal);
             tx.commit();
-            return resp;
+            
+            log.trace ("Inserción del cliente: " + idCliente + ": " + tuplasInsertadas + " tuplas insertadas");
+            
+            return new Factura(idFactura, idSucursal, fecha, idCliente);
         }
         catch (Exception e)
         {
 //        	e.printStackTrace();
         	log.error ("Exception : " + e.getMessage() + "\n" + darDetalleException(e));
-            return -1;
+        	return null;
         }
         finally
         {
-            if (tx.isActive())
+            if (tx != null && tx.isActive())
             {
                 tx.rollback();
             }
-            pm.close();
+            if (pm != null)
+            {
+            	pm.close();
+            }
         }
 	}
 	
 	/**
-	 * Método que consulta todas las tuplas en la tabla Proveedor que tienen un nombre dado
-	 * @param nombre - El nombre del proveedor
-	 * @return La lista de objetos Proveedor, construidos con base en las tuplas de la tabla PROVEEDOR
+	 * Método que registra, en una única transacción, una venta completa: inserta la tupla de FACTURA, inserta en lote de JDBC
+	 * las tuplas de TRANSACCION de todas las líneas y descuenta de los estantes de la sucursal la cantidad vendida de cada producto.
+	 * Cada cantidad se descuenta del primer estante que la tenga completa o, si ninguno la tiene, se reparte entre los estantes del producto.
+	 * Si algún producto no tiene existencias suficientes sumando todos sus estantes de la sucursal, no se registra nada
+	 * Con el inventario en memoria, las existencias se descuentan en memoria antes de la transacción y se devuelven si ésta falla;
+	 * la tabla ESTANTE se actualiza en la siguiente descarga del inventario
+	 * Adiciona entradas al log de la aplicación
+	 * @param idCliente - El identificador del cliente
+	 * @param idSucursal - El identificador de la sucursal
+	 * @param lineas - Las líneas de la venta, con producto, cantidad, costo y promoción. Se les asigna el número de la factura
+	 * @return El objeto Factura adicionado. null si ocurre alguna Excepción
 	 */
-	public List<Proveedor> darProveedoresPorNombre(String nombre)
+	public Factura registrarVenta (long idCliente, long idSucursal, List<Transaccion> lineas)
 	{
-		return sqlProveedor.darProveedorPorNombre(pmf.getPersistenceManager(), nombre);
+		PersistenceManager pm = null;
+        Transaction tx = null;
+        Map<Long, Integer> descontadas = null;
+        try
+        {
+        	// Se agrupan las cantidades por producto y en orden de producto, para que ventas concurrentes bloqueen los estantes en el mismo orden
+        	Map<Long, Integer> cantidades = darCantidades (lineas);
+        	if (inventario != null)
+        	{
+        		if (!inventario.disminuirExistenciasEstantes (idSucursal, cantidades))
+        		{
+        			throw new IllegalStateException ("No hay existencias suficientes en los estantes de la sucursal " + idSucursal + " para la venta");
+        		}
+        		descontadas = cantidades;
+        	}
+
+        	// El PersistenceManager se pide después de descontar en memoria: con una llave fría el inventario lee las existencias
+        	// con su propio PersistenceManager, y tener los dos a la vez puede agotar el pool
+        	pm = abrirPersistenceManager ("registrarVenta");
+        	tx = pm.currentTransaction();
+        	tx.begin();
+        	long idFactura = nextval (darTablaFactura ());
+        	Timestamp fecha = new Timestamp (System.currentTimeMillis ());
+            sqlFactura.adicionarFactura(pm, idFactura, fecha, idCliente, idSucursal);
+            for (Transaccion linea : lineas)
+            {
+            	linea.setNumeroFactura (idFactura);
+            }
+            sqlTransaccion.adicionarTransaccion (pm, lineas, tamanoLote);
+            double total = 0;
+            for (Transaccion linea : lineas)
+            {
+            	total += linea.getCosto ();
+            }
+            sqlVentasDiarias.sumarVentas (pm, idSucursal, fecha, total, lineas.size ());
+            if (inventario == null)
+            {
+            	long [] actualizados = sqlEstante.disminuirExistencias (pm, idSucursal, cantidades, tamanoLote);
+            	int i = 0;
+            	for (Map.Entry<Long, Integer> cantidad : cantidades.entrySet ())
+            	{
+            		// Ningún estante tiene la cantidad completa: se reparte entre los estantes, y si aun así falta se deshace toda la venta
+            		if (actualizados [i++] == 0 && sqlEstante.repartirExistencias (pm, idSucursal, cantidad.getKey (), -cantidad.getValue ()) != 0)
+            		{
+            			throw new IllegalStateException ("No hay existencias suficientes del producto " + cantidad.getKey () + " en los estantes de la sucursal " + idSucursal);
+            		}
+            	}
+            }
+            tx.commit();
+            descontadas = null;
+            rankingPromociones.registrarTransacciones (lineas);
+            if (inventario == null)
+            {
+            	for (Long producto : cantidades.keySet ())
+            	{
+            		monitorOcupacion.notificarCambio (idSucursal, producto);
+            	}
+            }
+            if (reorden != null)
+            {
+            	reorden.notificarCambio (idSucursal, cantidades.keySet ());
+            }
+            
+            log.trace ("Registro de venta: factura " + idFactura + ", " + lineas.size () + " líneas, " + cantidades.size () + " productos");
+            
+            return new Factura(idFactura, idSucursal, fecha, idCliente);
+        }
+        catch (Exception e)
+        {
+//        	e.printStackTrace();
+        	log.error ("Exception : " + e.getMessage() + "\n" + darDetalleException(e));
+        	return null;
+        }
+        finally
+        {
+            if (tx != null && tx.isActive())
+            {
+                tx.rollback();
+            }
+            if (descontadas != null)
+            {
+            	// La venta no se registró: se devuelven las existencias descontadas en memoria
+            	inventario.aumentarExistenciasEstantes (idSucursal, descontadas);
+            }
+            if (pm != null)
+            {
+            	pm.close();
+            }
+        }
 	}
 	
 	/**
-	 * Método que consulta todas las tuplas en la tabla Proveedor
-	 * @return La lista de objetos Proveedor, construidos con base en las tuplas de la tabla PROVEEDOR
+	 * Método que registra una venta completa en el diario de ventas, sin esperar a la base de datos: le asigna el número de factura,
+	 * la escribe en el diario y retorna. La venta se aplica después en la base de datos, con las mismas tablas que registrarVenta.
+	 * Con el inventario en memoria, las existencias se descuentan de inmediato; si no, se descuentan de la tabla ESTANTE al aplicar
+	 * la venta. Sin diario de ventas, registra la venta con registrarVenta
+	 * Antes de escribirla se verifica que existan el cliente, la sucursal, los productos y las promociones, y que no haya dos líneas con
+	 * el mismo producto y la misma cantidad, para que el diario sólo reciba ventas que se pueden aplicar
+	 * Adiciona entradas al log de la aplicación
+	 * @param idCliente - El identificador del cliente
+	 * @param idSucursal - El identificador de la sucursal
+	 * @param lineas - Las líneas de la venta, con producto, cantidad, costo y promoción. Se les asigna el número de la factura
+	 * @return El objeto Factura registrado. null si ocurre alguna Excepción
 	 */
-	public List<Proveedor> darProveedores()
+	public Factura registrarVentaDiferida (long idCliente, long idSucursal, List<Transaccion> lineas)
 	{
-		return sqlProveedor.darProveedores(pmf.getPersistenceManager());
-	}	
-	
-	/* ****************************************************************
-	 * 			Métodos para manejar los PEDIDOS
-	 *****************************************************************/
-	
+		if (diarioVentas == null)
+		{
+			return registrarVenta (idCliente, idSucursal, lineas);
+		}
+		Map<Long, Integer> descontadas = null;
+		try
+		{
+			verificarReferencia (darTablaCliente (), idCliente);
+			verificarReferencia (darTablaSucursal (), idSucursal);
+			Set<List<Long>> llaves = new HashSet<List<Long>> ();
+			for (Transaccion linea : lineas)
+			{
+				verificarReferencia (darTablaProducto (), linea.getProducto ());
+				if (linea.getPromocion () > 0)
+				{
+					verificarReferencia (darTablaPromocion (), linea.getPromocion ());
+				}
+				// La llave primaria de TRANSACCION es (producto, cantidad, factura)
+				if (!llaves.add (Arrays.asList (linea.getProducto (), (long) linea.getCantidad ())))
+				{
+					throw new IllegalArgumentException ("La venta tiene dos líneas del producto " + linea.getProducto () + " con cantidad " + linea.getCantidad ());
+				}
+			}
+			if (inventario != null)
+			{
+				Map<Long, Integer> cantidades = darCantidades (lineas);
+				if (!inventario.disminuirExistenciasEstantes (idSucursal, cantidades))
+				{
+					throw new IllegalStateException ("No hay existencias suficientes en los estantes de la sucursal " + idSucursal + " para la venta");
+				}
+				descontadas = cantidades;
+			}
+			// El número de factura se asigna de un bloque ya reservado, así que casi nunca requiere la base de datos
+			long idFactura = nextval (darTablaFactura ());
+			Factura factura = new Factura (idFactura, idSucursal, new Timestamp (System.currentTimeMillis ()), idCliente);
+			for (Transaccion linea : lineas)
+			{
+				linea.setNumeroFactura (idFactura);
+			}
+			diarioVentas.escribir (factura, lineas);
+			descontadas = null;
+
+			log.trace ("Registro diferido de venta: factura " + idFactura + ", " + lineas.size () + " líneas");
+
+			return factura;
+		}
+		catch (Exception e)
+		{
+//        	e.printStackTrace();
+			log.error ("Exception : " + e.getMessage() + "\n" + darDetalleException(e));
+			return null;
+		}
+		finally
+		{
+			if (descontadas != null)
+			{
+				// La venta no se registró: se devuelven las existencias descontadas en memoria
+				inventario.aumentarExistenciasEstantes (idSucursal, descontadas);
+			}
+		}
+	}
+
 	/**
-	 * Método que inserta, de manera transaccional, una tupla en la tabla PEDIDO
-	 * Adiciona entradas al log de la aplicación
-	 * @param proveedor - El proveedor del pedido
-	 * @param sucursal - La sucursal que hace el pedido
-	 * @param fechaEntrega - La fecha de entrega del pedido
-	 * @param estadoOrden - El estado de orden del pedido
-	 * @param cantidad - El numero de unidades solicitadas
-	 * @param calificacion - La calificacion del pedido
-	 * @param costoTotal - El costo total del pedido
-	 * @return El objeto Pedido adicionado. null si ocurre alguna Excepción
+	 * Método que aplica en la base de datos, en una única transacción, un grupo de ventas leídas del diario de ventas: inserta las
+	 * tuplas de FACTURA y de TRANSACCION, las suma al acumulado de ventas diarias y, sin inventario en memoria, descuenta de los estantes.
+	 * Es idempotente: las ventas cuya factura ya existe se omiten, de manera que un grupo se puede volver a aplicar después de una caída.
+	 * Las ventas ya ocurrieron en la caja, así que la falta de existencias en los estantes no impide aplicarlas: se registra como descuadre
+	 * @param ventas - Las ventas, en el orden del diario
+	 * @return El número de ventas aplicadas, sin contar las que ya estaban. DiarioVentas.GRUPO_RECHAZADO si la base de datos rechaza el
+	 * grupo por una restricción de integridad. -1 si ocurre alguna otra Excepción
 	 */
-	public Pedido adicionarPedido(long proveedor, long sucursal, Timestamp fechaEntrega, String estadoOrden, int cantidad, int calificacion, double costoTotal, long producto, int cantidadSub, double costo)
+	long aplicarVentasDiario (List<DiarioVentas.Venta> ventas)
 	{
-		PersistenceManager pm = pmf.getPersistenceManager();
-        Transaction tx=pm.currentTransaction();
+		PersistenceManager pm = null;
+        Transaction tx = null;
         try
         {
-            //adicionar subpedido
-        	tx.begin();
-            long idPedido = nextval();
-            long tuplasInsertadas = sqlSubPedido.adicionarSubPedido(pm, idPedido, producto, cantidadSub, costo);
-            tx.commit();
-            
-            log.trace ("Inserción del subpedido: " + idPedido + ": " + tuplasInsertadas + " tuplas insertadas");
-        	
-        	tx.begin();
-            long tuplasInsertadas2 = sqlPedido.adicionarPedido(pm, idPedido, proveedor, sucursal, fechaEntrega, estadoOrden, cantidad, calificacion, costoTotal);
+        	pm = abrirPersistenceManager ("aplicarVentasDiario");
+        	tx = pm.currentTransaction();
+            tx.begin();
+            long menor = Long.MAX_VALUE;
+            long mayor = Long.MIN_VALUE;
+            for (DiarioVentas.Venta venta : ventas)
+            {
+            	menor = Math.min (menor, venta.factura.getNumero ());
+            	mayor = Math.max (mayor, venta.factura.getNumero ());
+            }
+            // Los números de un grupo vienen de pocos bloques del asignador, así que un solo rango los cubre
+            Set<Long> existentes = sqlFactura.darNumerosEntre (pm, menor, mayor);
+            List<DiarioVentas.Venta> nuevas = new ArrayList<DiarioVentas.Venta> ();
+            List<Factura> facturas = new ArrayList<Factura> ();
+            List<Transaccion> lineas = new ArrayList<Transaccion> ();
+            List<Object []> totales = new ArrayList<Object []> ();
+            for (DiarioVentas.Venta venta : ventas)
+            {
+            	if (existentes.add (venta.factura.getNumero ()))
+            	{
+            		nuevas.add (venta);
+            		facturas.add (venta.factura);
+            		lineas.addAll (venta.lineas);
+            		double total = 0;
+            		for (Transaccion linea : venta.lineas)
+            		{
+            			total += linea.getCosto ();
+            		}
+            		totales.add (new Object [] {venta.factura.getNumero (), total, venta.lineas.size ()});
+            	}
+            }
+            if (!nuevas.isEmpty ())
+            {
+            	sqlFactura.adicionarFactura (pm, facturas, tamanoLote);
+            	sqlTransaccion.adicionarTransaccion (pm, lineas, tamanoLote);
+            	sqlVentasDiarias.sumarVentasFacturas (pm, totales, tamanoLote);
+            }
+            if (inventario == null)
+            {
+            	for (DiarioVentas.Venta venta : nuevas)
+            	{
+            		Map<Long, Integer> cantidades = darCantidades (venta.lineas);
+            		long [] actualizados = sqlEstante.disminuirExistencias (pm, venta.factura.getSucursal (), cantidades, tamanoLote);
+            		int i = 0;
+            		for (Map.Entry<Long, Integer> cantidad : cantidades.entrySet ())
+            		{
+            			if (actualizados [i++] == 0)
+            			{
+            				long faltante = sqlEstante.repartirExistencias (pm, venta.factura.getSucursal (), cantidad.getKey (), -cantidad.getValue ());
+            				if (faltante != 0)
+            				{
+            					log.error ("Descuadre de inventario en los estantes: la factura " + venta.factura.getNumero () + " vendió " + cantidad.getValue ()
+            							+ " unidades del producto " + cantidad.getKey () + " y faltaron " + (-faltante) + " en la sucursal " + venta.factura.getSucursal ());
+            				}
+            			}
+            		}
+            	}
+            }
             tx.commit();
+            rankingPromociones.registrarTransacciones (lineas);
+            for (DiarioVentas.Venta venta : nuevas)
+            {
+            	Collection<Long> productos = darCantidades (venta.lineas).keySet ();
+            	if (inventario == null)
+            	{
+            		for (Long producto : productos)
+            		{
+            			monitorOcupacion.notificarCambio (venta.factura.getSucursal (), producto);
+            		}
+            	}
+            	if (reorden != null)
+            	{
+            		reorden.notificarCambio (venta.factura.getSucursal (), productos);
+            	}
+            }
             
-            log.trace ("Inserción del pedido: " + idPedido + ": " + tuplasInsertadas2 + " tuplas insertadas");
+            log.trace ("Aplicación de ventas del diario: " + nuevas.size () + " de " + ventas.size () + " ventas aplicadas");
             
-            return new Pedido(idPedido, proveedor, sucursal, fechaEntrega, estadoOrden, cantidad, calificacion, costoTotal);
+            return nuevas.size ();
         }
         catch (Exception e)
         {
 //        	e.printStackTrace();
         	log.error ("Exception : " + e.getMessage() + "\n" + darDetalleException(e));
-        	return null;
+        	return esViolacionIntegridad (e) ? DiarioVentas.GRUPO_RECHAZADO : -1;
         }
         finally
         {
-            if (tx.isActive())
+            if (tx != null && tx.isActive())
             {
                 tx.rollback();
             }
-            pm.close();
+            if (pm != null)
+            {
+            	pm.close();
+            }
         }
 	}
+
+	/**
+	 * @param lineas - Las líneas de una venta
+	 * @return La cantidad vendida de cada producto, en orden de producto
+	 */
+	private static Map<Long, Integer> darCantidades (List<Transaccion> lineas)
+	{
+		Map<Long, Integer> resp = new TreeMap<Long, Integer> ();
+		for (Transaccion linea : lineas)
+		{
+			resp.merge (linea.getProducto (), linea.getCantidad (), Integer::sum);
+		}
+		return resp;
+	}
+
+	/**
+	 * @return El diario de ventas. null si no está configurado, en cuyo caso las ventas diferidas se registran directamente
+	 */
+	public DiarioVentas darDiarioVentas ()
+	{
+		return diarioVentas;
+	}
+
+	/**
+	 * Método que aplica en la base de datos las ventas pendientes del diario de ventas, sin esperar a la aplicación periódica
+	 * @return El número de ventas leídas del diario. 0 si no hay diario de ventas. -1 si falla la aplicación
+	 */
+	public int aplicarDiarioVentas ()
+	{
+		return diarioVentas != null ? diarioVentas.aplicar () : 0;
+	}
 	
 	/**
-	 * Método que elimina, de manera transaccional, una tupla en la tabla Pedido, dado el identificador del pedido
+	 * Método que elimina, de manera transaccional, una tupla en la tabla Factura, dado el identificador de la factura
 	 * Adiciona entradas al log de la aplicación
-	 * @param idPedido - El identificador del pedido
+	 * @param idFactura - El identificador de la factura
 	 * @return El número de tuplas eliminadas. -1 si ocurre alguna Excepción
 	 */
-	public long eliminarPedidoPorId (long idPedido) 
+	public long eliminarFacturaPorId (long idFactura) 
 	{
-		PersistenceManager pm = pmf.getPersistenceManager();
-        Transaction tx=pm.currentTransaction();
+		PersistenceManager pm = null;
+        Transaction tx = null;
         try
         {
+        	pm = abrirPersistenceManager ("eliminarFacturaPorId");
+        	tx = pm.currentTransaction();
             tx.begin();
-            long resp = sqlPedido.eliminarPedidoPorId(pm, idPedido);
+            long resp = sqlFactura.eliminarFacturaPorNumero(pm, idFactura);
             tx.commit();
             return resp;
         }
@@ -1225,178 +4419,229 @@ public class PersistenciaSuperAndes {
         }
         finally
         {
-            if (tx.isActive())
+            if (tx != null && tx.isActive())
             {
                 tx.rollback();
             }
-            pm.close();
+            if (pm != null)
+            {
+            	pm.close();
+            }
         }
 	}
 	
 	/**
-	 * Método que consulta todas las tuplas en la tabla Pedido con un identificador dado
-	 * @param idPedido - El identificador del Pedido
-	 * @return El objeto Pedido, construido con base en las tuplas de la tabla PEDIDO con el identificador dado
+	 * Método que consulta todas las tuplas en la tabla Factura con un identificador dado
+	 * @param idFactura- El identificador de la Factura
+	 * @return El objeto Factura, construido con base en las tuplas de la tabla FACTURA con el identificador dado
 	 */
-	public Pedido darPedidoPorId(long idPedido)
+	public Factura darFacturaPorId(long idFactura)
 	{
-		return sqlPedido.darPedidoPorId(pmf.getPersistenceManager(), idPedido);
+		try (PersistenceManager pm = abrirPersistenceManager ("darFacturaPorId"))
+		{
+			return sqlFactura.darFacturaPorNumero(pm, idFactura);
+		}
 	}
 	
 	/**
-	 * Método que consulta todas las tuplas en la tabla Pedido que tienen un identificador dado
-	 * @param idPedido - El identificador del pedido
-	 * @return La lista de objetos Pedido, construidos con base en las tuplas de la tabla PEDIDO
+	 * Método que consulta todas las tuplas en la tabla Factura que tienen un identificador dado
+	 * @param idFactura - El identificador de la factura
+	 * @return La lista de objetos Factura, construidos con base en las tuplas de la tabla FACTURA
 	 */
-	public List<Pedido> darPedidosPorId(long idPedido)
+	public List<Factura> darFacturasPorId(long idFactura)
 	{
-		return sqlPedido.darPedidosPorId(pmf.getPersistenceManager(), idPedido);
+		try (PersistenceManager pm = abrirPersistenceManager ("darFacturasPorId"))
+		{
+			return new ArrayList<Factura> (sqlFactura.darFacturasPorNumero(pm, idFactura));
+		}
 	}
 	
 	/**
-	 * Método que consulta todas las tuplas en la tabla Pedido que tienen una sucursal dada
-	 * @param idSucursal - El identificador de la sucursal que hace el pedido
-	 * @return La lista de objetos Pedido, construidos con base en las tuplas de la tabla PEDIDO
+	 * Método que consulta todas las tuplas en la tabla Factura que tienen un cliente dado
+	 * @param idCliente - El identificador del cliente de la factura
+	 * @return La lista de objetos Factura, construidos con base en las tuplas de la tabla FACTURA
 	 */
-	public List<Pedido> darPedidosPorSucursal(long idSucursal)
+	public List<Factura> darFacturasPorCliente(long idCliente)
 	{
-		return sqlPedido.darPedidosPorSucursal(pmf.getPersistenceManager(), idSucursal);
+		try (PersistenceManager pm = abrirPersistenceManager ("darFacturasPorCliente"))
+		{
+			return new ArrayList<Factura> (sqlFactura.darFacturasPorCliente(pm, idCliente));
+		}
 	}
 	
 	/**
-	 * Método que consulta todas las tuplas en la tabla Pedido que tienen un proveedor dado
-	 * @param idProveedor - El identificador del proveedor que hace el pedido
-	 * @return La lista de objetos Pedido, construidos con base en las tuplas de la tabla PEDIDO
+	 * Método que consulta todas las tuplas en la tabla Factura que tienen una sucursal dada
+	 * @param idSucursal - El identificador de la sucursal de la factura
+	 * @return La lista de objetos Factura, construidos con base en las tuplas de la tabla FACTURA
 	 */
-	public List<Pedido> darPedidosPorProveedor(long idProveedor)
+	public List<Factura> darFacturasPorSucursal(long idSucursal)
 	{
-		return sqlPedido.darPedidosPorProveedor(pmf.getPersistenceManager(), idProveedor);
+		try (PersistenceManager pm = abrirPersistenceManager ("darFacturasPorSucursal"))
+		{
+			return new ArrayList<Factura> (sqlFactura.darFacturasPorSucursal(pm, idSucursal));
+		}
 	}
 	
 	/**
-	 * Método que consulta todas las tuplas en la tabla Pedido que tienen una sucursal dada y un proveedor dado
-	 * @param idSucursal - El identificador de la sucursal que hace el pedido
-	 * @param idProveedor - El identificador del proveedor que hace el pedido
-	 * @return La lista de objetos Pedido, construidos con base en las tuplas de la tabla PEDIDO
+	 * Método que consulta todas las tuplas en la tabla Factura que tienen una fecha dada
+	 * @param fecha - La fecha en la que se generó la factura
+	 * @return La lista de objetos Factura, construidos con base en las tuplas de la tabla FACTURA
 	 */
-	public List<Pedido> darPedidosPorProveedorYSucursal(long idProveedor, long idSucursal)
+	public List<Factura> darFacturasPorFecha(Timestamp fecha)
 	{
-		return sqlPedido.darPedidosPorProveedorYSucursal(pmf.getPersistenceManager(), idProveedor, idSucursal);
+		try (PersistenceManager pm = abrirPersistenceManager ("darFacturasPorFecha"))
+		{
+			return new ArrayList<Factura> (sqlFactura.darFacturasPorFecha(pm, fecha));
+		}
 	}
 	
-	/**
-	 * Método que cambia el estado de orden de un pedido (entregado o pendiente) dependiendo de si el pedido se emitió o si ya fue entregado.
-	 * @param idPedido - el identificador del pedido
-	 * @param estadoOrden - El estado de orden del pedido (pendiente, entregado)
-	 * @return El número de tuplas modificadas
+	/**
+	 * Método que consulta todas las tuplas en la tabla Factura que tienen una sucursal dada y un cliente dado
+	 * @param idSucursal - El identificador de la sucursal de la factura
+	 * @param idCliente - El cliente de la factura
+	 * @return La lista de objetos Factura, construidos con base en las tuplas de la tabla FACTURA
 	 */
-	public long cambiarEstadoOrdenPedido(long idPedido, String estadoOrden)
+	public List<Factura> darFacturasPorClienteYSucursal(long idCliente, long idSucursal)
 	{
-		return sqlPedido.cambiarEstadoOrdenPedido(pmf.getPersistenceManager(), idPedido, estadoOrden);
+		try (PersistenceManager pm = abrirPersistenceManager ("darFacturasPorClienteYSucursal"))
+		{
+			return new ArrayList<Factura> (sqlFactura.darFacturasPorClienteYSucursal(pm, idCliente, idSucursal));
+		}
 	}
 	
 	/**
-	 * Método que consulta todas las tuplas en la tabla Pedido que tienen una calificacion dada
-	 * @param calificacion - La calificacion del pedido
-	 * @return La lista de objetos Pedido, construidos con base en las tuplas de la tabla PEDIDO
+	 * Método que consulta todas las tuplas en la tabla Factura
+	 * @return La lista de objetos Factura, construidos con base en las tuplas de la tabla FACTURA
 	 */
-	public List<Pedido> darPedidosPorCalificacion(int calificacion)
+	public List<Factura> darFacturas()
 	{
-		return sqlPedido.darPedidosPorCalificacion(pmf.getPersistenceManager(), calificacion);
+		try (PersistenceManager pm = abrirPersistenceManager ("darFacturas"))
+		{
+			return new ArrayList<Factura> (sqlFactura.darFacturas(pm));
+		}
 	}
 	
 	/**
-	 * Método que cambia la calificacion de un pedido dado
-	 * @param idPedido - El estado de orden del pedido (pendiente, entregado)
-	 * @param calificacion - La calificacion a cambiar del pedido
-	 * @return El número de tuplas modificadas
+	 * Método que consulta una página de las tuplas en la tabla FACTURA, en orden de número
+	 * @param despuesDeNumero - El número de la última factura de la página anterior. 0 para la primera página
+	 * @param limite - El número máximo de tuplas de la página
+	 * @return La lista de objetos Factura de la página, con a lo sumo limite elementos
 	 */
-	public long cambiarCalificacionPedido(long idPedido, int calificacion)
+	public List<Factura> darFacturasPagina (long despuesDeNumero, int limite)
 	{
-		return sqlPedido.cambiarCalificacionPedido(pmf.getPersistenceManager(), idPedido, calificacion);
+		try (PersistenceManager pm = abrirPersistenceManager ("darFacturasPagina"))
+		{
+			return sqlFactura.darFacturasPagina (pm, despuesDeNumero, limite);
+		}
 	}
 	
 	/**
-	 * Método que consulta todas las tuplas en la tabla Pedido que tienen una fecha de entrega dada dada
-	 * @param fechaEntrega- La fecha de entrega del pedido
-	 * @return La lista de objetos Pedido, construidos con base en las tuplas de la tabla PEDIDO
+	 * Método que recorre todas las tuplas en la tabla FACTURA, en orden de número, por páginas de tamanoFetch tuplas.
+	 * Sólo mantiene una página en memoria, sin importar el tamaño de la tabla
+	 * @return Un Stream secuencial de objetos Factura
 	 */
-	public List<Pedido> darPedidosPorFechaEntrega(Timestamp fechaEntrega)
+	public Stream<Factura> recorrerFacturas ()
 	{
-		return sqlPedido.darPedidosPorFechaEntrega(pmf.getPersistenceManager(), fechaEntrega);
+		return new IteradorPaginas<Factura> (ultimo -> darFacturasPagina (ultimo == null ? 0 : ultimo.getNumero (), tamanoFetch), tamanoFetch).comoStream ();
 	}
-	
+		
 	/**
-	 * Método que elimina, de manera transaccional, una tupla en la tabla Pedido, la cual su estado de orden es 'Entregado'
+	 * Método que inserta, de manera transaccional y en lotes de JDBC, varias tuplas en la tabla FACTURA
+	 * A cada elemento se le asigna un nuevo identificador antes de insertarlo
 	 * Adiciona entradas al log de la aplicación
-	 * @param estadoOrden - El estado de orden del pedido
-	 * @return El número de tuplas eliminadas. -1 si ocurre alguna Excepción
+	 * @param facturas - Los objetos Factura a insertar
+	 * @return El número de tuplas insertadas por cada elemento, en el mismo orden de la lista. null si ocurre alguna Excepción
 	 */
-	public long eliminarPedidosTerminados (String estadoOrden) 
+	public long [] adicionarFactura (List<Factura> facturas)
 	{
-		PersistenceManager pm = pmf.getPersistenceManager();
-        Transaction tx=pm.currentTransaction();
+		PersistenceManager pm = null;
+        Transaction tx = null;
         try
         {
-            estadoOrden = "Entregado";
-        	tx.begin();
-            long resp = sqlPedido.eliminarPedidosTerminados(pm, estadoOrden);
+        	pm = abrirPersistenceManager ("adicionarFacturaLote");
+        	tx = pm.currentTransaction();
+            tx.begin();
+            for (Factura factura : facturas)
+            {
+            	factura.setNumero (nextval (darTablaFactura ()));
+            }
+            long [] resp = sqlFactura.adicionarFactura (pm, facturas, tamanoLote);
             tx.commit();
+            
+            log.trace ("Inserción en lote de facturas: " + facturas.size () + " tuplas insertadas");
+            
             return resp;
         }
         catch (Exception e)
         {
 //        	e.printStackTrace();
         	log.error ("Exception : " + e.getMessage() + "\n" + darDetalleException(e));
-            return -1;
+        	return null;
         }
         finally
         {
-            if (tx.isActive())
+            if (tx != null && tx.isActive())
             {
                 tx.rollback();
             }
-            pm.close();
+            if (pm != null)
+            {
+            	pm.close();
+            }
         }
 	}
 	
-	/**
-	 * Método que consulta todas las tuplas en la tabla Pedido
-	 * @return La lista de objetos Pedido, construidos con base en las tuplas de la tabla PEDIDO
-	 */
-	public List<Pedido> darPedidos()
-	{
-		return sqlPedido.darPedidos(pmf.getPersistenceManager());
-	}
-	
 	/* ****************************************************************
-	 * 			Métodos para manejar los SUBPEDIDOS
+	 * 			Métodos para manejar las PROMOCIONES
 	 *****************************************************************/
 	
 	/**
-	 * Método que inserta, de manera transaccional, una tupla en la tabla SUBPEDIDO
+	 * Método que inserta, de manera transaccional, una tupla en la tabla PROMOCION. Primero se a�ade un producto especial y luego es asociado con la promoci�n
 	 * Adiciona entradas al log de la aplicación
-	 * @param producto - El producto del subpedido
-	 * @param cantidad - La cantidad de unidades pedidas por producto
-	 * @param costo - El costo del subpedido
-	 * @return El objeto Subpedido adicionado. null si ocurre alguna Excepción
+	 * @param nombre - El nombre del producto
+	 * @param marca - Marca del producto
+	 * @param presentacion - Presentacion del producto
+	 * @param codigobarras - Código de barras del producto
+	 * @param unidadmedida - Las unidades de medida del producto
+	 * @param categoria - La categoria del producto (perecederos, no perecederos, aseo, abarrotes, etc)
+	 * @param tipo - El tipo de producto por categoria
+	 * @param descripcion de la promocion
+	 * @param fechainicio de la promocion
+	 * @param fechafin de la promocion
+	 * @param unidadesdisponibles para la promocion
+	 * @return El objeto Proveedor adicionado. null si ocurre alguna Excepción
 	 */
-	public Subpedido adicionarSubPedido(long producto, int cantidad, double costo)
+	public Promocion adicionarPromocion(String nombre, String marca, String presentacion, String codigobarras, String unidadmedida, String categoria, String tipo, double precio, String descripcion, Timestamp fechaInicio, Timestamp fechaFin, int unidadesdisponibles)
 	{
-		PersistenceManager pm = pmf.getPersistenceManager();
-        Transaction tx=pm.currentTransaction();
+		
+		PersistenceManager pm = null;
+        Transaction tx = null;
         try
         {
-            //adicionar subpedido
-        	
+        	pm = abrirPersistenceManager ("adicionarPromocion");
+        	tx = pm.currentTransaction();
         	tx.begin();
-            long idPedido = nextval ();
-            long tuplasInsertadas = sqlSubPedido.adicionarSubPedido(pm, idPedido, producto, cantidad, costo);
+            long idProducto = nextval (darTablaProducto ());
+            long tuplasInsertadas = sqlProducto.adicionarProducto(pm, idProducto, nombre, marca, presentacion, codigobarras, unidadmedida, categoria, tipo);
             tx.commit();
+            cacheProductos.invalidarTodo ();
+            Producto producto = new Producto(idProducto, nombre, marca, presentacion, codigobarras, unidadmedida, categoria, tipo);
+            buscadorProductos.agregar (Collections.singletonList (producto));
+            indiceCodigosBarras.agregarProductos (Collections.singletonList (producto));
             
-            log.trace ("Inserción del pedido: " + idPedido + ": " + tuplasInsertadas + " tuplas insertadas");
+            log.trace ("Insercion de producto: " + nombre + ": " + tuplasInsertadas + " tuplas insertadas");
             
-            return new Subpedido(producto, idPedido, cantidad, costo);
+            tx.begin();
+            long idPromocion = nextval (darTablaPromocion ());
+            long tuplasInsertadas2 = sqlPromocion.adicionarPromocion(pm, idPromocion, precio, descripcion, fechaInicio, fechaFin, unidadesdisponibles, idProducto);
+            tx.commit();
+            
+            log.trace ("Inserción de la promocion: " + descripcion + ": " + tuplasInsertadas2 + " tuplas insertadas");
+            
+            Promocion promocion = new  Promocion(idPromocion, precio, descripcion, fechaInicio, fechaFin, unidadesdisponibles, idProducto);
+            indicePromociones.agregar (promocion);
+            rankingPromociones.agregarPromocion (promocion);
+            return promocion;
         }
         catch (Exception e)
         {
@@ -1406,101 +4651,49 @@ public class PersistenciaSuperAndes {
         }
         finally
         {
-            if (tx.isActive())
+            if (tx != null && tx.isActive())
             {
                 tx.rollback();
             }
-            pm.close();
+            if (pm != null)
+            {
+            	pm.close();
+            }
         }
 	}
 	
 	/**
-	 * Método que elimina, de manera transaccional, una tupla en la tabla Subpedido, dado el identificador del pedido
+	 * Método que inserta, de manera transaccional y en lotes de JDBC, varias tuplas en la tabla PROMOCION
+	 * A cada elemento se le asigna un nuevo identificador antes de insertarlo
+	 * Los productos de las promociones deben existir
 	 * Adiciona entradas al log de la aplicación
-	 * @param idPedido - El identificador del pedido
-	 * @return El número de tuplas eliminadas. -1 si ocurre alguna Excepción
+	 * @param promociones - Los objetos Promocion a insertar
+	 * @return El número de tuplas insertadas por cada elemento, en el mismo orden de la lista. null si ocurre alguna Excepción
 	 */
-	public long eliminarSubPedidoPorId (long idPedido) 
+	public long [] adicionarPromocion (List<Promocion> promociones)
 	{
-		PersistenceManager pm = pmf.getPersistenceManager();
-        Transaction tx=pm.currentTransaction();
+		PersistenceManager pm = null;
+        Transaction tx = null;
         try
         {
+        	pm = abrirPersistenceManager ("adicionarPromocionLote");
+        	tx = pm.currentTransaction();
             tx.begin();
-            long resp = sqlSubPedido.eliminarSubPedidoPorId(pm, idPedido);
-            tx.commit();
-            return resp;
-        }
-        catch (Exception e)
-        {
-//        	e.printStackTrace();
-        	log.error ("Exception : " + e.getMessage() + "\n" + darDetalleException(e));
-            return -1;
-        }
-        finally
-        {
-            if (tx.isActive())
+            for (Promocion promocion : promociones)
             {
-                tx.rollback();
+            	promocion.setId (nextval (darTablaPromocion ()));
             }
-            pm.close();
-        }
-	}
-	
-	/**
-	 * Método que consulta todas las tuplas en la tabla Subpedido con un identificador dado
-	 * @param idPedido - El identificador del Pedido
-	 * @return El objeto Subpedido, construido con base en las tuplas de la tabla SUBPEDIDO con el identificador dado
-	 */
-	public Subpedido darSubPedidoPorId(long idPedido)
-	{
-		return sqlSubPedido.darSubPedidoPorId(pmf.getPersistenceManager(), idPedido);
-	}
-	
-	/**
-	 * Método que consulta todas las tuplas en la tabla Subpedido que tienen un producto dado
-	 * @param producto - El identificador del producto pedido
-	 * @return La lista de objetos Subpedido, construidos con base en las tuplas de la tabla SUBPEDIDO
-	 */
-	public List<Subpedido> darSubPedidosPorProducto(long producto)
-	{
-		return sqlSubPedido.darSubPedidosPorProducto(pmf.getPersistenceManager(), producto);
-	}
-	
-	/**
-	 * Método que consulta todas las tuplas en la tabla Subpedido
-	 * @return La lista de objetos Subpedido, construidos con base en las tuplas de la tabla `SUBPEDIDO
-	 */
-	public List<Subpedido> darSubPedidos()
-	{
-		return sqlSubPedido.darSubPedidos(pmf.getPersistenceManager());
-	}
-	
-	/* ****************************************************************
-	 * 			Métodos para manejar la relación OFRECEN
-	 *****************************************************************/
-	
-	/**
-	 * Método que inserta, de manera transaccional, una tupla en la tabla OFRECEN
-	 * Adiciona entradas al log de la aplicación
-	 * @param idProducto - El identificador del producto
-	 * @param idProveedor - El identificador del proveedor
-	 * @param costo - el costo del producto según el proveedor
-	 * @return El objeto Ofrecen adicionado. null si ocurre alguna Excepción
-	 */
-	public Ofrecen adicionarOfrecen(long idProducto, long idProveedor, double costo)
-	{
-		PersistenceManager pm = pmf.getPersistenceManager();
-        Transaction tx=pm.currentTransaction();
-        try
-        {
-        	tx.begin();
-            long tuplasInsertadas = sqlOfrecen.adicionarOfrecen(pm, idProducto, idProveedor, costo);
+            long [] resp = sqlPromocion.adicionarPromocion (pm, promociones, tamanoLote);
             tx.commit();
+            for (Promocion promocion : promociones)
+            {
+            	indicePromociones.agregar (promocion);
+            	rankingPromociones.agregarPromocion (promocion);
+            }
             
-            log.trace ("Inserción de ofrecen: [" + idProducto + ", " + idProveedor + "]. " + tuplasInsertadas + " tuplas insertadas");
+            log.trace ("Inserción en lote de promociones: " + promociones.size () + " tuplas insertadas");
             
-            return new Ofrecen(idProducto, idProveedor, costo);
+            return resp;
         }
         catch (Exception e)
         {
@@ -1510,30 +4703,41 @@ public class PersistenciaSuperAndes {
         }
         finally
         {
-            if (tx.isActive())
+            if (tx != null && tx.isActive())
             {
                 tx.rollback();
             }
-            pm.close();
+            if (pm != null)
+            {
+            	pm.close();
+            }
         }
 	}
-	
+
 	/**
-	 * Método que elimina, de manera transaccional, una tupla en la tabla Ofrecen, dado el identificador del producto y del proveedor
+	 * Método que elimina, de manera transaccional, una tupla en la tabla PROMOCION, dado su identificador
 	 * Adiciona entradas al log de la aplicación
-	 * @param idProducto - El identificador del producto
-	 * @param idProveedor - El identificador del proveedor
+	 * @param idPromocion - El identificador de la promoción
 	 * @return El número de tuplas eliminadas. -1 si ocurre alguna Excepción
 	 */
-	public long eliminarOfrecen(long idProducto, long idProveedor) 
+	public long eliminarPromocionPorId (long idPromocion)
 	{
-		PersistenceManager pm = pmf.getPersistenceManager();
-        Transaction tx=pm.currentTransaction();
+		PersistenceManager pm = null;
+        Transaction tx = null;
         try
         {
+        	pm = abrirPersistenceManager ("eliminarPromocionPorId");
+        	tx = pm.currentTransaction();
             tx.begin();
-            long resp = sqlOfrecen.eliminarOfrecen(pm, idProducto, idProveedor);
+            Long idProducto = sqlPromocion.darProductoPromocion (pm, idPromocion);
+            long resp = sqlPromocion.eliminarPromocionPorId (pm, idPromocion);
             tx.commit();
+            olvidarReferencias (darTablaPromocion ());
+            if (idProducto != null)
+            {
+            	indicePromociones.eliminar (idProducto, idPromocion);
+            	rankingPromociones.eliminarPromocion (idPromocion);
+            }
             return resp;
         }
         catch (Exception e)
@@ -1544,242 +4748,399 @@ public class PersistenciaSuperAndes {
         }
         finally
         {
-            if (tx.isActive())
+            if (tx != null && tx.isActive())
             {
                 tx.rollback();
             }
-            pm.close();
+            if (pm != null)
+            {
+            	pm.close();
+            }
         }
 	}
-	
+
 	/**
-	 * Método que consulta todas las tuplas en la tabla Ofrecen
-	 * @return La lista de objetos Ofrecen, construidos con base en las tuplas de la tabla OFRECEN
+	 * @return El índice en memoria de las promociones por producto e intervalo de vigencia
 	 */
-	public List<Ofrecen> darOfrecen()
+	public IndicePromociones darIndicePromociones ()
 	{
-		return sqlOfrecen.darOfrecen(pmf.getPersistenceManager());
+		return indicePromociones;
 	}
-	
+
 	/**
-	 * Método que encuentra el identificador y el número de productos que ofrecen los proveedores
-	 * @return Una lista de parejas de objetos, el primer elemento de cada pareja representa el identificador de un proveedor,
-	 * 	el segundo elemento representa el productos que ofrece.
+	 * Método que encuentra las promociones de un producto vigentes en un instante, con el índice en memoria
+	 * @param idProducto - El identificador del producto
+	 * @param instante - El instante
+	 * @return Las promociones vigentes, de la que empezó más recientemente a la más antigua. null si ocurre alguna Excepción
 	 */
-	public List<Object []> darProveedorYCantidadProductosOfrecen()
+	public List<Promocion> darPromocionesVigentes (long idProducto, Timestamp instante)
+	{
+		try
+		{
+			return indicePromociones.darPromocionesVigentes (idProducto, instante.getTime ());
+		}
+		catch (Exception e)
+		{
+        	log.error ("Exception : " + e.getMessage() + "\n" + darDetalleException(e));
+			return null;
+		}
+	}
+
+	/**
+	 * Método que encuentra las promociones vigentes en un instante de varios productos, por ejemplo los de una canasta, con el índice en memoria
+	 * @param productos - Los identificadores de los productos
+	 * @param instante - El instante
+	 * @return Las promociones vigentes de cada producto que tiene alguna. null si ocurre alguna Excepción
+	 */
+	public Map<Long, List<Promocion>> darPromocionesVigentes (Collection<Long> productos, Timestamp instante)
 	{
-		return sqlOfrecen.darProveedorYCantidadProductosOfrecen(pmf.getPersistenceManager());
+		try
+		{
+			return indicePromociones.darPromocionesVigentes (productos, instante.getTime ());
+		}
+		catch (Exception e)
+		{
+        	log.error ("Exception : " + e.getMessage() + "\n" + darDetalleException(e));
+			return null;
+		}
 	}
-	
-	/* ****************************************************************
-	 * 			Métodos para manejar los CLIENTES
-	 *****************************************************************/
-	
+
 	/**
-	 * Método que inserta, de manera transaccional, una tupla en la tabla CLIENTE
-	 * Adiciona entradas al log de la aplicación
-	 * @param nombre - El nombre del cliente
-	 * @param correo - El correo del cliente
-	 * @param tipo - El tipo de cliente(PERSONA, EMPRESA)
-	 * @param direccion - La direccion del cliente
-	 * @return El objeto Cliente adicionado. null si ocurre alguna Excepción
+	 * Método que lee de la base de datos todas las promociones de un producto, para el índice de promociones
+	 * @param idProducto - El identificador del producto
+	 * @return Las promociones del producto. null si ocurre alguna Excepción
 	 */
-	public Cliente adicionarCliente(String nombre, String correo, String tipo, String direccion)
+	List<Promocion> leerPromocionesPorProducto (long idProducto)
 	{
-		PersistenceManager pm = pmf.getPersistenceManager();
-        Transaction tx=pm.currentTransaction();
-        try
-        {
-        	
-        	tx.begin();
-        	long idCliente = nextval();
-            long tuplasInsertadas = sqlCliente.adicionarCliente(pm, idCliente, nombre, correo, tipo, direccion);
-            tx.commit();
-            
-            log.trace ("Inserción del cliente: " + idCliente + ": " + tuplasInsertadas + " tuplas insertadas");
-            
-            return new Cliente(idCliente, nombre, direccion, correo, tipo);
-        }
-        catch (Exception e)
-        {
-//        	e.printStackTrace();
+		try (PersistenceManager pm = abrirPersistenceManager ("leerPromocionesPorProducto"))
+		{
+			return sqlPromocion.darPromocionesProducto (pm, idProducto);
+		}
+		catch (Exception e)
+		{
         	log.error ("Exception : " + e.getMessage() + "\n" + darDetalleException(e));
-        	return null;
-        }
-        finally
-        {
-            if (tx.isActive())
-            {
-                tx.rollback();
-            }
-            pm.close();
-        }
+			return null;
+		}
+	}
+
+	/**
+	 * @return La clasificación en memoria de las promociones más populares
+	 */
+	public RankingPromociones darRankingPromociones ()
+	{
+		return rankingPromociones;
+	}
+
+	/**
+	 * Método que encuentra las promociones más populares (RFC2): las que más unidades vendieron por día de duración,
+	 * con la clasificación en memoria
+	 * @param n - El número de promociones deseado. A lo sumo el tamaño de la clasificación
+	 * @return Las promociones de la mejor a la peor, como {idPromocion, unidades vendidas, unidades por día}. null si ocurre alguna Excepción
+	 */
+	public List<Object []> darPromocionesPopulares (int n)
+	{
+		try
+		{
+			return rankingPromociones.darMejores (n);
+		}
+		catch (Exception e)
+		{
+        	log.error ("Exception : " + e.getMessage() + "\n" + darDetalleException(e));
+			return null;
+		}
 	}
-	
+
 	/**
-	 * Método que elimina, de manera transaccional, una tupla en la tabla Cliente, dado el identificador del cliente
-	 * Adiciona entradas al log de la aplicación
-	 * @param idCliente - El identificador del cliente
-	 * @return El número de tuplas eliminadas. -1 si ocurre alguna Excepción
+	 * Método que lee de la base de datos todas las promociones con sus unidades vendidas, para la clasificación de promociones
+	 * @return Las promociones como {idPromocion, fecha de inicio, fecha de fin, unidades vendidas}, con las fechas en milisegundos.
+	 * null si ocurre alguna Excepción
 	 */
-	public long eliminarClientePorId (long idCliente) 
+	List<long []> leerVentasPromociones ()
 	{
-		PersistenceManager pm = pmf.getPersistenceManager();
-        Transaction tx=pm.currentTransaction();
-        try
-        {
-            tx.begin();
-            long resp = sqlCliente.eliminarClientePorId(pm, idCliente);
-            tx.commit();
-            return resp;
-        }
-        catch (Exception e)
-        {
-//        	e.printStackTrace();
+		try (PersistenceManager pm = abrirPersistenceManager ("leerVentasPromociones"))
+		{
+			return sqlPromocion.darVentasPromociones (pm);
+		}
+		catch (Exception e)
+		{
         	log.error ("Exception : " + e.getMessage() + "\n" + darDetalleException(e));
-            return -1;
-        }
-        finally
-        {
-            if (tx.isActive())
-            {
-                tx.rollback();
-            }
-            pm.close();
-        }
+			return null;
+		}
 	}
 	
+	/* ****************************************************************
+	 * 			Métodos para manejar las TRANSACCIONES
+	 *****************************************************************/
 	/**
-	 * Método que elimina, de manera transaccional, una tupla en la tabla Cliente, dado el nombre del cliente
+	 * Método que inserta, de manera transaccional y en lotes de JDBC, varias tuplas en la tabla TRANSACCION
+	 * Las facturas de las transacciones deben existir
 	 * Adiciona entradas al log de la aplicación
-	 * @param nombre - El nombre del cliente
-	 * @return El número de tuplas eliminadas. -1 si ocurre alguna Excepción
+	 * @param transacciones - Los objetos Transaccion a insertar
+	 * @return El número de tuplas insertadas por cada elemento, en el mismo orden de la lista. null si ocurre alguna Excepción
 	 */
-	public long eliminarClientePorNombre(String nombre) 
+	public long [] adicionarTransaccion (List<Transaccion> transacciones)
 	{
-		PersistenceManager pm = pmf.getPersistenceManager();
-        Transaction tx=pm.currentTransaction();
+		PersistenceManager pm = null;
+        Transaction tx = null;
         try
         {
+        	pm = abrirPersistenceManager ("adicionarTransaccionLote");
+        	tx = pm.currentTransaction();
             tx.begin();
-            long resp = sqlCliente.eliminarClientePorNombre(pm, nombre);
+            long [] resp = sqlTransaccion.adicionarTransaccion (pm, transacciones, tamanoLote);
+            // El acumulado de ventas diarias se actualiza una vez por factura, con sus transacciones ya sumadas
+            Map<Long, Object []> facturas = new LinkedHashMap<Long, Object []> ();
+            for (Transaccion transaccion : transacciones)
+            {
+            	Object [] factura = facturas.computeIfAbsent (transaccion.getNumeroFactura (), k -> new Object [] {k, 0.0, 0});
+            	factura [1] = (double) factura [1] + transaccion.getCosto ();
+            	factura [2] = (int) factura [2] + 1;
+            }
+            sqlVentasDiarias.sumarVentasFacturas (pm, new ArrayList<Object []> (facturas.values ()), tamanoLote);
             tx.commit();
+            rankingPromociones.registrarTransacciones (transacciones);
+            
+            log.trace ("Inserción en lote de transacciones: " + transacciones.size () + " tuplas insertadas");
+            
             return resp;
         }
         catch (Exception e)
         {
 //        	e.printStackTrace();
         	log.error ("Exception : " + e.getMessage() + "\n" + darDetalleException(e));
-            return -1;
+        	return null;
         }
         finally
         {
-            if (tx.isActive())
+            if (tx != null && tx.isActive())
             {
                 tx.rollback();
             }
-            pm.close();
+            if (pm != null)
+            {
+            	pm.close();
+            }
         }
 	}
 	
 	/**
-	 * Método que consulta todas las tuplas en la tabla Cliente con un identificador dado
-	 * @param idCliente - El identificador del Cliente
-	 * @return El objeto Cliente, construido con base en las tuplas de la tabla CLIENTE con el identificador dado
+	 * Método que encola la inserción de varias tuplas en la tabla TRANSACCION en la cola de escritura diferida, que las inserta junto
+	 * con las de otras cajas en una sola transacción. Sin cola de transacciones, las inserta de inmediato con adicionarTransaccion
+	 * Las facturas de las transacciones deben existir
+	 * @param transacciones - Los objetos Transaccion a insertar
+	 * @return Un futuro que se completa con el número de tuplas insertadas cuando quedan confirmadas en la base de datos,
+	 * o con una excepción si la inserción se rechaza porque la cola está llena o si falla
 	 */
-	public Cliente darClientePorId(long idCliente)
+	public CompletableFuture<Integer> encolarTransacciones (List<Transaccion> transacciones)
 	{
-		return sqlCliente.darClientePorId(pmf.getPersistenceManager(), idCliente);
+		if (colaTransacciones != null)
+		{
+			return colaTransacciones.encolar (transacciones);
+		}
+		CompletableFuture<Integer> resp = new CompletableFuture<Integer> ();
+		long [] insertadas = adicionarTransaccion (transacciones);
+		if (insertadas != null)
+		{
+			resp.complete ((int) Arrays.stream (insertadas).sum ());
+		}
+		else
+		{
+			resp.completeExceptionally (new JDODataStoreException ("No se pudieron insertar " + transacciones.size () + " transacciones"));
+		}
+		return resp;
 	}
-	
+
 	/**
-	 * Método que consulta todas las tuplas en la tabla Cliente que tienen un nombre dado
-	 * @param nombre - El nombre del cliente
-	 * @return La lista de objetos Cliente, construidos con base en las tuplas de la tabla CLIENTE
+	 * @return La cola de escritura diferida de TRANSACCION. null si no está configurada
 	 */
-	public List<Cliente> darClientesPorNombre(String nombre)
+	public ColaTransacciones darColaTransacciones ()
 	{
-		return sqlCliente.darClientesPorNombre(pmf.getPersistenceManager(), nombre);
+		return colaTransacciones;
 	}
 	
 	/**
-	 * Método que consulta todas las tuplas en la tabla Cliente que tienen un tipo dado (PERSONA, EMPRESA)
-	 * @param tipo - El tipo del cliente (PERSONA, EMPRESA)
-	 * @return La lista de objetos Cliente, construidos con base en las tuplas de la tabla CLIENTE
+	 * Método que consulta una página de las tuplas en la tabla TRANSACCION, en orden de número de factura, producto y cantidad
+	 * @param despuesDeFactura - El número de factura de la última transacción de la página anterior. 0 para la primera página
+	 * @param despuesDeProducto - El producto de la última transacción de la página anterior. 0 para la primera página
+	 * @param despuesDeCantidad - La cantidad de la última transacción de la página anterior. 0 para la primera página
+	 * @param limite - El número máximo de tuplas de la página
+	 * @return La lista de objetos Transaccion de la página, con a lo sumo limite elementos
 	 */
-	public List<Cliente> darClientesPorTipo(String tipo)
+	public List<Transaccion> darTransaccionesPagina (long despuesDeFactura, long despuesDeProducto, int despuesDeCantidad, int limite)
 	{
-		return sqlCliente.darClientesPorTipo(pmf.getPersistenceManager(), tipo);
+		try (PersistenceManager pm = abrirPersistenceManager ("darTransaccionesPagina"))
+		{
+			return sqlTransaccion.darTransaccionesPagina (pm, despuesDeFactura, despuesDeProducto, despuesDeCantidad, limite);
+		}
 	}
 	
 	/**
-	 * Método que consulta todas las tuplas en la tabla Cliente
-	 * @return La lista de objetos Cliente, construidos con base en las tuplas de la tabla CLIENTE
+	 * Método que recorre todas las tuplas en la tabla TRANSACCION, en orden de número de factura, producto y cantidad, por páginas de tamanoFetch tuplas.
+	 * Sólo mantiene una página en memoria, sin importar el tamaño de la tabla
+	 * @return Un Stream secuencial de objetos Transaccion
 	 */
-	public List<Cliente> darClientes()
+	public Stream<Transaccion> recorrerTransacciones ()
 	{
-		return sqlCliente.darClientes(pmf.getPersistenceManager());
+		return new IteradorPaginas<Transaccion> (ultimo -> ultimo == null ? darTransaccionesPagina (0, 0, 0, tamanoFetch)
+				: darTransaccionesPagina (ultimo.getNumeroFactura (), ultimo.getProducto (), ultimo.getCantidad (), tamanoFetch), tamanoFetch).comoStream ();
 	}
-	
+
 	/* ****************************************************************
-	 * 			Métodos para manejar las FACTURAS
+	 * 			Métodos para manejar las FACTURAS por mes
 	 *****************************************************************/
-	
+
 	/**
-	 * Método que inserta, de manera transaccional, una tupla en la tabla FACTURA
+	 * Método que consulta las facturas de un rango de fechas, leyendo sólo las particiones mensuales del rango
+	 * @param desde - La fecha inicial, incluida
+	 * @param hasta - La fecha final, excluida
+	 * @return La lista de objetos Factura con fecha en el rango, en orden de fecha. null si ocurre alguna Excepción
+	 */
+	public List<Factura> darFacturasPorRangoFechas (Timestamp desde, Timestamp hasta)
+	{
+		try (PersistenceManager pm = abrirPersistenceManager ("darFacturasPorRangoFechas"))
+		{
+			return sqlFactura.darFacturasPorRangoFechas (pm, desde, hasta);
+		}
+		catch (Exception e)
+		{
+        	log.error ("Exception : " + e.getMessage() + "\n" + darDetalleException(e));
+			return null;
+		}
+	}
+
+	/**
+	 * Método que consulta las transacciones de las facturas de un rango de fechas, leyendo sólo las particiones mensuales del rango
+	 * @param desde - La fecha inicial de las facturas, incluida
+	 * @param hasta - La fecha final de las facturas, excluida
+	 * @return La lista de objetos Transaccion de las facturas del rango. null si ocurre alguna Excepción
+	 */
+	public List<Transaccion> darTransaccionesPorRangoFechas (Timestamp desde, Timestamp hasta)
+	{
+		try (PersistenceManager pm = abrirPersistenceManager ("darTransaccionesPorRangoFechas"))
+		{
+			return sqlTransaccion.darTransaccionesPorRangoFechas (pm, desde, hasta);
+		}
+		catch (Exception e)
+		{
+        	log.error ("Exception : " + e.getMessage() + "\n" + darDetalleException(e));
+			return null;
+		}
+	}
+
+	/**
+	 * Método que elimina de la base de datos las facturas de un mes, con sus transacciones, para sacar del sistema las ventas ya archivadas.
+	 * En Oracle, si FACTURA está particionada, elimina la partición del mes de FACTURA y, por referencia, la de TRANSACCION, fuera de
+	 * toda transacción porque la sentencia DDL confirma implícitamente. En la base de datos embebida, en una base de datos Oracle que
+	 * aún no se ha migrado con MigracionParticiones.sql y para los meses de la partición inicial, elimina las tuplas del mes en una
+	 * transacción. El acumulado de VENTASDIARIAS y el ranking de promociones conservan las ventas del mes
 	 * Adiciona entradas al log de la aplicación
-	 * @param fecha - Fecha de la factura
-	 * @param idCliente - El identificador del cliente de la factura
-	 * @param idSucursal - El identificador de la sucursal donde se generó la factura
-	 * @return El objeto Factura adicionado. null si ocurre alguna Excepción
+	 * @param mes - Un instante del mes. Sólo se tienen en cuenta el año y el mes
+	 * @return El número de facturas eliminadas. -1 si ocurre alguna Excepción
 	 */
-	public Factura adicionarFactura(Timestamp fecha, long idCliente, long idSucursal)
+	public long desprenderMesFacturas (Timestamp mes)
 	{
-		PersistenceManager pm = pmf.getPersistenceManager();
-        Transaction tx=pm.currentTransaction();
+		Timestamp desde = SQLFactura.darMes (mes);
+		Timestamp hasta = SQLFactura.darMesSiguiente (mes);
+		PersistenceManager pm = null;
+        Transaction tx = null;
         try
         {
-        	
-        	tx.begin();
-        	long idFactura = nextval();
-            long tuplasInsertadas = sqlFactura.adicionarFactura(pm, idFactura, fecha, idCliente, idSucursal);
-            tx.commit();
+        	pm = abrirPersistenceManager ("desprenderMesFacturas");
+        	tx = pm.currentTransaction();
+            long resp;
+            if (particionesNativas && !desde.before (SQLFactura.FIN_PARTICION_INICIAL) && sqlFactura.estaParticionada (pm))
+            {
+            	resp = sqlFactura.contarFacturasPorRangoFechas (pm, desde, hasta);
+            	if (resp > 0)
+            	{
+            		// Un mes sin facturas puede no tener partición todavía
+            		sqlFactura.eliminarParticion (pm, desde);
+            	}
+            }
+            else
+            {
+            	if (particionesNativas && !desde.before (SQLFactura.FIN_PARTICION_INICIAL))
+            	{
+            		log.warn ("La tabla " + darTablaFactura () + " no está particionada, ejecute MigracionParticiones.sql. Se eliminan las tuplas del mes");
+            	}
+            	tx.begin();
+            	sqlTransaccion.eliminarTransaccionesPorRangoFechas (pm, desde, hasta);
+            	resp = sqlFactura.eliminarFacturasPorRangoFechas (pm, desde, hasta);
+            	tx.commit();
+            }
             
-            log.trace ("Inserción del cliente: " + idCliente + ": " + tuplasInsertadas + " tuplas insertadas");
+            log.info ("Desprendido el mes de facturas que comienza en " + desde + ": " + resp + " facturas eliminadas");
             
-            return new Factura(idFactura, idSucursal, fecha, idCliente);
+            return resp;
         }
         catch (Exception e)
         {
 //        	e.printStackTrace();
         	log.error ("Exception : " + e.getMessage() + "\n" + darDetalleException(e));
-        	return null;
+            return -1;
         }
         finally
         {
-            if (tx.isActive())
+            if (tx != null && tx.isActive())
             {
                 tx.rollback();
             }
-            pm.close();
+            if (pm != null)
+            {
+            	pm.close();
+            }
         }
 	}
-	
+
+	/* ****************************************************************
+	 * 			Métodos para manejar las VENTAS DIARIAS
+	 *****************************************************************/
+
 	/**
-	 * Método que elimina, de manera transaccional, una tupla en la tabla Factura, dado el identificador de la factura
+	 * Método que encuentra las ventas de cada sucursal en un rango de días (RFC1), sumando el acumulado diario en lugar de
+	 * recorrer las tablas TRANSACCION y FACTURA
+	 * @param desde - El primer día del rango. Sólo se tiene en cuenta el día
+	 * @param hasta - El último día del rango, incluido. Sólo se tiene en cuenta el día
+	 * @return Una lista de parejas de objetos, el primer elemento de cada pareja representa el identificador de una sucursal,
+	 * 	el segundo elemento representa la suma de los costos de sus transacciones en el rango. null si ocurre alguna Excepción
+	 */
+	public List<Object []> darVentasPorSucursal (Timestamp desde, Timestamp hasta)
+	{
+		try (PersistenceManager pm = abrirPersistenceManager ("darVentasPorSucursal"))
+		{
+			return new ArrayList<Object []> (sqlVentasDiarias.darVentasPorSucursal (pm, desde, hasta));
+		}
+		catch (Exception e)
+		{
+        	log.error ("Exception : " + e.getMessage() + "\n" + darDetalleException(e));
+			return null;
+		}
+	}
+
+	/**
+	 * Método que vuelve a calcular, de manera transaccional, el acumulado de ventas diarias de un rango de días a partir
+	 * de las tablas TRANSACCION y FACTURA. Sirve para cargar el histórico anterior al acumulado o para corregirlo después
+	 * de cambios hechos directamente en la base de datos. Las ventas de los días del rango que se registren mientras se
+	 * reconstruye pueden quedar por fuera, por lo que conviene reconstruir días ya cerrados
 	 * Adiciona entradas al log de la aplicación
-	 * @param idFactura - El identificador de la factura
-	 * @return El número de tuplas eliminadas. -1 si ocurre alguna Excepción
+	 * @param desde - El primer día del rango. Sólo se tiene en cuenta el día
+	 * @param hasta - El último día del rango, incluido. Sólo se tiene en cuenta el día
+	 * @return El número de días de sucursales calculados. -1 si ocurre alguna Excepción
 	 */
-	public long eliminarFacturaPorId (long idFactura) 
+	public long reconstruirVentasDiarias (Timestamp desde, Timestamp hasta)
 	{
-		PersistenceManager pm = pmf.getPersistenceManager();
-        Transaction tx=pm.currentTransaction();
+		PersistenceManager pm = null;
+        Transaction tx = null;
         try
         {
+        	pm = abrirPersistenceManager ("reconstruirVentasDiarias");
+        	tx = pm.currentTransaction();
             tx.begin();
-            long resp = sqlFactura.eliminarFacturaPorNumero(pm, idFactura);
+            long resp = sqlVentasDiarias.reconstruirVentas (pm, desde, hasta);
             tx.commit();
+            
+            log.info ("Reconstrucción de ventas diarias de " + desde + " a " + hasta + ": " + resp + " días de sucursales calculados");
+            
             return resp;
         }
         catch (Exception e)
@@ -1790,126 +5151,60 @@ public class PersistenciaSuperAndes {
         }
         finally
         {
-            if (tx.isActive())
+            if (tx != null && tx.isActive())
             {
                 tx.rollback();
             }
-            pm.close();
+            if (pm != null)
+            {
+            	pm.close();
+            }
         }
 	}
-	
-	/**
-	 * Método que consulta todas las tuplas en la tabla Factura con un identificador dado
-	 * @param idFactura- El identificador de la Factura
-	 * @return El objeto Factura, construido con base en las tuplas de la tabla FACTURA con el identificador dado
-	 */
-	public Factura darFacturaPorId(long idFactura)
-	{
-		return sqlFactura.darFacturaPorNumero(pmf.getPersistenceManager(), idFactura);
-	}
-	
-	/**
-	 * Método que consulta todas las tuplas en la tabla Factura que tienen un identificador dado
-	 * @param idFactura - El identificador de la factura
-	 * @return La lista de objetos Factura, construidos con base en las tuplas de la tabla FACTURA
-	 */
-	public List<Factura> darFacturasPorId(long idFactura)
-	{
-		return sqlFactura.darFacturasPorNumero(pmf.getPersistenceManager(), idFactura);
-	}
-	
-	/**
-	 * Método que consulta todas las tuplas en la tabla Factura que tienen un cliente dado
-	 * @param idCliente - El identificador del cliente de la factura
-	 * @return La lista de objetos Factura, construidos con base en las tuplas de la tabla FACTURA
-	 */
-	public List<Factura> darFacturasPorCliente(long idCliente)
-	{
-		return sqlFactura.darFacturasPorCliente(pmf.getPersistenceManager(), idCliente);
-	}
-	
-	/**
-	 * Método que consulta todas las tuplas en la tabla Factura que tienen una sucursal dada
-	 * @param idSucursal - El identificador de la sucursal de la factura
-	 * @return La lista de objetos Factura, construidos con base en las tuplas de la tabla FACTURA
-	 */
-	public List<Factura> darFacturasPorSucursal(long idSucursal)
-	{
-		return sqlFactura.darFacturasPorSucursal(pmf.getPersistenceManager(), idSucursal);
-	}
-	
-	/**
-	 * Método que consulta todas las tuplas en la tabla Factura que tienen una fecha dada
-	 * @param fecha - La fecha en la que se generó la factura
-	 * @return La lista de objetos Factura, construidos con base en las tuplas de la tabla FACTURA
-	 */
-	public List<Factura> darFacturasPorFecha(Timestamp fecha)
-	{
-		return sqlFactura.darFacturasPorFecha(pmf.getPersistenceManager(), fecha);
-	}
-	
-	/**
-	 * Método que consulta todas las tuplas en la tabla Factura que tienen una sucursal dada y un cliente dado
-	 * @param idSucursal - El identificador de la sucursal de la factura
-	 * @param idCliente - El cliente de la factura
-	 * @return La lista de objetos Factura, construidos con base en las tuplas de la tabla FACTURA
-	 */
-	public List<Factura> darFacturasPorClienteYSucursal(long idCliente, long idSucursal)
-	{
-		return sqlFactura.darFacturasPorClienteYSucursal(pmf.getPersistenceManager(), idCliente, idSucursal);
-	}
-	
-	/**
-	 * Método que consulta todas las tuplas en la tabla Factura
-	 * @return La lista de objetos Factura, construidos con base en las tuplas de la tabla FACTURA
-	 */
-	public List<Factura> darFacturas()
-	{
-		return sqlFactura.darFacturas(pmf.getPersistenceManager());
-	}
-		
+
 	/* ****************************************************************
-	 * 			Métodos para manejar las PROMOCIONES
+	 * 			Métodos para administración
 	 *****************************************************************/
-	
+
 	/**
-	 * Método que inserta, de manera transaccional, una tupla en la tabla PROMOCION. Primero se a�ade un producto especial y luego es asociado con la promoci�n
-	 * Adiciona entradas al log de la aplicación
-	 * @param nombre - El nombre del producto
-	 * @param marca - Marca del producto
-	 * @param presentacion - Presentacion del producto
-	 * @param codigobarras - Código de barras del producto
-	 * @param unidadmedida - Las unidades de medida del producto
-	 * @param categoria - La categoria del producto (perecederos, no perecederos, aseo, abarrotes, etc)
-	 * @param tipo - El tipo de producto por categoria
-	 * @param descripcion de la promocion
-	 * @param fechainicio de la promocion
-	 * @param fechafin de la promocion
-	 * @param unidadesdisponibles para la promocion
-	 * @return El objeto Proveedor adicionado. null si ocurre alguna Excepción
+	 * Elimina todas las tuplas de todas las tablas de la base de datos de SuperAndes
+	 * Crea y ejecuta las sentencias SQL para cada tabla de la base de datos - EL ORDEN ES IMPORTANTE 
+	 * @return Un arreglo con 15 números que indican el número de tuplas borradas en las tablas TRANSACCION, PROMOCION, FACTURA, CLIENTE,
+	 * OFRECEN, SUBPEDIDO, PEDIDO, PROVEEDOR, VENDE, ESTANTE, BODEGA, PRODUCTO, SUCURSAL, SUPERMERCADO y VENTASDIARIAS, respectivamente. null si ocurre alguna Excepción
 	 */
-	public Promocion adicionarPromocion(String nombre, String marca, String presentacion, String codigobarras, String unidadmedida, String categoria, String tipo, double precio, String descripcion, Timestamp fechaInicio, Timestamp fechaFin, int unidadesdisponibles)
+	public long [] limpiarSuperAndes ()
 	{
-		
-		PersistenceManager pm = pmf.getPersistenceManager();
-        Transaction tx=pm.currentTransaction();
+		PersistenceManager pm = null;
+        Transaction tx = null;
         try
         {
-        	tx.begin();
-            long idProducto = nextval ();
-            long tuplasInsertadas = sqlProducto.adicionarProducto(pm, idProducto, nombre, marca, presentacion, codigobarras, unidadmedida, categoria, tipo);
-            tx.commit();
-            
-            log.trace ("Insercion de producto: " + nombre + ": " + tuplasInsertadas + " tuplas insertadas");
-            
+        	pm = abrirPersistenceManager ("limpiarSuperAndes");
+        	tx = pm.currentTransaction();
             tx.begin();
-            long idPromocion = nextval ();
-            long tuplasInsertadas2 = sqlPromocion.adicionarPromocion(pm, idPromocion, precio, descripcion, fechaInicio, fechaFin, unidadesdisponibles, idProducto);
-            tx.commit();
-            
-            log.trace ("Inserción de la promocion: " + descripcion + ": " + tuplasInsertadas2 + " tuplas insertadas");
-            
-            return new  Promocion(idPromocion, precio, descripcion, fechaInicio, fechaFin, unidadesdisponibles, idProducto);
+            long [] resp = sqlUtil.limpiarSuperAndes (pm);
+            tx.commit ();
+            if (inventario != null)
+            {
+            	inventario.limpiar ();
+            }
+            indicePromociones.limpiar ();
+            rankingPromociones.limpiar ();
+            monitorOcupacion.limpiar ();
+            indiceSurtido.invalidar ();
+            buscadorProductos.invalidar ();
+            indiceCodigosBarras.limpiar ();
+            tablaPrecios.limpiar ();
+            referenciasVerificadas.clear ();
+            if (diarioVentas != null)
+            {
+            	diarioVentas.descartarPendientes ();
+            }
+            for (CacheCatalogo<String, ?> cache : darCachesCatalogo ())
+            {
+            	cache.invalidarTodo ();
+            }
+            log.info ("Borrada la base de datos");
+            return resp;
         }
         catch (Exception e)
         {
@@ -1919,15 +5214,22 @@ public class PersistenciaSuperAndes {
         }
         finally
         {
-            if (tx.isActive())
+            if (tx != null && tx.isActive())
             {
                 tx.rollback();
             }
-            pm.close();
+            if (pm != null)
+            {
+            	pm.close();
+            }
         }
 	}
-	
-	/* ****************************************************************
-	 * 			Métodos para manejar las TRANSACCIONES
-	 *****************************************************************/
+
+	/**
+	 * @return El generador de identificadores por bloques de SuperAndes
+	 */
+	AsignadorIdentificadores darAsignadorIdentificadores ()
+	{
+		return asignadorIds;
+	}
 }
@@ -0,0 +1,315 @@
+package uniandes.isis2304.superandes.persistencia;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import org.apache.log4j.Logger;
+
+import uniandes.isis2304.superandes.negocio.Promocion;
+import uniandes.isis2304.superandes.negocio.Transaccion;
+
+/**
+ * Clasificación en memoria de las promociones más populares (RFC2): las que más unidades vendieron por día de duración.
+ * Lleva un contador de unidades vendidas por promoción y un montículo de mínimos con las mejores, de tamaño fijo. Como los contadores
+ * sólo crecen, una promoción que no está en el montículo sólo entra cuando supera a la peor de él, de manera que registrar una venta
+ * cuesta O(log k) y consultar las mejores no toca la base de datos.
+ * Los contadores se leen de la base de datos en la primera consulta, con una única agrupación de TRANSACCION por promoción;
+ * después, el manejador de persistencia registra cada transacción con promoción una vez confirmada. Antes de esa lectura no se
+ * registra nada, porque la lectura ya incluye todo lo confirmado
+ *
+ * @author n.cobos, jf.torresp
+ */
+public class RankingPromociones
+{
+	/* ****************************************************************
+	 * 			Constantes
+	 *****************************************************************/
+	/**
+	 * Logger para escribir la traza de la ejecución
+	 */
+	private static Logger log = Logger.getLogger(RankingPromociones.class.getName());
+
+	/**
+	 * Número de promociones que se mantienen clasificadas por defecto
+	 */
+	public final static int TAMANO_DEFECTO = 20;
+
+	/**
+	 * Milisegundos en un día
+	 */
+	private final static double DIA = 24 * 60 * 60 * 1000;
+
+	/**
+	 * Orden de las promociones de la peor a la mejor: menos ventas por día y, en empate, mayor identificador
+	 */
+	private final static Comparator<Contador> ORDEN = Comparator.comparingDouble (Contador::darVentasPorDia)
+			.thenComparing (Comparator.comparingLong ((Contador c) -> c.idPromocion).reversed ());
+
+	/* ****************************************************************
+	 * 			Atributos
+	 *****************************************************************/
+	/**
+	 * El manejador de persistencia
+	 */
+	private final PersistenciaSuperAndes pp;
+
+	/**
+	 * Número de promociones que se mantienen clasificadas
+	 */
+	private final int tamano;
+
+	/**
+	 * Los contadores de todas las promociones, por identificador
+	 */
+	private final Map<Long, Contador> contadores;
+
+	/**
+	 * Las mejores promociones, con la peor de ellas en la raíz
+	 */
+	private final PriorityQueue<Contador> mejores;
+
+	/**
+	 * Indica si los contadores ya se leyeron de la base de datos
+	 */
+	private boolean cargado;
+
+	/**
+	 * Número de transacciones registradas desde la última carga
+	 */
+	private long registradas;
+
+	/**
+	 * Las ventas de una promoción
+	 */
+	private static class Contador
+	{
+		/**
+		 * El identificador de la promoción
+		 */
+		private final long idPromocion;
+
+		/**
+		 * La duración de la promoción, en días. Al menos 1
+		 */
+		private final double dias;
+
+		/**
+		 * Las unidades vendidas con la promoción
+		 */
+		private long unidades;
+
+		/**
+		 * Indica si la promoción está en el montículo de las mejores
+		 */
+		private boolean enMejores;
+
+		/**
+		 * Constructor
+		 * @param idPromocion - El identificador de la promoción
+		 * @param inicio - La fecha de inicio, en milisegundos
+		 * @param fin - La fecha de fin, en milisegundos
+		 * @param unidades - Las unidades vendidas con la promoción
+		 */
+		public Contador (long idPromocion, long inicio, long fin, long unidades)
+		{
+			this.idPromocion = idPromocion;
+			this.dias = Math.max (1, (fin - inicio) / DIA);
+			this.unidades = unidades;
+		}
+
+		/**
+		 * @return Las unidades vendidas por día de duración
+		 */
+		public double darVentasPorDia ()
+		{
+			return unidades / dias;
+		}
+	}
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	/**
+	 * Constructor. Los contadores se leen con cargar
+	 * @param pp - El manejador de persistencia
+	 * @param tamano - Número de promociones que se mantienen clasificadas
+	 */
+	RankingPromociones (PersistenciaSuperAndes pp, int tamano)
+	{
+		this.pp = pp;
+		this.tamano = tamano;
+		this.contadores = new HashMap<Long, Contador> ();
+		this.mejores = new PriorityQueue<Contador> (tamano + 1, ORDEN);
+	}
+
+	/**
+	 * Lee de la base de datos las promociones y las unidades vendidas con cada una, y vuelve a armar la clasificación.
+	 * Las ventas que se confirmen mientras se leen pueden quedar contadas dos veces, por lo que fuera de la primera consulta sólo debe
+	 * llamarse sin ventas en curso, como después de una carga masiva
+	 * @return true si se pudieron leer
+	 */
+	public synchronized boolean cargar ()
+	{
+		List<long []> ventas = pp.leerVentasPromociones ();
+		if (ventas == null)
+		{
+			return false;
+		}
+		contadores.clear ();
+		for (long [] venta : ventas)
+		{
+			contadores.put (venta [0], new Contador (venta [0], venta [1], venta [2], venta [3]));
+		}
+		rearmar ();
+		cargado = true;
+		registradas = 0;
+		log.info ("Clasificación de promociones cargada: " + contadores.size () + " promociones");
+		return true;
+	}
+
+	/**
+	 * Vuelve a armar el montículo de las mejores a partir de todos los contadores
+	 */
+	private void rearmar ()
+	{
+		for (Contador contador : mejores)
+		{
+			contador.enMejores = false;
+		}
+		mejores.clear ();
+		for (Contador contador : contadores.values ())
+		{
+			ofrecer (contador);
+		}
+	}
+
+	/**
+	 * Agrega un contador que no está en el montículo si está entre los mejores, sacando al peor si sobra
+	 * @param contador - El contador
+	 */
+	private void ofrecer (Contador contador)
+	{
+		if (mejores.size () < tamano)
+		{
+			mejores.add (contador);
+			contador.enMejores = true;
+		}
+		else if (tamano > 0 && ORDEN.compare (contador, mejores.peek ()) > 0)
+		{
+			mejores.poll ().enMejores = false;
+			mejores.add (contador);
+			contador.enMejores = true;
+		}
+	}
+
+	/**
+	 * Registra una promoción ya confirmada en la base de datos, sin ventas
+	 * @param promocion - La promoción
+	 */
+	public synchronized void agregarPromocion (Promocion promocion)
+	{
+		if (cargado && !contadores.containsKey (promocion.getId ()))
+		{
+			Contador contador = new Contador (promocion.getId (), promocion.getFechaInicio ().getTime (), promocion.getFechaFin ().getTime (), 0);
+			contadores.put (contador.idPromocion, contador);
+			ofrecer (contador);
+		}
+	}
+
+	/**
+	 * Olvida una promoción ya eliminada de la base de datos
+	 * @param idPromocion - El identificador de la promoción
+	 */
+	public synchronized void eliminarPromocion (long idPromocion)
+	{
+		Contador contador = contadores.remove (idPromocion);
+		if (contador != null && contador.enMejores)
+		{
+			rearmar ();
+		}
+	}
+
+	/**
+	 * Suma a los contadores las unidades de las transacciones con promoción, ya confirmadas en la base de datos
+	 * @param transacciones - Las transacciones. Se ignoran las que no tienen promoción
+	 */
+	public synchronized void registrarTransacciones (List<Transaccion> transacciones)
+	{
+		if (!cargado)
+		{
+			return;
+		}
+		for (Transaccion transaccion : transacciones)
+		{
+			Contador contador = transaccion.getPromocion () > 0 ? contadores.get (transaccion.getPromocion ()) : null;
+			if (contador == null)
+			{
+				continue;
+			}
+			// Un elemento del montículo no puede cambiar de prioridad dentro de él
+			if (contador.enMejores)
+			{
+				mejores.remove (contador);
+				contador.unidades += transaccion.getCantidad ();
+				mejores.add (contador);
+			}
+			else
+			{
+				contador.unidades += transaccion.getCantidad ();
+				ofrecer (contador);
+			}
+			registradas++;
+		}
+	}
+
+	/**
+	 * @param n - El número de promociones deseado. A lo sumo el tamaño de la clasificación
+	 * @return Las n promociones con más unidades vendidas por día, de la mejor a la peor, como {idPromocion, unidades vendidas, unidades por día}.
+	 * null si no se han podido leer los contadores de la base de datos
+	 */
+	public synchronized List<Object []> darMejores (int n)
+	{
+		if (!cargado && !cargar ())
+		{
+			return null;
+		}
+		List<Contador> ordenados = new ArrayList<Contador> (mejores);
+		Collections.sort (ordenados, ORDEN.reversed ());
+		List<Object []> resp = new ArrayList<Object []> ();
+		for (Contador contador : ordenados.subList (0, Math.min (n, ordenados.size ())))
+		{
+			resp.add (new Object [] {contador.idPromocion, contador.unidades, contador.darVentasPorDia ()});
+		}
+		return resp;
+	}
+
+	/**
+	 * Olvida todas las promociones, que ya no están en la base de datos
+	 */
+	public synchronized void limpiar ()
+	{
+		contadores.clear ();
+		rearmar ();
+		cargado = true;
+		registradas = 0;
+	}
+
+	/**
+	 * @return El número de promociones que se mantienen clasificadas
+	 */
+	public int darTamano ()
+	{
+		return tamano;
+	}
+
+	@Override
+	public synchronized String toString ()
+	{
+		return "RankingPromociones [tamano=" + tamano + ", promociones=" + contadores.size () + ", registradas=" + registradas + ", cargado=" + cargado + "]";
+	}
+}
@@ -0,0 +1,370 @@
+package uniandes.isis2304.superandes.persistencia;
+
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Registro de las sentencias SQL lentas, con el número de tuplas afectadas o retornadas y el número de parámetros.
+ * Los valores de los parámetros (identificadores de clientes, nombres, etc.) sólo se escriben si se pide explícitamente.
+ * Una sentencia es lenta si tarda más que su umbral: el de su nombre (como SQLFactura.darFacturasPorCliente), el de su clase SQL
+ * (como SQLFactura) o, si no tiene, el umbral por defecto. Además, una fracción configurable de las sentencias rápidas
+ * se registra como muestra, para conocer el comportamiento normal.
+ * Las entradas se ponen en una cola acotada y las escribe un hilo aparte en el log de esta clase, de manera que registrar
+ * nunca bloquea la transacción: si la cola está llena, la entrada se descarta y se cuenta
+ *
+ * @author n.cobos, jf.torresp
+ */
+public class RegistroConsultasLentas
+{
+	/* ****************************************************************
+	 * 			Constantes
+	 *****************************************************************/
+	/**
+	 * Logger donde se escriben las sentencias lentas. log4j.properties lo dirige a su propio archivo
+	 */
+	private static Logger log = Logger.getLogger(RegistroConsultasLentas.class.getName());
+
+	/**
+	 * Umbral por defecto, en milisegundos
+	 */
+	public final static long UMBRAL_DEFECTO = 200;
+
+	/**
+	 * Capacidad por defecto de la cola de entradas pendientes de escribir
+	 */
+	public final static int CAPACIDAD_DEFECTO = 10000;
+
+	/* ****************************************************************
+	 * 			Atributos
+	 *****************************************************************/
+	/**
+	 * Umbral por defecto, en nanosegundos
+	 */
+	private final long umbralDefecto;
+
+	/**
+	 * Umbrales configurados por nombre de sentencia o de clase SQL, en nanosegundos
+	 */
+	private final Map<String, Long> umbrales;
+
+	/**
+	 * Umbral ya resuelto de cada nombre de sentencia, en nanosegundos
+	 */
+	private final ConcurrentHashMap<String, Long> umbralesResueltos;
+
+	/**
+	 * Fracción de las sentencias rápidas que se registran como muestra, entre 0 y 1
+	 */
+	private final double muestreo;
+
+	/**
+	 * Indica si se escriben los valores de los parámetros. Si no, sólo se escribe cuántos son
+	 */
+	private final boolean registrarParametros;
+
+	/**
+	 * Las entradas pendientes de escribir
+	 */
+	private final BlockingQueue<Entrada> cola;
+
+	/**
+	 * El hilo que escribe las entradas
+	 */
+	private final Thread escritor;
+
+	/**
+	 * Número de sentencias lentas registradas
+	 */
+	private final AtomicLong lentas;
+
+	/**
+	 * Número de muestras de sentencias rápidas registradas
+	 */
+	private final AtomicLong muestras;
+
+	/**
+	 * Número de entradas descartadas por tener la cola llena
+	 */
+	private final AtomicLong descartadas;
+
+	/**
+	 * Una ejecución de una sentencia que se debe escribir
+	 */
+	private static class Entrada
+	{
+		/**
+		 * Momento de la ejecución, en milisegundos
+		 */
+		private final long momento;
+
+		/**
+		 * El hilo que la ejecutó
+		 */
+		private final String hilo;
+
+		/**
+		 * El nombre de la sentencia
+		 */
+		private final String nombre;
+
+		/**
+		 * El texto de la sentencia
+		 */
+		private final String sentencia;
+
+		/**
+		 * Los parámetros. Puede ser null
+		 */
+		private final Object [] parametros;
+
+		/**
+		 * La duración, en nanosegundos
+		 */
+		private final long nanos;
+
+		/**
+		 * El número de tuplas afectadas o retornadas
+		 */
+		private final long filas;
+
+		/**
+		 * Indica si la ejecución lanzó una excepción
+		 */
+		private final boolean error;
+
+		/**
+		 * Indica si es una muestra de una sentencia rápida
+		 */
+		private final boolean muestra;
+
+		/**
+		 * Constructor
+		 * @param nombre - El nombre de la sentencia
+		 * @param sentencia - El texto de la sentencia
+		 * @param parametros - Los parámetros. Puede ser null
+		 * @param nanos - La duración, en nanosegundos
+		 * @param filas - El número de tuplas afectadas o retornadas
+		 * @param error - Indica si la ejecución lanzó una excepción
+		 * @param muestra - Indica si es una muestra de una sentencia rápida
+		 */
+		public Entrada (String nombre, String sentencia, Object [] parametros, long nanos, long filas, boolean error, boolean muestra)
+		{
+			this.momento = System.currentTimeMillis ();
+			this.hilo = Thread.currentThread ().getName ();
+			this.nombre = nombre;
+			this.sentencia = sentencia;
+			this.parametros = parametros;
+			this.nanos = nanos;
+			this.filas = filas;
+			this.error = error;
+			this.muestra = muestra;
+		}
+
+		@Override
+		public String toString ()
+		{
+			return String.format ("%s [%s] %s %s %.3f ms, %d filas%s: %s %s", new SimpleDateFormat ("yyyy-MM-dd HH:mm:ss.SSS").format (new Date (momento)),
+					hilo, muestra ? "MUESTRA" : "LENTA", nombre, nanos / 1e6, filas, error ? ", ERROR" : "", sentencia,
+					parametros == null ? "[]" : Arrays.deepToString (parametros));
+		}
+	}
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	/**
+	 * Constructor. Inicia el hilo que escribe las entradas
+	 * @param umbralDefectoMs - El umbral de las sentencias sin umbral propio, en milisegundos
+	 * @param umbralesMs - Los umbrales por nombre de sentencia o de clase SQL, en milisegundos
+	 * @param muestreo - Fracción de las sentencias rápidas que se registran como muestra, entre 0 y 1
+	 * @param capacidad - El número máximo de entradas pendientes de escribir
+	 * @param registrarParametros - Indica si se escriben los valores de los parámetros. Si no, sólo se escribe cuántos son
+	 */
+	public RegistroConsultasLentas (long umbralDefectoMs, Map<String, Long> umbralesMs, double muestreo, int capacidad, boolean registrarParametros)
+	{
+		if (umbralDefectoMs < 0 || muestreo < 0 || muestreo > 1 || capacidad < 1)
+		{
+			throw new IllegalArgumentException ("Configuración inválida del registro de consultas lentas: umbral " + umbralDefectoMs
+					+ " ms, muestreo " + muestreo + ", capacidad " + capacidad);
+		}
+		this.umbralDefecto = TimeUnit.MILLISECONDS.toNanos (umbralDefectoMs);
+		this.umbrales = new HashMap<String, Long> ();
+		for (Map.Entry<String, Long> umbral : umbralesMs.entrySet ())
+		{
+			umbrales.put (umbral.getKey (), TimeUnit.MILLISECONDS.toNanos (umbral.getValue ()));
+		}
+		this.umbralesResueltos = new ConcurrentHashMap<String, Long> ();
+		this.muestreo = muestreo;
+		this.registrarParametros = registrarParametros;
+		this.cola = new ArrayBlockingQueue<Entrada> (capacidad);
+		this.lentas = new AtomicLong ();
+		this.muestras = new AtomicLong ();
+		this.descartadas = new AtomicLong ();
+
+		escritor = new Thread (this::escribir, "superandes-consultas-lentas");
+		escritor.setDaemon (true);
+		escritor.start ();
+	}
+
+	/**
+	 * Registra una ejecución si es lenta o si sale en la muestra. No bloquea
+	 * @param nombre - El nombre de la sentencia, como SQLFactura.darFacturasPorCliente
+	 * @param sentencia - El texto de la sentencia
+	 * @param parametros - Los parámetros. Puede ser null
+	 * @param nanos - La duración, en nanosegundos
+	 * @param filas - El número de tuplas afectadas o retornadas
+	 * @param error - Indica si la ejecución lanzó una excepción
+	 */
+	public void registrar (String nombre, String sentencia, Object [] parametros, long nanos, long filas, boolean error)
+	{
+		boolean lenta = nanos > darUmbral (nombre);
+		if (!lenta && (muestreo == 0 || ThreadLocalRandom.current ().nextDouble () >= muestreo))
+		{
+			return;
+		}
+		if (cola.offer (new Entrada (nombre, sentencia, parametros, nanos, filas, error, !lenta)))
+		{
+			(lenta ? lentas : muestras).incrementAndGet ();
+		}
+		else
+		{
+			descartadas.incrementAndGet ();
+		}
+	}
+
+	/**
+	 * @return true si se escriben los valores de los parámetros, false si sólo se escribe cuántos son
+	 */
+	public boolean registraParametros ()
+	{
+		return registrarParametros;
+	}
+
+	/**
+	 * @param nombre - El nombre de una sentencia, como SQLFactura.darFacturasPorCliente
+	 * @return El umbral de la sentencia, en nanosegundos: el de su nombre, el de su clase o el umbral por defecto
+	 */
+	private long darUmbral (String nombre)
+	{
+		Long resp = umbralesResueltos.get (nombre);
+		if (resp == null)
+		{
+			resp = umbrales.get (nombre);
+			int punto = nombre.indexOf ('.');
+			if (resp == null && punto > 0)
+			{
+				resp = umbrales.get (nombre.substring (0, punto));
+			}
+			if (resp == null)
+			{
+				resp = umbralDefecto;
+			}
+			umbralesResueltos.put (nombre, resp);
+		}
+		return resp;
+	}
+
+	/**
+	 * Ciclo del hilo escritor: saca las entradas de la cola y las escribe en el log, hasta que se interrumpe
+	 */
+	private void escribir ()
+	{
+		try
+		{
+			while (true)
+			{
+				escribir (cola.take ());
+			}
+		}
+		catch (InterruptedException e)
+		{
+			Entrada entrada;
+			while ((entrada = cola.poll ()) != null)
+			{
+				escribir (entrada);
+			}
+		}
+	}
+
+	/**
+	 * Escribe una entrada en el log: las sentencias lentas como advertencia y las muestras como información
+	 * @param entrada - La entrada
+	 */
+	private void escribir (Entrada entrada)
+	{
+		if (entrada.muestra)
+		{
+			log.info (entrada);
+		}
+		else
+		{
+			log.warn (entrada);
+		}
+	}
+
+	/**
+	 * @return El número de sentencias lentas registradas
+	 */
+	public long darLentas ()
+	{
+		return lentas.get ();
+	}
+
+	/**
+	 * @return El número de muestras de sentencias rápidas registradas
+	 */
+	public long darMuestras ()
+	{
+		return muestras.get ();
+	}
+
+	/**
+	 * @return El número de entradas descartadas por tener la cola llena
+	 */
+	public long darDescartadas ()
+	{
+		return descartadas.get ();
+	}
+
+	/**
+	 * @return El número de entradas pendientes de escribir
+	 */
+	public int darPendientes ()
+	{
+		return cola.size ();
+	}
+
+	/**
+	 * Escribe las entradas pendientes y detiene el hilo escritor
+	 */
+	public void cerrar ()
+	{
+		escritor.interrupt ();
+		try
+		{
+			escritor.join (5000);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread ().interrupt ();
+		}
+	}
+
+	@Override
+	public String toString ()
+	{
+		return "RegistroConsultasLentas [umbral=" + TimeUnit.NANOSECONDS.toMillis (umbralDefecto) + " ms, umbrales=" + umbrales.size () + ", muestreo=" + muestreo
+				+ ", registrarParametros=" + registrarParametros + ", lentas=" + darLentas () + ", muestras=" + darMuestras () + ", descartadas=" + darDescartadas () + ", pendientes=" + darPendientes () + "]";
+	}
+}
@@ -1,5 +1,7 @@
 package uniandes.isis2304.superandes.persistencia;
 
+import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.List;
 
 import javax.jdo.PersistenceManager;
@@ -33,6 +35,61 @@ class SQLBodega
 	 */
 	private PersistenciaSuperAndes pp;
 
+	/**
+	 * Sentencia SQL de adicionarBodega
+	 */
+	private final String sqlAdicionarBodega;
+
+	/**
+	 * Sentencia SQL de eliminarBodegaPorId
+	 */
+	private final String sqlEliminarBodegaPorId;
+
+	/**
+	 * Sentencia SQL de darBodegaPorId
+	 */
+	private final String sqlDarBodegaPorId;
+
+	/**
+	 * Sentencia SQL de darBodegasPorSucursal
+	 */
+	private final String sqlDarBodegasPorSucursal;
+
+	/**
+	 * Sentencia SQL de darBodegas
+	 */
+	private final String sqlDarBodegas;
+
+	/**
+	 * Sentencia SQL de aumentarExistenciasBodegasEnDiez
+	 */
+	private final String sqlAumentarExistenciasBodegasEnDiez;
+
+	/**
+	 * Sentencia SQL de darExistencias
+	 */
+	private final String sqlDarExistencias;
+
+	/**
+	 * Sentencia SQL de ajustarExistencias
+	 */
+	private final String sqlAjustarExistencias;
+
+	/**
+	 * Sentencia SQL de repartirExistencias, para encontrar las bodegas con existencias
+	 */
+	private final String sqlDarBodegasConExistencias;
+
+	/**
+	 * Sentencia SQL de repartirExistencias, para actualizar cada bodega
+	 */
+	private final String sqlSumarExistencias;
+
+	/**
+	 * Sentencia SQL de darBodegasPorSucursalYProducto
+	 */
+	private final String sqlDarBodegasPorSucursalYProducto;
+
 	/* ****************************************************************
 	 * 			Mtodos
 	 *****************************************************************/
@@ -44,6 +101,18 @@ class SQLBodega
 	public SQLBodega (PersistenciaSuperAndes pp)
 	{
 		this.pp = pp;
+		sqlAdicionarBodega = "INSERT INTO " + pp.darTablaBodega () + "(id, capacidadvolumen, capacidadpeso, producto, sucursal, existencias) values (?, ?, ?, ?, ?, ?)";
+		sqlEliminarBodegaPorId = "DELETE FROM " + pp.darTablaBodega () + " WHERE id = ?";
+		sqlDarBodegaPorId = "SELECT * FROM " + pp.darTablaBodega () + " WHERE id = ?";
+		sqlDarBodegasPorSucursal = "SELECT * FROM " + pp.darTablaBodega () + " WHERE sucursal = ?";
+		sqlDarBodegas = "SELECT * FROM " + pp.darTablaBodega ();
+		sqlAumentarExistenciasBodegasEnDiez = "UPDATE " + pp.darTablaBodega () + " SET existencias = existencias + 10 WHERE id = ?";
+		sqlDarExistencias = "SELECT COALESCE(SUM(existencias), 0) FROM " + pp.darTablaBodega () + " WHERE sucursal = ? AND producto = ?";
+		sqlAjustarExistencias = "UPDATE " + pp.darTablaBodega () + " SET existencias = existencias + ? WHERE id = (SELECT MIN(id) FROM "
+				+ pp.darTablaBodega () + " WHERE sucursal = ? AND producto = ? AND existencias + ? >= 0)";
+		sqlDarBodegasConExistencias = "SELECT * FROM " + pp.darTablaBodega () + " WHERE sucursal = ? AND producto = ? AND existencias > 0 ORDER BY id";
+		sqlSumarExistencias = "UPDATE " + pp.darTablaBodega () + " SET existencias = existencias + ? WHERE id = ?";
+		sqlDarBodegasPorSucursalYProducto = "SELECT * FROM " + pp.darTablaBodega () + " WHERE sucursal = ? AND producto = ?";
 	}
 	
 	/**
@@ -59,7 +128,7 @@ class SQLBodega
 	 */
 	public long adicionarBodega (PersistenceManager pm, long id, double capacidadVolumen, double capacidadPeso, long producto, long sucursal, int existencias) 
 	{
-        Query q = pm.newQuery(SQL, "INSERT INTO " + pp.darTablaBodega () + "(id, capacidadvolumen, capacidadpeso, producto, sucursal, existencias) values (?, ?, ?, ?, ?, ?)");
+        Query q = pm.newQuery(SQL, sqlAdicionarBodega);
         q.setParameters(id, capacidadVolumen, capacidadPeso, capacidadPeso, producto, sucursal, existencias);
         return (long) q.executeUnique();
 	}
@@ -73,7 +142,7 @@ class SQLBodega
 	 */
 	public long eliminarBodegaPorId (PersistenceManager pm, long idBodega)
 	{
-        Query q = pm.newQuery(SQL, "DELETE FROM " + pp.darTablaBodega () + " WHERE id = ?");
+        Query q = pm.newQuery(SQL, sqlEliminarBodegaPorId);
         q.setParameters(idBodega);
         return (long) q.executeUnique();
 	}
@@ -87,7 +156,7 @@ class SQLBodega
 	 */
 	public Bodega darBodegaPorId (PersistenceManager pm, long idBodega) 
 	{
-		Query q = pm.newQuery(SQL, "SELECT * FROM " + pp.darTablaBodega () + " WHERE id = ?");
+		Query q = pm.newQuery(SQL, sqlDarBodegaPorId);
 		q.setResultClass(Bodega.class);
 		q.setParameters(idBodega);
 		return (Bodega) q.executeUnique();
@@ -102,12 +171,27 @@ class SQLBodega
 	 */
 	public List<Bodega> darBodegasPorSucursal (PersistenceManager pm, long sucursal) 
 	{
-		Query q = pm.newQuery(SQL, "SELECT * FROM " + pp.darTablaBodega () + " WHERE sucursal = ?");
+		Query q = pm.newQuery(SQL, sqlDarBodegasPorSucursal);
 		q.setResultClass(Bodega.class);
 		q.setParameters(sucursal);
 		return (List<Bodega>) q.executeList();
 	}
 
+	/**
+	 * Crea y ejecuta la sentencia SQL para encontrar la informacin de LAS BODEGAS de un producto en una sucursal
+	 * @param pm - El manejador de persistencia
+	 * @param sucursal - El identificador de la sucursal
+	 * @param producto - El identificador del producto
+	 * @return Una lista de objetos BODEGA de la sucursal y el producto
+	 */
+	public List<Bodega> darBodegasPorSucursalYProducto (PersistenceManager pm, long sucursal, long producto) 
+	{
+		Query q = pm.newQuery(SQL, sqlDarBodegasPorSucursalYProducto);
+		q.setResultClass(Bodega.class);
+		q.setParameters(sucursal, producto);
+		return (List<Bodega>) q.executeList();
+	}
+
 	/**
 	 * Crea y ejecuta la sentencia SQL para encontrar la informacin de LOS BODEGAS de la 
 	 * base de datos de SuperAndes
@@ -116,7 +200,7 @@ class SQLBodega
 	 */
 	public List<Bodega> darBodegas (PersistenceManager pm)
 	{
-		Query q = pm.newQuery(SQL, "SELECT * FROM " + pp.darTablaBodega ());
+		Query q = pm.newQuery(SQL, sqlDarBodegas);
 		q.setResultClass(Bodega.class);
 		return (List<Bodega>) q.executeList();
 	}
@@ -130,9 +214,97 @@ class SQLBodega
 	 */
 	public long aumentarExistenciasBodegasEnDiez (PersistenceManager pm, long id)
 	{
-        Query q = pm.newQuery(SQL, "UPDATE " + pp.darTablaBodega () + " SET existencias = existencias + 10 WHERE id = ?");
+        Query q = pm.newQuery(SQL, sqlAumentarExistenciasBodegasEnDiez);
         q.setParameters(id);
         return (long) q.executeUnique();
 	}
+
+	/**
+	 * Crea y ejecuta, en lotes de JDBC, la sentencia SQL para adicionar varias BODEGAS a la base de datos de SuperAndes.
+	 * Todas las inserciones hacen parte de la transaccin activa del manejador de persistencia
+	 * @param pm - El manejador de persistencia
+	 * @param bodegas - Las bodegas a insertar, con su identificador ya asignado
+	 * @param tamanoLote - El nmero mximo de inserciones por lote enviado a la base de datos
+	 * @return El nmero de tuplas insertadas por cada elemento, en el mismo orden de la lista
+	 * @throws SQLException - Si falla alguna de las inserciones
+	 */
+	public long [] adicionarBodega (PersistenceManager pm, List<Bodega> bodegas, int tamanoLote) throws SQLException
+	{
+		List<Object []> filas = new ArrayList<Object []> (bodegas.size ());
+		for (Bodega b : bodegas)
+		{
+			filas.add (new Object [] {b.getId (), b.getCapacidadVolumen (), b.getCapacidadPeso (), b.getProducto (), b.getSucursal (), b.getExistencias ()});
+		}
+		return SQLUtil.ejecutarLote (pm, sqlAdicionarBodega, filas, tamanoLote);
+	}
+
+	/**
+	 * Crea y ejecuta la sentencia SQL para sumar las existencias de un producto en las bodegas de una sucursal
+	 * @param pm - El manejador de persistencia
+	 * @param sucursal - El identificador de la sucursal
+	 * @param producto - El identificador del producto
+	 * @return La suma de las existencias. 0 si la sucursal no tiene bodegas del producto
+	 */
+	public long darExistencias (PersistenceManager pm, long sucursal, long producto)
+	{
+		Query q = pm.newQuery(SQL, sqlDarExistencias);
+		q.setParameters(sucursal, producto);
+		return ((Number) q.executeUnique()).longValue ();
+	}
+
+	/**
+	 * Crea y ejecuta, en lotes de JDBC, la sentencia SQL para aplicar cambios de existencias a las bodegas.
+	 * Cada cambio se aplica a la primera bodega de la sucursal y el producto cuyas existencias no quedan negativas
+	 * Todas las actualizaciones hacen parte de la transaccin activa del manejador de persistencia
+	 * @param pm - El manejador de persistencia
+	 * @param cambios - Los cambios, como {sucursal, producto, cambio}
+	 * @param tamanoLote - El nmero mximo de actualizaciones por lote enviado a la base de datos
+	 * @return El nmero de tuplas modificadas por cada cambio, en el mismo orden de la lista.
+	 * 0 si ninguna bodega puede recibir el cambio completo
+	 * @throws SQLException - Si falla alguna de las actualizaciones
+	 */
+	public long [] ajustarExistencias (PersistenceManager pm, List<long []> cambios, int tamanoLote) throws SQLException
+	{
+		List<Object []> filas = new ArrayList<Object []> (cambios.size ());
+		for (long [] cambio : cambios)
+		{
+			filas.add (new Object [] {cambio [2], cambio [0], cambio [1], cambio [2]});
+		}
+		return SQLUtil.ejecutarLote (pm, sqlAjustarExistencias, filas, tamanoLote);
+	}
+
+	/**
+	 * Crea y ejecuta las sentencias SQL para repartir una disminucin de existencias entre las bodegas de una sucursal y un producto,
+	 * en orden de identificador, cuando ninguna de ellas tiene existencias suficientes por s sola
+	 * @param pm - El manejador de persistencia
+	 * @param sucursal - El identificador de la sucursal
+	 * @param producto - El identificador del producto
+	 * @param cambio - El cambio en las existencias
+	 * @return La parte del cambio que no se pudo aplicar. 0 si se aplic todo
+	 */
+	public long repartirExistencias (PersistenceManager pm, long sucursal, long producto, long cambio)
+	{
+		if (cambio >= 0)
+		{
+			return cambio;
+		}
+		Query q = pm.newQuery(SQL, sqlDarBodegasConExistencias);
+		q.setResultClass(Bodega.class);
+		q.setParameters(sucursal, producto);
+		long faltante = -cambio;
+		for (Bodega bodega : (List<Bodega>) q.executeList())
+		{
+			long descuento = Math.min (faltante, bodega.getExistencias ());
+			Query actualizacion = pm.newQuery(SQL, sqlSumarExistencias);
+			actualizacion.setParameters(-descuento, bodega.getId ());
+			actualizacion.executeUnique();
+			faltante -= descuento;
+			if (faltante == 0)
+			{
+				break;
+			}
+		}
+		return -faltante;
+	}
 	
 }
@@ -1,5 +1,7 @@
 package uniandes.isis2304.superandes.persistencia;
 
+import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.List;
 
 import javax.jdo.PersistenceManager;
@@ -31,6 +33,46 @@ class SQLCliente {
 	 * El manejador de persistencia general de la aplicación
 	 */
 	private PersistenciaSuperAndes pp;
+
+	/**
+	 * Sentencia SQL de adicionarCliente
+	 */
+	private final String sqlAdicionarCliente;
+
+	/**
+	 * Sentencia SQL de eliminarClientePorNombre
+	 */
+	private final String sqlEliminarClientePorNombre;
+
+	/**
+	 * Sentencia SQL de eliminarClientePorId
+	 */
+	private final String sqlEliminarClientePorId;
+
+	/**
+	 * Sentencia SQL de darClientePorId
+	 */
+	private final String sqlDarClientePorId;
+
+	/**
+	 * Sentencia SQL de darClientesPorNombre
+	 */
+	private final String sqlDarClientesPorNombre;
+
+	/**
+	 * Sentencia SQL de darClientes
+	 */
+	private final String sqlDarClientes;
+
+	/**
+	 * Sentencia SQL de darClientesPagina
+	 */
+	private final String sqlDarClientesPagina;
+
+	/**
+	 * Sentencia SQL de darClientesPorTipo
+	 */
+	private final String sqlDarClientesPorTipo;
 	
 	/* ****************************************************************
 	 * 			Métodos
@@ -43,6 +85,14 @@ class SQLCliente {
 	public SQLCliente (PersistenciaSuperAndes pp)
 	{
 		this.pp = pp;
+		sqlAdicionarCliente = "INSERT INTO " + pp.darTablaCliente () + "(id, nombre, correo, tipo, direccion) values (?, ?, ?, ?, ?)";
+		sqlEliminarClientePorNombre = "DELETE FROM " + pp.darTablaCliente () + " WHERE nombre = ?";
+		sqlEliminarClientePorId = "DELETE FROM " + pp.darTablaCliente () + " WHERE id = ?";
+		sqlDarClientePorId = "SELECT * FROM " + pp.darTablaCliente () + " WHERE id = ?";
+		sqlDarClientesPorNombre = "SELECT * FROM " + pp.darTablaCliente() + " WHERE nombre = ?";
+		sqlDarClientes = "SELECT * FROM " + pp.darTablaCliente();
+		sqlDarClientesPagina = "SELECT * FROM (SELECT * FROM " + pp.darTablaCliente() + " WHERE id > ? ORDER BY id) WHERE ROWNUM <= ?";
+		sqlDarClientesPorTipo = "SELECT * FROM " + pp.darTablaCliente() + " WHERE tipo = ?";
 	}
 	
 	/**
@@ -57,7 +107,7 @@ class SQLCliente {
 	 */
 	public long adicionarCliente (PersistenceManager pm, long idCliente, String nombre, String correo, String tipo, String direccion) 
 	{
-        Query q = pm.newQuery(SQL, "INSERT INTO " + pp.darTablaCliente () + "(id, nombre, correo, tipo, direccion) values (?, ?, ?, ?, ?)");
+        Query q = pm.newQuery(SQL, sqlAdicionarCliente);
         q.setParameters(idCliente, nombre, correo, tipo, direccion);
         return (long) q.executeUnique();
 	}
@@ -70,7 +120,7 @@ class SQLCliente {
 	 */
 	public long eliminarClientePorNombre (PersistenceManager pm, String nombreCliente)
 	{
-        Query q = pm.newQuery(SQL, "DELETE FROM " + pp.darTablaCliente () + " WHERE nombre = ?");
+        Query q = pm.newQuery(SQL, sqlEliminarClientePorNombre);
         q.setParameters(nombreCliente);
         return (long) q.executeUnique();
 	}
@@ -83,7 +133,7 @@ class SQLCliente {
 	 */
 	public long eliminarClientePorId (PersistenceManager pm, long idCliente)
 	{
-        Query q = pm.newQuery(SQL, "DELETE FROM " + pp.darTablaCliente () + " WHERE id = ?");
+        Query q = pm.newQuery(SQL, sqlEliminarClientePorId);
         q.setParameters(idCliente);
         return (long) q.executeUnique();
 	}
@@ -97,7 +147,7 @@ class SQLCliente {
 	 */
 	public Cliente darClientePorId (PersistenceManager pm, long idCliente) 
 	{
-		Query q = pm.newQuery(SQL, "SELECT * FROM " + pp.darTablaCliente () + " WHERE id = ?");
+		Query q = pm.newQuery(SQL, sqlDarClientePorId);
 		q.setResultClass(Cliente.class);
 		q.setParameters(idCliente);
 		return (Cliente) q.executeUnique();
@@ -112,7 +162,7 @@ class SQLCliente {
 	 */
 	public List<Cliente> darClientesPorNombre (PersistenceManager pm, String nombreCliente) 
 	{
-		Query q = pm.newQuery(SQL, "SELECT * FROM " + pp.darTablaCliente() + " WHERE nombre = ?");
+		Query q = pm.newQuery(SQL, sqlDarClientesPorNombre);
 		q.setResultClass(Cliente.class);
 		q.setParameters(nombreCliente);
 		return (List<Cliente>) q.executeList();
@@ -126,10 +176,27 @@ class SQLCliente {
 	 */
 	public List<Cliente> darClientes (PersistenceManager pm)
 	{
-		Query q = pm.newQuery(SQL, "SELECT * FROM " + pp.darTablaCliente());
+		Query q = pm.newQuery(SQL, sqlDarClientes);
 		q.setResultClass(Cliente.class);
 		return (List<Cliente>) q.executeList();
 	}
+
+	/**
+	 * Crea y ejecuta la sentencia SQL para encontrar una página de LOS CLIENTES de la base de datos de SuperAndes,
+	 * en orden de id. Usa paginación por llave, por lo que el costo no depende de la posición de la página
+	 * @param pm - El manejador de persistencia
+	 * @param despuesDeId - El identificador del último cliente de la página anterior. 0 para la primera página
+	 * @param limite - El número máximo de tuplas de la página. También es el tamaño de fetch de JDBC
+	 * @return Una lista de objetos CLIENTE, con a lo sumo limite elementos
+	 */
+	public List<Cliente> darClientesPagina (PersistenceManager pm, long despuesDeId, int limite)
+	{
+		Query q = pm.newQuery(SQL, sqlDarClientesPagina);
+		q.setResultClass(Cliente.class);
+		q.getFetchPlan().setFetchSize(limite);
+		q.setParameters(despuesDeId, limite);
+		return (List<Cliente>) q.executeList();
+	}
 	
 	/**
 	 * Crea y ejecuta la sentencia SQL para encontrar la información de LOS CLIENTES de la 
@@ -140,9 +207,28 @@ class SQLCliente {
 	 */
 	public List<Cliente> darClientesPorTipo (PersistenceManager pm, String tipoCliente) 
 	{
-		Query q = pm.newQuery(SQL, "SELECT * FROM " + pp.darTablaCliente() + " WHERE tipo = ?");
+		Query q = pm.newQuery(SQL, sqlDarClientesPorTipo);
 		q.setResultClass(Cliente.class);
 		q.setParameters(tipoCliente);
 		return (List<Cliente>) q.executeList();
 	}
+
+	/**
+	 * Crea y ejecuta, en lotes de JDBC, la sentencia SQL para adicionar varios CLIENTES a la base de datos de SuperAndes.
+	 * Todas las inserciones hacen parte de la transacción activa del manejador de persistencia
+	 * @param pm - El manejador de persistencia
+	 * @param clientes - Los clientes a insertar, con su identificador ya asignado
+	 * @param tamanoLote - El número máximo de inserciones por lote enviado a la base de datos
+	 * @return El número de tuplas insertadas por cada elemento, en el mismo orden de la lista
+	 * @throws SQLException - Si falla alguna de las inserciones
+	 */
+	public long [] adicionarCliente (PersistenceManager pm, List<Cliente> clientes, int tamanoLote) throws SQLException
+	{
+		List<Object []> filas = new ArrayList<Object []> (clientes.size ());
+		for (Cliente c : clientes)
+		{
+			filas.add (new Object [] {c.getId (), c.getNombre (), c.getCorreo (), c.getTipo (), c.getDireccion ()});
+		}
+		return SQLUtil.ejecutarLote (pm, sqlAdicionarCliente, filas, tamanoLote);
+	}
 }
@@ -0,0 +1,105 @@
+package uniandes.isis2304.superandes.persistencia;
+
+import javax.jdo.PersistenceManager;
+import javax.jdo.Query;
+
+/**
+ * Clase que encapsula los métodos que hacen acceso a la tabla de CONTROL de SuperAndes: parejas de clave y valor numérico
+ * que la aplicación necesita conservar entre ejecuciones, como el tamaño de bloque con el que se reparten los identificadores
+ * de cada tabla o el último segmento descargado del diario del inventario
+ * Nótese que es una clase que es sólo conocida en el paquete de persistencia
+ *
+ * @author n.cobos, jf.torresp
+ */
+class SQLControl
+{
+	/* ****************************************************************
+	 * 			Constantes
+	 *****************************************************************/
+	/**
+	 * Cadena que representa el tipo de consulta que se va a realizar en las sentencias de acceso a la base de datos
+	 * Se renombra acá para facilitar la escritura de las sentencias
+	 */
+	private final static String SQL = PersistenciaSuperAndes.SQL;
+
+	/* ****************************************************************
+	 * 			Atributos
+	 *****************************************************************/
+	/**
+	 * El manejador de persistencia general de la aplicación
+	 */
+	private PersistenciaSuperAndes pp;
+
+	/**
+	 * Sentencia SQL de darValor
+	 */
+	private final String sqlDarValor;
+
+	/**
+	 * Sentencia SQL de adicionarValor
+	 */
+	private final String sqlAdicionarValor;
+
+	/**
+	 * Sentencia SQL de cambiarValor
+	 */
+	private final String sqlCambiarValor;
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	/**
+	 * Constructor
+	 * @param pp - El Manejador de persistencia de la aplicación
+	 */
+	public SQLControl (PersistenciaSuperAndes pp)
+	{
+		this.pp = pp;
+		sqlDarValor = "SELECT valor FROM " + pp.darTablaControl () + " WHERE clave = ?";
+		sqlAdicionarValor = "INSERT INTO " + pp.darTablaControl () + "(clave, valor) values (?, ?)";
+		sqlCambiarValor = "MERGE INTO " + pp.darTablaControl () + " c USING (SELECT CAST(? AS VARCHAR2(255)) clave, CAST(? AS NUMBER) valor FROM DUAL) n"
+				+ " ON (c.clave = n.clave) WHEN MATCHED THEN UPDATE SET c.valor = n.valor WHEN NOT MATCHED THEN INSERT (clave, valor) VALUES (n.clave, n.valor)";
+	}
+
+	/**
+	 * Crea y ejecuta la sentencia SQL para encontrar el valor de una clave de CONTROL
+	 * @param pm - El manejador de persistencia
+	 * @param clave - La clave
+	 * @return El valor de la clave. null si la clave no existe
+	 */
+	public Long darValor (PersistenceManager pm, String clave)
+	{
+		Query q = pm.newQuery(SQL, sqlDarValor);
+		q.setParameters(clave);
+		Object valor = q.executeUnique();
+		return valor == null ? null : ((Number) valor).longValue ();
+	}
+
+	/**
+	 * Crea y ejecuta la sentencia SQL para adicionar una clave de CONTROL
+	 * @param pm - El manejador de persistencia
+	 * @param clave - La clave, que no debe existir
+	 * @param valor - El valor de la clave
+	 * @return El número de tuplas insertadas
+	 */
+	public long adicionarValor (PersistenceManager pm, String clave, long valor)
+	{
+		Query q = pm.newQuery(SQL, sqlAdicionarValor);
+		q.setParameters(clave, valor);
+		return (long) q.executeUnique();
+	}
+
+	/**
+	 * Crea y ejecuta la sentencia SQL para cambiar el valor de una clave de CONTROL, que se adiciona si no existe
+	 * @param pm - El manejador de persistencia
+	 * @param clave - La clave
+	 * @param valor - El nuevo valor de la clave
+	 * @return El número de tuplas insertadas o modificadas
+	 */
+	public long cambiarValor (PersistenceManager pm, String clave, long valor)
+	{
+		Query q = pm.newQuery(SQL, sqlCambiarValor);
+		q.setParameters(clave, valor);
+		return (long) q.executeUnique();
+	}
+}
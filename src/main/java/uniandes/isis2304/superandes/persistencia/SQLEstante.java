@@ -1,6 +1,9 @@
 package uniandes.isis2304.superandes.persistencia;
 
+	import java.sql.SQLException;
+	import java.util.ArrayList;
 	import java.util.List;
+	import java.util.Map;
 
 	import javax.jdo.PersistenceManager;
 	import javax.jdo.Query;
@@ -33,6 +36,66 @@ package uniandes.isis2304.superandes.persistencia;
 		 */
 		private PersistenciaSuperAndes pp;
 
+		/**
+		 * Sentencia SQL de adicionarEstante
+		 */
+		private final String sqlAdicionarEstante;
+
+		/**
+		 * Sentencia SQL de eliminarEstantePorId
+		 */
+		private final String sqlEliminarEstantePorId;
+
+		/**
+		 * Sentencia SQL de darEstantePorId
+		 */
+		private final String sqlDarEstantePorId;
+
+		/**
+		 * Sentencia SQL de darEstantesPorSucursal
+		 */
+		private final String sqlDarEstantesPorSucursal;
+
+		/**
+		 * Sentencia SQL de darEstantes
+		 */
+		private final String sqlDarEstantes;
+
+		/**
+		 * Sentencia SQL de aumentarExistenciasEstantesEnDiez
+		 */
+		private final String sqlAumentarExistenciasEstantesEnDiez;
+
+		/**
+		 * Sentencia SQL de disminuirExistencias
+		 */
+		private final String sqlDisminuirExistencias;
+
+		/**
+		 * Sentencia SQL de darExistencias
+		 */
+		private final String sqlDarExistencias;
+
+		/**
+		 * Sentencia SQL de ajustarExistencias
+		 */
+		private final String sqlAjustarExistencias;
+
+		/**
+		 * Sentencia SQL de repartirExistencias, para encontrar los estantes con existencias
+		 */
+		private final String sqlDarEstantesConExistencias;
+
+		/**
+		 * Sentencia SQL de repartirExistencias, para actualizar cada estante
+		 */
+		private final String sqlSumarExistencias;
+
+		/**
+		 * Sentencia SQL de darEstantesPorSucursalYProducto
+		 */
+		private final String sqlDarEstantesPorSucursalYProducto;
+
 		/* ****************************************************************
 		 * 			Mtodos
 		 *****************************************************************/
@@ -44,6 +107,20 @@ package uniandes.isis2304.superandes.persistencia;
 		public SQLEstante (PersistenciaSuperAndes pp)
 		{
 			this.pp = pp;
+			sqlAdicionarEstante = "INSERT INTO " + pp.darTablaEstante () + "(id, capacidadvolumen, capacidadpeso, producto, sucursal, nivelabastecimientobodega, existencias) values (?, ?, ?, ?, ?, ?, ?)";
+			sqlEliminarEstantePorId = "DELETE FROM " + pp.darTablaEstante () + " WHERE id = ?";
+			sqlDarEstantePorId = "SELECT * FROM " + pp.darTablaEstante () + " WHERE id = ?";
+			sqlDarEstantesPorSucursal = "SELECT * FROM " + pp.darTablaEstante () + " WHERE sucursal = ?";
+			sqlDarEstantes = "SELECT * FROM " + pp.darTablaEstante ();
+			sqlAumentarExistenciasEstantesEnDiez = "UPDATE " + pp.darTablaEstante () + " SET existencias = existencias + 10 WHERE id = ?";
+			sqlDisminuirExistencias = "UPDATE " + pp.darTablaEstante () + " SET existencias = existencias - ? WHERE id = (SELECT MIN(id) FROM "
+					+ pp.darTablaEstante () + " WHERE sucursal = ? AND producto = ? AND existencias >= ?)";
+			sqlDarExistencias = "SELECT COALESCE(SUM(existencias), 0) FROM " + pp.darTablaEstante () + " WHERE sucursal = ? AND producto = ?";
+			sqlAjustarExistencias = "UPDATE " + pp.darTablaEstante () + " SET existencias = existencias + ? WHERE id = (SELECT MIN(id) FROM "
+					+ pp.darTablaEstante () + " WHERE sucursal = ? AND producto = ? AND existencias + ? >= 0)";
+			sqlDarEstantesConExistencias = "SELECT * FROM " + pp.darTablaEstante () + " WHERE sucursal = ? AND producto = ? AND existencias > 0 ORDER BY id";
+			sqlSumarExistencias = "UPDATE " + pp.darTablaEstante () + " SET existencias = existencias + ? WHERE id = ?";
+			sqlDarEstantesPorSucursalYProducto = "SELECT * FROM " + pp.darTablaEstante () + " WHERE sucursal = ? AND producto = ?";
 		}
 		
 		/**
@@ -60,7 +137,7 @@ package uniandes.isis2304.superandes.persistencia;
 		 */
 		public long adicionarEstante (PersistenceManager pm, long id, double capacidadVolumen, double capacidadPeso, long producto, long sucursal, int nivelabastecimientobodega, int existencias) 
 		{
-	        Query q = pm.newQuery(SQL, "INSERT INTO " + pp.darTablaEstante () + "(id, capacidadvolumen, capacidadpeso, producto, sucursal, nivelabastecimientobodega, existencias) values (?, ?, ?, ?, ?, ?, ?)");
+	        Query q = pm.newQuery(SQL, sqlAdicionarEstante);
 	        q.setParameters(id, capacidadVolumen, capacidadPeso, capacidadPeso, producto, sucursal, nivelabastecimientobodega, existencias);
 	        return (long) q.executeUnique();
 		}
@@ -74,7 +151,7 @@ package uniandes.isis2304.superandes.persistencia;
 		 */
 		public long eliminarEstantePorId (PersistenceManager pm, long idEstante)
 		{
-	        Query q = pm.newQuery(SQL, "DELETE FROM " + pp.darTablaEstante () + " WHERE id = ?");
+	        Query q = pm.newQuery(SQL, sqlEliminarEstantePorId);
 	        q.setParameters(idEstante);
 	        return (long) q.executeUnique();
 		}
@@ -88,7 +165,7 @@ package uniandes.isis2304.superandes.persistencia;
 		 */
 		public Estante darEstantePorId (PersistenceManager pm, long idEstante) 
 		{
-			Query q = pm.newQuery(SQL, "SELECT * FROM " + pp.darTablaEstante () + " WHERE id = ?");
+			Query q = pm.newQuery(SQL, sqlDarEstantePorId);
 			q.setResultClass(Estante.class);
 			q.setParameters(idEstante);
 			return (Estante) q.executeUnique();
@@ -103,12 +180,27 @@ package uniandes.isis2304.superandes.persistencia;
 		 */
 		public List<Estante> darEstantesPorSucursal (PersistenceManager pm, long sucursal) 
 		{
-			Query q = pm.newQuery(SQL, "SELECT * FROM " + pp.darTablaEstante () + " WHERE sucursal = ?");
+			Query q = pm.newQuery(SQL, sqlDarEstantesPorSucursal);
 			q.setResultClass(Estante.class);
 			q.setParameters(sucursal);
 			return (List<Estante>) q.executeList();
 		}
 
+		/**
+		 * Crea y ejecuta la sentencia SQL para encontrar la informacin de LOS ESTANTES de un producto en una sucursal
+		 * @param pm - El manejador de persistencia
+		 * @param sucursal - El identificador de la sucursal
+		 * @param producto - El identificador del producto
+		 * @return Una lista de objetos ESTANTE de la sucursal y el producto
+		 */
+		public List<Estante> darEstantesPorSucursalYProducto (PersistenceManager pm, long sucursal, long producto) 
+		{
+			Query q = pm.newQuery(SQL, sqlDarEstantesPorSucursalYProducto);
+			q.setResultClass(Estante.class);
+			q.setParameters(sucursal, producto);
+			return (List<Estante>) q.executeList();
+		}
+
 		/**
 		 * Crea y ejecuta la sentencia SQL para encontrar la informacin de LOS ESTANTES de la 
 		 * base de datos de SuperAndes
@@ -117,7 +209,7 @@ package uniandes.isis2304.superandes.persistencia;
 		 */
 		public List<Estante> darEstantes (PersistenceManager pm)
 		{
-			Query q = pm.newQuery(SQL, "SELECT * FROM " + pp.darTablaEstante ());
+			Query q = pm.newQuery(SQL, sqlDarEstantes);
 			q.setResultClass(Estante.class);
 			return (List<Estante>) q.executeList();
 		}
@@ -131,9 +223,120 @@ package uniandes.isis2304.superandes.persistencia;
 		 */
 		public long aumentarExistenciasEstantesEnDiez (PersistenceManager pm, long id)
 		{
-	        Query q = pm.newQuery(SQL, "UPDATE " + pp.darTablaEstante () + " SET existencias = existencias + 10 WHERE id = ?");
+	        Query q = pm.newQuery(SQL, sqlAumentarExistenciasEstantesEnDiez);
 	        q.setParameters(id);
 	        return (long) q.executeUnique();
 		}
 
+		/**
+		 * Crea y ejecuta, en lotes de JDBC, la sentencia SQL para adicionar varios ESTANTES a la base de datos de SuperAndes.
+		 * Todas las inserciones hacen parte de la transaccin activa del manejador de persistencia
+		 * @param pm - El manejador de persistencia
+		 * @param estantes - Los estantes a insertar, con su identificador ya asignado
+		 * @param tamanoLote - El nmero mximo de inserciones por lote enviado a la base de datos
+		 * @return El nmero de tuplas insertadas por cada elemento, en el mismo orden de la lista
+		 * @throws SQLException - Si falla alguna de las inserciones
+		 */
+		public long [] adicionarEstante (PersistenceManager pm, List<Estante> estantes, int tamanoLote) throws SQLException
+		{
+			List<Object []> filas = new ArrayList<Object []> (estantes.size ());
+			for (Estante e : estantes)
+			{
+				filas.add (new Object [] {e.getId (), e.getCapacidadVolumen (), e.getCapacidadPeso (), e.getProducto (), e.getSucursal (), e.getNivelAbastecimientoBodega (), e.getExistencias ()});
+			}
+			return SQLUtil.ejecutarLote (pm, sqlAdicionarEstante, filas, tamanoLote);
+		}
+
+		/**
+		 * Crea y ejecuta, en lotes de JDBC, la sentencia SQL para descontar las cantidades vendidas de las existencias de los estantes de una sucursal.
+		 * De cada producto se descuenta del primer estante de la sucursal que tenga existencias suficientes. Los productos que ningn
+		 * estante tiene completos se deben repartir despus con repartirExistencias
+		 * Todas las actualizaciones hacen parte de la transaccin activa del manejador de persistencia
+		 * @param pm - El manejador de persistencia
+		 * @param sucursal - El identificador de la sucursal
+		 * @param cantidades - La cantidad a descontar de cada producto, por identificador del producto
+		 * @param tamanoLote - El nmero mximo de actualizaciones por lote enviado a la base de datos
+		 * @return El nmero de tuplas modificadas por cada producto, en el orden de iteracin de cantidades.
+		 * 0 si ningn estante del producto tiene existencias suficientes
+		 * @throws SQLException - Si falla alguna de las actualizaciones
+		 */
+		public long [] disminuirExistencias (PersistenceManager pm, long sucursal, Map<Long, Integer> cantidades, int tamanoLote) throws SQLException
+		{
+			List<Object []> filas = new ArrayList<Object []> (cantidades.size ());
+			for (Map.Entry<Long, Integer> cantidad : cantidades.entrySet ())
+			{
+				filas.add (new Object [] {cantidad.getValue (), sucursal, cantidad.getKey (), cantidad.getValue ()});
+			}
+			return SQLUtil.ejecutarLote (pm, sqlDisminuirExistencias, filas, tamanoLote);
+		}
+
+		/**
+		 * Crea y ejecuta la sentencia SQL para sumar las existencias de un producto en los estantes de una sucursal
+		 * @param pm - El manejador de persistencia
+		 * @param sucursal - El identificador de la sucursal
+		 * @param producto - El identificador del producto
+		 * @return La suma de las existencias. 0 si la sucursal no tiene estantes del producto
+		 */
+		public long darExistencias (PersistenceManager pm, long sucursal, long producto)
+		{
+			Query q = pm.newQuery(SQL, sqlDarExistencias);
+			q.setParameters(sucursal, producto);
+			return ((Number) q.executeUnique()).longValue ();
+		}
+
+		/**
+		 * Crea y ejecuta, en lotes de JDBC, la sentencia SQL para aplicar cambios de existencias a los estantes.
+		 * Cada cambio se aplica al primer estante de la sucursal y el producto cuyas existencias no quedan negativas
+		 * Todas las actualizaciones hacen parte de la transaccin activa del manejador de persistencia
+		 * @param pm - El manejador de persistencia
+		 * @param cambios - Los cambios, como {sucursal, producto, cambio}
+		 * @param tamanoLote - El nmero mximo de actualizaciones por lote enviado a la base de datos
+		 * @return El nmero de tuplas modificadas por cada cambio, en el mismo orden de la lista.
+		 * 0 si ningn estante puede recibir el cambio completo
+		 * @throws SQLException - Si falla alguna de las actualizaciones
+		 */
+		public long [] ajustarExistencias (PersistenceManager pm, List<long []> cambios, int tamanoLote) throws SQLException
+		{
+			List<Object []> filas = new ArrayList<Object []> (cambios.size ());
+			for (long [] cambio : cambios)
+			{
+				filas.add (new Object [] {cambio [2], cambio [0], cambio [1], cambio [2]});
+			}
+			return SQLUtil.ejecutarLote (pm, sqlAjustarExistencias, filas, tamanoLote);
+		}
+
+		/**
+		 * Crea y ejecuta las sentencias SQL para repartir una disminucin de existencias entre los estantes de una sucursal y un producto,
+		 * en orden de identificador, cuando ninguno de ellos tiene existencias suficientes por s solo
+		 * @param pm - El manejador de persistencia
+		 * @param sucursal - El identificador de la sucursal
+		 * @param producto - El identificador del producto
+		 * @param cambio - El cambio en las existencias
+		 * @return La parte del cambio que no se pudo aplicar. 0 si se aplic todo
+		 */
+		public long repartirExistencias (PersistenceManager pm, long sucursal, long producto, long cambio)
+		{
+			if (cambio >= 0)
+			{
+				return cambio;
+			}
+			Query q = pm.newQuery(SQL, sqlDarEstantesConExistencias);
+			q.setResultClass(Estante.class);
+			q.setParameters(sucursal, producto);
+			long faltante = -cambio;
+			for (Estante estante : (List<Estante>) q.executeList())
+			{
+				long descuento = Math.min (faltante, estante.getExistencias ());
+				Query actualizacion = pm.newQuery(SQL, sqlSumarExistencias);
+				actualizacion.setParameters(-descuento, estante.getId ());
+				actualizacion.executeUnique();
+				faltante -= descuento;
+				if (faltante == 0)
+				{
+					break;
+				}
+			}
+			return -faltante;
+		}
+
 }
@@ -1,10 +1,19 @@
 package uniandes.isis2304.superandes.persistencia;
 
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
 import java.sql.Timestamp;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import javax.jdo.PersistenceManager;
 import javax.jdo.Query;
+import javax.jdo.datastore.JDOConnection;
 
 import uniandes.isis2304.superandes.negocio.Factura;
 
@@ -25,6 +34,12 @@ class SQLFactura {
 	 */
 	private final static String SQL = PersistenciaSuperAndes.SQL;
 
+	/**
+	 * Límite superior de la partición inicial de FACTURA en EsquemaSuperAndes.sql. Las facturas anteriores quedan en esa partición,
+	 * que Oracle no deja eliminar por ser la última partición de rango de una tabla con intervalos (ORA-14758)
+	 */
+	public final static Timestamp FIN_PARTICION_INICIAL = Timestamp.valueOf ("2018-01-01 00:00:00");
+
 	/* ****************************************************************
 	 * 			Atributos
 	 *****************************************************************/
@@ -32,6 +47,76 @@ class SQLFactura {
 	 * El manejador de persistencia general de la aplicación
 	 */
 	PersistenciaSuperAndes pp;
+
+	/**
+	 * Sentencia SQL de adicionarFactura
+	 */
+	private final String sqlAdicionarFactura;
+
+	/**
+	 * Sentencia SQL de eliminarFacturaPorNumero
+	 */
+	private final String sqlEliminarFacturaPorNumero;
+
+	/**
+	 * Sentencia SQL de darFacturaPorNumero
+	 */
+	private final String sqlDarFacturaPorNumero;
+
+	/**
+	 * Sentencia SQL de darFacturasPorCliente
+	 */
+	private final String sqlDarFacturasPorCliente;
+
+	/**
+	 * Sentencia SQL de darFacturasPorSucursal
+	 */
+	private final String sqlDarFacturasPorSucursal;
+
+	/**
+	 * Sentencia SQL de darFacturasPorFecha
+	 */
+	private final String sqlDarFacturasPorFecha;
+
+	/**
+	 * Sentencia SQL de darFacturasPorClienteYSucursal
+	 */
+	private final String sqlDarFacturasPorClienteYSucursal;
+
+	/**
+	 * Sentencia SQL de darFacturas
+	 */
+	private final String sqlDarFacturas;
+
+	/**
+	 * Sentencia SQL de darFacturasPagina
+	 */
+	private final String sqlDarFacturasPagina;
+
+	/**
+	 * Sentencia SQL de darFacturasPorRangoFechas
+	 */
+	private final String sqlDarFacturasPorRangoFechas;
+
+	/**
+	 * Sentencia SQL de contarFacturasPorRangoFechas
+	 */
+	private final String sqlContarFacturasPorRangoFechas;
+
+	/**
+	 * Sentencia SQL de eliminarFacturasPorRangoFechas
+	 */
+	private final String sqlEliminarFacturasPorRangoFechas;
+
+	/**
+	 * Sentencia SQL de darNumerosEntre
+	 */
+	private final String sqlDarNumerosEntre;
+
+	/**
+	 * Sentencia SQL de estaParticionada
+	 */
+	private final String sqlEstaParticionada;
 	
 	/* ****************************************************************
 	 * 			Métodos
@@ -42,6 +127,21 @@ class SQLFactura {
 	 */
 	public SQLFactura(PersistenciaSuperAndes pp) {
 		this.pp = pp;
+		sqlAdicionarFactura = "INSERT INTO " + pp.darTablaFactura() + "(numero, fecha, idcliente, sucursal) values (?, ?, ?, ?)";
+		sqlEliminarFacturaPorNumero = "DELETE FROM " + pp.darTablaFactura() + " WHERE numero = ?";
+		sqlDarFacturaPorNumero = "SELECT * FROM " + pp.darTablaFactura() + " WHERE numero = ?";
+		sqlDarFacturasPorCliente = "SELECT * FROM " + pp.darTablaFactura() + " WHERE idcliente = ?";
+		sqlDarFacturasPorSucursal = "SELECT * FROM " + pp.darTablaFactura() + " WHERE sucursal = ?";
+		sqlDarFacturasPorFecha = "SELECT * FROM " + pp.darTablaFactura() + " WHERE fecha = ?";
+		sqlDarFacturasPorClienteYSucursal = "SELECT * FROM " + pp.darTablaFactura() + " WHERE idcliente = ? AND sucursal = ?";
+		sqlDarFacturas = "SELECT * FROM " + pp.darTablaFactura();
+		sqlDarFacturasPagina = "SELECT * FROM (SELECT numero, fecha, idcliente, sucursal FROM " + pp.darTablaFactura() + " WHERE numero > ? ORDER BY numero) WHERE ROWNUM <= ?";
+		// Rangos semiabiertos sobre la columna de partición, para que Oracle sólo lea las particiones de los meses del rango
+		sqlDarFacturasPorRangoFechas = "SELECT numero, fecha, idcliente, sucursal FROM " + pp.darTablaFactura () + " WHERE fecha >= ? AND fecha < ? ORDER BY fecha, numero";
+		sqlContarFacturasPorRangoFechas = "SELECT COUNT(*) FROM " + pp.darTablaFactura () + " WHERE fecha >= ? AND fecha < ?";
+		sqlEliminarFacturasPorRangoFechas = "DELETE FROM " + pp.darTablaFactura () + " WHERE fecha >= ? AND fecha < ?";
+		sqlDarNumerosEntre = "SELECT numero FROM " + pp.darTablaFactura () + " WHERE numero >= ? AND numero <= ?";
+		sqlEstaParticionada = "SELECT COUNT(*) FROM user_part_tables WHERE table_name = UPPER(?)";
 	}
 	
 	/**
@@ -55,7 +155,7 @@ class SQLFactura {
 	 */
 	public long adicionarFactura (PersistenceManager pm, long numero, Timestamp fecha, long idCliente, long sucursal) 
 	{
-        Query q = pm.newQuery(SQL, "INSERT INTO " + pp.darTablaFactura() + "(numero, fecha, idcliente, sucursal) values (?, ?, ?, ?)");
+        Query q = pm.newQuery(SQL, sqlAdicionarFactura);
         q.setParameters(numero, fecha, idCliente, sucursal);
         return (long) q.executeUnique();            
 	}
@@ -68,7 +168,7 @@ class SQLFactura {
 	 */
 	public long eliminarFacturaPorNumero(PersistenceManager pm, long numero)
 	{
-        Query q = pm.newQuery(SQL, "DELETE FROM " + pp.darTablaFactura() + " WHERE numero = ?");
+        Query q = pm.newQuery(SQL, sqlEliminarFacturaPorNumero);
         q.setParameters(numero);
         return (long) q.executeUnique();            
 	}
@@ -82,7 +182,7 @@ class SQLFactura {
 	 */
 	public Factura darFacturaPorNumero (PersistenceManager pm, long numero) 
 	{
-		Query q = pm.newQuery(SQL, "SELECT * FROM " + pp.darTablaFactura() + " WHERE numero = ?");
+		Query q = pm.newQuery(SQL, sqlDarFacturaPorNumero);
 		q.setResultClass(Factura.class);
 		q.setParameters(numero);
 		return (Factura) q.executeUnique();
@@ -97,7 +197,7 @@ class SQLFactura {
 	 */
 	public List<Factura> darFacturasPorNumero (PersistenceManager pm, long numero) 
 	{
-		Query q = pm.newQuery(SQL, "SELECT * FROM " + pp.darTablaFactura() + " WHERE numero = ?");
+		Query q = pm.newQuery(SQL, sqlDarFacturaPorNumero);
 		q.setResultClass(Factura.class);
 		q.setParameters(numero);
 		return (List<Factura>) q.executeList();
@@ -112,7 +212,7 @@ class SQLFactura {
 	 */
 	public List<Factura> darFacturasPorCliente (PersistenceManager pm, long idCliente) 
 	{
-		Query q = pm.newQuery(SQL, "SELECT * FROM " + pp.darTablaFactura() + " WHERE idcliente = ?");
+		Query q = pm.newQuery(SQL, sqlDarFacturasPorCliente);
 		q.setResultClass(Factura.class);
 		q.setParameters(idCliente);
 		return (List<Factura>) q.executeList();
@@ -127,7 +227,7 @@ class SQLFactura {
 	 */
 	public List<Factura> darFacturasPorSucursal(PersistenceManager pm, long sucursal) 
 	{
-		Query q = pm.newQuery(SQL, "SELECT * FROM " + pp.darTablaFactura() + " WHERE sucursal = ?");
+		Query q = pm.newQuery(SQL, sqlDarFacturasPorSucursal);
 		q.setResultClass(Factura.class);
 		q.setParameters(sucursal);
 		return (List<Factura>) q.executeList();
@@ -142,7 +242,7 @@ class SQLFactura {
 	 */
 	public List<Factura> darFacturasPorFecha(PersistenceManager pm, Timestamp fecha) 
 	{
-		Query q = pm.newQuery(SQL, "SELECT * FROM " + pp.darTablaFactura() + " WHERE fecha = ?");
+		Query q = pm.newQuery(SQL, sqlDarFacturasPorFecha);
 		q.setResultClass(Factura.class);
 		q.setParameters(fecha);
 		return (List<Factura>) q.executeList();
@@ -158,7 +258,7 @@ class SQLFactura {
 	 */
 	public List<Factura> darFacturasPorClienteYSucursal(PersistenceManager pm, long idCliente, long sucursal) 
 	{
-		Query q = pm.newQuery(SQL, "SELECT * FROM " + pp.darTablaFactura() + " WHERE idcliente = ? AND sucursal = ?");
+		Query q = pm.newQuery(SQL, sqlDarFacturasPorClienteYSucursal);
 		q.setResultClass(Factura.class);
 		q.setParameters(idCliente, sucursal);
 		return (List<Factura>) q.executeList();
@@ -172,9 +272,184 @@ class SQLFactura {
 	 */
 	public List<Factura> darFacturas(PersistenceManager pm)
 	{
-		Query q = pm.newQuery(SQL, "SELECT * FROM " + pp.darTablaFactura());
+		Query q = pm.newQuery(SQL, sqlDarFacturas);
 		q.setResultClass(Factura.class);
 		return (List<Factura>) q.executeList();
 	}
 
+	/**
+	 * Crea y ejecuta la sentencia SQL para encontrar una página de LAS FACTURAS de la base de datos de SuperAndes,
+	 * en orden de numero. Usa paginación por llave, por lo que el costo no depende de la posición de la página
+	 * @param pm - El manejador de persistencia
+	 * @param despuesDeNumero - El número de la última factura de la página anterior. 0 para la primera página
+	 * @param limite - El número máximo de tuplas de la página. También es el tamaño de fetch de JDBC
+	 * @return Una lista de objetos FACTURA, con a lo sumo limite elementos
+	 */
+	public List<Factura> darFacturasPagina (PersistenceManager pm, long despuesDeNumero, int limite)
+	{
+		Query q = pm.newQuery(SQL, sqlDarFacturasPagina);
+		q.getFetchPlan().setFetchSize(limite);
+		q.setParameters(despuesDeNumero, limite);
+		return aFacturas ((List<Object []>) q.executeList());
+	}
+
+	/**
+	 * Crea y ejecuta, en lotes de JDBC, la sentencia SQL para adicionar varias FACTURAS a la base de datos de SuperAndes.
+	 * Todas las inserciones hacen parte de la transacción activa del manejador de persistencia
+	 * @param pm - El manejador de persistencia
+	 * @param facturas - Las facturas a insertar, con su número ya asignado
+	 * @param tamanoLote - El número máximo de inserciones por lote enviado a la base de datos
+	 * @return El número de tuplas insertadas por cada elemento, en el mismo orden de la lista
+	 * @throws SQLException - Si falla alguna de las inserciones
+	 */
+	public long [] adicionarFactura (PersistenceManager pm, List<Factura> facturas, int tamanoLote) throws SQLException
+	{
+		List<Object []> filas = new ArrayList<Object []> (facturas.size ());
+		for (Factura f : facturas)
+		{
+			filas.add (new Object [] {f.getNumero (), f.getFecha (), f.getCliente (), f.getSucursal ()});
+		}
+		return SQLUtil.ejecutarLote (pm, sqlAdicionarFactura, filas, tamanoLote);
+	}
+
+	/**
+	 * Crea y ejecuta la sentencia SQL para encontrar los números de las FACTURAS que existen en un rango de números
+	 * @param pm - El manejador de persistencia
+	 * @param desde - El primer número del rango
+	 * @param hasta - El último número del rango, incluido
+	 * @return El conjunto de números de las facturas del rango
+	 */
+	public Set<Long> darNumerosEntre (PersistenceManager pm, long desde, long hasta)
+	{
+		Query q = pm.newQuery(SQL, sqlDarNumerosEntre);
+		q.setParameters(desde, hasta);
+		Set<Long> resp = new HashSet<Long> ();
+		for (Object numero : q.executeList())
+		{
+			resp.add (((Number) numero).longValue ());
+		}
+		return resp;
+	}
+
+	/**
+	 * @param instante - Un instante
+	 * @return El comienzo del mes del instante, en la zona horaria local. Es el límite inferior de la partición que contiene el instante
+	 */
+	public static Timestamp darMes (Timestamp instante)
+	{
+		Calendar c = Calendar.getInstance ();
+		c.setTimeInMillis (SQLVentasDiarias.darDia (instante).getTime ());
+		c.set (Calendar.DAY_OF_MONTH, 1);
+		return new Timestamp (c.getTimeInMillis ());
+	}
+
+	/**
+	 * @param instante - Un instante
+	 * @return El comienzo del mes siguiente al del instante, en la zona horaria local
+	 */
+	public static Timestamp darMesSiguiente (Timestamp instante)
+	{
+		Calendar c = Calendar.getInstance ();
+		c.setTimeInMillis (darMes (instante).getTime ());
+		c.add (Calendar.MONTH, 1);
+		return new Timestamp (c.getTimeInMillis ());
+	}
+
+	/**
+	 * Crea y ejecuta la sentencia SQL para encontrar las FACTURAS de un rango de fechas, en orden de fecha.
+	 * Con FACTURA particionada por mes, sólo lee las particiones de los meses del rango
+	 * @param pm - El manejador de persistencia
+	 * @param desde - La fecha inicial, incluida
+	 * @param hasta - La fecha final, excluida
+	 * @return Una lista de objetos FACTURA con fecha en el rango
+	 */
+	public List<Factura> darFacturasPorRangoFechas (PersistenceManager pm, Timestamp desde, Timestamp hasta)
+	{
+		Query q = pm.newQuery(SQL, sqlDarFacturasPorRangoFechas);
+		q.setParameters(desde, hasta);
+		return aFacturas ((List<Object []>) q.executeList());
+	}
+
+	/**
+	 * Construye las facturas de las filas de una consulta de las columnas numero, fecha, idcliente y sucursal, en ese orden
+	 * @param filas - Las filas de la consulta
+	 * @return Una lista de objetos FACTURA, en el orden de las filas
+	 */
+	private static List<Factura> aFacturas (List<Object []> filas)
+	{
+		List<Factura> resp = new ArrayList<Factura> (filas.size ());
+		for (Object [] fila : filas)
+		{
+			resp.add (new Factura (((Number) fila [0]).longValue (), ((Number) fila [3]).longValue (),
+					new Timestamp (((java.util.Date) fila [1]).getTime ()), ((Number) fila [2]).longValue ()));
+		}
+		return resp;
+	}
+
+	/**
+	 * Crea y ejecuta la sentencia SQL para contar las FACTURAS de un rango de fechas
+	 * @param pm - El manejador de persistencia
+	 * @param desde - La fecha inicial, incluida
+	 * @param hasta - La fecha final, excluida
+	 * @return El número de facturas con fecha en el rango
+	 */
+	public long contarFacturasPorRangoFechas (PersistenceManager pm, Timestamp desde, Timestamp hasta)
+	{
+		Query q = pm.newQuery(SQL, sqlContarFacturasPorRangoFechas);
+		q.setParameters(desde, hasta);
+		return ((Number) q.executeUnique()).longValue ();
+	}
+
+	/**
+	 * Crea y ejecuta la sentencia SQL para eliminar las FACTURAS de un rango de fechas. Sus transacciones deben eliminarse antes
+	 * @param pm - El manejador de persistencia
+	 * @param desde - La fecha inicial, incluida
+	 * @param hasta - La fecha final, excluida
+	 * @return El número de tuplas eliminadas
+	 */
+	public long eliminarFacturasPorRangoFechas (PersistenceManager pm, Timestamp desde, Timestamp hasta)
+	{
+		Query q = pm.newQuery(SQL, sqlEliminarFacturasPorRangoFechas);
+		q.setParameters(desde, hasta);
+		return (long) q.executeUnique();
+	}
+
+	/**
+	 * Crea y ejecuta la sentencia DDL para eliminar la partición mensual de FACTURA que contiene una fecha. Oracle elimina con ella
+	 * la partición de TRANSACCION del mismo mes, porque TRANSACCION está particionada por referencia a FACTURA, y mantiene los índices
+	 * globales. Es una operación de diccionario: no depende del número de tuplas del mes.
+	 * Como toda sentencia DDL de Oracle, confirma implícitamente la transacción de la conexión, así que no debe llamarse con una
+	 * transacción activa. Tampoco sirve para los meses anteriores a FIN_PARTICION_INICIAL, que están en la partición inicial
+	 * @param pm - El manejador de persistencia, sin transacción activa
+	 * @param mes - El primer instante del mes
+	 * @throws SQLException - Si el mes no tiene partición o la tabla no está particionada
+	 */
+	public void eliminarParticion (PersistenceManager pm, Timestamp mes) throws SQLException
+	{
+		// Las sentencias DDL no reciben parámetros: la fecha va como literal
+		String sentencia = "ALTER TABLE " + pp.darTablaFactura () + " DROP PARTITION FOR (DATE '" + new SimpleDateFormat ("yyyy-MM-dd").format (mes)
+				+ "') UPDATE GLOBAL INDEXES";
+		JDOConnection jdoConn = pm.getDataStoreConnection ();
+		try (Statement st = ((Connection) jdoConn.getNativeConnection ()).createStatement ())
+		{
+			st.execute (sentencia);
+		}
+		finally
+		{
+			jdoConn.close ();
+		}
+	}
+
+	/**
+	 * Crea y ejecuta la sentencia SQL para saber si la tabla FACTURA está particionada en la base de datos. Una base de datos creada
+	 * con una versión anterior de EsquemaSuperAndes.sql no lo está hasta que se ejecuta MigracionParticiones.sql
+	 * @param pm - El manejador de persistencia
+	 * @return true si la tabla FACTURA está particionada
+	 */
+	public boolean estaParticionada (PersistenceManager pm)
+	{
+		Query q = pm.newQuery(SQL, sqlEstaParticionada);
+		q.setParameters(pp.darTablaFactura ());
+		return ((Number) q.executeUnique()).longValue () > 0;
+	}
 }
@@ -1,5 +1,7 @@
 package uniandes.isis2304.superandes.persistencia;
 
+import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.List;
 
 import javax.jdo.PersistenceManager;
@@ -33,6 +35,31 @@ class SQLOfrecen {
 	 */
 	private PersistenciaSuperAndes pp;
 
+	/**
+	 * Sentencia SQL de adicionarOfrecen
+	 */
+	private final String sqlAdicionarOfrecen;
+
+	/**
+	 * Sentencia SQL de eliminarOfrecen
+	 */
+	private final String sqlEliminarOfrecen;
+
+	/**
+	 * Sentencia SQL de darOfrecen
+	 */
+	private final String sqlDarOfrecen;
+
+	/**
+	 * Sentencia SQL de darProveedorYCantidadProductosOfrecen
+	 */
+	private final String sqlDarProveedorYCantidadProductosOfrecen;
+
+	/**
+	 * Sentencia SQL de darOfertaMasBarata
+	 */
+	private final String sqlDarOfertaMasBarata;
+
 	/* ****************************************************************
 	 * 			Mtodos
 	 *****************************************************************/
@@ -43,6 +70,11 @@ class SQLOfrecen {
 	 */	
 	public SQLOfrecen(PersistenciaSuperAndes pp) {
 		this.pp = pp;
+		sqlAdicionarOfrecen = "INSERT INTO " + pp.darTablaOfrecen () + "(idproducto, idproveedor, costo) values (?, ?, ?)";
+		sqlEliminarOfrecen = "DELETE FROM " + pp.darTablaOfrecen () + " WHERE idproducto = ? AND idproveedor = ?";
+		sqlDarOfrecen = "SELECT * FROM " + pp.darTablaOfrecen ();
+		sqlDarProveedorYCantidadProductosOfrecen = "SELECT idProveedor, count (*) as numProductos FROM " + pp.darTablaOfrecen () + " GROUP BY idProveedor";
+		sqlDarOfertaMasBarata = "SELECT * FROM (SELECT idproveedor, costo FROM " + pp.darTablaOfrecen () + " WHERE idproducto = ? ORDER BY costo, idproveedor) WHERE ROWNUM <= 1";
 	}
 
 	/**
@@ -55,7 +87,7 @@ class SQLOfrecen {
 	 */
 	public long adicionarOfrecen (PersistenceManager pm, long idProducto, long idProveedor, double costo) 
 	{
-        Query q = pm.newQuery(SQL, "INSERT INTO " + pp.darTablaOfrecen () + "(idproducto, idproveedor, costo) values (?, ?, ?)");
+        Query q = pm.newQuery(SQL, sqlAdicionarOfrecen);
         q.setParameters(idProducto, idProveedor, costo);
         return (long)q.executeUnique();            
 	}
@@ -69,7 +101,7 @@ class SQLOfrecen {
 	 */
 	public long eliminarOfrecen (PersistenceManager pm, long idProducto, long idProveedor) 
 	{
-        Query q = pm.newQuery(SQL, "DELETE FROM " + pp.darTablaOfrecen () + " WHERE idproducto = ? AND idproveedor = ?");
+        Query q = pm.newQuery(SQL, sqlEliminarOfrecen);
         q.setParameters(idProducto, idProveedor);
         return (long) q.executeUnique();            
 	}
@@ -82,7 +114,7 @@ class SQLOfrecen {
 	 */
 	public List<Ofrecen> darOfrecen (PersistenceManager pm)
 	{
-		Query q = pm.newQuery(SQL, "SELECT * FROM " + pp.darTablaOfrecen ());
+		Query q = pm.newQuery(SQL, sqlDarOfrecen);
 		q.setResultClass(Ofrecen.class);
 		return (List<Ofrecen>) q.execute();
 	}
@@ -95,10 +127,44 @@ class SQLOfrecen {
 	 */
 	public List<Object []> darProveedorYCantidadProductosOfrecen(PersistenceManager pm)
 	{
-        String sql = "SELECT idProveedor, count (*) as numProductos";
-        sql += " FROM " + pp.darTablaOfrecen ();
-       	sql	+= " GROUP BY idProveedor";
-		Query q = pm.newQuery(SQL, sql);
+		Query q = pm.newQuery(SQL, sqlDarProveedorYCantidadProductosOfrecen);
 		return q.executeList();
 	}
+
+	/**
+	 * Crea y ejecuta, en lotes de JDBC, la sentencia SQL para adicionar varias tuplas OFRECEN a la base de datos de SuperAndes.
+	 * Todas las inserciones hacen parte de la transaccin activa del manejador de persistencia
+	 * @param pm - El manejador de persistencia
+	 * @param ofrecen - Las tuplas OFRECEN a insertar
+	 * @param tamanoLote - El nmero mximo de inserciones por lote enviado a la base de datos
+	 * @return El nmero de tuplas insertadas por cada elemento, en el mismo orden de la lista
+	 * @throws SQLException - Si falla alguna de las inserciones
+	 */
+	public long [] adicionarOfrecen (PersistenceManager pm, List<Ofrecen> ofrecen, int tamanoLote) throws SQLException
+	{
+		List<Object []> filas = new ArrayList<Object []> (ofrecen.size ());
+		for (Ofrecen o : ofrecen)
+		{
+			filas.add (new Object [] {o.getProducto (), o.getProveedor (), o.getCosto ()});
+		}
+		return SQLUtil.ejecutarLote (pm, sqlAdicionarOfrecen, filas, tamanoLote);
+	}
+
+	/**
+	 * Crea y ejecuta la sentencia SQL para encontrar el proveedor que ofrece un producto al menor costo
+	 * @param pm - El manejador de persistencia
+	 * @param idProducto - El identificador del producto
+	 * @return El objeto OFRECEN del proveedor ms barato. null si ningn proveedor ofrece el producto
+	 */
+	public Ofrecen darOfertaMasBarata (PersistenceManager pm, long idProducto)
+	{
+		Query q = pm.newQuery(SQL, sqlDarOfertaMasBarata);
+		q.setParameters(idProducto);
+		List<Object []> resp = q.executeList();
+		if (resp.isEmpty ())
+		{
+			return null;
+		}
+		return new Ofrecen (idProducto, ((Number) resp.get (0) [0]).longValue (), ((Number) resp.get (0) [1]).doubleValue ());
+	}
 }
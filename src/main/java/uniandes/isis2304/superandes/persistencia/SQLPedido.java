@@ -1,6 +1,8 @@
 package uniandes.isis2304.superandes.persistencia;
 
+import java.sql.SQLException;
 import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.List;
 
 import javax.jdo.PersistenceManager;
@@ -34,6 +36,81 @@ class SQLPedido {
 	 * El manejador de persistencia general de la aplicación
 	 */
 	PersistenciaSuperAndes pp;
+
+	/**
+	 * Sentencia SQL de adicionarPedido
+	 */
+	private final String sqlAdicionarPedido;
+
+	/**
+	 * Sentencia SQL de eliminarPedidoPorId
+	 */
+	private final String sqlEliminarPedidoPorId;
+
+	/**
+	 * Sentencia SQL de darPedidoPorId
+	 */
+	private final String sqlDarPedidoPorId;
+
+	/**
+	 * Sentencia SQL de darPedidosPorSucursal
+	 */
+	private final String sqlDarPedidosPorSucursal;
+
+	/**
+	 * Sentencia SQL de darPedidosPorProveedor
+	 */
+	private final String sqlDarPedidosPorProveedor;
+
+	/**
+	 * Sentencia SQL de darPedidosPorProveedorYSucursal
+	 */
+	private final String sqlDarPedidosPorProveedorYSucursal;
+
+	/**
+	 * Sentencia SQL de cambiarEstadoOrdenPedido
+	 */
+	private final String sqlCambiarEstadoOrdenPedido;
+
+	/**
+	 * Sentencia SQL de darPedidosPorCalificacion
+	 */
+	private final String sqlDarPedidosPorCalificacion;
+
+	/**
+	 * Sentencia SQL de cambiarCalificacionPedido
+	 */
+	private final String sqlCambiarCalificacionPedido;
+
+	/**
+	 * Sentencia SQL de darPedidosPorFechaEntrega
+	 */
+	private final String sqlDarPedidosPorFechaEntrega;
+
+	/**
+	 * Sentencia SQL de eliminarPedidosTerminados
+	 */
+	private final String sqlEliminarPedidosTerminados;
+
+	/**
+	 * Sentencia SQL de darPedidos
+	 */
+	private final String sqlDarPedidos;
+
+	/**
+	 * Sentencia SQL de darPedidosPagina
+	 */
+	private final String sqlDarPedidosPagina;
+
+	/**
+	 * Sentencia SQL de darProductosEnPedidosPendientes
+	 */
+	private final String sqlDarProductosEnPedidosPendientes;
+
+	/**
+	 * Sentencia SQL de recibirPedidos
+	 */
+	private final String sqlRecibirPedido;
 	
 	/* ****************************************************************
 	 * 			Métodos
@@ -44,6 +121,22 @@ class SQLPedido {
 	 */
 	public SQLPedido(PersistenciaSuperAndes pp) {
 		this.pp = pp;
+		sqlAdicionarPedido = "INSERT INTO " + pp.darTablaPedido() + "(id, idsucursal, idproveedor, fechaentrega, estadoorden, calificacionservicio, costototal) values (?, ?, ?, ?, ?, ?, ?)";
+		sqlEliminarPedidoPorId = "DELETE FROM " + pp.darTablaPedido() + " WHERE id = ?";
+		sqlDarPedidoPorId = "SELECT * FROM " + pp.darTablaPedido() + " WHERE id = ?";
+		sqlDarPedidosPorSucursal = "SELECT * FROM " + pp.darTablaPedido() + " WHERE idsucursal = ?";
+		sqlDarPedidosPorProveedor = "SELECT * FROM " + pp.darTablaPedido() + " WHERE idproveedor = ?";
+		sqlDarPedidosPorProveedorYSucursal = "SELECT * FROM " + pp.darTablaPedido() + " WHERE idproveedor = ? AND idsucursal = ?";
+		sqlCambiarEstadoOrdenPedido = "UPDATE " + pp.darTablaPedido() + " SET estadoorden = ? WHERE id = ?";
+		sqlDarPedidosPorCalificacion = "SELECT * FROM " + pp.darTablaPedido() + " WHERE calificacionservicio = ?";
+		sqlCambiarCalificacionPedido = "UPDATE " + pp.darTablaPedido() + " SET calificacionservicio = ? WHERE id = ?";
+		sqlDarPedidosPorFechaEntrega = "SELECT * FROM " + pp.darTablaPedido() + " WHERE fechaentrega = ?";
+		sqlEliminarPedidosTerminados = "DELETE FROM " + pp.darTablaPedido() + " WHERE estadoorden = 'Entregado'";
+		sqlDarPedidos = "SELECT * FROM " + pp.darTablaPedido();
+		sqlDarPedidosPagina = "SELECT * FROM (SELECT * FROM " + pp.darTablaPedido() + " WHERE id > ? ORDER BY id) WHERE ROWNUM <= ?";
+		sqlDarProductosEnPedidosPendientes = "SELECT DISTINCT p.idsucursal, s.idproducto FROM " + pp.darTablaPedido () + " p, " + pp.darTablaSubpedido ()
+				+ " s WHERE s.idpedido = p.id AND p.estadoorden = 'pendiente'";
+		sqlRecibirPedido = "UPDATE " + pp.darTablaPedido () + " SET estadoorden = 'entregado', calificacionservicio = ? WHERE id = ? AND estadoorden = 'pendiente'";
 	}
 	
 	/**
@@ -54,15 +147,15 @@ class SQLPedido {
 	 * @param sucursal - La sucursal que hace el pedido
 	 * @param fechaEntrega - La fecha de entrega del pedido
 	 * @param estadoOrden - El estado de orden del pedido
-	 * @param cantidad - El numero de unidades solicitadas
+	 * @param cantidad - El numero de unidades solicitadas. No se guarda en PEDIDO: las cantidades están en SUBPEDIDO
 	 * @param calificacion - La calificacion del pedido
 	 * @param costoTotal - El costo total del pedido
 	 * @return EL número de tuplas insertadas
 	 */
 	public long adicionarPedido (PersistenceManager pm, long idPedido, long proveedor, long sucursal, Timestamp fechaEntrega, String estadoOrden, int cantidad, int calificacion, double costoTotal) 
 	{
-        Query q = pm.newQuery(SQL, "INSERT INTO " + pp.darTablaPedido() + "(id, idsucursal, idproveedor, fechaentrega, estadoorden, calificacionservicio, costototal) values (?, ?, ?, ?, ?, ?, ?)");
-        q.setParameters(idPedido, proveedor, sucursal, fechaEntrega, estadoOrden, cantidad, calificacion, costoTotal);
+        Query q = pm.newQuery(SQL, sqlAdicionarPedido);
+        q.setParameters(idPedido, sucursal, proveedor, fechaEntrega, estadoOrden, calificacion, costoTotal);
         return (long) q.executeUnique();            
 	}
 	
@@ -74,7 +167,7 @@ class SQLPedido {
 	 */
 	public long eliminarPedidoPorId(PersistenceManager pm, long idPedido)
 	{
-        Query q = pm.newQuery(SQL, "DELETE FROM " + pp.darTablaPedido() + " WHERE id = ?");
+        Query q = pm.newQuery(SQL, sqlEliminarPedidoPorId);
         q.setParameters(idPedido);
         return (long) q.executeUnique();
 	}
@@ -88,7 +181,7 @@ class SQLPedido {
 	 */
 	public Pedido darPedidoPorId (PersistenceManager pm, long idPedido) 
 	{
-		Query q = pm.newQuery(SQL, "SELECT * FROM " + pp.darTablaPedido() + " WHERE id = ?");
+		Query q = pm.newQuery(SQL, sqlDarPedidoPorId);
 		q.setResultClass(Pedido.class);
 		q.setParameters(idPedido);
 		return (Pedido) q.executeUnique();
@@ -103,7 +196,7 @@ class SQLPedido {
 	 */
 	public List<Pedido> darPedidosPorId(PersistenceManager pm, long idPedido) 
 	{
-		Query q = pm.newQuery(SQL, "SELECT * FROM " + pp.darTablaPedido() + " WHERE id = ?");
+		Query q = pm.newQuery(SQL, sqlDarPedidoPorId);
 		q.setResultClass(Pedido.class);
 		q.setParameters(idPedido);
 		return (List<Pedido>) q.executeList();
@@ -118,7 +211,7 @@ class SQLPedido {
 	 */
 	public List<Pedido> darPedidosPorSucursal(PersistenceManager pm, long sucursal) 
 	{
-		Query q = pm.newQuery(SQL, "SELECT * FROM " + pp.darTablaPedido() + " WHERE idsucursal = ?");
+		Query q = pm.newQuery(SQL, sqlDarPedidosPorSucursal);
 		q.setResultClass(Pedido.class);
 		q.setParameters(sucursal);
 		return (List<Pedido>) q.executeList();
@@ -133,7 +226,7 @@ class SQLPedido {
 	 */
 	public List<Pedido> darPedidosPorProveedor(PersistenceManager pm, long proveedor) 
 	{
-		Query q = pm.newQuery(SQL, "SELECT * FROM " + pp.darTablaPedido() + " WHERE idproveedor = ?");
+		Query q = pm.newQuery(SQL, sqlDarPedidosPorProveedor);
 		q.setResultClass(Pedido.class);
 		q.setParameters(proveedor);
 		return (List<Pedido>) q.executeList();
@@ -149,7 +242,7 @@ class SQLPedido {
 	 */
 	public List<Pedido> darPedidosPorProveedorYSucursal(PersistenceManager pm, long proveedor, long sucursal) 
 	{
-		Query q = pm.newQuery(SQL, "SELECT * FROM " + pp.darTablaPedido() + " WHERE idproveedor = ? AND idsucursal = ?");
+		Query q = pm.newQuery(SQL, sqlDarPedidosPorProveedorYSucursal);
 		q.setResultClass(Pedido.class);
 		q.setParameters(proveedor, sucursal);
 		return (List<Pedido>) q.executeList();
@@ -166,7 +259,7 @@ class SQLPedido {
 	 */
 	public long cambiarEstadoOrdenPedido(PersistenceManager pm, long idPedido, String estadoOrden) 
 	{
-		 Query q = pm.newQuery(SQL, "UPDATE " + pp.darTablaPedido() + " SET estadoorden = ? WHERE id = ?");
+		 Query q = pm.newQuery(SQL, sqlCambiarEstadoOrdenPedido);
 	     q.setParameters(estadoOrden, idPedido);
 	     return (long) q.executeUnique();            
 	}
@@ -180,7 +273,7 @@ class SQLPedido {
 	 */
 	public List<Pedido> darPedidosPorCalificacion(PersistenceManager pm, int calificacion) 
 	{
-		Query q = pm.newQuery(SQL, "SELECT * FROM " + pp.darTablaPedido() + " WHERE calificacionservicio = ?");
+		Query q = pm.newQuery(SQL, sqlDarPedidosPorCalificacion);
 		q.setResultClass(Pedido.class);
 		q.setParameters(calificacion);
 		return (List<Pedido>) q.executeList();
@@ -197,7 +290,7 @@ class SQLPedido {
 	 */
 	public long cambiarCalificacionPedido(PersistenceManager pm, long idPedido, int calificacion) 
 	{
-		 Query q = pm.newQuery(SQL, "UPDATE " + pp.darTablaPedido() + " SET calificacionservicio = ? WHERE id = ?");
+		 Query q = pm.newQuery(SQL, sqlCambiarCalificacionPedido);
 	     q.setParameters(calificacion, idPedido);
 	     return (long) q.executeUnique();            
 	}
@@ -211,7 +304,7 @@ class SQLPedido {
 	 */
 	public List<Pedido> darPedidosPorFechaEntrega(PersistenceManager pm, Timestamp fechaEntrega) 
 	{
-		Query q = pm.newQuery(SQL, "SELECT * FROM " + pp.darTablaPedido() + " WHERE fechaentrega = ?");
+		Query q = pm.newQuery(SQL, sqlDarPedidosPorFechaEntrega);
 		q.setResultClass(Pedido.class);
 		q.setParameters(fechaEntrega);
 		return (List<Pedido>) q.executeList();
@@ -225,7 +318,7 @@ class SQLPedido {
 	 */
 	public long eliminarPedidosTerminados(PersistenceManager pm, String estadoOrden)
 	{
-        Query q = pm.newQuery(SQL, "DELETE FROM " + pp.darTablaPedido() + " WHERE estadoorden = 'Entregado'");
+        Query q = pm.newQuery(SQL, sqlEliminarPedidosTerminados);
         q.setParameters(estadoOrden);
         return (long) q.executeUnique();
 	}
@@ -238,8 +331,78 @@ class SQLPedido {
 	 */
 	public List<Pedido> darPedidos(PersistenceManager pm)
 	{
-		Query q = pm.newQuery(SQL, "SELECT * FROM " + pp.darTablaPedido());
+		Query q = pm.newQuery(SQL, sqlDarPedidos);
 		q.setResultClass(Pedido.class);
 		return (List<Pedido>) q.executeList();
 	}
+
+	/**
+	 * Crea y ejecuta la sentencia SQL para encontrar una página de LOS PEDIDOS de la base de datos de SuperAndes,
+	 * en orden de id. Usa paginación por llave, por lo que el costo no depende de la posición de la página
+	 * @param pm - El manejador de persistencia
+	 * @param despuesDeId - El identificador del último pedido de la página anterior. 0 para la primera página
+	 * @param limite - El número máximo de tuplas de la página. También es el tamaño de fetch de JDBC
+	 * @return Una lista de objetos PEDIDO, con a lo sumo limite elementos
+	 */
+	public List<Pedido> darPedidosPagina (PersistenceManager pm, long despuesDeId, int limite)
+	{
+		Query q = pm.newQuery(SQL, sqlDarPedidosPagina);
+		q.setResultClass(Pedido.class);
+		q.getFetchPlan().setFetchSize(limite);
+		q.setParameters(despuesDeId, limite);
+		return (List<Pedido>) q.executeList();
+	}
+
+	/**
+	 * Crea y ejecuta, en lotes de JDBC, la sentencia SQL para adicionar varios PEDIDOS a la base de datos de SuperAndes.
+	 * Todas las inserciones hacen parte de la transacción activa del manejador de persistencia
+	 * @param pm - El manejador de persistencia
+	 * @param pedidos - Los pedidos a insertar, con su identificador ya asignado
+	 * @param tamanoLote - El número máximo de inserciones por lote enviado a la base de datos
+	 * @return El número de tuplas insertadas por cada elemento, en el mismo orden de la lista
+	 * @throws SQLException - Si falla alguna de las inserciones
+	 */
+	public long [] adicionarPedido (PersistenceManager pm, List<Pedido> pedidos, int tamanoLote) throws SQLException
+	{
+		List<Object []> filas = new ArrayList<Object []> (pedidos.size ());
+		for (Pedido p : pedidos)
+		{
+			// Un pedido pendiente todavía no tiene calificación, y la tabla sólo admite calificaciones positivas
+			filas.add (new Object [] {p.getId (), p.getSucursal (), p.getProveedor (), p.getFechaEntrega (), p.getEstadoOrden (),
+					p.getCalificacion () > 0 ? p.getCalificacion () : null, p.getCostoTotal ()});
+		}
+		return SQLUtil.ejecutarLote (pm, sqlAdicionarPedido, filas, tamanoLote);
+	}
+
+	/**
+	 * Crea y ejecuta la sentencia SQL para encontrar los productos que están en algún pedido pendiente de cada sucursal
+	 * @param pm - El manejador de persistencia
+	 * @return Una lista de parejas de objetos, el primer elemento de cada pareja representa el identificador de una sucursal,
+	 * 	el segundo elemento representa el identificador de un producto pedido para esa sucursal que aún no se ha entregado
+	 */
+	public List<Object []> darProductosEnPedidosPendientes (PersistenceManager pm)
+	{
+		Query q = pm.newQuery(SQL, sqlDarProductosEnPedidosPendientes);
+		return q.executeList();
+	}
+
+	/**
+	 * Crea y ejecuta, en lotes de JDBC, la sentencia SQL para marcar como entregados y calificar varios pedidos pendientes.
+	 * Todas las actualizaciones hacen parte de la transacción activa del manejador de persistencia
+	 * @param pm - El manejador de persistencia
+	 * @param idsPedidos - Los identificadores de los pedidos
+	 * @param calificacion - La calificación del servicio de los pedidos
+	 * @param tamanoLote - El número máximo de actualizaciones por lote enviado a la base de datos
+	 * @return El número de tuplas modificadas por cada pedido, en el mismo orden de la lista. 0 si el pedido no existe o ya se había entregado
+	 * @throws SQLException - Si falla alguna de las actualizaciones
+	 */
+	public long [] recibirPedidos (PersistenceManager pm, List<Long> idsPedidos, int calificacion, int tamanoLote) throws SQLException
+	{
+		List<Object []> filas = new ArrayList<Object []> (idsPedidos.size ());
+		for (Long idPedido : idsPedidos)
+		{
+			filas.add (new Object [] {calificacion, idPedido});
+		}
+		return SQLUtil.ejecutarLote (pm, sqlRecibirPedido, filas, tamanoLote);
+	}
 }
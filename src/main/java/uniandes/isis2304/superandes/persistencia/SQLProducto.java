@@ -1,5 +1,7 @@
 package uniandes.isis2304.superandes.persistencia;
 
+import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.List;
 
 import javax.jdo.PersistenceManager;
@@ -33,6 +35,41 @@ class SQLProducto
 	 */
 	private PersistenciaSuperAndes pp;
 
+	/**
+	 * Sentencia SQL de adicionarProducto
+	 */
+	private final String sqlAdicionarProducto;
+
+	/**
+	 * Sentencia SQL de eliminarProductoPorNombre
+	 */
+	private final String sqlEliminarProductoPorNombre;
+
+	/**
+	 * Sentencia SQL de eliminarProductoPorId
+	 */
+	private final String sqlEliminarProductoPorId;
+
+	/**
+	 * Sentencia SQL de darProductoPorId
+	 */
+	private final String sqlDarProductoPorId;
+
+	/**
+	 * Sentencia SQL de darProductosPorNombre
+	 */
+	private final String sqlDarProductosPorNombre;
+
+	/**
+	 * Sentencia SQL de darProductos
+	 */
+	private final String sqlDarProductos;
+
+	/**
+	 * Sentencia SQL de darProductosPagina
+	 */
+	private final String sqlDarProductosPagina;
+
 	/* ****************************************************************
 	 * 			Mtodos
 	 *****************************************************************/
@@ -43,6 +80,13 @@ class SQLProducto
 	public SQLProducto (PersistenciaSuperAndes pp)
 	{
 		this.pp = pp;
+		sqlAdicionarProducto = "INSERT INTO " + pp.darTablaProducto () + "(id, nombre, marca, presentacion, codigobarras, unidadmedida, categoria, tipo) values (?, ?, ?, ?, ?, ?, ?, ?)";
+		sqlEliminarProductoPorNombre = "DELETE FROM " + pp.darTablaProducto () + " WHERE nombre = ?";
+		sqlEliminarProductoPorId = "DELETE FROM " + pp.darTablaProducto () + " WHERE id = ?";
+		sqlDarProductoPorId = "SELECT * FROM " + pp.darTablaProducto () + " WHERE id = ?";
+		sqlDarProductosPorNombre = "SELECT * FROM " + pp.darTablaProducto () + " WHERE nombre = ?";
+		sqlDarProductos = "SELECT * FROM " + pp.darTablaProducto ();
+		sqlDarProductosPagina = "SELECT * FROM (SELECT * FROM " + pp.darTablaProducto () + " WHERE id > ? ORDER BY id) WHERE ROWNUM <= ?";
 	}
 	
 	/**
@@ -60,7 +104,7 @@ class SQLProducto
 	 */
 	public long adicionarProducto (PersistenceManager pm, long id, String nombre, String marca, String presentacion, String codigobarras, String unidadmedida, String categoria, String tipo) 
 	{
-        Query q = pm.newQuery(SQL, "INSERT INTO " + pp.darTablaProducto () + "(id, nombre, marca, presentacion, codigobarras, unidadmedida, categoria, tipo) values (?, ?, ?, ?, ?, ?, ?, ?)");
+        Query q = pm.newQuery(SQL, sqlAdicionarProducto);
         q.setParameters(id, nombre, marca, presentacion, codigobarras, unidadmedida, categoria, tipo);
         return (long) q.executeUnique();            
 	}
@@ -73,7 +117,7 @@ class SQLProducto
 	 */
 	public long eliminarProductoPorNombre (PersistenceManager pm, String nombreProducto)
 	{
-        Query q = pm.newQuery(SQL, "DELETE FROM " + pp.darTablaProducto () + " WHERE nombre = ?");
+        Query q = pm.newQuery(SQL, sqlEliminarProductoPorNombre);
         q.setParameters(nombreProducto);
         return (long) q.executeUnique();            
 	}
@@ -86,11 +130,26 @@ class SQLProducto
 	 */
 	public long eliminarProductoPorId (PersistenceManager pm, long idProducto)
 	{
-        Query q = pm.newQuery(SQL, "DELETE FROM " + pp.darTablaProducto () + " WHERE id = ?");
+        Query q = pm.newQuery(SQL, sqlEliminarProductoPorId);
         q.setParameters(idProducto);
         return (long) q.executeUnique();            
 	}
 
+	/**
+	 * Crea y ejecuta la sentencia SQL para encontrar la informacin de UN PRODUCTO de la 
+	 * base de datos de SuperAndes, por su identificador
+	 * @param pm - El manejador de persistencia
+	 * @param idProducto - El identificador del producto
+	 * @return El objeto PRODUCTO que tiene el identificador dado. null si no existe
+	 */
+	public Producto darProductoPorId (PersistenceManager pm, long idProducto) 
+	{
+		Query q = pm.newQuery(SQL, sqlDarProductoPorId);
+		q.setResultClass(Producto.class);
+		q.setParameters(idProducto);
+		return (Producto) q.executeUnique();
+	}
+
 	/**
 	 * Crea y ejecuta la sentencia SQL para encontrar la informacin de PRODUCTOS de la 
 	 * base de datos de SuperAndes, por su nombre
@@ -100,7 +159,7 @@ class SQLProducto
 	 */
 	public List<Producto> darProductosPorNombre (PersistenceManager pm, String nombreProducto) 
 	{
-		Query q = pm.newQuery(SQL, "SELECT * FROM " + pp.darTablaProducto () + " WHERE nombre = ?");
+		Query q = pm.newQuery(SQL, sqlDarProductosPorNombre);
 		q.setResultClass(Producto.class);
 		q.setParameters(nombreProducto);
 		return (List<Producto>) q.executeList();
@@ -114,10 +173,46 @@ class SQLProducto
 	 */
 	public List<Producto> darProductos (PersistenceManager pm)
 	{
-		Query q = pm.newQuery(SQL, "SELECT * FROM " + pp.darTablaProducto ());
+		Query q = pm.newQuery(SQL, sqlDarProductos);
 		q.setResultClass(Producto.class);
 		return (List<Producto>) q.executeList();
 	}
+
+	/**
+	 * Crea y ejecuta la sentencia SQL para encontrar una pgina de LAS PRODUCTOS de la base de datos de SuperAndes,
+	 * en orden de id. Usa paginacin por llave, por lo que el costo no depende de la posicin de la pgina
+	 * @param pm - El manejador de persistencia
+	 * @param despuesDeId - El identificador del ltimo producto de la pgina anterior. 0 para la primera pgina
+	 * @param limite - El nmero mximo de tuplas de la pgina. Tambin es el tamao de fetch de JDBC
+	 * @return Una lista de objetos PRODUCTO, con a lo sumo limite elementos
+	 */
+	public List<Producto> darProductosPagina (PersistenceManager pm, long despuesDeId, int limite)
+	{
+		Query q = pm.newQuery(SQL, sqlDarProductosPagina);
+		q.setResultClass(Producto.class);
+		q.getFetchPlan().setFetchSize(limite);
+		q.setParameters(despuesDeId, limite);
+		return (List<Producto>) q.executeList();
+	}
+
+	/**
+	 * Crea y ejecuta, en lotes de JDBC, la sentencia SQL para adicionar varios PRODUCTOS a la base de datos de SuperAndes.
+	 * Todas las inserciones hacen parte de la transaccin activa del manejador de persistencia
+	 * @param pm - El manejador de persistencia
+	 * @param productos - Los productos a insertar, con su identificador ya asignado
+	 * @param tamanoLote - El nmero mximo de inserciones por lote enviado a la base de datos
+	 * @return El nmero de tuplas insertadas por cada elemento, en el mismo orden de la lista
+	 * @throws SQLException - Si falla alguna de las inserciones
+	 */
+	public long [] adicionarProducto (PersistenceManager pm, List<Producto> productos, int tamanoLote) throws SQLException
+	{
+		List<Object []> filas = new ArrayList<Object []> (productos.size ());
+		for (Producto p : productos)
+		{
+			filas.add (new Object [] {p.getId (), p.getNombre (), p.getMarca (), p.getPresentacion (), p.getCodigoBarras (), p.getUnidadMedida (), p.getCategoria (), p.getTipo ()});
+		}
+		return SQLUtil.ejecutarLote (pm, sqlAdicionarProducto, filas, tamanoLote);
+	}
 	
 	
 }
@@ -1,6 +1,9 @@
 package uniandes.isis2304.superandes.persistencia;
 
+import java.sql.SQLException;
 import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
 
 import javax.jdo.PersistenceManager;
@@ -33,6 +36,51 @@ class SQLPromocion {
 	 * El manejador de persistencia general de la aplicación
 	 */
 	PersistenciaSuperAndes pp;
+
+	/**
+	 * Sentencia SQL de adicionarPromocion
+	 */
+	private final String sqlAdicionarPromocion;
+
+	/**
+	 * Sentencia SQL de eliminarPromocionPorId
+	 */
+	private final String sqlEliminarPromocionPorId;
+
+	/**
+	 * Sentencia SQL de eliminarPromocion
+	 */
+	private final String sqlEliminarPromocion;
+
+	/**
+	 * Sentencia SQL de darPromocionesPorSucursal
+	 */
+	private final String sqlDarPromocionesPorSucursal;
+
+	/**
+	 * Sentencia SQL de darPromocionesPorProducto
+	 */
+	private final String sqlDarPromocionesPorProducto;
+
+	/**
+	 * Sentencia SQL de darPromocionesPorSucursalyProducto
+	 */
+	private final String sqlDarPromocionesPorSucursalyProducto;
+
+	/**
+	 * Sentencia SQL de darPromocionesProducto
+	 */
+	private final String sqlDarPromocionesProducto;
+
+	/**
+	 * Sentencia SQL de darProductoPromocion
+	 */
+	private final String sqlDarProductoPromocion;
+
+	/**
+	 * Sentencia SQL de darVentasPromociones
+	 */
+	private final String sqlDarVentasPromociones;
 	
 	/* ****************************************************************
 	 * 			Métodos
@@ -43,6 +91,16 @@ class SQLPromocion {
 	 */
 	public SQLPromocion(PersistenciaSuperAndes pp) {
 		this.pp = pp;
+		sqlAdicionarPromocion = "INSERT INTO " + pp.darTablaPromocion() + "(id, idproducto, precio, descripcion, fechainicio, fechafin, unidadesdisponibles) values (?, ?, ?, ?, ?, ?, ?)";
+		sqlEliminarPromocionPorId = "DELETE FROM " + pp.darTablaPromocion() + " WHERE id = ?";
+		sqlEliminarPromocion = "DELETE FROM " + pp.darTablaPromocion();
+		sqlDarPromocionesPorSucursal = "SELECT * FROM " + pp.darTablaPromocion() + " WHERE idsucursal = ?";
+		sqlDarPromocionesPorProducto = "SELECT * FROM " + pp.darTablaPromocion() + " WHERE idproducto = ?";
+		sqlDarPromocionesPorSucursalyProducto = "SELECT * FROM " + pp.darTablaPromocion() + " WHERE idsucursal = ? AND idproducto = ?";
+		sqlDarPromocionesProducto = "SELECT id, precio, descripcion, fechainicio, fechafin, unidadesdisponibles FROM " + pp.darTablaPromocion () + " WHERE idproducto = ?";
+		sqlDarProductoPromocion = "SELECT idproducto FROM " + pp.darTablaPromocion () + " WHERE id = ?";
+		sqlDarVentasPromociones = "SELECT p.id, p.fechainicio, p.fechafin, COALESCE(SUM(t.cantidad), 0) FROM " + pp.darTablaPromocion () + " p"
+				+ " LEFT OUTER JOIN " + pp.darTablaTransaccion () + " t ON t.promocion = p.id GROUP BY p.id, p.fechainicio, p.fechafin";
 	}
 	
 	/**
@@ -59,8 +117,8 @@ class SQLPromocion {
 	 */
 	public long adicionarPromocion(PersistenceManager pm, long id, double precio, String descripcion, Timestamp fechaInicio, Timestamp fechaFin, int unidadesDisponibles, long producto) 
 	{
-        Query q = pm.newQuery(SQL, "INSERT INTO " + pp.darTablaFactura() + "(id, idproducto, precio, descripcion, fechainicio, fechafin, unidadesdisponibles) values (?, ?, ?, ?, ?, ?, ?)");
-        q.setParameters(id, precio, descripcion, fechaInicio, fechaFin, unidadesDisponibles, producto);
+        Query q = pm.newQuery(SQL, sqlAdicionarPromocion);
+        q.setParameters(id, producto, precio, descripcion, fechaInicio, fechaFin, unidadesDisponibles);
         return (long) q.executeUnique();            
 	}
 	
@@ -72,7 +130,7 @@ class SQLPromocion {
 	 */
 	public long eliminarPromocionPorId(PersistenceManager pm, long id)
 	{
-        Query q = pm.newQuery(SQL, "DELETE FROM " + pp.darTablaPromocion() + " WHERE id = ?");
+        Query q = pm.newQuery(SQL, sqlEliminarPromocionPorId);
         q.setParameters(id);
         return (long) q.executeUnique();
 	}
@@ -84,7 +142,7 @@ class SQLPromocion {
 	 */
 	public long eliminarPromocion(PersistenceManager pm) 
 	{
-        Query q = pm.newQuery(SQL, "DELETE FROM " + pp.darTablaPromocion());
+        Query q = pm.newQuery(SQL, sqlEliminarPromocion);
         return (long) q.executeUnique();
 	}
 	
@@ -97,7 +155,7 @@ class SQLPromocion {
 	 */
 	public List<Promocion> darPromocionesPorSucursal(PersistenceManager pm, long idSucursal) 
 	{
-		Query q = pm.newQuery(SQL, "SELECT * FROM " + pp.darTablaPromocion() + " WHERE idsucursal = ?");
+		Query q = pm.newQuery(SQL, sqlDarPromocionesPorSucursal);
 		q.setResultClass(Promocion.class);
 		q.setParameters(idSucursal);
 		return (List<Promocion>) q.executeList();
@@ -112,7 +170,7 @@ class SQLPromocion {
 	 */
 	public List<Promocion> darPromocionesPorProducto(PersistenceManager pm, long idProducto) 
 	{
-		Query q = pm.newQuery(SQL, "SELECT * FROM " + pp.darTablaPromocion() + " WHERE idproducto = ?");
+		Query q = pm.newQuery(SQL, sqlDarPromocionesPorProducto);
 		q.setResultClass(Promocion.class);
 		q.setParameters(idProducto);
 		return (List<Promocion>) q.executeList();
@@ -128,9 +186,78 @@ class SQLPromocion {
 	 */
 	public List<Promocion> darPromocionesPorSucursalyProducto(PersistenceManager pm, long idSucursal, long idProducto) 
 	{
-		Query q = pm.newQuery(SQL, "SELECT * FROM " + pp.darTablaPromocion() + " WHERE idsucursal = ? AND idproducto = ?");
+		Query q = pm.newQuery(SQL, sqlDarPromocionesPorSucursalyProducto);
 		q.setResultClass(Promocion.class);
 		q.setParameters(idSucursal, idProducto);
 		return (List<Promocion>) q.executeList();
 	}
+
+	/**
+	 * Crea y ejecuta, en lotes de JDBC, la sentencia SQL para adicionar varias PROMOCIONES a la base de datos de SuperAndes.
+	 * Todas las inserciones hacen parte de la transacción activa del manejador de persistencia
+	 * @param pm - El manejador de persistencia
+	 * @param promociones - Las promociones a insertar, con su identificador ya asignado
+	 * @param tamanoLote - El número máximo de inserciones por lote enviado a la base de datos
+	 * @return El número de tuplas insertadas por cada elemento, en el mismo orden de la lista
+	 * @throws SQLException - Si falla alguna de las inserciones
+	 */
+	public long [] adicionarPromocion (PersistenceManager pm, List<Promocion> promociones, int tamanoLote) throws SQLException
+	{
+		List<Object []> filas = new ArrayList<Object []> (promociones.size ());
+		for (Promocion p : promociones)
+		{
+			filas.add (new Object [] {p.getId (), p.getProducto (), p.getPrecio (), p.getDescripcion (), p.getFechaInicio (), p.getFechaFin (), p.getUnidadesDisponibles ()});
+		}
+		return SQLUtil.ejecutarLote (pm, sqlAdicionarPromocion, filas, tamanoLote);
+	}
+
+	/**
+	 * Crea y ejecuta la sentencia SQL para encontrar todas las PROMOCIONES de un producto.
+	 * A diferencia de darPromocionesPorProducto, construye cada promoción a partir de sus columnas, con su producto y sus fechas
+	 * @param pm - El manejador de persistencia
+	 * @param idProducto - El identificador del producto
+	 * @return Las promociones del producto
+	 */
+	public List<Promocion> darPromocionesProducto (PersistenceManager pm, long idProducto)
+	{
+		Query q = pm.newQuery(SQL, sqlDarPromocionesProducto);
+		q.setParameters(idProducto);
+		List<Promocion> resp = new ArrayList<Promocion> ();
+		for (Object [] fila : (List<Object []>) q.executeList())
+		{
+			resp.add (new Promocion (((Number) fila [0]).longValue (), ((Number) fila [1]).doubleValue (), (String) fila [2],
+					new Timestamp (((Date) fila [3]).getTime ()), new Timestamp (((Date) fila [4]).getTime ()), ((Number) fila [5]).intValue (), idProducto));
+		}
+		return resp;
+	}
+
+	/**
+	 * Crea y ejecuta la sentencia SQL para encontrar el producto de una PROMOCION
+	 * @param pm - El manejador de persistencia
+	 * @param id - El identificador de la promocion
+	 * @return El identificador del producto. null si la promoción no existe
+	 */
+	public Long darProductoPromocion (PersistenceManager pm, long id)
+	{
+		Query q = pm.newQuery(SQL, sqlDarProductoPromocion);
+		q.setParameters(id);
+		Object resp = q.executeUnique();
+		return resp == null ? null : ((Number) resp).longValue ();
+	}
+
+	/**
+	 * Crea y ejecuta la sentencia SQL para encontrar todas las PROMOCIONES con las unidades vendidas con cada una
+	 * @param pm - El manejador de persistencia
+	 * @return Una lista de arreglos {idPromocion, fecha de inicio, fecha de fin, unidades vendidas}, con las fechas en milisegundos
+	 */
+	public List<long []> darVentasPromociones (PersistenceManager pm)
+	{
+		Query q = pm.newQuery(SQL, sqlDarVentasPromociones);
+		List<long []> resp = new ArrayList<long []> ();
+		for (Object [] fila : (List<Object []>) q.executeList())
+		{
+			resp.add (new long [] {((Number) fila [0]).longValue (), ((Date) fila [1]).getTime (), ((Date) fila [2]).getTime (), ((Number) fila [3]).longValue ()});
+		}
+		return resp;
+	}
 }
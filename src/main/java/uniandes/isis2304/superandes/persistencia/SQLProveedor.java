@@ -1,5 +1,7 @@
 package uniandes.isis2304.superandes.persistencia;
 
+import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.List;
 
 import javax.jdo.PersistenceManager;
@@ -33,6 +35,31 @@ class SQLProveedor
 	 */
 	private PersistenciaSuperAndes pp;
 
+	/**
+	 * Sentencia SQL de adicionarProveedor
+	 */
+	private final String sqlAdicionarProveedor;
+
+	/**
+	 * Sentencia SQL de eliminarProveedorPorNombre
+	 */
+	private final String sqlEliminarProveedorPorNombre;
+
+	/**
+	 * Sentencia SQL de eliminarProveedorPorId
+	 */
+	private final String sqlEliminarProveedorPorId;
+
+	/**
+	 * Sentencia SQL de darProveedorPorNombre
+	 */
+	private final String sqlDarProveedorPorNombre;
+
+	/**
+	 * Sentencia SQL de darProveedores
+	 */
+	private final String sqlDarProveedores;
+
 	/* ****************************************************************
 	 * 			Mtodos
 	 *****************************************************************/
@@ -43,6 +70,11 @@ class SQLProveedor
 	public SQLProveedor (PersistenciaSuperAndes pp)
 	{
 		this.pp = pp;
+		sqlAdicionarProveedor = "INSERT INTO " + pp.darTablaProveedor () + "(nit, nombre, calificacion) values (?, ?, ?)";
+		sqlEliminarProveedorPorNombre = "DELETE FROM " + pp.darTablaProveedor () + " WHERE nombre = ?";
+		sqlEliminarProveedorPorId = "DELETE FROM " + pp.darTablaProveedor () + " WHERE nit = ?";
+		sqlDarProveedorPorNombre = "SELECT * FROM " + pp.darTablaProveedor () + " WHERE nombre = ?";
+		sqlDarProveedores = "SELECT * FROM " + pp.darTablaProveedor ();
 	}
 	
 	/**
@@ -55,7 +87,7 @@ class SQLProveedor
 	 */
 	public long adicionarProveedor (PersistenceManager pm, long id, String nombre, int calificacion) 
 	{
-        Query q = pm.newQuery(SQL, "INSERT INTO " + pp.darTablaProveedor () + "(nit, nombre, calificacion) values (?, ?, ?)");
+        Query q = pm.newQuery(SQL, sqlAdicionarProveedor);
         q.setParameters(id, nombre, calificacion);
         return (long) q.executeUnique();            
 	}
@@ -68,7 +100,7 @@ class SQLProveedor
 	 */
 	public long eliminarProveedorPorNombre (PersistenceManager pm, String nombreProveedor)
 	{
-        Query q = pm.newQuery(SQL, "DELETE FROM " + pp.darTablaProveedor () + " WHERE nombre = ?");
+        Query q = pm.newQuery(SQL, sqlEliminarProveedorPorNombre);
         q.setParameters(nombreProveedor);
         return (long) q.executeUnique();            
 	}
@@ -81,7 +113,7 @@ class SQLProveedor
 	 */
 	public long eliminarProveedorPorId (PersistenceManager pm, long idProveedor)
 	{
-        Query q = pm.newQuery(SQL, "DELETE FROM " + pp.darTablaProveedor () + " WHERE nit = ?");
+        Query q = pm.newQuery(SQL, sqlEliminarProveedorPorId);
         q.setParameters(idProveedor);
         return (long) q.executeUnique();            
 	}
@@ -95,7 +127,7 @@ class SQLProveedor
 	 */
 	public List<Proveedor> darProveedorPorNombre (PersistenceManager pm, String nombreProveedor) 
 	{
-		Query q = pm.newQuery(SQL, "SELECT * FROM " + pp.darTablaProveedor () + " WHERE nombre = ?");
+		Query q = pm.newQuery(SQL, sqlDarProveedorPorNombre);
 		q.setResultClass(Proveedor.class);
 		q.setParameters(nombreProveedor);
 		return (List<Proveedor>) q.executeList();
@@ -109,10 +141,29 @@ class SQLProveedor
 	 */
 	public List<Proveedor> darProveedores (PersistenceManager pm)
 	{
-		Query q = pm.newQuery(SQL, "SELECT * FROM " + pp.darTablaProveedor ());
+		Query q = pm.newQuery(SQL, sqlDarProveedores);
 		q.setResultClass(Proveedor.class);
 		return (List<Proveedor>) q.executeList();
 	}
+
+	/**
+	 * Crea y ejecuta, en lotes de JDBC, la sentencia SQL para adicionar varios PROVEEDORES a la base de datos de SuperAndes.
+	 * Todas las inserciones hacen parte de la transaccin activa del manejador de persistencia
+	 * @param pm - El manejador de persistencia
+	 * @param proveedores - Los proveedores a insertar, con su nit ya asignado
+	 * @param tamanoLote - El nmero mximo de inserciones por lote enviado a la base de datos
+	 * @return El nmero de tuplas insertadas por cada elemento, en el mismo orden de la lista
+	 * @throws SQLException - Si falla alguna de las inserciones
+	 */
+	public long [] adicionarProveedor (PersistenceManager pm, List<Proveedor> proveedores, int tamanoLote) throws SQLException
+	{
+		List<Object []> filas = new ArrayList<Object []> (proveedores.size ());
+		for (Proveedor p : proveedores)
+		{
+			filas.add (new Object [] {p.getNit (), p.getNombre (), p.getCalificacion ()});
+		}
+		return SQLUtil.ejecutarLote (pm, sqlAdicionarProveedor, filas, tamanoLote);
+	}
 	
 	
 }
@@ -1,7 +1,13 @@
 package uniandes.isis2304.superandes.persistencia;
 
 
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.jdo.PersistenceManager;
 import javax.jdo.Query;
@@ -26,6 +32,12 @@ class SQLSubpedido {
 	 */
 	private final static String SQL = PersistenciaSuperAndes.SQL;
 
+	/**
+	 * Número de pedidos por consulta de darCantidadesPedidas. Las consultas con menos pedidos repiten el último identificador,
+	 * de manera que siempre se usa la misma sentencia preparada
+	 */
+	private final static int PEDIDOS_POR_CONSULTA = 100;
+
 	/* ****************************************************************
 	 * 			Atributos
 	 *****************************************************************/
@@ -33,6 +45,36 @@ class SQLSubpedido {
 	 * El manejador de persistencia general de la aplicación
 	 */
 	PersistenciaSuperAndes pp;
+
+	/**
+	 * Sentencia SQL de adicionarSubPedido
+	 */
+	private final String sqlAdicionarSubPedido;
+
+	/**
+	 * Sentencia SQL de eliminarSubPedidoPorId
+	 */
+	private final String sqlEliminarSubPedidoPorId;
+
+	/**
+	 * Sentencia SQL de darSubPedidoPorId
+	 */
+	private final String sqlDarSubPedidoPorId;
+
+	/**
+	 * Sentencia SQL de darSubPedidosPorProducto
+	 */
+	private final String sqlDarSubPedidosPorProducto;
+
+	/**
+	 * Sentencia SQL de darSubPedidos
+	 */
+	private final String sqlDarSubPedidos;
+
+	/**
+	 * Sentencia SQL de darCantidadesPedidas
+	 */
+	private final String sqlDarCantidadesPedidas;
 	
 	/* ****************************************************************
 	 * 			Métodos
@@ -43,6 +85,14 @@ class SQLSubpedido {
 	 */
 	public SQLSubpedido(PersistenciaSuperAndes pp) {
 		this.pp = pp;
+		sqlAdicionarSubPedido = "INSERT INTO " + pp.darTablaSubpedido() + "(idpedido, idproducto, cantidad, costo) values (?, ?, ?, ?)";
+		sqlEliminarSubPedidoPorId = "DELETE FROM " + pp.darTablaPedido() + " WHERE idpedido = ?";
+		sqlDarSubPedidoPorId = "SELECT * FROM " + pp.darTablaSubpedido() + " WHERE idpedido = ?";
+		sqlDarSubPedidosPorProducto = "SELECT * FROM " + pp.darTablaSubpedido() + " WHERE idproducto = ?";
+		sqlDarSubPedidos = "SELECT * FROM " + pp.darTablaSubpedido();
+		sqlDarCantidadesPedidas = "SELECT p.idsucursal, s.idproducto, SUM(s.cantidad) FROM " + pp.darTablaPedido () + " p, " + pp.darTablaSubpedido ()
+				+ " s WHERE s.idpedido = p.id AND p.id IN (" + String.join (", ", Collections.nCopies (PEDIDOS_POR_CONSULTA, "?")) + ")"
+				+ " GROUP BY p.idsucursal, s.idproducto";
 	}
 	
 	/**
@@ -56,7 +106,7 @@ class SQLSubpedido {
 	 */
 	public long adicionarSubPedido (PersistenceManager pm, long id, long producto, int cantidad, double costo) 
 	{
-        Query q = pm.newQuery(SQL, "INSERT INTO " + pp.darTablaSubpedido() + "(idpedido, idproducto, cantidad, costo) values (?, ?, ?, ?)");
+        Query q = pm.newQuery(SQL, sqlAdicionarSubPedido);
         q.setParameters(id, producto, cantidad, costo);
         return (long) q.executeUnique();            
 	}
@@ -69,7 +119,7 @@ class SQLSubpedido {
 	 */
 	public long eliminarSubPedidoPorId(PersistenceManager pm, long idPedido)
 	{
-        Query q = pm.newQuery(SQL, "DELETE FROM " + pp.darTablaPedido() + " WHERE idpedido = ?");
+        Query q = pm.newQuery(SQL, sqlEliminarSubPedidoPorId);
         q.setParameters(idPedido);
         return (long) q.executeUnique();
 	}
@@ -83,7 +133,7 @@ class SQLSubpedido {
 	 */
 	public Subpedido darSubPedidoPorId (PersistenceManager pm, long idPedido) 
 	{
-		Query q = pm.newQuery(SQL, "SELECT * FROM " + pp.darTablaSubpedido() + " WHERE idpedido = ?");
+		Query q = pm.newQuery(SQL, sqlDarSubPedidoPorId);
 		q.setResultClass(Subpedido.class);
 		q.setParameters(idPedido);
 		return (Subpedido) q.executeUnique();
@@ -98,7 +148,7 @@ class SQLSubpedido {
 	 */
 	public List<Subpedido> darSubPedidosPorProducto(PersistenceManager pm, long producto) 
 	{
-		Query q = pm.newQuery(SQL, "SELECT * FROM " + pp.darTablaSubpedido() + " WHERE idproducto = ?");
+		Query q = pm.newQuery(SQL, sqlDarSubPedidosPorProducto);
 		q.setResultClass(Subpedido.class);
 		q.setParameters(producto);
 		return (List<Subpedido>) q.executeList();
@@ -112,8 +162,57 @@ class SQLSubpedido {
 	 */
 	public List<Subpedido> darSubPedidos(PersistenceManager pm)
 	{
-		Query q = pm.newQuery(SQL, "SELECT * FROM " + pp.darTablaSubpedido());
+		Query q = pm.newQuery(SQL, sqlDarSubPedidos);
 		q.setResultClass(Subpedido.class);
 		return (List<Subpedido>) q.executeList();
 	}
+
+	/**
+	 * Crea y ejecuta, en lotes de JDBC, la sentencia SQL para adicionar varios SUBPEDIDOS a la base de datos de SuperAndes.
+	 * Todas las inserciones hacen parte de la transacción activa del manejador de persistencia
+	 * @param pm - El manejador de persistencia
+	 * @param subpedidos - Los subpedidos a insertar
+	 * @param tamanoLote - El número máximo de inserciones por lote enviado a la base de datos
+	 * @return El número de tuplas insertadas por cada elemento, en el mismo orden de la lista
+	 * @throws SQLException - Si falla alguna de las inserciones
+	 */
+	public long [] adicionarSubPedido (PersistenceManager pm, List<Subpedido> subpedidos, int tamanoLote) throws SQLException
+	{
+		List<Object []> filas = new ArrayList<Object []> (subpedidos.size ());
+		for (Subpedido s : subpedidos)
+		{
+			filas.add (new Object [] {s.getPedido (), s.getProducto (), s.getCantidad (), s.getCosto ()});
+		}
+		return SQLUtil.ejecutarLote (pm, sqlAdicionarSubPedido, filas, tamanoLote);
+	}
+
+	/**
+	 * Crea y ejecuta la sentencia SQL para encontrar las unidades pedidas de cada producto para cada sucursal en varios pedidos.
+	 * Lee los subpedidos de PEDIDOS_POR_CONSULTA pedidos por consulta
+	 * @param pm - El manejador de persistencia
+	 * @param idsPedidos - Los identificadores de los pedidos
+	 * @return Las unidades pedidas, sumadas por sucursal y producto, como {sucursal, producto, cantidad}
+	 */
+	public List<long []> darCantidadesPedidas (PersistenceManager pm, List<Long> idsPedidos)
+	{
+		Map<List<Long>, long []> cantidades = new LinkedHashMap<List<Long>, long []> ();
+		for (int inicio = 0; inicio < idsPedidos.size (); inicio += PEDIDOS_POR_CONSULTA)
+		{
+			Object [] parametros = new Object [PEDIDOS_POR_CONSULTA];
+			for (int i = 0; i < PEDIDOS_POR_CONSULTA; i++)
+			{
+				parametros [i] = idsPedidos.get (Math.min (inicio + i, idsPedidos.size () - 1));
+			}
+			Query q = pm.newQuery(SQL, sqlDarCantidadesPedidas);
+			q.setParameters(parametros);
+			for (Object [] fila : (List<Object []>) q.executeList())
+			{
+				long sucursal = ((Number) fila [0]).longValue ();
+				long producto = ((Number) fila [1]).longValue ();
+				long [] cantidad = cantidades.computeIfAbsent (Arrays.asList (sucursal, producto), k -> new long [] {sucursal, producto, 0});
+				cantidad [2] += ((Number) fila [2]).longValue ();
+			}
+		}
+		return new ArrayList<long []> (cantidades.values ());
+	}
 }
@@ -1,5 +1,7 @@
 package uniandes.isis2304.superandes.persistencia;
 
+import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.List;
 
 import javax.jdo.PersistenceManager;
@@ -33,6 +35,41 @@ import uniandes.isis2304.superandes.persistencia.PersistenciaSuperAndes;
 		 */
 		private PersistenciaSuperAndes pp;
 
+		/**
+		 * Sentencia SQL de adicionarSucursal
+		 */
+		private final String sqlAdicionarSucursal;
+
+		/**
+		 * Sentencia SQL de eliminarSucursalesPorNombre
+		 */
+		private final String sqlEliminarSucursalesPorNombre;
+
+		/**
+		 * Sentencia SQL de eliminarSucursalPorId
+		 */
+		private final String sqlEliminarSucursalPorId;
+
+		/**
+		 * Sentencia SQL de darSucursalPorId
+		 */
+		private final String sqlDarSucursalPorId;
+
+		/**
+		 * Sentencia SQL de darSucursalesPorSupermercado
+		 */
+		private final String sqlDarSucursalesPorSupermercado;
+
+		/**
+		 * Sentencia SQL de darSucursales
+		 */
+		private final String sqlDarSucursales;
+
+		/**
+		 * Sentencia SQL de darCiudadesSucursales
+		 */
+		private final String sqlDarCiudadesSucursales;
+
 		/* ****************************************************************
 		 * 			Mtodos
 		 *****************************************************************/
@@ -44,6 +81,13 @@ import uniandes.isis2304.superandes.persistencia.PersistenciaSuperAndes;
 		public SQLSucursal (PersistenciaSuperAndes pp)
 		{
 			this.pp = pp;
+			sqlAdicionarSucursal = "INSERT INTO " + pp.darTablaSucursal () + "(id, nombre, ciudad, direccion, segmentomercado, tamano, supermercado) values (?, ?, ?, ?, ?, ?, ?)";
+			sqlEliminarSucursalesPorNombre = "DELETE FROM " + pp.darTablaSucursal () + " WHERE nombre = ?";
+			sqlEliminarSucursalPorId = "DELETE FROM " + pp.darTablaSucursal () + " WHERE id = ?";
+			sqlDarSucursalPorId = "SELECT * FROM " + pp.darTablaSucursal () + " WHERE id = ?";
+			sqlDarSucursalesPorSupermercado = "SELECT * FROM " + pp.darTablaSucursal () + " WHERE supermercado = ?";
+			sqlDarSucursales = "SELECT * FROM " + pp.darTablaSucursal ();
+			sqlDarCiudadesSucursales = "SELECT id, ciudad FROM " + pp.darTablaSucursal ();
 		}
 		
 		/**
@@ -60,7 +104,7 @@ import uniandes.isis2304.superandes.persistencia.PersistenciaSuperAndes;
 		 */
 		public long adicionarSucursal (PersistenceManager pm, long idSucursal, String nombre, String ciudad, String direccion, String segmentomercado, double tamano, String supermercado) 
 		{
-	        Query q = pm.newQuery(SQL, "INSERT INTO " + pp.darTablaSucursal () + "(id, nombre, ciudad, direccion, segmentomercado, tamano, supermercado) values (?, ?, ?, ?, ?, ?, ?)");
+	        Query q = pm.newQuery(SQL, sqlAdicionarSucursal);
 	        q.setParameters(idSucursal, nombre, ciudad, direccion, segmentomercado, tamano, supermercado);
 	        return (long) q.executeUnique();
 		}
@@ -73,7 +117,7 @@ import uniandes.isis2304.superandes.persistencia.PersistenciaSuperAndes;
 		 */
 		public long eliminarSucursalesPorNombre (PersistenceManager pm, String nombreSucursal)
 		{
-	        Query q = pm.newQuery(SQL, "DELETE FROM " + pp.darTablaSucursal () + " WHERE nombre = ?");
+	        Query q = pm.newQuery(SQL, sqlEliminarSucursalesPorNombre);
 	        q.setParameters(nombreSucursal);
 	        return (long) q.executeUnique();
 		}
@@ -86,7 +130,7 @@ import uniandes.isis2304.superandes.persistencia.PersistenciaSuperAndes;
 		 */
 		public long eliminarSucursalPorId (PersistenceManager pm, long idSucursal)
 		{
-	        Query q = pm.newQuery(SQL, "DELETE FROM " + pp.darTablaSucursal () + " WHERE id = ?");
+	        Query q = pm.newQuery(SQL, sqlEliminarSucursalPorId);
 	        q.setParameters(idSucursal);
 	        return (long) q.executeUnique();
 		}
@@ -100,7 +144,7 @@ import uniandes.isis2304.superandes.persistencia.PersistenciaSuperAndes;
 		 */
 		public Sucursal darSucursalPorId (PersistenceManager pm, long idSucursal) 
 		{
-			Query q = pm.newQuery(SQL, "SELECT * FROM " + pp.darTablaSucursal () + " WHERE id = ?");
+			Query q = pm.newQuery(SQL, sqlDarSucursalPorId);
 			q.setResultClass(Sucursal.class);
 			q.setParameters(idSucursal);
 			return (Sucursal) q.executeUnique();
@@ -115,7 +159,7 @@ import uniandes.isis2304.superandes.persistencia.PersistenciaSuperAndes;
 		 */
 		public List<Sucursal> darSucursalesPorSupermercado (PersistenceManager pm, String nombreSupermercado) 
 		{
-			Query q = pm.newQuery(SQL, "SELECT * FROM " + pp.darTablaSucursal () + " WHERE supermercado = ?");
+			Query q = pm.newQuery(SQL, sqlDarSucursalesPorSupermercado);
 			q.setResultClass(Sucursal.class);
 			q.setParameters(nombreSupermercado);
 			return (List<Sucursal>) q.executeList();
@@ -129,11 +173,46 @@ import uniandes.isis2304.superandes.persistencia.PersistenciaSuperAndes;
 		 */
 		public List<Sucursal> darSucursales (PersistenceManager pm)
 		{
-			Query q = pm.newQuery(SQL, "SELECT * FROM " + pp.darTablaSucursal ());
+			Query q = pm.newQuery(SQL, sqlDarSucursales);
 			q.setResultClass(Sucursal.class);
 			return (List<Sucursal>) q.executeList();
 		}
 
+		/**
+		 * Crea y ejecuta, en lotes de JDBC, la sentencia SQL para adicionar varias SUCURSALES a la base de datos de SuperAndes.
+		 * Todas las inserciones hacen parte de la transaccin activa del manejador de persistencia
+		 * @param pm - El manejador de persistencia
+		 * @param sucursales - Las sucursales a insertar, con su identificador ya asignado
+		 * @param tamanoLote - El nmero mximo de inserciones por lote enviado a la base de datos
+		 * @return El nmero de tuplas insertadas por cada elemento, en el mismo orden de la lista
+		 * @throws SQLException - Si falla alguna de las inserciones
+		 */
+		public long [] adicionarSucursal (PersistenceManager pm, List<Sucursal> sucursales, int tamanoLote) throws SQLException
+		{
+			List<Object []> filas = new ArrayList<Object []> (sucursales.size ());
+			for (Sucursal s : sucursales)
+			{
+				filas.add (new Object [] {s.getId (), s.getNombre (), s.getCiudad (), s.getDireccion (), s.getSegmentoMercado (), s.getTamano (), s.getSupermercado ()});
+			}
+			return SQLUtil.ejecutarLote (pm, sqlAdicionarSucursal, filas, tamanoLote);
+		}
+
+		/**
+		 * Crea y ejecuta la sentencia SQL para encontrar la ciudad de cada SUCURSAL de la base de datos de SuperAndes
+		 * @param pm - El manejador de persistencia
+		 * @return Una lista de parejas {identificador de la sucursal (Long), ciudad (String)}
+		 */
+		public List<Object []> darCiudadesSucursales (PersistenceManager pm)
+		{
+			Query q = pm.newQuery(SQL, sqlDarCiudadesSucursales);
+			List<Object []> resp = new ArrayList<Object []> ();
+			for (Object [] fila : (List<Object []>) q.executeList())
+			{
+				resp.add (new Object [] {((Number) fila [0]).longValue (), (String) fila [1]});
+			}
+			return resp;
+		}
+
 			
 
 }
\ No newline at end of file
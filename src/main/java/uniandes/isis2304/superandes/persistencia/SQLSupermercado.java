@@ -1,5 +1,7 @@
 package uniandes.isis2304.superandes.persistencia;
 
+import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.List;
 
 import javax.jdo.PersistenceManager;
@@ -33,6 +35,26 @@ class SQLSupermercado{
 	 * El manejador de persistencia general de la aplicación
 	 */
 	PersistenciaSuperAndes pp;
+
+	/**
+	 * Sentencia SQL de adicionarSupermercado
+	 */
+	private final String sqlAdicionarSupermercado;
+
+	/**
+	 * Sentencia SQL de eliminarSupermercadoPorNombre
+	 */
+	private final String sqlEliminarSupermercadoPorNombre;
+
+	/**
+	 * Sentencia SQL de darSupermercadoPorNombre
+	 */
+	private final String sqlDarSupermercadoPorNombre;
+
+	/**
+	 * Sentencia SQL de darSupermercados
+	 */
+	private final String sqlDarSupermercados;
 	
 	/* ****************************************************************
 	 * 			Métodos
@@ -43,6 +65,10 @@ class SQLSupermercado{
 	 */
 	public SQLSupermercado(PersistenciaSuperAndes pp) {
 		this.pp = pp;
+		sqlAdicionarSupermercado = "INSERT INTO " + pp.darTablaSupermercado() + "(nombre) values (?)";
+		sqlEliminarSupermercadoPorNombre = "DELETE FROM " + pp.darTablaSupermercado() + " WHERE nombre = ?";
+		sqlDarSupermercadoPorNombre = "SELECT * FROM " + pp.darTablaSupermercado() + " WHERE nombre = ?";
+		sqlDarSupermercados = "SELECT * FROM " + pp.darTablaSupermercado();
 	}
 	
 	/**
@@ -53,7 +79,7 @@ class SQLSupermercado{
 	 */
 	public long adicionarSupermercado(PersistenceManager pm, String nombre) 
 	{
-        Query q = pm.newQuery(SQL, "INSERT INTO " + pp.darTablaSupermercado() + "(nombre) values (?)");
+        Query q = pm.newQuery(SQL, sqlAdicionarSupermercado);
         q.setParameters(nombre);
         return (long) q.executeUnique();            
 	}
@@ -66,7 +92,7 @@ class SQLSupermercado{
 	 */
 	public long eliminarSupermercadoPorNombre(PersistenceManager pm, String nombre)
 	{
-        Query q = pm.newQuery(SQL, "DELETE FROM " + pp.darTablaSupermercado() + " WHERE nombre = ?");
+        Query q = pm.newQuery(SQL, sqlEliminarSupermercadoPorNombre);
         q.setParameters(nombre);
         return (long) q.executeUnique();
 	}
@@ -80,7 +106,7 @@ class SQLSupermercado{
 	 */
 	public Supermercado darSupermercadoPorNombre(PersistenceManager pm, String nombre) 
 	{
-		Query q = pm.newQuery(SQL, "SELECT * FROM " + pp.darTablaSupermercado() + " WHERE nombre = ?");
+		Query q = pm.newQuery(SQL, sqlDarSupermercadoPorNombre);
 		q.setResultClass(Supermercado.class);
 		q.setParameters(nombre);
 		return (Supermercado) q.executeUnique();
@@ -94,8 +120,27 @@ class SQLSupermercado{
 	 */
 	public List<Supermercado> darSupermercados(PersistenceManager pm)
 	{
-		Query q = pm.newQuery(SQL, "SELECT * FROM " + pp.darTablaSupermercado());
+		Query q = pm.newQuery(SQL, sqlDarSupermercados);
 		q.setResultClass(Supermercado.class);
 		return (List<Supermercado>) q.executeList();
 	}
+
+	/**
+	 * Crea y ejecuta, en lotes de JDBC, la sentencia SQL para adicionar varios SUPERMERCADOS a la base de datos de SuperAndes.
+	 * Todas las inserciones hacen parte de la transacción activa del manejador de persistencia
+	 * @param pm - El manejador de persistencia
+	 * @param supermercados - Los supermercados a insertar
+	 * @param tamanoLote - El número máximo de inserciones por lote enviado a la base de datos
+	 * @return El número de tuplas insertadas por cada elemento, en el mismo orden de la lista
+	 * @throws SQLException - Si falla alguna de las inserciones
+	 */
+	public long [] adicionarSupermercado (PersistenceManager pm, List<Supermercado> supermercados, int tamanoLote) throws SQLException
+	{
+		List<Object []> filas = new ArrayList<Object []> (supermercados.size ());
+		for (Supermercado s : supermercados)
+		{
+			filas.add (new Object [] {s.getNombre ()});
+		}
+		return SQLUtil.ejecutarLote (pm, sqlAdicionarSupermercado, filas, tamanoLote);
+	}
 }
@@ -1,5 +1,8 @@
 package uniandes.isis2304.superandes.persistencia;
 
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.List;
 
 import javax.jdo.PersistenceManager;
@@ -32,6 +35,41 @@ class SQLTransaccion
 	 */
 	private PersistenciaSuperAndes pp;
 
+	/**
+	 * Sentencia SQL de adicionarTransaccion
+	 */
+	private final String sqlAdicionarTransaccion;
+
+	/**
+	 * Sentencia SQL de eliminarTransaccionPorNumeroFactura
+	 */
+	private final String sqlEliminarTransaccionPorNumeroFactura;
+
+	/**
+	 * Sentencia SQL de darTransaccionesPorNumeroFactura
+	 */
+	private final String sqlDarTransaccionesPorNumeroFactura;
+
+	/**
+	 * Sentencia SQL de darTransacciones
+	 */
+	private final String sqlDarTransacciones;
+
+	/**
+	 * Sentencia SQL de darTransaccionesPagina
+	 */
+	private final String sqlDarTransaccionesPagina;
+
+	/**
+	 * Sentencia SQL de darTransaccionesPorRangoFechas
+	 */
+	private final String sqlDarTransaccionesPorRangoFechas;
+
+	/**
+	 * Sentencia SQL de eliminarTransaccionesPorRangoFechas
+	 */
+	private final String sqlEliminarTransaccionesPorRangoFechas;
+
 	/* ****************************************************************
 	 * 			Mtodos
 	 *****************************************************************/
@@ -43,6 +81,20 @@ class SQLTransaccion
 	public SQLTransaccion (PersistenciaSuperAndes pp)
 	{
 		this.pp = pp;
+		sqlAdicionarTransaccion = "INSERT INTO " + pp.darTablaTransaccion () + "(idproducto, cantidad, numerofactura, costo, promocion) values (?, ?, ?, ?, ?)";
+		sqlEliminarTransaccionPorNumeroFactura = "DELETE FROM " + pp.darTablaTransaccion () + " WHERE numerofactura = ?";
+		sqlDarTransaccionesPorNumeroFactura = "SELECT * FROM " + pp.darTablaTransaccion () + " WHERE numerofactura= ?";
+		sqlDarTransacciones = "SELECT * FROM " + pp.darTablaTransaccion ();
+		// La llave primaria es (idproducto, cantidad, numerofactura): la cantidad desempata las lneas de un mismo producto en una factura
+		// El orden de la pgina es el del ndice A_TRANSACCION_FACTURA_IDX (numerofactura, idproducto, cantidad), no el de la llave primaria
+		sqlDarTransaccionesPagina = "SELECT * FROM (SELECT numerofactura, cantidad, costo, idproducto, promocion FROM " + pp.darTablaTransaccion ()
+				+ " WHERE numerofactura > ? OR (numerofactura = ? AND (idproducto > ? OR (idproducto = ? AND cantidad > ?)))"
+				+ " ORDER BY numerofactura, idproducto, cantidad) WHERE ROWNUM <= ?";
+		// TRANSACCION se particiona por referencia a FACTURA: el rango sobre f.fecha poda las particiones de ambas tablas
+		sqlDarTransaccionesPorRangoFechas = "SELECT t.numerofactura, t.cantidad, t.costo, t.idproducto, t.promocion FROM " + pp.darTablaTransaccion () + " t, "
+				+ pp.darTablaFactura () + " f WHERE t.numerofactura = f.numero AND f.fecha >= ? AND f.fecha < ? ORDER BY f.fecha, t.numerofactura, t.idproducto";
+		sqlEliminarTransaccionesPorRangoFechas = "DELETE FROM " + pp.darTablaTransaccion () + " WHERE numerofactura IN (SELECT numero FROM "
+				+ pp.darTablaFactura () + " WHERE fecha >= ? AND fecha < ?)";
 	}
 	
 	/**
@@ -57,7 +109,7 @@ class SQLTransaccion
 	 */
 	public long adicionarTransaccion (PersistenceManager pm, long idProducto, int cantidad, long numerofactura, double costo, long promocion) 
 	{
-        Query q = pm.newQuery(SQL, "INSERT INTO " + pp.darTablaTransaccion () + "(idproducto, cantidad, numerofactura, costo, promocion) values (?, ?, ?, ?, ?)");
+        Query q = pm.newQuery(SQL, sqlAdicionarTransaccion);
         q.setParameters(idProducto, cantidad, numerofactura, costo, promocion);
         return (long) q.executeUnique();
 	}
@@ -71,7 +123,7 @@ class SQLTransaccion
 	 */
 	public long eliminarTransaccionPorNumeroFactura (PersistenceManager pm, long numerofactura)
 	{
-        Query q = pm.newQuery(SQL, "DELETE FROM " + pp.darTablaTransaccion () + " WHERE numerofactura = ?");
+        Query q = pm.newQuery(SQL, sqlEliminarTransaccionPorNumeroFactura);
         q.setParameters(numerofactura);
         return (long) q.executeUnique();
 	}
@@ -86,7 +138,7 @@ class SQLTransaccion
 	 */
 	public List<Transaccion> darTransaccionesPorNumeroFactura (PersistenceManager pm, long numerofactura) 
 	{
-		Query q = pm.newQuery(SQL, "SELECT * FROM " + pp.darTablaTransaccion () + " WHERE numerofactura= ?");
+		Query q = pm.newQuery(SQL, sqlDarTransaccionesPorNumeroFactura);
 		q.setResultClass(Transaccion.class);
 		q.setParameters(numerofactura);
 		return (List<Transaccion>) q.executeList();
@@ -100,11 +152,94 @@ class SQLTransaccion
 	 */
 	public List<Transaccion> darTransacciones (PersistenceManager pm)
 	{
-		Query q = pm.newQuery(SQL, "SELECT * FROM " + pp.darTablaTransaccion ());
+		Query q = pm.newQuery(SQL, sqlDarTransacciones);
 		q.setResultClass(Transaccion.class);
 		return (List<Transaccion>) q.executeList();
 	}
 
+	/**
+	 * Crea y ejecuta la sentencia SQL para encontrar una pgina de LAS TRANSACCIONES de la base de datos de SuperAndes,
+	 * en orden de nmero de factura, producto y cantidad. Usa paginacin por llave, por lo que el costo no depende de la posicin de la pgina
+	 * @param pm - El manejador de persistencia
+	 * @param despuesDeFactura - El nmero de factura de la ltima transaccin de la pgina anterior. 0 para la primera pgina
+	 * @param despuesDeProducto - El producto de la ltima transaccin de la pgina anterior. 0 para la primera pgina
+	 * @param despuesDeCantidad - La cantidad de la ltima transaccin de la pgina anterior. 0 para la primera pgina
+	 * @param limite - El nmero mximo de tuplas de la pgina. Tambin es el tamao de fetch de JDBC
+	 * @return Una lista de objetos TRANSACCION, con a lo sumo limite elementos
+	 */
+	public List<Transaccion> darTransaccionesPagina (PersistenceManager pm, long despuesDeFactura, long despuesDeProducto, int despuesDeCantidad, int limite)
+	{
+		Query q = pm.newQuery(SQL, sqlDarTransaccionesPagina);
+		q.getFetchPlan().setFetchSize(limite);
+		q.setParameters(despuesDeFactura, despuesDeFactura, despuesDeProducto, despuesDeProducto, despuesDeCantidad, limite);
+		return aTransacciones ((List<Object []>) q.executeList());
+	}
+
+	/**
+	 * Crea y ejecuta, en lotes de JDBC, la sentencia SQL para adicionar varias TRANSACCIONES a la base de datos de SuperAndes.
+	 * Todas las inserciones hacen parte de la transaccin activa del manejador de persistencia
+	 * @param pm - El manejador de persistencia
+	 * @param transacciones - Las transacciones a insertar. Una promocin menor o igual a 0 se guarda como NULL
+	 * @param tamanoLote - El nmero mximo de inserciones por lote enviado a la base de datos
+	 * @return El nmero de tuplas insertadas por cada elemento, en el mismo orden de la lista
+	 * @throws SQLException - Si falla alguna de las inserciones
+	 */
+	public long [] adicionarTransaccion (PersistenceManager pm, List<Transaccion> transacciones, int tamanoLote) throws SQLException
+	{
+		List<Object []> filas = new ArrayList<Object []> (transacciones.size ());
+		for (Transaccion t : transacciones)
+		{
+			filas.add (new Object [] {t.getProducto (), t.getCantidad (), t.getNumeroFactura (), t.getCosto (), t.getPromocion () > 0 ? t.getPromocion () : null});
+		}
+		return SQLUtil.ejecutarLote (pm, sqlAdicionarTransaccion, filas, tamanoLote);
+	}
+
+	/**
+	 * Crea y ejecuta la sentencia SQL para encontrar las TRANSACCIONES de las facturas de un rango de fechas
+	 * @param pm - El manejador de persistencia
+	 * @param desde - La fecha inicial de las facturas, incluida
+	 * @param hasta - La fecha final de las facturas, excluida
+	 * @return Una lista de objetos TRANSACCION, en orden de fecha y nmero de factura
+	 */
+	public List<Transaccion> darTransaccionesPorRangoFechas (PersistenceManager pm, Timestamp desde, Timestamp hasta)
+	{
+		Query q = pm.newQuery(SQL, sqlDarTransaccionesPorRangoFechas);
+		q.setParameters(desde, hasta);
+		return aTransacciones ((List<Object []>) q.executeList());
+	}
+
+	/**
+	 * Construye las transacciones de las filas de una consulta de las columnas numerofactura, cantidad, costo, idproducto y promocion,
+	 * en ese orden
+	 * @param filas - Las filas de la consulta
+	 * @return Una lista de objetos TRANSACCION, en el orden de las filas. Una promocin NULL queda en 0
+	 */
+	private static List<Transaccion> aTransacciones (List<Object []> filas)
+	{
+		List<Transaccion> resp = new ArrayList<Transaccion> (filas.size ());
+		for (Object [] fila : filas)
+		{
+			long promocion = fila [4] == null ? 0 : ((Number) fila [4]).longValue ();
+			resp.add (new Transaccion (((Number) fila [0]).longValue (), ((Number) fila [1]).intValue (), ((Number) fila [2]).doubleValue (),
+					((Number) fila [3]).longValue (), promocion));
+		}
+		return resp;
+	}
+
+	/**
+	 * Crea y ejecuta la sentencia SQL para eliminar las TRANSACCIONES de las facturas de un rango de fechas
+	 * @param pm - El manejador de persistencia
+	 * @param desde - La fecha inicial de las facturas, incluida
+	 * @param hasta - La fecha final de las facturas, excluida
+	 * @return El nmero de tuplas eliminadas
+	 */
+	public long eliminarTransaccionesPorRangoFechas (PersistenceManager pm, Timestamp desde, Timestamp hasta)
+	{
+		Query q = pm.newQuery(SQL, sqlEliminarTransaccionesPorRangoFechas);
+		q.setParameters(desde, hasta);
+		return (long) q.executeUnique();
+	}
+
 	
 }
 
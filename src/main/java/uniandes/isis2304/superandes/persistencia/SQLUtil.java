@@ -1,7 +1,16 @@
 package uniandes.isis2304.superandes.persistencia;
 
+import java.sql.Connection;
+import java.sql.ParameterMetaData;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Date;
+import java.util.List;
+
 import javax.jdo.PersistenceManager;
 import javax.jdo.Query;
+import javax.jdo.datastore.JDOConnection;
 
 
 class SQLUtil {
@@ -15,6 +24,21 @@ class SQLUtil {
 	 */
 	private final static String SQL = PersistenciaSuperAndes.SQL;
 
+	/**
+	 * Número de sentencias que se envían por defecto en cada lote de JDBC
+	 */
+	public final static int TAMANO_LOTE_DEFECTO = 500;
+
+	/**
+	 * Número de tuplas que se piden por defecto en cada página al recorrer una tabla completa
+	 */
+	public final static int TAMANO_FETCH_DEFECTO = 500;
+
+	/**
+	 * Tipo SQL de un parámetro nulo cuyo tipo no reporta el manejador de la base de datos ni se puede deducir de las demás filas
+	 */
+	private final static int TIPO_NULO_DEFECTO = Types.VARCHAR;
+
 	/* ****************************************************************
 	 * 			Atributos
 	 *****************************************************************/
@@ -22,6 +46,86 @@ class SQLUtil {
 	 * El manejador de persistencia general de la aplicación
 	 */
 	PersistenciaSuperAndes pp;
+
+	/**
+	 * Sentencia SQL de nextval
+	 */
+	private final String sqlNextval;
+
+	/**
+	 * Sentencia SQL de limpiarSuperAndes que borra todas las tuplas de TRANSACCION
+	 */
+	private final String sqlLimpiarTransaccion;
+
+	/**
+	 * Sentencia SQL de limpiarSuperAndes que borra todas las tuplas de PROMOCION
+	 */
+	private final String sqlLimpiarPromocion;
+
+	/**
+	 * Sentencia SQL de limpiarSuperAndes que borra todas las tuplas de FACTURA
+	 */
+	private final String sqlLimpiarFactura;
+
+	/**
+	 * Sentencia SQL de limpiarSuperAndes que borra todas las tuplas de CLIENTE
+	 */
+	private final String sqlLimpiarCliente;
+
+	/**
+	 * Sentencia SQL de limpiarSuperAndes que borra todas las tuplas de OFRECEN
+	 */
+	private final String sqlLimpiarOfrecen;
+
+	/**
+	 * Sentencia SQL de limpiarSuperAndes que borra todas las tuplas de SUBPEDIDO
+	 */
+	private final String sqlLimpiarSubpedido;
+
+	/**
+	 * Sentencia SQL de limpiarSuperAndes que borra todas las tuplas de PEDIDO
+	 */
+	private final String sqlLimpiarPedido;
+
+	/**
+	 * Sentencia SQL de limpiarSuperAndes que borra todas las tuplas de PROVEEDOR
+	 */
+	private final String sqlLimpiarProveedor;
+
+	/**
+	 * Sentencia SQL de limpiarSuperAndes que borra todas las tuplas de VENDE
+	 */
+	private final String sqlLimpiarVende;
+
+	/**
+	 * Sentencia SQL de limpiarSuperAndes que borra todas las tuplas de ESTANTE
+	 */
+	private final String sqlLimpiarEstante;
+
+	/**
+	 * Sentencia SQL de limpiarSuperAndes que borra todas las tuplas de BODEGA
+	 */
+	private final String sqlLimpiarBodega;
+
+	/**
+	 * Sentencia SQL de limpiarSuperAndes que borra todas las tuplas de PRODUCTO
+	 */
+	private final String sqlLimpiarProducto;
+
+	/**
+	 * Sentencia SQL de limpiarSuperAndes que borra todas las tuplas de SUCURSAL
+	 */
+	private final String sqlLimpiarSucursal;
+
+	/**
+	 * Sentencia SQL de limpiarSuperAndes que borra todas las tuplas de SUPERMERCADO
+	 */
+	private final String sqlLimpiarSupermercado;
+
+	/**
+	 * Sentencia SQL de limpiarSuperAndes que borra todas las tuplas de VENTASDIARIAS
+	 */
+	private final String sqlLimpiarVentasDiarias;
 	
 	/**
 	 * Constructor
@@ -29,6 +133,22 @@ class SQLUtil {
 	 */
 	public SQLUtil(PersistenciaSuperAndes pp) {
 		this.pp = pp;
+		sqlNextval = "SELECT "+ pp.darSeqSuperandes() + ".nextval FROM DUAL";
+		sqlLimpiarTransaccion = "DELETE FROM " + pp.darTablaTransaccion();
+		sqlLimpiarPromocion = "DELETE FROM " + pp.darTablaPromocion();
+		sqlLimpiarFactura = "DELETE FROM " + pp.darTablaFactura();
+		sqlLimpiarCliente = "DELETE FROM " + pp.darTablaCliente();
+		sqlLimpiarOfrecen = "DELETE FROM " + pp.darTablaOfrecen();
+		sqlLimpiarSubpedido = "DELETE FROM " + pp.darTablaSubpedido();
+		sqlLimpiarPedido = "DELETE FROM " + pp.darTablaPedido ();
+		sqlLimpiarProveedor = "DELETE FROM " + pp.darTablaProveedor();
+		sqlLimpiarVende = "DELETE FROM " + pp.darTablaVende ();
+		sqlLimpiarEstante = "DELETE FROM " + pp.darTablaEstante ();
+		sqlLimpiarBodega = "DELETE FROM " + pp.darTablaBodega ();
+		sqlLimpiarProducto = "DELETE FROM " + pp.darTablaProducto ();
+		sqlLimpiarSucursal = "DELETE FROM " + pp.darTablaSucursal ();
+		sqlLimpiarSupermercado = "DELETE FROM " + pp.darTablaSupermercado ();
+		sqlLimpiarVentasDiarias = "DELETE FROM " + pp.darTablaVentasDiarias ();
 	}
 	
 	/**
@@ -38,7 +158,7 @@ class SQLUtil {
 	 */
 	public long nextval (PersistenceManager pm)
 	{
-        Query q = pm.newQuery(SQL, "SELECT "+ pp.darSeqSuperandes() + ".nextval FROM DUAL");
+        Query q = pm.newQuery(SQL, sqlNextval);
         q.setResultClass(Long.class);
         long resp = (long) q.executeUnique();
         return resp;
@@ -51,36 +171,218 @@ class SQLUtil {
 	 */
 	public String nextval2 (PersistenceManager pm)
 	{
-        Query q = pm.newQuery(SQL, "SELECT "+ pp.darSeqSuperandes() + ".nextval FROM DUAL");
+        Query q = pm.newQuery(SQL, sqlNextval);
         q.setResultClass(Long.class);
         String resp = (String)q.executeUnique();
         return resp;
 	}
 		
+	/**
+	 * Crea y ejecuta la sentencia SQL para saber si existe una tupla con un identificador en una tabla
+	 * @param pm - El manejador de persistencia
+	 * @param tabla - El nombre de la tabla, que debe tener la columna id
+	 * @param id - El identificador
+	 * @return true si la tabla tiene una tupla con el identificador
+	 */
+	public boolean existe (PersistenceManager pm, String tabla, long id)
+	{
+        Query q = pm.newQuery(SQL, "SELECT COUNT(*) FROM " + tabla + " WHERE id = ?");
+        q.setParameters(id);
+        return ((Number) q.executeUnique()).longValue () > 0;
+	}
+		
+	/**
+	 * Ejecuta una sentencia SQL parametrizada una vez por fila, agrupando las ejecuciones en lotes de JDBC.
+	 * Se usa la conexión de la transacción activa del manejador de persistencia, por lo que las inserciones
+	 * quedan confirmadas o deshechas junto con ella. Los valores null se envían con el tipo de su parámetro (ver darTiposParametros)
+	 * @param pm - El manejador de persistencia
+	 * @param sentencia - La sentencia SQL con parámetros ?
+	 * @param filas - Los valores de los parámetros de cada ejecución, en el orden de la sentencia
+	 * @param tamanoLote - El número máximo de ejecuciones que se envían a la base de datos en cada lote
+	 * @return El número de tuplas afectadas por cada fila, en el mismo orden de filas.
+	 * Statement.SUCCESS_NO_INFO si el manejador de la base de datos no lo reporta
+	 * @throws SQLException - Si falla alguna de las ejecuciones
+	 */
+	public static long [] ejecutarLote (PersistenceManager pm, String sentencia, List<Object []> filas, int tamanoLote) throws SQLException
+	{
+		if (tamanoLote < 1)
+		{
+			throw new IllegalArgumentException ("El tamaño del lote debe ser positivo: " + tamanoLote);
+		}
+		long [] resp = new long [filas.size ()];
+		JDOConnection jdoConn = pm.getDataStoreConnection ();
+		try
+		{
+			Connection conn = (Connection) jdoConn.getNativeConnection ();
+			try (PreparedStatement ps = conn.prepareStatement (sentencia))
+			{
+				int inicioLote = 0;
+				int enLote = 0;
+				// Los tipos se averiguan sólo si alguna fila tiene un null
+				int [] tipos = null;
+				for (Object [] fila : filas)
+				{
+					for (int i = 0; i < fila.length; i++)
+					{
+						if (fila [i] == null)
+						{
+							if (tipos == null)
+							{
+								tipos = darTiposParametros (ps, filas);
+							}
+							ps.setNull (i + 1, tipos [i]);
+						}
+						else
+						{
+							ps.setObject (i + 1, fila [i]);
+						}
+					}
+					ps.addBatch ();
+					enLote++;
+					if (enLote == tamanoLote)
+					{
+						inicioLote = copiarResultados (ps.executeBatch (), resp, inicioLote);
+						enLote = 0;
+					}
+				}
+				if (enLote > 0)
+				{
+					copiarResultados (ps.executeBatch (), resp, inicioLote);
+				}
+			}
+		}
+		finally
+		{
+			jdoConn.close ();
+		}
+		return resp;
+	}
+
+	/**
+	 * Averigua el tipo SQL de cada parámetro de una sentencia, para enviar los null con él: algunos manejadores rechazan o convierten
+	 * mal un null de tipo VARCHAR en una columna numérica o de fecha. Se usa el tipo que reporta el manejador de la base de datos; si no
+	 * lo reporta, el del primer valor no nulo de la columna en las filas, y si todos son null, TIPO_NULO_DEFECTO
+	 * @param ps - La sentencia preparada
+	 * @param filas - Los valores de los parámetros de cada ejecución, en el orden de la sentencia
+	 * @return El tipo SQL de cada parámetro, como las constantes de java.sql.Types
+	 */
+	static int [] darTiposParametros (PreparedStatement ps, List<Object []> filas)
+	{
+		int numParametros = 0;
+		for (Object [] fila : filas)
+		{
+			numParametros = Math.max (numParametros, fila.length);
+		}
+		ParameterMetaData metadatos;
+		try
+		{
+			metadatos = ps.getParameterMetaData ();
+		}
+		catch (SQLException e)
+		{
+			// El manejador de Oracle puede no implementarlo
+			metadatos = null;
+		}
+		int [] resp = new int [numParametros];
+		for (int i = 0; i < numParametros; i++)
+		{
+			int tipo = Types.NULL;
+			if (metadatos != null)
+			{
+				try
+				{
+					tipo = metadatos.getParameterType (i + 1);
+				}
+				catch (SQLException e)
+				{
+					tipo = Types.NULL;
+				}
+			}
+			if (tipo == Types.NULL || tipo == Types.OTHER)
+			{
+				tipo = darTipoColumna (filas, i);
+			}
+			resp [i] = tipo;
+		}
+		return resp;
+	}
+
+	/**
+	 * @param filas - Los valores de los parámetros de cada ejecución
+	 * @param columna - La posición del parámetro, desde 0
+	 * @return El tipo SQL del primer valor no nulo del parámetro en las filas. TIPO_NULO_DEFECTO si todos son null o son de otra clase
+	 */
+	private static int darTipoColumna (List<Object []> filas, int columna)
+	{
+		for (Object [] fila : filas)
+		{
+			Object valor = columna < fila.length ? fila [columna] : null;
+			if (valor instanceof Double || valor instanceof Float)
+			{
+				return Types.DOUBLE;
+			}
+			else if (valor instanceof Number)
+			{
+				return Types.NUMERIC;
+			}
+			else if (valor instanceof java.sql.Date)
+			{
+				return Types.DATE;
+			}
+			else if (valor instanceof Date)
+			{
+				return Types.TIMESTAMP;
+			}
+			else if (valor != null)
+			{
+				return TIPO_NULO_DEFECTO;
+			}
+		}
+		return TIPO_NULO_DEFECTO;
+	}
+
+	/**
+	 * Copia los conteos de un lote de JDBC en el arreglo de resultados
+	 * @param conteos - Los conteos retornados por executeBatch
+	 * @param resp - El arreglo de resultados de todas las filas
+	 * @param desde - La posición de resp que corresponde a la primera fila del lote
+	 * @return La posición de resp que corresponde a la primera fila del siguiente lote
+	 */
+	private static int copiarResultados (int [] conteos, long [] resp, int desde)
+	{
+		for (int i = 0; i < conteos.length; i++)
+		{
+			resp [desde + i] = conteos [i];
+		}
+		return desde + conteos.length;
+	}
+
 	/**
 	 * Crea y ejecuta las sentencias SQL para cada tabla de la base de datos - EL ORDEN ES IMPORTANTE 
 	 * @param pm - El manejador de persistencia
-	 * @return Un arreglo con 7 n�meros que indican el n�mero de tuplas borradas en las tablas TRANSACCION, PROMOCION, FACTURA, CLIENTE, OFRECEN, SUBPEDIDO, 
-	 * PEDIDO, PROVEEDOR, VENDE, ESTANTE, BODEGA, PRODUCTO, SUCURSAL, SUPERMERCADO respectivamente.
+	 * @return Un arreglo con 15 n�meros que indican el n�mero de tuplas borradas en las tablas TRANSACCION, PROMOCION, FACTURA, CLIENTE, OFRECEN, SUBPEDIDO, 
+	 * PEDIDO, PROVEEDOR, VENDE, ESTANTE, BODEGA, PRODUCTO, SUCURSAL, SUPERMERCADO, VENTASDIARIAS respectivamente.
 	 */
 	public long [] limpiarSuperAndes(PersistenceManager pm)
 	{
-        Query qTransaccion = pm.newQuery(SQL, "DELETE FROM " + pp.darTablaTransaccion());          
-        Query qPromocion= pm.newQuery(SQL, "DELETE FROM " + pp.darTablaPromocion());
-        Query qFactura= pm.newQuery(SQL, "DELETE FROM " + pp.darTablaFactura());
-        Query qCliente = pm.newQuery(SQL, "DELETE FROM " + pp.darTablaCliente());
-        Query qOfrecen= pm.newQuery(SQL, "DELETE FROM " + pp.darTablaOfrecen());
-        Query qSubpedido= pm.newQuery(SQL, "DELETE FROM " + pp.darTablaSubpedido());
-        Query qPedido = pm.newQuery(SQL, "DELETE FROM " + pp.darTablaPedido ());
-        Query qProveedor = pm.newQuery(SQL, "DELETE FROM " + pp.darTablaProveedor());
-        Query qVende = pm.newQuery(SQL, "DELETE FROM " + pp.darTablaVende ());
-        Query qEstante = pm.newQuery(SQL, "DELETE FROM " + pp.darTablaEstante ());
-        Query qBodega = pm.newQuery(SQL, "DELETE FROM " + pp.darTablaBodega ());
-        Query qProducto = pm.newQuery(SQL, "DELETE FROM " + pp.darTablaProducto ());
-        Query qSucursal = pm.newQuery(SQL, "DELETE FROM " + pp.darTablaSucursal ());        
-        Query qSupermercado = pm.newQuery(SQL, "DELETE FROM " + pp.darTablaSupermercado ());
+        Query qTransaccion = pm.newQuery(SQL, sqlLimpiarTransaccion);          
+        Query qPromocion= pm.newQuery(SQL, sqlLimpiarPromocion);
+        Query qFactura= pm.newQuery(SQL, sqlLimpiarFactura);
+        Query qCliente = pm.newQuery(SQL, sqlLimpiarCliente);
+        Query qOfrecen= pm.newQuery(SQL, sqlLimpiarOfrecen);
+        Query qSubpedido= pm.newQuery(SQL, sqlLimpiarSubpedido);
+        Query qPedido = pm.newQuery(SQL, sqlLimpiarPedido);
+        Query qProveedor = pm.newQuery(SQL, sqlLimpiarProveedor);
+        Query qVende = pm.newQuery(SQL, sqlLimpiarVende);
+        Query qEstante = pm.newQuery(SQL, sqlLimpiarEstante);
+        Query qBodega = pm.newQuery(SQL, sqlLimpiarBodega);
+        Query qProducto = pm.newQuery(SQL, sqlLimpiarProducto);
+        Query qSucursal = pm.newQuery(SQL, sqlLimpiarSucursal);        
+        Query qSupermercado = pm.newQuery(SQL, sqlLimpiarSupermercado);
+        Query qVentasDiarias = pm.newQuery(SQL, sqlLimpiarVentasDiarias);
 
 
+        long ventasDiariasEliminadas = (long) qVentasDiarias.executeUnique ();
         long transaccionEliminados = (long) qTransaccion.executeUnique ();
         long promocionEliminados = (long) qPromocion.executeUnique ();
         long facturaEliminadas = (long) qFactura.executeUnique ();
@@ -98,7 +400,7 @@ class SQLUtil {
 
         return new long[] {transaccionEliminados, promocionEliminados, facturaEliminadas, clienteEliminadas,
         		ofrecenEliminados, subpedidoEliminados, pedidoEliminados, proveedorEliminados, vendeEliminados, estanteEliminados,
-        		bodegaEliminados, productoEliminados, sucursalEliminados, supermercadoEliminados};
+        		bodegaEliminados, productoEliminados, sucursalEliminados, supermercadoEliminados, ventasDiariasEliminadas};
 	}
 
 }
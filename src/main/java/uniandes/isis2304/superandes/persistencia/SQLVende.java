@@ -1,5 +1,7 @@
 package uniandes.isis2304.superandes.persistencia;
 
+import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.List;
 
 import javax.jdo.PersistenceManager;
@@ -32,6 +34,61 @@ class SQLVende {
 	 * El manejador de persistencia general de la aplicación
 	 */
 	PersistenciaSuperAndes pp;
+
+	/**
+	 * Sentencia SQL de adicionarVende
+	 */
+	private final String sqlAdicionarVende;
+
+	/**
+	 * Sentencia SQL de eliminarVende
+	 */
+	private final String sqlEliminarVende;
+
+	/**
+	 * Sentencia SQL de eliminarVende por sucursal y producto
+	 */
+	private final String sqlEliminarVendePorSucursalYProducto;
+
+	/**
+	 * Sentencia SQL de eliminarVendePorIdSucursal
+	 */
+	private final String sqlEliminarVendePorIdSucursal;
+
+	/**
+	 * Sentencia SQL de eliminarVendePorIdProducto
+	 */
+	private final String sqlEliminarVendePorIdProducto;
+
+	/**
+	 * Sentencia SQL de darVende
+	 */
+	private final String sqlDarVende;
+
+	/**
+	 * Sentencia SQL de darVendenPorProducto
+	 */
+	private final String sqlDarVendenPorProducto;
+
+	/**
+	 * Sentencia SQL de darVendenPorSucursal
+	 */
+	private final String sqlDarVendenPorSucursal;
+
+	/**
+	 * Sentencia SQL de darNivelReorden
+	 */
+	private final String sqlDarNivelReorden;
+
+	/**
+	 * Sentencia SQL de darProductosSucursales
+	 */
+	private final String sqlDarProductosSucursales;
+
+	/**
+	 * Sentencia SQL de darPrecios
+	 */
+	private final String sqlDarPrecios;
 	
 	/* ****************************************************************
 	 * 			Métodos
@@ -42,6 +99,17 @@ class SQLVende {
 	 */
 	public SQLVende(PersistenciaSuperAndes pp) {
 		this.pp = pp;
+		sqlAdicionarVende = "INSERT INTO " + pp.darTablaVende() + "(idsucursal, idproducto, nivelreorden, preciounitario, preciounidadmedida) values (?, ?, ?, ?, ?)";
+		sqlEliminarVende = "DELETE FROM " + pp.darTablaVende();
+		sqlEliminarVendePorSucursalYProducto = "DELETE FROM " + pp.darTablaVende() + " WHERE idsucursal = ? AND idproducto = ?";
+		sqlEliminarVendePorIdSucursal = "DELETE FROM " + pp.darTablaVende() + " WHERE idsucursal = ?";
+		sqlEliminarVendePorIdProducto = "DELETE FROM " + pp.darTablaVende() + " WHERE idproducto = ?";
+		sqlDarVende = "SELECT * FROM " + pp.darTablaVende();
+		sqlDarVendenPorProducto = "SELECT * FROM " + pp.darTablaVende() + " WHERE idproducto = ?";
+		sqlDarVendenPorSucursal = "SELECT * FROM " + pp.darTablaVende() + " WHERE idsucursal = ?";
+		sqlDarNivelReorden = "SELECT MAX(nivelreorden) FROM " + pp.darTablaVende () + " WHERE idsucursal = ? AND idproducto = ?";
+		sqlDarProductosSucursales = "SELECT DISTINCT idsucursal, idproducto FROM " + pp.darTablaVende ();
+		sqlDarPrecios = "SELECT idsucursal, idproducto, MAX(preciounitario), MAX(preciounidadmedida) FROM " + pp.darTablaVende () + " GROUP BY idsucursal, idproducto";
 	}
 	
 	/**
@@ -56,7 +124,7 @@ class SQLVende {
 	 */
 	public long adicionarVende(PersistenceManager pm, long sucursal, long producto, int nivelReorden, double precioUnitario, double precioUnidadMedida) 
 	{
-        Query q = pm.newQuery(SQL, "INSERT INTO " + pp.darTablaPedido() + "(idsucursal, idproducto, nivelreorden, preciounitario, preciounidadmedida) values (?, ?, ?, ?, ?)");
+        Query q = pm.newQuery(SQL, sqlAdicionarVende);
         q.setParameters(sucursal, producto, nivelReorden, precioUnitario, precioUnidadMedida);
         return (long) q.executeUnique();            
 	}
@@ -68,7 +136,7 @@ class SQLVende {
 	 */
 	public long eliminarVende(PersistenceManager pm) 
 	{
-        Query q = pm.newQuery(SQL, "DELETE FROM " + pp.darTablaVende());
+        Query q = pm.newQuery(SQL, sqlEliminarVende);
         return (long) q.executeUnique();
 	}
 	
@@ -81,7 +149,7 @@ class SQLVende {
 	 */
 	public long eliminarVende(PersistenceManager pm, long idSucursal, long idProducto) 
 	{
-        Query q = pm.newQuery(SQL, "DELETE FROM " + pp.darTablaVende() + " WHERE idsucursal = ? AND idproducto = ?");
+        Query q = pm.newQuery(SQL, sqlEliminarVendePorSucursalYProducto);
         q.setParameters(idSucursal, idProducto);
         return (long) q.executeUnique();
 	}
@@ -94,7 +162,7 @@ class SQLVende {
 	 */
 	public long eliminarVendePorIdSucursal(PersistenceManager pm, long idSucursal) 
 	{
-        Query q = pm.newQuery(SQL, "DELETE FROM " + pp.darTablaVende() + " WHERE idsucursal = ?");
+        Query q = pm.newQuery(SQL, sqlEliminarVendePorIdSucursal);
         q.setParameters(idSucursal);
         return (long) q.executeUnique();
 	}
@@ -107,7 +175,7 @@ class SQLVende {
 	 */
 	public long eliminarVendePorIdProducto(PersistenceManager pm, long idProducto) 
 	{
-        Query q = pm.newQuery(SQL, "DELETE FROM " + pp.darTablaVende() + " WHERE idproducto = ?");
+        Query q = pm.newQuery(SQL, sqlEliminarVendePorIdProducto);
         q.setParameters(idProducto);
         return (long) q.executeUnique();
 	}
@@ -120,7 +188,7 @@ class SQLVende {
 	 */
 	public List<Vende> darVende(PersistenceManager pm)
 	{
-		Query q = pm.newQuery(SQL, "SELECT * FROM " + pp.darTablaVende());
+		Query q = pm.newQuery(SQL, sqlDarVende);
 		q.setResultClass(Vende.class);
 		return (List<Vende>) q.execute();
 	}
@@ -134,7 +202,7 @@ class SQLVende {
 	 */
 	public List<Vende> darVendenPorProducto(PersistenceManager pm, long producto) 
 	{
-		Query q = pm.newQuery(SQL, "SELECT * FROM " + pp.darTablaVende() + " WHERE idproducto = ?");
+		Query q = pm.newQuery(SQL, sqlDarVendenPorProducto);
 		q.setResultClass(Vende.class);
 		q.setParameters(producto);
 		return (List<Vende>) q.executeList();
@@ -149,9 +217,77 @@ class SQLVende {
 	 */
 	public List<Vende> darVendenPorSucursal(PersistenceManager pm, long sucursal) 
 	{
-		Query q = pm.newQuery(SQL, "SELECT * FROM " + pp.darTablaVende() + " WHERE idsucursal = ?");
+		Query q = pm.newQuery(SQL, sqlDarVendenPorSucursal);
 		q.setResultClass(Vende.class);
 		q.setParameters(sucursal);
 		return (List<Vende>) q.executeList();
 	}
+
+	/**
+	 * Crea y ejecuta, en lotes de JDBC, la sentencia SQL para adicionar varias tuplas VENDE a la base de datos de SuperAndes.
+	 * Todas las inserciones hacen parte de la transacción activa del manejador de persistencia
+	 * @param pm - El manejador de persistencia
+	 * @param vendes - Las tuplas VENDE a insertar
+	 * @param tamanoLote - El número máximo de inserciones por lote enviado a la base de datos
+	 * @return El número de tuplas insertadas por cada elemento, en el mismo orden de la lista
+	 * @throws SQLException - Si falla alguna de las inserciones
+	 */
+	public long [] adicionarVende (PersistenceManager pm, List<Vende> vendes, int tamanoLote) throws SQLException
+	{
+		List<Object []> filas = new ArrayList<Object []> (vendes.size ());
+		for (Vende v : vendes)
+		{
+			filas.add (new Object [] {v.getSucursal (), v.getProducto (), v.getNivelReorden (), v.getPrecioUnitario (), v.getPrecioPorUnidadMedida ()});
+		}
+		return SQLUtil.ejecutarLote (pm, sqlAdicionarVende, filas, tamanoLote);
+	}
+
+	/**
+	 * Crea y ejecuta la sentencia SQL para encontrar el nivel de reorden de un producto en una sucursal
+	 * @param pm - El manejador de persistencia
+	 * @param sucursal - El identificador de la sucursal
+	 * @param producto - El identificador del producto
+	 * @return El nivel de reorden. 0 si la sucursal no vende el producto
+	 */
+	public int darNivelReorden (PersistenceManager pm, long sucursal, long producto)
+	{
+		Query q = pm.newQuery(SQL, sqlDarNivelReorden);
+		q.setParameters(sucursal, producto);
+		Number resp = (Number) q.executeUnique();
+		return resp == null ? 0 : resp.intValue ();
+	}
+
+	/**
+	 * Crea y ejecuta la sentencia SQL para encontrar qué productos vende cada sucursal
+	 * @param pm - El manejador de persistencia
+	 * @return Una lista de parejas {identificador de la sucursal, identificador del producto}
+	 */
+	public List<long []> darProductosSucursales (PersistenceManager pm)
+	{
+		Query q = pm.newQuery(SQL, sqlDarProductosSucursales);
+		List<long []> resp = new ArrayList<long []> ();
+		for (Object [] fila : (List<Object []>) q.executeList())
+		{
+			resp.add (new long [] {((Number) fila [0]).longValue (), ((Number) fila [1]).longValue ()});
+		}
+		return resp;
+	}
+
+	/**
+	 * Crea y ejecuta la sentencia SQL para encontrar el precio de cada producto en cada sucursal. Si hay varias tuplas de la misma
+	 * pareja, toma el mayor de cada precio
+	 * @param pm - El manejador de persistencia
+	 * @return Una lista de objetos VENDE, uno por pareja, con los precios y sin nivel de reorden
+	 */
+	public List<Vende> darPrecios (PersistenceManager pm)
+	{
+		Query q = pm.newQuery(SQL, sqlDarPrecios);
+		List<Vende> resp = new ArrayList<Vende> ();
+		for (Object [] fila : (List<Object []>) q.executeList())
+		{
+			resp.add (new Vende (((Number) fila [0]).longValue (), ((Number) fila [1]).longValue (), 0,
+					((Number) fila [2]).doubleValue (), ((Number) fila [3]).doubleValue ()));
+		}
+		return resp;
+	}
 }
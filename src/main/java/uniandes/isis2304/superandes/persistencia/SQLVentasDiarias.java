@@ -0,0 +1,185 @@
+package uniandes.isis2304.superandes.persistencia;
+
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+
+import javax.jdo.PersistenceManager;
+import javax.jdo.Query;
+
+/**
+ * Clase que encapsula los métodos que hacen acceso a la base de datos para el acumulado de VENTASDIARIAS de SuperAndes:
+ * la suma de los costos y el número de las transacciones de cada sucursal en cada día, mantenidos por la aplicación
+ * a medida que se insertan transacciones
+ * Nótese que es una clase que es sólo conocida en el paquete de persistencia
+ *
+ * @author n.cobos, jf.torresp
+ */
+class SQLVentasDiarias
+{
+	/* ****************************************************************
+	 * 			Constantes
+	 *****************************************************************/
+	/**
+	 * Cadena que representa el tipo de consulta que se va a realizar en las sentencias de acceso a la base de datos
+	 * Se renombra acá para facilitar la escritura de las sentencias
+	 */
+	private final static String SQL = PersistenciaSuperAndes.SQL;
+
+	/* ****************************************************************
+	 * 			Atributos
+	 *****************************************************************/
+	/**
+	 * El manejador de persistencia general de la aplicación
+	 */
+	private PersistenciaSuperAndes pp;
+
+	/**
+	 * Sentencia SQL de sumarVentas
+	 */
+	private final String sqlSumarVentas;
+
+	/**
+	 * Sentencia SQL de sumarVentasFacturas
+	 */
+	private final String sqlSumarVentasFacturas;
+
+	/**
+	 * Sentencia SQL de darVentasPorSucursal
+	 */
+	private final String sqlDarVentasPorSucursal;
+
+	/**
+	 * Sentencia SQL de reconstruirVentas, para eliminar los días a reconstruir
+	 */
+	private final String sqlEliminarVentas;
+
+	/**
+	 * Sentencia SQL de reconstruirVentas, para volver a calcular los días a partir de TRANSACCION y FACTURA
+	 */
+	private final String sqlCalcularVentas;
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	/**
+	 * Constructor
+	 * @param pp - El Manejador de persistencia de la aplicación
+	 */
+	public SQLVentasDiarias (PersistenciaSuperAndes pp)
+	{
+		this.pp = pp;
+		String acumular = " ON (v.sucursal = n.sucursal AND v.dia = n.dia)"
+				+ " WHEN MATCHED THEN UPDATE SET v.ventas = v.ventas + n.ventas, v.transacciones = v.transacciones + n.transacciones"
+				+ " WHEN NOT MATCHED THEN INSERT (sucursal, dia, ventas, transacciones) VALUES (n.sucursal, n.dia, n.ventas, n.transacciones)";
+		sqlSumarVentas = "MERGE INTO " + pp.darTablaVentasDiarias () + " v USING (SELECT CAST(? AS NUMBER) sucursal, CAST(? AS DATE) dia,"
+				+ " CAST(? AS NUMBER) ventas, CAST(? AS NUMBER) transacciones FROM DUAL) n" + acumular;
+		sqlSumarVentasFacturas = "MERGE INTO " + pp.darTablaVentasDiarias () + " v USING (SELECT f.sucursal, TRUNC(f.fecha) dia,"
+				+ " CAST(? AS NUMBER) ventas, CAST(? AS NUMBER) transacciones FROM " + pp.darTablaFactura () + " f WHERE f.numero = ?) n" + acumular;
+		sqlDarVentasPorSucursal = "SELECT sucursal, SUM(ventas) FROM " + pp.darTablaVentasDiarias () + " WHERE dia >= ? AND dia < ? GROUP BY sucursal ORDER BY sucursal";
+		sqlEliminarVentas = "DELETE FROM " + pp.darTablaVentasDiarias () + " WHERE dia >= ? AND dia < ?";
+		sqlCalcularVentas = "INSERT INTO " + pp.darTablaVentasDiarias () + " (sucursal, dia, ventas, transacciones)"
+				+ " SELECT f.sucursal, TRUNC(f.fecha), SUM(t.costo), COUNT(*) FROM " + pp.darTablaTransaccion () + " t, " + pp.darTablaFactura () + " f"
+				+ " WHERE t.numerofactura = f.numero AND f.fecha >= ? AND f.fecha < ? GROUP BY f.sucursal, TRUNC(f.fecha)";
+	}
+
+	/**
+	 * @param instante - Un instante
+	 * @return El comienzo del día del instante, en la zona horaria local
+	 */
+	public static Timestamp darDia (Timestamp instante)
+	{
+		Calendar c = Calendar.getInstance ();
+		c.setTimeInMillis (instante.getTime ());
+		c.set (Calendar.HOUR_OF_DAY, 0);
+		c.set (Calendar.MINUTE, 0);
+		c.set (Calendar.SECOND, 0);
+		c.set (Calendar.MILLISECOND, 0);
+		return new Timestamp (c.getTimeInMillis ());
+	}
+
+	/**
+	 * @param instante - Un instante
+	 * @return El comienzo del día siguiente al del instante, en la zona horaria local
+	 */
+	public static Timestamp darDiaSiguiente (Timestamp instante)
+	{
+		Calendar c = Calendar.getInstance ();
+		c.setTimeInMillis (darDia (instante).getTime ());
+		c.add (Calendar.DAY_OF_MONTH, 1);
+		return new Timestamp (c.getTimeInMillis ());
+	}
+
+	/**
+	 * Crea y ejecuta la sentencia SQL para sumar las transacciones de una factura al acumulado de su sucursal y su día
+	 * @param pm - El manejador de persistencia
+	 * @param sucursal - El identificador de la sucursal
+	 * @param fecha - La fecha de la factura
+	 * @param ventas - La suma de los costos de las transacciones
+	 * @param transacciones - El número de transacciones
+	 * @return El número de tuplas insertadas o modificadas
+	 */
+	public long sumarVentas (PersistenceManager pm, long sucursal, Timestamp fecha, double ventas, int transacciones)
+	{
+		Query q = pm.newQuery(SQL, sqlSumarVentas);
+		q.setParameters(sucursal, darDia (fecha), ventas, transacciones);
+		return (long) q.executeUnique();
+	}
+
+	/**
+	 * Crea y ejecuta, en lotes de JDBC, la sentencia SQL para sumar transacciones ya agrupadas por factura al acumulado
+	 * de la sucursal y el día de cada factura, que se leen de la tabla FACTURA
+	 * Todas las actualizaciones hacen parte de la transacción activa del manejador de persistencia
+	 * @param pm - El manejador de persistencia
+	 * @param facturas - Las transacciones de cada factura, como {número de factura, suma de los costos, número de transacciones}
+	 * @param tamanoLote - El número máximo de actualizaciones por lote enviado a la base de datos
+	 * @return El número de tuplas insertadas o modificadas por cada factura, en el mismo orden de la lista. 0 si la factura no existe
+	 * @throws SQLException - Si falla alguna de las actualizaciones
+	 */
+	public long [] sumarVentasFacturas (PersistenceManager pm, List<Object []> facturas, int tamanoLote) throws SQLException
+	{
+		List<Object []> filas = new ArrayList<Object []> (facturas.size ());
+		for (Object [] factura : facturas)
+		{
+			filas.add (new Object [] {factura [1], factura [2], factura [0]});
+		}
+		return SQLUtil.ejecutarLote (pm, sqlSumarVentasFacturas, filas, tamanoLote);
+	}
+
+	/**
+	 * Crea y ejecuta la sentencia SQL para encontrar las ventas de cada sucursal en un rango de días (RFC1)
+	 * @param pm - El manejador de persistencia
+	 * @param desde - El primer día del rango
+	 * @param hasta - El último día del rango, incluido
+	 * @return Una lista de parejas de objetos, el primer elemento de cada pareja representa el identificador de una sucursal,
+	 * 	el segundo elemento representa la suma de los costos de sus transacciones en el rango
+	 */
+	public List<Object []> darVentasPorSucursal (PersistenceManager pm, Timestamp desde, Timestamp hasta)
+	{
+		Query q = pm.newQuery(SQL, sqlDarVentasPorSucursal);
+		q.setParameters(darDia (desde), darDiaSiguiente (hasta));
+		return q.executeList();
+	}
+
+	/**
+	 * Crea y ejecuta las sentencias SQL para volver a calcular el acumulado de un rango de días a partir de las tablas TRANSACCION y FACTURA
+	 * Todas las sentencias hacen parte de la transacción activa del manejador de persistencia
+	 * @param pm - El manejador de persistencia
+	 * @param desde - El primer día del rango
+	 * @param hasta - El último día del rango, incluido
+	 * @return El número de días de sucursales calculados
+	 */
+	public long reconstruirVentas (PersistenceManager pm, Timestamp desde, Timestamp hasta)
+	{
+		Timestamp inicio = darDia (desde);
+		Timestamp fin = darDiaSiguiente (hasta);
+		Query qEliminar = pm.newQuery(SQL, sqlEliminarVentas);
+		qEliminar.setParameters(inicio, fin);
+		qEliminar.executeUnique();
+		Query qCalcular = pm.newQuery(SQL, sqlCalcularVentas);
+		qCalcular.setParameters(inicio, fin);
+		return (long) qCalcular.executeUnique();
+	}
+}
@@ -0,0 +1,497 @@
+package uniandes.isis2304.superandes.persistencia;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Supplier;
+
+import uniandes.isis2304.superandes.negocio.Vende;
+
+/**
+ * Tabla en memoria del precio de cada producto en cada sucursal (relación VENDE), para cotizar sin ir a la base de datos.
+ * Es una tabla hash de direccionamiento abierto con sondeo lineal cuya llave es un long con la sucursal y el producto empacados, y cuyos
+ * precios están en arreglos de double paralelos a las llaves: consultar un precio o cotizar una canasta no crea objetos.
+ * Las parejas con algún identificador que no cabe en 32 bits no se pueden empacar sin chocar con otras, así que van aparte en un mapa
+ * que se copia en cada cambio; consultarlas sí crea objetos.
+ * Las consultas son lecturas optimistas que sólo esperan si coinciden con un cambio. Los cambios y las recargas se hacen uno a la vez;
+ * un cambio que llega durante una recarga espera a que termine y se aplica sobre la tabla nueva, para no perderse
+ *
+ * @author n.cobos, jf.torresp
+ */
+public class TablaPrecios
+{
+	/* ****************************************************************
+	 * 			Constantes
+	 *****************************************************************/
+	/**
+	 * Capacidad inicial por defecto
+	 */
+	public final static int CAPACIDAD_DEFECTO = 1024;
+
+	/**
+	 * Llave de las posiciones vacías. Los identificadores son positivos, así que ninguna pareja se empaca en 0
+	 */
+	private final static long VACIA = 0;
+
+	/**
+	 * El mayor identificador que se puede empacar en una llave: el que cabe en 32 bits sin signo
+	 */
+	public final static long IDENTIFICADOR_MAXIMO = 0xFFFFFFFFL;
+
+	/**
+	 * Valor que retornan las consultas de una pareja que no está en la tabla
+	 */
+	public final static double SIN_PRECIO = -1;
+
+	/* ****************************************************************
+	 * 			Atributos
+	 *****************************************************************/
+	/**
+	 * Candado de las lecturas optimistas y de los cambios de la tabla
+	 */
+	private final StampedLock candado;
+
+	/**
+	 * Candado que hace los cambios y las recargas uno a la vez
+	 */
+	private final ReentrantLock escritura;
+
+	/**
+	 * La tabla actual. Una recarga o un crecimiento la reemplazan
+	 */
+	private volatile Tabla tabla;
+
+	/**
+	 * Los arreglos de la tabla hash
+	 */
+	private static class Tabla
+	{
+		/**
+		 * Las llaves empacadas. VACIA en las posiciones libres
+		 */
+		private final long [] llaves;
+
+		/**
+		 * El precio unitario de la pareja en la misma posición de llaves
+		 */
+		private final double [] preciosUnitarios;
+
+		/**
+		 * El precio por unidad de medida de la pareja en la misma posición de llaves
+		 */
+		private final double [] preciosUnidadMedida;
+
+		/**
+		 * Número de posiciones ocupadas
+		 */
+		private int tamano;
+
+		/**
+		 * Los precios {unitario, por unidad de medida} de las parejas que no se pueden empacar, por la lista {sucursal, producto}.
+		 * No se modifica: cada cambio lo reemplaza por una copia, para que las lecturas optimistas nunca lo vean a medias
+		 */
+		private volatile Map<List<Long>, double []> desbordadas = Collections.emptyMap ();
+
+		/**
+		 * Constructor
+		 * @param capacidad - El número de posiciones. Una potencia de 2
+		 */
+		public Tabla (int capacidad)
+		{
+			llaves = new long [capacidad];
+			preciosUnitarios = new double [capacidad];
+			preciosUnidadMedida = new double [capacidad];
+		}
+
+		/**
+		 * @param llave - Una llave empacada
+		 * @return La posición de la llave, o la posición libre donde iría
+		 */
+		public int buscar (long llave)
+		{
+			int mascara = llaves.length - 1;
+			int i = dispersar (llave) & mascara;
+			while (llaves [i] != VACIA && llaves [i] != llave)
+			{
+				i = (i + 1) & mascara;
+			}
+			return i;
+		}
+
+		/**
+		 * Pone los precios de una pareja. Si la pareja ya tiene precios, se deja el mayor de cada uno, como en SQLVende.darPrecios
+		 * @param llave - La llave empacada de la pareja
+		 * @param precioUnitario - El precio unitario
+		 * @param precioUnidadMedida - El precio por unidad de medida
+		 */
+		public void poner (long llave, double precioUnitario, double precioUnidadMedida)
+		{
+			int i = buscar (llave);
+			if (llaves [i] == VACIA)
+			{
+				llaves [i] = llave;
+				preciosUnitarios [i] = precioUnitario;
+				preciosUnidadMedida [i] = precioUnidadMedida;
+				tamano++;
+			}
+			else
+			{
+				preciosUnitarios [i] = Math.max (preciosUnitarios [i], precioUnitario);
+				preciosUnidadMedida [i] = Math.max (preciosUnidadMedida [i], precioUnidadMedida);
+			}
+		}
+
+		/**
+		 * Pone los precios de una pareja que no se puede empacar, dejando el mayor de cada uno como en poner
+		 * @param sucursal - El identificador de la sucursal
+		 * @param producto - El identificador del producto
+		 * @param precioUnitario - El precio unitario
+		 * @param precioUnidadMedida - El precio por unidad de medida
+		 */
+		public void ponerDesbordada (long sucursal, long producto, double precioUnitario, double precioUnidadMedida)
+		{
+			Map<List<Long>, double []> nuevas = new HashMap<List<Long>, double []> (desbordadas);
+			List<Long> pareja = Arrays.asList (sucursal, producto);
+			double [] anteriores = nuevas.get (pareja);
+			if (anteriores != null)
+			{
+				precioUnitario = Math.max (anteriores [0], precioUnitario);
+				precioUnidadMedida = Math.max (anteriores [1], precioUnidadMedida);
+			}
+			nuevas.put (pareja, new double [] {precioUnitario, precioUnidadMedida});
+			desbordadas = Collections.unmodifiableMap (nuevas);
+		}
+
+		/**
+		 * @return true si hay que crecer antes de agregar otra pareja: la tabla no debe llenarse más de 3/4
+		 */
+		public boolean llena ()
+		{
+			return (tamano + 1) * 4L > llaves.length * 3L;
+		}
+
+		/**
+		 * @return Una tabla con el doble de posiciones y las mismas parejas
+		 */
+		public Tabla crecer ()
+		{
+			Tabla resp = new Tabla (llaves.length * 2);
+			resp.desbordadas = desbordadas;
+			for (int i = 0; i < llaves.length; i++)
+			{
+				if (llaves [i] != VACIA)
+				{
+					resp.poner (llaves [i], preciosUnitarios [i], preciosUnidadMedida [i]);
+				}
+			}
+			return resp;
+		}
+	}
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	/**
+	 * Constructor
+	 * @param capacidad - El número de parejas que se espera tener, para no crecer mientras tanto
+	 */
+	TablaPrecios (int capacidad)
+	{
+		this.candado = new StampedLock ();
+		this.escritura = new ReentrantLock ();
+		this.tabla = new Tabla (darCapacidad (capacidad));
+	}
+
+	/**
+	 * @param parejas - Un número de parejas
+	 * @return El número de posiciones de una tabla con espacio para las parejas: una potencia de 2
+	 */
+	private static int darCapacidad (int parejas)
+	{
+		int minimo = (int) Math.min (1 << 30, Math.max (16, parejas * 4L / 3 + 1));
+		return Integer.highestOneBit (minimo - 1) << 1;
+	}
+
+	/**
+	 * @param sucursal - El identificador de una sucursal
+	 * @param producto - El identificador de un producto
+	 * @return true si los dos identificadores están entre 1 e IDENTIFICADOR_MAXIMO, de manera que la pareja se puede empacar en una llave
+	 */
+	public static boolean cabeEnLlave (long sucursal, long producto)
+	{
+		return sucursal > 0 && sucursal <= IDENTIFICADOR_MAXIMO && producto > 0 && producto <= IDENTIFICADOR_MAXIMO;
+	}
+
+	/**
+	 * @param sucursal - El identificador de una sucursal
+	 * @param producto - El identificador de un producto
+	 * @return La llave de la pareja: la sucursal en los 32 bits altos y el producto en los 32 bajos
+	 * @throws IllegalArgumentException Si la pareja no cabe en una llave. Ver cabeEnLlave
+	 */
+	public static long darLlave (long sucursal, long producto)
+	{
+		if (!cabeEnLlave (sucursal, producto))
+		{
+			throw new IllegalArgumentException ("La pareja {sucursal " + sucursal + ", producto " + producto + "} no cabe en una llave de 64 bits");
+		}
+		return (sucursal << 32) | producto;
+	}
+
+	/**
+	 * @param llave - Una llave empacada
+	 * @return La llave con sus bits mezclados, para que las parejas consecutivas no caigan en posiciones consecutivas
+	 */
+	private static int dispersar (long llave)
+	{
+		llave ^= llave >>> 33;
+		llave *= 0xff51afd7ed558ccdL;
+		llave ^= llave >>> 33;
+		return (int) llave;
+	}
+
+	/**
+	 * Reemplaza todos los precios por los leídos de la base de datos. Los cambios que lleguen mientras tanto esperan a que termine
+	 * @param lector - La lectura de los precios, uno por pareja. Retorna null si falla
+	 * @return true si se pudieron leer
+	 */
+	public boolean cargar (Supplier<List<Vende>> lector)
+	{
+		escritura.lock ();
+		try
+		{
+			List<Vende> vendes = lector.get ();
+			if (vendes == null)
+			{
+				return false;
+			}
+			Tabla nueva = new Tabla (darCapacidad (vendes.size ()));
+			for (Vende vende : vendes)
+			{
+				poner (nueva, vende);
+			}
+			long sello = candado.writeLock ();
+			tabla = nueva;
+			candado.unlockWrite (sello);
+			return true;
+		}
+		finally
+		{
+			escritura.unlock ();
+		}
+	}
+
+	/**
+	 * Registra los precios de tuplas VENDE ya confirmadas en la base de datos
+	 * @param vendes - Las tuplas
+	 */
+	public void agregar (List<Vende> vendes)
+	{
+		escritura.lock ();
+		try
+		{
+			long sello = candado.writeLock ();
+			try
+			{
+				for (Vende vende : vendes)
+				{
+					if (tabla.llena ())
+					{
+						tabla = tabla.crecer ();
+					}
+					poner (tabla, vende);
+				}
+			}
+			finally
+			{
+				candado.unlockWrite (sello);
+			}
+		}
+		finally
+		{
+			escritura.unlock ();
+		}
+	}
+
+	/**
+	 * Pone los precios de una tupla VENDE en una tabla, que debe tener espacio. Las tuplas con identificadores que no son positivos se ignoran
+	 * @param actual - La tabla
+	 * @param vende - La tupla
+	 */
+	private static void poner (Tabla actual, Vende vende)
+	{
+		long sucursal = vende.getSucursal ();
+		long producto = vende.getProducto ();
+		if (cabeEnLlave (sucursal, producto))
+		{
+			actual.poner (darLlave (sucursal, producto), vende.getPrecioUnitario (), vende.getPrecioPorUnidadMedida ());
+		}
+		else if (sucursal > 0 && producto > 0)
+		{
+			actual.ponerDesbordada (sucursal, producto, vende.getPrecioUnitario (), vende.getPrecioPorUnidadMedida ());
+		}
+	}
+
+	/**
+	 * Olvida todos los precios, que ya no están en la base de datos
+	 */
+	public void limpiar ()
+	{
+		escritura.lock ();
+		try
+		{
+			long sello = candado.writeLock ();
+			tabla = new Tabla (darCapacidad (0));
+			candado.unlockWrite (sello);
+		}
+		finally
+		{
+			escritura.unlock ();
+		}
+	}
+
+	/**
+	 * @param sucursal - El identificador de una sucursal
+	 * @param producto - El identificador de un producto
+	 * @param unitario - true para el precio unitario, false para el precio por unidad de medida
+	 * @return El precio del producto en la sucursal. SIN_PRECIO si la sucursal no vende el producto
+	 */
+	private double darPrecio (long sucursal, long producto, boolean unitario)
+	{
+		long sello = candado.tryOptimisticRead ();
+		double resp = leer (tabla, sucursal, producto, unitario);
+		if (!candado.validate (sello))
+		{
+			sello = candado.readLock ();
+			try
+			{
+				resp = leer (tabla, sucursal, producto, unitario);
+			}
+			finally
+			{
+				candado.unlockRead (sello);
+			}
+		}
+		return resp;
+	}
+
+	/**
+	 * @param actual - La tabla
+	 * @param sucursal - El identificador de la sucursal
+	 * @param producto - El identificador del producto
+	 * @param unitario - true para el precio unitario, false para el precio por unidad de medida
+	 * @return El precio de la pareja. SIN_PRECIO si no está
+	 */
+	private static double leer (Tabla actual, long sucursal, long producto, boolean unitario)
+	{
+		if (!cabeEnLlave (sucursal, producto))
+		{
+			double [] precios = actual.desbordadas.get (Arrays.asList (sucursal, producto));
+			if (precios == null)
+			{
+				return SIN_PRECIO;
+			}
+			return unitario ? precios [0] : precios [1];
+		}
+		int i = actual.buscar (darLlave (sucursal, producto));
+		if (actual.llaves [i] == VACIA)
+		{
+			return SIN_PRECIO;
+		}
+		return unitario ? actual.preciosUnitarios [i] : actual.preciosUnidadMedida [i];
+	}
+
+	/**
+	 * @param sucursal - El identificador de una sucursal
+	 * @param producto - El identificador de un producto
+	 * @return El precio unitario del producto en la sucursal. SIN_PRECIO si la sucursal no vende el producto
+	 */
+	public double darPrecioUnitario (long sucursal, long producto)
+	{
+		return darPrecio (sucursal, producto, true);
+	}
+
+	/**
+	 * @param sucursal - El identificador de una sucursal
+	 * @param producto - El identificador de un producto
+	 * @return El precio por unidad de medida del producto en la sucursal. SIN_PRECIO si la sucursal no vende el producto
+	 */
+	public double darPrecioUnidadMedida (long sucursal, long producto)
+	{
+		return darPrecio (sucursal, producto, false);
+	}
+
+	/**
+	 * Cotiza una canasta con los precios unitarios de una sucursal, sin crear objetos
+	 * @param sucursal - El identificador de la sucursal
+	 * @param productos - Los identificadores de los productos de la canasta
+	 * @param cantidades - La cantidad de cada producto, en el mismo orden
+	 * @param costos - Arreglo del mismo tamaño donde queda el costo de cada línea (cantidad por precio unitario). Puede ser null
+	 * @return El costo total de la canasta. SIN_PRECIO si la sucursal no vende alguno de los productos
+	 */
+	public double cotizar (long sucursal, long [] productos, int [] cantidades, double [] costos)
+	{
+		long sello = candado.tryOptimisticRead ();
+		double resp = cotizar (tabla, sucursal, productos, cantidades, costos);
+		if (!candado.validate (sello))
+		{
+			sello = candado.readLock ();
+			try
+			{
+				resp = cotizar (tabla, sucursal, productos, cantidades, costos);
+			}
+			finally
+			{
+				candado.unlockRead (sello);
+			}
+		}
+		return resp;
+	}
+
+	/**
+	 * @param actual - La tabla
+	 * @param sucursal - El identificador de la sucursal
+	 * @param productos - Los identificadores de los productos de la canasta
+	 * @param cantidades - La cantidad de cada producto, en el mismo orden
+	 * @param costos - Arreglo donde queda el costo de cada línea. Puede ser null
+	 * @return El costo total de la canasta. SIN_PRECIO si la sucursal no vende alguno de los productos
+	 */
+	private static double cotizar (Tabla actual, long sucursal, long [] productos, int [] cantidades, double [] costos)
+	{
+		double total = 0;
+		for (int i = 0; i < productos.length; i++)
+		{
+			double precio = leer (actual, sucursal, productos [i], true);
+			if (precio == SIN_PRECIO)
+			{
+				return SIN_PRECIO;
+			}
+			double costo = precio * cantidades [i];
+			if (costos != null)
+			{
+				costos [i] = costo;
+			}
+			total += costo;
+		}
+		return total;
+	}
+
+	/**
+	 * @return El número de parejas con precio
+	 */
+	public int darTamano ()
+	{
+		Tabla actual = tabla;
+		return actual.tamano + actual.desbordadas.size ();
+	}
+
+	@Override
+	public String toString ()
+	{
+		Tabla actual = tabla;
+		return "TablaPrecios [parejas=" + actual.tamano + ", desbordadas=" + actual.desbordadas.size () + ", capacidad=" + actual.llaves.length + "]";
+	}
+}
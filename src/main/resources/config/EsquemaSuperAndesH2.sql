@@ -0,0 +1,208 @@
+--- Sentencias SQL para la creación del esquema de SuperAndes en una base de datos H2 embebida (modo Oracle)
+--- Corresponde a EsquemaSuperAndes.sql, con los mismos tipos de columnas, salvo por estas diferencias:
+---   - Las tablas A_BODEGA y A_ESTANTE que usa la aplicación, en lugar de A_ALMACENAMIENTO
+---   - A_FACTURA y A_TRANSACCION no están particionadas, porque H2 no tiene particiones: A_FACTURA_FECHA_IDX es un índice normal
+---   - La llave foránea fk_o_proveedor de A_OFRECEN referencia a A_PROVEEDOR, como lo supone la aplicación, y no a A_SUCURSAL
+--- Los identificadores de clientes, A_CLIENTE.ID y A_FACTURA.IDCLIENTE, son NUMBER en los dos esquemas. Una base de datos Oracle creada
+--- cuando eran VARCHAR2 se convierte con MigracionClientes.sql
+--- Todas las sentencias se pueden ejecutar más de una vez sobre la misma base de datos
+
+-- USO
+-- Lo ejecuta PersistenciaSuperAndes al iniciar, cuando la unidad de persistencia aparece en "unidadesEmbebidas" de TablasBD_A.json
+
+-- Creación del secuenciador
+CREATE SEQUENCE IF NOT EXISTS superandes_sequence;
+
+-- Creación de la tabla supermercado y especificación de sus restricciones.
+CREATE TABLE IF NOT EXISTS A_SUPERMERCADO
+   (NOMBRE VARCHAR2(255),
+   CONSTRAINT A_SUPERMERCADO_PK PRIMARY KEY (NOMBRE));
+
+-- Creación de la tabla SUCURSAL y especificación de sus restricciones
+CREATE TABLE IF NOT EXISTS A_SUCURSAL
+   (ID NUMBER,
+	NOMBRE VARCHAR2(255) NOT NULL,
+	CIUDAD VARCHAR2(255) NOT NULL,
+	DIRECCION VARCHAR2(255) NOT NULL,
+	SEGMENTOMERCADO VARCHAR2(255) NOT NULL,
+	TAMANO NUMBER NOT NULL,
+	SUPERMERCADO VARCHAR2(255) NOT NULL,
+	CONSTRAINT A_SUCURSAL_PK PRIMARY KEY (ID),
+	CONSTRAINT fk_s_supermercado FOREIGN KEY (supermercado) REFERENCES a_supermercado(nombre),
+	CONSTRAINT CK_S_TAMANO CHECK (tamano > 0));
+
+-- Creación de la tabla producto y especificación de sus restricciones.
+CREATE TABLE IF NOT EXISTS A_PRODUCTO
+   (ID NUMBER,
+	NOMBRE VARCHAR2(255) NOT NULL,
+	MARCA VARCHAR2(255) NOT NULL,
+	PRESENTACION VARCHAR2(255) NOT NULL,
+	CODIGOBARRAS VARCHAR2(255) NOT NULL,
+	UNIDADMEDIDA VARCHAR2(255) NOT NULL,
+	CATEGORIA VARCHAR2(255) NOT NULL,
+	TIPO VARCHAR2(255) NOT NULL,
+	CONSTRAINT A_PRODUCTO_PK PRIMARY KEY (ID));
+
+-- Creación de la tabla bodega y especificación de sus restricciones.
+CREATE TABLE IF NOT EXISTS A_BODEGA
+   (ID NUMBER,
+	CAPACIDADVOLUMEN NUMBER NOT NULL,
+	CAPACIDADPESO NUMBER NOT NULL,
+	PRODUCTO NUMBER NOT NULL,
+	SUCURSAL NUMBER NOT NULL,
+	EXISTENCIAS NUMBER NOT NULL,
+	CONSTRAINT A_BODEGA_PK PRIMARY KEY (ID),
+	CONSTRAINT fk_b_producto FOREIGN KEY (producto) REFERENCES a_producto(id),
+	CONSTRAINT fk_b_sucursal FOREIGN KEY (sucursal) REFERENCES a_sucursal(id),
+	CONSTRAINT CK_B_VOLUMEN CHECK (capacidadvolumen > 0),
+	CONSTRAINT CK_B_PESO CHECK (capacidadpeso > 0),
+	CONSTRAINT CK_B_EXISTENCIAS CHECK (existencias > -1));
+
+-- Creación de la tabla estante y especificación de sus restricciones.
+CREATE TABLE IF NOT EXISTS A_ESTANTE
+   (ID NUMBER,
+	CAPACIDADVOLUMEN NUMBER NOT NULL,
+	CAPACIDADPESO NUMBER NOT NULL,
+	PRODUCTO NUMBER NOT NULL,
+	SUCURSAL NUMBER NOT NULL,
+	NIVELABASTECIMIENTOBODEGA NUMBER NOT NULL,
+	EXISTENCIAS NUMBER NOT NULL,
+	CONSTRAINT A_ESTANTE_PK PRIMARY KEY (ID),
+	CONSTRAINT fk_e_producto FOREIGN KEY (producto) REFERENCES a_producto(id),
+	CONSTRAINT fk_e_sucursal FOREIGN KEY (sucursal) REFERENCES a_sucursal(id),
+	CONSTRAINT CK_E_VOLUMEN CHECK (capacidadvolumen > 0),
+	CONSTRAINT CK_E_PESO CHECK (capacidadpeso > 0),
+	CONSTRAINT CK_E_ABASTECIMIENTO CHECK (nivelabastecimientobodega > -1),
+	CONSTRAINT CK_E_EXISTENCIAS CHECK (existencias > -1));
+
+-- Creación de la tabla vende y especificación de sus restricciones.
+CREATE TABLE IF NOT EXISTS A_VENDE
+   (IDSUCURSAL NUMBER,
+	IDPRODUCTO NUMBER NOT NULL,
+	NIVELREORDEN NUMBER NOT NULL,
+	PRECIOUNITARIO NUMBER NOT NULL,
+	PRECIOUNIDADMEDIDA NUMBER NOT NULL,
+	CONSTRAINT A_VENDE_PK PRIMARY KEY (IDSUCURSAL, IDPRODUCTO, NIVELREORDEN, PRECIOUNITARIO, PRECIOUNIDADMEDIDA),
+	CONSTRAINT fk_v_sucursal FOREIGN KEY (idsucursal) REFERENCES a_sucursal(id),
+	CONSTRAINT fk_v_producto FOREIGN KEY (idproducto) REFERENCES a_producto(id),
+	CONSTRAINT CK_V_PRECIOU CHECK (preciounitario > 0),
+	CONSTRAINT CK_V_PRECIOM CHECK (preciounidadmedida > 0),
+	CONSTRAINT CK_V_NIVEL CHECK (nivelreorden > 0));
+
+-- Creación de la tabla proveedor y especificación de sus restricciones.
+CREATE TABLE IF NOT EXISTS A_PROVEEDOR
+   (NIT NUMBER,
+	NOMBRE VARCHAR2(255) NOT NULL,
+	CALIFICACION NUMBER NOT NULL,
+	CONSTRAINT A_PROVEEDOR_PK PRIMARY KEY (NIT),
+	CONSTRAINT CK_P_CALIFICACIONA CHECK (calificacion > 0),
+	CONSTRAINT CK_P_CALIFICACIONB CHECK (calificacion < 11));
+
+-- Creación de la tabla pedido y especificación de sus restricciones.
+CREATE TABLE IF NOT EXISTS A_PEDIDO
+   (ID NUMBER,
+	IDSUCURSAL NUMBER NOT NULL,
+	IDPROVEEDOR NUMBER NOT NULL,
+	FECHAENTREGA DATE NOT NULL,
+	ESTADOORDEN VARCHAR2(255) NOT NULL,
+	CALIFICACIONSERVICIO NUMBER,
+	COSTOTOTAL NUMBER NOT NULL,
+	CONSTRAINT A_PEDIDO_PK PRIMARY KEY (ID),
+	CONSTRAINT fk_ped_sucursal FOREIGN KEY (idsucursal) REFERENCES a_sucursal(id),
+	CONSTRAINT fk_ped_proveedor FOREIGN KEY (idproveedor) REFERENCES a_proveedor(nit),
+	CONSTRAINT CK_PED_CALIFICACION CHECK (calificacionservicio > 0),
+	CONSTRAINT CK_PED_COSTO CHECK (costototal > 0),
+	CONSTRAINT CK_PED_ESTADO CHECK (estadoorden IN ('pendiente', 'entregado')));
+
+-- Creación de la tabla subpedido y especificación de sus restricciones.
+CREATE TABLE IF NOT EXISTS A_SUBPEDIDO
+   (IDPEDIDO NUMBER NOT NULL,
+	IDPRODUCTO NUMBER NOT NULL,
+	CANTIDAD NUMBER NOT NULL,
+	COSTO NUMBER NOT NULL,
+	CONSTRAINT A_SUBPEDIDO_PK PRIMARY KEY (IDPEDIDO, IDPRODUCTO, CANTIDAD, COSTO),
+	CONSTRAINT fk_sub_producto FOREIGN KEY (idproducto) REFERENCES a_producto(id),
+	CONSTRAINT fk_sub_pedido FOREIGN KEY (idpedido) REFERENCES a_pedido(id),
+	CONSTRAINT CK_SUB_COSTO CHECK (costo > 0),
+	CONSTRAINT CK_SUB_CANTIDAD CHECK (cantidad > 0));
+
+-- Creación de la tabla ofrecen y especificación de sus restricciones.
+CREATE TABLE IF NOT EXISTS A_OFRECEN
+   (IDPRODUCTO NUMBER,
+	IDPROVEEDOR NUMBER NOT NULL,
+	COSTO NUMBER NOT NULL,
+	CONSTRAINT A_OFRECE_PK PRIMARY KEY (IDPRODUCTO, IDPROVEEDOR, COSTO),
+	CONSTRAINT fk_o_producto FOREIGN KEY (idproducto) REFERENCES a_producto(id),
+	CONSTRAINT fk_o_proveedor FOREIGN KEY (idproveedor) REFERENCES a_proveedor(nit),
+	CONSTRAINT CK_O_COSTO CHECK (costo > 0));
+
+-- Creación de la tabla cliente y especificación de sus restricciones.
+CREATE TABLE IF NOT EXISTS A_CLIENTE
+   (ID NUMBER,
+	NOMBRE VARCHAR2(255) NOT NULL,
+	CORREO VARCHAR2(255) NOT NULL,
+	DIRECCION VARCHAR2(255),
+	TIPO VARCHAR2(255) NOT NULL,
+	CONSTRAINT A_CLIENTE_PK PRIMARY KEY (ID),
+	CONSTRAINT CK_CLIENTE_TIPO CHECK (tipo IN ('persona', 'empresa')));
+
+-- Creación de la tabla factura y especificación de sus restricciones.
+CREATE TABLE IF NOT EXISTS A_FACTURA
+   (NUMERO NUMBER,
+	FECHA DATE NOT NULL,
+	IDCLIENTE NUMBER NOT NULL,
+	SUCURSAL NUMBER NOT NULL,
+	CONSTRAINT A_FACTURA_PK PRIMARY KEY (NUMERO),
+	CONSTRAINT fk_factura_cliente FOREIGN KEY (idcliente) REFERENCES a_cliente(id),
+	CONSTRAINT fk_factura_sucursal FOREIGN KEY (sucursal) REFERENCES a_sucursal(id));
+
+-- H2 no tiene particiones: las consultas por rango de fechas usan este índice, y un mes se desprende borrando sus tuplas
+CREATE INDEX IF NOT EXISTS A_FACTURA_FECHA_IDX ON A_FACTURA (FECHA, SUCURSAL);
+
+-- Creación de la tabla promoción y especificación de sus restricciones.
+CREATE TABLE IF NOT EXISTS A_PROMOCION
+   (ID NUMBER,
+	IDPRODUCTO NUMBER NOT NULL,
+	PRECIO NUMBER NOT NULL,
+	DESCRIPCION VARCHAR2(255) NOT NULL,
+	FECHAINICIO DATE NOT NULL,
+	FECHAFIN DATE NOT NULL,
+	UNIDADESDISPONIBLES NUMBER NOT NULL,
+	CONSTRAINT A_PROMOCION_PK PRIMARY KEY (ID),
+	CONSTRAINT fk_prom_producto FOREIGN KEY (idproducto) REFERENCES a_producto(id),
+	CONSTRAINT CK_PROM_PRECIO CHECK (precio > 0),
+	CONSTRAINT CK_PROM_UNIDADES CHECK (unidadesdisponibles > -1));
+
+-- Creación de la tabla transaccion y especificación de sus restricciones.
+CREATE TABLE IF NOT EXISTS A_TRANSACCION
+   (IDPRODUCTO NUMBER NOT NULL,
+	CANTIDAD NUMBER NOT NULL,
+	NUMEROFACTURA NUMBER NOT NULL,
+	COSTO NUMBER NOT NULL,
+	PROMOCION NUMBER,
+	CONSTRAINT A_TRANSACCION_PK PRIMARY KEY (IDPRODUCTO, CANTIDAD, NUMEROFACTURA),
+	CONSTRAINT fk_t_producto FOREIGN KEY (idproducto) REFERENCES a_producto(id),
+	CONSTRAINT fk_tr_numfactura FOREIGN KEY (numerofactura) REFERENCES a_factura(numero),
+	CONSTRAINT CK_TR_CANTIDAD CHECK (cantidad > 0),
+	CONSTRAINT CK_TR_COSTO CHECK (costo > 0),
+	CONSTRAINT fk_tr_factura FOREIGN KEY (promocion) REFERENCES a_promocion(id));
+
+-- La paginación de transacciones recorre las tuplas en orden de factura, producto y cantidad, que no es el de la llave primaria
+CREATE INDEX IF NOT EXISTS A_TRANSACCION_FACTURA_IDX ON A_TRANSACCION (NUMEROFACTURA, IDPRODUCTO, CANTIDAD);
+
+-- Creación de la tabla del acumulado de ventas diarias por sucursal y especificación de sus restricciones.
+CREATE TABLE IF NOT EXISTS A_VENTASDIARIAS
+   (SUCURSAL NUMBER NOT NULL,
+	DIA DATE NOT NULL,
+	VENTAS NUMBER NOT NULL,
+	TRANSACCIONES NUMBER NOT NULL,
+	CONSTRAINT A_VENTASDIARIAS_PK PRIMARY KEY (SUCURSAL, DIA),
+	CONSTRAINT fk_vd_sucursal FOREIGN KEY (sucursal) REFERENCES a_sucursal(id));
+
+-- Creación de la tabla de control, con los valores que la aplicación conserva entre ejecuciones.
+CREATE TABLE IF NOT EXISTS A_CONTROL
+   (CLAVE VARCHAR2(255) NOT NULL,
+	VALOR NUMBER NOT NULL,
+	CONSTRAINT A_CONTROL_PK PRIMARY KEY (CLAVE));
+
+COMMIT;
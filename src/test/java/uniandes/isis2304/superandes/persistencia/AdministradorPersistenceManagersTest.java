@@ -0,0 +1,97 @@
+package uniandes.isis2304.superandes.persistencia;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+
+import javax.jdo.PersistenceManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.gson.JsonObject;
+
+import uniandes.isis2304.superandes.negocio.SuperAndes;
+
+/**
+ * Pruebas del administrador de PersistenceManager sobre la unidad de persistencia embebida, con un pool de un solo cupo: cuando
+ * el pool está agotado, los métodos del manejador de persistencia retornan null o -1, como lo documentan, en lugar de lanzar la
+ * excepción del administrador
+ * @author n.cobos, jf.torresp
+ */
+public class AdministradorPersistenceManagersTest
+{
+	/* ****************************************************************
+	 * 			Constantes
+	 *****************************************************************/
+	/**
+	 * Tiempo máximo de espera por un cupo del pool, en milisegundos
+	 */
+	private static final int ESPERA_MAXIMA = 200;
+
+	/* ****************************************************************
+	 * 			Atributos
+	 *****************************************************************/
+	/**
+	 * La fachada de la aplicación
+	 */
+	private SuperAndes superandes;
+
+	/**
+	 * El manejador de persistencia
+	 */
+	private PersistenciaSuperAndes pp;
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	/**
+	 * Borra la base de datos, con un pool de un solo cupo
+	 * @throws IOException - Si no se puede leer la configuración
+	 */
+	@Before
+	public void crearDatos () throws IOException
+	{
+		JsonObject config = ConfiguracionPruebas.leerConfiguracion ();
+		config.getAsJsonObject ("poolConexiones").addProperty ("maxActivos", 1);
+		config.getAsJsonObject ("poolConexiones").addProperty ("esperaMaximaMs", ESPERA_MAXIMA);
+		superandes = new SuperAndes (config);
+		pp = PersistenciaSuperAndes.getInstance ();
+		superandes.limpiarSuperAndes ();
+	}
+
+	/**
+	 * Borra la base de datos y cierra la unidad de persistencia
+	 */
+	@After
+	public void cerrar ()
+	{
+		superandes.limpiarSuperAndes ();
+		superandes.cerrarUnidadPersistencia ();
+	}
+
+	/**
+	 * Con el único cupo ocupado, las operaciones transaccionales retornan null o -1 después de la espera máxima, y vuelven a funcionar
+	 * cuando se libera el cupo
+	 */
+	@Test
+	public void poolAgotadoRetornaElValorDeError ()
+	{
+		PersistenceManager ocupado = pp.darAdministradorPersistenceManagers ().abrir ("ocupado");
+		try
+		{
+			assertNull (pp.adicionarSupermercado ("agotado"));
+			assertEquals (-1, pp.eliminarSupermercadoPorNombre ("agotado"));
+			assertNull (pp.adicionarCliente ("cliente", "cliente@superandes.com", "persona", "Calle 1"));
+		}
+		finally
+		{
+			ocupado.close ();
+		}
+		assertNotNull (pp.adicionarSupermercado ("disponible"));
+		assertEquals (1, pp.eliminarSupermercadoPorNombre ("disponible"));
+	}
+}
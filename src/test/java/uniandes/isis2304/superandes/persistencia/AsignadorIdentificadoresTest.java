@@ -0,0 +1,215 @@
+package uniandes.isis2304.superandes.persistencia;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.jdo.PersistenceManager;
+import javax.jdo.PersistenceManagerFactory;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import uniandes.isis2304.superandes.negocio.SuperAndes;
+
+/**
+ * Pruebas de AsignadorIdentificadores sobre la unidad de persistencia embebida: los rangos [hi * tamaño, (hi + 1) * tamaño) que se
+ * reservan con cada valor del secuenciador, la entrega concurrente sin repetidos y el rechazo de un tamaño de bloque distinto del
+ * registrado en la tabla de CONTROL.
+ * Cada prueba usa nombres de tabla propios, porque la base de datos embebida y la tabla de CONTROL sobreviven entre pruebas
+ * @author n.cobos, jf.torresp
+ */
+public class AsignadorIdentificadoresTest
+{
+	/* ****************************************************************
+	 * 			Atributos
+	 *****************************************************************/
+	/**
+	 * La fachada de la aplicación
+	 */
+	private SuperAndes superandes;
+
+	/**
+	 * El manejador de persistencia
+	 */
+	private PersistenciaSuperAndes pp;
+
+	/**
+	 * La fábrica de manejadores de persistencia de la unidad embebida
+	 */
+	private PersistenceManagerFactory pmf;
+
+	/**
+	 * Prefijo de los nombres de tabla de la prueba, distinto en cada prueba
+	 */
+	private String prefijo;
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	/**
+	 * Abre la unidad de persistencia
+	 * @throws IOException - Si no se puede leer la configuración
+	 */
+	@Before
+	public void abrir () throws IOException
+	{
+		superandes = new SuperAndes (ConfiguracionPruebas.leerConfiguracion ());
+		pp = PersistenciaSuperAndes.getInstance ();
+		try (PersistenceManager pm = pp.darAdministradorPersistenceManagers ().abrir ())
+		{
+			pmf = pm.getPersistenceManagerFactory ();
+		}
+		prefijo = "PRUEBA_" + System.nanoTime () + "_";
+	}
+
+	/**
+	 * Cierra la unidad de persistencia
+	 */
+	@After
+	public void cerrar ()
+	{
+		superandes.cerrarUnidadPersistencia ();
+	}
+
+	/**
+	 * Cada bloque es [hi * tamaño, (hi + 1) * tamaño) con hi el siguiente valor del secuenciador, se entrega completo y en orden, y un
+	 * valor que otra instancia toma del secuenciador entre dos bloques no se traslapa con ellos
+	 */
+	@Test
+	public void reservaRangosDelSecuenciador ()
+	{
+		String tabla = prefijo + "BLOQUE";
+		AsignadorIdentificadores asignador = crear (Collections.singletonMap (tabla, 10), 3);
+		assertEquals (10, asignador.darTamanoBloque (tabla));
+		assertEquals (3, asignador.darTamanoBloque (prefijo + "OTRA"));
+
+		long hi = nextval () + 1;
+		for (int i = 0; i < 20; i++)
+		{
+			assertEquals (hi * 10 + i, asignador.siguiente (tabla));
+		}
+		// Otra instancia toma el valor siguiente del secuenciador
+		long ajeno = nextval ();
+		assertEquals (hi + 2, ajeno);
+		assertEquals ((ajeno + 1) * 10, asignador.siguiente (tabla));
+
+		// Las tablas sin tamaño configurado usan el de defecto, con su propio bloque
+		long hiOtra = nextval () + 1;
+		for (int i = 0; i < 3; i++)
+		{
+			assertEquals (hiOtra * 3 + i, asignador.siguiente (prefijo + "OTRA"));
+		}
+		assertEquals ((ajeno + 1) * 10 + 1, asignador.siguiente (tabla));
+	}
+
+	/**
+	 * Varios hilos piden identificadores de la misma tabla a la vez: no se repite ninguno y sólo se reservan los bloques necesarios,
+	 * porque un bloque se entrega completo antes de reservar el siguiente
+	 * @throws Exception - Si falla alguno de los hilos
+	 */
+	@Test
+	public void entregaConcurrenteSinRepetidos () throws Exception
+	{
+		String tabla = prefijo + "CONCURRENTE";
+		int tamano = 7;
+		int hilos = 8;
+		int porHilo = 500;
+		AsignadorIdentificadores asignador = crear (Collections.singletonMap (tabla, tamano), 1);
+		ExecutorService ejecutor = Executors.newFixedThreadPool (hilos);
+		List<Future<List<Long>>> entregados = new ArrayList<Future<List<Long>>> ();
+		try
+		{
+			for (int h = 0; h < hilos; h++)
+			{
+				entregados.add (ejecutor.submit (() ->
+				{
+					List<Long> ids = new ArrayList<Long> ();
+					for (int i = 0; i < porHilo; i++)
+					{
+						ids.add (asignador.siguiente (tabla));
+					}
+					return ids;
+				}));
+			}
+			Set<Long> ids = new HashSet<Long> ();
+			Set<Long> bloques = new HashSet<Long> ();
+			for (Future<List<Long>> entregadosHilo : entregados)
+			{
+				for (long id : entregadosHilo.get ())
+				{
+					assertTrue ("Identificador repetido: " + id, ids.add (id));
+					bloques.add (id / tamano);
+				}
+			}
+			assertEquals (hilos * porHilo, ids.size ());
+			assertEquals ((hilos * porHilo + tamano - 1) / tamano, bloques.size ());
+		}
+		finally
+		{
+			ejecutor.shutdownNow ();
+		}
+	}
+
+	/**
+	 * El primer uso de una tabla registra su tamaño de bloque en CONTROL; otro asignador con un tamaño distinto para la tabla se rechaza
+	 * al reservar su primer bloque, y uno con el mismo tamaño sigue numerando después de los bloques ya reservados
+	 */
+	@Test
+	public void rechazaUnTamanoDistintoDelRegistrado ()
+	{
+		String tabla = prefijo + "CONTROL";
+		long primero = crear (Collections.singletonMap (tabla, 10), 1).siguiente (tabla);
+		try
+		{
+			crear (Collections.singletonMap (tabla, 20), 1).siguiente (tabla);
+			fail ("Se aceptó un tamaño de bloque distinto del registrado");
+		}
+		catch (IllegalStateException e)
+		{
+			assertTrue (e.getMessage (), e.getMessage ().contains ("bloques de 10"));
+		}
+		// Un tamaño de defecto distinto no importa si la tabla tiene su tamaño configurado
+		long siguiente = crear (Collections.singletonMap (tabla, 10), 5).siguiente (tabla);
+		assertTrue (siguiente >= primero + 10);
+		assertEquals (0, siguiente % 10);
+	}
+
+	/**
+	 * @param tamanos - El tamaño del bloque de cada tabla
+	 * @param tamanoDefecto - El tamaño del bloque de las demás tablas
+	 * @return Un asignador nuevo sobre la unidad de persistencia de la prueba
+	 */
+	private AsignadorIdentificadores crear (Map<String, Integer> tamanos, int tamanoDefecto)
+	{
+		return new AsignadorIdentificadores (pmf, new SQLUtil (pp), new SQLControl (pp), tamanos, tamanoDefecto);
+	}
+
+	/**
+	 * @return El siguiente valor del secuenciador, como lo tomaría otra instancia de la aplicación
+	 */
+	private long nextval ()
+	{
+		PersistenceManager pm = pmf.getPersistenceManager ();
+		try
+		{
+			return new SQLUtil (pp).nextval (pm);
+		}
+		finally
+		{
+			pm.close ();
+		}
+	}
+}
@@ -0,0 +1,694 @@
+package uniandes.isis2304.superandes.persistencia;
+
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import org.apache.log4j.Logger;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import uniandes.isis2304.superandes.negocio.Bodega;
+import uniandes.isis2304.superandes.negocio.Cliente;
+import uniandes.isis2304.superandes.negocio.Estante;
+import uniandes.isis2304.superandes.negocio.Producto;
+import uniandes.isis2304.superandes.negocio.Sucursal;
+import uniandes.isis2304.superandes.negocio.SuperAndes;
+import uniandes.isis2304.superandes.negocio.Transaccion;
+
+/**
+ * Mediciones de rendimiento de PersistenciaSuperAndes y SuperAndes sobre la unidad de persistencia embebida SuperAndesH2.
+ * Cada medición se repite para cada tamaño de los datos y cada número de hilos. Como en JMH, se hacen primero unas
+ * iteraciones de calentamiento que se descartan y luego unas iteraciones de medición de duración fija, en las que cada hilo
+ * ejecuta la operación tantas veces como puede. Se reporta el throughput (operaciones por segundo, con su error al 99.9%)
+ * y los percentiles de la latencia de cada operación.
+ * Los resultados se escriben en JSON, con la estructura de los resultados de JMH, o en CSV si el archivo de salida termina en .csv,
+ * para compararlos entre versiones.
+ * Las operaciones que modifican los datos se miden igual que las demás, pero después de medirlas se vuelven a cargar los datos,
+ * para que cada medición vea exactamente el tamaño de datos con el que se reporta. Los diarios de inventario y de ventas
+ * se escriben en un directorio temporal que se borra al terminar.
+ *
+ * Uso, desde la raíz del proyecto y con el driver de H2 en el classpath:
+ * java uniandes.isis2304.superandes.persistencia.BenchmarkSuperAndes tamanos=1000,10000 hilos=1,4 calentamiento=2 mediciones=5
+ * duracionMs=1000 operaciones=darClientePorId,registrarVenta salida=benchmark-superandes.json
+ * Todos los argumentos son opcionales. Está en el paquete de persistencia para medir también el generador de identificadores
+ *
+ * @author n.cobos, jf.torresp
+ */
+public class BenchmarkSuperAndes
+{
+	/* ****************************************************************
+	 * 			Constantes
+	 *****************************************************************/
+	/**
+	 * Logger para escribir la traza de la ejecución
+	 */
+	private static Logger log = Logger.getLogger(BenchmarkSuperAndes.class.getName());
+
+	/**
+	 * Ruta al archivo de configuración de los nombres de tablas de la base de datos
+	 */
+	private static final String CONFIG_TABLAS_A = "./src/main/resources/config/TablasBD_A.json";
+
+	/**
+	 * La unidad de persistencia embebida sobre la que se mide
+	 */
+	private static final String UNIDAD_EMBEBIDA = "SuperAndesH2";
+
+	/**
+	 * Número de líneas, todas de productos distintos, de cada venta de registrarVenta
+	 */
+	private static final int LINEAS_VENTA = 5;
+
+	/**
+	 * Existencias iniciales de cada estante, suficientes para que ninguna venta falle por falta de producto
+	 */
+	private static final int EXISTENCIAS_INICIALES = 1000000000;
+
+	/**
+	 * Percentiles de latencia que se reportan
+	 */
+	private static final double [] PERCENTILES = {0, 50, 90, 95, 99, 99.9, 99.99, 100};
+
+	/**
+	 * Las operaciones que insertan tuplas en la base de datos. Después de medir cada una se vuelven a cargar los datos
+	 */
+	private static final List<String> OPERACIONES_QUE_MODIFICAN = Arrays.asList ("adicionarCliente", "registrarVenta");
+
+	/**
+	 * Valores críticos de la t de Student a dos colas para un intervalo de confianza del 99.9%, para 1 a 20 grados de libertad
+	 */
+	private static final double [] T_999 = {636.619, 31.599, 12.924, 8.610, 6.869, 5.959, 5.408, 5.041, 4.781, 4.587,
+			4.437, 4.318, 4.221, 4.140, 4.073, 4.015, 3.965, 3.922, 3.883, 3.850};
+
+	/* ****************************************************************
+	 * 			Atributos
+	 *****************************************************************/
+	/**
+	 * Los tamaños de los datos: número de clientes, productos, bodegas y estantes
+	 */
+	private int [] tamanos = {1000, 10000};
+
+	/**
+	 * Los números de hilos concurrentes
+	 */
+	private int [] hilos = {1, 4};
+
+	/**
+	 * Número de iteraciones de calentamiento, cuyos resultados se descartan
+	 */
+	private int calentamiento = 2;
+
+	/**
+	 * Número de iteraciones de medición
+	 */
+	private int mediciones = 5;
+
+	/**
+	 * Duración de cada iteración, en milisegundos
+	 */
+	private long duracionMs = 1000;
+
+	/**
+	 * Los nombres de las operaciones a medir. Vacío para todas
+	 */
+	private List<String> seleccion = new ArrayList<String> ();
+
+	/**
+	 * El archivo donde se escriben los resultados
+	 */
+	private String salida = "benchmark-superandes.json";
+
+	/**
+	 * La clase de negocio que se mide
+	 */
+	private SuperAndes superandes;
+
+	/**
+	 * El manejador de persistencia que se mide
+	 */
+	private PersistenciaSuperAndes pp;
+
+	/**
+	 * El identificador de la sucursal de los datos
+	 */
+	private long idSucursal;
+
+	/**
+	 * Los identificadores de los clientes de los datos
+	 */
+	private long [] idClientes;
+
+	/**
+	 * Los identificadores de los productos de los datos
+	 */
+	private long [] idProductos;
+
+	/**
+	 * Los identificadores de las bodegas de los datos
+	 */
+	private long [] idBodegas;
+
+	/**
+	 * Contador para los nombres de los clientes insertados durante las mediciones
+	 */
+	private final AtomicLong insertados = new AtomicLong ();
+
+	/**
+	 * El directorio temporal donde escriben los diarios de la persistencia durante las mediciones
+	 */
+	private Path directorioTemporal;
+
+	/**
+	 * Una operación que se mide. Retorna null si falló
+	 */
+	private interface Operacion
+	{
+		/**
+		 * @param azar - El generador de números aleatorios del hilo
+		 * @return El resultado de la operación. null si falló
+		 */
+		Object ejecutar (ThreadLocalRandom azar);
+	}
+
+	/**
+	 * Las mediciones de un hilo en una iteración
+	 */
+	private static class MuestraHilo
+	{
+		/**
+		 * Número de operaciones completadas
+		 */
+		private long operaciones;
+
+		/**
+		 * Número de operaciones que retornaron null o lanzaron una excepción
+		 */
+		private long errores;
+
+		/**
+		 * La latencia de cada operación, en nanosegundos. Sólo las primeras numLatencias posiciones son válidas
+		 */
+		private long [] latencias = new long [1024];
+
+		/**
+		 * Número de latencias registradas
+		 */
+		private int numLatencias;
+
+		/**
+		 * Registra la latencia de una operación
+		 * @param nanos - La latencia, en nanosegundos
+		 */
+		private void registrar (long nanos)
+		{
+			if (numLatencias == latencias.length)
+			{
+				latencias = Arrays.copyOf (latencias, latencias.length * 2);
+			}
+			latencias [numLatencias++] = nanos;
+		}
+	}
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	/**
+	 * Punto de entrada
+	 * @param args - Argumentos nombre=valor: tamanos, hilos, calentamiento, mediciones, duracionMs, operaciones y salida
+	 * @throws Exception - Si no se puede leer la configuración o escribir los resultados
+	 */
+	public static void main (String [] args) throws Exception
+	{
+		BenchmarkSuperAndes benchmark = new BenchmarkSuperAndes ();
+		benchmark.leerArgumentos (args);
+		benchmark.ejecutar ();
+	}
+
+	/**
+	 * Lee los argumentos de la línea de comandos
+	 * @param args - Argumentos nombre=valor
+	 */
+	private void leerArgumentos (String [] args)
+	{
+		for (String arg : args)
+		{
+			int igual = arg.indexOf ('=');
+			if (igual < 0)
+			{
+				throw new IllegalArgumentException ("Argumento inválido, se esperaba nombre=valor: " + arg);
+			}
+			String nombre = arg.substring (0, igual);
+			String valor = arg.substring (igual + 1);
+			switch (nombre)
+			{
+			case "tamanos":
+				tamanos = Arrays.stream (valor.split (",")).mapToInt (Integer::parseInt).toArray ();
+				break;
+			case "hilos":
+				hilos = Arrays.stream (valor.split (",")).mapToInt (Integer::parseInt).toArray ();
+				break;
+			case "calentamiento":
+				calentamiento = Integer.parseInt (valor);
+				break;
+			case "mediciones":
+				mediciones = Integer.parseInt (valor);
+				break;
+			case "duracionMs":
+				duracionMs = Long.parseLong (valor);
+				break;
+			case "operaciones":
+				seleccion = Arrays.asList (valor.split (","));
+				break;
+			case "salida":
+				salida = valor;
+				break;
+			default:
+				throw new IllegalArgumentException ("Argumento desconocido: " + nombre);
+			}
+		}
+		if (mediciones < 2 || calentamiento < 0 || duracionMs < 1)
+		{
+			throw new IllegalArgumentException ("Se necesitan al menos dos mediciones y una duración positiva");
+		}
+	}
+
+	/**
+	 * Ejecuta todas las mediciones y escribe los resultados
+	 * @throws IOException - Si no se puede leer la configuración o escribir los resultados
+	 */
+	private void ejecutar () throws IOException
+	{
+		directorioTemporal = Files.createTempDirectory ("benchmark-superandes");
+		JsonArray resultados = new JsonArray ();
+		try
+		{
+			JsonObject tableConfig = leerConfiguracion ();
+			superandes = new SuperAndes (tableConfig);
+			pp = PersistenciaSuperAndes.getInstance (tableConfig);
+			try
+			{
+				for (int tamano : tamanos)
+				{
+					cargarDatos (tamano);
+					Map<String, Operacion> operaciones = crearOperaciones ();
+					for (int numHilos : hilos)
+					{
+						for (Map.Entry<String, Operacion> operacion : operaciones.entrySet ())
+						{
+							if (seleccion.isEmpty () || seleccion.contains (operacion.getKey ()))
+							{
+								resultados.add (medir (operacion.getKey (), operacion.getValue (), tamano, numHilos));
+								if (OPERACIONES_QUE_MODIFICAN.contains (operacion.getKey ()))
+								{
+									cargarDatos (tamano);
+								}
+							}
+						}
+					}
+				}
+			}
+			finally
+			{
+				superandes.cerrarUnidadPersistencia ();
+			}
+		}
+		finally
+		{
+			borrarDirectorioTemporal ();
+		}
+		escribirResultados (resultados);
+	}
+
+	/**
+	 * @return La configuración de TablasBD_A.json, con la unidad de persistencia embebida y los diarios en el directorio temporal
+	 * @throws IOException - Si no se puede leer el archivo
+	 */
+	private JsonObject leerConfiguracion () throws IOException
+	{
+		try (InputStreamReader reader = new InputStreamReader (new FileInputStream (CONFIG_TABLAS_A), StandardCharsets.UTF_8))
+		{
+			JsonObject tableConfig = new Gson ().fromJson (reader, JsonObject.class);
+			tableConfig.addProperty ("unidadPersistencia", UNIDAD_EMBEBIDA);
+			if (tableConfig.has ("inventario"))
+			{
+				tableConfig.getAsJsonObject ("inventario").addProperty ("diario", directorioTemporal.resolve ("inventario").toString ());
+			}
+			if (tableConfig.has ("diarioVentas"))
+			{
+				tableConfig.getAsJsonObject ("diarioVentas").addProperty ("directorio", directorioTemporal.resolve ("ventas").toString ());
+			}
+			return tableConfig;
+		}
+	}
+
+	/**
+	 * Borra el directorio temporal de los diarios con todo su contenido
+	 * @throws IOException - Si no se puede borrar algún archivo
+	 */
+	private void borrarDirectorioTemporal () throws IOException
+	{
+		try (Stream<Path> archivos = Files.walk (directorioTemporal))
+		{
+			for (Path archivo : archivos.sorted (Comparator.reverseOrder ()).toArray (Path []::new))
+			{
+				Files.delete (archivo);
+			}
+		}
+	}
+
+	/**
+	 * Borra la base de datos y carga, en lotes, una sucursal con tamano clientes, productos, bodegas y estantes
+	 * @param tamano - El número de clientes, productos, bodegas y estantes
+	 */
+	private void cargarDatos (int tamano)
+	{
+		log.info ("Cargando datos de tamaño " + tamano);
+		superandes.limpiarSuperAndes ();
+		String supermercado = "bench-" + tamano;
+		superandes.adicionarSupermercado (supermercado);
+		Sucursal sucursal = superandes.adicionarSucursal ("bench-" + tamano, "Bogotá", "Calle " + tamano, "medio", tamano, supermercado);
+		idSucursal = sucursal.getId ();
+
+		List<Cliente> clientes = new ArrayList<Cliente> (tamano);
+		List<Producto> productos = new ArrayList<Producto> (tamano);
+		for (int i = 0; i < tamano; i++)
+		{
+			clientes.add (new Cliente (0, "cliente-" + i, "Calle " + i, "cliente" + i + "@superandes.com", "persona"));
+			productos.add (new Producto (0, "producto-" + i, "marca-" + (i % 50), "unidad", String.format ("77%011d", i), "unidad", "categoria-" + (i % 20), "tipo-" + (i % 5)));
+		}
+		pp.adicionarCliente (clientes);
+		pp.adicionarProducto (productos);
+		idClientes = clientes.stream ().mapToLong (Cliente::getId).toArray ();
+		idProductos = productos.stream ().mapToLong (Producto::getId).toArray ();
+
+		List<Bodega> bodegas = new ArrayList<Bodega> (tamano);
+		List<Estante> estantes = new ArrayList<Estante> (tamano);
+		for (long idProducto : idProductos)
+		{
+			bodegas.add (new Bodega (0, 1000, 1000, EXISTENCIAS_INICIALES, idProducto, idSucursal));
+			estantes.add (new Estante (0, 100, 100, EXISTENCIAS_INICIALES, idProducto, idSucursal, 10));
+		}
+		pp.adicionarBodega (bodegas);
+		pp.adicionarEstante (estantes);
+		idBodegas = bodegas.stream ().mapToLong (Bodega::getId).toArray ();
+	}
+
+	/**
+	 * @return Las operaciones que se miden, por nombre
+	 */
+	private Map<String, Operacion> crearOperaciones ()
+	{
+		AsignadorIdentificadores asignador = pp.darAsignadorIdentificadores ();
+		String tablaFactura = pp.darTablaFactura ();
+		Map<String, Operacion> resp = new LinkedHashMap<String, Operacion> ();
+		resp.put ("adicionarCliente", azar -> {
+			long n = insertados.incrementAndGet ();
+			return superandes.adicionarCliente ("nuevo-" + n, "nuevo" + n + "@superandes.com", "persona", "Carrera " + n);
+		});
+		resp.put ("generarIdentificador", azar -> asignador.siguiente (tablaFactura));
+		resp.put ("darClientePorId", azar -> superandes.darClientePorId (idClientes [azar.nextInt (idClientes.length)]));
+		resp.put ("darBodegaPorId", azar -> superandes.darBodegaPorId (idBodegas [azar.nextInt (idBodegas.length)]));
+		resp.put ("darClientes", azar -> superandes.darClientes ());
+		resp.put ("recorrerVOClientes", azar -> superandes.recorrerVOClientes ().count ());
+		resp.put ("darVOProducto", azar -> superandes.darVOProducto ());
+		resp.put ("registrarVenta", azar -> superandes.registrarVenta (idClientes [azar.nextInt (idClientes.length)], idSucursal, crearLineasVenta (azar)));
+		return resp;
+	}
+
+	/**
+	 * @param azar - El generador de números aleatorios del hilo
+	 * @return LINEAS_VENTA líneas de venta de productos distintos escogidos al azar, de una unidad cada una
+	 */
+	private List<Transaccion> crearLineasVenta (ThreadLocalRandom azar)
+	{
+		List<Transaccion> resp = new ArrayList<Transaccion> (LINEAS_VENTA);
+		int inicio = azar.nextInt (idProductos.length);
+		for (int i = 0; i < LINEAS_VENTA && i < idProductos.length; i++)
+		{
+			resp.add (new Transaccion (0, 1, 1000 + i, idProductos [(inicio + i) % idProductos.length], 0));
+		}
+		return resp;
+	}
+
+	/**
+	 * Mide una operación con un número de hilos dado: ejecuta las iteraciones de calentamiento y de medición
+	 * @param nombre - El nombre de la operación
+	 * @param operacion - La operación
+	 * @param tamano - El tamaño de los datos
+	 * @param numHilos - El número de hilos que ejecutan la operación al tiempo
+	 * @return El resultado, en el formato de JMH
+	 */
+	private JsonObject medir (String nombre, Operacion operacion, int tamano, int numHilos)
+	{
+		log.info ("Midiendo " + nombre + " con " + tamano + " datos y " + numHilos + " hilos");
+		ExecutorService ejecutor = Executors.newFixedThreadPool (numHilos);
+		try
+		{
+			for (int i = 0; i < calentamiento; i++)
+			{
+				ejecutarIteracion (ejecutor, operacion, numHilos, false);
+			}
+			double [] throughputs = new double [mediciones];
+			List<MuestraHilo> muestras = new ArrayList<MuestraHilo> ();
+			long errores = 0;
+			for (int i = 0; i < mediciones; i++)
+			{
+				long inicio = System.nanoTime ();
+				List<MuestraHilo> iteracion = ejecutarIteracion (ejecutor, operacion, numHilos, true);
+				double segundos = (System.nanoTime () - inicio) / 1e9;
+				long operaciones = 0;
+				for (MuestraHilo muestra : iteracion)
+				{
+					operaciones += muestra.operaciones;
+					errores += muestra.errores;
+				}
+				throughputs [i] = operaciones / segundos;
+				muestras.addAll (iteracion);
+			}
+			return crearResultado (nombre, tamano, numHilos, throughputs, muestras, errores);
+		}
+		finally
+		{
+			ejecutor.shutdownNow ();
+		}
+	}
+
+	/**
+	 * Ejecuta una iteración: cada hilo ejecuta la operación repetidamente durante duracionMs
+	 * @param ejecutor - El pool de hilos
+	 * @param operacion - La operación
+	 * @param numHilos - El número de hilos
+	 * @param registrarLatencias - Indica si se registra la latencia de cada operación
+	 * @return Las mediciones de cada hilo
+	 */
+	private List<MuestraHilo> ejecutarIteracion (ExecutorService ejecutor, Operacion operacion, int numHilos, boolean registrarLatencias)
+	{
+		long fin = System.nanoTime () + duracionMs * 1000000L;
+		Callable<MuestraHilo> tarea = () -> {
+			ThreadLocalRandom azar = ThreadLocalRandom.current ();
+			MuestraHilo muestra = new MuestraHilo ();
+			long ahora = System.nanoTime ();
+			while (ahora - fin < 0)
+			{
+				Object resultado;
+				try
+				{
+					resultado = operacion.ejecutar (azar);
+				}
+				catch (RuntimeException e)
+				{
+					resultado = null;
+				}
+				long despues = System.nanoTime ();
+				muestra.operaciones++;
+				if (resultado == null)
+				{
+					muestra.errores++;
+				}
+				if (registrarLatencias)
+				{
+					muestra.registrar (despues - ahora);
+				}
+				ahora = despues;
+			}
+			return muestra;
+		};
+
+		List<Future<MuestraHilo>> futuros = new ArrayList<Future<MuestraHilo>> ();
+		for (int i = 0; i < numHilos; i++)
+		{
+			futuros.add (ejecutor.submit (tarea));
+		}
+		List<MuestraHilo> resp = new ArrayList<MuestraHilo> ();
+		try
+		{
+			for (Future<MuestraHilo> futuro : futuros)
+			{
+				resp.add (futuro.get ());
+			}
+		}
+		catch (Exception e)
+		{
+			throw new IllegalStateException ("Falló una iteración de la medición", e);
+		}
+		return resp;
+	}
+
+	/**
+	 * Arma el resultado de una medición, con la estructura de los resultados en JSON de JMH
+	 * @param nombre - El nombre de la operación
+	 * @param tamano - El tamaño de los datos
+	 * @param numHilos - El número de hilos
+	 * @param throughputs - Las operaciones por segundo de cada iteración de medición
+	 * @param muestras - Las mediciones de cada hilo en todas las iteraciones de medición
+	 * @param errores - El número de operaciones que fallaron
+	 * @return El resultado en JSON
+	 */
+	private JsonObject crearResultado (String nombre, int tamano, int numHilos, double [] throughputs, List<MuestraHilo> muestras, long errores)
+	{
+		double media = Arrays.stream (throughputs).average ().orElse (0);
+		double varianza = Arrays.stream (throughputs).map (x -> (x - media) * (x - media)).sum () / (throughputs.length - 1);
+		double error = valorCriticoT (throughputs.length - 1) * Math.sqrt (varianza / throughputs.length);
+
+		JsonObject parametros = new JsonObject ();
+		parametros.addProperty ("tamanoDatos", String.valueOf (tamano));
+
+		JsonObject primaria = new JsonObject ();
+		primaria.addProperty ("score", media);
+		primaria.addProperty ("scoreError", error);
+		JsonArray intervalo = new JsonArray ();
+		intervalo.add (media - error);
+		intervalo.add (media + error);
+		primaria.add ("scoreConfidence", intervalo);
+		primaria.addProperty ("scoreUnit", "ops/s");
+		JsonArray crudos = new JsonArray ();
+		for (double throughput : throughputs)
+		{
+			crudos.add (throughput);
+		}
+		JsonArray bifurcaciones = new JsonArray ();
+		bifurcaciones.add (crudos);
+		primaria.add ("rawData", bifurcaciones);
+
+		int total = 0;
+		for (MuestraHilo muestra : muestras)
+		{
+			total += muestra.numLatencias;
+		}
+		long [] latencias = new long [total];
+		int pos = 0;
+		for (MuestraHilo muestra : muestras)
+		{
+			System.arraycopy (muestra.latencias, 0, latencias, pos, muestra.numLatencias);
+			pos += muestra.numLatencias;
+		}
+		Arrays.sort (latencias);
+		JsonObject latencia = new JsonObject ();
+		latencia.addProperty ("score", total == 0 ? 0 : Arrays.stream (latencias).average ().orElse (0) / 1000);
+		latencia.addProperty ("scoreUnit", "us/op");
+		JsonObject percentiles = new JsonObject ();
+		for (double percentil : PERCENTILES)
+		{
+			int posicion = Math.max (0, Math.min (total - 1, (int) Math.ceil (percentil / 100 * total) - 1));
+			percentiles.addProperty (String.valueOf (percentil), total == 0 ? 0 : latencias [posicion] / 1000.0);
+		}
+		latencia.add ("scorePercentiles", percentiles);
+		latencia.addProperty ("sampleCount", total);
+
+		JsonObject fallas = new JsonObject ();
+		fallas.addProperty ("score", errores);
+		fallas.addProperty ("scoreUnit", "#");
+
+		JsonObject secundarias = new JsonObject ();
+		secundarias.add ("latencia", latencia);
+		secundarias.add ("errores", fallas);
+
+		JsonObject resp = new JsonObject ();
+		resp.addProperty ("jvm", System.getProperty ("java.home"));
+		resp.addProperty ("jdkVersion", System.getProperty ("java.version"));
+		resp.addProperty ("vmName", System.getProperty ("java.vm.name"));
+		resp.addProperty ("benchmark", BenchmarkSuperAndes.class.getName () + "." + nombre);
+		resp.addProperty ("mode", "thrpt");
+		resp.addProperty ("threads", numHilos);
+		resp.addProperty ("forks", 0);
+		resp.addProperty ("warmupIterations", calentamiento);
+		resp.addProperty ("warmupTime", duracionMs + " ms");
+		resp.addProperty ("measurementIterations", mediciones);
+		resp.addProperty ("measurementTime", duracionMs + " ms");
+		resp.add ("params", parametros);
+		resp.add ("primaryMetric", primaria);
+		resp.add ("secondaryMetrics", secundarias);
+		log.info (nombre + " [tamanoDatos=" + tamano + ", hilos=" + numHilos + "]: " + String.format ("%.1f ± %.1f ops/s", media, error) + ", p99 "
+				+ percentiles.get ("99.0").getAsDouble () + " us, " + errores + " errores");
+		return resp;
+	}
+
+	/**
+	 * @param gradosLibertad - Los grados de libertad. Debe ser positivo
+	 * @return El valor crítico de la t de Student para un intervalo de confianza del 99.9%. Para más de 20 grados de libertad
+	 * se usa el valor del siguiente número tabulado menor, que da un intervalo algo más amplio
+	 */
+	private static double valorCriticoT (int gradosLibertad)
+	{
+		if (gradosLibertad <= T_999.length)
+		{
+			return T_999 [gradosLibertad - 1];
+		}
+		return gradosLibertad < 30 ? T_999 [T_999.length - 1] : gradosLibertad < 60 ? 3.646 : gradosLibertad < 120 ? 3.460 : 3.373;
+	}
+
+	/**
+	 * Escribe los resultados en el archivo de salida: en CSV si su nombre termina en .csv, si no en JSON
+	 * @param resultados - Los resultados de todas las mediciones
+	 * @throws IOException - Si no se puede escribir el archivo
+	 */
+	private void escribirResultados (JsonArray resultados) throws IOException
+	{
+		try (Writer out = new FileWriter (salida))
+		{
+			if (salida.endsWith (".csv"))
+			{
+				out.write ("\"Benchmark\",\"Mode\",\"Threads\",\"Samples\",\"Score\",\"Score Error (99.9%)\",\"Unit\",\"Param: tamanoDatos\",\"p50 (us)\",\"p99 (us)\",\"p99.9 (us)\",\"Errores\"\n");
+				for (int i = 0; i < resultados.size (); i++)
+				{
+					JsonObject resultado = resultados.get (i).getAsJsonObject ();
+					JsonObject primaria = resultado.getAsJsonObject ("primaryMetric");
+					JsonObject secundarias = resultado.getAsJsonObject ("secondaryMetrics");
+					JsonObject percentiles = secundarias.getAsJsonObject ("latencia").getAsJsonObject ("scorePercentiles");
+					out.write ("\"" + resultado.get ("benchmark").getAsString () + "\",\"thrpt\"," + resultado.get ("threads").getAsInt () + "," + mediciones
+							+ "," + primaria.get ("score").getAsDouble () + "," + primaria.get ("scoreError").getAsDouble () + ",\"ops/s\","
+							+ resultado.getAsJsonObject ("params").get ("tamanoDatos").getAsString () + "," + percentiles.get ("50.0").getAsDouble ()
+							+ "," + percentiles.get ("99.0").getAsDouble () + "," + percentiles.get ("99.9").getAsDouble () + ","
+							+ secundarias.getAsJsonObject ("errores").get ("score").getAsLong () + "\n");
+				}
+			}
+			else
+			{
+				new GsonBuilder ().setPrettyPrinting ().create ().toJson (resultados, out);
+			}
+		}
+		log.info ("Resultados escritos en " + salida);
+	}
+}
@@ -0,0 +1,402 @@
+package uniandes.isis2304.superandes.persistencia;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import uniandes.isis2304.superandes.negocio.Producto;
+import uniandes.isis2304.superandes.negocio.SuperAndes;
+
+/**
+ * Pruebas de BuscadorProductos sobre la unidad de persistencia embebida, contra una búsqueda exhaustiva que califica cada producto
+ * con cada palabra: coincidencias exactas, por prefijo y con errores de escritura, productos eliminados y compactación del índice
+ * @author n.cobos, jf.torresp
+ */
+public class BuscadorProductosTest
+{
+	/* ****************************************************************
+	 * 			Constantes
+	 *****************************************************************/
+	/**
+	 * Las palabras de los nombres de los productos de prueba. Varias comparten prefijos o están a pocas letras de otras
+	 */
+	private static final String [] NOMBRES = {"leche", "lechuga", "arroz", "arequipe", "queso", "quesillo", "manzana", "mantequilla", "pan",
+			"panela", "aceite", "aceituna", "chocolate", "chocolatina", "cafe", "galletas", "jabon", "detergente", "entera", "deslactosada",
+			"integral", "organico", "familiar", "casa", "caja"};
+
+	/**
+	 * Las marcas de los productos de prueba
+	 */
+	private static final String [] MARCAS = {"alpina", "colanta", "nestle", "zenu", "diana", "casa luker"};
+
+	/**
+	 * Las categorías de los productos de prueba
+	 */
+	private static final String [] CATEGORIAS = {"lacteos", "granos", "aseo", "panaderia", "bebidas"};
+
+	/**
+	 * Los tipos de los productos de prueba
+	 */
+	private static final String [] TIPOS = {"perecedero", "no perecedero", "congelado"};
+
+	/**
+	 * Las presentaciones de los productos de prueba
+	 */
+	private static final String [] PRESENTACIONES = {"bolsa 1000 g", "caja 500 g", "botella 1 l", "paquete familiar"};
+
+	/**
+	 * Los pesos de cada campo, en el orden del buscador: nombre, marca, categoría, tipo y presentación
+	 */
+	private static final float [] PESOS_CAMPOS = {1.0f, 0.8f, 0.6f, 0.5f, 0.4f};
+
+	/**
+	 * Los pesos de una coincidencia aproximada, por el número de letras de diferencia
+	 */
+	private static final float [] PESOS_APROXIMADA = {0f, 0.5f, 0.3f};
+
+	/**
+	 * El número máximo de palabras de una búsqueda
+	 */
+	private static final int MAX_PALABRAS = 32;
+
+	/**
+	 * El número de resultados pedidos en cada búsqueda
+	 */
+	private static final int RESULTADOS = 10;
+
+	/* ****************************************************************
+	 * 			Atributos
+	 *****************************************************************/
+	/**
+	 * La fachada de la aplicación
+	 */
+	private SuperAndes superandes;
+
+	/**
+	 * El manejador de persistencia
+	 */
+	private PersistenciaSuperAndes pp;
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	/**
+	 * Borra la base de datos
+	 * @throws IOException - Si no se puede leer la configuración
+	 */
+	@Before
+	public void crearDatos () throws IOException
+	{
+		superandes = new SuperAndes (ConfiguracionPruebas.leerConfiguracion ());
+		pp = PersistenciaSuperAndes.getInstance ();
+		superandes.limpiarSuperAndes ();
+	}
+
+	/**
+	 * Borra la base de datos y cierra la unidad de persistencia
+	 */
+	@After
+	public void cerrar ()
+	{
+		superandes.limpiarSuperAndes ();
+		superandes.cerrarUnidadPersistencia ();
+	}
+
+	/**
+	 * Compara la distancia de edición acotada con la distancia completa de la definición
+	 */
+	@Test
+	public void distanciaCoincideConReferencia ()
+	{
+		Random azar = new Random (20);
+		for (int i = 0; i < 20000; i++)
+		{
+			String a = darTextoAlAzar (azar, "abc", azar.nextInt (9));
+			String b = darTextoAlAzar (azar, "abc", azar.nextInt (9));
+			int maximo = azar.nextInt (4);
+			assertEquals (a + " " + b + " " + maximo, Math.min (darDistancia (a, b), maximo + 1), BuscadorProductos.darDistancia (a, b, maximo));
+		}
+	}
+
+	/**
+	 * Verifica que los términos quedan en minúsculas, sin tildes y partidos en letras y dígitos
+	 */
+	@Test
+	public void normalizaLosTerminos ()
+	{
+		assertEquals (Arrays.asList ("cafe", "aguila", "500g", "x2"), BuscadorProductos.darTerminos ("  Caf\u00e9 \u00c1GUILA-500g (x2) "));
+		assertTrue (BuscadorProductos.darTerminos (" -- ").isEmpty ());
+		assertTrue (BuscadorProductos.darTerminos (null).isEmpty ());
+	}
+
+	/**
+	 * Adiciona productos en la base de datos y compara búsquedas al azar con la búsqueda exhaustiva: con el índice que se lee en la
+	 * primera búsqueda, después de adicionar más productos y de eliminar algunos, y con un índice nuevo que lee todo de la base de datos
+	 */
+	@Test
+	public void coincideConBusquedaExhaustiva ()
+	{
+		Random azar = new Random (21);
+		List<Producto> referencia = new ArrayList<Producto> ();
+		referencia.addAll (adicionar (azar, 150));
+		verificar (pp.darBuscadorProductos (), referencia, azar, 200);
+		// Los productos siguientes se aplican sobre el índice ya leído
+		referencia.addAll (adicionar (azar, 150));
+		verificar (pp.darBuscadorProductos (), referencia, azar, 200);
+
+		for (int i = 0; i < 50; i++)
+		{
+			Producto eliminado = referencia.remove (azar.nextInt (referencia.size ()));
+			assertEquals (1, pp.eliminarProductoPorId (eliminado.getId ()));
+		}
+		verificar (pp.darBuscadorProductos (), referencia, azar, 200);
+		verificar (new BuscadorProductos (pp), referencia, azar, 200);
+	}
+
+	/**
+	 * Agrega y reemplaza muchos productos en memoria y elimina la mayoría, de manera que el índice se vuelve a armar sin ellos, y compara
+	 * búsquedas al azar con la búsqueda exhaustiva
+	 */
+	@Test
+	public void compactaLosEliminados ()
+	{
+		Random azar = new Random (22);
+		BuscadorProductos buscador = new BuscadorProductos (pp);
+		// La primera búsqueda lee la base de datos, que está vacía
+		assertTrue (buscador.buscar ("leche", RESULTADOS).isEmpty ());
+
+		Map<Long, Producto> referencia = new HashMap<Long, Producto> ();
+		for (long id = 1; id <= 3000; id++)
+		{
+			referencia.put (id, darProductoAlAzar (azar, id));
+		}
+		buscador.agregar (new ArrayList<Producto> (referencia.values ()));
+		// Reemplaza algunos: los términos anteriores ya no deben encontrarlos
+		List<Producto> reemplazos = new ArrayList<Producto> ();
+		for (long id = 1; id <= 3000; id += 7)
+		{
+			reemplazos.add (darProductoAlAzar (azar, id));
+			referencia.put (id, reemplazos.get (reemplazos.size () - 1));
+		}
+		buscador.agregar (reemplazos);
+		verificar (buscador, new ArrayList<Producto> (referencia.values ()), azar, 100);
+
+		for (long id = 1; id <= 3000; id++)
+		{
+			if (id % 3 != 0)
+			{
+				buscador.eliminar (id);
+				referencia.remove (id);
+			}
+		}
+		verificar (buscador, new ArrayList<Producto> (referencia.values ()), azar, 100);
+	}
+
+	/**
+	 * Adiciona en la base de datos, en un lote, productos al azar
+	 * @param azar - El generador de números al azar
+	 * @param cantidad - El número de productos
+	 * @return Los productos adicionados, con su identificador
+	 */
+	private List<Producto> adicionar (Random azar, int cantidad)
+	{
+		List<Producto> nuevos = new ArrayList<Producto> ();
+		for (int i = 0; i < cantidad; i++)
+		{
+			nuevos.add (darProductoAlAzar (azar, 0));
+		}
+		assertTrue (pp.adicionarProducto (nuevos) != null);
+		return nuevos;
+	}
+
+	/**
+	 * @param azar - El generador de números al azar
+	 * @param id - El identificador del producto
+	 * @return Un producto con un nombre de una a tres palabras y los demás campos al azar
+	 */
+	private static Producto darProductoAlAzar (Random azar, long id)
+	{
+		StringBuilder nombre = new StringBuilder (darPalabraAlAzar (azar, NOMBRES));
+		for (int palabras = azar.nextInt (3); palabras > 0; palabras--)
+		{
+			nombre.append (' ').append (darPalabraAlAzar (azar, NOMBRES));
+		}
+		return new Producto (id, nombre.toString (), darPalabraAlAzar (azar, MARCAS), darPalabraAlAzar (azar, PRESENTACIONES),
+				"77" + azar.nextInt (1000000000), "unidad", darPalabraAlAzar (azar, CATEGORIAS), darPalabraAlAzar (azar, TIPOS));
+	}
+
+	/**
+	 * Compara búsquedas al azar en el buscador con la búsqueda exhaustiva sobre los productos de referencia. Cada búsqueda tiene de
+	 * una a tres palabras, cada una completa, cortada o con un error de escritura
+	 * @param buscador - El buscador
+	 * @param referencia - Los productos vigentes
+	 * @param azar - El generador de números al azar
+	 * @param busquedas - El número de búsquedas
+	 */
+	private static void verificar (BuscadorProductos buscador, List<Producto> referencia, Random azar, int busquedas)
+	{
+		String [] [] campos = {NOMBRES, MARCAS, CATEGORIAS, TIPOS, PRESENTACIONES};
+		for (int i = 0; i < busquedas; i++)
+		{
+			StringBuilder texto = new StringBuilder ();
+			for (int palabras = 1 + azar.nextInt (3); palabras > 0; palabras--)
+			{
+				String palabra = BuscadorProductos.darTerminos (darPalabraAlAzar (azar, campos [azar.nextInt (campos.length)])).get (0);
+				int cambio = azar.nextInt (4);
+				if (cambio == 1)
+				{
+					palabra = palabra.substring (0, 1 + azar.nextInt (palabra.length ()));
+				}
+				else if (cambio == 2)
+				{
+					int posicion = azar.nextInt (palabra.length ());
+					palabra = palabra.substring (0, posicion) + (char) ('a' + azar.nextInt (26)) + palabra.substring (posicion + 1);
+				}
+				else if (cambio == 3)
+				{
+					int posicion = azar.nextInt (palabra.length () + 1);
+					palabra = palabra.substring (0, posicion) + (char) ('a' + azar.nextInt (26)) + palabra.substring (posicion);
+				}
+				texto.append (palabra).append (' ');
+			}
+			assertEquals (texto.toString (), buscarExhaustivamente (referencia, texto.toString (), RESULTADOS),
+					darIdentificadores (buscador.buscar (texto.toString (), RESULTADOS)));
+		}
+	}
+
+	/**
+	 * Califica cada producto con cada palabra del texto, con el mejor de sus términos, como lo hace el buscador
+	 * @param productos - Los productos vigentes
+	 * @param texto - El texto buscado
+	 * @param n - El número máximo de resultados
+	 * @return Los identificadores de los n mejores productos, del mejor al peor
+	 */
+	private static List<Long> buscarExhaustivamente (List<Producto> productos, String texto, int n)
+	{
+		List<String> palabras = BuscadorProductos.darTerminos (texto);
+		Map<Producto, Float> puntajes = new HashMap<Producto, Float> ();
+		for (Producto producto : productos)
+		{
+			// El campo más importante en que aparece cada término del producto
+			Map<String, Integer> terminos = new HashMap<String, Integer> ();
+			String [] textos = {producto.getNombre (), producto.getMarca (), producto.getCategoria (), producto.getTipo (), producto.getPresentacion ()};
+			for (int c = textos.length - 1; c >= 0; c--)
+			{
+				for (String termino : BuscadorProductos.darTerminos (textos [c]))
+				{
+					terminos.put (termino, c);
+				}
+			}
+			float puntaje = 0;
+			for (String palabra : palabras.subList (0, Math.min (palabras.size (), MAX_PALABRAS - 1)))
+			{
+				float mejor = 0;
+				for (Map.Entry<String, Integer> termino : terminos.entrySet ())
+				{
+					mejor = Math.max (mejor, darPeso (palabra, termino.getKey ()) * PESOS_CAMPOS [termino.getValue ()]);
+				}
+				if (mejor > 0)
+				{
+					puntaje += MAX_PALABRAS + mejor;
+				}
+			}
+			if (puntaje > 0)
+			{
+				puntajes.put (producto, puntaje);
+			}
+		}
+		return puntajes.entrySet ().stream ()
+				.sorted (Comparator.comparing ((Map.Entry<Producto, Float> e) -> e.getValue ()).reversed ().thenComparingLong (e -> e.getKey ().getId ()))
+				.limit (n).map (e -> e.getKey ().getId ()).collect (Collectors.toList ());
+	}
+
+	/**
+	 * @param palabra - Una palabra de la búsqueda
+	 * @param termino - Un término de un producto
+	 * @return El peso de la coincidencia: exacta, por prefijo o con hasta una letra de diferencia (dos desde ocho letras). 0 si no coinciden
+	 */
+	private static float darPeso (String palabra, String termino)
+	{
+		if (termino.startsWith (palabra))
+		{
+			return termino.length () == palabra.length () ? 1.0f : 0.7f;
+		}
+		int maxDistancia = palabra.length () >= 8 ? 2 : palabra.length () >= 4 ? 1 : 0;
+		int distancia = darDistancia (palabra, termino);
+		return distancia <= maxDistancia ? PESOS_APROXIMADA [distancia] : 0;
+	}
+
+	/**
+	 * @param a - Un texto
+	 * @param b - Otro texto
+	 * @return La distancia de edición entre los textos, por la definición recursiva con memoria
+	 */
+	private static int darDistancia (String a, String b)
+	{
+		int [] [] distancias = new int [a.length () + 1] [b.length () + 1];
+		for (int i = 0; i <= a.length (); i++)
+		{
+			for (int j = 0; j <= b.length (); j++)
+			{
+				if (i == 0 || j == 0)
+				{
+					distancias [i] [j] = i + j;
+				}
+				else
+				{
+					int sustitucion = distancias [i - 1] [j - 1] + (a.charAt (i - 1) == b.charAt (j - 1) ? 0 : 1);
+					distancias [i] [j] = Math.min (sustitucion, Math.min (distancias [i - 1] [j], distancias [i] [j - 1]) + 1);
+				}
+			}
+		}
+		return distancias [a.length ()] [b.length ()];
+	}
+
+	/**
+	 * @param azar - El generador de números al azar
+	 * @param alfabeto - Las letras posibles
+	 * @param longitud - La longitud del texto
+	 * @return Un texto al azar
+	 */
+	private static String darTextoAlAzar (Random azar, String alfabeto, int longitud)
+	{
+		StringBuilder resp = new StringBuilder ();
+		for (int i = 0; i < longitud; i++)
+		{
+			resp.append (alfabeto.charAt (azar.nextInt (alfabeto.length ())));
+		}
+		return resp.toString ();
+	}
+
+	/**
+	 * @param azar - El generador de números al azar
+	 * @param palabras - Las palabras posibles
+	 * @return Una de las palabras, al azar
+	 */
+	private static String darPalabraAlAzar (Random azar, String [] palabras)
+	{
+		return palabras [azar.nextInt (palabras.length)];
+	}
+
+	/**
+	 * @param productos - Unos productos
+	 * @return Sus identificadores, en el mismo orden
+	 */
+	private static List<Long> darIdentificadores (List<Producto> productos)
+	{
+		return productos.stream ().map (Producto::getId).collect (Collectors.toList ());
+	}
+}
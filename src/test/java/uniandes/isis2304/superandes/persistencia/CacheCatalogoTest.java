@@ -0,0 +1,198 @@
+package uniandes.isis2304.superandes.persistencia;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Pruebas de CacheCatalogo: la admisión TinyLFU contra la entrada menos recientemente usada, la reducción a la mitad de las
+ * frecuencias, el vencimiento de las entradas y el descarte de un valor cargado mientras se invalidaba el caché
+ * @author n.cobos, jf.torresp
+ */
+public class CacheCatalogoTest
+{
+	/* ****************************************************************
+	 * 			Constantes
+	 *****************************************************************/
+	/**
+	 * Tiempo de vida de las entradas que no deben vencer durante la prueba, en segundos
+	 */
+	private static final long TTL_LARGO = 300;
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	/**
+	 * Con el caché lleno de llaves pedidas varias veces, una ráfaga de llaves pedidas una sola vez no desplaza a ninguna, mientras
+	 * que con LRU las habría desplazado a todas
+	 */
+	@Test
+	public void lasLlavesFrecuentesResistenUnaRafaga ()
+	{
+		CacheCatalogo<Integer, Integer> cache = new CacheCatalogo<Integer, Integer> ("frecuentes", 100, TTL_LARGO);
+		for (int vez = 0; vez < 4; vez++)
+		{
+			for (int llave = 0; llave < 100; llave++)
+			{
+				cache.dar (llave, llave2 -> llave2);
+			}
+		}
+		for (int llave = 1000; llave < 1300; llave++)
+		{
+			cache.dar (llave, llave2 -> llave2);
+		}
+		assertEquals (300, cache.darRechazos ());
+		assertEquals (0, cache.darDesalojos ());
+
+		AtomicInteger cargas = new AtomicInteger ();
+		for (int llave = 0; llave < 100; llave++)
+		{
+			cache.dar (llave, llave2 -> cargas.incrementAndGet ());
+		}
+		assertEquals (0, cargas.get ());
+		assertEquals (100, cache.darTamano ());
+	}
+
+	/**
+	 * Una llave nueva se compara con la entrada menos recientemente usada, no con la menos frecuente: se rechaza mientras esa entrada
+	 * sea más frecuente, aunque otra entrada lo sea menos, y la desplaza cuando la menos recientemente usada es menos frecuente que ella
+	 */
+	@Test
+	public void admiteContraLaMenosRecientementeUsada ()
+	{
+		CacheCatalogo<String, String> cache = new CacheCatalogo<String, String> ("admision", 2, TTL_LARGO);
+		for (int i = 0; i < 5; i++)
+		{
+			cache.dar ("a", llave -> llave);
+		}
+		cache.dar ("b", llave -> llave);
+
+		// La menos recientemente usada es a, con frecuencia 5
+		cache.dar ("c", llave -> llave);
+		cache.dar ("c", llave -> llave);
+		assertEquals (2, cache.darRechazos ());
+		assertFalse (estaEnCache (cache, "c"));
+		assertTrue (estaEnCache (cache, "b"));
+
+		// Al usar a, la menos recientemente usada pasa a ser b, con frecuencia 2, y c, con frecuencia 4, la desplaza
+		cache.dar ("a", llave -> llave);
+		cache.dar ("c", llave -> llave);
+		assertEquals (1, cache.darDesalojos ());
+		assertTrue (estaEnCache (cache, "a"));
+		assertTrue (estaEnCache (cache, "c"));
+		assertFalse (estaEnCache (cache, "b"));
+	}
+
+	/**
+	 * Dos llaves que saturan sus contadores empatan y la nueva nunca desplaza a la que está en el caché; al reducir los contadores a la
+	 * mitad, a los 160 pedidos de un caché de capacidad 1, la nueva queda adelante en el pedido siguiente
+	 */
+	@Test
+	public void laReduccionDejaEntrarLlavesNuevas ()
+	{
+		CacheCatalogo<String, String> cache = new CacheCatalogo<String, String> ("reduccion", 1, TTL_LARGO);
+		for (int i = 0; i < 15; i++)
+		{
+			cache.dar ("a", llave -> llave);
+		}
+		for (int i = 0; i < 145; i++)
+		{
+			cache.dar ("b", llave -> llave);
+		}
+		assertEquals (0, cache.darDesalojos ());
+		assertEquals (145, cache.darRechazos ());
+
+		cache.dar ("b", llave -> llave);
+		assertEquals (1, cache.darDesalojos ());
+		assertTrue (estaEnCache (cache, "b"));
+	}
+
+	/**
+	 * Una entrada vencida se vuelve a cargar, y una entrada vencida se desplaza sin comparar frecuencias
+	 * @throws InterruptedException - Si se interrumpe la espera
+	 */
+	@Test
+	public void lasEntradasVencen () throws InterruptedException
+	{
+		CacheCatalogo<String, String> cache = new CacheCatalogo<String, String> ("vencimiento", 1, 1);
+		AtomicInteger cargas = new AtomicInteger ();
+		for (int i = 0; i < 10; i++)
+		{
+			cache.dar ("a", llave -> llave + cargas.incrementAndGet ());
+		}
+		assertEquals ("a1", cache.dar ("a", llave -> llave + cargas.incrementAndGet ()));
+		Thread.sleep (1100);
+
+		// b es menos frecuente que a, pero a ya venció
+		assertEquals ("b2", cache.dar ("b", llave -> llave + cargas.incrementAndGet ()));
+		assertEquals (1, cache.darVencimientos ());
+		assertEquals (0, cache.darRechazos ());
+		assertTrue (estaEnCache (cache, "b"));
+		Thread.sleep (1100);
+
+		assertEquals ("b3", cache.dar ("b", llave -> llave + cargas.incrementAndGet ()));
+		assertEquals (2, cache.darVencimientos ());
+	}
+
+	/**
+	 * Un valor que se termina de cargar después de invalidar el caché se entrega a quien lo pidió, pero no se guarda: el pedido
+	 * siguiente lee el valor nuevo
+	 * @throws Exception - Si falla la carga en el otro hilo
+	 */
+	@Test
+	public void descartaLaCargaAnteriorALaInvalidacion () throws Exception
+	{
+		CacheCatalogo<String, String> cache = new CacheCatalogo<String, String> ("generacion", 10, TTL_LARGO);
+		CountDownLatch cargando = new CountDownLatch (1);
+		CountDownLatch invalidado = new CountDownLatch (1);
+		ExecutorService hilo = Executors.newSingleThreadExecutor ();
+		try
+		{
+			Future<String> viejo = hilo.submit (() -> cache.dar ("a", llave ->
+			{
+				cargando.countDown ();
+				try
+				{
+					invalidado.await ();
+				}
+				catch (InterruptedException e)
+				{
+					Thread.currentThread ().interrupt ();
+				}
+				return "viejo";
+			}));
+			assertTrue (cargando.await (5, TimeUnit.SECONDS));
+			cache.invalidarTodo ();
+			invalidado.countDown ();
+			assertEquals ("viejo", viejo.get (5, TimeUnit.SECONDS));
+		}
+		finally
+		{
+			hilo.shutdownNow ();
+		}
+		assertEquals (0, cache.darTamano ());
+		assertEquals ("nuevo", cache.dar ("a", llave -> "nuevo"));
+		assertEquals ("nuevo", cache.dar ("a", llave -> "otro"));
+	}
+
+	/**
+	 * @param cache - El caché
+	 * @param llave - Una llave
+	 * @return true si la llave está en el caché. Cuenta como un pedido más de la llave
+	 */
+	private static boolean estaEnCache (CacheCatalogo<String, String> cache, String llave)
+	{
+		AtomicInteger cargas = new AtomicInteger ();
+		cache.dar (llave, llave2 -> cargas.incrementAndGet () > 0 ? null : llave2);
+		return cargas.get () == 0;
+	}
+}
@@ -0,0 +1,310 @@
+package uniandes.isis2304.superandes.persistencia;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import javax.jdo.JDODataStoreException;
+import javax.jdo.PersistenceManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.gson.JsonObject;
+
+import uniandes.isis2304.superandes.negocio.SuperAndes;
+import uniandes.isis2304.superandes.negocio.Transaccion;
+
+/**
+ * Pruebas de ColaTransacciones sobre la unidad de persistencia embebida: grupos que se cierran por tamaño y por tiempo, rechazo de
+ * inserciones con la cola llena, inserción por separado después de un grupo fallido, fallas inesperadas del manejador de persistencia
+ * y las inserciones pendientes al cerrar. El pool tiene un solo cupo, para poder detener al hilo escritor ocupándolo
+ * @author n.cobos, jf.torresp
+ */
+public class ColaTransaccionesTest
+{
+	/* ****************************************************************
+	 * 			Constantes
+	 *****************************************************************/
+	/**
+	 * Espera de los grupos que sólo se deben cerrar por tamaño o al cerrar la cola, en milisegundos
+	 */
+	private static final long ESPERA_LARGA = 60000;
+
+	/**
+	 * Espera de los grupos que se deben cerrar por tiempo, en milisegundos
+	 */
+	private static final long ESPERA_CORTA = 50;
+
+	/**
+	 * Tiempo máximo que se espera el resultado de una inserción, en milisegundos
+	 */
+	private static final long ESPERA_RESULTADO = 10000;
+
+	/* ****************************************************************
+	 * 			Atributos
+	 *****************************************************************/
+	/**
+	 * La fachada de la aplicación
+	 */
+	private SuperAndes superandes;
+
+	/**
+	 * El manejador de persistencia
+	 */
+	private PersistenciaSuperAndes pp;
+
+	/**
+	 * El número de la factura de prueba
+	 */
+	private long factura;
+
+	/**
+	 * El identificador del producto de prueba
+	 */
+	private long producto;
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	/**
+	 * Borra la base de datos, con un pool de un solo cupo, y crea una factura y un producto
+	 * @throws IOException - Si no se puede leer la configuración
+	 */
+	@Before
+	public void crearDatos () throws IOException
+	{
+		JsonObject config = ConfiguracionPruebas.leerConfiguracion ();
+		config.getAsJsonObject ("poolConexiones").addProperty ("maxActivos", 1);
+		superandes = new SuperAndes (config);
+		pp = PersistenciaSuperAndes.getInstance ();
+		superandes.limpiarSuperAndes ();
+		superandes.adicionarSupermercado ("cola");
+		long sucursal = superandes.adicionarSucursal ("cola", "Bogot\u00e1", "Calle 1", "medio", 100, "cola").getId ();
+		long cliente = superandes.adicionarCliente ("cliente", "cliente@superandes.com", "persona", "Calle 2").getId ();
+		factura = pp.adicionarFactura (new Timestamp (System.currentTimeMillis ()), cliente, sucursal).getNumero ();
+		producto = superandes.adicionarProducto ("producto", "marca", "unidad", "770001", "unidad", "categoria", "tipo").getId ();
+	}
+
+	/**
+	 * Borra la base de datos y cierra la unidad de persistencia
+	 */
+	@After
+	public void cerrar ()
+	{
+		superandes.limpiarSuperAndes ();
+		superandes.cerrarUnidadPersistencia ();
+	}
+
+	/**
+	 * Con una espera larga, los grupos se cierran al reunir tamanoGrupo transacciones
+	 * @throws Exception - Si una inserción falla o no termina
+	 */
+	@Test
+	public void agrupaPorTamano () throws Exception
+	{
+		ColaTransacciones cola = new ColaTransacciones (pp, 100, 3, ESPERA_LARGA, 1000);
+		List<CompletableFuture<Integer>> futuros = new ArrayList<CompletableFuture<Integer>> ();
+		for (int cantidad = 1; cantidad <= 6; cantidad++)
+		{
+			futuros.add (cola.encolar (transacciones (factura, cantidad)));
+		}
+		for (CompletableFuture<Integer> futuro : futuros)
+		{
+			assertEquals (1, (int) futuro.get (ESPERA_RESULTADO, TimeUnit.MILLISECONDS));
+		}
+		assertEquals (2, cola.darGrupos ());
+		assertEquals (6, cola.darTransacciones ());
+		cola.cerrar ();
+		assertEquals (6, contarTransacciones ());
+	}
+
+	/**
+	 * Con grupos grandes, un grupo se cierra esperaGrupoMs después de su primera inserción, con las que llegaron mientras tanto
+	 * @throws Exception - Si una inserción falla o no termina
+	 */
+	@Test
+	public void agrupaPorTiempo () throws Exception
+	{
+		ColaTransacciones cola = new ColaTransacciones (pp, 100, 1000, ESPERA_CORTA, 1000);
+		long inicio = System.nanoTime ();
+		assertEquals (1, (int) cola.encolar (transacciones (factura, 1)).get (ESPERA_RESULTADO, TimeUnit.MILLISECONDS));
+		assertTrue ("El grupo no se debe cerrar antes de la espera", System.nanoTime () - inicio >= TimeUnit.MILLISECONDS.toNanos (ESPERA_CORTA));
+		assertEquals (1, cola.darGrupos ());
+
+		CompletableFuture<Integer> primera = cola.encolar (transacciones (factura, 2, 3));
+		CompletableFuture<Integer> segunda = cola.encolar (transacciones (factura, 4));
+		assertEquals (2, (int) primera.get (ESPERA_RESULTADO, TimeUnit.MILLISECONDS));
+		assertEquals (1, (int) segunda.get (ESPERA_RESULTADO, TimeUnit.MILLISECONDS));
+		assertEquals (2, cola.darGrupos ());
+		assertEquals (4, cola.darTransacciones ());
+		cola.cerrar ();
+	}
+
+	/**
+	 * Con el hilo escritor detenido esperando el único cupo del pool, la cola se llena y las inserciones siguientes se rechazan después
+	 * de esperaMaximaMs. Al liberar el cupo, las inserciones aceptadas se confirman
+	 * @throws Exception - Si una inserción aceptada falla o no termina
+	 */
+	@Test
+	public void rechazaConLaColaLlena () throws Exception
+	{
+		ColaTransacciones cola = new ColaTransacciones (pp, 1, 1, 0, ESPERA_CORTA);
+		List<CompletableFuture<Integer>> aceptadas = new ArrayList<CompletableFuture<Integer>> ();
+		CompletableFuture<Integer> rechazada = null;
+		PersistenceManager ocupado = pp.darAdministradorPersistenceManagers ().abrir ("ocupado");
+		try
+		{
+			// El escritor toma a lo sumo una inserción y la siguiente ocupa el único cupo de la cola
+			for (int cantidad = 1; rechazada == null; cantidad++)
+			{
+				assertTrue ("La cola debe rechazar a m\u00e1s tardar la tercera inserci\u00f3n", cantidad <= 3);
+				CompletableFuture<Integer> futuro = cola.encolar (transacciones (factura, cantidad));
+				if (futuro.isDone ())
+				{
+					rechazada = futuro;
+				}
+				else
+				{
+					aceptadas.add (futuro);
+				}
+			}
+		}
+		finally
+		{
+			ocupado.close ();
+		}
+		assertEquals (RejectedExecutionException.class, darCausa (rechazada).getClass ());
+		assertEquals (1, cola.darRechazadas ());
+		for (CompletableFuture<Integer> futuro : aceptadas)
+		{
+			assertEquals (1, (int) futuro.get (ESPERA_RESULTADO, TimeUnit.MILLISECONDS));
+		}
+		cola.cerrar ();
+		assertEquals (aceptadas.size (), contarTransacciones ());
+	}
+
+	/**
+	 * Un grupo con una inserción inválida falla completo: sus inserciones se vuelven a intentar por separado y sólo la inválida falla
+	 * @throws Exception - Si una inserción válida falla o no termina
+	 */
+	@Test
+	public void insertaPorSeparadoDespuesDeUnGrupoFallido () throws Exception
+	{
+		ColaTransacciones cola = new ColaTransacciones (pp, 100, 3, ESPERA_LARGA, 1000);
+		CompletableFuture<Integer> primera = cola.encolar (transacciones (factura, 1));
+		CompletableFuture<Integer> invalida = cola.encolar (transacciones (factura + 1000, 2));
+		CompletableFuture<Integer> tercera = cola.encolar (transacciones (factura, 3));
+		assertEquals (1, (int) primera.get (ESPERA_RESULTADO, TimeUnit.MILLISECONDS));
+		assertEquals (1, (int) tercera.get (ESPERA_RESULTADO, TimeUnit.MILLISECONDS));
+		assertEquals (JDODataStoreException.class, darCausa (invalida).getClass ());
+		assertEquals ("S\u00f3lo se confirman las inserciones por separado", 2, cola.darGrupos ());
+		assertEquals (1, cola.darFallidas ());
+		cola.cerrar ();
+		assertEquals (2, contarTransacciones ());
+	}
+
+	/**
+	 * Si el manejador de persistencia lanza una excepción, las inserciones del grupo fallan con ella y el hilo escritor sigue con los
+	 * grupos siguientes. Sin manejador de persistencia, cada grupo lanza NullPointerException
+	 * @throws Exception - Si una inserción no termina
+	 */
+	@Test
+	public void sobreviveAUnaExcepcionDelGrupo () throws Exception
+	{
+		ColaTransacciones cola = new ColaTransacciones (null, 100, 2, ESPERA_LARGA, 1000);
+		List<CompletableFuture<Integer>> futuros = new ArrayList<CompletableFuture<Integer>> ();
+		for (int cantidad = 1; cantidad <= 4; cantidad++)
+		{
+			futuros.add (cola.encolar (transacciones (factura, cantidad)));
+		}
+		for (CompletableFuture<Integer> futuro : futuros)
+		{
+			assertEquals (NullPointerException.class, darCausa (futuro).getClass ());
+		}
+		assertEquals (0, cola.darGrupos ());
+		assertEquals (4, cola.darFallidas ());
+		cola.cerrar ();
+	}
+
+	/**
+	 * Al cerrar, las inserciones pendientes se confirman sin esperar a que su grupo se complete, y las siguientes se rechazan
+	 * @throws Exception - Si una inserción falla
+	 */
+	@Test
+	public void cerrarInsertaLasPendientes () throws Exception
+	{
+		ColaTransacciones cola = new ColaTransacciones (pp, 100, 1000, ESPERA_LARGA, 1000);
+		List<CompletableFuture<Integer>> futuros = new ArrayList<CompletableFuture<Integer>> ();
+		for (int cantidad = 1; cantidad <= 3; cantidad++)
+		{
+			futuros.add (cola.encolar (transacciones (factura, cantidad)));
+		}
+		long inicio = System.nanoTime ();
+		cola.cerrar ();
+		assertTrue ("El cierre no debe esperar el grupo completo", System.nanoTime () - inicio < TimeUnit.MILLISECONDS.toNanos (ESPERA_LARGA / 2));
+		for (CompletableFuture<Integer> futuro : futuros)
+		{
+			assertTrue (futuro.isDone ());
+			assertEquals (1, (int) futuro.get ());
+		}
+		assertEquals (3, contarTransacciones ());
+		assertEquals (RejectedExecutionException.class, darCausa (cola.encolar (transacciones (factura, 4))).getClass ());
+	}
+
+	/**
+	 * @param numeroFactura - El número de la factura de las transacciones
+	 * @param cantidades - Las cantidades de las transacciones, distintas para que no se repita la llave primaria
+	 * @return Una transacción del producto de prueba por cada cantidad
+	 */
+	private List<Transaccion> transacciones (long numeroFactura, int... cantidades)
+	{
+		List<Transaccion> resp = new ArrayList<Transaccion> ();
+		for (int cantidad : cantidades)
+		{
+			resp.add (new Transaccion (numeroFactura, cantidad, 10 * cantidad, producto, 0));
+		}
+		return resp;
+	}
+
+	/**
+	 * @param futuro - El futuro de una inserción que debe fallar
+	 * @return La excepción con la que falló
+	 * @throws Exception - Si la inserción no termina
+	 */
+	private Throwable darCausa (CompletableFuture<Integer> futuro) throws Exception
+	{
+		try
+		{
+			futuro.get (ESPERA_RESULTADO, TimeUnit.MILLISECONDS);
+		}
+		catch (ExecutionException e)
+		{
+			return e.getCause ();
+		}
+		fail ("La inserci\u00f3n deb\u00eda fallar");
+		return null;
+	}
+
+	/**
+	 * @return El número de tuplas de TRANSACCION en la base de datos
+	 */
+	private long contarTransacciones ()
+	{
+		try (Stream<Transaccion> transacciones = pp.recorrerTransacciones ())
+		{
+			return transacciones.count ();
+		}
+	}
+}
@@ -0,0 +1,49 @@
+package uniandes.isis2304.superandes.persistencia;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+
+/**
+ * Configuración de las pruebas que necesitan una base de datos: la de TablasBD_A.json, sobre la unidad de persistencia embebida
+ * SuperAndesH2, de manera que no requieren un servidor. Los subsistemas opcionales quedan como en el archivo, es decir, apagados
+ * Nótese que es una clase que es sólo conocida en el paquete de pruebas de persistencia
+ *
+ * @author n.cobos, jf.torresp
+ */
+class ConfiguracionPruebas
+{
+	/* ****************************************************************
+	 * 			Constantes
+	 *****************************************************************/
+	/**
+	 * Ruta al archivo de configuración de los nombres de tablas de la base de datos
+	 */
+	private static final String CONFIG_TABLAS_A = "./src/main/resources/config/TablasBD_A.json";
+
+	/**
+	 * La unidad de persistencia embebida de las pruebas
+	 */
+	private static final String UNIDAD_EMBEBIDA = "SuperAndesH2";
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	/**
+	 * @return La configuración de TablasBD_A.json con la unidad de persistencia embebida
+	 * @throws IOException - Si no se puede leer el archivo
+	 */
+	static JsonObject leerConfiguracion () throws IOException
+	{
+		try (InputStreamReader reader = new InputStreamReader (new FileInputStream (CONFIG_TABLAS_A), StandardCharsets.UTF_8))
+		{
+			JsonObject tableConfig = new Gson ().fromJson (reader, JsonObject.class);
+			tableConfig.addProperty ("unidadPersistencia", UNIDAD_EMBEBIDA);
+			return tableConfig;
+		}
+	}
+}
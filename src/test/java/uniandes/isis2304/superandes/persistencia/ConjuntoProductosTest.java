@@ -0,0 +1,165 @@
+package uniandes.isis2304.superandes.persistencia;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+/**
+ * Pruebas de ConjuntoProductos contra un TreeSet de referencia, con bloques que pasan de arreglo a mapa de bits y de vuelta
+ * @author n.cobos, jf.torresp
+ */
+public class ConjuntoProductosTest
+{
+	/* ****************************************************************
+	 * 			Constantes
+	 *****************************************************************/
+	/**
+	 * Número de ordinales de un bloque
+	 */
+	private static final int BLOQUE = 1 << 16;
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	/**
+	 * Agrega y quita ordinales al azar, de manera que el bloque denso supere y vuelva a bajar de 4096 elementos, y compara cada
+	 * resultado con el conjunto de referencia
+	 */
+	@Test
+	public void agregarYQuitarCoincidenConReferencia ()
+	{
+		Random azar = new Random (19);
+		ConjuntoProductos conjunto = new ConjuntoProductos ();
+		TreeSet<Integer> referencia = new TreeSet<Integer> ();
+		for (int i = 0; i < 20000; i++)
+		{
+			int ordinal = darOrdinal (azar);
+			assertEquals ("agregar " + ordinal, referencia.add (ordinal), conjunto.agregar (ordinal));
+		}
+		verificar (conjunto, referencia);
+		assertTrue ("El bloque denso debe pasar a mapa de bits", contarEnBloque (referencia, 0) > 4096);
+
+		for (int i = 0; i < 40000; i++)
+		{
+			int ordinal = darOrdinal (azar);
+			assertEquals ("quitar " + ordinal, referencia.remove (ordinal), conjunto.quitar (ordinal));
+		}
+		verificar (conjunto, referencia);
+		assertTrue ("El bloque denso debe volver a arreglo", contarEnBloque (referencia, 0) < 4096);
+
+		for (int ordinal : new ArrayList<Integer> (referencia))
+		{
+			assertTrue (conjunto.quitar (ordinal));
+		}
+		assertEquals (0, conjunto.darTamano ());
+		assertFalse (conjunto.contiene (0));
+		assertFalse (conjunto.quitar (7 * BLOQUE));
+	}
+
+	/**
+	 * Compara las intersecciones y las uniones de conjuntos con bloques de todo tipo con las del conjunto de referencia
+	 */
+	@Test
+	public void interseccionYUnionCoincidenConReferencia ()
+	{
+		Random azar = new Random (20);
+		for (int caso = 0; caso < 20; caso++)
+		{
+			ConjuntoProductos a = new ConjuntoProductos ();
+			ConjuntoProductos b = new ConjuntoProductos ();
+			TreeSet<Integer> refA = new TreeSet<Integer> ();
+			TreeSet<Integer> refB = new TreeSet<Integer> ();
+			// Cada conjunto es denso (mapa de bits) o disperso (arreglo) en el bloque 0, y sólo el primero tiene ordinales en los bloques 1 a 3
+			int densidadA = azar.nextBoolean () ? 20000 : 500;
+			int densidadB = azar.nextBoolean () ? 20000 : 500;
+			for (int i = 0; i < densidadA; i++)
+			{
+				int ordinal = azar.nextInt (BLOQUE);
+				a.agregar (ordinal);
+				refA.add (ordinal);
+			}
+			for (int i = 0; i < densidadB; i++)
+			{
+				int ordinal = azar.nextInt (BLOQUE);
+				b.agregar (ordinal);
+				refB.add (ordinal);
+			}
+			for (int i = 0; i < 100; i++)
+			{
+				int ordinal = BLOQUE + azar.nextInt (3 * BLOQUE);
+				a.agregar (ordinal);
+				refA.add (ordinal);
+			}
+
+			TreeSet<Integer> interseccion = new TreeSet<Integer> (refA);
+			interseccion.retainAll (refB);
+			TreeSet<Integer> union = new TreeSet<Integer> (refA);
+			union.addAll (refB);
+			verificar (a.interseccion (b), interseccion);
+			verificar (b.interseccion (a), interseccion);
+			verificar (a.union (b), union);
+			verificar (b.union (a), union);
+			// Las operaciones no cambian los operandos
+			verificar (a, refA);
+			verificar (b, refB);
+		}
+	}
+
+	/**
+	 * Verifica que la unión copia los bloques y no los comparte con los operandos
+	 */
+	@Test
+	public void unionNoComparteBloques ()
+	{
+		ConjuntoProductos a = new ConjuntoProductos ();
+		a.agregar (1);
+		ConjuntoProductos union = a.union (new ConjuntoProductos ());
+		union.agregar (2);
+		a.agregar (3);
+		assertFalse (a.contiene (2));
+		assertFalse (union.contiene (3));
+	}
+
+	/**
+	 * @param azar - El generador de números al azar
+	 * @return Un ordinal, casi siempre del bloque 0 y a veces de los bloques 1 a 4
+	 */
+	private static int darOrdinal (Random azar)
+	{
+		return azar.nextInt (10) == 0 ? BLOQUE + azar.nextInt (4 * BLOQUE) : azar.nextInt (8192);
+	}
+
+	/**
+	 * @param referencia - Un conjunto de referencia
+	 * @param bloque - El número de un bloque
+	 * @return El número de ordinales del bloque en el conjunto
+	 */
+	private static int contarEnBloque (TreeSet<Integer> referencia, int bloque)
+	{
+		return referencia.subSet (bloque * BLOQUE, (bloque + 1) * BLOQUE).size ();
+	}
+
+	/**
+	 * Compara un conjunto con el de referencia: tamaño, pertenencia y recorrido en orden ascendente
+	 * @param conjunto - El conjunto
+	 * @param referencia - El conjunto de referencia
+	 */
+	private static void verificar (ConjuntoProductos conjunto, TreeSet<Integer> referencia)
+	{
+		assertEquals (referencia.size (), conjunto.darTamano ());
+		List<Integer> recorridos = new ArrayList<Integer> ();
+		conjunto.recorrer (recorridos::add);
+		assertEquals (new ArrayList<Integer> (referencia), recorridos);
+		for (int ordinal = 0; ordinal < 5 * BLOQUE; ordinal += 7)
+		{
+			assertEquals ("contiene " + ordinal, referencia.contains (ordinal), conjunto.contiene (ordinal));
+		}
+	}
+}
@@ -0,0 +1,182 @@
+package uniandes.isis2304.superandes.persistencia;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Pruebas de la recuperación de DiarioInventario: lectura de los segmentos de una ejecución anterior, descarte de los ya descargados
+ * y registros incompletos o corruptos al final de un segmento
+ * @author n.cobos, jf.torresp
+ */
+public class DiarioInventarioTest
+{
+	/* ****************************************************************
+	 * 			Atributos
+	 *****************************************************************/
+	/**
+	 * El directorio de los segmentos, que se borra después de cada prueba
+	 */
+	@Rule
+	public TemporaryFolder carpeta = new TemporaryFolder ();
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	/**
+	 * Escribe registros en dos segmentos y verifica que, al abrir de nuevo el diario, se leen todos en orden y se escribe en un
+	 * segmento posterior
+	 * @throws IOException - Si falla el diario
+	 */
+	@Test
+	public void recuperaLosSegmentosAnteriores () throws IOException
+	{
+		File directorio = carpeta.newFolder ("inventario");
+		DiarioInventario diario = new DiarioInventario (directorio, 0, false);
+		List<long []> esperados = new ArrayList<long []> ();
+		escribir (diario, esperados, 1, 3);
+		assertEquals (1, diario.rotar ());
+		escribir (diario, esperados, 4, 5);
+		diario.cerrar ();
+
+		DiarioInventario reabierto = new DiarioInventario (directorio, 0, false);
+		assertEquals (3, reabierto.darSegmento ());
+		verificar (esperados, reabierto.leerAnteriores ());
+		reabierto.cerrar ();
+	}
+
+	/**
+	 * Verifica que los segmentos hasta el último descargado se borran sin leerse, y que la numeración sigue después de él aunque
+	 * ya no queden segmentos
+	 * @throws IOException - Si falla el diario
+	 */
+	@Test
+	public void descartaLosSegmentosDescargados () throws IOException
+	{
+		File directorio = carpeta.newFolder ("inventario");
+		DiarioInventario diario = new DiarioInventario (directorio, 0, false);
+		escribir (diario, new ArrayList<long []> (), 1, 4);
+		diario.rotar ();
+		List<long []> esperados = new ArrayList<long []> ();
+		escribir (diario, esperados, 5, 6);
+		diario.cerrar ();
+
+		// La base de datos confirmó el segmento 1, pero la aplicación se cayó antes de borrarlo
+		DiarioInventario reabierto = new DiarioInventario (directorio, 1, false);
+		assertFalse (new File (directorio, "inventario-1.diario").exists ());
+		verificar (esperados, reabierto.leerAnteriores ());
+		reabierto.cerrar ();
+
+		File vacio = carpeta.newFolder ("vacio");
+		DiarioInventario nuevo = new DiarioInventario (vacio, 7, false);
+		assertEquals (8, nuevo.darSegmento ());
+		assertTrue (nuevo.leerAnteriores ().isEmpty ());
+		nuevo.cerrar ();
+	}
+
+	/**
+	 * Corta el último registro de un segmento, como una caída a mitad de una escritura, y verifica que se leen los registros
+	 * completos y se descarta el incompleto
+	 * @throws IOException - Si falla el diario
+	 */
+	@Test
+	public void descartaElRegistroIncompleto () throws IOException
+	{
+		File directorio = carpeta.newFolder ("inventario");
+		DiarioInventario diario = new DiarioInventario (directorio, 0, false);
+		List<long []> esperados = new ArrayList<long []> ();
+		escribir (diario, esperados, 1, 3);
+		diario.cerrar ();
+		try (RandomAccessFile archivo = new RandomAccessFile (new File (directorio, "inventario-1.diario"), "rw"))
+		{
+			archivo.setLength (archivo.length () - DiarioInventario.TAMANO_REGISTRO / 2);
+		}
+		esperados.remove (esperados.size () - 1);
+
+		DiarioInventario reabierto = new DiarioInventario (directorio, 0, false);
+		verificar (esperados, reabierto.leerAnteriores ());
+		reabierto.cerrar ();
+	}
+
+	/**
+	 * Daña un registro en medio de un segmento y verifica que se descarta desde él hasta el final del segmento, pero que los
+	 * segmentos siguientes se leen completos
+	 * @throws IOException - Si falla el diario
+	 */
+	@Test
+	public void descartaDesdeElRegistroCorrupto () throws IOException
+	{
+		File directorio = carpeta.newFolder ("inventario");
+		DiarioInventario diario = new DiarioInventario (directorio, 0, false);
+		List<long []> esperados = new ArrayList<long []> ();
+		escribir (diario, esperados, 1, 4);
+		diario.rotar ();
+		List<long []> siguientes = new ArrayList<long []> ();
+		escribir (diario, siguientes, 5, 6);
+		diario.cerrar ();
+		try (RandomAccessFile archivo = new RandomAccessFile (new File (directorio, "inventario-1.diario"), "rw"))
+		{
+			// Un byte del cambio del segundo registro
+			long posicion = DiarioInventario.TAMANO_REGISTRO + 1 + 8 + 8;
+			archivo.seek (posicion);
+			int original = archivo.read ();
+			archivo.seek (posicion);
+			archivo.write (original ^ 0xFF);
+		}
+		List<long []> leibles = new ArrayList<long []> (esperados.subList (0, 1));
+		leibles.addAll (siguientes);
+
+		DiarioInventario reabierto = new DiarioInventario (directorio, 0, false);
+		verificar (leibles, reabierto.leerAnteriores ());
+		reabierto.cerrar ();
+	}
+
+	/**
+	 * Escribe en el diario, con una sola escritura, un cambio de bodegas y uno de estantes de cada producto de un rango
+	 * @param diario - El diario
+	 * @param esperados - La lista a la que se agregan los registros escritos, como {tipo, sucursal, producto, cambio}
+	 * @param desde - El primer producto
+	 * @param hasta - El último producto
+	 * @throws IOException - Si no se puede escribir
+	 */
+	private static void escribir (DiarioInventario diario, List<long []> esperados, long desde, long hasta) throws IOException
+	{
+		ByteBuffer registros = DiarioInventario.crearRegistros ((int) (hasta - desde + 1) * 2);
+		for (long producto = desde; producto <= hasta; producto++)
+		{
+			long [] bodega = {DiarioInventario.BODEGAS, 10, producto, producto * 100};
+			long [] estante = {DiarioInventario.ESTANTES, 10, producto, -producto};
+			for (long [] registro : new long [] [] {bodega, estante})
+			{
+				DiarioInventario.agregarRegistro (registros, (byte) registro [0], registro [1], registro [2], registro [3]);
+				esperados.add (registro);
+			}
+		}
+		diario.escribir (registros);
+	}
+
+	/**
+	 * @param esperados - Los registros esperados, en orden
+	 * @param leidos - Los registros leídos del diario
+	 */
+	private static void verificar (List<long []> esperados, List<long []> leidos)
+	{
+		assertEquals (esperados.size (), leidos.size ());
+		for (int i = 0; i < esperados.size (); i++)
+		{
+			assertArrayEquals ("registro " + i, esperados.get (i), leidos.get (i));
+		}
+	}
+}
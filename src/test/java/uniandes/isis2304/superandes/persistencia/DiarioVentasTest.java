@@ -0,0 +1,347 @@
+package uniandes.isis2304.superandes.persistencia;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import uniandes.isis2304.superandes.negocio.Estante;
+import uniandes.isis2304.superandes.negocio.Factura;
+import uniandes.isis2304.superandes.negocio.Producto;
+import uniandes.isis2304.superandes.negocio.SuperAndes;
+import uniandes.isis2304.superandes.negocio.Transaccion;
+
+/**
+ * Pruebas de la recuperación y la aplicación de DiarioVentas sobre la unidad de persistencia embebida: ventas pendientes de una
+ * ejecución anterior, aplicación repetida después de una caída, registros incompletos o corruptos al final de un segmento y ventas
+ * rechazadas por la base de datos
+ * @author n.cobos, jf.torresp
+ */
+public class DiarioVentasTest
+{
+	/* ****************************************************************
+	 * 			Constantes
+	 *****************************************************************/
+	/**
+	 * Tamaño de los segmentos de prueba, en bytes: el mínimo que acepta el diario
+	 */
+	private static final int TAMANO_SEGMENTO = 4096;
+
+	/**
+	 * Posición del primer registro de un segmento
+	 */
+	private static final int INICIO_REGISTROS = 16;
+
+	/**
+	 * Tamaño en el segmento del registro de una venta de una línea: encabezado, factura y línea
+	 */
+	private static final int TAMANO_VENTA = 8 + 36 + 28;
+
+	/**
+	 * Número de la primera factura de prueba, lejos de los que asigna el generador de identificadores
+	 */
+	private static final long PRIMERA_FACTURA = 1000000;
+
+	/* ****************************************************************
+	 * 			Atributos
+	 *****************************************************************/
+	/**
+	 * El directorio de los segmentos, que se borra después de cada prueba
+	 */
+	@Rule
+	public TemporaryFolder carpeta = new TemporaryFolder ();
+
+	/**
+	 * La fachada de la aplicación
+	 */
+	private SuperAndes superandes;
+
+	/**
+	 * El manejador de persistencia
+	 */
+	private PersistenciaSuperAndes pp;
+
+	/**
+	 * El identificador de la sucursal de prueba
+	 */
+	private long sucursal;
+
+	/**
+	 * El identificador del cliente de prueba
+	 */
+	private long cliente;
+
+	/**
+	 * El identificador del producto de prueba
+	 */
+	private long producto;
+
+	/**
+	 * El directorio de los segmentos
+	 */
+	private File directorio;
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	/**
+	 * Borra la base de datos y crea una sucursal, un cliente y un producto con existencias en los estantes
+	 * @throws IOException - Si no se puede leer la configuración o crear el directorio
+	 */
+	@Before
+	public void crearDatos () throws IOException
+	{
+		superandes = new SuperAndes (ConfiguracionPruebas.leerConfiguracion ());
+		pp = PersistenciaSuperAndes.getInstance ();
+		superandes.limpiarSuperAndes ();
+		superandes.adicionarSupermercado ("ventas");
+		sucursal = superandes.adicionarSucursal ("ventas", "Bogotá", "Calle 1", "medio", 100, "ventas").getId ();
+		cliente = superandes.adicionarCliente ("cliente", "cliente@superandes.com", "persona", "Calle 2").getId ();
+		Producto nuevo = superandes.adicionarProducto ("producto", "marca", "unidad", "770001", "unidad", "categoria", "tipo");
+		producto = nuevo.getId ();
+		assertTrue (pp.adicionarEstante (Arrays.asList (new Estante (0, 100, 100, 1000, producto, sucursal, 1))) != null);
+		directorio = carpeta.newFolder ("ventas");
+	}
+
+	/**
+	 * Borra la base de datos y cierra la unidad de persistencia
+	 */
+	@After
+	public void cerrar ()
+	{
+		superandes.limpiarSuperAndes ();
+		superandes.cerrarUnidadPersistencia ();
+	}
+
+	/**
+	 * Las ventas escritas por un diario que nunca se aplicó, como si la aplicación se hubiera caído, se aplican al abrir otro diario
+	 * sobre el mismo directorio
+	 * @throws IOException - Si falla el diario
+	 */
+	@Test
+	public void aplicaLasVentasDeUnaEjecucionAnterior () throws IOException
+	{
+		escribir (abrir (), 3);
+
+		DiarioVentas recuperado = abrir ();
+		assertEquals (3, recuperado.aplicar ());
+		assertEquals (3, recuperado.darAplicadas ());
+		verificarFacturas (3);
+		assertEquals (3, contarTransacciones ());
+		assertEquals ("Los segmentos aplicados se borran", 1, directorio.list ().length);
+	}
+
+	/**
+	 * Una caída entre la confirmación de un grupo y el punto de control hace que el grupo se vuelva a leer: no se debe aplicar dos veces
+	 * @throws IOException - Si falla el diario
+	 */
+	@Test
+	public void noAplicaDosVecesLasMismasVentas () throws IOException
+	{
+		DiarioVentas diario = abrir ();
+		escribir (diario, 3);
+		assertEquals (3, diario.aplicar ());
+		try (RandomAccessFile segmento = abrirSegmento ())
+		{
+			// Punto de control al inicio de los registros, como antes de confirmar
+			segmento.seek (8);
+			segmento.writeLong (INICIO_REGISTROS);
+		}
+
+		DiarioVentas recuperado = abrir ();
+		assertEquals (3, recuperado.aplicar ());
+		assertEquals (0, recuperado.darAplicadas ());
+		verificarFacturas (3);
+		assertEquals (3, contarTransacciones ());
+	}
+
+	/**
+	 * Una venta cuya longitud no alcanzó a escribirse termina los registros del segmento: se aplican las anteriores
+	 * @throws IOException - Si falla el diario
+	 */
+	@Test
+	public void descartaElRegistroSinLongitud () throws IOException
+	{
+		escribir (abrir (), 3);
+		try (RandomAccessFile segmento = abrirSegmento ())
+		{
+			segmento.seek (INICIO_REGISTROS + 2 * TAMANO_VENTA);
+			segmento.writeInt (0);
+		}
+
+		assertEquals (2, abrir ().aplicar ());
+		verificarFacturas (2);
+	}
+
+	/**
+	 * Una venta cuya longitud pasa del final del segmento está incompleta: se aplican las anteriores
+	 * @throws IOException - Si falla el diario
+	 */
+	@Test
+	public void descartaElRegistroIncompleto () throws IOException
+	{
+		escribir (abrir (), 3);
+		try (RandomAccessFile segmento = abrirSegmento ())
+		{
+			segmento.seek (INICIO_REGISTROS + 2 * TAMANO_VENTA);
+			segmento.writeInt (TAMANO_SEGMENTO);
+		}
+
+		assertEquals (2, abrir ().aplicar ());
+		verificarFacturas (2);
+	}
+
+	/**
+	 * Una venta con datos dañados no coincide con su CRC: se aplican las anteriores y se descarta el resto del segmento
+	 * @throws IOException - Si falla el diario
+	 */
+	@Test
+	public void descartaDesdeElRegistroCorrupto () throws IOException
+	{
+		escribir (abrir (), 3);
+		try (RandomAccessFile segmento = abrirSegmento ())
+		{
+			// Un byte del cliente de la segunda venta
+			long posicion = INICIO_REGISTROS + TAMANO_VENTA + 8 + 16;
+			segmento.seek (posicion);
+			int original = segmento.read ();
+			segmento.seek (posicion);
+			segmento.write (original ^ 0xFF);
+		}
+
+		assertEquals (1, abrir ().aplicar ());
+		verificarFacturas (1);
+	}
+
+	/**
+	 * Una venta que la base de datos rechaza se aparta en el archivo de ventas rechazadas, sin detener las siguientes
+	 * @throws IOException - Si falla el diario
+	 */
+	@Test
+	public void apartaLasVentasRechazadas () throws IOException
+	{
+		DiarioVentas diario = abrir ();
+		escribir (diario, 1);
+		Factura invalida = new Factura (PRIMERA_FACTURA + 1, sucursal, new Timestamp (System.currentTimeMillis ()), cliente + 1000);
+		diario.escribir (invalida, Arrays.asList (new Transaccion (invalida.getNumero (), 1, 10, producto, 0)));
+		Factura valida = new Factura (PRIMERA_FACTURA + 2, sucursal, new Timestamp (System.currentTimeMillis ()), cliente);
+		diario.escribir (valida, Arrays.asList (new Transaccion (valida.getNumero (), 1, 10, producto, 0)));
+
+		assertEquals (3, diario.aplicar ());
+		assertEquals (2, diario.darAplicadas ());
+		assertEquals (1, diario.darRechazadas ());
+		assertEquals (0, diario.darFallos ());
+		List<DiarioVentas.Venta> rechazadas = diario.leerRechazadas ();
+		assertEquals (1, rechazadas.size ());
+		assertEquals (invalida.getNumero (), rechazadas.get (0).factura.getNumero ());
+		assertEquals (invalida.getCliente (), rechazadas.get (0).factura.getCliente ());
+		assertEquals (Arrays.asList (PRIMERA_FACTURA, PRIMERA_FACTURA + 2), darNumerosFacturas ());
+	}
+
+	/**
+	 * Una excepción inesperada al aplicar cuenta como un fallo y no cancela la aplicación periódica; las ventas siguen pendientes y se
+	 * aplican después. Sin manejador de persistencia, cada aplicación lanza NullPointerException
+	 * @throws Exception - Si falla el diario o se interrumpe la espera
+	 */
+	@Test
+	public void sigueAplicandoDespuesDeUnaExcepcion () throws Exception
+	{
+		DiarioVentas diario = new DiarioVentas (null, directorio, TAMANO_SEGMENTO, DiarioVentas.VENTAS_POR_GRUPO_DEFECTO, 10, false);
+		escribir (diario, 2);
+		long limite = System.currentTimeMillis () + 10000;
+		while (diario.darFallos () < 3 && System.currentTimeMillis () < limite)
+		{
+			Thread.sleep (10);
+		}
+		assertTrue ("La aplicación periódica debe seguir después del primer fallo", diario.darFallos () >= 3);
+		assertEquals (-1, diario.aplicar ());
+		diario.cerrar ();
+
+		DiarioVentas recuperado = abrir ();
+		assertEquals (2, recuperado.aplicar ());
+		verificarFacturas (2);
+	}
+
+	/**
+	 * @return Un diario de ventas sobre el directorio de prueba, que sólo aplica explícitamente
+	 * @throws IOException - Si no se puede abrir
+	 */
+	private DiarioVentas abrir () throws IOException
+	{
+		return new DiarioVentas (pp, directorio, TAMANO_SEGMENTO, DiarioVentas.VENTAS_POR_GRUPO_DEFECTO, 0, false);
+	}
+
+	/**
+	 * @return El primer segmento del diario, para dañarlo
+	 * @throws IOException - Si no se puede abrir
+	 */
+	private RandomAccessFile abrirSegmento () throws IOException
+	{
+		return new RandomAccessFile (new File (directorio, "ventas-1.diario"), "rw");
+	}
+
+	/**
+	 * Escribe en el diario ventas de una línea, con números de factura consecutivos desde PRIMERA_FACTURA
+	 * @param diario - El diario
+	 * @param ventas - El número de ventas
+	 * @throws IOException - Si no se puede escribir
+	 */
+	private void escribir (DiarioVentas diario, int ventas) throws IOException
+	{
+		for (int i = 0; i < ventas; i++)
+		{
+			Factura factura = new Factura (PRIMERA_FACTURA + i, sucursal, new Timestamp (System.currentTimeMillis ()), cliente);
+			diario.escribir (factura, Arrays.asList (new Transaccion (factura.getNumero (), 1 + i, 10 * (1 + i), producto, 0)));
+		}
+	}
+
+	/**
+	 * Verifica que la base de datos tiene exactamente las facturas de las primeras ventas escritas
+	 * @param facturas - El número de facturas esperadas
+	 */
+	private void verificarFacturas (int facturas)
+	{
+		List<Long> esperadas = new ArrayList<Long> ();
+		for (int i = 0; i < facturas; i++)
+		{
+			esperadas.add (PRIMERA_FACTURA + i);
+		}
+		assertEquals (esperadas, darNumerosFacturas ());
+	}
+
+	/**
+	 * @return Los números de las facturas de la base de datos, en orden
+	 */
+	private List<Long> darNumerosFacturas ()
+	{
+		try (Stream<Factura> facturas = pp.recorrerFacturas ())
+		{
+			return facturas.map (Factura::getNumero).collect (Collectors.toList ());
+		}
+	}
+
+	/**
+	 * @return El número de tuplas de TRANSACCION en la base de datos
+	 */
+	private long contarTransacciones ()
+	{
+		try (Stream<Transaccion> transacciones = pp.recorrerTransacciones ())
+		{
+			return transacciones.count ();
+		}
+	}
+}
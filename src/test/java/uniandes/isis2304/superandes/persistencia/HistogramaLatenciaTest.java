@@ -0,0 +1,114 @@
+package uniandes.isis2304.superandes.persistencia;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Pruebas de HistogramaLatencia: los límites de las cubetas en las potencias de dos y en VALOR_MAXIMO, y los percentiles contra los
+ * de un arreglo ordenado de referencia
+ * @author n.cobos, jf.torresp
+ */
+public class HistogramaLatenciaTest
+{
+	/* ****************************************************************
+	 * 			Constantes
+	 *****************************************************************/
+	/**
+	 * Error relativo máximo de un percentil: el ancho de una cubeta es a lo sumo 1/64 de su menor valor
+	 */
+	private static final double ERROR_RELATIVO = 1.0 / 64;
+
+	/**
+	 * Los percentiles que se comparan con la referencia
+	 */
+	private static final double [] PERCENTILES = {0.1, 1, 10, 25, 50, 75, 90, 95, 99, 99.9, 100};
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	/**
+	 * Cada potencia de dos empieza una cubeta nueva, las cubetas son contiguas y en orden, ninguna es más ancha que 1/64 de su menor
+	 * valor a partir de las exactas, y la última termina justo en VALOR_MAXIMO
+	 */
+	@Test
+	public void limitesDeLasCubetas ()
+	{
+		for (int k = 1; k <= 35; k++)
+		{
+			long potencia = 1L << k;
+			assertEquals ("2^" + k, HistogramaLatencia.indice (potencia - 1) + 1, HistogramaLatencia.indice (potencia));
+			assertEquals ("2^" + k, potencia - 1, HistogramaLatencia.valorMaximoCubeta (HistogramaLatencia.indice (potencia - 1)));
+		}
+
+		int ultima = HistogramaLatencia.indice (HistogramaLatencia.VALOR_MAXIMO);
+		assertEquals (HistogramaLatencia.VALOR_MAXIMO, HistogramaLatencia.valorMaximoCubeta (ultima));
+		long minimo = 0;
+		for (int i = 0; i <= ultima; i++)
+		{
+			long maximo = HistogramaLatencia.valorMaximoCubeta (i);
+			assertTrue ("Cubeta " + i, maximo >= minimo);
+			assertEquals ("Cubeta " + i, i, HistogramaLatencia.indice (minimo));
+			assertEquals ("Cubeta " + i, i, HistogramaLatencia.indice (maximo));
+			assertTrue ("Cubeta " + i, minimo < 128 ? maximo == minimo : maximo - minimo + 1 <= minimo * ERROR_RELATIVO);
+			minimo = maximo + 1;
+		}
+	}
+
+	/**
+	 * Los valores fuera de [0, VALOR_MAXIMO] se registran en los extremos
+	 */
+	@Test
+	public void registraLosExtremos ()
+	{
+		HistogramaLatencia histograma = new HistogramaLatencia ();
+		histograma.registrar (-5);
+		histograma.registrar (HistogramaLatencia.VALOR_MAXIMO + 1000);
+		assertEquals (0, histograma.darPercentil (50));
+		assertEquals (HistogramaLatencia.VALOR_MAXIMO, histograma.darPercentil (100));
+		assertEquals (HistogramaLatencia.VALOR_MAXIMO, histograma.darMaximo ());
+		assertEquals (HistogramaLatencia.VALOR_MAXIMO, histograma.darSuma ());
+
+		histograma.reiniciar ();
+		assertEquals (0, histograma.darTotal ());
+		assertEquals (0, histograma.darPercentil (99));
+	}
+
+	/**
+	 * Registra valores al azar de magnitudes entre 1 ns y 60 s y compara cada percentil con el del arreglo ordenado: el histograma da el
+	 * mayor valor de la cubeta del valor de referencia, sin pasar del máximo registrado, así que nunca lo subestima y lo sobrestima en
+	 * menos de 1/64
+	 */
+	@Test
+	public void percentilesCoincidenConReferencia ()
+	{
+		Random azar = new Random (10);
+		for (int n : new int [] {1, 7, 1000, 100000})
+		{
+			HistogramaLatencia histograma = new HistogramaLatencia ();
+			long [] valores = new long [n];
+			for (int i = 0; i < n; i++)
+			{
+				valores [i] = (long) Math.pow (10, azar.nextDouble () * 10.8);
+				histograma.registrar (valores [i]);
+			}
+			Arrays.sort (valores);
+			assertEquals (n, histograma.darTotal ());
+			assertEquals (valores [n - 1], histograma.darMaximo ());
+
+			for (double percentil : PERCENTILES)
+			{
+				long referencia = valores [(int) Math.max (1, Math.ceil (percentil / 100 * n)) - 1];
+				long leido = histograma.darPercentil (percentil);
+				String mensaje = "n=" + n + ", p" + percentil;
+				assertEquals (mensaje, Math.min (HistogramaLatencia.valorMaximoCubeta (HistogramaLatencia.indice (referencia)), valores [n - 1]), leido);
+				assertTrue (mensaje, leido >= referencia);
+				assertTrue (mensaje, leido - referencia <= referencia * ERROR_RELATIVO);
+			}
+		}
+	}
+}
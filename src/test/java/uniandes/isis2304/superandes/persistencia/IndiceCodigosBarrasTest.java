@@ -0,0 +1,240 @@
+package uniandes.isis2304.superandes.persistencia;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import uniandes.isis2304.superandes.negocio.Producto;
+import uniandes.isis2304.superandes.negocio.SuperAndes;
+import uniandes.isis2304.superandes.negocio.Vende;
+
+/**
+ * Pruebas de IndiceCodigosBarras sobre la unidad de persistencia embebida, contra mapas de referencia de los productos por código de
+ * barras y de los precios de cada producto en cada sucursal: después de adicionar productos y precios, de eliminar productos y al
+ * leerlos de nuevo de la base de datos
+ * @author n.cobos, jf.torresp
+ */
+public class IndiceCodigosBarrasTest
+{
+	/* ****************************************************************
+	 * 			Atributos
+	 *****************************************************************/
+	/**
+	 * La fachada de la aplicación
+	 */
+	private SuperAndes superandes;
+
+	/**
+	 * El manejador de persistencia
+	 */
+	private PersistenciaSuperAndes pp;
+
+	/**
+	 * Los identificadores de las sucursales de prueba
+	 */
+	private long [] sucursales;
+
+	/**
+	 * Los productos de referencia, por código de barras
+	 */
+	private Map<String, Producto> productos;
+
+	/**
+	 * Los precios de referencia {unitario, por unidad de medida}, por {sucursal, producto}
+	 */
+	private Map<List<Long>, double []> precios;
+
+	/**
+	 * El número de productos adicionados, para darles nombres y códigos de barras distintos
+	 */
+	private int adicionados;
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	/**
+	 * Borra la base de datos y crea dos sucursales
+	 * @throws IOException - Si no se puede leer la configuración
+	 */
+	@Before
+	public void crearDatos () throws IOException
+	{
+		superandes = new SuperAndes (ConfiguracionPruebas.leerConfiguracion ());
+		pp = PersistenciaSuperAndes.getInstance ();
+		superandes.limpiarSuperAndes ();
+		superandes.adicionarSupermercado ("codigos");
+		sucursales = new long [] {superandes.adicionarSucursal ("codigos-1", "Bogotá", "Calle 1", "medio", 100, "codigos").getId (),
+				superandes.adicionarSucursal ("codigos-2", "Bogotá", "Calle 2", "medio", 100, "codigos").getId ()};
+		productos = new HashMap<String, Producto> ();
+		precios = new HashMap<List<Long>, double []> ();
+	}
+
+	/**
+	 * Borra la base de datos y cierra la unidad de persistencia
+	 */
+	@After
+	public void cerrar ()
+	{
+		superandes.limpiarSuperAndes ();
+		superandes.cerrarUnidadPersistencia ();
+	}
+
+	/**
+	 * Adiciona productos y precios antes y después de que el índice los lea, elimina productos sin precios por identificador y por
+	 * nombre y compara cada lectura con las referencias. Al final, un índice nuevo que lee todo de la base de datos debe dar lo mismo
+	 */
+	@Test
+	public void coincideConReferencia ()
+	{
+		Random azar = new Random (21);
+		adicionar (azar, 100);
+		// El índice lee los productos y los precios de la base de datos
+		verificar (pp.darIndiceCodigosBarras ());
+		// Los productos y los precios siguientes se aplican sobre el índice ya leído
+		adicionar (azar, 100);
+		verificar (pp.darIndiceCodigosBarras ());
+
+		// Sólo se pueden eliminar los productos que ninguna sucursal vende
+		List<Producto> vigentes = new ArrayList<Producto> ();
+		for (Producto producto : productos.values ())
+		{
+			if (!precios.containsKey (Arrays.asList (sucursales [0], producto.getId ()))
+					&& !precios.containsKey (Arrays.asList (sucursales [1], producto.getId ())))
+			{
+				vigentes.add (producto);
+			}
+		}
+		assertTrue (vigentes.size () >= 20);
+		for (int i = 0; i < 20; i++)
+		{
+			Producto eliminado = vigentes.remove (azar.nextInt (vigentes.size ()));
+			productos.remove (eliminado.getCodigoBarras ());
+			if (i % 2 == 0)
+			{
+				assertEquals (1, pp.eliminarProductoPorId (eliminado.getId ()));
+			}
+			else
+			{
+				assertEquals (1, pp.eliminarProductoPorNombre (eliminado.getNombre ()));
+			}
+		}
+		verificar (pp.darIndiceCodigosBarras ());
+		verificar (new IndiceCodigosBarras (pp, new TablaPrecios (TablaPrecios.CAPACIDAD_DEFECTO)));
+	}
+
+	/**
+	 * Verifica que el código de barras leído se compara sin los espacios del lector y que la fachada da el mismo resultado que el índice
+	 */
+	@Test
+	public void resuelveElCodigoLeido ()
+	{
+		adicionar (new Random (0), 1);
+		Producto producto = productos.values ().iterator ().next ();
+		List<Long> llave = Arrays.asList (sucursales [0], producto.getId ());
+		Object [] leido = superandes.darProductoPorCodigoBarras ("  " + producto.getCodigoBarras () + "\n", sucursales [0]);
+		assertEquals (producto.getId (), ((Producto) leido [0]).getId ());
+		assertEquals (precios.containsKey (llave) ? precios.get (llave) [0] : null, leido [1]);
+		assertNull (superandes.darProductoPorCodigoBarras ("no-existe", sucursales [0]));
+	}
+
+	/**
+	 * Verifica que, al limpiar la base de datos, el índice olvida los productos y los precios sin volver a leerlos
+	 */
+	@Test
+	public void limpiarOlvidaTodo ()
+	{
+		adicionar (new Random (1), 20);
+		verificar (pp.darIndiceCodigosBarras ());
+		superandes.limpiarSuperAndes ();
+		for (String codigoBarras : productos.keySet ())
+		{
+			assertNull (pp.darProductoPorCodigoBarras (codigoBarras, sucursales [0]));
+		}
+	}
+
+	/**
+	 * Verifica que, si dos productos tienen el mismo código de barras, el índice da el de menor identificador, tanto al agregarlos
+	 * como al leerlos de la base de datos, y que eliminar el repetido no hace olvidar el código
+	 */
+	@Test
+	public void conservaElPrimeroConCodigoRepetido ()
+	{
+		pp.darIndiceCodigosBarras ().cargar ();
+		Producto primero = new Producto (0, "primero", "marca", "unidad", "7702999", "unidad", "categoria", "tipo");
+		Producto repetido = new Producto (0, "repetido", "marca", "unidad", " 7702999", "unidad", "categoria", "tipo");
+		assertTrue (pp.adicionarProducto (Arrays.asList (primero, repetido)) != null);
+		assertEquals (primero.getId (), pp.darIndiceCodigosBarras ().darProducto ("7702999").getId ());
+		assertEquals (primero.getId (), new IndiceCodigosBarras (pp, new TablaPrecios (TablaPrecios.CAPACIDAD_DEFECTO)).darProducto ("7702999").getId ());
+
+		assertEquals (1, pp.eliminarProductoPorNombre ("repetido"));
+		assertEquals (primero.getId (), pp.darIndiceCodigosBarras ().darProducto ("7702999").getId ());
+		assertEquals (1, pp.eliminarProductoPorId (primero.getId ()));
+		assertNull (pp.darIndiceCodigosBarras ().darProducto ("7702999"));
+	}
+
+	/**
+	 * Adiciona en la base de datos, en lotes, productos con códigos de barras distintos y, para cerca de la mitad de ellos en cada
+	 * sucursal, precios al azar. Los agrega a las referencias
+	 * @param azar - El generador de números al azar
+	 * @param cantidad - El número de productos
+	 */
+	private void adicionar (Random azar, int cantidad)
+	{
+		List<Producto> nuevos = new ArrayList<Producto> ();
+		for (int i = 0; i < cantidad; i++, adicionados++)
+		{
+			nuevos.add (new Producto (0, "producto-" + adicionados, "marca", "unidad", "7702" + (100000 + adicionados), "unidad", "categoria", "tipo"));
+		}
+		assertTrue (pp.adicionarProducto (nuevos) != null);
+		List<Vende> vendes = new ArrayList<Vende> ();
+		for (Producto producto : nuevos)
+		{
+			productos.put (producto.getCodigoBarras (), producto);
+			for (long sucursal : sucursales)
+			{
+				if (azar.nextBoolean ())
+				{
+					double precioUnitario = 100 + azar.nextInt (10000);
+					double precioUnidadMedida = precioUnitario / (1 + azar.nextInt (10));
+					vendes.add (new Vende (sucursal, producto.getId (), 10, precioUnitario, precioUnidadMedida));
+					precios.put (Arrays.asList (sucursal, producto.getId ()), new double [] {precioUnitario, precioUnidadMedida});
+				}
+			}
+		}
+		assertTrue (pp.adicionarVende (vendes) != null);
+	}
+
+	/**
+	 * Compara la lectura de cada código de barras de referencia, en cada sucursal, con las referencias, y verifica que un código que no
+	 * es de ningún producto no se encuentra
+	 * @param indice - El índice
+	 */
+	private void verificar (IndiceCodigosBarras indice)
+	{
+		for (Producto producto : productos.values ())
+		{
+			for (long sucursal : sucursales)
+			{
+				Object [] leido = indice.darProductoYPrecio (producto.getCodigoBarras (), sucursal);
+				String mensaje = producto.getCodigoBarras () + " en " + sucursal;
+				assertEquals (mensaje, producto.getId (), ((Producto) leido [0]).getId ());
+				double [] esperados = precios.get (Arrays.asList (sucursal, producto.getId ()));
+				assertEquals (mensaje, esperados == null ? null : esperados [0], leido [1]);
+				assertEquals (mensaje, esperados == null ? null : esperados [1], leido [2]);
+			}
+		}
+		assertNull (indice.darProductoYPrecio ("7702" + (100000 + adicionados), sucursales [0]));
+	}
+}
@@ -0,0 +1,200 @@
+package uniandes.isis2304.superandes.persistencia;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import uniandes.isis2304.superandes.negocio.Promocion;
+import uniandes.isis2304.superandes.negocio.SuperAndes;
+
+/**
+ * Pruebas de IndicePromociones sobre la unidad de persistencia embebida, contra una lista de referencia de las promociones de cada
+ * producto: las vigentes en cada instante, después de adicionar y eliminar promociones y al leerlas de nuevo de la base de datos
+ * @author n.cobos, jf.torresp
+ */
+public class IndicePromocionesTest
+{
+	/* ****************************************************************
+	 * 			Constantes
+	 *****************************************************************/
+	/**
+	 * Número de productos de prueba
+	 */
+	private static final int PRODUCTOS = 3;
+
+	/**
+	 * Un día, en milisegundos
+	 */
+	private static final long DIA = 24L * 60 * 60 * 1000;
+
+	/**
+	 * El primer día en que pueden empezar las promociones de prueba
+	 */
+	private static final long INICIO = Timestamp.valueOf ("2019-01-01 00:00:00").getTime ();
+
+	/* ****************************************************************
+	 * 			Atributos
+	 *****************************************************************/
+	/**
+	 * La fachada de la aplicación
+	 */
+	private SuperAndes superandes;
+
+	/**
+	 * El manejador de persistencia
+	 */
+	private PersistenciaSuperAndes pp;
+
+	/**
+	 * Los identificadores de los productos de prueba
+	 */
+	private long [] productos;
+
+	/**
+	 * Las promociones de referencia, de todos los productos
+	 */
+	private List<Promocion> referencia;
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	/**
+	 * Borra la base de datos y crea los productos de prueba
+	 * @throws IOException - Si no se puede leer la configuración
+	 */
+	@Before
+	public void crearDatos () throws IOException
+	{
+		superandes = new SuperAndes (ConfiguracionPruebas.leerConfiguracion ());
+		pp = PersistenciaSuperAndes.getInstance ();
+		superandes.limpiarSuperAndes ();
+		productos = new long [PRODUCTOS];
+		for (int i = 0; i < PRODUCTOS; i++)
+		{
+			productos [i] = superandes.adicionarProducto ("producto-" + i, "marca", "unidad", "77100" + i, "unidad", "categoria", "tipo").getId ();
+		}
+		referencia = new ArrayList<Promocion> ();
+	}
+
+	/**
+	 * Borra la base de datos y cierra la unidad de persistencia
+	 */
+	@After
+	public void cerrar ()
+	{
+		superandes.limpiarSuperAndes ();
+		superandes.cerrarUnidadPersistencia ();
+	}
+
+	/**
+	 * Adiciona promociones al azar, con intervalos que se traslapan, antes y después de que el índice lea cada producto, elimina
+	 * algunas y compara las vigentes en cada día con la lista de referencia. Al final, un índice nuevo que lee todo de la base de
+	 * datos debe dar lo mismo
+	 */
+	@Test
+	public void coincideConReferencia ()
+	{
+		Random azar = new Random (15);
+		adicionar (azar, 40);
+		// El índice lee los productos de la base de datos
+		verificar (pp.darIndicePromociones ());
+		// Las promociones siguientes se aplican sobre los productos ya leídos
+		adicionar (azar, 40);
+		verificar (pp.darIndicePromociones ());
+
+		for (int i = 0; i < 20; i++)
+		{
+			Promocion eliminada = referencia.remove (azar.nextInt (referencia.size ()));
+			assertEquals (1, pp.eliminarPromocionPorId (eliminada.getId ()));
+		}
+		verificar (pp.darIndicePromociones ());
+		verificar (new IndicePromociones (pp));
+	}
+
+	/**
+	 * Verifica los bordes del intervalo de vigencia, que incluye la fecha de inicio y la de fin
+	 */
+	@Test
+	public void losBordesSonVigentes ()
+	{
+		Promocion promocion = new Promocion (0, 100, "bordes", new Timestamp (INICIO), new Timestamp (INICIO + DIA), 10, productos [0]);
+		assertTrue (pp.adicionarPromocion (Arrays.asList (promocion)) != null);
+		IndicePromociones indice = new IndicePromociones (pp);
+		assertTrue (indice.darPromocionesVigentes (productos [0], INICIO - 1).isEmpty ());
+		assertEquals (1, indice.darPromocionesVigentes (productos [0], INICIO).size ());
+		assertEquals (1, indice.darPromocionesVigentes (productos [0], INICIO + DIA).size ());
+		assertTrue (indice.darPromocionesVigentes (productos [0], INICIO + DIA + 1).isEmpty ());
+		assertTrue (indice.darPromocionesVigentes (productos [1], INICIO).isEmpty ());
+	}
+
+	/**
+	 * Adiciona en la base de datos, en un lote, promociones al azar de los productos de prueba, y las agrega a la referencia
+	 * @param azar - El generador de números al azar
+	 * @param cantidad - El número de promociones
+	 */
+	private void adicionar (Random azar, int cantidad)
+	{
+		List<Promocion> nuevas = new ArrayList<Promocion> ();
+		for (int i = 0; i < cantidad; i++)
+		{
+			// Varias promociones empiezan el mismo día, para probar el orden entre ellas
+			long inicio = INICIO + azar.nextInt (60) * DIA;
+			long fin = inicio + azar.nextInt (30) * DIA + azar.nextInt (24) * DIA / 24;
+			nuevas.add (new Promocion (0, 1 + azar.nextInt (1000), "promocion-" + i, new Timestamp (inicio), new Timestamp (fin), 100,
+					productos [azar.nextInt (PRODUCTOS)]));
+		}
+		assertTrue (pp.adicionarPromocion (nuevas) != null);
+		referencia.addAll (nuevas);
+	}
+
+	/**
+	 * Compara las promociones vigentes del índice con las de la referencia, para cada producto, cada día del rango de prueba y a
+	 * mitad de cada día. La referencia ordena de la que empezó más recientemente a la más antigua y, entre las que empezaron al
+	 * mismo tiempo, de mayor a menor identificador
+	 * @param indice - El índice
+	 */
+	private void verificar (IndicePromociones indice)
+	{
+		Comparator<Promocion> orden = Comparator.comparing (Promocion::getFechaInicio).thenComparingLong (Promocion::getId).reversed ();
+		for (long instante = INICIO - DIA; instante <= INICIO + 100 * DIA; instante += DIA / 2)
+		{
+			for (long producto : productos)
+			{
+				long momento = instante;
+				List<Long> esperadas = referencia.stream ()
+						.filter (p -> p.getProducto () == producto && p.getFechaInicio ().getTime () <= momento && momento <= p.getFechaFin ().getTime ())
+						.sorted (orden).map (Promocion::getId).collect (Collectors.toList ());
+				assertEquals ("producto " + producto + " en " + new Timestamp (instante), esperadas,
+						darIdentificadores (indice.darPromocionesVigentes (producto, instante)));
+			}
+			List<Long> canasta = Arrays.stream (productos).boxed ().collect (Collectors.toList ());
+			Map<Long, List<Promocion>> porProducto = indice.darPromocionesVigentes (canasta, instante);
+			for (Map.Entry<Long, List<Promocion>> vigentes : porProducto.entrySet ())
+			{
+				assertEquals (darIdentificadores (vigentes.getValue ()), darIdentificadores (indice.darPromocionesVigentes (vigentes.getKey (), instante)));
+			}
+		}
+	}
+
+	/**
+	 * @param promociones - Unas promociones
+	 * @return Sus identificadores, en el mismo orden
+	 */
+	private static List<Long> darIdentificadores (List<Promocion> promociones)
+	{
+		return promociones.stream ().map (Promocion::getId).collect (Collectors.toList ());
+	}
+}
@@ -0,0 +1,281 @@
+package uniandes.isis2304.superandes.persistencia;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import uniandes.isis2304.superandes.negocio.Bodega;
+import uniandes.isis2304.superandes.negocio.Estante;
+import uniandes.isis2304.superandes.negocio.Producto;
+import uniandes.isis2304.superandes.negocio.Sucursal;
+import uniandes.isis2304.superandes.negocio.SuperAndes;
+
+/**
+ * Pruebas de InventarioSuperAndes sobre la unidad de persistencia embebida: cambios concurrentes sobre los mapas de existencias
+ * repartidos en franjas, con descargas al mismo tiempo, y recuperación de los cambios del diario después de una caída
+ * @author n.cobos, jf.torresp
+ */
+public class InventarioSuperAndesTest
+{
+	/* ****************************************************************
+	 * 			Constantes
+	 *****************************************************************/
+	/**
+	 * Número de productos de la sucursal de prueba
+	 */
+	private static final int PRODUCTOS = 8;
+
+	/**
+	 * Existencias iniciales de cada producto en bodegas
+	 */
+	private static final int BODEGAS_INICIALES = 1000;
+
+	/**
+	 * Existencias iniciales de cada producto en estantes
+	 */
+	private static final int ESTANTES_INICIALES = 200;
+
+	/* ****************************************************************
+	 * 			Atributos
+	 *****************************************************************/
+	/**
+	 * El directorio del diario del inventario, que se borra después de cada prueba
+	 */
+	@Rule
+	public TemporaryFolder carpeta = new TemporaryFolder ();
+
+	/**
+	 * La fachada de la aplicación
+	 */
+	private SuperAndes superandes;
+
+	/**
+	 * El manejador de persistencia
+	 */
+	private PersistenciaSuperAndes pp;
+
+	/**
+	 * El identificador de la sucursal de prueba
+	 */
+	private long sucursal;
+
+	/**
+	 * Los identificadores de los productos de prueba
+	 */
+	private long [] productos;
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	/**
+	 * Borra la base de datos y crea una sucursal con PRODUCTOS productos, cada uno con una bodega y un estante
+	 * @throws IOException - Si no se puede leer la configuración
+	 */
+	@Before
+	public void crearDatos () throws IOException
+	{
+		superandes = new SuperAndes (ConfiguracionPruebas.leerConfiguracion ());
+		pp = PersistenciaSuperAndes.getInstance ();
+		superandes.limpiarSuperAndes ();
+		superandes.adicionarSupermercado ("inventario");
+		Sucursal nueva = superandes.adicionarSucursal ("inventario", "Bogotá", "Calle 1", "medio", 100, "inventario");
+		sucursal = nueva.getId ();
+		productos = new long [PRODUCTOS];
+		List<Bodega> bodegas = new ArrayList<Bodega> ();
+		List<Estante> estantes = new ArrayList<Estante> ();
+		for (int i = 0; i < PRODUCTOS; i++)
+		{
+			Producto producto = superandes.adicionarProducto ("producto-" + i, "marca", "unidad", "77000" + i, "unidad", "categoria", "tipo");
+			productos [i] = producto.getId ();
+			bodegas.add (new Bodega (0, 1000, 1000, BODEGAS_INICIALES, productos [i], sucursal));
+			estantes.add (new Estante (0, 100, 100, ESTANTES_INICIALES, productos [i], sucursal, 1));
+		}
+		assertTrue (pp.adicionarBodega (bodegas) != null);
+		assertTrue (pp.adicionarEstante (estantes) != null);
+	}
+
+	/**
+	 * Borra la base de datos y cierra la unidad de persistencia
+	 */
+	@After
+	public void cerrar ()
+	{
+		superandes.limpiarSuperAndes ();
+		superandes.cerrarUnidadPersistencia ();
+	}
+
+	/**
+	 * Varios hilos venden, trasladan y reciben productos al mismo tiempo sobre pocas franjas mientras otro descarga sin parar.
+	 * Ninguna existencia puede quedar negativa, y al final las existencias en memoria y en la base de datos deben ser las iniciales
+	 * más los cambios que se aceptaron
+	 * @throws Exception - Si falla algún hilo
+	 */
+	@Test
+	public void cambiosConcurrentesConservanLasExistencias () throws Exception
+	{
+		InventarioSuperAndes inventario = new InventarioSuperAndes (pp, carpeta.newFolder ("inventario"), 2, 0, false);
+		AtomicLongArray cambiosBodegas = new AtomicLongArray (PRODUCTOS);
+		AtomicLongArray cambiosEstantes = new AtomicLongArray (PRODUCTOS);
+		AtomicBoolean terminado = new AtomicBoolean ();
+		ExecutorService hilos = Executors.newFixedThreadPool (9);
+		try
+		{
+			List<Future<?>> cajas = new ArrayList<Future<?>> ();
+			for (int h = 0; h < 8; h++)
+			{
+				long semilla = h;
+				cajas.add (hilos.submit ((Callable<Void>) () -> {
+					operar (inventario, new Random (semilla), cambiosBodegas, cambiosEstantes);
+					return null;
+				}));
+			}
+			Future<?> descargas = hilos.submit ((Callable<Void>) () -> {
+				while (!terminado.get ())
+				{
+					assertTrue (inventario.descargar () >= 0);
+				}
+				return null;
+			});
+			for (Future<?> caja : cajas)
+			{
+				caja.get ();
+			}
+			terminado.set (true);
+			descargas.get ();
+		}
+		finally
+		{
+			hilos.shutdownNow ();
+			hilos.awaitTermination (10, TimeUnit.SECONDS);
+		}
+
+		assertTrue (inventario.descargar () >= 0);
+		assertEquals (0, inventario.darUnidadesPendientes ());
+		assertEquals (0, inventario.darFallosDescarga ());
+		for (int i = 0; i < PRODUCTOS; i++)
+		{
+			long [] esperadas = {BODEGAS_INICIALES + cambiosBodegas.get (i), ESTANTES_INICIALES + cambiosEstantes.get (i)};
+			assertArrayEquals ("producto " + i, esperadas, inventario.darExistencias (sucursal, productos [i]));
+			assertArrayEquals ("producto " + i, esperadas, pp.leerExistencias (sucursal, productos [i]));
+		}
+		inventario.cerrar ();
+	}
+
+	/**
+	 * Las operaciones de una caja: ventas de varios productos, traslados a los estantes y recepciones en las bodegas, al azar.
+	 * Registra los cambios aceptados y verifica que ninguna existencia leída sea negativa
+	 * @param inventario - El inventario
+	 * @param azar - El generador de números al azar de la caja
+	 * @param cambiosBodegas - Los cambios aceptados en las bodegas de cada producto
+	 * @param cambiosEstantes - Los cambios aceptados en los estantes de cada producto
+	 */
+	private void operar (InventarioSuperAndes inventario, Random azar, AtomicLongArray cambiosBodegas, AtomicLongArray cambiosEstantes)
+	{
+		for (int operacion = 0; operacion < 2000; operacion++)
+		{
+			int tipo = azar.nextInt (10);
+			if (tipo < 6)
+			{
+				Map<Long, Integer> cantidades = new HashMap<Long, Integer> ();
+				Map<Integer, Integer> porIndice = new HashMap<Integer, Integer> ();
+				for (int linea = 0; linea < 3; linea++)
+				{
+					int i = azar.nextInt (PRODUCTOS);
+					int cantidad = 1 + azar.nextInt (5);
+					cantidades.put (productos [i], cantidad);
+					porIndice.put (i, cantidad);
+				}
+				if (inventario.disminuirExistenciasEstantes (sucursal, cantidades))
+				{
+					porIndice.forEach ((i, cantidad) -> cambiosEstantes.addAndGet (i, -cantidad));
+				}
+			}
+			else if (tipo < 9)
+			{
+				int i = azar.nextInt (PRODUCTOS);
+				int cantidad = 1 + azar.nextInt (10);
+				if (inventario.trasladarAEstantes (sucursal, productos [i], cantidad))
+				{
+					cambiosBodegas.addAndGet (i, -cantidad);
+					cambiosEstantes.addAndGet (i, cantidad);
+				}
+			}
+			else
+			{
+				int i = azar.nextInt (PRODUCTOS);
+				inventario.aumentarExistenciasBodegas (sucursal, Collections.singletonMap (productos [i], 5));
+				cambiosBodegas.addAndGet (i, 5);
+			}
+			long [] existencias = inventario.darExistencias (sucursal, productos [azar.nextInt (PRODUCTOS)]);
+			assertTrue (existencias [0] >= 0 && existencias [1] >= 0);
+		}
+	}
+
+	/**
+	 * Simula una caída antes de descargar: otro inventario sobre el mismo diario debe recuperar los cambios y descargarlos. Simula
+	 * después una caída entre la confirmación de una descarga y el borrado de sus segmentos: esos segmentos no deben aplicarse otra vez
+	 * @throws IOException - Si falla el diario
+	 */
+	@Test
+	public void recuperaLosCambiosDelDiario () throws IOException
+	{
+		File directorio = carpeta.newFolder ("inventario");
+		InventarioSuperAndes caido = new InventarioSuperAndes (pp, directorio, 4, 0, false);
+		assertTrue (caido.disminuirExistenciasEstantes (sucursal, Collections.singletonMap (productos [0], 7)));
+		assertTrue (caido.trasladarAEstantes (sucursal, productos [1], 30));
+		assertFalse (caido.trasladarAEstantes (sucursal, productos [2], BODEGAS_INICIALES + 1));
+		// Sin descargar ni cerrar: la base de datos no tiene los cambios
+		assertArrayEquals (new long [] {BODEGAS_INICIALES, ESTANTES_INICIALES}, pp.leerExistencias (sucursal, productos [0]));
+
+		InventarioSuperAndes recuperado = new InventarioSuperAndes (pp, directorio, 4, 0, false);
+		assertArrayEquals (new long [] {BODEGAS_INICIALES, ESTANTES_INICIALES - 7}, recuperado.darExistencias (sucursal, productos [0]));
+		assertArrayEquals (new long [] {BODEGAS_INICIALES - 30, ESTANTES_INICIALES + 30}, recuperado.darExistencias (sucursal, productos [1]));
+		assertTrue (recuperado.disminuirExistenciasEstantes (sucursal, Collections.singletonMap (productos [0], 3)));
+
+		// Se guarda una copia de los segmentos para restaurarlos después de la descarga, como si no se hubieran alcanzado a borrar
+		File copia = carpeta.newFolder ("copia");
+		for (File segmento : directorio.listFiles ())
+		{
+			Files.copy (segmento.toPath (), new File (copia, segmento.getName ()).toPath ());
+		}
+		assertTrue (recuperado.descargar () > 0);
+		assertArrayEquals (new long [] {BODEGAS_INICIALES, ESTANTES_INICIALES - 10}, pp.leerExistencias (sucursal, productos [0]));
+		assertArrayEquals (new long [] {BODEGAS_INICIALES - 30, ESTANTES_INICIALES + 30}, pp.leerExistencias (sucursal, productos [1]));
+		recuperado.cerrar ();
+		for (File segmento : copia.listFiles ())
+		{
+			Files.copy (segmento.toPath (), new File (directorio, segmento.getName ()).toPath (), StandardCopyOption.REPLACE_EXISTING);
+		}
+
+		InventarioSuperAndes reiniciado = new InventarioSuperAndes (pp, directorio, 4, 0, false);
+		assertEquals (0, reiniciado.darUnidadesPendientes ());
+		assertArrayEquals (new long [] {BODEGAS_INICIALES, ESTANTES_INICIALES - 10}, reiniciado.darExistencias (sucursal, productos [0]));
+		reiniciado.cerrar ();
+		assertArrayEquals (new long [] {BODEGAS_INICIALES, ESTANTES_INICIALES - 10}, pp.leerExistencias (sucursal, productos [0]));
+	}
+}
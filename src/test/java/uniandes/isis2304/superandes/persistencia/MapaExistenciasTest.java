@@ -0,0 +1,164 @@
+package uniandes.isis2304.superandes.persistencia;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Pruebas de MapaExistencias contra un mapa de referencia: existencias, cambios pendientes y crecimiento con cambios pendientes.
+ * El uso concurrente de los mapas, cada uno con el candado de su franja, se prueba en InventarioSuperAndesTest
+ * @author n.cobos, jf.torresp
+ */
+public class MapaExistenciasTest
+{
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	/**
+	 * Inserta llaves y aplica cambios al azar, extrayendo los pendientes de vez en cuando, y compara las existencias y los pendientes
+	 * con el mapa de referencia. Las llaves se insertan mientras hay cambios pendientes, de manera que el mapa crece con ellos
+	 */
+	@Test
+	public void coincideConReferencia ()
+	{
+		Random azar = new Random (12);
+		MapaExistencias mapa = new MapaExistencias ();
+		// {bodegas, estantes, pendientes de bodegas, pendientes de estantes} de cada llave {sucursal, producto}
+		Map<List<Long>, long []> referencia = new HashMap<List<Long>, long []> ();
+		List<List<Long>> llaves = new ArrayList<List<Long>> ();
+		for (int paso = 0; paso < 50000; paso++)
+		{
+			int accion = azar.nextInt (100);
+			if (accion < 5 || llaves.isEmpty ())
+			{
+				List<Long> llave = Arrays.asList ((long) 1 + azar.nextInt (10), (long) 1 + azar.nextInt (100000));
+				if (referencia.containsKey (llave))
+				{
+					continue;
+				}
+				long bodegas = azar.nextInt (1000);
+				long estantes = azar.nextInt (1000);
+				mapa.insertar (llave.get (0), llave.get (1), bodegas, estantes);
+				referencia.put (llave, new long [] {bodegas, estantes, 0, 0});
+				llaves.add (llave);
+			}
+			else if (accion < 90)
+			{
+				List<Long> llave = llaves.get (azar.nextInt (llaves.size ()));
+				long cambioBodegas = azar.nextInt (21) - 10;
+				long cambioEstantes = azar.nextInt (21) - 10;
+				mapa.sumarExistencias (mapa.buscar (llave.get (0), llave.get (1)), cambioBodegas, cambioEstantes);
+				long [] esperado = referencia.get (llave);
+				esperado [0] += cambioBodegas;
+				esperado [1] += cambioEstantes;
+				esperado [2] += cambioBodegas;
+				esperado [3] += cambioEstantes;
+			}
+			else if (accion < 99)
+			{
+				List<Long> llave = llaves.get (azar.nextInt (llaves.size ()));
+				long cambio = azar.nextInt (100);
+				mapa.sumarConfirmadas (mapa.buscar (llave.get (0), llave.get (1)), cambio, 0);
+				referencia.get (llave) [0] += cambio;
+			}
+			else
+			{
+				verificarPendientes (mapa, referencia);
+			}
+		}
+		assertTrue ("El mapa debe haber crecido varias veces", referencia.size () > 1000);
+		assertEquals (referencia.size (), mapa.darTamano ());
+		for (Map.Entry<List<Long>, long []> entrada : referencia.entrySet ())
+		{
+			int i = mapa.buscar (entrada.getKey ().get (0), entrada.getKey ().get (1));
+			assertTrue (entrada.getKey ().toString (), i >= 0);
+			assertEquals (entrada.getValue () [0], mapa.darBodegas (i));
+			assertEquals (entrada.getValue () [1], mapa.darEstantes (i));
+		}
+		assertEquals (-1, mapa.buscar (11, 1));
+		verificarPendientes (mapa, referencia);
+		assertFalse (mapa.tienePendientes ());
+	}
+
+	/**
+	 * Verifica que limpiar borra las entradas y sus pendientes y cambia la versión
+	 */
+	@Test
+	public void limpiarBorraTodo ()
+	{
+		MapaExistencias mapa = new MapaExistencias ();
+		for (long producto = 1; producto <= 200; producto++)
+		{
+			mapa.sumarExistencias (mapa.insertar (1, producto, 10, 10), -1, -1);
+		}
+		long version = mapa.darVersion ();
+		mapa.limpiar ();
+		assertEquals (0, mapa.darTamano ());
+		assertFalse (mapa.tienePendientes ());
+		assertEquals (0, mapa.darUnidadesPendientes ());
+		assertEquals (-1, mapa.buscar (1, 1));
+		assertTrue (mapa.darVersion () != version);
+
+		int i = mapa.insertar (1, 1, 5, 5);
+		assertEquals (5, mapa.darBodegas (i));
+		assertFalse (mapa.tienePendientes ());
+	}
+
+	/**
+	 * Extrae los cambios pendientes del mapa, los compara con los de la referencia y deja la referencia sin pendientes
+	 * @param mapa - El mapa
+	 * @param referencia - Las existencias y los pendientes de referencia de cada llave
+	 */
+	private static void verificarPendientes (MapaExistencias mapa, Map<List<Long>, long []> referencia)
+	{
+		long unidades = 0;
+		Map<List<Long>, Long> esperadosBodegas = new HashMap<List<Long>, Long> ();
+		Map<List<Long>, Long> esperadosEstantes = new HashMap<List<Long>, Long> ();
+		for (Map.Entry<List<Long>, long []> entrada : referencia.entrySet ())
+		{
+			long [] valores = entrada.getValue ();
+			unidades += Math.abs (valores [2]) + Math.abs (valores [3]);
+			if (valores [2] != 0)
+			{
+				esperadosBodegas.put (entrada.getKey (), valores [2]);
+			}
+			if (valores [3] != 0)
+			{
+				esperadosEstantes.put (entrada.getKey (), valores [3]);
+			}
+			valores [2] = 0;
+			valores [3] = 0;
+		}
+		assertEquals (unidades, mapa.darUnidadesPendientes ());
+
+		List<long []> cambiosBodegas = new ArrayList<long []> ();
+		List<long []> cambiosEstantes = new ArrayList<long []> ();
+		mapa.extraerPendientes (cambiosBodegas, cambiosEstantes);
+		assertEquals (esperadosBodegas, agrupar (cambiosBodegas));
+		assertEquals (esperadosEstantes, agrupar (cambiosEstantes));
+		assertFalse (mapa.tienePendientes ());
+	}
+
+	/**
+	 * @param cambios - Cambios extraídos del mapa, como {sucursal, producto, cambio}
+	 * @return Los cambios por llave {sucursal, producto}. Falla si una llave aparece dos veces
+	 */
+	private static Map<List<Long>, Long> agrupar (List<long []> cambios)
+	{
+		Map<List<Long>, Long> resp = new HashMap<List<Long>, Long> ();
+		for (long [] cambio : cambios)
+		{
+			assertEquals ("Cada llave se extrae una sola vez", null, resp.put (Arrays.asList (cambio [0], cambio [1]), cambio [2]));
+		}
+		return resp;
+	}
+}
@@ -0,0 +1,262 @@
+package uniandes.isis2304.superandes.persistencia;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.jdo.PersistenceManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.gson.JsonObject;
+
+import uniandes.isis2304.superandes.negocio.Bodega;
+import uniandes.isis2304.superandes.negocio.Estante;
+import uniandes.isis2304.superandes.negocio.Ofrecen;
+import uniandes.isis2304.superandes.negocio.Pedido;
+import uniandes.isis2304.superandes.negocio.SuperAndes;
+import uniandes.isis2304.superandes.negocio.Vende;
+
+/**
+ * Pruebas de MotorReorden sobre la unidad de persistencia embebida: el nivel de reorden como umbral, la elección del proveedor más
+ * barato, un pedido por sucursal y proveedor, y los productos que quedan por revisar cuando falla el registro de los pedidos.
+ * El inventario en memoria está activo, para que las existencias ya leídas no requieran la base de datos, y el pool tiene un solo
+ * cupo, para poder hacer fallar el registro ocupándolo
+ * @author n.cobos, jf.torresp
+ */
+public class MotorReordenTest
+{
+	/* ****************************************************************
+	 * 			Constantes
+	 *****************************************************************/
+	/**
+	 * Nivel de reorden de todos los productos que venden las sucursales
+	 */
+	private static final int NIVEL = 50;
+
+	/**
+	 * Factor del nivel de reorden hasta el que se piden existencias
+	 */
+	private static final double FACTOR = 2;
+
+	/* ****************************************************************
+	 * 			Atributos
+	 *****************************************************************/
+	/**
+	 * El directorio del diario del inventario, que se borra después de cada prueba
+	 */
+	@Rule
+	public TemporaryFolder carpeta = new TemporaryFolder ();
+
+	/**
+	 * La fachada de la aplicación
+	 */
+	private SuperAndes superandes;
+
+	/**
+	 * El manejador de persistencia
+	 */
+	private PersistenciaSuperAndes pp;
+
+	/**
+	 * Los identificadores de las dos sucursales de prueba
+	 */
+	private long [] sucursales;
+
+	/**
+	 * Los identificadores de los tres productos de prueba
+	 */
+	private long [] productos;
+
+	/**
+	 * El NIT del proveedor A, el más barato de los productos 0 y 1
+	 */
+	private long proveedorA;
+
+	/**
+	 * El NIT del proveedor B, el más barato del producto 2
+	 */
+	private long proveedorB;
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	/**
+	 * Borra la base de datos y crea dos sucursales, tres productos y dos proveedores. Las existencias, sumando bodega y estante, son:
+	 * <ul>
+	 * <li>Sucursal 0: producto 0 con 30, producto 1 con 50 (justo el nivel de reorden) y producto 2 con 10</li>
+	 * <li>Sucursal 1: producto 0 con 60, producto 1 con 40 y producto 2 con 5, que la sucursal no vende</li>
+	 * </ul>
+	 * El proveedor A ofrece los productos 0, 1 y 2 a 10, 5 y 9; el proveedor B ofrece los productos 0 y 2 a 12 y 7
+	 * @throws IOException - Si no se puede leer la configuración o crear el directorio del inventario
+	 */
+	@Before
+	public void crearDatos () throws IOException
+	{
+		JsonObject config = ConfiguracionPruebas.leerConfiguracion ();
+		config.getAsJsonObject ("poolConexiones").addProperty ("maxActivos", 1);
+		config.getAsJsonObject ("poolConexiones").addProperty ("esperaMaximaMs", 200);
+		JsonObject inventario = config.getAsJsonObject ("inventario");
+		inventario.addProperty ("activo", true);
+		inventario.addProperty ("diario", carpeta.newFolder ("inventario").getAbsolutePath ());
+		inventario.addProperty ("descargaMs", 0);
+		superandes = new SuperAndes (config);
+		pp = PersistenciaSuperAndes.getInstance ();
+		superandes.limpiarSuperAndes ();
+
+		superandes.adicionarSupermercado ("reorden");
+		sucursales = new long [] {superandes.adicionarSucursal ("reorden-0", "Bogot\u00e1", "Calle 1", "medio", 100, "reorden").getId (),
+				superandes.adicionarSucursal ("reorden-1", "Bogot\u00e1", "Calle 2", "medio", 100, "reorden").getId ()};
+		productos = new long [3];
+		for (int i = 0; i < productos.length; i++)
+		{
+			productos [i] = superandes.adicionarProducto ("producto-" + i, "marca", "unidad", "77000" + i, "unidad", "categoria", "tipo").getId ();
+		}
+		proveedorA = superandes.adicionarProveedor ("proveedor-a", 5).getNit ();
+		proveedorB = superandes.adicionarProveedor ("proveedor-b", 5).getNit ();
+		assertTrue (pp.adicionarOfrecen (Arrays.asList (new Ofrecen (productos [0], proveedorA, 10), new Ofrecen (productos [1], proveedorA, 5),
+				new Ofrecen (productos [2], proveedorA, 9), new Ofrecen (productos [0], proveedorB, 12),
+				new Ofrecen (productos [2], proveedorB, 7))) != null);
+		assertTrue (pp.adicionarVende (Arrays.asList (new Vende (sucursales [0], productos [0], NIVEL, 100, 100),
+				new Vende (sucursales [0], productos [1], NIVEL, 100, 100), new Vende (sucursales [0], productos [2], NIVEL, 100, 100),
+				new Vende (sucursales [1], productos [0], NIVEL, 100, 100), new Vende (sucursales [1], productos [1], NIVEL, 100, 100))) != null);
+		assertTrue (pp.adicionarBodega (Arrays.asList (new Bodega (0, 1000, 1000, 20, productos [0], sucursales [0]),
+				new Bodega (0, 1000, 1000, 25, productos [1], sucursales [0]), new Bodega (0, 1000, 1000, 5, productos [2], sucursales [0]),
+				new Bodega (0, 1000, 1000, 30, productos [0], sucursales [1]), new Bodega (0, 1000, 1000, 20, productos [1], sucursales [1]),
+				new Bodega (0, 1000, 1000, 0, productos [2], sucursales [1]))) != null);
+		assertTrue (pp.adicionarEstante (Arrays.asList (new Estante (0, 100, 100, 10, productos [0], sucursales [0], 1),
+				new Estante (0, 100, 100, 25, productos [1], sucursales [0], 1), new Estante (0, 100, 100, 5, productos [2], sucursales [0], 1),
+				new Estante (0, 100, 100, 30, productos [0], sucursales [1], 1), new Estante (0, 100, 100, 20, productos [1], sucursales [1], 1),
+				new Estante (0, 100, 100, 5, productos [2], sucursales [1], 1))) != null);
+	}
+
+	/**
+	 * Borra la base de datos y cierra la unidad de persistencia
+	 */
+	@After
+	public void cerrar ()
+	{
+		superandes.limpiarSuperAndes ();
+		superandes.cerrarUnidadPersistencia ();
+	}
+
+	/**
+	 * Sólo se piden los productos por debajo del nivel de reorden que la sucursal vende, hasta FACTOR veces el nivel, al proveedor
+	 * más barato, en un pedido por sucursal y proveedor. Los productos en pedido no se vuelven a pedir
+	 */
+	@Test
+	public void generaUnPedidoPorSucursalYProveedor ()
+	{
+		MotorReorden motor = new MotorReorden (pp, FACTOR, 3, 0);
+		notificarTodos (motor);
+		Map<List<Long>, Pedido> pedidos = agrupar (motor.generarPedidos ());
+		assertEquals (3, pedidos.size ());
+		verificar (pedidos.get (Arrays.asList (sucursales [0], proveedorA)), 70, 70 * 10);
+		verificar (pedidos.get (Arrays.asList (sucursales [0], proveedorB)), 90, 90 * 7);
+		verificar (pedidos.get (Arrays.asList (sucursales [1], proveedorA)), 60, 60 * 5);
+		assertEquals (3, motor.darProductosEnPedido ());
+		assertEquals (3, motor.darPedidosGenerados ());
+
+		notificarTodos (motor);
+		assertTrue ("Los productos en pedido no se vuelven a pedir", motor.generarPedidos ().isEmpty ());
+	}
+
+	/**
+	 * Al recibir el pedido de un producto que sigue por debajo del nivel de reorden, se vuelve a pedir sin esperar otra venta
+	 */
+	@Test
+	public void vuelveAPedirDespuesDeLaRecepcion ()
+	{
+		MotorReorden motor = new MotorReorden (pp, FACTOR, 3, 0);
+		notificarTodos (motor);
+		assertEquals (3, motor.generarPedidos ().size ());
+
+		motor.notificarRecepcion (sucursales [0], Collections.singletonList (productos [0]));
+		Map<List<Long>, Pedido> pedidos = agrupar (motor.generarPedidos ());
+		assertEquals (1, pedidos.size ());
+		verificar (pedidos.get (Arrays.asList (sucursales [0], proveedorA)), 70, 70 * 10);
+	}
+
+	/**
+	 * Un producto que baja del nivel de reorden cuando falla el registro de los pedidos, aquí por no haber cupo en el pool, queda por
+	 * revisar: la ronda siguiente lo pide sin otra venta
+	 */
+	@Test
+	public void conservaLosProductosSiFallaElRegistro ()
+	{
+		MotorReorden motor = new MotorReorden (pp, FACTOR, 3, 0);
+		// La primera ronda deja leídos el nivel de reorden y las existencias del producto 0 en la sucursal 1, y el proveedor del producto 0
+		motor.notificarCambio (sucursales [0], Collections.singletonList (productos [0]));
+		motor.notificarCambio (sucursales [1], Collections.singletonList (productos [0]));
+		assertEquals (1, motor.generarPedidos ().size ());
+		assertTrue (pp.darInventario ().disminuirExistenciasEstantes (sucursales [1], Collections.singletonMap (productos [0], 20)));
+
+		PersistenceManager ocupado = pp.darAdministradorPersistenceManagers ().abrir ("ocupado");
+		try
+		{
+			motor.notificarCambio (sucursales [1], Collections.singletonList (productos [0]));
+			assertTrue (motor.generarPedidos ().isEmpty ());
+		}
+		finally
+		{
+			ocupado.close ();
+		}
+		assertEquals (1, motor.darProductosEnPedido ());
+
+		Map<List<Long>, Pedido> pedidos = agrupar (motor.generarPedidos ());
+		assertEquals (1, pedidos.size ());
+		verificar (pedidos.get (Arrays.asList (sucursales [1], proveedorA)), 60, 60 * 10);
+		assertEquals (2, motor.darProductosEnPedido ());
+	}
+
+	/**
+	 * Marca para revisión todos los productos en las dos sucursales
+	 * @param motor - El motor de reorden
+	 */
+	private void notificarTodos (MotorReorden motor)
+	{
+		for (long sucursal : sucursales)
+		{
+			motor.notificarCambio (sucursal, Arrays.asList (productos [0], productos [1], productos [2]));
+		}
+	}
+
+	/**
+	 * @param pedidos - Los pedidos generados en una ronda
+	 * @return Los pedidos por {sucursal, proveedor}, verificando que no se repite ninguno
+	 */
+	private Map<List<Long>, Pedido> agrupar (List<Pedido> pedidos)
+	{
+		Map<List<Long>, Pedido> resp = new HashMap<List<Long>, Pedido> ();
+		for (Pedido pedido : pedidos)
+		{
+			assertTrue (pedido.getId () > 0);
+			assertNull (resp.put (Arrays.asList (pedido.getSucursal (), pedido.getProveedor ()), pedido));
+		}
+		return resp;
+	}
+
+	/**
+	 * Verifica la cantidad y el costo total de un pedido pendiente
+	 * @param pedido - El pedido
+	 * @param cantidad - La cantidad esperada
+	 * @param costo - El costo total esperado
+	 */
+	private void verificar (Pedido pedido, int cantidad, double costo)
+	{
+		assertEquals ("pendiente", pedido.getEstadoOrden ());
+		assertEquals (cantidad, pedido.getCantidad ());
+		assertEquals (costo, pedido.getCostoTotal (), 1e-9);
+	}
+}
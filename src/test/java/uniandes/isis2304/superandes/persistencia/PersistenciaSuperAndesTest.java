@@ -0,0 +1,194 @@
+package uniandes.isis2304.superandes.persistencia;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import uniandes.isis2304.superandes.negocio.Estante;
+import uniandes.isis2304.superandes.negocio.Factura;
+import uniandes.isis2304.superandes.negocio.SuperAndes;
+import uniandes.isis2304.superandes.negocio.Transaccion;
+
+/**
+ * Pruebas del registro de ventas de PersistenciaSuperAndes sobre la unidad de persistencia embebida, sin inventario en memoria: la venta
+ * descuenta de los estantes aunque las existencias de un producto estén repartidas entre varios, y se registra completa o no se
+ * registra nada
+ * @author n.cobos, jf.torresp
+ */
+public class PersistenciaSuperAndesTest
+{
+	/* ****************************************************************
+	 * 			Atributos
+	 *****************************************************************/
+	/**
+	 * La fachada de la aplicación
+	 */
+	private SuperAndes superandes;
+
+	/**
+	 * El manejador de persistencia
+	 */
+	private PersistenciaSuperAndes pp;
+
+	/**
+	 * El identificador de la sucursal de prueba
+	 */
+	private long sucursal;
+
+	/**
+	 * El identificador del cliente de prueba
+	 */
+	private long cliente;
+
+	/**
+	 * Los identificadores de los productos de prueba
+	 */
+	private long [] productos;
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	/**
+	 * Borra la base de datos y crea una sucursal, un cliente y dos productos, cada uno con dos estantes: el producto 0 con 5 y 7
+	 * unidades, y el producto 1 con 2 y 2 unidades
+	 * @throws IOException - Si no se puede leer la configuración
+	 */
+	@Before
+	public void crearDatos () throws IOException
+	{
+		superandes = new SuperAndes (ConfiguracionPruebas.leerConfiguracion ());
+		pp = PersistenciaSuperAndes.getInstance ();
+		superandes.limpiarSuperAndes ();
+		superandes.adicionarSupermercado ("ventas");
+		sucursal = superandes.adicionarSucursal ("ventas", "Bogot\u00e1", "Calle 1", "medio", 100, "ventas").getId ();
+		cliente = superandes.adicionarCliente ("cliente", "cliente@superandes.com", "persona", "Calle 2").getId ();
+		productos = new long [2];
+		for (int i = 0; i < productos.length; i++)
+		{
+			productos [i] = superandes.adicionarProducto ("producto-" + i, "marca", "unidad", "77000" + i, "unidad", "categoria", "tipo").getId ();
+		}
+		assertTrue (pp.adicionarEstante (Arrays.asList (new Estante (0, 100, 100, 5, productos [0], sucursal, 1),
+				new Estante (0, 100, 100, 7, productos [0], sucursal, 1), new Estante (0, 100, 100, 2, productos [1], sucursal, 1),
+				new Estante (0, 100, 100, 2, productos [1], sucursal, 1))) != null);
+	}
+
+	/**
+	 * Borra la base de datos y cierra la unidad de persistencia
+	 */
+	@After
+	public void cerrar ()
+	{
+		superandes.limpiarSuperAndes ();
+		superandes.cerrarUnidadPersistencia ();
+	}
+
+	/**
+	 * Una cantidad que cabe en un estante se descuenta sólo de él
+	 */
+	@Test
+	public void descuentaDeUnEstante ()
+	{
+		assertNotNull (pp.registrarVenta (cliente, sucursal, lineas (productos [0], 3)));
+		assertEquals (Arrays.asList (2, 7), darExistencias (productos [0]));
+		assertEquals (1, contarFacturas ());
+		assertEquals (1, contarTransacciones ());
+	}
+
+	/**
+	 * Una cantidad que ningún estante tiene completa se reparte entre los estantes del producto, en orden de identificador. Las
+	 * dos líneas del mismo producto se suman antes de descontar
+	 */
+	@Test
+	public void repartePorLosEstantes ()
+	{
+		List<Transaccion> venta = lineas (productos [0], 4);
+		venta.addAll (lineas (productos [0], 6));
+		venta.addAll (lineas (productos [1], 3));
+		Factura factura = pp.registrarVenta (cliente, sucursal, venta);
+		assertNotNull (factura);
+		assertEquals (Arrays.asList (0, 2), darExistencias (productos [0]));
+		assertEquals (Arrays.asList (0, 1), darExistencias (productos [1]));
+		assertEquals (1, contarFacturas ());
+		assertEquals (3, contarTransacciones ());
+	}
+
+	/**
+	 * Si un producto no tiene existencias suficientes ni sumando sus estantes, no se registra la factura, ni las transacciones, ni
+	 * los descuentos de los demás productos ni la parte repartida del producto que falta
+	 */
+	@Test
+	public void noRegistraNadaSinExistencias ()
+	{
+		List<Transaccion> venta = lineas (productos [0], 10);
+		venta.addAll (lineas (productos [1], 5));
+		assertNull (pp.registrarVenta (cliente, sucursal, venta));
+		assertEquals (Arrays.asList (5, 7), darExistencias (productos [0]));
+		assertEquals (Arrays.asList (2, 2), darExistencias (productos [1]));
+		assertEquals (0, contarFacturas ());
+		assertEquals (0, contarTransacciones ());
+	}
+
+	/**
+	 * @param producto - El identificador del producto
+	 * @param cantidad - La cantidad vendida
+	 * @return Una lista modificable con una línea de venta del producto
+	 */
+	private List<Transaccion> lineas (long producto, int cantidad)
+	{
+		List<Transaccion> resp = new ArrayList<Transaccion> ();
+		resp.add (new Transaccion (0, cantidad, 10 * cantidad, producto, 0));
+		return resp;
+	}
+
+	/**
+	 * @param producto - El identificador del producto
+	 * @return Las existencias de cada estante del producto en la sucursal, en orden de identificador del estante
+	 */
+	private List<Integer> darExistencias (long producto)
+	{
+		Map<Long, Integer> resp = new TreeMap<Long, Integer> ();
+		for (Estante estante : pp.darEstantesPorSucursal (sucursal))
+		{
+			if (estante.getProducto () == producto)
+			{
+				resp.put (estante.getId (), estante.getExistencias ());
+			}
+		}
+		return new ArrayList<Integer> (resp.values ());
+	}
+
+	/**
+	 * @return El número de tuplas de FACTURA en la base de datos
+	 */
+	private long contarFacturas ()
+	{
+		try (Stream<Factura> facturas = pp.recorrerFacturas ())
+		{
+			return facturas.count ();
+		}
+	}
+
+	/**
+	 * @return El número de tuplas de TRANSACCION en la base de datos
+	 */
+	private long contarTransacciones ()
+	{
+		try (Stream<Transaccion> transacciones = pp.recorrerTransacciones ())
+		{
+			return transacciones.count ();
+		}
+	}
+}
@@ -0,0 +1,207 @@
+package uniandes.isis2304.superandes.persistencia;
+
+import static org.junit.Assert.assertEquals;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import uniandes.isis2304.superandes.negocio.Promocion;
+import uniandes.isis2304.superandes.negocio.Transaccion;
+
+/**
+ * Pruebas de RankingPromociones sin base de datos: la clasificación se vacía con limpiar, que la deja cargada, y las promociones y
+ * las ventas se registran en memoria. Se verifica que una promoción del montículo cambia de posición al vender, que la peor sale
+ * cuando otra la supera y que al eliminar una de las mejores entra la siguiente, también contra una clasificación de referencia
+ * @author n.cobos, jf.torresp
+ */
+public class RankingPromocionesTest
+{
+	/* ****************************************************************
+	 * 			Constantes
+	 *****************************************************************/
+	/**
+	 * Milisegundos en un día
+	 */
+	private static final long DIA = 24 * 60 * 60 * 1000L;
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	/**
+	 * Una promoción del montículo que pasa de la peor a la mejor debe dejar de ser la que sale: al llegar otra que supera a la nueva
+	 * peor, sale la nueva peor
+	 */
+	@Test
+	public void reordenaDentroDelMonticulo ()
+	{
+		RankingPromociones ranking = crear (2, 1, 1, 1);
+		vender (ranking, 1, 5);
+		vender (ranking, 2, 3);
+		verificar (ranking, 1, 2);
+
+		vender (ranking, 2, 10);
+		verificar (ranking, 2, 1);
+
+		vender (ranking, 3, 6);
+		verificar (ranking, 2, 3);
+	}
+
+	/**
+	 * Una promoción que no está en el montículo sólo entra al superar a la peor, en unidades por día de duración, y en empate gana la
+	 * de menor identificador
+	 */
+	@Test
+	public void entraSoloAlSuperarALaPeor ()
+	{
+		// La promoción 1 dura 2 días, las demás 1
+		RankingPromociones ranking = crear (2, 2, 1, 1);
+		vender (ranking, 1, 10);
+		vender (ranking, 2, 4);
+		vender (ranking, 3, 4);
+		verificar (ranking, 1, 2);
+
+		vender (ranking, 3, 1);
+		verificar (ranking, 1, 3);
+
+		vender (ranking, 2, 1);
+		verificar (ranking, 1, 2);
+		assertEquals (5.0, (double) ranking.darMejores (1).get (0) [2], 1e-9);
+	}
+
+	/**
+	 * Al eliminar una promoción del montículo, la mejor de las que estaban fuera toma su lugar; eliminar una de fuera no cambia nada
+	 */
+	@Test
+	public void eliminarRearmaElMonticulo ()
+	{
+		RankingPromociones ranking = crear (2, 1, 1, 1, 1);
+		vender (ranking, 1, 10);
+		vender (ranking, 2, 8);
+		vender (ranking, 3, 5);
+		vender (ranking, 4, 2);
+		verificar (ranking, 1, 2);
+
+		ranking.eliminarPromocion (4);
+		verificar (ranking, 1, 2);
+
+		ranking.eliminarPromocion (1);
+		verificar (ranking, 2, 3);
+
+		ranking.eliminarPromocion (2);
+		ranking.eliminarPromocion (3);
+		verificar (ranking);
+	}
+
+	/**
+	 * Registra ventas al azar, en lotes, sobre muchas promociones de duraciones distintas, con eliminaciones de por medio, y compara
+	 * las mejores con las de una clasificación de referencia después de cada lote
+	 */
+	@Test
+	public void coincideConReferencia ()
+	{
+		Random azar = new Random (17);
+		int promociones = 200;
+		int [] dias = new int [promociones];
+		for (int i = 0; i < promociones; i++)
+		{
+			dias [i] = 1 + azar.nextInt (10);
+		}
+		RankingPromociones ranking = crear (10, dias);
+		Map<Long, Long> unidades = new HashMap<Long, Long> ();
+		for (long id = 1; id <= promociones; id++)
+		{
+			unidades.put (id, 0L);
+		}
+
+		for (int lote = 0; lote < 100; lote++)
+		{
+			List<Transaccion> transacciones = new ArrayList<Transaccion> ();
+			for (int i = 0; i < 20; i++)
+			{
+				long id = 1 + azar.nextInt (promociones);
+				int cantidad = 1 + azar.nextInt (5);
+				transacciones.add (new Transaccion (lote, cantidad, 10 * cantidad, 1, id));
+				if (unidades.containsKey (id))
+				{
+					unidades.put (id, unidades.get (id) + cantidad);
+				}
+			}
+			ranking.registrarTransacciones (transacciones);
+			if (lote % 10 == 9)
+			{
+				// Se elimina una de las mejores, para que se rearme el montículo
+				long eliminada = (long) ranking.darMejores (1).get (0) [0];
+				ranking.eliminarPromocion (eliminada);
+				unidades.remove (eliminada);
+			}
+
+			List<Long> referencia = new ArrayList<Long> (unidades.keySet ());
+			Comparator<Long> porVentas = Comparator.comparingDouble (id -> unidades.get (id) / (double) dias [(int) (long) id - 1]);
+			Collections.sort (referencia, porVentas.reversed ().thenComparing (Comparator.naturalOrder ()));
+			List<Object []> mejores = ranking.darMejores (ranking.darTamano ());
+			assertEquals (ranking.darTamano (), mejores.size ());
+			for (int i = 0; i < mejores.size (); i++)
+			{
+				long id = referencia.get (i);
+				assertEquals ("Lote " + lote + ", posici\u00f3n " + i, id, (long) mejores.get (i) [0]);
+				assertEquals (unidades.get (id), mejores.get (i) [1]);
+			}
+		}
+	}
+
+	/**
+	 * Crea una clasificación vacía y cargada, y le agrega promociones con identificadores 1, 2, ... sin ventas
+	 * @param tamano - El número de promociones que se mantienen clasificadas
+	 * @param dias - La duración en días de cada promoción
+	 * @return La clasificación
+	 */
+	private RankingPromociones crear (int tamano, int... dias)
+	{
+		RankingPromociones ranking = new RankingPromociones (null, tamano);
+		ranking.limpiar ();
+		for (int i = 0; i < dias.length; i++)
+		{
+			ranking.agregarPromocion (new Promocion (i + 1, 100, "promocion", new Timestamp (0), new Timestamp (dias [i] * DIA), 100, 1));
+		}
+		return ranking;
+	}
+
+	/**
+	 * Registra una venta con promoción
+	 * @param ranking - La clasificación
+	 * @param idPromocion - El identificador de la promoción
+	 * @param cantidad - Las unidades vendidas
+	 */
+	private void vender (RankingPromociones ranking, long idPromocion, int cantidad)
+	{
+		ranking.registrarTransacciones (Collections.singletonList (new Transaccion (1, cantidad, 10 * cantidad, 1, idPromocion)));
+	}
+
+	/**
+	 * Verifica las promociones de la clasificación, de la mejor a la peor
+	 * @param ranking - La clasificación
+	 * @param esperadas - Los identificadores esperados
+	 */
+	private void verificar (RankingPromociones ranking, long... esperadas)
+	{
+		List<Long> leidas = new ArrayList<Long> ();
+		for (Object [] promocion : ranking.darMejores (ranking.darTamano ()))
+		{
+			leidas.add ((long) promocion [0]);
+		}
+		List<Long> lista = new ArrayList<Long> ();
+		for (long id : esperadas)
+		{
+			lista.add (id);
+		}
+		assertEquals (lista, leidas);
+	}
+}
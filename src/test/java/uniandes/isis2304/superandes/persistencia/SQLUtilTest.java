@@ -0,0 +1,114 @@
+package uniandes.isis2304.superandes.persistencia;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.jdo.PersistenceManager;
+import javax.jdo.datastore.JDOConnection;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import uniandes.isis2304.superandes.negocio.SuperAndes;
+
+/**
+ * Pruebas de los tipos con que SQLUtil.ejecutarLote envía los valores null: los que reporta el manejador de la base de datos
+ * embebida y, si no los reporta, los de los demás valores de cada parámetro
+ * @author n.cobos, jf.torresp
+ */
+public class SQLUtilTest
+{
+	/* ****************************************************************
+	 * 			Atributos
+	 *****************************************************************/
+	/**
+	 * La fachada de la aplicación
+	 */
+	private SuperAndes superandes;
+
+	/**
+	 * El manejador de persistencia
+	 */
+	private PersistenciaSuperAndes pp;
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	/**
+	 * Abre la unidad de persistencia
+	 * @throws IOException - Si no se puede leer la configuración
+	 */
+	@Before
+	public void abrir () throws IOException
+	{
+		superandes = new SuperAndes (ConfiguracionPruebas.leerConfiguracion ());
+		pp = PersistenciaSuperAndes.getInstance ();
+	}
+
+	/**
+	 * Cierra la unidad de persistencia
+	 */
+	@After
+	public void cerrar ()
+	{
+		superandes.cerrarUnidadPersistencia ();
+	}
+
+	/**
+	 * En la inserción de un pedido pendiente, la calificación null se envía con el tipo numérico de la columna y no como VARCHAR
+	 * @throws SQLException - Si no se puede preparar la sentencia
+	 */
+	@Test
+	public void usaLosTiposDelManejador () throws SQLException
+	{
+		List<Object []> filas = Collections.singletonList (new Object [] {1L, 2L, 3L, new Timestamp (0), "pendiente", null, 100.0});
+		try (PersistenceManager pm = pp.darAdministradorPersistenceManagers ().abrir ())
+		{
+			JDOConnection jdoConn = pm.getDataStoreConnection ();
+			try (PreparedStatement ps = ((Connection) jdoConn.getNativeConnection ()).prepareStatement ("INSERT INTO " + pp.darTablaPedido ()
+					+ "(id, idsucursal, idproveedor, fechaentrega, estadoorden, calificacionservicio, costototal) values (?, ?, ?, ?, ?, ?, ?)"))
+			{
+				int [] tipos = SQLUtil.darTiposParametros (ps, filas);
+				assertEquals (7, tipos.length);
+				assertTrue ("Tipo " + tipos [5], Arrays.asList (Types.NUMERIC, Types.DECIMAL, Types.BIGINT, Types.INTEGER).contains (tipos [5]));
+				assertTrue ("Tipo " + tipos [3], Arrays.asList (Types.DATE, Types.TIMESTAMP).contains (tipos [3]));
+				assertEquals (Types.VARCHAR, tipos [4]);
+			}
+			finally
+			{
+				jdoConn.close ();
+			}
+		}
+	}
+
+	/**
+	 * Si el manejador no reporta los tipos de los parámetros, se toma el del primer valor no nulo de cada parámetro, y VARCHAR si no hay
+	 */
+	@Test
+	public void deduceLosTiposDeLasFilas ()
+	{
+		PreparedStatement sinMetadatos = (PreparedStatement) Proxy.newProxyInstance (PreparedStatement.class.getClassLoader (),
+				new Class<?> [] {PreparedStatement.class}, (proxy, metodo, argumentos) ->
+				{
+					throw new SQLFeatureNotSupportedException (metodo.getName ());
+				});
+		List<Object []> filas = Arrays.asList (new Object [] {null, null, null, null, null, null},
+				new Object [] {5L, 2.5, new Timestamp (0), new java.sql.Date (0), "texto", null});
+		assertArrayEquals (new int [] {Types.NUMERIC, Types.DOUBLE, Types.TIMESTAMP, Types.DATE, Types.VARCHAR, Types.VARCHAR},
+				SQLUtil.darTiposParametros (sinMetadatos, filas));
+	}
+}
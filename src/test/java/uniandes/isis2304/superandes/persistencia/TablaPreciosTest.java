@@ -0,0 +1,193 @@
+package uniandes.isis2304.superandes.persistencia;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import uniandes.isis2304.superandes.negocio.Vende;
+
+/**
+ * Pruebas de TablaPrecios contra un mapa de referencia de las parejas {sucursal, producto} a sus precios
+ * @author n.cobos, jf.torresp
+ */
+public class TablaPreciosTest
+{
+	/* ****************************************************************
+	 * 			Constantes
+	 *****************************************************************/
+	/**
+	 * Un identificador que no cabe en 32 bits y que, empacado sin validar, coincide con el identificador 5
+	 */
+	private static final long IDENTIFICADOR_ANCHO = (1L << 32) + 5;
+
+	/* ****************************************************************
+	 * 			Métodos
+	 *****************************************************************/
+	/**
+	 * Agrega precios al azar, con parejas repetidas, en una tabla pequeña que tiene que crecer varias veces, y compara cada consulta
+	 * con el mapa de referencia, que deja el mayor precio de cada pareja
+	 */
+	@Test
+	public void agregarCoincideConReferencia ()
+	{
+		Random azar = new Random (22);
+		TablaPrecios tabla = new TablaPrecios (1);
+		Map<List<Long>, double []> referencia = new HashMap<List<Long>, double []> ();
+		for (int lote = 0; lote < 50; lote++)
+		{
+			List<Vende> vendes = new ArrayList<Vende> ();
+			for (int i = 0; i < 100; i++)
+			{
+				long sucursal = 1 + azar.nextInt (20);
+				long producto = azar.nextInt (10) == 0 ? darIdentificadorAncho (azar) : 1 + azar.nextInt (500);
+				Vende vende = new Vende (sucursal, producto, 0, azar.nextInt (10000), azar.nextInt (100));
+				vendes.add (vende);
+				double [] precios = referencia.computeIfAbsent (Arrays.asList (sucursal, producto), k -> new double [] {-1, -1});
+				precios [0] = Math.max (precios [0], vende.getPrecioUnitario ());
+				precios [1] = Math.max (precios [1], vende.getPrecioPorUnidadMedida ());
+			}
+			tabla.agregar (vendes);
+		}
+		verificar (tabla, referencia, azar);
+	}
+
+	/**
+	 * Carga la tabla dos veces y verifica que la segunda carga reemplaza todos los precios de la primera
+	 */
+	@Test
+	public void cargarReemplazaLosPrecios ()
+	{
+		Random azar = new Random (23);
+		TablaPrecios tabla = new TablaPrecios (TablaPrecios.CAPACIDAD_DEFECTO);
+		tabla.agregar (Arrays.asList (new Vende (1, 1, 0, 10, 1), new Vende (IDENTIFICADOR_ANCHO, 1, 0, 20, 2)));
+
+		List<Vende> vendes = new ArrayList<Vende> ();
+		Map<List<Long>, double []> referencia = new HashMap<List<Long>, double []> ();
+		for (long sucursal = 2; sucursal <= 5; sucursal++)
+		{
+			for (long producto = 1; producto <= 1000; producto++)
+			{
+				long id = producto % 100 == 0 ? producto + TablaPrecios.IDENTIFICADOR_MAXIMO : producto;
+				Vende vende = new Vende (sucursal, id, 0, azar.nextInt (10000), azar.nextInt (100));
+				vendes.add (vende);
+				referencia.put (Arrays.asList (sucursal, id), new double [] {vende.getPrecioUnitario (), vende.getPrecioPorUnidadMedida ()});
+			}
+		}
+		assertTrue (tabla.cargar (() -> vendes));
+		assertEquals (TablaPrecios.SIN_PRECIO, tabla.darPrecioUnitario (1, 1), 0);
+		assertEquals (TablaPrecios.SIN_PRECIO, tabla.darPrecioUnitario (IDENTIFICADOR_ANCHO, 1), 0);
+		verificar (tabla, referencia, azar);
+
+		assertFalse ("Una lectura fallida no debe cambiar la tabla", tabla.cargar (() -> null));
+		verificar (tabla, referencia, azar);
+
+		tabla.limpiar ();
+		assertEquals (0, tabla.darTamano ());
+		assertEquals (TablaPrecios.SIN_PRECIO, tabla.darPrecioUnitario (2, 1), 0);
+	}
+
+	/**
+	 * Verifica que las parejas con identificadores de más de 32 bits no se confunden con las que, empacadas, tendrían la misma llave
+	 */
+	@Test
+	public void identificadoresAnchosNoSeConfunden ()
+	{
+		TablaPrecios tabla = new TablaPrecios (TablaPrecios.CAPACIDAD_DEFECTO);
+		tabla.agregar (Arrays.asList (new Vende (5, 1, 0, 10, 1), new Vende (IDENTIFICADOR_ANCHO, 1, 0, 20, 2),
+				new Vende (1, 5, 0, 30, 3), new Vende (1, IDENTIFICADOR_ANCHO, 0, 40, 4)));
+		assertEquals (4, tabla.darTamano ());
+		assertEquals (10, tabla.darPrecioUnitario (5, 1), 0);
+		assertEquals (20, tabla.darPrecioUnitario (IDENTIFICADOR_ANCHO, 1), 0);
+		assertEquals (3, tabla.darPrecioUnidadMedida (1, 5), 0);
+		assertEquals (4, tabla.darPrecioUnidadMedida (1, IDENTIFICADOR_ANCHO), 0);
+		assertEquals (70, tabla.cotizar (1, new long [] {5, IDENTIFICADOR_ANCHO}, new int [] {1, 1}, null), 0);
+
+		assertTrue (TablaPrecios.cabeEnLlave (TablaPrecios.IDENTIFICADOR_MAXIMO, TablaPrecios.IDENTIFICADOR_MAXIMO));
+		assertFalse (TablaPrecios.cabeEnLlave (IDENTIFICADOR_ANCHO, 1));
+		assertFalse (TablaPrecios.cabeEnLlave (1, 0));
+		try
+		{
+			TablaPrecios.darLlave (IDENTIFICADOR_ANCHO, 1);
+			throw new AssertionError ("darLlave debe rechazar los identificadores que no caben en 32 bits");
+		}
+		catch (IllegalArgumentException e)
+		{
+			// Esperada
+		}
+	}
+
+	/**
+	 * Verifica que las tuplas con identificadores que no son positivos se ignoran
+	 */
+	@Test
+	public void identificadoresNoPositivosSeIgnoran ()
+	{
+		TablaPrecios tabla = new TablaPrecios (TablaPrecios.CAPACIDAD_DEFECTO);
+		tabla.agregar (Arrays.asList (new Vende (0, 1, 0, 10, 1), new Vende (1, 0, 0, 10, 1), new Vende (-1, 1, 0, 10, 1)));
+		assertEquals (0, tabla.darTamano ());
+		assertEquals (TablaPrecios.SIN_PRECIO, tabla.darPrecioUnitario (0, 1), 0);
+		assertEquals (TablaPrecios.SIN_PRECIO, tabla.darPrecioUnitario (-1, 1), 0);
+	}
+
+	/**
+	 * @param azar - El generador de números al azar
+	 * @return Un identificador que no cabe en 32 bits
+	 */
+	private static long darIdentificadorAncho (Random azar)
+	{
+		return TablaPrecios.IDENTIFICADOR_MAXIMO + 1 + azar.nextInt (50);
+	}
+
+	/**
+	 * Compara la tabla con el mapa de referencia: el tamaño, el precio de cada pareja, parejas que no están y cotizaciones de canastas
+	 * @param tabla - La tabla
+	 * @param referencia - Los precios {unitario, por unidad de medida} de cada pareja {sucursal, producto}
+	 * @param azar - El generador de números al azar
+	 */
+	private static void verificar (TablaPrecios tabla, Map<List<Long>, double []> referencia, Random azar)
+	{
+		assertEquals (referencia.size (), tabla.darTamano ());
+		Map<Long, List<Long>> productosPorSucursal = new HashMap<Long, List<Long>> ();
+		for (Map.Entry<List<Long>, double []> pareja : referencia.entrySet ())
+		{
+			long sucursal = pareja.getKey ().get (0);
+			long producto = pareja.getKey ().get (1);
+			assertEquals (pareja.getKey ().toString (), pareja.getValue () [0], tabla.darPrecioUnitario (sucursal, producto), 0);
+			assertEquals (pareja.getKey ().toString (), pareja.getValue () [1], tabla.darPrecioUnidadMedida (sucursal, producto), 0);
+			productosPorSucursal.computeIfAbsent (sucursal, k -> new ArrayList<Long> ()).add (producto);
+		}
+		for (int i = 0; i < 1000; i++)
+		{
+			long sucursal = 1 + azar.nextInt (30);
+			long producto = azar.nextBoolean () ? 1 + azar.nextInt (2000) : darIdentificadorAncho (azar);
+			double [] precios = referencia.get (Arrays.asList (sucursal, producto));
+			assertEquals (precios == null ? TablaPrecios.SIN_PRECIO : precios [0], tabla.darPrecioUnitario (sucursal, producto), 0);
+		}
+		for (Map.Entry<Long, List<Long>> sucursal : productosPorSucursal.entrySet ())
+		{
+			List<Long> productos = sucursal.getValue ();
+			long [] canasta = new long [Math.min (10, productos.size ())];
+			int [] cantidades = new int [canasta.length];
+			double [] costos = new double [canasta.length];
+			double total = 0;
+			for (int i = 0; i < canasta.length; i++)
+			{
+				canasta [i] = productos.get (azar.nextInt (productos.size ()));
+				cantidades [i] = 1 + azar.nextInt (5);
+				total += referencia.get (Arrays.asList (sucursal.getKey (), canasta [i])) [0] * cantidades [i];
+			}
+			assertEquals (total, tabla.cotizar (sucursal.getKey (), canasta, cantidades, costos), 1e-6);
+			canasta [0] = 100000;
+			assertEquals (TablaPrecios.SIN_PRECIO, tabla.cotizar (sucursal.getKey (), canasta, cantidades, null), 0);
+		}
+	}
+}